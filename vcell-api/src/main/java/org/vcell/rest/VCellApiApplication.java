@@ -46,6 +46,7 @@ import org.vcell.rest.server.PublicationServerResource;
 import org.vcell.rest.server.PublicationsServerResource;
 import org.vcell.rest.server.RestDatabaseService;
 import org.vcell.rest.server.SimDataServerResource;
+import org.vcell.rest.server.SimDataStreamServerResource;
 import org.vcell.rest.server.SimDataValuesServerResource;
 import org.vcell.rest.server.SimulationStatusServerResource;
 import org.vcell.rest.server.SimulationTaskServerResource;
@@ -159,6 +160,7 @@ public class VCellApiApplication extends WadlApplication {
 	public static final String 	ADMIN_JOBS = "jobs";
 	
 	public static final String JOBINDEX = "jobindex";
+	public static final String SIMDATA_STREAM = "stream";
 	
 	public static final String SAVESIMULATION = "save";
 	public static final String STARTSIMULATION = "startSimulation";
@@ -330,6 +332,7 @@ public class VCellApiApplication extends WadlApplication {
 		rootRouter.attach("/"+SIMTASK+"/{"+SIMTASKID+"}", SimulationTaskServerResource.class);  
 		rootRouter.attach("/"+SIMDATA+"/{"+SIMDATAID+"}", SimDataServerResource.class);  
 		rootRouter.attach("/"+SIMDATA+"/{"+SIMDATAID+"}/jobindex/{"+JOBINDEX+"}", SimDataValuesServerResource.class);  
+		rootRouter.attach("/"+SIMDATA+"/{"+SIMDATAID+"}/jobindex/{"+JOBINDEX+"}/"+SIMDATA_STREAM, SimDataStreamServerResource.class);  
 		
 		rootRouter.attach("/"+LOGIN, new LoginRestlet(getContext()));
 		
@@ -0,0 +1,14 @@
+package org.vcell.rest.common;
+
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+/**
+ * Selected simulation data values streamed in chunks (ndjson, binary or columnar).
+ */
+public interface SimDataStreamResource {
+
+    @Get
+    public Representation get_stream();
+
+}
@@ -146,6 +146,14 @@ public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdataID, String[
 }
 
 
+/**
+ * one page of {@link #getDataSetTimeSeries(VCDataIdentifier, String[])}, the selection is applied by the data server.
+ */
+public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdataID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws DataAccessException {
+	return (DataSetTimeSeries)rpc("getDataSetTimeSeries", new Object[]{userLoginInfo.getUser(), vcdataID, variableNames, new Double(startTime), new Double(endTime), new Integer(startIndex), new Integer(maxCount)});
+}
+
+
 private Object rpc(String methodName, Object[] args) throws DataAccessException {
 	try {
 		return rpc(RpcServiceType.DATA, methodName, args, true);
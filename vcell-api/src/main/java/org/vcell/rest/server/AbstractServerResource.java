@@ -1,10 +1,14 @@
 package org.vcell.rest.server;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.ext.wadl.WadlServerResource;
+import org.restlet.representation.Representation;
 import org.restlet.representation.Variant;
 
 public class AbstractServerResource extends WadlServerResource {
@@ -34,6 +38,41 @@ public class AbstractServerResource extends WadlServerResource {
 		return longValue;
 	}
 
+	protected Double getDoubleQueryValue(String paramName) {
+		String stringValue = getQueryValue(paramName);
+		Double doubleValue = null;
+		if (stringValue!=null && stringValue.length()>0){
+			try {
+				doubleValue = Double.parseDouble(stringValue);
+			}catch (NumberFormatException e){
+			}
+		}
+		return doubleValue;
+	}
+
+	/**
+	 * evaluates the conditional request headers (If-None-Match, If-Modified-Since) against the current version of the resource
+	 * before the representation is produced; if the client copy is still valid the status is set to 304 (Not Modified).
+	 * @return true if the caller should return no representation.
+	 */
+	protected boolean isNotModified(String etag, Date lastModified) {
+		Status status = getRequest().getConditions().getStatus(getMethod(), true, new Tag(etag, false), lastModified);
+		if (Status.REDIRECTION_NOT_MODIFIED.equals(status)){
+			setStatus(status);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * sets the validators (ETag and Last-Modified headers) of a representation.
+	 */
+	protected <T extends Representation> T setValidators(T representation, String etag, Date lastModified) {
+		representation.setTag(new Tag(etag, false));
+		representation.setModificationDate(lastModified);
+		return representation;
+	}
+
 
 	@Override
 	protected List<Variant> getWadlVariants() {
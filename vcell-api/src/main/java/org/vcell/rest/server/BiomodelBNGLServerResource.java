@@ -2,12 +2,11 @@ package org.vcell.rest.server;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
-import org.restlet.Request;
 import org.restlet.data.Status;
 import org.restlet.ext.wadl.MethodInfo;
 import org.restlet.ext.wadl.ParameterInfo;
@@ -22,13 +21,13 @@ import org.vcell.model.rbm.RbmNetworkGenerator;
 import org.vcell.rest.VCellApiApplication;
 import org.vcell.rest.VCellApiApplication.AuthenticationPolicy;
 import org.vcell.rest.common.BiomodelBNGLResource;
+import org.vcell.util.ObjectNotFoundException;
 import org.vcell.util.PermissionException;
+import org.vcell.util.document.KeyValue;
 import org.vcell.util.document.User;
 
 import cbit.vcell.biomodel.BioModel;
 import cbit.vcell.mapping.SimulationContext;
-import cbit.vcell.xml.XMLSource;
-import cbit.vcell.xml.XmlHelper;
 
 public class BiomodelBNGLServerResource extends AbstractServerResource implements BiomodelBNGLResource {
 
@@ -77,51 +76,39 @@ public class BiomodelBNGLServerResource extends AbstractServerResource implement
 	public StringRepresentation get_xml() {
 		VCellApiApplication application = ((VCellApiApplication)getApplication());
 		User vcellUser = application.getVCellUser(getChallengeResponse(),AuthenticationPolicy.ignoreInvalidCredentials);
-        String vcml = getBiomodelBNGL(vcellUser);
-        
-        if (vcml != null){
-        	String bioModelID = (String)getRequestAttributes().get(VCellApiApplication.BIOMODELID);
-        	setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+bioModelID+".vcml\"");
-        	return new StringRepresentation(vcml, BiomodelBNGLResource.VCDOC_MEDIATYPE);
-        }
-        throw new RuntimeException("biomodel not found");
-	}
-
-	
-	private String getBiomodelBNGL(User vcellUser) {
-		RestDatabaseService restDatabaseService = ((VCellApiApplication)getApplication()).getRestDatabaseService();
+		RestDatabaseService restDatabaseService = application.getRestDatabaseService();
 		try {
-			//Make temporary resource compatible with restDatabaseService so we can re-use
-			BiomodelVCMLServerResource bmsr = new BiomodelVCMLServerResource() {
-				@Override
-				public Map<String, Object> getRequestAttributes() {
-					HashMap<String, Object> hashMap = new HashMap<String, Object>();
-					hashMap.put(VCellApiApplication.BIOMODELID, BiomodelBNGLServerResource.this.biomodelid);
-					return hashMap;
-				}
-				@Override
-				public Request getRequest() {
-					// TODO Auto-generated method stub
-					return BiomodelBNGLServerResource.this.getRequest();
-				}
-			};
-			
-			StringWriter bnglStringWriter = new StringWriter();
-			PrintWriter pw = new PrintWriter(bnglStringWriter);
-			String biomodelVCML = restDatabaseService.query(bmsr,vcellUser);
-			BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(biomodelVCML));
-			SimulationContext chosenSimContext = bioModel.getSimulationContext(0);
-			RbmNetworkGenerator.writeBngl(chosenSimContext, pw, false, true);
-			String resultString = bnglStringWriter.toString();
-			return resultString;
-			
+			KeyValue bioModelKey = new KeyValue(biomodelid);
+			Date versionDate = restDatabaseService.getBioModelInfo(bioModelKey, vcellUser).getVersion().getDate();
+			// always exported from the first application
+			DerivedRepresentationCache.Key cacheKey = new DerivedRepresentationCache.Key(bioModelKey, versionDate, null, DerivedRepresentationCache.FORMAT_BNGL);
+			if (isNotModified(cacheKey.getETag(), versionDate)){
+				return null;
+			}
+			byte[] bnglBytes = restDatabaseService.getDerivedBioModelRepresentation(cacheKey, vcellUser,
+					(bioModel) -> exportBNGL(bioModel).getBytes(StandardCharsets.UTF_8));
+			setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+biomodelid+".vcml\"");
+			StringRepresentation representation = new StringRepresentation(new String(bnglBytes, StandardCharsets.UTF_8), BiomodelBNGLResource.VCDOC_MEDIATYPE);
+			return setValidators(representation, cacheKey.getETag(), versionDate);
 		} catch (PermissionException e) {
 			e.printStackTrace();
 			throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
+		} catch (ObjectNotFoundException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
 		} catch (Exception e){
 			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
 		}
 	}
 
+	
+	private static String exportBNGL(BioModel bioModel) throws Exception {
+		StringWriter bnglStringWriter = new StringWriter();
+		PrintWriter pw = new PrintWriter(bnglStringWriter);
+		SimulationContext chosenSimContext = bioModel.getSimulationContext(0);
+		RbmNetworkGenerator.writeBngl(chosenSimContext, pw, false, true);
+		return bnglStringWriter.toString();
+	}
+
 
 }
\ No newline at end of file
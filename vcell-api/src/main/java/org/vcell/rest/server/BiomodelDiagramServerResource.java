@@ -3,6 +3,7 @@ package org.vcell.rest.server;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.imageio.ImageIO;
@@ -23,12 +24,11 @@ import org.vcell.rest.VCellApiApplication.AuthenticationPolicy;
 import org.vcell.rest.common.BiomodelDiagramResource;
 import org.vcell.util.ObjectNotFoundException;
 import org.vcell.util.PermissionException;
+import org.vcell.util.document.KeyValue;
 import org.vcell.util.document.User;
 
 import cbit.vcell.biomodel.BioModel;
 import cbit.vcell.publish.ITextWriter;
-import cbit.vcell.xml.XMLSource;
-import cbit.vcell.xml.XmlHelper;
 
 public class BiomodelDiagramServerResource extends AbstractServerResource implements BiomodelDiagramResource {
 
@@ -78,19 +78,23 @@ public class BiomodelDiagramServerResource extends AbstractServerResource implem
 	public ByteArrayRepresentation get_png() {
 		VCellApiApplication application = ((VCellApiApplication)getApplication());
 		User vcellUser = application.getVCellUser(getChallengeResponse(),AuthenticationPolicy.ignoreInvalidCredentials);
-		
-        String vcml = getBiomodelVCML(vcellUser);
-        if (vcml == null){
-        	throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND,"BioModel not found");
-        }
-        try {
-			BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(vcml));
-			Integer imageWidthInPixels = 1000;
-			BufferedImage bufferedImage = ITextWriter.generateDocReactionsImage(bioModel.getModel(), imageWidthInPixels );
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			ImageIO.write(bufferedImage, "png", outputStream);
-			byte[] imageBytes = outputStream.toByteArray();
-			return new ByteArrayRepresentation(imageBytes, MediaType.IMAGE_PNG, imageBytes.length);
+		RestDatabaseService restDatabaseService = application.getRestDatabaseService();
+		try {
+			KeyValue bioModelKey = new KeyValue(biomodelid);
+			Date versionDate = restDatabaseService.getBioModelInfo(bioModelKey, vcellUser).getVersion().getDate();
+			DerivedRepresentationCache.Key cacheKey = new DerivedRepresentationCache.Key(bioModelKey, versionDate, null, DerivedRepresentationCache.FORMAT_DIAGRAM_PNG);
+			if (isNotModified(cacheKey.getETag(), versionDate)){
+				return null;
+			}
+			byte[] imageBytes = restDatabaseService.getDerivedBioModelRepresentation(cacheKey, vcellUser, (bioModel) -> renderDiagram(bioModel));
+			ByteArrayRepresentation representation = new ByteArrayRepresentation(imageBytes, MediaType.IMAGE_PNG, imageBytes.length);
+			return setValidators(representation, cacheKey.getETag(), versionDate);
+		} catch (PermissionException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
+		} catch (ObjectNotFoundException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
@@ -98,25 +102,12 @@ public class BiomodelDiagramServerResource extends AbstractServerResource implem
 	}
 
 	
-	private String getBiomodelVCML(User vcellUser) {
-//		if (!application.authenticate(getRequest(), getResponse())){
-//			// not authenticated
-//			return new SimulationTaskRepresentation[0];
-//		}else{
-			RestDatabaseService restDatabaseService = ((VCellApiApplication)getApplication()).getRestDatabaseService();
-			try {
-				String vcml = restDatabaseService.query(this,vcellUser);
-				return vcml;
-			} catch (PermissionException e) {
-				e.printStackTrace();
-				throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
-			} catch (ObjectNotFoundException e) {
-				e.printStackTrace();
-				throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
-			} catch (Exception e){
-				throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
-			}
-//		}
+	private static byte[] renderDiagram(BioModel bioModel) throws Exception {
+		Integer imageWidthInPixels = 1000;
+		BufferedImage bufferedImage = ITextWriter.generateDocReactionsImage(bioModel.getModel(), imageWidthInPixels );
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(bufferedImage, "png", outputStream);
+		return outputStream.toByteArray();
 	}
 
 
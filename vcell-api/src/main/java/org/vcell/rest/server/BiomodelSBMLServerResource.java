@@ -1,12 +1,10 @@
 package org.vcell.rest.server;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
-import org.restlet.Request;
-import org.restlet.data.Form;
 import org.restlet.data.Status;
 import org.restlet.ext.wadl.MethodInfo;
 import org.restlet.ext.wadl.ParameterInfo;
@@ -20,13 +18,13 @@ import org.restlet.resource.ResourceException;
 import org.vcell.rest.VCellApiApplication;
 import org.vcell.rest.VCellApiApplication.AuthenticationPolicy;
 import org.vcell.rest.common.BiomodelSBMLResource;
-import org.vcell.sbml.vcell.SBMLExporter;
+import org.vcell.util.ObjectNotFoundException;
 import org.vcell.util.PermissionException;
+import org.vcell.util.document.KeyValue;
 import org.vcell.util.document.User;
 
 import cbit.vcell.biomodel.BioModel;
 import cbit.vcell.mapping.SimulationContext;
-import cbit.vcell.xml.XMLSource;
 import cbit.vcell.xml.XmlHelper;
 
 public class BiomodelSBMLServerResource extends AbstractServerResource implements BiomodelSBMLResource {
@@ -77,52 +75,41 @@ public class BiomodelSBMLServerResource extends AbstractServerResource implement
 	public StringRepresentation get_xml() {
 		VCellApiApplication application = ((VCellApiApplication)getApplication());
 		User vcellUser = application.getVCellUser(getChallengeResponse(),AuthenticationPolicy.ignoreInvalidCredentials);
-        String vcml = getBiomodelSBML(vcellUser);
-        
-        if (vcml != null){
-        	String bioModelID = (String)getRequestAttributes().get(VCellApiApplication.BIOMODELID);
-        	setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+bioModelID+".vcml\"");
-        	return new StringRepresentation(vcml, BiomodelSBMLResource.VCDOC_MEDIATYPE);
-        }
-        throw new RuntimeException("biomodel not found");
-	}
-
-	
-	private String getBiomodelSBML(User vcellUser) {
-		RestDatabaseService restDatabaseService = ((VCellApiApplication)getApplication()).getRestDatabaseService();
+		RestDatabaseService restDatabaseService = application.getRestDatabaseService();
 		try {
-			//Make temporary resource compatible with restDatabaseService so we can re-use
-			BiomodelVCMLServerResource bmsr = new BiomodelVCMLServerResource() {
-				@Override
-				public Map<String, Object> getRequestAttributes() {
-					HashMap<String, Object> hashMap = new HashMap<String, Object>();
-					hashMap.put(VCellApiApplication.BIOMODELID, BiomodelSBMLServerResource.this.biomodelid);
-					return hashMap;
-				}
-				@Override
-				public Request getRequest() {
-					// TODO Auto-generated method stub
-					return BiomodelSBMLServerResource.this.getRequest();
-				}
-			};
-			String biomodelVCML = restDatabaseService.query(bmsr,vcellUser);
-			BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(biomodelVCML));
-			//public SBMLExporter(BioModel argBioModel, int argSbmlLevel, int argSbmlVersion, boolean isSpatial) {
-			SimulationContext simulationContext = null;
-			if(appName != null) {
-				simulationContext = bioModel.getSimulationContext(appName);
-			}else {
-				simulationContext = bioModel.getSimulationContext(0);
+			KeyValue bioModelKey = new KeyValue(biomodelid);
+			Date versionDate = restDatabaseService.getBioModelInfo(bioModelKey, vcellUser).getVersion().getDate();
+			DerivedRepresentationCache.Key cacheKey = new DerivedRepresentationCache.Key(bioModelKey, versionDate, appName, DerivedRepresentationCache.FORMAT_SBML);
+			if (isNotModified(cacheKey.getETag(), versionDate)){
+				return null;
 			}
-			boolean bRoundTripValidation = true;
-			return XmlHelper.exportSBML(simulationContext.getBioModel(), 3, 1, 0, (simulationContext.getGeometryContext().getGeometry().getDimension()>0), simulationContext, null, bRoundTripValidation);
+			byte[] sbmlBytes = restDatabaseService.getDerivedBioModelRepresentation(cacheKey, vcellUser,
+					(bioModel) -> exportSBML(bioModel).getBytes(StandardCharsets.UTF_8));
+			setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+biomodelid+".vcml\"");
+			StringRepresentation representation = new StringRepresentation(new String(sbmlBytes, StandardCharsets.UTF_8), BiomodelSBMLResource.VCDOC_MEDIATYPE);
+			return setValidators(representation, cacheKey.getETag(), versionDate);
 		} catch (PermissionException e) {
 			e.printStackTrace();
 			throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
+		} catch (ObjectNotFoundException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
 		} catch (Exception e){
 			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
 		}
 	}
 
+	
+	private String exportSBML(BioModel bioModel) throws Exception {
+		SimulationContext simulationContext = null;
+		if(appName != null) {
+			simulationContext = bioModel.getSimulationContext(appName);
+		}else {
+			simulationContext = bioModel.getSimulationContext(0);
+		}
+		boolean bRoundTripValidation = true;
+		return XmlHelper.exportSBML(simulationContext.getBioModel(), 3, 1, 0, (simulationContext.getGeometryContext().getGeometry().getDimension()>0), simulationContext, null, bRoundTripValidation);
+	}
+
 
 }
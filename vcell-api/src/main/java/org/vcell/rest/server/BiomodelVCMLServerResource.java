@@ -1,6 +1,8 @@
 package org.vcell.rest.server;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.restlet.data.Status;
@@ -18,10 +20,9 @@ import org.vcell.rest.VCellApiApplication.AuthenticationPolicy;
 import org.vcell.rest.common.BiomodelVCMLResource;
 import org.vcell.util.ObjectNotFoundException;
 import org.vcell.util.PermissionException;
+import org.vcell.util.document.KeyValue;
 import org.vcell.util.document.User;
 
-import cbit.vcell.biomodel.BioModel;
-import cbit.vcell.xml.XMLSource;
 import cbit.vcell.xml.XmlHelper;
 
 public class BiomodelVCMLServerResource extends AbstractServerResource implements BiomodelVCMLResource {
@@ -72,39 +73,30 @@ public class BiomodelVCMLServerResource extends AbstractServerResource implement
 	public StringRepresentation get_xml() {
 		VCellApiApplication application = ((VCellApiApplication)getApplication());
 		User vcellUser = application.getVCellUser(getChallengeResponse(),AuthenticationPolicy.ignoreInvalidCredentials);
-        String vcml = getBiomodelVCML(vcellUser);
-        
-        if (vcml != null){
-        	String bioModelID = (String)getRequestAttributes().get(VCellApiApplication.BIOMODELID);
-//        	setAttribute("Content-type", "application/vcml+xml");
-        	setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+bioModelID+".vcml\"");
-        	return new StringRepresentation(vcml, BiomodelVCMLResource.VCDOC_MEDIATYPE);
-        }
-        throw new RuntimeException("biomodel not found");
-	}
-
-	
-	private String getBiomodelVCML(User vcellUser) {
-//		if (!application.authenticate(getRequest(), getResponse())){
-//			// not authenticated
-//			return new SimulationTaskRepresentation[0];
-//		}else{
-			RestDatabaseService restDatabaseService = ((VCellApiApplication)getApplication()).getRestDatabaseService();
-			try {
-				String cachedVcml = restDatabaseService.query(this,vcellUser);
-				BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(cachedVcml));
-				String latestVcml = XmlHelper.bioModelToXML(bioModel);
-				return latestVcml;
-			} catch (PermissionException e) {
-				e.printStackTrace();
-				throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
-			} catch (ObjectNotFoundException e) {
-				e.printStackTrace();
-				throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
-			} catch (Exception e){
-				throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
+		RestDatabaseService restDatabaseService = application.getRestDatabaseService();
+		try {
+			KeyValue bioModelKey = new KeyValue(biomodelid);
+			Date versionDate = restDatabaseService.getBioModelInfo(bioModelKey, vcellUser).getVersion().getDate();
+			// stored VCML is re-serialized with the latest schema
+			DerivedRepresentationCache.Key cacheKey = new DerivedRepresentationCache.Key(bioModelKey, versionDate, null, DerivedRepresentationCache.FORMAT_VCML);
+			if (isNotModified(cacheKey.getETag(), versionDate)){
+				return null;
 			}
-//		}
+			byte[] vcmlBytes = restDatabaseService.getDerivedBioModelRepresentation(cacheKey, vcellUser,
+					(bioModel) -> XmlHelper.bioModelToXML(bioModel).getBytes(StandardCharsets.UTF_8));
+//			setAttribute("Content-type", "application/vcml+xml");
+			setAttribute("Content-Disposition", "attachment; filename=\"VCBioModel_"+biomodelid+".vcml\"");
+			StringRepresentation representation = new StringRepresentation(new String(vcmlBytes, StandardCharsets.UTF_8), BiomodelVCMLResource.VCDOC_MEDIATYPE);
+			return setValidators(representation, cacheKey.getETag(), versionDate);
+		} catch (PermissionException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "permission denied to requested resource");
+		} catch (ObjectNotFoundException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "biomodel not found");
+		} catch (Exception e){
+			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
+		}
 	}
 
 
@@ -0,0 +1,345 @@
+package org.vcell.rest.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.vcell.util.document.KeyValue;
+
+import cbit.vcell.resource.PropertyLoader;
+
+/**
+ * Cache of representations derived from a saved BioModel (SBML/BNGL export, reaction diagram, re-serialized VCML).
+ * <p>
+ * A saved BioModel version never changes (saving creates a new key), so an entry keyed by BioModel key, version date,
+ * application and format never becomes stale and the same key serves as the ETag of the representation. The key also holds
+ * the cache format version and the VCell software version, so representations written by another exporter are not served.
+ * The cache only holds the bytes; callers must check that the user may read the BioModel before asking for them.
+ * <p>
+ * Entries are kept in memory up to a total size (least recently used are dropped first) and, if a directory is configured,
+ * also written to disk where they survive restarts; the disk directory is pruned (least recently used first) to a total size.
+ * Concurrent requests for the same missing entry compute it once.
+ */
+public class DerivedRepresentationCache {
+
+	private final static Logger lg = LogManager.getLogger(DerivedRepresentationCache.class);
+
+	public static final String FORMAT_VCML = "vcml";
+	public static final String FORMAT_SBML = "sbml";
+	public static final String FORMAT_BNGL = "bngl";
+	public static final String FORMAT_DIAGRAM_PNG = "diagram.png";
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+	/**
+	 * change when the content of a cached representation changes for the same BioModel version and format
+	 */
+	public static final int CACHE_FORMAT_VERSION = 1;
+
+	private static final String TEMP_FILE_MARKER = ".tmp";
+
+	public interface Producer {
+		byte[] produce() throws Exception;
+	}
+
+	public static class Key {
+		private final KeyValue bioModelKey;
+		private final Date versionDate;
+		private final String appName;
+		private final String format;
+		private final String id;
+
+		public Key(KeyValue bioModelKey, Date versionDate, String appName, String format){
+			this.bioModelKey = bioModelKey;
+			this.versionDate = versionDate;
+			this.appName = appName;
+			this.format = format;
+			StringBuilder buffer = new StringBuilder();
+			buffer.append("v").append(CACHE_FORMAT_VERSION).append("_");
+			String softwareVersion = PropertyLoader.getProperty(PropertyLoader.vcellSoftwareVersion, null);
+			if (softwareVersion != null){
+				// exporters change between releases
+				buffer.append(digest(softwareVersion)).append("_");
+			}
+			buffer.append("bm").append(bioModelKey).append("_").append(versionDate != null ? versionDate.getTime() : 0L);
+			if (appName != null){
+				// application names are free text, keep the id usable as a file name and an ETag
+				buffer.append("_").append(digest(appName));
+			}
+			buffer.append("_").append(format);
+			this.id = buffer.toString();
+		}
+
+		public KeyValue getBioModelKey() {
+			return bioModelKey;
+		}
+
+		public Date getVersionDate() {
+			return versionDate;
+		}
+
+		public String getAppName() {
+			return appName;
+		}
+
+		public String getFormat() {
+			return format;
+		}
+
+		public String getETag() {
+			return id;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Key) && ((Key)obj).id.equals(id);
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return id;
+		}
+	}
+
+	private final long maxBytes;
+	private final long maxDiskBytes;
+	private final File cacheDir;
+	private final Object diskLock = new Object();
+	private long diskBytes = 0;
+	private final LinkedHashMap<Key, byte[]> memoryCache = new LinkedHashMap<Key, byte[]>(64, 0.75f, true);
+	private long memoryBytes = 0;
+	private final ConcurrentHashMap<Key, CompletableFuture<byte[]>> inProgress = new ConcurrentHashMap<Key, CompletableFuture<byte[]>>();
+
+	public DerivedRepresentationCache(long maxBytes, File cacheDir){
+		this(maxBytes, DEFAULT_MAX_DISK_BYTES, cacheDir);
+	}
+
+	/**
+	 * @param maxBytes total size of the entries held in memory.
+	 * @param maxDiskBytes total size of the entries kept in 'cacheDir'.
+	 * @param cacheDir directory for persistent entries (null for memory only).
+	 */
+	public DerivedRepresentationCache(long maxBytes, long maxDiskBytes, File cacheDir){
+		this.maxBytes = maxBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		this.cacheDir = cacheDir;
+		if (cacheDir != null && !cacheDir.isDirectory() && !cacheDir.mkdirs()){
+			lg.error("cannot create derived representation cache directory "+cacheDir.getAbsolutePath()+", using memory only");
+		}
+		if (cacheDir != null && cacheDir.isDirectory()){
+			synchronized (diskLock){
+				for (File file : listFiles()){
+					if (file.getName().contains(TEMP_FILE_MARKER)){
+						// left over by an interrupted write
+						file.delete();
+					}else{
+						diskBytes += file.length();
+					}
+				}
+				pruneFiles();
+			}
+		}
+	}
+
+	/**
+	 * returns the cached representation for 'key', producing (and caching) it if needed.
+	 */
+	public byte[] get(Key key, Producer producer) throws Exception {
+		byte[] bytes = getCached(key);
+		if (bytes != null){
+			return bytes;
+		}
+		CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> existingFuture = inProgress.putIfAbsent(key, future);
+		if (existingFuture != null){
+			try {
+				return existingFuture.get();
+			} catch (ExecutionException e){
+				if (e.getCause() instanceof Exception){
+					throw (Exception)e.getCause();
+				}
+				throw e;
+			}
+		}
+		try {
+			// may have been stored while we were looking
+			bytes = getCached(key);
+			if (bytes == null){
+				bytes = producer.produce();
+				if (bytes == null){
+					throw new IOException("no "+key.getFormat()+" representation produced for BioModel("+key.getBioModelKey()+")");
+				}
+				putMemory(key, bytes);
+				writeFile(key, bytes);
+			}
+			future.complete(bytes);
+			return bytes;
+		} catch (Exception e){
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inProgress.remove(key);
+		}
+	}
+
+	private byte[] getCached(Key key) {
+		synchronized (memoryCache){
+			byte[] bytes = memoryCache.get(key);
+			if (bytes != null){
+				return bytes;
+			}
+		}
+		byte[] bytes = readFile(key);
+		if (bytes != null){
+			putMemory(key, bytes);
+		}
+		return bytes;
+	}
+
+	private void putMemory(Key key, byte[] bytes) {
+		if (bytes.length > maxBytes / 4){
+			// a single huge entry would flush everything else
+			return;
+		}
+		synchronized (memoryCache){
+			byte[] oldBytes = memoryCache.put(key, bytes);
+			if (oldBytes != null){
+				memoryBytes -= oldBytes.length;
+			}
+			memoryBytes += bytes.length;
+			Iterator<Map.Entry<Key, byte[]>> iter = memoryCache.entrySet().iterator();
+			while (memoryBytes > maxBytes && iter.hasNext()){
+				memoryBytes -= iter.next().getValue().length;
+				iter.remove();
+			}
+		}
+	}
+
+	private File getFile(Key key) {
+		return new File(cacheDir, key.id);
+	}
+
+	private byte[] readFile(Key key) {
+		if (cacheDir == null){
+			return null;
+		}
+		File file = getFile(key);
+		if (!file.exists()){
+			return null;
+		}
+		try {
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			// keeps recently used entries when pruning
+			file.setLastModified(System.currentTimeMillis());
+			return bytes;
+		} catch (IOException e){
+			lg.error("failed to read cached representation "+file.getAbsolutePath()+": "+e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private void writeFile(Key key, byte[] bytes) {
+		if (cacheDir == null || !cacheDir.isDirectory()){
+			return;
+		}
+		File file = getFile(key);
+		File tempFile = new File(cacheDir, key.id + TEMP_FILE_MARKER + Thread.currentThread().getId());
+		try {
+			Files.write(tempFile.toPath(), bytes);
+			synchronized (diskLock){
+				long oldLength = file.length();
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				diskBytes += bytes.length - oldLength;
+				pruneFiles();
+			}
+		} catch (IOException e){
+			lg.error("failed to write cached representation "+file.getAbsolutePath()+": "+e.getMessage(), e);
+			tempFile.delete();
+		}
+	}
+
+	private File[] listFiles() {
+		File[] files = cacheDir.listFiles(File::isFile);
+		return (files != null) ? files : new File[0];
+	}
+
+	/**
+	 * deletes the least recently used files until the directory is back under 3/4 of its limit (call with diskLock held).
+	 */
+	private void pruneFiles() {
+		if (diskBytes <= maxDiskBytes){
+			return;
+		}
+		File[] files = listFiles();
+		long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++){
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+		diskBytes = 0;
+		for (File file : files){
+			diskBytes += file.length();
+		}
+		long targetBytes = maxDiskBytes / 4 * 3;
+		for (int i = 0; i < order.length && diskBytes > targetBytes; i++){
+			File file = files[order[i]];
+			if (file.getName().contains(TEMP_FILE_MARKER)){
+				// being written by another request
+				continue;
+			}
+			long length = file.length();
+			if (file.delete()){
+				diskBytes -= length;
+			}
+		}
+		lg.info("pruned derived representation cache "+cacheDir.getAbsolutePath()+" to "+diskBytes+" bytes");
+	}
+
+	public long getDiskBytes() {
+		synchronized (diskLock){
+			return diskBytes;
+		}
+	}
+
+	public long getMemoryBytes() {
+		synchronized (memoryCache){
+			return memoryBytes;
+		}
+	}
+
+	private static String digest(String text) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder buffer = new StringBuilder();
+			for (int i = 0; i < 8; i++){
+				buffer.append(String.format("%02x", hash[i]));
+			}
+			return buffer.toString();
+		} catch (NoSuchAlgorithmException e){
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+}
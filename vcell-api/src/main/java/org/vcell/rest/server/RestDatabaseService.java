@@ -1,6 +1,7 @@
 package org.vcell.rest.server;
 
 import java.beans.PropertyVetoException;
+import java.io.File;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -26,6 +27,7 @@ import org.vcell.util.DataAccessException;
 import org.vcell.util.ObjectNotFoundException;
 import org.vcell.util.PermissionException;
 import org.vcell.util.UseridIDExistsException;
+import org.vcell.util.document.BioModelInfo;
 import org.vcell.util.document.GroupAccess;
 import org.vcell.util.document.KeyValue;
 import org.vcell.util.document.User;
@@ -80,13 +82,22 @@ public class RestDatabaseService {
 	ConcurrentHashMap<KeyValue, SimulationRep> simMap = new ConcurrentHashMap<KeyValue, SimulationRep>();
 	VCMessagingService vcMessagingService = null;
 	SimulationDatabaseDirect simulationDatabaseDirect;
+	private final DerivedRepresentationCache derivedRepresentationCache;
+
+	public interface BioModelRenderer {
+		byte[] render(BioModel bioModel) throws Exception;
+	}
 
 	public RestDatabaseService(DatabaseServerImpl databaseServerImpl, LocalAdminDbServer localAdminDbServer, VCMessagingService vcMessagingService) {
 		this.databaseServerImpl = databaseServerImpl;
 		this.localAdminDbServer = localAdminDbServer;
 		this.vcMessagingService = vcMessagingService;
 		this.simulationDatabaseDirect = new SimulationDatabaseDirect(databaseServerImpl.getAdminDBTopLevel(), databaseServerImpl, false);
-
+		String derivedCacheDir = PropertyLoader.getProperty(PropertyLoader.vcellapiDerivedCacheDir, null);
+		this.derivedRepresentationCache = new DerivedRepresentationCache(
+				PropertyLoader.getLongProperty(PropertyLoader.vcellapiDerivedCacheMaxBytes, DerivedRepresentationCache.DEFAULT_MAX_BYTES),
+				PropertyLoader.getLongProperty(PropertyLoader.vcellapiDerivedCacheMaxDiskBytes, DerivedRepresentationCache.DEFAULT_MAX_DISK_BYTES),
+				(derivedCacheDir != null && derivedCacheDir.trim().length() > 0) ? new File(derivedCacheDir.trim()) : null);
 	}
 	
 	public static class SimulationSaveResponse {
@@ -103,6 +114,28 @@ public class RestDatabaseService {
 	public BigString getBioModelXML(KeyValue bmKey,User vcellUser) throws DataAccessException{
 		return databaseServerImpl.getBioModelXML(vcellUser, bmKey);
 	}
+	/**
+	 * version info of a BioModel the user may read (cheap compared to the VCML, used to validate derived representations).
+	 * @throws ObjectNotFoundException if the BioModel does not exist or is not visible to the user (null is never returned).
+	 */
+	public BioModelInfo getBioModelInfo(KeyValue bmKey,User vcellUser) throws DataAccessException, ObjectNotFoundException{
+		if (vcellUser==null){
+			vcellUser = VCellApiApplication.DUMMY_USER;
+		}
+		return databaseServerImpl.getBioModelInfo(vcellUser, bmKey);
+	}
+	/**
+	 * representation derived from the saved BioModel, rendered from its VCML only if not already cached
+	 * (see {@link DerivedRepresentationCache}, read permission must have been checked with {@link #getBioModelInfo(KeyValue, User)}).
+	 */
+	public byte[] getDerivedBioModelRepresentation(DerivedRepresentationCache.Key cacheKey, User vcellUser, BioModelRenderer renderer) throws Exception{
+		final User user = (vcellUser==null) ? VCellApiApplication.DUMMY_USER : vcellUser;
+		return derivedRepresentationCache.get(cacheKey, () -> {
+			BigString vcmlBigString = databaseServerImpl.getBioModelXML(user, cacheKey.getBioModelKey());
+			BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(vcmlBigString.toString()));
+			return renderer.render(bioModel);
+		});
+	}
 	public BigString getMathModelXML(KeyValue mmKey,User vcellUser) throws DataAccessException{
 		return databaseServerImpl.getMathModelXML(vcellUser, mmKey);
 	}
@@ -270,19 +303,42 @@ public class RestDatabaseService {
 			throw new ObjectNotFoundException("Simulation with key "+simKey+" not found");
 		}
 		int jobIndex = Integer.parseInt(jobIndexString);
-		String variableNames[] = null; // TODO: pass in variables names from the query parameters.
+		String variableNames[] = resource.getVariableNames();
+		// rows are selected by the data server
+		Long startRow = resource.getLongQueryValue(SimDataValuesServerResource.PARAM_START_ROW);
+		Long maxRows = resource.getLongQueryValue(SimDataValuesServerResource.PARAM_MAX_ROWS);
+		int startIndex = (startRow != null) ? (int)Math.max(0, startRow - 1) : 0;
+		int maxCount = (maxRows != null) ? (int)Math.max(0, maxRows) : -1;
 		User owner = simRep.getOwner();
 		VCMessageSession rpcSession = vcMessagingService.createProducerSession();
 		try {
 			RpcDataServerProxy rpcDataServerProxy = new RpcDataServerProxy(userLoginInfo, rpcSession);
 			VCSimulationIdentifier vcSimID = new VCSimulationIdentifier(simKey, owner);
 			VCDataIdentifier vcdID = new VCSimulationDataIdentifier(vcSimID, jobIndex);
-			DataSetTimeSeries dataSetTimeSeries = rpcDataServerProxy.getDataSetTimeSeries(vcdID, variableNames);
+			DataSetTimeSeries dataSetTimeSeries = rpcDataServerProxy.getDataSetTimeSeries(vcdID, variableNames, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, startIndex, maxCount);
 			return dataSetTimeSeries;
 		}finally{
 			rpcSession.close();
 		}
 	}
+	public SimDataStream openSimDataStream(SimDataStreamServerResource resource, User vcellUser, String[] variableNames, int[] indices,
+			double startTime, double endTime, int startIndex, int maxCount, int chunkSize) throws DataAccessException, ObjectNotFoundException, SQLException{
+		if (vcellUser==null){
+			vcellUser = VCellApiApplication.DUMMY_USER;
+		}
+		UserLoginInfo userLoginInfo = new UserLoginInfo(vcellUser.getName(),null);
+		String simId = resource.getAttribute(VCellApiApplication.SIMDATAID);
+		String jobIndexString = resource.getAttribute(VCellApiApplication.JOBINDEX);
+		KeyValue simKey = new KeyValue(simId);
+		SimulationRep simRep = getSimulationRep(simKey);
+		if (simRep == null){
+			throw new ObjectNotFoundException("Simulation with key "+simKey+" not found");
+		}
+		int jobIndex = Integer.parseInt(jobIndexString);
+		VCSimulationIdentifier vcSimID = new VCSimulationIdentifier(simKey, simRep.getOwner());
+		VCDataIdentifier vcdID = new VCSimulationDataIdentifier(vcSimID, jobIndex);
+		return SimDataStream.open(vcMessagingService, userLoginInfo, vcdID, variableNames, indices, startTime, endTime, startIndex, maxCount, chunkSize);
+	}
 
 	public BioModelRep[] query(BiomodelsServerResource resource, User vcellUser) throws SQLException, DataAccessException, ParseException {			
 		if (vcellUser==null){
@@ -449,26 +505,6 @@ public class RestDatabaseService {
 	   	return bioModelReps;
 	}
 	
-	public String query(BiomodelVCMLServerResource resource, User vcellUser) throws SQLException, DataAccessException {			
-		if (vcellUser==null){
-			vcellUser = VCellApiApplication.DUMMY_USER;
-		}
-		String bioModelID = (String)resource.getRequestAttributes().get(VCellApiApplication.BIOMODELID);
-		KeyValue bioModelKey = new KeyValue(bioModelID);
-		BigString vcmlBigString = databaseServerImpl.getBioModelXML(vcellUser, bioModelKey);
-		return vcmlBigString.toString();
-	}
-	
-	public String query(BiomodelDiagramServerResource resource, User vcellUser) throws SQLException, DataAccessException {			
-		if (vcellUser==null){
-			vcellUser = VCellApiApplication.DUMMY_USER;
-		}
-		String bioModelID = (String)resource.getRequestAttributes().get(VCellApiApplication.BIOMODELID);
-		KeyValue bioModelKey = new KeyValue(bioModelID);
-		BigString vcmlBigString = databaseServerImpl.getBioModelXML(vcellUser, bioModelKey);
-		return vcmlBigString.toString();
-	}
-	
 	public BioModelRep query(BiomodelServerResource resource, User vcellUser) throws SQLException, ObjectNotFoundException, DataAccessException {	
 		if (vcellUser==null){
 			vcellUser = VCellApiApplication.DUMMY_USER;
@@ -0,0 +1,417 @@
+package org.vcell.rest.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.vcell.rest.rpc.RpcDataServerProxy;
+import org.vcell.util.DataAccessException;
+import org.vcell.util.ObjectNotFoundException;
+import org.vcell.util.document.TSJobResultsNoStats;
+import org.vcell.util.document.TimeSeriesJobResults;
+import org.vcell.util.document.TimeSeriesJobSpec;
+import org.vcell.util.document.UserLoginInfo;
+import org.vcell.util.document.VCDataIdentifier;
+import org.vcell.util.document.VCDataJobID;
+
+import com.google.gson.Gson;
+
+import cbit.vcell.message.VCMessageSession;
+import cbit.vcell.message.VCMessagingService;
+import cbit.vcell.simdata.DataSetTimeSeries;
+
+/**
+ * Selected simulation data fetched from the data server one chunk of time points at a time, so that only a chunk is held
+ * in the API server while it is written to the client.
+ * <p>
+ * Without spatial indices the (ODE or post processing) time series is paged by the data server
+ * ({@link RpcDataServerProxy#getDataSetTimeSeries(VCDataIdentifier, String[], double, double, int, int)}), with indices
+ * the values at those mesh indices are read as time series jobs over consecutive time windows.
+ * <p>
+ * The first column is always the time. Output formats:
+ * <ul>
+ * <li>{@link Format#ndjson}: a header line <code>{"columns":[...]}</code>, then one JSON array per time point
+ * (NaN and infinite values as null). A failure after the header is reported as a final <code>{"error":"..."}</code> line.</li>
+ * <li>{@link Format#binary} and {@link Format#columnar}: int magic, byte layout ('R' or 'C'), int numColumns, column names
+ * (modified UTF-8), then chunks of int numRows followed by the values (big endian doubles), row by row for binary and column
+ * by column for columnar (one record batch per chunk). The stream ends with numRows 0, or with -1 and an error message.</li>
+ * </ul>
+ */
+public abstract class SimDataStream {
+
+	private final static Logger lg = LogManager.getLogger(SimDataStream.class);
+
+	public enum Format {
+		ndjson("application/x-ndjson"),
+		binary("application/octet-stream"),
+		columnar("application/vnd.vcell.columnar");
+
+		public final String mediaType;
+
+		private Format(String mediaType){
+			this.mediaType = mediaType;
+		}
+	}
+
+	public static final int MAGIC = 0x56435344; // "VCSD"
+	public static final int DEFAULT_CHUNK_SIZE = 200;
+	public static final int MAX_CHUNK_VALUES = 1000000;
+
+	/**
+	 * the data server requests made by a stream.
+	 */
+	interface DataSource {
+		DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws DataAccessException;
+		double[] getDataSetTimes(VCDataIdentifier vcdID) throws DataAccessException;
+		TimeSeriesJobResults getTimeSeriesValues(VCDataIdentifier vcdID, TimeSeriesJobSpec timeSeriesJobSpec) throws DataAccessException;
+	}
+
+	private interface DataServerCall<T> {
+		T call(RpcDataServerProxy rpcDataServerProxy) throws DataAccessException;
+	}
+
+	/**
+	 * data server requests over the messaging service, a session per request so that none is held while the client reads.
+	 */
+	private static class MessagingDataSource implements DataSource {
+		private final VCMessagingService vcMessagingService;
+		private final UserLoginInfo userLoginInfo;
+
+		MessagingDataSource(VCMessagingService vcMessagingService, UserLoginInfo userLoginInfo){
+			this.vcMessagingService = vcMessagingService;
+			this.userLoginInfo = userLoginInfo;
+		}
+
+		private <T> T call(DataServerCall<T> dataServerCall) throws DataAccessException {
+			VCMessageSession rpcSession = vcMessagingService.createProducerSession();
+			try {
+				return dataServerCall.call(new RpcDataServerProxy(userLoginInfo, rpcSession));
+			}finally{
+				rpcSession.close();
+			}
+		}
+
+		@Override
+		public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws DataAccessException {
+			return call(proxy -> proxy.getDataSetTimeSeries(vcdID, variableNames, startTime, endTime, startIndex, maxCount));
+		}
+
+		@Override
+		public double[] getDataSetTimes(VCDataIdentifier vcdID) throws DataAccessException {
+			return call(proxy -> proxy.getDataSetTimes(vcdID));
+		}
+
+		@Override
+		public TimeSeriesJobResults getTimeSeriesValues(VCDataIdentifier vcdID, TimeSeriesJobSpec timeSeriesJobSpec) throws DataAccessException {
+			return call(proxy -> proxy.getTimeSeriesValues(null, vcdID, timeSeriesJobSpec));
+		}
+	}
+
+	protected final DataSource dataSource;
+	protected final UserLoginInfo userLoginInfo;
+	protected final VCDataIdentifier vcdID;
+	protected String[] columnNames;
+
+	protected SimDataStream(DataSource dataSource, UserLoginInfo userLoginInfo, VCDataIdentifier vcdID){
+		this.dataSource = dataSource;
+		this.userLoginInfo = userLoginInfo;
+		this.vcdID = vcdID;
+	}
+
+	/**
+	 * opens a stream over the selected data, the first chunk is fetched here so that selection errors are reported
+	 * before anything is written.
+	 * @param variableNames variables to return (all if null, required with indices).
+	 * @param indices mesh indices (null for the time series of non-spatial or post processed data).
+	 * @param startIndex number of time points within [startTime,endTime] to skip.
+	 * @param maxCount maximum number of time points returned (all if negative).
+	 * @param chunkSize number of time points fetched per data server request.
+	 */
+	public static SimDataStream open(VCMessagingService vcMessagingService, UserLoginInfo userLoginInfo, VCDataIdentifier vcdID,
+			String[] variableNames, int[] indices, double startTime, double endTime, int startIndex, int maxCount, int chunkSize) throws DataAccessException {
+		return open(new MessagingDataSource(vcMessagingService, userLoginInfo), userLoginInfo, vcdID, variableNames, indices, startTime, endTime, startIndex, maxCount, chunkSize);
+	}
+
+	static SimDataStream open(DataSource dataSource, UserLoginInfo userLoginInfo, VCDataIdentifier vcdID,
+			String[] variableNames, int[] indices, double startTime, double endTime, int startIndex, int maxCount, int chunkSize) throws DataAccessException {
+		SimDataStream simDataStream;
+		if (indices != null){
+			if (variableNames == null || variableNames.length == 0){
+				throw new IllegalArgumentException("variable names are required with spatial indices");
+			}
+			simDataStream = new SpatialStream(dataSource, userLoginInfo, vcdID, variableNames, indices, startTime, endTime, startIndex, maxCount, chunkSize);
+		}else{
+			simDataStream = new TimeSeriesStream(dataSource, userLoginInfo, vcdID, variableNames, startTime, endTime, startIndex, maxCount, chunkSize);
+		}
+		simDataStream.init();
+		return simDataStream;
+	}
+
+	protected abstract void init() throws DataAccessException;
+
+	/**
+	 * @return the next chunk as columns (values[column][row]), or null after the last one.
+	 */
+	protected abstract double[][] nextChunk() throws DataAccessException;
+
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public void write(OutputStream outputStream, Format format) throws IOException {
+		switch (format){
+			case ndjson:
+				writeNdjson(outputStream);
+				break;
+			case binary:
+			case columnar:
+				writeBinary(outputStream, format == Format.columnar);
+				break;
+		}
+	}
+
+	private void writeNdjson(OutputStream outputStream) throws IOException {
+		Gson gson = new Gson();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 65536);
+		writer.write("{\"columns\":" + gson.toJson(columnNames) + "}\n");
+		try {
+			double[][] chunk;
+			while ((chunk = nextChunk()) != null){
+				int numRows = chunk[0].length;
+				for (int row = 0; row < numRows; row++){
+					writer.write('[');
+					for (int col = 0; col < chunk.length; col++){
+						if (col > 0){
+							writer.write(',');
+						}
+						double value = chunk[col][row];
+						writer.write((Double.isNaN(value) || Double.isInfinite(value)) ? "null" : Double.toString(value));
+					}
+					writer.write("]\n");
+				}
+				writer.flush();
+			}
+		}catch (DataAccessException | RuntimeException e){
+			lg.error("simulation data stream for "+vcdID+" failed: "+e.getMessage(), e);
+			writer.write("{\"error\":" + gson.toJson(String.valueOf(e.getMessage())) + "}\n");
+		}
+		writer.flush();
+	}
+
+	private void writeBinary(OutputStream outputStream, boolean bColumnar) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+		out.writeInt(MAGIC);
+		out.writeByte(bColumnar ? 'C' : 'R');
+		out.writeInt(columnNames.length);
+		for (String columnName : columnNames){
+			out.writeUTF(columnName);
+		}
+		try {
+			double[][] chunk;
+			while ((chunk = nextChunk()) != null){
+				int numRows = chunk[0].length;
+				if (numRows == 0){
+					continue;
+				}
+				out.writeInt(numRows);
+				if (bColumnar){
+					for (int col = 0; col < chunk.length; col++){
+						for (int row = 0; row < numRows; row++){
+							out.writeDouble(chunk[col][row]);
+						}
+					}
+				}else{
+					for (int row = 0; row < numRows; row++){
+						for (int col = 0; col < chunk.length; col++){
+							out.writeDouble(chunk[col][row]);
+						}
+					}
+				}
+				out.flush();
+			}
+			out.writeInt(0);
+		}catch (DataAccessException | RuntimeException e){
+			lg.error("simulation data stream for "+vcdID+" failed: "+e.getMessage(), e);
+			out.writeInt(-1);
+			out.writeUTF(String.valueOf(e.getMessage()));
+		}
+		out.flush();
+	}
+
+
+	/**
+	 * pages of the time series (ODE or post processing data), selected by the data server.
+	 */
+	private static class TimeSeriesStream extends SimDataStream {
+		private final String[] variableNames;
+		private final double startTime;
+		private final double endTime;
+		private final int maxCount;
+		private final int chunkSize;
+		private int nextIndex;
+		private int numReturned = 0;
+		private double[][] firstChunk = null;
+		private boolean bDone = false;
+
+		TimeSeriesStream(DataSource dataSource, UserLoginInfo userLoginInfo, VCDataIdentifier vcdID,
+				String[] variableNames, double startTime, double endTime, int startIndex, int maxCount, int chunkSize){
+			super(dataSource, userLoginInfo, vcdID);
+			this.variableNames = variableNames;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.nextIndex = startIndex;
+			this.maxCount = maxCount;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void init() throws DataAccessException {
+			DataSetTimeSeries page = fetchPage();
+			columnNames = page.getVarNames();
+			if (variableNames != null){
+				for (String variableName : variableNames){
+					if (!Arrays.asList(columnNames).contains(variableName)){
+						throw new ObjectNotFoundException("variable '"+variableName+"' not found in simulation data "+vcdID);
+					}
+				}
+			}
+			firstChunk = toColumns(page);
+		}
+
+		private DataSetTimeSeries fetchPage() throws DataAccessException {
+			int count = (maxCount < 0) ? chunkSize : Math.min(chunkSize, maxCount - numReturned);
+			DataSetTimeSeries page = dataSource.getDataSetTimeSeries(vcdID, variableNames, startTime, endTime, nextIndex, count);
+			int numRows = (page.varDatas.length > 0) ? page.varDatas[0].values.length : 0;
+			nextIndex += numRows;
+			numReturned += numRows;
+			if (numRows < count || (maxCount >= 0 && numReturned >= maxCount)){
+				bDone = true;
+			}
+			return page;
+		}
+
+		private double[][] toColumns(DataSetTimeSeries page) {
+			// time first
+			ArrayList<double[]> columns = new ArrayList<double[]>();
+			ArrayList<String> names = new ArrayList<String>();
+			for (DataSetTimeSeries.VarData varData : page.varDatas){
+				if (varData.name.equals(DataSetTimeSeries.TIME_VARIABLE_NAME)){
+					columns.add(0, varData.values);
+					names.add(0, varData.name);
+				}else{
+					columns.add(varData.values);
+					names.add(varData.name);
+				}
+			}
+			columnNames = names.toArray(new String[0]);
+			return columns.toArray(new double[0][]);
+		}
+
+		@Override
+		protected double[][] nextChunk() throws DataAccessException {
+			if (firstChunk != null){
+				double[][] chunk = firstChunk;
+				firstChunk = null;
+				return (chunk.length > 0 && chunk[0].length > 0) ? chunk : null;
+			}
+			if (bDone){
+				return null;
+			}
+			double[][] chunk = toColumns(fetchPage());
+			return (chunk.length > 0 && chunk[0].length > 0) ? chunk : null;
+		}
+	}
+
+
+	/**
+	 * values at mesh indices, read as time series jobs over windows of consecutive time points.
+	 */
+	private static class SpatialStream extends SimDataStream {
+		private final String[] variableNames;
+		private final int[][] indices;
+		private final double startTime;
+		private final double endTime;
+		private final int startIndex;
+		private final int maxCount;
+		private final int chunkSize;
+		private double[] times = null;
+		private int nextTimeIndex = 0;
+
+		SpatialStream(DataSource dataSource, UserLoginInfo userLoginInfo, VCDataIdentifier vcdID,
+				String[] variableNames, int[] indices, double startTime, double endTime, int startIndex, int maxCount, int chunkSize){
+			super(dataSource, userLoginInfo, vcdID);
+			this.variableNames = variableNames;
+			this.indices = new int[variableNames.length][];
+			Arrays.fill(this.indices, indices);
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.startIndex = startIndex;
+			this.maxCount = maxCount;
+			// keep a chunk (time points x variables x indices) bounded
+			this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_VALUES / Math.max(1, variableNames.length * indices.length)));
+		}
+
+		@Override
+		protected void init() throws DataAccessException {
+			double[] allTimes = dataSource.getDataSetTimes(vcdID);
+			double[] selectedTimes = new double[allTimes.length];
+			int numSelected = 0;
+			int numInRange = 0;
+			for (double time : allTimes){
+				if (time < startTime || time > endTime || numInRange++ < startIndex){
+					continue;
+				}
+				if (maxCount >= 0 && numSelected >= maxCount){
+					break;
+				}
+				selectedTimes[numSelected++] = time;
+			}
+			times = Arrays.copyOf(selectedTimes, numSelected);
+			ArrayList<String> names = new ArrayList<String>();
+			names.add(DataSetTimeSeries.TIME_VARIABLE_NAME);
+			for (String variableName : variableNames){
+				for (int index : indices[0]){
+					names.add(variableName+"["+index+"]");
+				}
+			}
+			columnNames = names.toArray(new String[0]);
+		}
+
+		@Override
+		protected double[][] nextChunk() throws DataAccessException {
+			if (nextTimeIndex >= times.length){
+				return null;
+			}
+			int firstTimeIndex = nextTimeIndex;
+			int lastTimeIndex = Math.min(times.length, firstTimeIndex + chunkSize) - 1;
+			nextTimeIndex = lastTimeIndex + 1;
+			// consecutive data times in the selected range, so step 1 returns exactly times[first..last]
+			final TimeSeriesJobSpec timeSeriesJobSpec = new TimeSeriesJobSpec(variableNames, indices, null,
+					times[firstTimeIndex], 1, times[lastTimeIndex], VCDataJobID.createVCDataJobID(userLoginInfo.getUser(), false));
+			TimeSeriesJobResults results = dataSource.getTimeSeriesValues(vcdID, timeSeriesJobSpec);
+			if (!(results instanceof TSJobResultsNoStats)){
+				throw new DataAccessException("unexpected time series results for "+vcdID);
+			}
+			TSJobResultsNoStats resultsNoStats = (TSJobResultsNoStats)results;
+			double[][] chunk = new double[columnNames.length][];
+			chunk[0] = resultsNoStats.getTimes();
+			int col = 1;
+			for (String variableName : variableNames){
+				double[][] timesAndValues = resultsNoStats.getTimesAndValuesForVariable(variableName);
+				for (int i = 1; i < timesAndValues.length; i++){
+					chunk[col++] = timesAndValues[i];
+				}
+			}
+			return chunk;
+		}
+	}
+}
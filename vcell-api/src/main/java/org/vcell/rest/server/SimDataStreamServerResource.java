@@ -0,0 +1,155 @@
+package org.vcell.rest.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.ext.wadl.MethodInfo;
+import org.restlet.ext.wadl.ParameterInfo;
+import org.restlet.ext.wadl.ParameterStyle;
+import org.restlet.ext.wadl.RequestInfo;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
+import org.vcell.rest.VCellApiApplication;
+import org.vcell.rest.VCellApiApplication.AuthenticationPolicy;
+import org.vcell.rest.common.SimDataStreamResource;
+import org.vcell.util.ObjectNotFoundException;
+import org.vcell.util.PermissionException;
+import org.vcell.util.document.User;
+
+public class SimDataStreamServerResource extends AbstractServerResource implements SimDataStreamResource {
+
+	public static final String PARAM_VARIABLES = "variables";
+	public static final String PARAM_INDICES = "indices";
+	public static final String PARAM_START_TIME = "startTime";
+	public static final String PARAM_END_TIME = "endTime";
+	public static final String PARAM_START_ROW = "startRow";
+	public static final String PARAM_MAX_ROWS = "maxRows";
+	public static final String PARAM_FORMAT = "format";
+	public static final String PARAM_CHUNK_SIZE = "chunkSize";
+
+	static final int MAX_CHUNK_SIZE = 100000;
+
+	@Override
+	protected void doInit() throws ResourceException {
+		setName("Simulation data stream resource");
+		setDescription("Selected simulation data values, streamed in chunks of time points");
+	}
+
+	@Override
+	protected void describeGet(MethodInfo info) {
+		super.describeGet(info);
+		RequestInfo requestInfo = new RequestInfo();
+        List<ParameterInfo> parameterInfos = new ArrayList<ParameterInfo>();
+        parameterInfos.add(new ParameterInfo(VCellApiApplication.SIMDATAID,true,"string",ParameterStyle.TEMPLATE,"VCell simulation database id"));
+        parameterInfos.add(new ParameterInfo(VCellApiApplication.JOBINDEX,true,"string",ParameterStyle.TEMPLATE,"simulation job index"));
+        parameterInfos.add(new ParameterInfo(PARAM_VARIABLES,false,"string",ParameterStyle.QUERY,"comma separated variable names (default is all, required with indices)"));
+        parameterInfos.add(new ParameterInfo(PARAM_INDICES,false,"string",ParameterStyle.QUERY,"comma separated mesh indices of spatial variables"));
+        parameterInfos.add(new ParameterInfo(PARAM_START_TIME,false,"string",ParameterStyle.QUERY,"first simulation time returned"));
+        parameterInfos.add(new ParameterInfo(PARAM_END_TIME,false,"string",ParameterStyle.QUERY,"last simulation time returned"));
+        parameterInfos.add(new ParameterInfo(PARAM_START_ROW,false,"string",ParameterStyle.QUERY,"index of first time point returned within the time range (default is 1)"));
+        parameterInfos.add(new ParameterInfo(PARAM_MAX_ROWS,false,"string",ParameterStyle.QUERY,"max number of time points returned (default is all)"));
+        parameterInfos.add(new ParameterInfo(PARAM_FORMAT,false,"string",ParameterStyle.QUERY,"ndjson (default), binary or columnar"));
+        parameterInfos.add(new ParameterInfo(PARAM_CHUNK_SIZE,false,"string",ParameterStyle.QUERY,"time points per chunk (default is "+SimDataStream.DEFAULT_CHUNK_SIZE+")"));
+ 		requestInfo.setParameters(parameterInfos);
+		info.setRequest(requestInfo);
+	}
+
+	@Override
+	public Representation get_stream() {
+		VCellApiApplication application = ((VCellApiApplication)getApplication());
+		User vcellUser = application.getVCellUser(getChallengeResponse(),AuthenticationPolicy.prohibitInvalidCredentials);
+		RestDatabaseService restDatabaseService = application.getRestDatabaseService();
+
+		final SimDataStream.Format format;
+		String[] variableNames = null;
+		int[] indices = null;
+		try {
+			String formatName = getQueryValue(PARAM_FORMAT);
+			format = (formatName != null && formatName.length() > 0) ? SimDataStream.Format.valueOf(formatName) : SimDataStream.Format.ndjson;
+			variableNames = parseVariableNames(getQueryValue(PARAM_VARIABLES));
+			indices = parseIndices(getQueryValue(PARAM_INDICES));
+		} catch (IllegalArgumentException e){
+			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+		}
+		Double startTime = getDoubleQueryValue(PARAM_START_TIME);
+		Double endTime = getDoubleQueryValue(PARAM_END_TIME);
+		Long startRow = getLongQueryValue(PARAM_START_ROW);
+		Long maxRows = getLongQueryValue(PARAM_MAX_ROWS);
+		Long chunkSize = getLongQueryValue(PARAM_CHUNK_SIZE);
+
+		final SimDataStream simDataStream;
+		try {
+			simDataStream = restDatabaseService.openSimDataStream(this, vcellUser, variableNames, indices,
+					(startTime != null) ? startTime : Double.NEGATIVE_INFINITY,
+					(endTime != null) ? endTime : Double.POSITIVE_INFINITY,
+					getStartIndex(startRow), getMaxCount(maxRows), getChunkSize(chunkSize));
+		} catch (PermissionException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_UNAUTHORIZED, "not authorized to read simulation data");
+		} catch (ObjectNotFoundException e) {
+			e.printStackTrace();
+			throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+		} catch (Exception e){
+			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e.getMessage());
+		}
+
+		// size is unknown, sent chunked while the data server is paged
+		return new OutputRepresentation(MediaType.valueOf(format.mediaType)) {
+			@Override
+			public void write(OutputStream outputStream) throws IOException {
+				simDataStream.write(outputStream, format);
+			}
+		};
+	}
+
+	/**
+	 * @return comma separated names, null (all variables) if none.
+	 */
+	static String[] parseVariableNames(String variables) {
+		if (variables == null || variables.trim().length() == 0){
+			return null;
+		}
+		return variables.trim().split("\\s*,\\s*");
+	}
+
+	/**
+	 * @return comma separated mesh indices, null (time series of non-spatial data) if none.
+	 * @throws NumberFormatException if an index is not an integer.
+	 */
+	static int[] parseIndices(String indicesValue) {
+		if (indicesValue == null || indicesValue.trim().length() == 0){
+			return null;
+		}
+		String[] tokens = indicesValue.trim().split("\\s*,\\s*");
+		int[] indices = new int[tokens.length];
+		for (int i = 0; i < tokens.length; i++){
+			indices[i] = Integer.parseInt(tokens[i]);
+		}
+		return indices;
+	}
+
+	/**
+	 * @return number of time points skipped for the 1-based start row (none if missing or less than 1).
+	 */
+	static int getStartIndex(Long startRow) {
+		return (startRow != null) ? (int)Math.max(0, Math.min(startRow - 1, Integer.MAX_VALUE)) : 0;
+	}
+
+	/**
+	 * @return maximum number of time points, all (-1) if missing and none if not positive.
+	 */
+	static int getMaxCount(Long maxRows) {
+		return (maxRows != null) ? (int)Math.max(0, Math.min(maxRows, Integer.MAX_VALUE)) : -1;
+	}
+
+	static int getChunkSize(Long chunkSize) {
+		return (chunkSize != null) ? (int)Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE)) : SimDataStream.DEFAULT_CHUNK_SIZE;
+	}
+}
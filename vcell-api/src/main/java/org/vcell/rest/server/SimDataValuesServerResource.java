@@ -40,6 +40,7 @@ public class SimDataValuesServerResource extends AbstractServerResource implemen
 	public static final String PARAM_SIM_ID = "simId";
 	public static final String PARAM_START_ROW = "startRow";
 	public static final String PARAM_MAX_ROWS = "maxRows";
+	public static final String PARAM_VARIABLES = "variables";
 
 	@Override
 	protected void doInit() throws ResourceException {
@@ -68,6 +69,7 @@ public class SimDataValuesServerResource extends AbstractServerResource implemen
         parameterInfos.add(new ParameterInfo(PARAM_SIM_ID,false,"string",ParameterStyle.QUERY,"VCell simulation database id"));
         parameterInfos.add(new ParameterInfo(PARAM_START_ROW,false,"string",ParameterStyle.QUERY,"index of first record returned (default is 1)"));
         parameterInfos.add(new ParameterInfo(PARAM_MAX_ROWS,false,"string",ParameterStyle.QUERY,"max number of records returned (default is 10)"));
+        parameterInfos.add(new ParameterInfo(PARAM_VARIABLES,false,"string",ParameterStyle.QUERY,"comma separated variable names (default is all)"));
  		requestInfo.setParameters(parameterInfos);
 		info.setRequest(requestInfo);
 	}
@@ -169,6 +171,14 @@ public class SimDataValuesServerResource extends AbstractServerResource implemen
 	}
 
 
+	String[] getVariableNames() {
+		String variables = getQueryValue(PARAM_VARIABLES);
+		if (variables == null || variables.trim().length() == 0){
+			return null;
+		}
+		return variables.trim().split("\\s*,\\s*");
+	}
+
 	private SimDataValuesRepresentation getSimDataValuesRepresentation(User vcellUser) {
 //		if (!application.authenticate(getRequest(), getResponse())){
 //			// not authenticated
@@ -0,0 +1,74 @@
+package org.vcell.rest.server;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.StringRepresentation;
+
+public class AbstractServerResourceTest {
+
+	private static final String ETAG = "bm12_1500000000000_sbml";
+	// http dates have a resolution of one second
+	private static final Date LAST_MODIFIED = new Date(1500000000000L);
+
+	private static AbstractServerResource createResource(Method method, String ifNoneMatch, Date ifModifiedSince) {
+		Request request = new Request(method, "http://localhost/biomodel/12/sbml");
+		if (ifNoneMatch != null) {
+			request.getConditions().setNoneMatch(Arrays.asList(new Tag(ifNoneMatch, false)));
+		}
+		if (ifModifiedSince != null) {
+			request.getConditions().setModifiedSince(ifModifiedSince);
+		}
+		AbstractServerResource resource = new AbstractServerResource();
+		resource.init(new Context(), request, new Response(request));
+		return resource;
+	}
+
+	@Test
+	public void testUnconditionalRequest() {
+		AbstractServerResource resource = createResource(Method.GET, null, null);
+		Assert.assertFalse(resource.isNotModified(ETAG, LAST_MODIFIED));
+		Assert.assertNotEquals(Status.REDIRECTION_NOT_MODIFIED, resource.getStatus());
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+		AbstractServerResource resource = createResource(Method.GET, ETAG, null);
+		Assert.assertTrue(resource.isNotModified(ETAG, LAST_MODIFIED));
+		Assert.assertEquals(Status.REDIRECTION_NOT_MODIFIED, resource.getStatus());
+
+		// client copy of another version (the BioModel was saved again)
+		resource = createResource(Method.GET, ETAG, null);
+		Assert.assertFalse(resource.isNotModified("bm13_1500000001000_sbml", new Date(LAST_MODIFIED.getTime() + 1000)));
+		Assert.assertNotEquals(Status.REDIRECTION_NOT_MODIFIED, resource.getStatus());
+	}
+
+	@Test
+	public void testIfModifiedSince() {
+		AbstractServerResource resource = createResource(Method.GET, null, LAST_MODIFIED);
+		Assert.assertTrue(resource.isNotModified(ETAG, LAST_MODIFIED));
+		Assert.assertEquals(Status.REDIRECTION_NOT_MODIFIED, resource.getStatus());
+
+		resource = createResource(Method.GET, null, new Date(LAST_MODIFIED.getTime() - 60000));
+		Assert.assertFalse(resource.isNotModified(ETAG, LAST_MODIFIED));
+	}
+
+	@Test
+	public void testSetValidators() {
+		AbstractServerResource resource = createResource(Method.GET, null, null);
+		StringRepresentation representation = new StringRepresentation("<sbml/>", MediaType.APPLICATION_XML);
+		Assert.assertSame(representation, resource.setValidators(representation, ETAG, LAST_MODIFIED));
+		Assert.assertEquals(ETAG, representation.getTag().getName());
+		Assert.assertFalse(representation.getTag().isWeak());
+		Assert.assertEquals(LAST_MODIFIED, representation.getModificationDate());
+	}
+}
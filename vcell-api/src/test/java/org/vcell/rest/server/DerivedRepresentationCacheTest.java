@@ -0,0 +1,301 @@
+package org.vcell.rest.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+
+public class DerivedRepresentationCacheTest {
+
+	private static final KeyValue BIOMODEL_KEY = new KeyValue("12");
+	private static final Date VERSION_DATE = new Date(1500000000000L);
+
+	private File cacheDir = null;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = Files.createTempDirectory("derivedRepresentationCacheTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	/**
+	 * producer of 'size' bytes filled with 'value' which counts its calls.
+	 */
+	private static DerivedRepresentationCache.Producer producer(AtomicInteger count, int size, int value) {
+		return () -> {
+			count.incrementAndGet();
+			byte[] bytes = new byte[size];
+			Arrays.fill(bytes, (byte)value);
+			return bytes;
+		};
+	}
+
+	private static DerivedRepresentationCache.Producer failingProducer() {
+		return () -> {
+			throw new AssertionError("representation should have been cached");
+		};
+	}
+
+	private static DerivedRepresentationCache.Key key(String format) {
+		return new DerivedRepresentationCache.Key(BIOMODEL_KEY, VERSION_DATE, null, format);
+	}
+
+	@Test
+	public void testHitAndMiss() throws Exception {
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, null);
+		AtomicInteger count = new AtomicInteger(0);
+		byte[] bytes = cache.get(key(DerivedRepresentationCache.FORMAT_SBML), producer(count, 10, 1));
+		Assert.assertEquals(1, count.get());
+		Assert.assertSame(bytes, cache.get(key(DerivedRepresentationCache.FORMAT_SBML), failingProducer()));
+		Assert.assertEquals(10, cache.getMemoryBytes());
+
+		// other formats and applications of the same version are separate entries
+		cache.get(key(DerivedRepresentationCache.FORMAT_BNGL), producer(count, 10, 2));
+		cache.get(new DerivedRepresentationCache.Key(BIOMODEL_KEY, VERSION_DATE, "app1", DerivedRepresentationCache.FORMAT_SBML), producer(count, 10, 3));
+		cache.get(new DerivedRepresentationCache.Key(BIOMODEL_KEY, VERSION_DATE, "app2", DerivedRepresentationCache.FORMAT_SBML), producer(count, 10, 4));
+		Assert.assertEquals(4, count.get());
+		Assert.assertEquals(40, cache.getMemoryBytes());
+	}
+
+	@Test
+	public void testNewVersion() throws Exception {
+		// saving the BioModel again gives a new version (new key and date), the entry of the old version is not served for it
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, cacheDir);
+		AtomicInteger count = new AtomicInteger(0);
+		DerivedRepresentationCache.Key oldKey = key(DerivedRepresentationCache.FORMAT_VCML);
+		DerivedRepresentationCache.Key newDateKey = new DerivedRepresentationCache.Key(BIOMODEL_KEY, new Date(VERSION_DATE.getTime() + 1000), null, DerivedRepresentationCache.FORMAT_VCML);
+		DerivedRepresentationCache.Key newBioModelKey = new DerivedRepresentationCache.Key(new KeyValue("13"), new Date(VERSION_DATE.getTime() + 1000), null, DerivedRepresentationCache.FORMAT_VCML);
+		Assert.assertNotEquals(oldKey.getETag(), newDateKey.getETag());
+		Assert.assertNotEquals(newDateKey.getETag(), newBioModelKey.getETag());
+
+		byte[] oldBytes = cache.get(oldKey, producer(count, 10, 1));
+		byte[] newBytes = cache.get(newDateKey, producer(count, 10, 2));
+		Assert.assertEquals(2, count.get());
+		Assert.assertEquals(2, newBytes[0]);
+		cache.get(newBioModelKey, producer(count, 10, 3));
+		Assert.assertEquals(3, count.get());
+		Assert.assertSame(oldBytes, cache.get(oldKey, failingProducer()));
+	}
+
+	@Test
+	public void testLruEviction() throws Exception {
+		// room for four entries of 100 bytes
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(400, null);
+		AtomicInteger count = new AtomicInteger(0);
+		DerivedRepresentationCache.Key[] keys = new DerivedRepresentationCache.Key[5];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new DerivedRepresentationCache.Key(new KeyValue(Integer.toString(100 + i)), VERSION_DATE, null, DerivedRepresentationCache.FORMAT_SBML);
+		}
+		for (int i = 0; i < 4; i++) {
+			cache.get(keys[i], producer(count, 100, i));
+		}
+		Assert.assertEquals(400, cache.getMemoryBytes());
+
+		// using the first entry makes the second one the least recently used
+		cache.get(keys[0], failingProducer());
+		cache.get(keys[4], producer(count, 100, 4));
+		Assert.assertEquals(5, count.get());
+		Assert.assertEquals(400, cache.getMemoryBytes());
+		cache.get(keys[0], failingProducer());
+		cache.get(keys[2], failingProducer());
+		cache.get(keys[3], failingProducer());
+		cache.get(keys[4], failingProducer());
+		cache.get(keys[1], producer(count, 100, 1));
+		Assert.assertEquals(6, count.get());
+
+		// an entry larger than a quarter of the cache is served but not kept
+		cache.get(keys[1], failingProducer());
+		DerivedRepresentationCache.Key hugeKey = key(DerivedRepresentationCache.FORMAT_DIAGRAM_PNG);
+		cache.get(hugeKey, producer(count, 101, 5));
+		cache.get(hugeKey, producer(count, 101, 5));
+		Assert.assertEquals(8, count.get());
+		Assert.assertEquals(400, cache.getMemoryBytes());
+	}
+
+	@Test
+	public void testDiskPersistence() throws Exception {
+		AtomicInteger count = new AtomicInteger(0);
+		DerivedRepresentationCache.Key sbmlKey = key(DerivedRepresentationCache.FORMAT_SBML);
+		DerivedRepresentationCache.Key pngKey = key(DerivedRepresentationCache.FORMAT_DIAGRAM_PNG);
+		byte[] sbmlBytes = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, cacheDir).get(sbmlKey, producer(count, 10, 1));
+		// too large for memory, still written to disk
+		byte[] pngBytes = new DerivedRepresentationCache(100, cacheDir).get(pngKey, producer(count, 50, 2));
+		Assert.assertTrue(new File(cacheDir, sbmlKey.getETag()).isFile());
+		Assert.assertEquals(2, cacheDir.listFiles().length);
+
+		// a new cache (after a restart) finds the entries on disk
+		DerivedRepresentationCache restartedCache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, cacheDir);
+		Assert.assertArrayEquals(sbmlBytes, restartedCache.get(sbmlKey, failingProducer()));
+		Assert.assertArrayEquals(pngBytes, restartedCache.get(pngKey, failingProducer()));
+		Assert.assertEquals(60, restartedCache.getMemoryBytes());
+		Assert.assertEquals(2, count.get());
+
+		// memory only caches start empty
+		new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, null).get(sbmlKey, producer(count, 10, 1));
+		Assert.assertEquals(3, count.get());
+	}
+
+	@Test
+	public void testFormatVersionInETag() throws Exception {
+		Assert.assertTrue(key(DerivedRepresentationCache.FORMAT_SBML).getETag().startsWith("v"+DerivedRepresentationCache.CACHE_FORMAT_VERSION+"_"));
+	}
+
+	@Test
+	public void testDiskPruning() throws Exception {
+		// room for four files of 100 bytes on disk, nothing in memory
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(0, 400, cacheDir);
+		AtomicInteger count = new AtomicInteger(0);
+		DerivedRepresentationCache.Key[] keys = new DerivedRepresentationCache.Key[5];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new DerivedRepresentationCache.Key(new KeyValue(Integer.toString(100 + i)), VERSION_DATE, null, DerivedRepresentationCache.FORMAT_SBML);
+		}
+		for (int i = 0; i < 4; i++) {
+			cache.get(keys[i], producer(count, 100, i));
+			new File(cacheDir, keys[i].getETag()).setLastModified(VERSION_DATE.getTime() + i * 10000L);
+		}
+		Assert.assertEquals(400, cache.getDiskBytes());
+		Assert.assertEquals(4, cacheDir.listFiles().length);
+
+		// reading the oldest file makes it the most recently used, the fifth file prunes the two least recently used
+		cache.get(keys[0], failingProducer());
+		cache.get(keys[4], producer(count, 100, 4));
+		Assert.assertEquals(300, cache.getDiskBytes());
+		Assert.assertTrue(new File(cacheDir, keys[0].getETag()).isFile());
+		Assert.assertFalse(new File(cacheDir, keys[1].getETag()).exists());
+		Assert.assertFalse(new File(cacheDir, keys[2].getETag()).exists());
+		Assert.assertTrue(new File(cacheDir, keys[4].getETag()).isFile());
+
+		// a restart counts the files already there and removes left over temporary files
+		Assert.assertTrue(new File(cacheDir, keys[1].getETag() + ".tmp1").createNewFile());
+		DerivedRepresentationCache restartedCache = new DerivedRepresentationCache(0, 400, cacheDir);
+		Assert.assertEquals(300, restartedCache.getDiskBytes());
+		Assert.assertEquals(3, cacheDir.listFiles().length);
+	}
+
+	@Test
+	public void testFailureNotCached() throws Exception {
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, cacheDir);
+		DerivedRepresentationCache.Key sbmlKey = key(DerivedRepresentationCache.FORMAT_SBML);
+		try {
+			cache.get(sbmlKey, () -> { throw new IOException("export failed"); });
+			Assert.fail("expected the failure of the producer");
+		} catch (IOException e) {
+			Assert.assertEquals("export failed", e.getMessage());
+		}
+		try {
+			cache.get(sbmlKey, () -> null);
+			Assert.fail("expected a missing representation to be rejected");
+		} catch (IOException e) {
+		}
+		AtomicInteger count = new AtomicInteger(0);
+		cache.get(sbmlKey, producer(count, 10, 1));
+		Assert.assertEquals(1, count.get());
+		Assert.assertEquals(1, cacheDir.listFiles().length);
+	}
+
+	@Test
+	public void testConcurrentRequestsProduceOnce() throws Exception {
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, null);
+		DerivedRepresentationCache.Key sbmlKey = key(DerivedRepresentationCache.FORMAT_SBML);
+		AtomicInteger count = new AtomicInteger(0);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		DerivedRepresentationCache.Producer slowProducer = () -> {
+			count.incrementAndGet();
+			started.countDown();
+			release.await();
+			return new byte[] { 1, 2, 3 };
+		};
+		AtomicReference<byte[]> firstResult = new AtomicReference<byte[]>();
+		AtomicReference<byte[]> secondResult = new AtomicReference<byte[]>();
+		Thread first = new Thread(() -> {
+			try {
+				firstResult.set(cache.get(sbmlKey, slowProducer));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		Thread second = new Thread(() -> {
+			try {
+				secondResult.set(cache.get(sbmlKey, slowProducer));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		first.start();
+		started.await();
+		second.start();
+		// the second request waits for the one in progress
+		long endTime = System.currentTimeMillis() + 10000;
+		while (second.getState() != Thread.State.WAITING && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(Thread.State.WAITING, second.getState());
+		release.countDown();
+		first.join(10000);
+		second.join(10000);
+
+		Assert.assertEquals(1, count.get());
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, firstResult.get());
+		Assert.assertSame(firstResult.get(), secondResult.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsShareFailure() throws Exception {
+		DerivedRepresentationCache cache = new DerivedRepresentationCache(DerivedRepresentationCache.DEFAULT_MAX_BYTES, null);
+		DerivedRepresentationCache.Key sbmlKey = key(DerivedRepresentationCache.FORMAT_SBML);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<Exception> secondException = new AtomicReference<Exception>();
+		Thread first = new Thread(() -> {
+			try {
+				cache.get(sbmlKey, () -> {
+					started.countDown();
+					release.await();
+					throw new IOException("export failed");
+				});
+			} catch (Exception e) {
+			}
+		});
+		Thread second = new Thread(() -> {
+			try {
+				cache.get(sbmlKey, failingProducer());
+			} catch (Exception e) {
+				secondException.set(e);
+			}
+		});
+		first.start();
+		started.await();
+		second.start();
+		long endTime = System.currentTimeMillis() + 10000;
+		while (second.getState() != Thread.State.WAITING && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		first.join(10000);
+		second.join(10000);
+
+		Assert.assertTrue(secondException.get() instanceof IOException);
+		Assert.assertEquals("export failed", secondException.get().getMessage());
+	}
+}
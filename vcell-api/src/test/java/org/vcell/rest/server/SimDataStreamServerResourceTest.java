@@ -0,0 +1,44 @@
+package org.vcell.rest.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimDataStreamServerResourceTest {
+
+	@Test
+	public void testRows() {
+		// startRow is 1-based
+		Assert.assertEquals(0, SimDataStreamServerResource.getStartIndex(null));
+		Assert.assertEquals(0, SimDataStreamServerResource.getStartIndex(1L));
+		Assert.assertEquals(9, SimDataStreamServerResource.getStartIndex(10L));
+		Assert.assertEquals(0, SimDataStreamServerResource.getStartIndex(0L));
+		Assert.assertEquals(0, SimDataStreamServerResource.getStartIndex(-5L));
+		Assert.assertEquals(Integer.MAX_VALUE, SimDataStreamServerResource.getStartIndex(Long.MAX_VALUE));
+
+		// all rows unless limited, none if not positive
+		Assert.assertEquals(-1, SimDataStreamServerResource.getMaxCount(null));
+		Assert.assertEquals(0, SimDataStreamServerResource.getMaxCount(0L));
+		Assert.assertEquals(0, SimDataStreamServerResource.getMaxCount(-1L));
+		Assert.assertEquals(25, SimDataStreamServerResource.getMaxCount(25L));
+		Assert.assertEquals(Integer.MAX_VALUE, SimDataStreamServerResource.getMaxCount(1L + Integer.MAX_VALUE));
+
+		Assert.assertEquals(SimDataStream.DEFAULT_CHUNK_SIZE, SimDataStreamServerResource.getChunkSize(null));
+		Assert.assertEquals(1, SimDataStreamServerResource.getChunkSize(0L));
+		Assert.assertEquals(SimDataStreamServerResource.MAX_CHUNK_SIZE, SimDataStreamServerResource.getChunkSize(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testParse() {
+		Assert.assertNull(SimDataStreamServerResource.parseVariableNames(null));
+		Assert.assertNull(SimDataStreamServerResource.parseVariableNames(" "));
+		Assert.assertArrayEquals(new String[] { "A", "B_c" }, SimDataStreamServerResource.parseVariableNames(" A , B_c"));
+
+		Assert.assertNull(SimDataStreamServerResource.parseIndices(""));
+		Assert.assertArrayEquals(new int[] { 4, 0, 12 }, SimDataStreamServerResource.parseIndices("4, 0 ,12"));
+		try {
+			SimDataStreamServerResource.parseIndices("1,x");
+			Assert.fail("expected a bad index to be rejected");
+		} catch (NumberFormatException e) {
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package org.vcell.rest.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.DataAccessException;
+import org.vcell.util.ObjectNotFoundException;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.TSJobResultsNoStats;
+import org.vcell.util.document.TimeSeriesJobResults;
+import org.vcell.util.document.TimeSeriesJobSpec;
+import org.vcell.util.document.User;
+import org.vcell.util.document.UserLoginInfo;
+import org.vcell.util.document.VCDataIdentifier;
+
+import cbit.vcell.simdata.DataSetTimeSeries;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
+import cbit.vcell.solver.VCSimulationIdentifier;
+
+public class SimDataStreamTest {
+
+	private static final VCDataIdentifier VCDATAID = new VCSimulationDataIdentifier(new VCSimulationIdentifier(new KeyValue("1"), User.tempUser), 0);
+	private static final UserLoginInfo USER_LOGIN_INFO = new UserLoginInfo(User.tempUser.getName(), null);
+
+	/**
+	 * post processing data with times 0,1,...,numTimes-1 and variables A = t and B = -t, paged as by the data server;
+	 * records the (startIndex,maxCount) of each request.
+	 */
+	private static class TestDataSource implements SimDataStream.DataSource {
+		final int numTimes;
+		final List<int[]> requests = new ArrayList<int[]>();
+
+		TestDataSource(int numTimes){
+			this.numTimes = numTimes;
+		}
+
+		@Override
+		public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws DataAccessException {
+			requests.add(new int[] { startIndex, maxCount });
+			return new DataSetTimeSeries(vcdID, new DataSetTimeSeries.DataSetPostProcessData() {
+				@Override
+				public double[] getTimes() {
+					return values(1);
+				}
+				@Override
+				public String[] getVariableStatNames() {
+					return new String[] { "A", "B" };
+				}
+				@Override
+				public double[] getVariableStatValues(String varName) {
+					return values(varName.equals("A") ? 1 : -1);
+				}
+			}, variableNames, startTime, endTime, startIndex, maxCount);
+		}
+
+		@Override
+		public double[] getDataSetTimes(VCDataIdentifier vcdID) throws DataAccessException {
+			return values(1);
+		}
+
+		@Override
+		public TimeSeriesJobResults getTimeSeriesValues(VCDataIdentifier vcdID, TimeSeriesJobSpec timeSeriesJobSpec) throws DataAccessException {
+			// consecutive times from the start time, value = 100*index + time
+			int first = (int)timeSeriesJobSpec.getStartTime();
+			int numTimes = (int)timeSeriesJobSpec.getEndTime() - first + 1;
+			requests.add(new int[] { first, numTimes });
+			double[] times = new double[numTimes];
+			String[] variableNames = timeSeriesJobSpec.getVariableNames();
+			int[][] indices = timeSeriesJobSpec.getIndices();
+			double[][][] values = new double[variableNames.length][][];
+			for (int v = 0; v < variableNames.length; v++){
+				values[v] = new double[indices[v].length + 1][numTimes];
+				for (int t = 0; t < numTimes; t++){
+					times[t] = first + t;
+					values[v][0][t] = first + t;
+					for (int i = 0; i < indices[v].length; i++){
+						values[v][i + 1][t] = 100 * indices[v][i] + first + t;
+					}
+				}
+			}
+			return new TSJobResultsNoStats(variableNames, indices, times, values);
+		}
+
+		private double[] values(double scale){
+			double[] values = new double[numTimes];
+			for (int i = 0; i < numTimes; i++){
+				values[i] = scale * i;
+			}
+			return values;
+		}
+	}
+
+	private static String[] writeNdjson(SimDataStream simDataStream) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		simDataStream.write(out, SimDataStream.Format.ndjson);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+	}
+
+	@Test
+	public void testPaging() throws Exception {
+		TestDataSource dataSource = new TestDataSource(20);
+		SimDataStream simDataStream = SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, new String[] { "B" }, null,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 3, 10, 4);
+		String[] lines = writeNdjson(simDataStream);
+		Assert.assertEquals("{\"columns\":[\"t\",\"B\"]}", lines[0]);
+		Assert.assertEquals(1 + 10, lines.length);
+		Assert.assertEquals("[3.0,-3.0]", lines[1]);
+		Assert.assertEquals("[12.0,-12.0]", lines[10]);
+		// pages of 4, the last one limited by maxCount
+		Assert.assertEquals(3, dataSource.requests.size());
+		Assert.assertArrayEquals(new int[] { 3, 4 }, dataSource.requests.get(0));
+		Assert.assertArrayEquals(new int[] { 7, 4 }, dataSource.requests.get(1));
+		Assert.assertArrayEquals(new int[] { 11, 2 }, dataSource.requests.get(2));
+	}
+
+	@Test
+	public void testPagingToTheEnd() throws Exception {
+		// all rows in full pages, the empty page after the last one ends the stream
+		TestDataSource dataSource = new TestDataSource(20);
+		String[] lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, null, null,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1, 5));
+		Assert.assertEquals("{\"columns\":[\"t\",\"A\",\"B\"]}", lines[0]);
+		Assert.assertEquals(1 + 20, lines.length);
+		Assert.assertEquals("[19.0,19.0,-19.0]", lines[20]);
+		Assert.assertEquals(5, dataSource.requests.size());
+		Assert.assertArrayEquals(new int[] { 20, 5 }, dataSource.requests.get(4));
+
+		// a partial last page ends the stream
+		dataSource = new TestDataSource(18);
+		lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, null, null,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1, 5));
+		Assert.assertEquals(1 + 18, lines.length);
+		Assert.assertEquals(4, dataSource.requests.size());
+
+		// time range
+		dataSource = new TestDataSource(20);
+		lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, new String[] { "A" }, null, 5, 8, 1, -1, 2));
+		Assert.assertEquals(1 + 3, lines.length);
+		Assert.assertEquals("[6.0,6.0]", lines[1]);
+		Assert.assertEquals("[8.0,8.0]", lines[3]);
+	}
+
+	@Test
+	public void testNoRows() throws Exception {
+		// maxCount 0 returns the columns only
+		TestDataSource dataSource = new TestDataSource(20);
+		String[] lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, new String[] { "A" }, null,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, 0, 5));
+		Assert.assertArrayEquals(new String[] { "{\"columns\":[\"t\",\"A\"]}" }, lines);
+		Assert.assertEquals(1, dataSource.requests.size());
+
+		// start past the end
+		lines = writeNdjson(SimDataStream.open(new TestDataSource(20), USER_LOGIN_INFO, VCDATAID, new String[] { "A" }, null,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 20, -1, 5));
+		Assert.assertEquals(1, lines.length);
+
+		// variables are checked when opened
+		try {
+			SimDataStream.open(new TestDataSource(20), USER_LOGIN_INFO, VCDATAID, new String[] { "C" }, null,
+					Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1, 5);
+			Assert.fail("expected unknown variable to be rejected");
+		} catch (ObjectNotFoundException e) {
+		}
+	}
+
+	@Test
+	public void testBinaryFormats() throws Exception {
+		for (SimDataStream.Format format : new SimDataStream.Format[] { SimDataStream.Format.binary, SimDataStream.Format.columnar }){
+			SimDataStream simDataStream = SimDataStream.open(new TestDataSource(10), USER_LOGIN_INFO, VCDATAID, new String[] { "A", "B" }, null,
+					Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 2, 7, 4);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			simDataStream.write(out, format);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertEquals(SimDataStream.MAGIC, in.readInt());
+			boolean bColumnar = (format == SimDataStream.Format.columnar);
+			Assert.assertEquals(bColumnar ? 'C' : 'R', in.readByte());
+			Assert.assertEquals(3, in.readInt());
+			Assert.assertArrayEquals(new String[] { "t", "A", "B" }, new String[] { in.readUTF(), in.readUTF(), in.readUTF() });
+			List<Double> times = new ArrayList<Double>();
+			int numRows;
+			while ((numRows = in.readInt()) > 0){
+				double[][] chunk = new double[3][numRows];
+				for (int i = 0; i < 3 * numRows; i++){
+					if (bColumnar){
+						chunk[i / numRows][i % numRows] = in.readDouble();
+					}else{
+						chunk[i % 3][i / 3] = in.readDouble();
+					}
+				}
+				for (int row = 0; row < numRows; row++){
+					Assert.assertEquals(chunk[0][row], chunk[1][row], 0);
+					Assert.assertEquals(-chunk[0][row], chunk[2][row], 0);
+					times.add(chunk[0][row]);
+				}
+			}
+			Assert.assertEquals(0, numRows);
+			Assert.assertEquals(0, in.available());
+			Assert.assertEquals(Arrays.asList(2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0), times);
+		}
+	}
+
+	@Test
+	public void testSpatialPaging() throws Exception {
+		TestDataSource dataSource = new TestDataSource(10);
+		String[] lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, new String[] { "u" }, new int[] { 1, 3 },
+				2, Double.POSITIVE_INFINITY, 1, 5, 2));
+		Assert.assertEquals("{\"columns\":[\"t\",\"u[1]\",\"u[3]\"]}", lines[0]);
+		// times 3..7 in windows of 2
+		Assert.assertEquals(1 + 5, lines.length);
+		Assert.assertEquals("[3.0,103.0,303.0]", lines[1]);
+		Assert.assertEquals("[7.0,107.0,307.0]", lines[5]);
+		Assert.assertEquals(3, dataSource.requests.size());
+		Assert.assertArrayEquals(new int[] { 7, 1 }, dataSource.requests.get(2));
+
+		// no time points
+		dataSource = new TestDataSource(10);
+		lines = writeNdjson(SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, new String[] { "u" }, new int[] { 1 },
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, 0, 2));
+		Assert.assertEquals(1, lines.length);
+		Assert.assertEquals(0, dataSource.requests.size());
+
+		try {
+			SimDataStream.open(dataSource, USER_LOGIN_INFO, VCDATAID, null, new int[] { 1 }, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1, 2);
+			Assert.fail("expected variables to be required with indices");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
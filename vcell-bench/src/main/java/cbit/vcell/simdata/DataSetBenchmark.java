@@ -0,0 +1,63 @@
+package cbit.vcell.simdata;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vcell.bench.BenchmarkResources;
+
+/**
+ * PDE data access ({@link DataSet#read} of the .sim header and {@link DataSet#getData} of every variable)
+ * on the sample simulation zip of the vcell-core tests.
+ * <p>
+ * Lives in cbit.vcell.simdata because DataSet is package private API (used through SimulationData).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSetBenchmark {
+
+	private static final String SIM_ZIP = "vcell-core/src/test/resources/simdata/temp/SimID_1771409053_0_00.zip";
+	private static final String SIM_ENTRY = "SimID_1771409053_0_0001.sim";
+
+	private File zipFile;
+	private File simFile;
+	private DataSet dataSet;
+	private String[] varNames;
+
+	@Setup
+	public void setup() throws Exception {
+		zipFile = BenchmarkResources.getFile(SIM_ZIP);
+		simFile = new File(zipFile.getParentFile(), SIM_ENTRY);
+		dataSet = new DataSet();
+		dataSet.read(simFile, zipFile);
+		varNames = dataSet.getDataNames();
+	}
+
+	@Benchmark
+	public DataSet read() throws Exception {
+		DataSet ds = new DataSet();
+		ds.read(simFile, zipFile);
+		return ds;
+	}
+
+	@Benchmark
+	public void getData(Blackhole blackhole) throws Exception {
+		for (String varName : varNames){
+			blackhole.consume(dataSet.getData(varName, zipFile));
+		}
+	}
+}
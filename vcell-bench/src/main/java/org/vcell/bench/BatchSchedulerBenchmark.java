@@ -0,0 +1,90 @@
+package org.vcell.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+import org.vcell.util.document.VCellServerID;
+
+import cbit.vcell.message.server.dispatcher.BatchScheduler;
+import cbit.vcell.message.server.dispatcher.BatchScheduler.ActiveJob;
+import cbit.vcell.message.server.dispatcher.BatchScheduler.SchedulerDecisions;
+import cbit.vcell.message.server.htc.HtcProxy.PartitionStatistics;
+import cbit.vcell.server.SimulationJobStatus.SchedulerStatus;
+
+/**
+ * one dispatcher cycle of {@link BatchScheduler#schedule} over a synthetic set of active jobs (all sites).
+ * <p>
+ * The workload is generated from a fixed seed: most jobs are waiting (parameter scans submitted by a few users),
+ * the rest are running, queued or dispatched, spread over two sites.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchSchedulerBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int numJobs;
+
+	@Param({ "50" })
+	public int numUsers;
+
+	private final VCellServerID thisSite = VCellServerID.getServerID("REL");
+	private final VCellServerID otherSite = VCellServerID.getServerID("ALPHA");
+	private List<ActiveJob> activeJobs;
+	private PartitionStatistics partitionStatistics;
+	private User[] quotaExemptUsers;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		User[] users = new User[numUsers];
+		for (int i = 0; i < numUsers; i++){
+			users[i] = new User("user" + i, new KeyValue(Integer.toString(1000 + i)));
+		}
+		activeJobs = new ArrayList<ActiveJob>(numJobs);
+		for (int i = 0; i < numJobs; i++){
+			// a few heavy users own most of the jobs (parameter scans)
+			User owner = users[(int)(numUsers * Math.pow(random.nextDouble(), 3))];
+			double r = random.nextDouble();
+			SchedulerStatus schedulerStatus;
+			if (r < 0.80){
+				schedulerStatus = SchedulerStatus.WAITING;
+			}else if (r < 0.95){
+				schedulerStatus = SchedulerStatus.RUNNING;
+			}else if (r < 0.98){
+				schedulerStatus = SchedulerStatus.QUEUED;
+			}else{
+				schedulerStatus = SchedulerStatus.DISPATCHED;
+			}
+			long submitTimestamp = 1_600_000_000_000L + random.nextInt(24 * 3600) * 1000L;
+			VCellServerID serverId = (random.nextInt(4) == 0) ? otherSite : thisSite;
+			boolean isPDE = random.nextInt(3) == 0;
+			activeJobs.add(new ActiveJob("job" + i, owner, schedulerStatus, submitTimestamp, serverId, isPDE));
+		}
+		partitionStatistics = new PartitionStatistics(800, 1024, 0.8);
+		quotaExemptUsers = new User[] { users[numUsers - 1] };
+	}
+
+	@Benchmark
+	public SchedulerDecisions schedule() {
+		return BatchScheduler.schedule(activeJobs, partitionStatistics, 50, 20, thisSite, quotaExemptUsers);
+	}
+}
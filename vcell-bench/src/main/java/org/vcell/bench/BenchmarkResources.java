@@ -0,0 +1,45 @@
+package org.vcell.bench;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * locates benchmark inputs (example models, test resources) in the source tree.
+ * <p>
+ * The benchmarks are run from the vcell-bench module (exec:exec) or from the project root, so the project root
+ * is found by walking up from the working directory to the first directory containing 'exampleModels'.
+ * It can be set explicitly with -Dvcell.bench.projectDir=...
+ */
+public class BenchmarkResources {
+
+	public static final String PROJECT_DIR_PROPERTY = "vcell.bench.projectDir";
+
+	private BenchmarkResources() {
+	}
+
+	public static File getProjectDir() throws FileNotFoundException {
+		String projectDirName = System.getProperty(PROJECT_DIR_PROPERTY);
+		if (projectDirName != null){
+			return new File(projectDirName);
+		}
+		File dir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+		while (dir != null){
+			if (new File(dir, "exampleModels").isDirectory()){
+				return dir;
+			}
+			dir = dir.getParentFile();
+		}
+		throw new FileNotFoundException("vcell project directory not found above " + System.getProperty("user.dir") + ", set -D" + PROJECT_DIR_PROPERTY);
+	}
+
+	/**
+	 * @param relativePath path relative to the project root (e.g. "exampleModels/...")
+	 */
+	public static File getFile(String relativePath) throws FileNotFoundException {
+		File file = new File(getProjectDir(), relativePath);
+		if (!file.exists()){
+			throw new FileNotFoundException("benchmark input " + file + " not found");
+		}
+		return file;
+	}
+}
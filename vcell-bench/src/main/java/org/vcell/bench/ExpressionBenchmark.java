@@ -0,0 +1,100 @@
+package org.vcell.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.parser.SimpleSymbolTable;
+
+/**
+ * {@link Expression} hot paths: interpreted and compiled evaluation of a bound expression at many value vectors,
+ * flattening and JSCL simplification.
+ * <p>
+ * The expressions are typical generated rate laws and functions (mass action, Michaelis-Menten, Hill, piecewise).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+	private static final String[] SYMBOLS = new String[] { "t", "A", "B", "C", "Kf", "Kr", "Vmax", "Km", "n", "size" };
+
+	private static final String[] EXPRESSIONS = new String[] {
+		"((Kf * A * B) - (Kr * C)) * size",
+		"(Vmax * A / (Km + A)) * (1.0 - exp(-t/Km))",
+		"Vmax * pow(A, n) / (pow(Km, n) + pow(A, n)) - Kr * B",
+		"((t < 10.0) * Kf * A + (t >= 10.0) * Kr * B) / (1.0 + C/Km)",
+		"((A + 2.0*B - (A + B)) * (Kf*size/size) + 0.0*C + log(1.0 + Vmax*A*A/(Km*Km)))",
+	};
+
+	private static final int NUM_VALUE_VECTORS = 1000;
+
+	@Param({ "0", "1", "2", "3", "4" })
+	public int expressionIndex;
+
+	private Expression boundExpression;
+	private CompiledExpression compiledExpression;
+	private double[][] valueVectors;
+
+	@Setup
+	public void setup() throws ExpressionException {
+		boundExpression = new Expression(EXPRESSIONS[expressionIndex]);
+		boundExpression.bindExpression(new SimpleSymbolTable(SYMBOLS));
+		compiledExpression = boundExpression.compile();
+		Random random = new Random(0);
+		valueVectors = new double[NUM_VALUE_VECTORS][SYMBOLS.length];
+		for (double[] values : valueVectors){
+			for (int i = 0; i < values.length; i++){
+				values[i] = 0.1 + 20.0 * random.nextDouble();
+			}
+		}
+	}
+
+	/**
+	 * interpreted evaluation at {@value #NUM_VALUE_VECTORS} value vectors.
+	 */
+	@Benchmark
+	public void evaluateVector(Blackhole blackhole) throws ExpressionException {
+		for (double[] values : valueVectors){
+			blackhole.consume(boundExpression.evaluateVector(values));
+		}
+	}
+
+	/**
+	 * compiled evaluation at {@value #NUM_VALUE_VECTORS} value vectors.
+	 */
+	@Benchmark
+	public void evaluateCompiled(Blackhole blackhole) throws ExpressionException {
+		for (double[] values : valueVectors){
+			blackhole.consume(compiledExpression.eval(values));
+		}
+	}
+
+	@Benchmark
+	public Expression flatten() throws ExpressionException {
+		return new Expression(EXPRESSIONS[expressionIndex]).flatten();
+	}
+
+	@Benchmark
+	public Expression simplifyJSCL() throws ExpressionException {
+		return new Expression(EXPRESSIONS[expressionIndex]).simplifyJSCL();
+	}
+}
@@ -0,0 +1,96 @@
+package org.vcell.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.SimulationVersion;
+import org.vcell.util.document.User;
+
+import cbit.vcell.biomodel.BioModel;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationJob;
+import cbit.vcell.solver.SimulationOwner;
+import cbit.vcell.solver.SolverDescription;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+import cbit.vcell.solver.ode.RungeKuttaFehlbergSolver;
+import cbit.vcell.solver.server.SolverStatus;
+import cbit.vcell.xml.XMLSource;
+import cbit.vcell.xml.XmlHelper;
+
+/**
+ * in-process ODE integration with {@link RungeKuttaFehlbergSolver} (solver setup, expression binding and time stepping).
+ * <p>
+ * The reference model is the first simulation of a published compartmental model, switched to the
+ * Runge-Kutta-Fehlberg solver and integrated up to 'endTime' (step sizes and output options unchanged).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OdeSolverBenchmark {
+
+	@Param({ "vcell-core/src/test/resources/org/vcell/sbml/vcml_published/biomodel_89712092_nonspatial.vcml" })
+	public String model;
+
+	@Param({ "10.0" })
+	public double endTime;
+
+	private Simulation simulation;
+	private File workingDir;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		String vcml = new String(Files.readAllBytes(BenchmarkResources.getFile(model).toPath()), "UTF-8");
+		BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(vcml));
+		Simulation referenceSimulation = bioModel.getSimulation(0);
+		// standalone copy with a version, the solver writes the results under the simulation identifier
+		SimulationVersion simVersion = new SimulationVersion(new KeyValue("1"), referenceSimulation.getName(), new User("bench", new KeyValue("1")),
+				null, null, null, null, null, null, null);
+		simulation = new Simulation(simVersion, referenceSimulation.getMathDescription(), new SimulationOwner.StandaloneSimulationOwner());
+		simulation.setSolverTaskDescription(new SolverTaskDescription(simulation, referenceSimulation.getSolverTaskDescription()));
+		simulation.getSolverTaskDescription().setSolverDescription(SolverDescription.RungeKuttaFehlberg);
+		simulation.getSolverTaskDescription().setTimeBounds(new TimeBounds(0, endTime));
+		workingDir = Files.createTempDirectory("odeSolverBenchmark").toFile();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		File[] files = workingDir.listFiles();
+		if (files != null){
+			for (File file : files){
+				file.delete();
+			}
+		}
+		workingDir.delete();
+	}
+
+	@Benchmark
+	public ODESolverResultSet solve() throws Exception {
+		RungeKuttaFehlbergSolver solver = new RungeKuttaFehlbergSolver(new SimulationTask(new SimulationJob(simulation, 0, null), 0), workingDir);
+		solver.runSolver();
+		if (solver.getSolverStatus().getStatus() != SolverStatus.SOLVER_FINISHED){
+			throw new RuntimeException("solver failed: " + solver.getSolverStatus());
+		}
+		return solver.getODESolverResultSet();
+	}
+}
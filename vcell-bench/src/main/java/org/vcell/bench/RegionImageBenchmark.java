@@ -0,0 +1,81 @@
+package org.vcell.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vcell.util.Extent;
+import org.vcell.util.Origin;
+
+import cbit.image.VCImage;
+import cbit.image.VCImageUncompressed;
+import cbit.vcell.geometry.RegionImage;
+
+/**
+ * connected region labeling of a segmented image ({@link RegionImage} construction, no surface filtering).
+ * <p>
+ * The image is a cube of 'size' pixels per side containing seeded random spheres of three pixel classes
+ * (nucleus-like and vesicle-like objects in a cytosol-like background).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegionImageBenchmark {
+
+	@Param({ "64", "128" })
+	public int size;
+
+	@Param({ "200" })
+	public int numSpheres;
+
+	private VCImage vcImage;
+	private Extent extent;
+	private Origin origin;
+
+	@Setup
+	public void setup() throws Exception {
+		Random random = new Random(0);
+		byte[] pixels = new byte[size * size * size];
+		for (int s = 0; s < numSpheres; s++){
+			byte pixelValue = (byte)(1 + random.nextInt(3));
+			double radius = 1 + random.nextDouble() * size / 10.0;
+			double cx = random.nextDouble() * size;
+			double cy = random.nextDouble() * size;
+			double cz = random.nextDouble() * size;
+			int minZ = Math.max(0, (int)(cz - radius)), maxZ = Math.min(size - 1, (int)(cz + radius));
+			int minY = Math.max(0, (int)(cy - radius)), maxY = Math.min(size - 1, (int)(cy + radius));
+			int minX = Math.max(0, (int)(cx - radius)), maxX = Math.min(size - 1, (int)(cx + radius));
+			for (int k = minZ; k <= maxZ; k++){
+				for (int j = minY; j <= maxY; j++){
+					for (int i = minX; i <= maxX; i++){
+						double dx = i - cx, dy = j - cy, dz = k - cz;
+						if (dx * dx + dy * dy + dz * dz <= radius * radius){
+							pixels[i + size * (j + size * k)] = pixelValue;
+						}
+					}
+				}
+			}
+		}
+		extent = new Extent(size, size, size);
+		origin = new Origin(0, 0, 0);
+		vcImage = new VCImageUncompressed(null, pixels, extent, size, size, size);
+	}
+
+	@Benchmark
+	public RegionImage createRegionImage() throws Exception {
+		return new RegionImage(vcImage, 3, extent, origin, RegionImage.NO_SMOOTHING);
+	}
+}
@@ -0,0 +1,94 @@
+package org.vcell.bench;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cbit.util.xml.VCLogger;
+import cbit.util.xml.VCLoggerException;
+import cbit.vcell.biomodel.BioModel;
+import cbit.vcell.xml.XMLSource;
+import cbit.vcell.xml.XmlHelper;
+
+/**
+ * VCML reading ({@link XmlHelper#XMLToBioModel}, XmlReader) and writing ({@link XmlHelper#bioModelToXML}, Xmlproducer).
+ * <p>
+ * The default models are VCML test resources of vcell-core (read from the source tree, see {@link BenchmarkResources}):
+ * the SBML model in exampleModels does not import (its analytic volume maps to no subvolume).
+ * SBML models (-p model=...) are imported once during setup and the resulting VCML is round tripped,
+ * so only the VCML reader and producer are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlRoundTripBenchmark {
+
+	@Param({
+		"vcell-core/src/test/resources/org/vcell/sbml/vcml_published/biomodel_89712092_nonspatial.vcml",
+		"vcell-core/src/test/resources/org/vcell/sbml/vcml_testmodels/biomodel_111113048_smaller.vcml"
+	})
+	public String model;
+
+	private String vcml;
+	private BioModel bioModel;
+
+	private static final VCLogger importLogger = new VCLogger() {
+		@Override
+		public void sendMessage(Priority p, ErrorType et, String message) throws VCLoggerException {
+			if (p == VCLogger.Priority.HighPriority){
+				throw new VCLoggerException("Import failed : " + message);
+			}
+		}
+		@Override
+		public void sendAllMessages() {
+		}
+		@Override
+		public boolean hasMessages() {
+			return false;
+		}
+	};
+
+	@Setup
+	public void setup() throws Exception {
+		File file = BenchmarkResources.getFile(model);
+		String xml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		if (file.getName().endsWith(".vcml")){
+			vcml = xml;
+		}else{
+			BioModel importedBioModel = (BioModel)XmlHelper.importSBML(importLogger, new XMLSource(xml), false);
+			vcml = XmlHelper.bioModelToXML(importedBioModel);
+		}
+		bioModel = XmlHelper.XMLToBioModel(new XMLSource(vcml));
+	}
+
+	@Benchmark
+	public BioModel read() throws Exception {
+		return XmlHelper.XMLToBioModel(new XMLSource(vcml));
+	}
+
+	@Benchmark
+	public String write() throws Exception {
+		return XmlHelper.bioModelToXML(bioModel);
+	}
+
+	@Benchmark
+	public String roundTrip() throws Exception {
+		return XmlHelper.bioModelToXML(XmlHelper.XMLToBioModel(new XMLSource(vcml)));
+	}
+}
@@ -35,7 +35,8 @@ public class CLIPythonManager {
     private OutputStreamWriter pythonOSW; 	// input channel *to* python interpreter (see above)
     private BufferedReader pythonISB; 		// output channel ("Input Stream Buffer") *from* python interpreter (see above)
 
-    public static CLIPythonManager getInstance(){
+    // one interpreter is shared by all threads (e.g. the worker running several archives), calls are serialized
+    public static synchronized CLIPythonManager getInstance(){
         logger.trace("Getting Python instance");
         if (instance == null){
             instance = new CLIPythonManager();
@@ -48,7 +49,7 @@ public class CLIPythonManager {
         return this.callPython(this.formatPythonFuctionCall(functionName, arguments));
     }
 
-    private String callPython(String command) throws PythonStreamException {
+    private synchronized String callPython(String command) throws PythonStreamException {
         String returnString = "";
         try {
             this.instantiatePythonProcess(); // Make sure we have a python instance; calling will not override an existing intance
@@ -104,7 +105,7 @@ public class CLIPythonManager {
         return exitCode;
     }
 
-    public void closePythonProcess() throws IOException {
+    public synchronized void closePythonProcess() throws IOException {
         // Exit the living Python Process
         logger.debug("Closing Python Instance");
         if (pythonOSW != null && pythonISB != null) this.sendNewCommand("exit()"); // Sends kill command ("exit()") to python.exe instance;
@@ -124,7 +125,7 @@ public class CLIPythonManager {
     /**
      * Facilitates the construction of the python instance connection
      */
-    public void instantiatePythonProcess() throws IOException {
+    public synchronized void instantiatePythonProcess() throws IOException {
         if (this.pythonProcess != null) return; // prevent override
         logger.info("Initializing Python...");
         // Confirm we have python properly installed or kill this exe where it stands.
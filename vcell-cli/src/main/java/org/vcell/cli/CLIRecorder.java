@@ -62,7 +62,7 @@ public class CLIRecorder extends Recorder implements CLIRecordable {
 
     // Logging file methods
 
-    private void writeToFileLog(FileRecord log, String message) throws IOException {
+    private synchronized void writeToFileLog(FileRecord log, String message) throws IOException {
         if (!this.shouldPrintLogFiles) return;
         log.print(message + "\n");
         if (this.shouldFlushLogFiles) log.flush();
@@ -2,6 +2,7 @@ package org.vcell.cli;
 
 import org.vcell.cli.biosimulation.BiosimulationsCommand;
 import org.vcell.cli.run.ExecuteCommand;
+import org.vcell.cli.run.WorkerCommand;
 import org.vcell.cli.sbml.ModelCommand;
 import org.vcell.cli.vcml.*;
 
@@ -24,6 +25,7 @@ import picocli.CommandLine.Command;
         VersionCommand.class,
         ModelCommand.class,
         ValidateBatchCommand.class,
+        WorkerCommand.class,
         CommandLine.HelpCommand.class
 })
 public class CLIStandalone {
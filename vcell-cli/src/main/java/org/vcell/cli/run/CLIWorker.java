@@ -0,0 +1,274 @@
+package org.vcell.cli.run;
+
+import org.vcell.cli.CLIRecorder;
+import org.vcell.util.FileUtils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long running worker that executes OMEX archives in one JVM (see {@link WorkerCommand}).
+ * <p>
+ * Jobs are read from a spool directory or from a local (loopback) socket and run on a fixed pool of threads,
+ * one archive per thread, each into its own output directory below the output root. The Python interpreter,
+ * the solver and parser code (JIT compiled after the first archives) and the BioModels imported from
+ * SED-ML ({@link SedmlImportCache}) stay resident between jobs.
+ * <p>
+ * Spool protocol: archives (*.omex) dropped into the spool directory are claimed by moving them to 'running/'
+ * and moved to 'done/' or 'failed/' when finished. Writers should copy to another name and rename to *.omex.
+ * A file named 'stop' in the spool directory stops the worker once the running jobs are finished.
+ * <p>
+ * Socket protocol: one archive path per line; for every job one line "OK &lt;path&gt;" or "FAILED &lt;path&gt; &lt;message&gt;"
+ * is written back when it finishes (in completion order). The line "stop" stops the worker.
+ */
+public class CLIWorker {
+
+    private final static Logger logger = LogManager.getLogger(CLIWorker.class);
+
+    public final static String SPOOL_RUNNING_DIR = "running";
+    public final static String SPOOL_DONE_DIR = "done";
+    public final static String SPOOL_FAILED_DIR = "failed";
+    public final static String SPOOL_STOP_FILE = "stop";
+    public final static String STOP_COMMAND = "stop";
+
+    private final static long SPOOL_POLL_INTERVAL_MS = 1000;
+
+    private final File outputRootDir;
+    private final CLIRecorder cliRecorder;
+    private final boolean bKeepTempFiles;
+    private final boolean bExactMatchOnly;
+    private final boolean bSmallMeshOverride;
+    private final SedmlImportCache sedmlImportCache;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Object> outputDirLocks = new ConcurrentHashMap<>();
+    private final AtomicInteger numJobsSucceeded = new AtomicInteger(0);
+    private final AtomicInteger numJobsFailed = new AtomicInteger(0);
+    private volatile boolean bStopRequested = false;
+    private ServerSocket serverSocket = null;
+
+    /**
+     * @param sedmlImportCache BioModels imported from SED-ML, shared by the jobs (or null).
+     */
+    public CLIWorker(File outputRootDir, CLIRecorder cliRecorder, int numThreads,
+                     boolean bKeepTempFiles, boolean bExactMatchOnly, boolean bSmallMeshOverride, SedmlImportCache sedmlImportCache) {
+        this.outputRootDir = outputRootDir;
+        this.cliRecorder = cliRecorder;
+        this.bKeepTempFiles = bKeepTempFiles;
+        this.bExactMatchOnly = bExactMatchOnly;
+        this.bSmallMeshOverride = bSmallMeshOverride;
+        this.sedmlImportCache = sedmlImportCache;
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "CLIWorker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = Executors.newFixedThreadPool(numThreads, threadFactory);
+    }
+
+    /**
+     * queues one archive.
+     * @return completes with null on success or with the error message.
+     */
+    public CompletableFuture<String> submit(File archive) {
+        return CompletableFuture.supplyAsync(() -> execute(archive), executor);
+    }
+
+    private String execute(File archive) {
+        String bioModelBaseName = FileUtils.getBaseName(archive.getName());
+        // archives with the same name write into the same output directory, run those one after another
+        Object outputDirLock = outputDirLocks.computeIfAbsent(bioModelBaseName, k -> new Object());
+        synchronized (outputDirLock) {
+            long startTime = System.currentTimeMillis();
+            logger.info("Worker executing " + archive);
+            try {
+                if (!archive.isFile()) {
+                    throw new IOException("archive " + archive + " not found");
+                }
+                executeArchive(archive);
+                numJobsSucceeded.incrementAndGet();
+                logger.info("Worker finished " + archive + " in " + (System.currentTimeMillis() - startTime) + " ms");
+                return null;
+            } catch (Throwable e) {
+                numJobsFailed.incrementAndGet();
+                logger.error("Worker failed executing " + archive + ": " + e.getMessage(), e);
+                return (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            }
+        }
+    }
+
+    /**
+     * runs one archive into its own directory below the output root.
+     */
+    protected void executeArchive(File archive) throws Exception {
+        ExecuteImpl.singleMode(archive, outputRootDir, cliRecorder,
+                bKeepTempFiles, bExactMatchOnly, true, bSmallMeshOverride, sedmlImportCache);
+    }
+
+    public int getNumJobsSucceeded() {
+        return numJobsSucceeded.get();
+    }
+
+    public int getNumJobsFailed() {
+        return numJobsFailed.get();
+    }
+
+    public void requestStop() {
+        bStopRequested = true;
+        ServerSocket ss = serverSocket;
+        if (ss != null) {
+            try {
+                ss.close();
+            } catch (IOException e) {
+                logger.warn("error closing worker socket: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * processes the archives dropped into 'spoolDir' until a 'stop' file appears.
+     */
+    public void serveSpool(File spoolDir) throws IOException, InterruptedException {
+        File runningDir = new File(spoolDir, SPOOL_RUNNING_DIR);
+        File doneDir = new File(spoolDir, SPOOL_DONE_DIR);
+        File failedDir = new File(spoolDir, SPOOL_FAILED_DIR);
+        for (File dir : new File[] { runningDir, doneDir, failedDir }) {
+            Files.createDirectories(dir.toPath());
+        }
+        // archives left over by a previous worker that did not finish
+        File[] interrupted = runningDir.listFiles((dir, name) -> name.endsWith(".omex"));
+        if (interrupted != null) {
+            for (File archive : interrupted) {
+                Files.move(archive.toPath(), new File(spoolDir, archive.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        logger.info("Worker polling spool directory " + spoolDir);
+        List<CompletableFuture<String>> pendingJobs = new ArrayList<>();
+        while (!bStopRequested) {
+            if (new File(spoolDir, SPOOL_STOP_FILE).exists()) {
+                logger.info("Found stop file in spool directory, stopping worker");
+                break;
+            }
+            File[] archives = spoolDir.listFiles((dir, name) -> name.endsWith(".omex"));
+            if (archives != null && archives.length > 0) {
+                Arrays.sort(archives, Comparator.comparingLong(File::lastModified));
+                for (File archive : archives) {
+                    final File runningArchive = new File(runningDir, archive.getName());
+                    try {
+                        // the move claims the job (also against other workers polling the same spool)
+                        Files.move(archive.toPath(), runningArchive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException e) {
+                        logger.debug("could not claim " + archive + ": " + e.getMessage());
+                        continue;
+                    }
+                    pendingJobs.add(submit(runningArchive).whenComplete((errorMessage, exception) -> {
+                        File targetDir = (errorMessage == null && exception == null) ? doneDir : failedDir;
+                        try {
+                            Files.move(runningArchive.toPath(), new File(targetDir, runningArchive.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            logger.error("could not move " + runningArchive + " to " + targetDir + ": " + e.getMessage(), e);
+                        }
+                    }));
+                }
+            }
+            pendingJobs.removeIf(CompletableFuture::isDone);
+            Thread.sleep(SPOOL_POLL_INTERVAL_MS);
+        }
+        for (CompletableFuture<String> pendingJob : pendingJobs) {
+            pendingJob.join();
+        }
+    }
+
+    /**
+     * accepts job connections on the loopback interface until a 'stop' line is received.
+     */
+    public void serveSocket(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        logger.info("Worker listening on " + serverSocket.getLocalSocketAddress());
+        try {
+            while (!bStopRequested) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (bStopRequested) {
+                        break;
+                    }
+                    throw e;
+                }
+                Thread connectionThread = new Thread(() -> handleConnection(socket), "CLIWorker-connection-" + socket.getPort());
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        List<CompletableFuture<Void>> pendingReplies = new ArrayList<>();
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equalsIgnoreCase(STOP_COMMAND)) {
+                    requestStop();
+                    break;
+                }
+                final String archivePath = line;
+                pendingReplies.add(submit(new File(archivePath)).thenAccept(errorMessage -> {
+                    synchronized (writer) {
+                        writer.println((errorMessage == null) ? "OK " + archivePath : "FAILED " + archivePath + " " + errorMessage.replace('\n', ' '));
+                    }
+                }));
+            }
+            // client closed its side (or asked to stop), answer the jobs still running before closing
+            for (CompletableFuture<Void> pendingReply : pendingReplies) {
+                pendingReply.join();
+            }
+        } catch (IOException e) {
+            logger.error("Worker connection failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * waits for the queued jobs and stops the thread pool.
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            logger.info("Worker waiting for running jobs to finish");
+        }
+        logger.info("Worker stopped, " + numJobsSucceeded.get() + " archives succeeded, " + numJobsFailed.get() + " failed");
+    }
+}
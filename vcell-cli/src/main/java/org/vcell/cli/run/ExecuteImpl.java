@@ -61,7 +61,7 @@ public class ExecuteImpl {
                     Files.createDirectories(Paths.get(outputDir.getAbsolutePath() + File.separator + bioModelBaseName)); // make output subdir
                     final boolean bEncapsulateOutput = true;
                     singleExecOmex(inputFile, outputDir, cliLogger,
-                            bKeepTempFiles, bExactMatchOnly, bEncapsulateOutput, bSmallMeshOverride);
+                            bKeepTempFiles, bExactMatchOnly, bEncapsulateOutput, bSmallMeshOverride, null);
                 }
 
                 if (inputFileName.endsWith("vcml")) {
@@ -75,6 +75,15 @@ public class ExecuteImpl {
 
     public static void singleMode(File inputFile, File rootOutputDir, CLIRecorder cliLogger,
             boolean bKeepTempFiles, boolean bExactMatchOnly, boolean bEncapsulateOutput, boolean bSmallMeshOverride) throws Exception {
+        singleMode(inputFile, rootOutputDir, cliLogger, bKeepTempFiles, bExactMatchOnly, bEncapsulateOutput, bSmallMeshOverride, null);
+    }
+
+    /**
+     * @param sedmlImportCache BioModels imported from SED-ML by earlier runs (worker mode), or null.
+     */
+    public static void singleMode(File inputFile, File rootOutputDir, CLIRecorder cliLogger,
+            boolean bKeepTempFiles, boolean bExactMatchOnly, boolean bEncapsulateOutput, boolean bSmallMeshOverride,
+            SedmlImportCache sedmlImportCache) throws Exception {
         // Build statuses
         String bioModelBaseName = FileUtils.getBaseName(inputFile.getName()); // bioModelBaseName = input file without the path
         String outputBaseDir = rootOutputDir.getAbsolutePath(); 
@@ -84,7 +93,7 @@ public class ExecuteImpl {
         RunUtils.removeAndMakeDirs(new File(targetOutputDir));
         PythonCalls.generateStatusYaml(inputFile.getAbsolutePath(), targetOutputDir);    // generate Status YAML
 
-        ExecuteImpl.singleExecOmex(inputFile, rootOutputDir, cliLogger, bKeepTempFiles, bExactMatchOnly, bEncapsulateOutput, bSmallMeshOverride);
+        ExecuteImpl.singleExecOmex(inputFile, rootOutputDir, cliLogger, bKeepTempFiles, bExactMatchOnly, bEncapsulateOutput, bSmallMeshOverride, sedmlImportCache);
     }
 
     public static void singleMode(File inputFile, File outputDir, CLIRecorder cliLogger) throws Exception {
@@ -150,7 +159,8 @@ public class ExecuteImpl {
     }
 
     private static void singleExecOmex(File inputFile, File rootOutputDir, CLIRecorder cliLogger,
-            boolean bKeepTempFiles, boolean bExactMatchOnly, boolean bEncapsulateOutput, boolean bSmallMeshOverride) throws Exception {
+            boolean bKeepTempFiles, boolean bExactMatchOnly, boolean bEncapsulateOutput, boolean bSmallMeshOverride,
+            SedmlImportCache sedmlImportCache) throws Exception {
         int nModels, nSimulations, nTasks, nOutputs, nReportsCount = 0, nPlots2DCount = 0, nPlots3DCount = 0;
         boolean hasOverrides = false;
         boolean hasScans = false;
@@ -312,7 +322,7 @@ public class ExecuteImpl {
              * - we send both the whole OMEX file and the extracted SEDML file path
              * - XmlHelper code uses two types of resolvers to handle absolute or relative paths
              */
-            SolverHandler solverHandler = new SolverHandler();
+            SolverHandler solverHandler = new SolverHandler(sedmlImportCache);
             ExternalDocInfo externalDocInfo = new ExternalDocInfo(new File(inputFilePath), true);
             try {
                 String str = "Building solvers and starting simulation of all tasks... ";
@@ -0,0 +1,116 @@
+package org.vcell.cli.run;
+
+import cbit.vcell.biomodel.BioModel;
+import cbit.vcell.xml.XMLSource;
+import cbit.vcell.xml.XmlHelper;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the BioModels imported from the SED-ML documents of an archive resident between runs (worker mode).
+ * <p>
+ * Entries are keyed by the archive content (SHA-256) and the location of the SED-ML document inside the archive,
+ * and hold the VCML of the imported BioModels. Runs modify their simulations, so each lookup reads fresh BioModels
+ * from the VCML, which is much cheaper than importing the SBML and SED-ML again.
+ */
+public class SedmlImportCache {
+
+    private final static Logger logger = LogManager.getLogger(SedmlImportCache.class);
+
+    public interface Importer {
+        List<BioModel> importBioModels() throws Exception;
+    }
+
+    private final int maxEntries;
+    private final Map<String, List<String>> vcmlMap;
+    private long hits = 0;
+    private long misses = 0;
+
+    public SedmlImportCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.vcmlMap = new LinkedHashMap<String, List<String>>(16, 0.75f, true);
+    }
+
+    /**
+     * @param archiveFile the OMEX archive (its content is part of the key).
+     * @param sedmlLocation location of the SED-ML document relative to the archive root.
+     * @param importer imports the BioModels when they are not cached.
+     */
+    public List<BioModel> getBioModels(File archiveFile, String sedmlLocation, boolean exactMatchOnly, Importer importer) throws Exception {
+        String key = digest(archiveFile) + ":" + sedmlLocation + ":" + exactMatchOnly;
+        List<String> vcmlList;
+        synchronized (this) {
+            vcmlList = vcmlMap.get(key);
+            if (vcmlList != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (vcmlList != null) {
+            logger.debug("Reading cached BioModels for " + archiveFile.getName() + " " + sedmlLocation);
+            List<BioModel> bioModelList = new ArrayList<>();
+            for (String vcml : vcmlList) {
+                bioModelList.add(XmlHelper.XMLToBioModel(new XMLSource(vcml)));
+            }
+            return bioModelList;
+        }
+
+        List<BioModel> bioModelList = importer.importBioModels();
+        if (bioModelList != null) {
+            try {
+                List<String> newVcmlList = new ArrayList<>();
+                for (BioModel bioModel : bioModelList) {
+                    newVcmlList.add(XmlHelper.bioModelToXML(bioModel));
+                }
+                synchronized (this) {
+                    vcmlMap.put(key, newVcmlList);
+                    while (vcmlMap.size() > maxEntries) {
+                        vcmlMap.remove(vcmlMap.keySet().iterator().next());
+                    }
+                }
+            } catch (Exception e) {
+                // not cached, the imported models are still used for this run
+                logger.warn("Unable to cache BioModels imported from " + archiveFile.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        return bioModelList;
+    }
+
+    public synchronized String getStatistics() {
+        return "SED-ML import cache: " + vcmlMap.size() + " entries, " + hits + " hits, " + misses + " misses";
+    }
+
+    private static String digest(File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        byte[] buffer = new byte[65536];
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                messageDigest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
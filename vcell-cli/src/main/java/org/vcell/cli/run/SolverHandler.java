@@ -60,6 +60,9 @@ public class SolverHandler {
 	
     private final static Logger logger = LogManager.getLogger(SolverHandler.class);
 
+	// passed in by the worker (see CLIWorker) to keep imported BioModels resident between runs of the same archive, null otherwise
+	private final SedmlImportCache sedmlImportCache;
+
 	public int countBioModels = 0;		// number of biomodels in this sedml file
 	public int countSuccessfulSimulationRuns = 0;	// number of simulations that we ran successfully for this sedml file
 	
@@ -74,6 +77,14 @@ public class SolverHandler {
     Map<Task, Set<RepeatedTask>> taskToChildRepeatedTasks = new LinkedHashMap<Task, Set<RepeatedTask>> ();	// key = Task, value = list of RepeatedTasks ending with this task
     Map<String, Task> topTaskToBaseTask = new LinkedHashMap<String, Task> ();				// key = TopmostTaskId, value = Tasks at the bottom of the SubTasks chain OR the topmost task itself if instanceof Task
 
+    public SolverHandler() {
+        this(null);
+    }
+
+    public SolverHandler(SedmlImportCache sedmlImportCache) {
+        this.sedmlImportCache = sedmlImportCache;
+    }
+
     private static void sanityCheck(VCDocument doc) {
         if (doc == null) {
             throw new RuntimeException("Imported VCDocument is null.");
@@ -294,7 +305,14 @@ public class SolverHandler {
         Simulation[] sims = null;
         //String outDirRoot = outputDirForSedml.toString().substring(0, outputDirForSedml.toString().lastIndexOf(System.getProperty("file.separator")));
         try {
-            bioModelList = XmlHelper.importSEDML(sedmlImportLogger, externalDocInfo, sedml, exactMatchOnly);
+            if (sedmlImportCache != null) {
+                // the sedml output dir mirrors the location of the sedml document inside the archive
+                String sedmlLocationInArchive = new File(outDir).toPath().relativize(outputDirForSedml.toPath()).toString();
+                bioModelList = sedmlImportCache.getBioModels(externalDocInfo.getFile(), sedmlLocationInArchive, exactMatchOnly,
+                        () -> XmlHelper.importSEDML(sedmlImportLogger, externalDocInfo, sedml, exactMatchOnly));
+            } else {
+                bioModelList = XmlHelper.importSEDML(sedmlImportLogger, externalDocInfo, sedml, exactMatchOnly);
+            }
         } catch (Exception e) {
             logger.error("Unable to Parse SED-ML into Bio-Model, failed with err: " + e.getMessage(), e);
             throw e;
@@ -368,10 +386,8 @@ public class SolverHandler {
             	
             	Simulation sim = simJob.getSimulation();
             	try {
-                	SimulationOwner so = sim.getSimulationOwner();
-                	sim = new TempSimulation(sim, false);
-                	sim.setSimulationOwner(so);
-                	
+                	// no TempSimulation copy: it registers every copy in static maps (used by the client for quick runs)
+                	// which are never cleared and not safe for archives run on several worker threads
                 	std = sim.getSolverTaskDescription();
                 	sd = std.getSolverDescription();
                 	kisao = sd.getKisao();
@@ -418,7 +434,7 @@ public class SolverHandler {
                 	
                 	if (odeSolverResultSet != null) {
                 		// add output functions, if any, to result set
-                		List <AnnotatedFunction> funcs = so.getOutputFunctionContext().getOutputFunctionsList();
+                		List <AnnotatedFunction> funcs = sim.getSimulationOwner().getOutputFunctionContext().getOutputFunctionsList();
                 		if (funcs != null) {
 							for (AnnotatedFunction function : funcs) {
 								FunctionColumnDescription fcd = null;
@@ -0,0 +1,120 @@
+package org.vcell.cli.run;
+
+import cbit.vcell.resource.PropertyLoader;
+
+import org.vcell.cli.CLIPythonManager;
+import org.vcell.cli.CLIRecorder;
+import org.vcell.util.exe.Executable;
+
+import picocli.CommandLine.ArgGroup;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+@Command(name = "worker", description = "keep running and execute .omex files received over a spool directory or a local socket")
+public class WorkerCommand implements Callable<Integer> {
+
+    private final static Logger logger = LogManager.getLogger(WorkerCommand.class);
+
+    static class JobSource {
+        @Option(names = {"--spool"}, required = true, description = "spool directory to poll for .omex files")
+        File spoolDir;
+
+        @Option(names = {"--port"}, required = true, description = "local (loopback) port accepting one .omex path per line")
+        Integer port;
+    }
+
+    @ArgGroup(exclusive = true, multiplicity = "1")
+    private JobSource jobSource;
+
+    @Option(names = { "-o", "--outputFilePath"}, required = true, description = "root of the output directories (one per archive)")
+    private File outputFilePath;
+
+    @Option(names = {"--threads"}, description = "number of archives executed in parallel (default: number of processors)")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"--importCacheSize"}, defaultValue = "200", description = "number of imported SED-ML documents kept in memory")
+    private int importCacheSize;
+
+    @Option(names = {"--forceLogFiles"})
+    private boolean bForceLogFiles;
+
+    @Option(names = {"--keepTempFiles"})
+    private boolean bKeepTempFiles;
+
+    @Option(names = {"--exactMatchOnly"})
+    private boolean bExactMatchOnly;
+
+    @Option(names = "--small-mesh", defaultValue = "false", description = "force spatial simulations to have a very small mesh to make execution faster")
+    private boolean bSmallMeshOverride = false;
+
+    @Option(names = {"--timeout_ms"}, defaultValue = "600000", description = "executable wall clock timeout in milliseconds")
+    private long EXECUTABLE_MAX_WALLCLOCK_MILLIS;
+
+    @Option(names = {"-h", "--help"}, description = "show this help message and exit", usageHelp = true)
+    private boolean help;
+
+    @Option(names = {"-d", "--debug"}, description = "full application debug mode")
+    private boolean bDebug = false;
+
+    @Option(names = {"-q", "--quiet"}, description = "suppress all console output")
+    private boolean bQuiet = false;
+
+    public Integer call() {
+        try {
+            if (bDebug && bQuiet) {
+                System.err.println("cannot specify both debug and quiet, try --help for usage");
+                return 1;
+            }
+            if (numThreads < 1) {
+                System.err.println("--threads must be at least 1");
+                return 1;
+            }
+            CLIRecorder cliLogger = new CLIRecorder(outputFilePath, bForceLogFiles);
+
+            Level logLevel = logger.getLevel();
+            if (!bQuiet && bDebug) {
+                logLevel = Level.DEBUG;
+            } else if (bQuiet) {
+                logLevel = Level.OFF;
+            }
+            LoggerContext config = (LoggerContext)(LogManager.getContext(false));
+            config.getConfiguration().getLoggerConfig(LogManager.getLogger("org.vcell").getName()).setLevel(logLevel);
+            config.getConfiguration().getLoggerConfig(LogManager.getLogger("cbit").getName()).setLevel(logLevel);
+            config.updateLoggers();
+
+            PropertyLoader.loadProperties();
+            CLIPythonManager.getInstance().instantiatePythonProcess();
+            Executable.setTimeoutMS(EXECUTABLE_MAX_WALLCLOCK_MILLIS);
+            SedmlImportCache importCache = new SedmlImportCache(importCacheSize);
+
+            logger.info("Starting worker with " + numThreads + " threads, output to " + outputFilePath.getAbsolutePath());
+            CLIWorker worker = new CLIWorker(outputFilePath, cliLogger, numThreads, bKeepTempFiles, bExactMatchOnly, bSmallMeshOverride, importCache);
+            if (jobSource.spoolDir != null) {
+                worker.serveSpool(jobSource.spoolDir);
+            } else {
+                worker.serveSocket(jobSource.port);
+            }
+            worker.shutdown();
+            logger.info(importCache.getStatistics());
+            return 0;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return 1;
+        } finally {
+            try {
+                CLIPythonManager.getInstance().closePythonProcess();
+            } catch (Exception e) {
+                logger.error("error closing python: " + e.getMessage(), e);
+            }
+            logger.debug("Worker completed");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.vcell.cli.run;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * job loops of the worker, with the archive execution replaced (an archive named fail*.omex fails).
+ */
+public class CLIWorkerTest {
+
+    private File tempDir;
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("CLIWorkerTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(tempDir);
+    }
+
+    private CLIWorker createWorker() {
+        return new CLIWorker(new File(tempDir, "out"), null, 2, false, false, false, null) {
+            @Override
+            protected void executeArchive(File archive) throws Exception {
+                executed.add(archive.getName());
+                if (archive.getName().startsWith("fail")) {
+                    throw new Exception("failed to run " + archive.getName());
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testSpool() throws Exception {
+        File spoolDir = new File(tempDir, "spool");
+        Files.createDirectories(new File(spoolDir, CLIWorker.SPOOL_RUNNING_DIR).toPath());
+        Files.write(new File(spoolDir, "a.omex").toPath(), new byte[] { 1 });
+        Files.write(new File(spoolDir, "fail.omex").toPath(), new byte[] { 2 });
+        Files.write(new File(spoolDir, "ignored.txt").toPath(), new byte[] { 3 });
+        // left over by a worker which stopped while running it
+        Files.write(new File(new File(spoolDir, CLIWorker.SPOOL_RUNNING_DIR), "b.omex").toPath(), new byte[] { 4 });
+
+        CLIWorker worker = createWorker();
+        Thread spoolThread = new Thread(() -> {
+            try {
+                worker.serveSpool(spoolDir);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        spoolThread.start();
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((worker.getNumJobsSucceeded() + worker.getNumJobsFailed() < 3) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Files.write(new File(spoolDir, CLIWorker.SPOOL_STOP_FILE).toPath(), new byte[0]);
+        spoolThread.join(30000);
+        Assert.assertFalse(spoolThread.isAlive());
+        worker.shutdown();
+
+        Assert.assertEquals(3, executed.size());
+        Assert.assertEquals(2, worker.getNumJobsSucceeded());
+        Assert.assertEquals(1, worker.getNumJobsFailed());
+        Assert.assertTrue(new File(new File(spoolDir, CLIWorker.SPOOL_DONE_DIR), "a.omex").exists());
+        Assert.assertTrue(new File(new File(spoolDir, CLIWorker.SPOOL_DONE_DIR), "b.omex").exists());
+        Assert.assertTrue(new File(new File(spoolDir, CLIWorker.SPOOL_FAILED_DIR), "fail.omex").exists());
+        Assert.assertTrue(new File(spoolDir, "ignored.txt").exists());
+        Assert.assertEquals(0, new File(spoolDir, CLIWorker.SPOOL_RUNNING_DIR).list().length);
+    }
+
+    @Test
+    public void testSocket() throws Exception {
+        File archive = new File(tempDir, "a.omex");
+        Files.write(archive.toPath(), new byte[] { 1 });
+        File failingArchive = new File(tempDir, "fail.omex");
+        Files.write(failingArchive.toPath(), new byte[] { 2 });
+        int port;
+        try (ServerSocket freePort = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = freePort.getLocalPort();
+        }
+
+        CLIWorker worker = createWorker();
+        Thread socketThread = new Thread(() -> {
+            try {
+                worker.serveSocket(port);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        socketThread.start();
+        Socket socket = null;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (socket == null) {
+            try {
+                socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (java.net.ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+        List<String> replies = new ArrayList<>();
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            writer.println(archive.getAbsolutePath());
+            writer.println(failingArchive.getAbsolutePath());
+            writer.println(new File(tempDir, "missing.omex").getAbsolutePath());
+            replies.add(reader.readLine());
+            replies.add(reader.readLine());
+            replies.add(reader.readLine());
+            writer.println(CLIWorker.STOP_COMMAND);
+        }
+        socketThread.join(30000);
+        Assert.assertFalse(socketThread.isAlive());
+        worker.shutdown();
+
+        Collections.sort(replies);
+        Assert.assertEquals(3, replies.size());
+        Assert.assertTrue(replies.get(0), replies.get(0).startsWith("FAILED " + archive.getParent()));
+        Assert.assertTrue(replies.get(1), replies.get(1).startsWith("FAILED " + archive.getParent()));
+        Assert.assertEquals("OK " + archive.getAbsolutePath(), replies.get(2));
+        Assert.assertTrue(replies.toString(), replies.get(0).contains("failed to run fail.omex") || replies.get(1).contains("failed to run fail.omex"));
+        // missing archives fail before they are executed
+        Assert.assertEquals(2, executed.size());
+        Assert.assertEquals(1, worker.getNumJobsSucceeded());
+        Assert.assertEquals(2, worker.getNumJobsFailed());
+    }
+
+    @Test
+    public void testSameArchiveNameRunsSequentially() throws Exception {
+        File dir1 = new File(tempDir, "1");
+        File dir2 = new File(tempDir, "2");
+        dir1.mkdir();
+        dir2.mkdir();
+        File archive1 = new File(dir1, "model.omex");
+        File archive2 = new File(dir2, "model.omex");
+        Files.write(archive1.toPath(), new byte[] { 1 });
+        Files.write(archive2.toPath(), new byte[] { 2 });
+        final int[] running = new int[1];
+        final int[] maxRunning = new int[1];
+        CLIWorker worker = new CLIWorker(new File(tempDir, "out"), null, 2, false, false, false, null) {
+            @Override
+            protected void executeArchive(File archive) throws Exception {
+                synchronized (running) {
+                    running[0]++;
+                    maxRunning[0] = Math.max(maxRunning[0], running[0]);
+                }
+                Thread.sleep(200);
+                synchronized (running) {
+                    running[0]--;
+                }
+            }
+        };
+        // both write into out/model, so they must not overlap
+        worker.submit(archive1);
+        worker.submit(archive2).get(30, TimeUnit.SECONDS);
+        worker.shutdown();
+        Assert.assertEquals(1, maxRunning[0]);
+        Assert.assertEquals(2, worker.getNumJobsSucceeded());
+    }
+}
@@ -0,0 +1,119 @@
+package org.vcell.cli.run;
+
+import cbit.vcell.biomodel.BioModel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SedmlImportCacheTest {
+
+    private File tempDir;
+    private final AtomicInteger numImports = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("SedmlImportCacheTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(tempDir);
+    }
+
+    private File archive(String name, String content) throws Exception {
+        File file = new File(tempDir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private SedmlImportCache.Importer importer(String bioModelName) {
+        return () -> {
+            numImports.incrementAndGet();
+            BioModel bioModel = new BioModel(null);
+            bioModel.setName(bioModelName);
+            return Collections.singletonList(bioModel);
+        };
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        SedmlImportCache cache = new SedmlImportCache(10);
+        File archive = archive("a.omex", "archive a");
+
+        List<BioModel> imported = cache.getBioModels(archive, "sim.sedml", false, importer("model"));
+        Assert.assertEquals(1, numImports.get());
+        Assert.assertEquals("model", imported.get(0).getName());
+
+        // a hit reads fresh BioModels from the cached VCML
+        List<BioModel> cached = cache.getBioModels(archive, "sim.sedml", false, importer("other"));
+        Assert.assertEquals(1, numImports.get());
+        Assert.assertEquals("model", cached.get(0).getName());
+        Assert.assertNotSame(imported.get(0), cached.get(0));
+
+        // other documents of the archive and other import options are separate entries
+        cache.getBioModels(archive, "other.sedml", false, importer("model"));
+        cache.getBioModels(archive, "sim.sedml", true, importer("model"));
+        Assert.assertEquals(3, numImports.get());
+        Assert.assertEquals("SED-ML import cache: 3 entries, 1 hits, 3 misses", cache.getStatistics());
+    }
+
+    @Test
+    public void testArchiveContentIsTheKey() throws Exception {
+        SedmlImportCache cache = new SedmlImportCache(10);
+        File archive = archive("a.omex", "version 1");
+        cache.getBioModels(archive, "sim.sedml", false, importer("model"));
+
+        // an archive with the same content under another name is a hit
+        cache.getBioModels(archive("copy.omex", "version 1"), "sim.sedml", false, importer("model"));
+        Assert.assertEquals(1, numImports.get());
+
+        // the archive changed (same name), the entry is not used
+        archive("a.omex", "version 2");
+        List<BioModel> reimported = cache.getBioModels(archive, "sim.sedml", false, importer("changed"));
+        Assert.assertEquals(2, numImports.get());
+        Assert.assertEquals("changed", reimported.get(0).getName());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        SedmlImportCache cache = new SedmlImportCache(2);
+        File a = archive("a.omex", "a");
+        File b = archive("b.omex", "b");
+        File c = archive("c.omex", "c");
+        cache.getBioModels(a, "sim.sedml", false, importer("a"));
+        cache.getBioModels(b, "sim.sedml", false, importer("b"));
+        cache.getBioModels(a, "sim.sedml", false, importer("a"));
+        cache.getBioModels(c, "sim.sedml", false, importer("c"));
+        Assert.assertEquals(3, numImports.get());
+
+        // b was the least recently used
+        cache.getBioModels(a, "sim.sedml", false, importer("a"));
+        Assert.assertEquals(3, numImports.get());
+        cache.getBioModels(b, "sim.sedml", false, importer("b"));
+        Assert.assertEquals(4, numImports.get());
+    }
+
+    @Test
+    public void testFailedImportIsNotCached() throws Exception {
+        SedmlImportCache cache = new SedmlImportCache(10);
+        File archive = archive("a.omex", "a");
+        try {
+            cache.getBioModels(archive, "sim.sedml", false, () -> {
+                throw new RuntimeException("bad sedml");
+            });
+            Assert.fail("expected the import error");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("bad sedml", e.getMessage());
+        }
+        cache.getBioModels(archive, "sim.sedml", false, importer("model"));
+        Assert.assertEquals(1, numImports.get());
+    }
+}
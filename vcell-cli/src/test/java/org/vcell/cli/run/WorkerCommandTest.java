@@ -0,0 +1,42 @@
+package org.vcell.cli.run;
+
+import org.junit.Assert;
+import org.junit.Test;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class WorkerCommandTest {
+
+    private static int execute(String... args) {
+        // the usage message of rejected arguments is not printed
+        return new CommandLine(new WorkerCommand()).setErr(new PrintWriter(new StringWriter())).execute(args);
+    }
+
+    @Test
+    public void testOptions() {
+        CommandLine.ParseResult parseResult = new CommandLine(new WorkerCommand()).parseArgs("--spool", "spool", "-o", "out", "--threads", "3");
+        Assert.assertEquals(new File("spool"), parseResult.matchedOptionValue("--spool", null));
+        Assert.assertEquals(new File("out"), parseResult.matchedOptionValue("-o", null));
+        Assert.assertEquals(Integer.valueOf(3), parseResult.matchedOptionValue("--threads", 0));
+        Assert.assertEquals(Integer.valueOf(200), parseResult.commandSpec().findOption("--importCacheSize").getValue());
+
+        parseResult = new CommandLine(new WorkerCommand()).parseArgs("--port", "4000", "-o", "out");
+        Assert.assertEquals(Integer.valueOf(4000), parseResult.matchedOptionValue("--port", null));
+    }
+
+    @Test
+    public void testJobSourceIsRequiredAndExclusive() {
+        Assert.assertEquals(2, execute("-o", "out"));
+        Assert.assertEquals(2, execute("--spool", "spool", "--port", "4000", "-o", "out"));
+        Assert.assertEquals(2, execute("--spool", "spool"));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assert.assertEquals(1, execute("--spool", "spool", "-o", "out", "--threads", "0"));
+        Assert.assertEquals(1, execute("--spool", "spool", "-o", "out", "--debug", "--quiet"));
+    }
+}
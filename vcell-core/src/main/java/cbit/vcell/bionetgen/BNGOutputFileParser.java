@@ -15,9 +15,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -174,15 +172,6 @@ public static String extractCompartments (String inputString) {
 	return s;
 }
 
-public static Map<String, BNGSpecies> createBngSpeciesSignatureMap(String inputString) {
-	
-	Map <String, BNGSpecies> map = new HashMap<> ();
-	List<BNGSpecies> list = createBngSpeciesOutputSpec(inputString);
-	for(BNGSpecies species : list) {
-		map.put(species.getName(), species);
-	}
-	return map;
-}
 public static List<BNGSpecies> createBngSpeciesOutputSpec(String inputString) {
 
 	String newLineDelimiters = "\n\r";
@@ -119,14 +119,17 @@ public static BNGSpecies findMatch(BNGSpecies ours, List<BNGSpecies> theirsList,
 //		}
 //	}
 	String ourSignature = BNGSpecies.getShortSignature(ours, sigDetailLevel);
-	// using jgrapht
-	SpeciesGraphIsomorphismInspector sgii = new SpeciesGraphIsomorphismInspector();
+	String ourCanonicalSignature = null;
 	for(BNGSpecies theirs : theirsList) {
 		String theirSignature = BNGSpecies.getShortSignature(theirs, sigDetailLevel);
 		if(!theirSignature.equals(ourSignature)) {
 			continue;			// no point to compute the isomorfism if the signatures don't match
 		}
-		if(sgii.isIsomorphism(ours, theirs)) {
+		// isomorphic species have the same canonical signature (the jgrapht SpeciesGraphIsomorphismInspector gives the same answer, slower)
+		if(ourCanonicalSignature == null) {
+			ourCanonicalSignature = SpeciesCanonicalLabeling.getCanonicalSignature(ours);
+		}
+		if(SpeciesCanonicalLabeling.getCanonicalSignature(theirs).equals(ourCanonicalSignature)) {
 			return theirs;
 		}
 	}
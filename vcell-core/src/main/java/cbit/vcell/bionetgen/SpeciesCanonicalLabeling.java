@@ -0,0 +1,296 @@
+package cbit.vcell.bionetgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// canonical form of a species, identical for isomorphic species (which differ only in the bond numbering and in the order
+// of the molecules and components), so that duplicates can be found with a hash lookup instead of pairwise isomorphism checks
+//
+// the species is seen as a graph with the molecules as vertices (labeled with their components and states, bonds ignored)
+// and the bonds as edges (labeled with the 2 components); components with identical labels are interchangeable within a molecule
+// so this graph is isomorphic exactly when the species are
+// the canonical labeling refines the partition of molecules by the labels of their neighborhood; when the partition is not discrete
+// (symmetric molecules) each molecule of the first ambiguous class is tried in turn and the smallest resulting form is kept
+// two leaves with the same form give an automorphism of the species; a molecule in the same orbit as an already tried one
+// (under the automorphisms fixing the molecules chosen above it) is skipped, and a leaf equivalent to the first leaf ends
+// the search of the whole subtree below the point where its path left the first path, as in nauty
+public class SpeciesCanonicalLabeling {
+
+	private static class Neighbor {
+		final String bondLabel;		// component of this molecule and component of the neighbor, ex: "ecd!-rb!"
+		final int molecule;
+		Neighbor(String bondLabel, int molecule) {
+			this.bondLabel = bondLabel;
+			this.molecule = molecule;
+		}
+	}
+	private static class Bond {
+		final int molecule1;
+		final String component1;
+		final int molecule2;
+		final String component2;
+		Bond(int molecule1, String component1, int molecule2, String component2) {
+			this.molecule1 = molecule1;
+			this.component1 = component1;
+			this.molecule2 = molecule2;
+			this.component2 = component2;
+		}
+	}
+
+	private final String[] moleculeLabels;
+	private final List<Bond> bonds = new ArrayList<>();
+	private final List<List<Neighbor>> neighbors = new ArrayList<>();
+	private String best = null;
+	private int[] bestLeaf = null;
+	private String firstSignature = null;
+	private int[] firstLeaf = null;
+	private List<Integer> firstPath = null;
+	private final List<int[]> automorphisms = new ArrayList<>();
+
+	private SpeciesCanonicalLabeling(BNGSpecies species) {
+		List<BNGSpecies> moleculeList = new ArrayList<>();
+		if(species instanceof BNGComplexSpecies) {
+			moleculeList.addAll(Arrays.asList(species.parseBNGSpeciesName()));
+		} else {
+			moleculeList.add(species);		// simple species, we'll only have one element in this list
+		}
+		moleculeLabels = new String[moleculeList.size()];
+		Map<Integer, Bond> bondMap = new LinkedHashMap<>();		// key = bond index, first half of the bond until we find the second
+		for(int i=0; i<moleculeList.size(); i++) {
+			neighbors.add(new ArrayList<>());
+			BNGSpecies molecule = moleculeList.get(i);
+			if(!(molecule instanceof BNGMultiStateSpecies)) {
+				moleculeLabels[i] = molecule.getName();
+				continue;
+			}
+			BNGMultiStateSpecies mss = (BNGMultiStateSpecies)molecule;
+			moleculeLabels[i] = mss.extractMolecularPatternSignature();
+			for(BNGSpeciesComponent c : mss.getComponents()) {
+				String name = c.getComponentName();
+				if(c.getCurrentState() != null) {
+					name += "~" + c.getCurrentState();
+				}
+				if(!name.contains("!") || name.contains("!+") || name.contains("!?")) {
+					continue;		// no explicit bond
+				}
+				int bondIndex = Integer.parseInt(name.substring(name.indexOf("!")+1));
+				String componentLabel = c.extractComponentPatternSignature();
+				Bond halfBond = bondMap.remove(bondIndex);
+				if(halfBond == null) {
+					bondMap.put(bondIndex, new Bond(i, componentLabel, -1, null));
+				} else {
+					Bond bond = new Bond(halfBond.molecule1, halfBond.component1, i, componentLabel);
+					bonds.add(bond);
+					neighbors.get(bond.molecule1).add(new Neighbor(bond.component1 + "-" + bond.component2, bond.molecule2));
+					neighbors.get(bond.molecule2).add(new Neighbor(bond.component2 + "-" + bond.component1, bond.molecule1));
+				}
+			}
+		}
+		if(!bondMap.isEmpty()) {
+			throw new RuntimeException("Species " + species.getName() + " has unmatched bond " + bondMap.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * @return a string which is the same for 2 species if and only if they are isomorphic.
+	 */
+	public static String getCanonicalSignature(BNGSpecies species) {
+		SpeciesCanonicalLabeling labeling = new SpeciesCanonicalLabeling(species);
+		int[] colors = labeling.rank(Arrays.asList(labeling.moleculeLabels));
+		labeling.search(colors, new ArrayList<>());
+		return labeling.best;
+	}
+
+	// the color of each molecule is the rank of its key among the distinct keys
+	private int[] rank(List<String> keys) {
+		List<String> distinctKeys = new ArrayList<>(new TreeSet<>(keys));
+		int[] colors = new int[keys.size()];
+		for(int i=0; i<colors.length; i++) {
+			colors[i] = Collections.binarySearch(distinctKeys, keys.get(i));
+		}
+		return colors;
+	}
+
+	private static int countColors(int[] colors) {
+		boolean[] used = new boolean[colors.length];
+		int count = 0;
+		for(int color : colors) {
+			if(!used[color]) {
+				used[color] = true;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// splits the color classes by the colors of the neighbors (and the labels of the bonds to them) until stable;
+	// a molecule key starts with its current color so the order of the existing classes is preserved
+	private int[] refine(int[] colors) {
+		int count = countColors(colors);
+		while(count < colors.length) {
+			List<String> keys = new ArrayList<>();
+			for(int i=0; i<colors.length; i++) {
+				List<String> entries = new ArrayList<>();
+				for(Neighbor n : neighbors.get(i)) {
+					entries.add(n.bondLabel + ":" + pad(colors[n.molecule]));
+				}
+				Collections.sort(entries);
+				keys.add(pad(colors[i]) + "|" + String.join(",", entries));
+			}
+			int[] newColors = rank(keys);
+			int newCount = countColors(newColors);
+			colors = newColors;
+			if(newCount == count) {
+				break;
+			}
+			count = newCount;
+		}
+		return colors;
+	}
+
+	// path is the list of molecules individualized so far; returns the depth the search goes back to, the depth of
+	// this node unless a leaf equivalent to the first leaf was found below it
+	private int search(int[] colors, List<Integer> path) {
+		colors = refine(colors);
+		int[] classSizes = new int[colors.length];
+		int target = -1;		// smallest color shared by several molecules
+		for(int color : colors) {
+			classSizes[color]++;
+		}
+		for(int color=0; color<classSizes.length; color++) {
+			if(classSizes[color] > 1) {
+				target = color;
+				break;
+			}
+		}
+		if(target == -1) {
+			String signature = getSignature(colors);
+			if(firstLeaf == null) {
+				firstSignature = signature;
+				firstLeaf = colors;
+				firstPath = new ArrayList<>(path);
+				best = signature;
+				bestLeaf = colors;
+			} else if(signature.equals(firstSignature)) {
+				// the subtree where this path left the first path is the image of the (explored) subtree of the first path
+				automorphisms.add(getAutomorphism(colors, firstLeaf));
+				int depth = 0;
+				while(depth < path.size() && depth < firstPath.size() && path.get(depth).equals(firstPath.get(depth))) {
+					depth++;
+				}
+				return depth;
+			} else if(signature.equals(best)) {
+				automorphisms.add(getAutomorphism(colors, bestLeaf));
+			} else if(signature.compareTo(best) < 0) {
+				best = signature;
+				bestLeaf = colors;
+			}
+			return path.size();
+		}
+		List<Integer> explored = new ArrayList<>();
+		for(int i=0; i<colors.length; i++) {
+			if(colors[i] != target || isInExploredOrbit(i, explored, path)) {
+				continue;
+			}
+			explored.add(i);
+			int[] individualized = new int[colors.length];		// molecule i goes first in its class
+			for(int j=0; j<colors.length; j++) {
+				individualized[j] = 2 * colors[j] + ((colors[j] == target && j != i) ? 1 : 0);
+			}
+			path.add(i);
+			int depth = search(rank(individualized), path);
+			path.remove(path.size() - 1);
+			if(depth < path.size()) {
+				return depth;
+			}
+		}
+		return path.size();
+	}
+
+	// the permutation of the molecules mapping the leaf to the reference leaf (both discrete, with the same signature)
+	private static int[] getAutomorphism(int[] leaf, int[] referenceLeaf) {
+		int[] moleculeAt = new int[referenceLeaf.length];
+		for(int i=0; i<referenceLeaf.length; i++) {
+			moleculeAt[referenceLeaf[i]] = i;
+		}
+		int[] automorphism = new int[leaf.length];
+		for(int i=0; i<leaf.length; i++) {
+			automorphism[i] = moleculeAt[leaf[i]];
+		}
+		return automorphism;
+	}
+
+	// true if the molecule is in the orbit of an explored molecule under the automorphisms found so far which fix the path
+	private boolean isInExploredOrbit(int molecule, List<Integer> explored, List<Integer> path) {
+		if(explored.isEmpty() || automorphisms.isEmpty()) {
+			return false;
+		}
+		int[] parent = new int[moleculeLabels.length];
+		for(int i=0; i<parent.length; i++) {
+			parent[i] = i;
+		}
+		for(int[] automorphism : automorphisms) {
+			boolean bFixesPath = true;
+			for(int p : path) {
+				if(automorphism[p] != p) {
+					bFixesPath = false;
+					break;
+				}
+			}
+			if(bFixesPath) {
+				for(int i=0; i<automorphism.length; i++) {
+					parent[find(parent, i)] = find(parent, automorphism[i]);
+				}
+			}
+		}
+		int root = find(parent, molecule);
+		for(int e : explored) {
+			if(find(parent, e) == root) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int find(int[] parent, int i) {
+		while(parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	// molecules in the order given by their (distinct) colors, followed by the bonds between molecule positions
+	private String getSignature(int[] colors) {
+		String[] orderedLabels = new String[colors.length];
+		for(int i=0; i<colors.length; i++) {
+			orderedLabels[colors[i]] = moleculeLabels[i];
+		}
+		List<String> entries = new ArrayList<>();
+		for(Bond bond : bonds) {
+			String end1 = pad(colors[bond.molecule1]) + ":" + bond.component1;
+			String end2 = pad(colors[bond.molecule2]) + ":" + bond.component2;
+			entries.add(end1.compareTo(end2) <= 0 ? end1 + "-" + end2 : end2 + "-" + end1);
+		}
+		Collections.sort(entries);
+		return String.join(".", orderedLabels) + "|" + String.join(",", entries);
+	}
+
+	private int[] rank(int[] colors) {
+		List<String> keys = new ArrayList<>();
+		for(int color : colors) {
+			keys.add(pad(color));
+		}
+		return rank(keys);
+	}
+
+	private static String pad(int value) {
+		String s = Integer.toString(value);
+		return "00000".substring(Math.min(5, s.length())) + s;
+	}
+}
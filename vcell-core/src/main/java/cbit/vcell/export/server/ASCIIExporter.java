@@ -165,8 +165,8 @@ private List<ExportOutput> exportParticleData(OutputContext outputContext,long j
 		}
 		
 
-		List<Coordinate> particles = particleDataBlk.getCoordinates(smoldynSpecies);
-		int numberOfParticles = particles.size(); 
+		double[] particles = particleDataBlk.getXYZ(smoldynSpecies);
+		int numberOfParticles = particleDataBlk.getParticleCount(smoldynSpecies); 
 		int numberOfTimes = endIndex - beginIndex + 1;
 		if (particleProgress != null) {
 			particleProgress.nextName();
@@ -213,7 +213,7 @@ private List<ExportOutput> exportParticleData(OutputContext outputContext,long j
 		int nextTimeIndex = particleProgress.nextTimeIndex(0, false);
 		for (int i=beginIndex;i<=endIndex;i++) {
 			particleDataBlk = dataServerImpl.getParticleDataBlock(user, vcdID,allTimes[i]);
-			particles = particleDataBlk.getCoordinates(smoldynSpecies);
+			particles = particleDataBlk.getXYZ(smoldynSpecies);
 			
 			if (i >= nextTimeIndex) {
 				nextTimeIndex = particleProgress.nextTimeIndex(i, true);
@@ -226,12 +226,11 @@ private List<ExportOutput> exportParticleData(OutputContext outputContext,long j
 				timeSb.append(",,,");
 				for (int j=0;j<numberOfParticles;j++) {
 					StringBuilder sb = dataLines[FDL + N_PARTICLE_PIECES * j];
-					Coordinate coordinate = particles.get(j);
-					sb.append(coordinate.getX());
+					sb.append(particles[3 * j]);
 					sb.append(COMMA);
-					sb.append(coordinate.getY());
+					sb.append(particles[3 * j + 1]);
 					sb.append(COMMA);
-					sb.append(coordinate.getZ());
+					sb.append(particles[3 * j + 2]);
 					sb.append(COMMA);
 				}
 			} else {
@@ -240,12 +239,11 @@ private List<ExportOutput> exportParticleData(OutputContext outputContext,long j
 		 		particleSb.append(allTimes[i]);
 		 		particleSb.append(COMMA);
 		 		for (int j=0;j<numberOfParticles;j++) {
-		 			Coordinate coordinate = particles.get(j) ;
-		 			particleSb.append( coordinate.getX() );
+		 			particleSb.append( particles[3 * j] );
 		 			particleSb.append(COMMA);
-		 			particleSb.append( coordinate.getY() );
+		 			particleSb.append( particles[3 * j + 1] );
 		 			particleSb.append(COMMA);
-		 			particleSb.append( coordinate.getZ() );
+		 			particleSb.append( particles[3 * j + 2] );
 		 			particleSb.append(COMMA);
 		 		}
 			}
@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 
 import org.apache.commons.compress.utils.IOUtils;
@@ -19,6 +20,7 @@ import cbit.vcell.resource.PropertyLoader;
 
 public class FileDataContainerManager {
 	ArrayList<FileDataContainer> fileDataContainers = new ArrayList<FileDataContainer>();
+	private ArrayList<File> tempDirectories = new ArrayList<File>();
 	private long aggregateDataSize = 0;
 	private static long AGGREGATE_DATA_SIZE_IN_MEMORY_LIMIT= PropertyLoader.getLongProperty(PropertyLoader.exportMaxInMemoryLimit, 1024*1024*100); 
 	
@@ -260,11 +262,24 @@ public class FileDataContainerManager {
 	private FileDataContainer getFileDataContainer(FileDataContainerID fileDataContainerID){
 		return fileDataContainers.get(fileDataContainerID.id);
 	}
+	/**
+	 * new directory of this manager only, for files written by the exporter and handed over with manageExistingTempFile()
+	 * (files of concurrent exports can't collide there).  It is deleted with its content by closeAllAndDelete().
+	 */
+	public File createTempDirectory(String prefix) throws IOException{
+		File tempDirectory = Files.createTempDirectory(PropertyLoader.getSystemTemporaryDirectory().toPath(), prefix).toFile();
+		tempDirectories.add(tempDirectory);
+		return tempDirectory;
+	}
 	public void closeAllAndDelete() throws IOException{
 		for(FileDataContainer fileDataContainer:fileDataContainers){
 //			System.out.println("deleting: "+fileDataContainer.getDataFile().getAbsolutePath());
 			fileDataContainer.deleteTempFile();
 		}
+		for(File tempDirectory:tempDirectories){
+			org.apache.commons.io.FileUtils.deleteQuietly(tempDirectory);
+		}
+		tempDirectories.clear();
 	}
 	
 	public void printBytes(FileDataContainerID fileDataContainerID, PrintStream ps) throws FileNotFoundException, IOException{
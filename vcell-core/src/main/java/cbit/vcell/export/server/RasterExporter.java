@@ -62,7 +62,6 @@ import cbit.vcell.geometry.surface.Node;
 import cbit.vcell.geometry.surface.Quadrilateral;
 import cbit.vcell.math.MathException;
 import cbit.vcell.math.VariableType;
-import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.simdata.DataIdentifier;
 import cbit.vcell.simdata.DataOperation;
 import cbit.vcell.simdata.DataOperationResults.DataProcessingOutputInfo;
@@ -70,6 +69,7 @@ import cbit.vcell.simdata.DataOperationResults.DataProcessingOutputInfo.PostProc
 import cbit.vcell.simdata.DataServerImpl;
 import cbit.vcell.simdata.OutputContext;
 import cbit.vcell.simdata.SimDataBlock;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
 import cbit.vcell.solvers.CartesianMesh;
 import cbit.vcell.solvers.MembraneElement;
 import cbit.vcell.solvers.MeshDisplayAdapter;
@@ -1030,7 +1030,7 @@ public ExportOutput[] makeVTKUnstructuredData0(OutputContext outputContext,JobRe
 		DataServerImpl dataServerImpl, ExportSpecs exportSpecs, FileDataContainerManager fileDataContainerManager) throws Exception{
 	VCDataIdentifier vcdID = exportSpecs.getVCDataIdentifier();
 	boolean bChombo = dataServerImpl.isChombo(user, vcdID);
-	final File tmpDir = PropertyLoader.getSystemTemporaryDirectory();
+	final File tmpDir = fileDataContainerManager.createTempDirectory("vtkExport");
 	if (bChombo){
 		return makeVTKUnstructuredData_Chombo(outputContext, jobRequest, user, dataServerImpl, exportSpecs, tmpDir, fileDataContainerManager);
 	}else{
@@ -1068,17 +1068,34 @@ public ExportOutput[] makeVTKUnstructuredData_Chombo(OutputContext outputContext
 }
 
 
-public ExportOutput[] makeVTKUnstructuredData_VCell(OutputContext outputContext,final JobRequest jobRequest, User user,
-		DataServerImpl dataServerImpl, ExportSpecs exportSpecs, File tmpDir, FileDataContainerManager fileDataContainerManager) throws Exception{
+/**
+ * binary (compressed) .vtu files of the finite volume mesh, one per domain and time, the time points are written in parallel.
+ */
+public ExportOutput[] makeVTKUnstructuredData_VCell(final OutputContext outputContext,final JobRequest jobRequest, final User user,
+		final DataServerImpl dataServerImpl, ExportSpecs exportSpecs, File tmpDir, FileDataContainerManager fileDataContainerManager) throws Exception{
 	
 	String simID = exportSpecs.getVCDataIdentifier().getID();
 	final VCDataIdentifier vcdID = exportSpecs.getVCDataIdentifier();
 	VariableSpecs variableSpecs = exportSpecs.getVariableSpecs();
 	TimeSpecs timeSpecs = exportSpecs.getTimeSpecs();
 	
+	List<String> variableNames = Arrays.asList(variableSpecs.getVariableNames());
+	ArrayList<DataIdentifier> dataIdentifiers = new ArrayList<DataIdentifier>();
+	for (DataIdentifier dataIdentifier : dataServerImpl.getDataIdentifiers(outputContext, user, vcdID)){
+		if (variableNames.contains(dataIdentifier.getName())){
+			dataIdentifiers.add(dataIdentifier);
+		}
+	}
+	double[] times = Arrays.copyOfRange(timeSpecs.getAllTimes(), timeSpecs.getBeginTimeIndex(), timeSpecs.getEndTimeIndex()+1);
+	
 	VCellSimFiles vcellFiles = dataServerImpl.getVCellSimFiles(user, vcdID);
 	CartesianMeshVtkFileWriter cartesianMeshVtkFileWriter = new CartesianMeshVtkFileWriter();
-	File[] vtkFiles = cartesianMeshVtkFileWriter.writeVtuExportFiles(vcellFiles, tmpDir, new CartesianMeshVtkFileWriter.ProgressListener() {
+	CartesianMeshVtkFileWriter.DataProvider dataProvider = new CartesianMeshVtkFileWriter.DataProvider() {
+		public double[] getData(DataIdentifier dataIdentifier, double time) throws Exception {
+			return dataServerImpl.getSimDataBlock(outputContext, user, vcdID, dataIdentifier.getName(), time).getData();
+		}
+	};
+	File[] vtkFiles = cartesianMeshVtkFileWriter.writeVtuExportFiles(vcellFiles, dataIdentifiers.toArray(new DataIdentifier[0]), times, dataProvider, tmpDir, new CartesianMeshVtkFileWriter.ProgressListener() {
 		public void progress(double percentDone) {
 			exportServiceImpl.fireExportProgress(jobRequest.getJobID(), vcdID, "VTKUNSTR", percentDone);
 		}
@@ -1104,6 +1121,16 @@ public ExportOutput[] makeVTKUnstructuredData(OutputContext outputContext,JobReq
 	VariableSpecs variableSpecs = exportSpecs.getVariableSpecs();
 	TimeSpecs timeSpecs = exportSpecs.getTimeSpecs();
 	cbit.vcell.solvers.CartesianMesh mesh = dataServerImpl.getMesh(user,vcdID );
+	if (mesh.getGeometryDimension() == 3 && vcdID instanceof VCSimulationDataIdentifier
+			&& !dataServerImpl.isChombo(user, vcdID) && !dataServerImpl.isMovingBoundary(user, vcdID) && !dataServerImpl.isComsol(user, vcdID)){
+		File subdomainFile = dataServerImpl.getVCellSimFiles(user, vcdID).subdomainFile;
+		if (subdomainFile != null && subdomainFile.exists()){
+			// 3D finite volume data: binary vtu files written in parallel instead of the ascii grid repeated for every time
+			// written to a directory of this export, the file names only depend on the simulation, domain and time
+			File tmpDir = fileDataContainerManager.createTempDirectory("vtkExport");
+			return makeVTKUnstructuredData_VCell(outputContext, jobRequest, user, dataServerImpl, exportSpecs, tmpDir, fileDataContainerManager);
+		}
+	}
 	CartesianMesh.UCDInfo ucdInfo = mesh.getUCDInfo();
 	CartesianMesh.UCDInfo ucdInfoReduced = ucdInfo.removeNonMembraneGridNodes();
 	
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.geometry;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import org.vcell.util.Extent;
+import org.vcell.util.ISize;
+import org.vcell.util.Origin;
+
+import cbit.image.ImageException;
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.resource.PropertyLoader;
+
+/**
+ * Samples the analytic and CSG subvolumes of a geometry on a regular grid (see {@link GeometrySpec#createSampledImage(ISize)}).
+ * <p>
+ * The analytic expressions are compiled once, each x-row is classified in one pass (the first subvolume containing a point wins,
+ * as GeometrySpec.getSubVolume() does) and ranges of rows (z-slabs for 3D geometries) are split across
+ * a shared fork-join pool.  Sampling itself never changes the geometry; points inside no subvolume are reported to the caller.
+ */
+final class AnalyticGeometrySampler {
+
+	static final int OUTSIDE = -1;
+
+	// points per task below which a range of rows is not split any further
+	private static final int MIN_POINTS_PER_TASK = 16 * 1024;
+
+	private static ForkJoinPool samplingPool = null;
+	private static int samplingThreadCount = 0;
+
+	private final SubVolume[] subVolumes;
+	private final CompiledExpression[] compiledExpressions;		// null for CSG objects
+	private final GeometrySpec geometrySpec;
+	private final int numX, numY, numZ;
+	private final double ox, oy, oz;
+	private final Extent extent;
+
+	/**
+	 * @param subVolumes analytic or CSG subvolumes in priority order, analytic expressions must be bound to x,y,z.
+	 */
+	AnalyticGeometrySampler(GeometrySpec geometrySpec, SubVolume[] subVolumes, ISize sampleSize) throws GeometryException {
+		this.geometrySpec = geometrySpec;
+		this.subVolumes = subVolumes;
+		this.compiledExpressions = new CompiledExpression[subVolumes.length];
+		for (int s = 0; s < subVolumes.length; s++){
+			if (subVolumes[s] instanceof AnalyticSubVolume){
+				AnalyticSubVolume analyticSubVolume = (AnalyticSubVolume)subVolumes[s];
+				if (analyticSubVolume.getExpression() == null){
+					throw new GeometryException("expression for analytic geometry is not defined");
+				}
+				compiledExpressions[s] = analyticSubVolume.getExpression().compile();
+			}else if (!(subVolumes[s] instanceof CSGObject)){
+				throw new IllegalArgumentException("subvolume "+subVolumes[s].getName()+" is not analytic or CSG");
+			}
+		}
+		this.numX = sampleSize.getX();
+		this.numY = sampleSize.getY();
+		this.numZ = sampleSize.getZ();
+		this.ox = geometrySpec.getOrigin().getX();
+		this.oy = geometrySpec.getOrigin().getY();
+		this.oz = geometrySpec.getOrigin().getZ();
+		this.extent = geometrySpec.getExtent();
+	}
+
+	/**
+	 * @return for each point (x fastest, then y, then z) the index of the first subvolume containing it, or OUTSIDE.
+	 */
+	int[] sample() throws GeometryException, ImageException, ExpressionException {
+		int[] subVolumeIndices = new int[numX * numY * numZ];
+		int numRows = numY * numZ;
+		int numThreads = getSamplingThreadCount();
+		if (numThreads <= 1 || subVolumeIndices.length < 2 * MIN_POINTS_PER_TASK){
+			sampleRows(0, numRows, subVolumeIndices);
+			return subVolumeIndices;
+		}
+		int minRowsPerTask = Math.max(1, MIN_POINTS_PER_TASK / Math.max(1, numX));
+		if (numZ > 1){
+			minRowsPerTask = Math.max(numY, (minRowsPerTask / numY) * numY);		// whole z-slabs
+		}
+		SampleTask task = new SampleTask(0, numRows, minRowsPerTask, subVolumeIndices);
+		try {
+			getSamplingPool().invoke(task);
+		}catch (SamplingException e){
+			e.rethrow();
+		}
+		return subVolumeIndices;
+	}
+
+	/**
+	 * classifies rows [startRow, endRow), a row being the points with the same y and z indices.
+	 */
+	private void sampleRows(int startRow, int endRow, int[] subVolumeIndices) throws GeometryException, ImageException, ExpressionException {
+		double[] values = new double[3];
+		double[] coordX = new double[numX];
+		for (int i = 0; i < numX; i++){
+			double unit_x = (numX>1)?((double)i)/(numX-1):0.5;
+			coordX[i] = ox + extent.getX() * unit_x;
+		}
+		for (int row = startRow; row < endRow; row++){
+			int j = row % numY;
+			int k = row / numY;
+			double unit_z = (numZ > 1) ? ((double)k)/(numZ-1):0.5;
+			double coordZ = (numZ > 1) ? oz + extent.getZ() * unit_z : 0;
+			double unit_y = (numY > 1) ? ((double)j)/(numY-1):0.5;
+			double coordY = (numY > 1) ? oy + extent.getY() * unit_y : 0;
+			int offset = row * numX;
+			for (int i = 0; i < numX; i++){
+				int subVolumeIndex = OUTSIDE;
+				for (int s = 0; s < subVolumes.length; s++){
+					boolean bInside;
+					if (compiledExpressions[s] != null){
+						values[0] = coordX[i];
+						values[1] = coordY;
+						values[2] = coordZ;
+						bInside = compiledExpressions[s].eval(values) != 0;
+					}else{
+						bInside = subVolumes[s].isInside(coordX[i], coordY, coordZ, geometrySpec);
+					}
+					if (bInside){
+						subVolumeIndex = s;
+						break;
+					}
+				}
+				subVolumeIndices[offset + i] = subVolumeIndex;
+			}
+		}
+	}
+
+	private class SampleTask extends RecursiveAction {
+		private final int startRow;
+		private final int endRow;
+		private final int minRowsPerTask;
+		private final int[] subVolumeIndices;
+
+		SampleTask(int startRow, int endRow, int minRowsPerTask, int[] subVolumeIndices){
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.minRowsPerTask = minRowsPerTask;
+			this.subVolumeIndices = subVolumeIndices;
+		}
+
+		@Override
+		protected void compute() {
+			int numRows = endRow - startRow;
+			if (numRows < 2 * minRowsPerTask){
+				try {
+					sampleRows(startRow, endRow, subVolumeIndices);
+				}catch (GeometryException | ImageException | ExpressionException e){
+					throw new SamplingException(e);
+				}
+				return;
+			}
+			int middleRow = startRow + ((numRows / 2) / minRowsPerTask) * minRowsPerTask;
+			invokeAll(new SampleTask(startRow, middleRow, minRowsPerTask, subVolumeIndices),
+					new SampleTask(middleRow, endRow, minRowsPerTask, subVolumeIndices));
+		}
+	}
+
+	/**
+	 * carries the checked exceptions of a task out of the pool.
+	 */
+	@SuppressWarnings("serial")
+	private static class SamplingException extends RuntimeException {
+		SamplingException(Exception cause){
+			super(cause.getMessage(), cause);
+		}
+		void rethrow() throws GeometryException, ImageException, ExpressionException {
+			Throwable cause = getCause();
+			if (cause instanceof GeometryException){
+				throw (GeometryException)cause;
+			}
+			if (cause instanceof ImageException){
+				throw (ImageException)cause;
+			}
+			throw (ExpressionException)cause;
+		}
+	}
+
+	private static synchronized int getSamplingThreadCount() {
+		if (samplingThreadCount == 0) {
+			samplingThreadCount = Math.max(1, PropertyLoader.getIntProperty(PropertyLoader.geometrySamplingThreadsProperty, Runtime.getRuntime().availableProcessors()));
+		}
+		return samplingThreadCount;
+	}
+
+	/**
+	 * pool shared by all geometries sampled in this process.
+	 */
+	private static synchronized ForkJoinPool getSamplingPool() {
+		if (samplingPool == null) {
+			samplingPool = new ForkJoinPool(getSamplingThreadCount(), (pool) -> {
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				t.setName("GeometrySampling-" + t.getPoolIndex());
+				t.setDaemon(true);
+				return t;
+			}, null, false);
+		}
+		return samplingPool;
+	}
+}
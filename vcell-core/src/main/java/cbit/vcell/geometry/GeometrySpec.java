@@ -473,53 +473,42 @@ public VCImage createSampledImage(ISize sampleSize) throws GeometryException, Im
 	//
 	// go through AnalyticSubVolumes to overlay over ImageSubVolumes
 	//
-	int displayIndex = 0;
-	//double deltaX = (sampleSize.getX()>1)?(getExtent().getX()/(sampleSize.getX()-1)):0;
-	//double deltaY = (sampleSize.getY()>1)?(getExtent().getY()/(sampleSize.getY()-1)):0;
-	//double deltaZ = (sampleSize.getZ()>1)?(getExtent().getZ()/(sampleSize.getZ()-1)):0;
-	double ox = getOrigin().getX();
-	double oy = getOrigin().getY();
-	double oz = getOrigin().getZ();
-	int numX = sampleSize.getX();
-	int numY = sampleSize.getY();
-	int numZ = sampleSize.getZ();
 	
 	//
 	// rebind x,y,z,t and set Index values
 	//
+	Vector<SubVolume> analyticOrCSGSubVolumes = new Vector<SubVolume>();
 	Enumeration<SubVolume> enumASV = getAnalyticOrCSGSubVolumes();
 	while (enumASV.hasMoreElements()){
 		SubVolume sv = enumASV.nextElement();
 		if (sv instanceof AnalyticSubVolume){
 			((AnalyticSubVolume)sv).rebind();
 		}
+		analyticOrCSGSubVolumes.add(sv);
 	}
 
-	if (getNumAnalyticOrCSGSubVolumes()>0){
-		for (int k=0;k<sampleSize.getZ();k++){
-			double unit_z = (numZ>1) ? ((double)k)/(numZ-1):0.5;
-			double coordZ = (numZ>1) ? oz + extent.getZ() * unit_z : 0;
-			for (int j=0;j<sampleSize.getY();j++){
-				double unit_y = (numY>1) ? ((double)j)/(numY-1):0.5;
-				double coordY = (numY>1) ? oy + extent.getY() * unit_y : 0;
-				for (int i=0;i<sampleSize.getX();i++){
-					double unit_x = (numX>1)?((double)i)/(numX-1):0.5;
-					double coordX = ox + extent.getX() * unit_x;
-					SubVolume subVolume = getAnalyticOrCSGSubVolume(coordX,coordY,coordZ);
-					if (subVolume!=null){
-						handles[displayIndex] = (byte)subVolume.getHandle();
-					} else {
-						AnalyticSubVolume backgroundSubVol = new AnalyticSubVolume(getFreeSubVolumeName("background"), new Expression(1.0));
-						try {
-							this.addAnalyticSubVolumeOrCSGObject(backgroundSubVol, false);
-						} catch (PropertyVetoException e) {
-							e.printStackTrace(System.out);
-							throw new GeometryException("Issue adding a background subvolume to geometry : " + e.getMessage());
-						}
-						handles[displayIndex] = (byte)backgroundSubVol.getHandle();
+	if (analyticOrCSGSubVolumes.size()>0){
+		SubVolume[] samplingSubVolumes = analyticOrCSGSubVolumes.toArray(new SubVolume[0]);
+		int[] subVolumeIndices = new AnalyticGeometrySampler(this, samplingSubVolumes, sampleSize).sample();
+		//
+		// points outside of all subvolumes go to a background subvolume (added after the others, so it doesn't hide them)
+		//
+		AnalyticSubVolume backgroundSubVol = null;
+		for (int displayIndex=0;displayIndex<subVolumeIndices.length;displayIndex++){
+			int subVolumeIndex = subVolumeIndices[displayIndex];
+			if (subVolumeIndex != AnalyticGeometrySampler.OUTSIDE){
+				handles[displayIndex] = (byte)samplingSubVolumes[subVolumeIndex].getHandle();
+			} else {
+				if (backgroundSubVol == null){
+					backgroundSubVol = new AnalyticSubVolume(getFreeSubVolumeName("background"), new Expression(1.0));
+					try {
+						this.addAnalyticSubVolumeOrCSGObject(backgroundSubVol, false);
+					} catch (PropertyVetoException e) {
+						e.printStackTrace(System.out);
+						throw new GeometryException("Issue adding a background subvolume to geometry : " + e.getMessage());
 					}
-					displayIndex++;
 				}
+				handles[displayIndex] = (byte)backgroundSubVol.getHandle();
 			}
 		}
 	}
@@ -572,24 +561,6 @@ public void fireVetoableChange(java.lang.String propertyName, java.lang.Object o
 }
 
 
-/**
- * This method was created by a SmartGuide.
- * @return int
- * @param x double
- * @param y double
- */
-private SubVolume getAnalyticOrCSGSubVolume(double x, double y, double z) throws GeometryException, ImageException, ExpressionException {
-	for (int i=0;i<fieldSubVolumes.length;i++){
-		SubVolume subVolume = fieldSubVolumes[i];
-		if (subVolume instanceof AnalyticSubVolume || subVolume instanceof CSGObject){
-			if (subVolume.isInside(x,y,z,this)){
-				return subVolume;
-			}
-		}
-	}
-	return null;
-}
-
 /**
  * This method was created by a SmartGuide.
  * @return int[]
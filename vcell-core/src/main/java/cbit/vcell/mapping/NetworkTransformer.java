@@ -60,6 +60,7 @@ import cbit.vcell.parser.SymbolTableEntry;
 import cbit.vcell.server.bionetgen.BNGException;
 import cbit.vcell.server.bionetgen.BNGExecutorService;
 import cbit.vcell.server.bionetgen.BNGInput;
+import cbit.vcell.server.bionetgen.BNGNetworkCache;
 import cbit.vcell.server.bionetgen.BNGOutput;
 import cbit.vcell.units.VCUnitDefinition;
 
@@ -70,6 +71,18 @@ public class NetworkTransformer implements SimContextTransformer {
 
 	private Map<FakeSeedSpeciesInitialConditionsParameter, Pair<SpeciesContext, Expression>> speciesEquivalenceMap = new LinkedHashMap<FakeSeedSpeciesInitialConditionsParameter, Pair<SpeciesContext, Expression>>();
 	private Map<FakeReactionRuleRateParameter, LocalParameter> kineticsParameterMap = new LinkedHashMap<FakeReactionRuleRateParameter, LocalParameter>();
+	private final BNGNetworkCache networkCache;
+
+	public NetworkTransformer() {
+		this(BNGNetworkCache.createDefault());
+	}
+
+	/**
+	 * @param networkCache cache of networks generated before (by any process sharing it), or null.
+	 */
+	public NetworkTransformer(BNGNetworkCache networkCache) {
+		this.networkCache = networkCache;
+	}
 	public final static int defaultSpeciesLimit = 800;			// 1000
 	public final static int defaultReactionsLimit = 2500;		// 3000
 	public final static int defaultMaxIteration = 1;
@@ -206,48 +219,34 @@ public class NetworkTransformer implements SimContextTransformer {
 			return (BNGOutputSpec)BeanUtils.cloneSerializable(outputSpec);
 		}
 		
-		BNGInput bngInput = new BNGInput(input);
-		BNGOutput bngOutput = null;
-		try {
-			final BNGExecutorService bngService = BNGExecutorService.getInstance(bngInput,networkGenerationRequirements.timeoutDurationMS);
-			bngService.registerBngUpdaterCallback(simContext);
-			bngOutput = bngService.executeBNG();
-		} catch (BNGException ex) {
-			ex.printStackTrace(System.out);
-			System.out.println("bionetgen exception");
-			if(ex.getMessage().contains("was asked to write the network, but no reactions were found")) {
-				RuntimeException rex = new RuntimeException("Specified species and reaction rules are not sufficient to define reaction network.");
-				throw rex;
-			} else {
-				throw ex; //rethrow without losing context
+		// networks generated before (by any process sharing the cache) from the same input
+		final BNGExecutorService bngService = BNGExecutorService.getInstance(new BNGInput(input),networkGenerationRequirements.timeoutDurationMS);
+		String networkCacheKey = (networkCache != null) ? BNGNetworkCache.getKey(bngService, input) : null;
+		BNGNetworkCache.Entry cachedNetwork = (networkCache != null) ? networkCache.get(networkCacheKey) : null;
+		if (cachedNetwork != null) {
+			String s = "Network found in the BioNetGen network cache, no need to generate network.";
+			System.out.println(s);
+			tcm = new TaskCallbackMessage(TaskCallbackStatus.Notification, s);
+			simContext.appendToConsole(tcm);
+			simContext.setInsufficientIterations(cachedNetwork.bInsufficientIterations);
+			simContext.setInsufficientMaxMolecules(cachedNetwork.bInsufficientMaxMolecules);
+			if(simContext.isInsufficientIterations()) {
+				s = NetworkTransformer.getInsufficientIterationsMessage();
+				tcm = new TaskCallbackMessage(TaskCallbackStatus.Error, s);
+				simContext.appendToConsole(tcm);
+			}
+			if(simContext.isInsufficientMaxMolecules()) {
+				s = NetworkTransformer.getInsufficientMaxMoleculesMessage();
+				tcm = new TaskCallbackMessage(TaskCallbackStatus.Error, s);
+				simContext.appendToConsole(tcm);
+			}
+			outputSpec = cachedNetwork.outputSpec;
+		} else {
+			outputSpec = runBioNetGen(bngService, simContext);
+			if (networkCache != null && !mathMappingCallback.isInterrupted()) {
+				networkCache.put(networkCacheKey, new BNGNetworkCache.Entry(outputSpec, simContext.isInsufficientIterations(), simContext.isInsufficientMaxMolecules()));
 			}
-		} catch (RuntimeException ex) {
-			ex.printStackTrace(System.out);
-			System.out.println("runtime exception");
-			throw ex;
-		} catch (Exception ex) {
-			ex.printStackTrace(System.out);
-			System.out.println("other exception");
-			throw new RuntimeException(ex.getMessage());
 		}
-		
-//		simContext.setInsufficientIterations(false);
-//		simContext.setInsufficientMaxMolecules(false);
-		String bngConsoleString = bngOutput.getConsoleOutput();
-		
-		// TODO: this message we check if insufficient iterations / max molecules
-		// DO IT OUTSIDE (in the bng service), we now can
-//		tcm = new TaskCallbackMessage(TaskCallbackStatus.DetailBatch, bngConsoleString);
-//		simContext.appendToConsole(tcm);
-		tcm = new TaskCallbackMessage(TaskCallbackStatus.TaskEndNotificationOnly, "");
-		simContext.setNewCallbackMessage(tcm);
-		tcm = new TaskCallbackMessage(TaskCallbackStatus.TaskEndAdjustSimulationContextFlagsOnly, "");
-		simContext.setNewCallbackMessage(tcm);
-
-
-		String bngNetString = bngOutput.getNetFileContent();
-		outputSpec = BNGOutputFileParser.createBngOutputSpec(bngNetString);
-		BNGOutputFileParser.printBNGNetOutput(outputSpec);			// prints all output to console
 
 		if (mathMappingCallback.isInterrupted()){
 			String msg = "Canceled by user.";
@@ -287,6 +286,54 @@ public class NetworkTransformer implements SimContextTransformer {
 		return (BNGOutputSpec)BeanUtils.cloneSerializable(outputSpec);
 	}
 
+	/**
+	 * runs BioNetGen with 'bngService' (which holds the input) and parses the generated network.
+	 */
+	private BNGOutputSpec runBioNetGen(BNGExecutorService bngService, SimulationContext simContext) {
+		TaskCallbackMessage tcm;
+		BNGOutput bngOutput = null;
+		try {
+			bngService.registerBngUpdaterCallback(simContext);
+			bngOutput = bngService.executeBNG();
+		} catch (BNGException ex) {
+			ex.printStackTrace(System.out);
+			System.out.println("bionetgen exception");
+			if(ex.getMessage().contains("was asked to write the network, but no reactions were found")) {
+				RuntimeException rex = new RuntimeException("Specified species and reaction rules are not sufficient to define reaction network.");
+				throw rex;
+			} else {
+				throw ex; //rethrow without losing context
+			}
+		} catch (RuntimeException ex) {
+			ex.printStackTrace(System.out);
+			System.out.println("runtime exception");
+			throw ex;
+		} catch (Exception ex) {
+			ex.printStackTrace(System.out);
+			System.out.println("other exception");
+			throw new RuntimeException(ex.getMessage());
+		}
+		
+//		simContext.setInsufficientIterations(false);
+//		simContext.setInsufficientMaxMolecules(false);
+		String bngConsoleString = bngOutput.getConsoleOutput();
+		
+		// TODO: this message we check if insufficient iterations / max molecules
+		// DO IT OUTSIDE (in the bng service), we now can
+//		tcm = new TaskCallbackMessage(TaskCallbackStatus.DetailBatch, bngConsoleString);
+//		simContext.appendToConsole(tcm);
+		tcm = new TaskCallbackMessage(TaskCallbackStatus.TaskEndNotificationOnly, "");
+		simContext.setNewCallbackMessage(tcm);
+		tcm = new TaskCallbackMessage(TaskCallbackStatus.TaskEndAdjustSimulationContextFlagsOnly, "");
+		simContext.setNewCallbackMessage(tcm);
+
+
+		String bngNetString = bngOutput.getNetFileContent();
+		BNGOutputSpec outputSpec = BNGOutputFileParser.createBngOutputSpec(bngNetString);
+		BNGOutputFileParser.printBNGNetOutput(outputSpec);			// prints all output to console
+		return outputSpec;
+	}
+
 	static final float progressFractionQuota = 2.0f/5.0f;
 	static final float progressFractionQuotaSpecies = progressFractionQuota / 2.0f / 10.0f;
 	
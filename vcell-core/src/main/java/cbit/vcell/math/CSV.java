@@ -47,9 +47,9 @@ public void exportTo(java.io.OutputStream outputStream, cbit.vcell.math.RowColum
 	flushString(bufferedWriter);
 
 	//write rows
-	double[] rowVector;
+	double[] rowVector = new double[data.getDataColumnCount()];
 	for (int row = 0; row < data.getRowCount(); row++){
-		rowVector = data.getRow(row);
+		data.getRow(row, rowVector);
 		//for each row, write values
 		for (int i = 0; i < varCount; i++){
 			writeString(bufferedWriter, rowVector[i]);
@@ -10,8 +10,15 @@
 
 package cbit.vcell.math;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -22,6 +29,7 @@ import org.apache.logging.log4j.Logger;
 import org.vcell.util.BeanUtils;
 
 import cbit.vcell.math.Variable.Domain;
+import cbit.vcell.parser.CompiledExpression;
 import cbit.vcell.parser.DivideByZeroException;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionException;
@@ -35,17 +43,31 @@ import cbit.vcell.util.ColumnDescription;
  *  this class will be represented by a vector of Variables, and the rows will be a
  *  vector of double[]...
  *  This guy probably has some synchronization problems...
+ *
+ *  Values are stored column-major in growable primitive buffers (one per data column),
+ *  rows are assembled on request - see {@link #getRow(int, double[])} and {@link #getColumnView(int)}.
  */
 /**
  * Insert the class' description here.
  * Creation date: (8/19/2000 8:59:02 PM)
  * @author: John Wagner
  */
-@SuppressWarnings("serial")
 public class RowColumnResultSet implements java.io.Serializable {
+	// the (computed) id of the row-major form, so that form can still be read (see readObject)
+	private static final long serialVersionUID = -6688963545955132695L;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("fieldDataColumnDescriptions", Vector.class),
+		new ObjectStreamField("fieldFunctionColumnDescriptions", Vector.class),
+		new ObjectStreamField("fieldColumnDescriptions", ColumnDescription[].class),
+		new ObjectStreamField("fieldColumnValues", double[][].class),
+		new ObjectStreamField("fieldRowCount", int.class),
+		new ObjectStreamField("fieldValues", ArrayList.class),  // row-major form (vector of rows), read only
+	};
 	private Vector<ColumnDescription> fieldDataColumnDescriptions = new Vector<ColumnDescription>();
 	private Vector<ColumnDescription> fieldFunctionColumnDescriptions = new Vector<ColumnDescription>();
-	private ArrayList<double[]> fieldValues = new ArrayList<double[]> ();  // vector of rows (each row is a double[])
+	private double[][] fieldColumnValues = new double[0][];  // one buffer per data column, fieldColumnValues[c][r] (capacity may exceed row count)
+	private int fieldRowCount = 0;
+	private int fieldRowCapacity = 0;
 	protected transient java.beans.PropertyChangeSupport propertyChange;
 	private ColumnDescription[] fieldColumnDescriptions = null;
 	
@@ -61,7 +83,14 @@ public RowColumnResultSet() {
 public RowColumnResultSet(RowColumnResultSet copyThisRowColumnResultSet) {
 	this.fieldDataColumnDescriptions = new Vector<ColumnDescription>(copyThisRowColumnResultSet.fieldDataColumnDescriptions);
 	this.fieldFunctionColumnDescriptions = new Vector<ColumnDescription>(copyThisRowColumnResultSet.fieldFunctionColumnDescriptions);
-	this.fieldValues = new ArrayList<double[]>(copyThisRowColumnResultSet.fieldValues);
+	synchronized (copyThisRowColumnResultSet) {
+		this.fieldRowCount = copyThisRowColumnResultSet.fieldRowCount;
+		this.fieldRowCapacity = copyThisRowColumnResultSet.fieldRowCount;
+		this.fieldColumnValues = new double[copyThisRowColumnResultSet.fieldColumnValues.length][];
+		for (int c = 0; c < fieldColumnValues.length; c++) {
+			this.fieldColumnValues[c] = Arrays.copyOf(copyThisRowColumnResultSet.fieldColumnValues[c], fieldRowCount);
+		}
+	}
 }
 
 /**
@@ -84,6 +113,10 @@ public final void addDataColumn(ColumnDescription columnDescription) {
 	// cbit.util.Assertion.assert(getRowCount() == 0);
 	ColumnDescription[] oldValue = fieldColumnDescriptions;
 	fieldDataColumnDescriptions.addElement(columnDescription);
+	synchronized (this) {
+		fieldColumnValues = Arrays.copyOf(fieldColumnValues, fieldColumnValues.length + 1);
+		fieldColumnValues[fieldColumnValues.length - 1] = new double[fieldRowCapacity];
+	}
 	
 	fieldColumnDescriptions = null;
 	resultSetSymbolTableWithFunction = null;
@@ -145,12 +178,29 @@ public synchronized void addPropertyChangeListener(java.beans.PropertyChangeList
  */
 public synchronized void addRow (double[] values) {
 	// cbit.util.Assertion.assert(values.length == getDataColumnCount());
-	double[] v = new double[getDataColumnCount()];
 	if (values.length != getDataColumnCount()) {
 		throw new RuntimeException("number of values in row is not equal to number of columns");
 	}
-	System.arraycopy(values,0,v,0,getDataColumnCount());
-	fieldValues.add(v);
+	ensureRowCapacity(fieldRowCount + 1);
+	for (int c = 0; c < fieldColumnValues.length; c++) {
+		fieldColumnValues[c][fieldRowCount] = values[c];
+	}
+	fieldRowCount++;
+}
+
+
+/**
+ * grows the column buffers (by half) to hold at least minRowCapacity rows.
+ */
+private void ensureRowCapacity(int minRowCapacity) {
+	if (minRowCapacity <= fieldRowCapacity) {
+		return;
+	}
+	int newRowCapacity = Math.max(minRowCapacity, fieldRowCapacity + (fieldRowCapacity >> 1) + 16);
+	for (int c = 0; c < fieldColumnValues.length; c++) {
+		fieldColumnValues[c] = Arrays.copyOf(fieldColumnValues[c], newRowCapacity);
+	}
+	fieldRowCapacity = newRowCapacity;
 }
 
 
@@ -197,8 +247,9 @@ public void checkFunctionValidity(FunctionColumnDescription fcd) throws Expressi
 		Expression exp1 = MathUtilities.substituteFunctions(exp, getResultSetSymbolTableWithFunction());
 		
 		values = new double[getRowCount()];
+		double[] row = new double[getDataColumnCount()];
 		for (int r = 0; r < getRowCount(); r++) {
-			values[r] = exp1.evaluateVector(getRow(r));
+			values[r] = exp1.evaluateVector(getRow(r, row));
 		}	
 	}
 }
@@ -248,30 +299,51 @@ public synchronized double[] extractColumn(int c) throws ExpressionException {
 			// must rebind expression due to transient nature of expression binding (see ASTIdNode.symbolTableEntry)
 			//
 			exp.bindExpression(getResultSetSymbolTableWithoutFunction());
-			
-			values = new double[getRowCount()];
-			for (int r = 0; r < getRowCount(); r++) {
-				try {
-					values[r] = exp.evaluateVector(getRow(r));
-				}catch (DivideByZeroException e){
-					e.printStackTrace(System.out);
-					values[r] = Double.NaN;
-				}catch (FunctionDomainException e){
-					e.printStackTrace(System.out);
-					values[r] = Double.NaN;
+			// compiled once, for the batch as well as for the row by row fallback
+			CompiledExpression compiledExp = (getRowCount() >= Expression.COMPILE_BATCH_THRESHOLD) ? exp.compile() : null;
+			try {
+				values = exp.evaluateVectorBatch(fieldColumnValues.clone(), getRowCount(), compiledExp);
+			}catch (DivideByZeroException | FunctionDomainException e){
+				//
+				// some rows cannot be evaluated, evaluate row by row and report those as NaN
+				//
+				values = new double[getRowCount()];
+				double[] row = new double[getDataColumnCount()];
+				for (int r = 0; r < getRowCount(); r++) {
+					getRow(r, row);
+					try {
+						values[r] = (compiledExp != null) ? compiledExp.eval(row) : exp.evaluateVector(row);
+					}catch (DivideByZeroException e2){
+						e2.printStackTrace(System.out);
+						values[r] = Double.NaN;
+					}catch (FunctionDomainException e2){
+						e2.printStackTrace(System.out);
+						values[r] = Double.NaN;
+					}
 				}
-			}			
-		}else{				
-			values = new double[getRowCount()];
-			for (int r = 0; r < getRowCount(); r++) {
-				values[r] = getRow(r)[c];
 			}
+		}else{				
+			values = Arrays.copyOf(fieldColumnValues[c], getRowCount());
 		}
 	}
 	return (values);
 }
 
 
+/**
+ * read-only view of a data column, without copying.
+ * The view shares the column buffer and covers the rows present when it was created, get a new view after
+ * the result set is modified.  Use extractColumn() for function columns.
+ * @param c index of a data column.
+ */
+public synchronized DoubleBuffer getColumnView(int c) {
+	if (c < 0 || c >= getDataColumnCount()) {
+		throw new IllegalArgumentException("column "+c+" is not a data column (data column count = "+getDataColumnCount()+")");
+	}
+	return DoubleBuffer.wrap(fieldColumnValues[c], 0, fieldRowCount).slice().asReadOnlyBuffer();
+}
+
+
 /**
  * getVariableNames method comment.
  */
@@ -415,15 +487,42 @@ protected java.beans.PropertyChangeSupport getPropertyChange() {
 /**
  * Insert the method's description here.
  * Creation date: (1/9/2003 3:18:26 PM)
- * @return double[]
+ * @return double[] copy of the data values of the row (use setValue() to change values).
  * @param row int
  */
-public double[] getRow(int row) {
-	return (double []) fieldValues.get(row);
+public synchronized double[] getRow(int row) {
+	return getRow(row, new double[fieldColumnValues.length]);
 }
 
+/**
+ * copies the data values of a row into 'values', for loops over many rows without allocating each row.
+ * @param values at least getDataColumnCount() elements.
+ * @return values
+ */
+public synchronized double[] getRow(int row, double[] values) {
+	if (row < 0 || row >= fieldRowCount) {
+		throw new IndexOutOfBoundsException("Index: "+row+", Size: "+fieldRowCount);
+	}
+	for (int c = 0; c < fieldColumnValues.length; c++) {
+		values[c] = fieldColumnValues[c][row];
+	}
+	return values;
+}
+
+/**
+ * unmodifiable list of rows, each row is assembled (copied) when it is accessed.
+ */
 public List<double[]> getRows(){
-	return Collections.unmodifiableList(this.fieldValues);
+	return new AbstractList<double[]>() {
+		@Override
+		public double[] get(int index) {
+			return getRow(index);
+		}
+		@Override
+		public int size() {
+			return getRowCount();
+		}
+	};
 }
 
 
@@ -431,7 +530,7 @@ public List<double[]> getRows(){
  * getVariableNames method comment.
  */
 public int getRowCount () {
-	return (fieldValues.size());
+	return (fieldRowCount);
 }
 
 
@@ -478,8 +577,12 @@ private boolean isCorner(int t, double a[], double b[], double c[], double scale
 /**
  * getVariableNames method comment.
  */
-public void removeAllRows() {
-	fieldValues.clear();
+public synchronized void removeAllRows() {
+	fieldRowCount = 0;
+	fieldRowCapacity = 0;
+	for (int c = 0; c < fieldColumnValues.length; c++) {
+		fieldColumnValues[c] = new double[0];
+	}
 }
 
 
@@ -527,9 +630,108 @@ public synchronized void removePropertyChangeListener(java.lang.String propertyN
 /**
  * getData method comment.
  */
-public void setValue(int r, int c, double value) {
-	double[] values = fieldValues.get(r);
-	values[c] = value;
+public synchronized void setValue(int r, int c, double value) {
+	if (r < 0 || r >= fieldRowCount) {
+		throw new IndexOutOfBoundsException("Index: "+r+", Size: "+fieldRowCount);
+	}
+	fieldColumnValues[c][r] = value;
+}
+
+
+/**
+ * replaces all rows with the given data columns, which are used without copying.
+ * @param columnValues columnValues[c][r] for each data column, at least rowCount values each.
+ */
+public synchronized void setDataColumnValues(double[][] columnValues, int rowCount) {
+	if (columnValues.length != getDataColumnCount()) {
+		throw new IllegalArgumentException("number of columns ("+columnValues.length+") is not equal to number of data columns ("+getDataColumnCount()+")");
+	}
+	int rowCapacity = Integer.MAX_VALUE;
+	for (double[] values : columnValues) {
+		if (values.length < rowCount) {
+			throw new IllegalArgumentException("column has "+values.length+" values, expected "+rowCount);
+		}
+		rowCapacity = Math.min(rowCapacity, values.length);
+	}
+	fieldColumnValues = columnValues;
+	fieldRowCount = rowCount;
+	fieldRowCapacity = (columnValues.length > 0) ? rowCapacity : rowCount;
+}
+
+
+/**
+ * replaces all rows (used after trimming).
+ */
+private void setRows(List<double[]> rows) {
+	double[][] columnValues = new double[fieldColumnValues.length][rows.size()];
+	int r = 0;
+	for (double[] row : rows) {
+		for (int c = 0; c < columnValues.length; c++) {
+			columnValues[c][r] = row[c];
+		}
+		r++;
+	}
+	fieldColumnValues = columnValues;
+	fieldRowCount = rows.size();
+	fieldRowCapacity = rows.size();
+}
+
+
+/**
+ * column buffers are trimmed to the row count before serialization.
+ */
+private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+	if (fieldRowCapacity > fieldRowCount) {
+		for (int c = 0; c < fieldColumnValues.length; c++) {
+			fieldColumnValues[c] = Arrays.copyOf(fieldColumnValues[c], fieldRowCount);
+		}
+		fieldRowCapacity = fieldRowCount;
+	}
+	ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("fieldDataColumnDescriptions", fieldDataColumnDescriptions);
+	fields.put("fieldFunctionColumnDescriptions", fieldFunctionColumnDescriptions);
+	fields.put("fieldColumnDescriptions", fieldColumnDescriptions);
+	fields.put("fieldColumnValues", fieldColumnValues);
+	fields.put("fieldRowCount", fieldRowCount);
+	out.writeFields();
+}
+
+
+/**
+ * reads the column-major form and the row-major form written before (a vector of rows in "fieldValues").
+ */
+@SuppressWarnings("unchecked")
+private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+	ObjectInputStream.GetField fields = in.readFields();
+	fieldDataColumnDescriptions = (Vector<ColumnDescription>)fields.get("fieldDataColumnDescriptions", null);
+	fieldFunctionColumnDescriptions = (Vector<ColumnDescription>)fields.get("fieldFunctionColumnDescriptions", null);
+	fieldColumnDescriptions = (ColumnDescription[])fields.get("fieldColumnDescriptions", null);
+	if (fieldDataColumnDescriptions == null) {
+		fieldDataColumnDescriptions = new Vector<ColumnDescription>();
+	}
+	if (fieldFunctionColumnDescriptions == null) {
+		fieldFunctionColumnDescriptions = new Vector<ColumnDescription>();
+	}
+	ArrayList<double[]> rows = (ArrayList<double[]>)fields.get("fieldValues", null);
+	if (rows != null) {
+		fieldColumnValues = new double[fieldDataColumnDescriptions.size()][];
+		setRows(rows);
+		return;
+	}
+	double[][] columnValues = (double[][])fields.get("fieldColumnValues", null);
+	int rowCount = fields.get("fieldRowCount", 0);
+	if (columnValues == null || columnValues.length != fieldDataColumnDescriptions.size()) {
+		throw new InvalidObjectException("RowColumnResultSet has "+fieldDataColumnDescriptions.size()+" data columns but "
+				+(columnValues == null ? "no" : columnValues.length)+" value columns");
+	}
+	for (double[] values : columnValues) {
+		if (values == null || values.length < rowCount) {
+			throw new InvalidObjectException("RowColumnResultSet column has fewer than "+rowCount+" values");
+		}
+	}
+	fieldColumnValues = columnValues;
+	fieldRowCount = rowCount;
+	fieldRowCapacity = rowCount;
 }
 
 
@@ -556,11 +758,11 @@ public synchronized void trimRows(int maxRowCount) {
 		min[i] = Double.MAX_VALUE;
 		max[i] = -Double.MAX_VALUE;
 	}
-	for (int i = 0; i < getRowCount()-2; i++){
-		double values[] = fieldValues.get(i);
-		for (int j = 0; j < getDataColumnCount(); j++){
-			min[j] = Math.min(min[j],values[j]);
-			max[j] = Math.max(max[j],values[j]);
+	for (int j = 0; j < getDataColumnCount(); j++){
+		double columnValues[] = fieldColumnValues[j];
+		for (int i = 0; i < getRowCount()-2; i++){
+			min[j] = Math.min(min[j],columnValues[i]);
+			max[j] = Math.max(max[j],columnValues[i]);
 		}	
 	}
 	for (int i = 0; i < getDataColumnCount(); i++){
@@ -578,7 +780,8 @@ public synchronized void trimRows(int maxRowCount) {
 	int t = findColumn("t");
 	final boolean haveT = t >= 0;
 	double TOLERANCE = 0.1;
-	LinkedList<double[]> linkedList = new LinkedList<double[]>(fieldValues);
+	List<double[]> rows = new ArrayList<double[]>(getRows());
+	LinkedList<double[]> linkedList = new LinkedList<double[]>(rows);
 	while (maxRowCount<linkedList.size() && threshold<TOLERANCE){
 		ListIterator<double[]> iter = linkedList.listIterator(0);
 		double a[] = iter.next();
@@ -616,20 +819,20 @@ public synchronized void trimRows(int maxRowCount) {
 	System.out.println("final tolerance="+TOLERANCE+" final threshold="+threshold+", "+linkedList.size()+" remaining (keepAtMost="+maxRowCount+")");
 	ArrayList<double[]> values = new ArrayList<double[]>();
 	if (linkedList.size()>maxRowCount){//just sample list evenly in this case
-		values.add(fieldValues.get(0));//Add first value
+		values.add(rows.get(0));//Add first value
 		if(maxRowCount > 2) {//Add values between first and last
 			for (int i = 1; i < (maxRowCount-1); i++) {
-				values.add(fieldValues.get((int) (i*fieldValues.size()/(maxRowCount-1))));
+				values.add(rows.get((int) (i*rows.size()/(maxRowCount-1))));
 			}
 		}
 		if(maxRowCount > 1) {//Add last value
-			values.add(fieldValues.get(fieldValues.size()-1));
+			values.add(rows.get(rows.size()-1));
 		}
 //		throw new RuntimeException("sample tolerance "+TOLERANCE+" exceeded while removing time points, "+linkedList.size()+" remaining (keepAtMost="+maxRowCount+")");
 	}else {
 		values.addAll(linkedList);
 	}
-	fieldValues = values;
+	setRows(values);
 }
 
 
@@ -0,0 +1,339 @@
+package cbit.vcell.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.vcell.util.document.TimeSeriesJobResults;
+
+import cbit.vcell.math.VariableType;
+import cbit.vcell.simdata.DataSetTimeSeries;
+import cbit.vcell.simdata.PDEDataInfo;
+import cbit.vcell.simdata.SimDataBlock;
+import cbit.vcell.solver.ode.ODESimData;
+
+/**
+ * Binary encoding of data server results, which are mostly large primitive arrays.
+ * <p>
+ * The object is written with Java serialization, except that primitive arrays (of at least {@link #MIN_ARRAY_LENGTH} elements)
+ * are replaced by references and written separately as length-prefixed raw values. {@link SimDataBlock} (which otherwise
+ * serializes itself as a compressed serialized array) is written as its parts. When the arrays are large enough the body is
+ * deflated, with the bytes of the values shuffled into planes first (sign/exponent bytes of neighbouring values are mostly
+ * equal, which deflate compresses much better than interleaved values).
+ * <pre>
+ * int magic, byte flags (FLAG_DEFLATED), then (deflated or not):
+ *    int numArrays, per array { byte kind, int length, values }
+ *    int skeletonLength, byte[] skeleton (Java serialized object graph with array references)
+ * </pre>
+ */
+public class VCBinaryMessageCodec implements VCMessageCodec {
+
+	public static final String NAME = "vcbin1";
+
+	public static final int MIN_ARRAY_LENGTH = 64;
+	private static final int MAGIC = 0x56434231; // "VCB1"
+	private static final byte FLAG_DEFLATED = 1;
+	private static final int MIN_DEFLATE_BYTES = 4096;
+
+	private static final byte KIND_DOUBLE = 'D';
+	private static final byte KIND_FLOAT = 'F';
+	private static final byte KIND_INT = 'I';
+	private static final byte KIND_LONG = 'J';
+
+	private static final Class<?>[] SUPPORTED_TYPES = new Class<?>[] {
+		SimDataBlock.class, DataSetTimeSeries.class, TimeSeriesJobResults.class, ODESimData.class,
+		double[].class, double[][].class
+	};
+
+	/**
+	 * stands for a primitive array in the serialized skeleton.
+	 */
+	private static class ArrayRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final int index;
+		ArrayRef(int index){
+			this.index = index;
+		}
+	}
+
+	/**
+	 * stands for a SimDataBlock in the serialized skeleton, its data is extracted like any other array.
+	 */
+	private static class SimDataBlockParts implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final PDEDataInfo info;
+		final double[] data;
+		final VariableType varType;
+		SimDataBlockParts(SimDataBlock simDataBlock){
+			this.info = simDataBlock.getPDEDataInfo();
+			this.data = simDataBlock.getData();
+			this.varType = simDataBlock.getVariableType();
+		}
+	}
+
+	private static class ArrayExtractingOutputStream extends ObjectOutputStream {
+		final List<Object> arrays = new ArrayList<Object>();
+		long arrayBytes = 0;
+
+		ArrayExtractingOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj instanceof SimDataBlock){
+				return new SimDataBlockParts((SimDataBlock)obj);
+			}
+			int length;
+			int elementSize;
+			if (obj instanceof double[]){
+				length = ((double[])obj).length;
+				elementSize = 8;
+			}else if (obj instanceof long[]){
+				length = ((long[])obj).length;
+				elementSize = 8;
+			}else if (obj instanceof float[]){
+				length = ((float[])obj).length;
+				elementSize = 4;
+			}else if (obj instanceof int[]){
+				length = ((int[])obj).length;
+				elementSize = 4;
+			}else{
+				return obj;
+			}
+			if (length < MIN_ARRAY_LENGTH){
+				return obj;
+			}
+			arrays.add(obj);
+			arrayBytes += (long)length * elementSize;
+			return new ArrayRef(arrays.size() - 1);
+		}
+	}
+
+	private static class ArrayResolvingInputStream extends ObjectInputStream {
+		final Object[] arrays;
+
+		ArrayResolvingInputStream(InputStream in, Object[] arrays) throws IOException {
+			super(in);
+			this.arrays = arrays;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof ArrayRef){
+				return arrays[((ArrayRef)obj).index];
+			}
+			if (obj instanceof SimDataBlockParts){
+				SimDataBlockParts parts = (SimDataBlockParts)obj;
+				return new SimDataBlock(parts.info, parts.data, parts.varType);
+			}
+			return obj;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean supports(Object object) {
+		for (Class<?> type : SUPPORTED_TYPES){
+			if (type.isInstance(object)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public byte[] encode(Serializable object) throws IOException {
+		ByteArrayOutputStream skeletonBytes = new ByteArrayOutputStream();
+		ArrayExtractingOutputStream oos = new ArrayExtractingOutputStream(skeletonBytes);
+		oos.writeObject(object);
+		oos.close();
+
+		boolean bDeflate = oos.arrayBytes + skeletonBytes.size() >= MIN_DEFLATE_BYTES;
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream((int)Math.min(Integer.MAX_VALUE - 16, oos.arrayBytes + skeletonBytes.size() + 64));
+		DataOutputStream header = new DataOutputStream(encoded);
+		header.writeInt(MAGIC);
+		header.writeByte(bDeflate ? FLAG_DEFLATED : 0);
+		header.flush();
+		Deflater deflater = null;
+		OutputStream bodyStream = encoded;
+		if (bDeflate){
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			bodyStream = new DeflaterOutputStream(encoded, deflater, 65536);
+		}
+		try {
+			DataOutputStream body = new DataOutputStream(bodyStream);
+			body.writeInt(oos.arrays.size());
+			for (Object array : oos.arrays){
+				writeArray(body, array, bDeflate);
+			}
+			body.writeInt(skeletonBytes.size());
+			skeletonBytes.writeTo(body);
+			body.close();
+		} finally {
+			if (deflater != null){
+				deflater.end();
+			}
+		}
+		return encoded.toByteArray();
+	}
+
+	@Override
+	public Serializable decode(byte[] encodedBytes) throws IOException, ClassNotFoundException {
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(encodedBytes));
+		if (header.readInt() != MAGIC){
+			throw new IOException("not a "+NAME+" encoded message");
+		}
+		boolean bDeflated = (header.readByte() & FLAG_DEFLATED) != 0;
+		InputStream bodyStream = new ByteArrayInputStream(encodedBytes, 5, encodedBytes.length - 5);
+		Inflater inflater = null;
+		if (bDeflated){
+			inflater = new Inflater();
+			bodyStream = new InflaterInputStream(bodyStream, inflater, 65536);
+		}
+		try (DataInputStream body = new DataInputStream(bodyStream)){
+			Object[] arrays = new Object[body.readInt()];
+			for (int i = 0; i < arrays.length; i++){
+				arrays[i] = readArray(body, bDeflated);
+			}
+			byte[] skeleton = new byte[body.readInt()];
+			body.readFully(skeleton);
+			try (ArrayResolvingInputStream ois = new ArrayResolvingInputStream(new ByteArrayInputStream(skeleton), arrays)){
+				return (Serializable)ois.readObject();
+			}
+		} finally {
+			if (inflater != null){
+				inflater.end();
+			}
+		}
+	}
+
+	private static void writeArray(DataOutputStream out, Object array, boolean bShuffle) throws IOException {
+		long[] bits;
+		int elementSize;
+		byte kind;
+		if (array instanceof double[]){
+			double[] values = (double[])array;
+			kind = KIND_DOUBLE;
+			elementSize = 8;
+			bits = new long[values.length];
+			for (int i = 0; i < values.length; i++){
+				bits[i] = Double.doubleToRawLongBits(values[i]);
+			}
+		}else if (array instanceof long[]){
+			kind = KIND_LONG;
+			elementSize = 8;
+			bits = (long[])array;
+		}else if (array instanceof float[]){
+			float[] values = (float[])array;
+			kind = KIND_FLOAT;
+			elementSize = 4;
+			bits = new long[values.length];
+			for (int i = 0; i < values.length; i++){
+				bits[i] = Float.floatToRawIntBits(values[i]) & 0xFFFFFFFFL;
+			}
+		}else{
+			int[] values = (int[])array;
+			kind = KIND_INT;
+			elementSize = 4;
+			bits = new long[values.length];
+			for (int i = 0; i < values.length; i++){
+				bits[i] = values[i] & 0xFFFFFFFFL;
+			}
+		}
+		out.writeByte(kind);
+		out.writeInt(bits.length);
+		byte[] bytes = new byte[bits.length * elementSize];
+		if (bShuffle){
+			// byte plane p holds byte p (most significant first) of every value
+			for (int p = 0; p < elementSize; p++){
+				int shift = 8 * (elementSize - 1 - p);
+				int offset = p * bits.length;
+				for (int i = 0; i < bits.length; i++){
+					bytes[offset + i] = (byte)(bits[i] >>> shift);
+				}
+			}
+		}else{
+			int b = 0;
+			for (int i = 0; i < bits.length; i++){
+				for (int shift = 8 * (elementSize - 1); shift >= 0; shift -= 8){
+					bytes[b++] = (byte)(bits[i] >>> shift);
+				}
+			}
+		}
+		out.write(bytes);
+	}
+
+	private static Object readArray(DataInputStream in, boolean bShuffled) throws IOException {
+		byte kind = in.readByte();
+		int length = in.readInt();
+		int elementSize = (kind == KIND_DOUBLE || kind == KIND_LONG) ? 8 : 4;
+		byte[] bytes = new byte[length * elementSize];
+		in.readFully(bytes);
+		long[] bits = new long[length];
+		if (bShuffled){
+			for (int p = 0; p < elementSize; p++){
+				int offset = p * length;
+				for (int i = 0; i < length; i++){
+					bits[i] = (bits[i] << 8) | (bytes[offset + i] & 0xFF);
+				}
+			}
+		}else{
+			int b = 0;
+			for (int i = 0; i < length; i++){
+				long value = 0;
+				for (int j = 0; j < elementSize; j++){
+					value = (value << 8) | (bytes[b++] & 0xFF);
+				}
+				bits[i] = value;
+			}
+		}
+		switch (kind){
+			case KIND_DOUBLE: {
+				double[] values = new double[length];
+				for (int i = 0; i < length; i++){
+					values[i] = Double.longBitsToDouble(bits[i]);
+				}
+				return values;
+			}
+			case KIND_LONG: {
+				return bits;
+			}
+			case KIND_FLOAT: {
+				float[] values = new float[length];
+				for (int i = 0; i < length; i++){
+					values[i] = Float.intBitsToFloat((int)bits[i]);
+				}
+				return values;
+			}
+			case KIND_INT: {
+				int[] values = new int[length];
+				for (int i = 0; i < length; i++){
+					values[i] = (int)bits[i];
+				}
+				return values;
+			}
+			default:
+				throw new IOException("unknown array kind '"+(char)kind+"' in "+NAME+" encoded message");
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package cbit.vcell.message;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import cbit.vcell.resource.PropertyLoader;
+
+/**
+ * Alternative encoding of object message payloads (RPC replies).
+ * <p>
+ * Codecs are negotiated per message: the RPC client lists the codecs it can decode in the
+ * {@link VCMessagingConstants#ACCEPT_CODECS_PROPERTY} of the request, the server encodes the reply with the first of them
+ * which supports the type of the return value and names it in {@link VCMessagingConstants#CODEC_PROPERTY}.
+ * Anything else is sent as a Java serialized object message, as before.
+ */
+public interface VCMessageCodec {
+
+	public static final List<VCMessageCodec> CODECS = Collections.unmodifiableList(Arrays.<VCMessageCodec>asList(
+			new VCBinaryMessageCodec()));
+
+	public String getName();
+
+	public boolean supports(Object object);
+
+	public byte[] encode(Serializable object) throws IOException;
+
+	public Serializable decode(byte[] encodedBytes) throws IOException, ClassNotFoundException;
+
+	public static VCMessageCodec getCodec(String name){
+		for (VCMessageCodec codec : CODECS){
+			if (codec.getName().equals(name)){
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param acceptedCodecNames comma separated codec names in order of preference (may be null).
+	 * @return the codec to encode 'object' with, or null to use Java serialization.
+	 */
+	public static VCMessageCodec selectCodec(String acceptedCodecNames, Object object){
+		if (acceptedCodecNames == null || object == null){
+			return null;
+		}
+		for (String name : acceptedCodecNames.split(",")){
+			VCMessageCodec codec = getCodec(name.trim());
+			if (codec != null && codec.supports(object)){
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * codecs this process accepts for RPC replies (see {@link PropertyLoader#jmsRpcCodecs}, "none" disables them).
+	 */
+	public static String getAcceptedCodecNames(){
+		String names = PropertyLoader.getProperty(PropertyLoader.jmsRpcCodecs, VCBinaryMessageCodec.NAME);
+		if (names == null || names.trim().isEmpty() || names.trim().equalsIgnoreCase("none")){
+			return null;
+		}
+		return names.trim();
+	}
+}
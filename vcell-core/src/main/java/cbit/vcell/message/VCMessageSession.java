@@ -1,12 +1,27 @@
 package cbit.vcell.message;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 import org.vcell.util.document.UserLoginInfo;
 
 
 public interface VCMessageSession extends AutoCloseable {
 	public Object sendRpcMessage(VCellQueue queue, VCRpcRequest vcRpcRequest, boolean returnRequired, long timeoutMS, String[] specialProperties, Object[] specialValues, UserLoginInfo userLoginInfo) throws VCMessagingException, VCMessagingInvocationTargetException;	
+
+	/**
+	 * sends the request without waiting for the reply; the future completes exceptionally with the exceptions of {@link #sendRpcMessage}.
+	 * Sessions which cannot multiplex requests complete it before returning.
+	 */
+	public default CompletableFuture<Object> sendRpcMessageAsync(VCellQueue queue, VCRpcRequest vcRpcRequest, boolean returnRequired, long timeoutMS, String[] specialProperties, Object[] specialValues, UserLoginInfo userLoginInfo) {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		try {
+			future.complete(sendRpcMessage(queue, vcRpcRequest, returnRequired, timeoutMS, specialProperties, specialValues, userLoginInfo));
+		} catch (VCMessagingException | VCMessagingInvocationTargetException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
 	public void sendQueueMessage(VCellQueue queue, VCMessage message, Boolean persistent, Long clientTimeoutMS) throws VCMessagingException;
 	
 	public void sendTopicMessage(VCellTopic topic, VCMessage message) throws VCMessagingException;
@@ -20,6 +35,13 @@ public interface VCMessageSession extends AutoCloseable {
 	public abstract VCMessage createMessage();
 
 	public abstract VCMessage createObjectMessage(Serializable object);
+
+	/**
+	 * reply to an RPC request, may use one of the codecs accepted by the requester (see {@link VCMessageCodec}).
+	 */
+	public default VCMessage createRpcReplyMessage(Serializable returnValue, VCMessage rpcRequestMessage) {
+		return createObjectMessage(returnValue);
+	}
 	
 	public abstract VCMessagingDelegate getDelegate();
 
@@ -12,4 +12,7 @@ public interface VCMessagingConstants {
 
 	public static final String SERVICE_TYPE_PROPERTY	= "ServiceType";
 	public static final String MESSAGE_TYPE_RPC_SERVICE_VALUE			= "RPCService";
+
+	public static final String ACCEPT_CODECS_PROPERTY	= "AcceptCodecs";	// codecs the RPC client decodes (see VCMessageCodec)
+	public static final String CODEC_PROPERTY			= "Codec";			// codec of a BytesMessage (or blob) payload
 }
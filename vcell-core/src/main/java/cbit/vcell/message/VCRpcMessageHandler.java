@@ -55,7 +55,7 @@ public class VCRpcMessageHandler implements VCQueueConsumer.QueueListener {
 		//
 		VCMessage vcReplyMessage = null;
 		synchronized (session){
-			vcReplyMessage = session.createObjectMessage(returnValue);
+			vcReplyMessage = session.createRpcReplyMessage(returnValue, rpcVCMessage);
 		}
 
 		vcReplyMessage.setStringProperty(VCMessagingConstants.METHOD_NAME_PROPERTY, vcRpcRequest.getMethodName());
@@ -171,7 +171,7 @@ public SimpleReferenceData(RowColumnResultSet rowColumnResultSet, double[] argWe
 	this.weights = new VariableWeights(argWeights);
 	//data
 	for (int i = 0; i < rowColumnResultSet.getRowCount(); i++){
-		this.rowData.add(rowColumnResultSet.getRow(i).clone());
+		this.rowData.add(rowColumnResultSet.getRow(i));
 	}
 }
 
@@ -102,6 +102,9 @@ public class PropertyLoader {
 	public static final String vcellapiKeystoreFile			= record("vcellapi.keystore.file",ValueType.GEN);
 	public static final String vcellapiKeystorePswd			= record("vcellapi.keystore.pswd",ValueType.GEN);
 	public static final String vcellapiKeystorePswdFile		= record("vcellapi.keystore.pswdfile",ValueType.GEN);
+	public static final String vcellapiDerivedCacheMaxBytes	= record("vcellapi.derivedCache.maxBytes",ValueType.GEN);
+	public static final String vcellapiDerivedCacheDir		= record("vcellapi.derivedCache.dir",ValueType.GEN);
+	public static final String vcellapiDerivedCacheMaxDiskBytes	= record("vcellapi.derivedCache.maxDiskBytes",ValueType.GEN);
 
 	//Stoch properties
 //	public static final String stochExecutableProperty		= record("vcell.stoch.executable",ValueType.EXE);
@@ -113,6 +116,11 @@ public class PropertyLoader {
 
 	public static final String bioformatsJarFileName		= record("vcell.bioformatsJarFileName",ValueType.GEN);
 	public static final String bioformatsJarDownloadURL		= record("vcell.bioformatsJarDownloadURL",ValueType.URL);
+
+	//BioNetGen properties
+	public static final String bngNetworkCache				= record("vcell.bionetgen.networkCache",ValueType.BOOL);
+	public static final String bngNetworkCacheDir			= record("vcell.bionetgen.networkCache.dir",ValueType.GEN);
+	public static final String bngNetworkCacheMaxBytes		= record("vcell.bionetgen.networkCache.maxBytes",ValueType.GEN);
 	
 	// VCell special URLs
 	public static final String COPASI_WEB_URL				= record("vcell.COPASI_WEB_URL",ValueType.URL);
@@ -150,6 +158,18 @@ public class PropertyLoader {
 	public static final String databaseThreadsProperty		= record("vcell.databaseThreads",ValueType.GEN);
 	public static final String exportdataThreadsProperty	= record("vcell.exportdataThreads",ValueType.GEN);
 	public static final String simdataThreadsProperty		= record("vcell.simdataThreads",ValueType.GEN);
+	public static final String simdataTimeSeriesThreadsProperty	= record("vcell.simdataTimeSeriesThreads",ValueType.INT);
+	public static final String simdataFunctionThreadsProperty	= record("vcell.simdataFunctionThreads",ValueType.INT);
+	public static final String geometrySamplingThreadsProperty	= record("vcell.geometrySamplingThreads",ValueType.INT);
+	public static final String stochMultiTrialThreadsProperty	= record("vcell.stochMultiTrialThreads",ValueType.INT);
+	public static final String odeEnsembleThreadsProperty	= record("vcell.odeEnsembleThreads",ValueType.INT);
+	public static final String odeEnsembleProperty			= record("vcell.odeEnsemble",ValueType.BOOL);
+	public static final String stochMultiTrialQuantilesProperty	= record("vcell.stochMultiTrialQuantiles",ValueType.GEN);
+	public static final String stochGibsonInProcessProperty	= record("vcell.stochGibsonInProcess",ValueType.BOOL);
+	public static final String odeStiffInProcessProperty	= record("vcell.odeStiffInProcess",ValueType.BOOL);
+	public static final String odeCompactFormatV2Property	= record("vcell.odeCompactFormatV2",ValueType.BOOL);
+	public static final String vtkExportThreadsProperty		= record("vcell.vtkExportThreads",ValueType.INT);
+	public static final String vtkServicePythonProperty		= record("vcell.vtkServicePython",ValueType.BOOL);
 	public static final String htcworkerThreadsProperty		= record("vcell.htcworkerThreads",ValueType.GEN);
 
 	public static final String databaseCacheSizeProperty	= record("vcell.databaseCacheSize",ValueType.GEN);
@@ -191,11 +211,15 @@ public class PropertyLoader {
 	public static final String jmsBlobMessageMinSize	= record("vcell.jms.blobMessageMinSize",ValueType.GEN);
 	public static final String jmsBlobMessageTempDir	= record("vcell.jms.blobMessageTempDir",ValueType.GEN);
 	public static final String jmsBlobMessageUseMongo	= record("vcell.jms.blobMessageUseMongo",ValueType.GEN);
+	public static final String jmsRpcMaxProducerSessions	= record("vcell.jms.rpc.maxProducerSessions",ValueType.GEN);
+	public static final String jmsRpcCodecs				= record("vcell.jms.rpc.codecs",ValueType.GEN);
 	public static final String vcellClientTimeoutMS 	= record("vcell.client.timeoutMS",ValueType.GEN);
 
 	public static final String maxOdeJobsPerUser	= record("vcell.server.maxOdeJobsPerUser",ValueType.GEN);
 	public static final String maxPdeJobsPerUser	= record("vcell.server.maxPdeJobsPerUser",ValueType.GEN);
 	public static final String maxJobsPerScan		= record("vcell.server.maxJobsPerScan",ValueType.GEN);
+	public static final String dispatcherIncremental	= record("vcell.server.dispatcher.incremental",ValueType.BOOL);
+	public static final String dispatcherReconcileSeconds	= record("vcell.server.dispatcher.reconcileSeconds",ValueType.INT);
 	//public static final String maxJobsPerSite		= record("vcell.server.maxJobsPerSite",ValueType.GEN);
 //	public static final String limitJobMemoryMB		= record("vcell.limit.jobMemoryMB",ValueType.GEN);
 
@@ -38,6 +38,7 @@ import cbit.vcell.bionetgen.BNGOutputSpec;
 import cbit.vcell.bionetgen.BNGReaction;
 import cbit.vcell.bionetgen.BNGSpecies;
 import cbit.vcell.bionetgen.BNGSpeciesComponent;
+import cbit.vcell.bionetgen.SpeciesCanonicalLabeling;
 import cbit.vcell.mapping.BioNetGenUpdaterCallback;
 import cbit.vcell.mapping.NetworkTransformer;
 import cbit.vcell.mapping.SimulationContext;
@@ -84,8 +85,7 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 	private SimulationContext simContext;
 	private CompartmentMode compartmentMode = CompartmentMode.asSite;
 	
-	private Map <String, String> isomorphismSignaturesMap = new HashMap<>();	// when an isomorphism is detected, we store here the string expressions of the 2 isomorphic species
-	private Set<String> shortSignaturesSet = new HashSet<>();					// signature of BNGSpecies (molecules and components with states, bonds ignored)
+	private Map <String, String> canonicalSignaturesMap = new HashMap<>();	// canonical signature of each species expression we've seen (isomorphic species share it)
 	
 	private Map <String, Set<String>> anchorsMap;
 	private List <RbmObservable> polymerEqualObservables = new ArrayList<>();	// syntax  A()=xx
@@ -139,12 +139,6 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 		int speciesCount = org.apache.commons.lang3.StringUtils.countMatches(oldSeedSpeciesString, "\n");	// initial number of seed species 
 		displayIterationMessage(0, speciesCount);
 		
-		List<BNGSpecies> initialSpeciesList = BNGOutputFileParser.createBngSpeciesOutputSpec(oldSeedSpeciesString);
-		for(BNGSpecies s : initialSpeciesList) {	// populate the isomorphism signature map with the initial seed species
-			isomorphismSignaturesMap.put(s.getName(), s.getName());
-			shortSignaturesSet.add(BNGSpecies.getShortSignature(s, sigDetailLevel));
-		}
-		
 		NetworkConstraints nc = simContext.getNetworkConstraints();
 		int i;		// iterations counter
 		for (i = 0; i<nc.getMaxIteration(); i++) {
@@ -408,9 +402,12 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 		
 		// parse the .net file with BNGOutputFileParser
 		List<BNGSpecies> oldSpeciesList = BNGOutputFileParser.createBngSpeciesOutputSpec(oldSpeciesString);	// seed species at the beginning of the current iteration
-		// same as above, used internally, as we add new species from the current iteration we put them here; 
-		// used to speed up the verifications and reduce the isomorphism calls together with the isomorphismSignaturesMap
-		Map<String, BNGSpecies> seedSpeciesMap = BNGOutputFileParser.createBngSpeciesSignatureMap(oldSpeciesString);
+		// same as above, keyed by canonical signature, as we add new species from the current iteration we put them here; 
+		// isomorphic species have the same canonical signature so we find existing species without any isomorphism check
+		Map<String, BNGSpecies> seedSpeciesMap = new HashMap<>();
+		for(BNGSpecies s : oldSpeciesList) {
+			seedSpeciesMap.put(getCanonicalSignature(s), s);
+		}
 		
 		BNGOutputSpec workSpec = BNGOutputFileParser.createBngOutputSpec(newNetFile);		// .net file content generated during current iteration
 		List<BNGSpecies> newSpeciesList = new ArrayList<>();		// we build here the list of valid (perhaps even corrected) NEW species
@@ -616,34 +613,9 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 				BNGSpecies existingMatch = null;		// we set this to an existing species if the candidate matches it (directly or through isomorphism) 
 				long st = System.currentTimeMillis();
 				
-				String sig = BNGSpecies.getShortSignature(candidate, sigDetailLevel);
-				if(!shortSignaturesSet.contains(sig)) {
-					// our candidate has a new short signature, this means it is certainly not among the existing species
-					// no point in doing any other search to find it
-				} else {
-					// short signature match, now we check if the full species exists or is isomorphic with an existing one
-					String isomorphSpeciesName = isomorphismSignaturesMap.get(candidate.getName());
-					if(isomorphSpeciesName != null) {	// name of an existing species that is isomorphic with our candidate
-						// we recover the existing species and will use it instead of the candidate
-						existingMatch = seedSpeciesMap.get(isomorphSpeciesName);
-						if(existingMatch == null) {
-							throw new RuntimeException("Unable to find an isomorph BNGSpecies named " + isomorphSpeciesName + " that should have existed.");
-						}
-					} else {		// not present among the existing species or their known isomorphisms
-									// try to find an isomorphism the hard way
-						BNGSpecies existingMatchInNew = BNGOutputSpec.findMatch(candidate, newSpeciesList, sigDetailLevel);
-						if(existingMatchInNew != null) {
-							isomorphismSignaturesMap.put(candidate.getName(), existingMatchInNew.getName());
-							existingMatch = existingMatchInNew;
-						} else {
-							BNGSpecies existingMatchInOld = BNGOutputSpec.findMatch(candidate, oldSpeciesList, sigDetailLevel);
-							if(existingMatchInOld != null) {
-								isomorphismSignaturesMap.put(candidate.getName(), existingMatchInOld.getName());
-								existingMatch = existingMatchInOld;
-							}
-						}
-					}
-				}
+				// the existing species (old or new) isomorphic with our candidate, if any
+				String canonicalSignature = getCanonicalSignature(candidate);
+				existingMatch = seedSpeciesMap.get(canonicalSignature);
 				long et = System.currentTimeMillis();
 				eltIsomorph += (et - st);
 
@@ -657,10 +629,7 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 						r.getProducts()[reactionProductPosition] = candidate;		// correct the reaction
 					}
 					manageIndexesMap(indexesMap, s, candidate);
-					seedSpeciesMap.put(candidate.getName(), candidate);
-					isomorphismSignaturesMap.put(candidate.getName(), candidate.getName());	// put self in the list of signature map too
-					String signature = BNGSpecies.getShortSignature(candidate, sigDetailLevel);
-					shortSignaturesSet.add(sig);
+					seedSpeciesMap.put(canonicalSignature, candidate);
 				} else {
 					message += "Candidate " + candidate.getName() + " already exists, not added.";
 					summaryExisted++;
@@ -708,6 +677,15 @@ public class BNGExecutorServiceMultipass implements BNGExecutorService, BioNetGe
 		return sr;
 	}
 	
+	private String getCanonicalSignature(BNGSpecies s) {
+		String signature = canonicalSignaturesMap.get(s.getName());
+		if(signature == null) {
+			signature = SpeciesCanonicalLabeling.getCanonicalSignature(s);
+			canonicalSignaturesMap.put(s.getName(), signature);
+		}
+		return signature;
+	}
+	
 	private static boolean isIdentityReaction(BNGReaction r) {
 		//System.out.println("check if we ended up with an identity reaction because of repairing");
 		if(r.getReactants().length != r.getProducts().length) {
@@ -0,0 +1,100 @@
+package cbit.vcell.server.bionetgen;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.logging.log4j.LogManager;
+
+import cbit.vcell.bionetgen.BNGOutputSpec;
+import cbit.vcell.mapping.MD5;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.resource.ResourceUtil;
+
+/**
+ * Content addressed cache of generated reaction networks.
+ * <p>
+ * Network generation is deterministic for a given BioNetGen input, BioNetGen version and executor, so the parsed network
+ * ({@link BNGOutputSpec}) is stored under a hash of all three ({@link #getKey(BNGExecutorService, String)}) and reused by any
+ * process sharing the store instead of running BioNetGen again.
+ * <p>
+ * The cache is passed to {@link cbit.vcell.mapping.NetworkTransformer}; by default ({@link #createDefault()}) there is none
+ * unless {@link PropertyLoader#bngNetworkCache} is set, then it is a {@link DiskBNGNetworkCache} in
+ * {@link PropertyLoader#bngNetworkCacheDir} (default ~/.vcell/bngNetworkCache) bounded by {@link PropertyLoader#bngNetworkCacheMaxBytes}.
+ */
+public interface BNGNetworkCache {
+
+	public static final String DEFAULT_CACHE_DIR_NAME = "bngNetworkCache";
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+	/**
+	 * generated network with the flags reported while generating it.
+	 */
+	public static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		public final BNGOutputSpec outputSpec;
+		public final boolean bInsufficientIterations;
+		public final boolean bInsufficientMaxMolecules;
+
+		public Entry(BNGOutputSpec outputSpec, boolean bInsufficientIterations, boolean bInsufficientMaxMolecules) {
+			this.outputSpec = outputSpec;
+			this.bInsufficientIterations = bInsufficientIterations;
+			this.bInsufficientMaxMolecules = bInsufficientMaxMolecules;
+		}
+	}
+
+	/**
+	 * @return the cached network or null (failures to read are treated as a miss).
+	 */
+	public Entry get(String key);
+
+	public void put(String key, Entry entry);
+
+
+	/**
+	 * key of the network generated from 'bngInput' by 'bngExecutor' with the installed BioNetGen.
+	 */
+	public static String getKey(BNGExecutorService bngExecutor, String bngInput) {
+		return getKey(getBNGVersion(), bngExecutor.getClass().getName(), bngInput);
+	}
+
+	public static String getKey(String bngVersion, String bngExecutorName, String bngInput) {
+		return MD5.md5("BioNetGen-" + bngVersion + "/" + bngExecutorName + "\n" + bngInput);
+	}
+
+	/**
+	 * @return the cache configured by the properties, or null if it is not enabled (or cannot be created).
+	 */
+	public static BNGNetworkCache createDefault() {
+		if (!PropertyLoader.getBooleanProperty(PropertyLoader.bngNetworkCache, false)){
+			return null;
+		}
+		String cacheDirName = PropertyLoader.getProperty(PropertyLoader.bngNetworkCacheDir, null);
+		try {
+			File cacheDir = (cacheDirName != null && cacheDirName.trim().length() > 0)
+					? new File(cacheDirName.trim())
+					: new File(ResourceUtil.getVcellHome(), DEFAULT_CACHE_DIR_NAME);
+			long maxBytes = PropertyLoader.getLongProperty(PropertyLoader.bngNetworkCacheMaxBytes, DEFAULT_MAX_BYTES);
+			return new DiskBNGNetworkCache(cacheDir, maxBytes);
+		}catch (Exception e){
+			LogManager.getLogger(BNGNetworkCache.class).error("BioNetGen network cache disabled: "+e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return version of the installed BioNetGen (bionetgen/VERSION), or "unknown".
+	 */
+	public static String getBNGVersion() {
+		try {
+			File versionFile = new File(new File(ResourceUtil.getVCellInstall(), "bionetgen"), "VERSION");
+			if (versionFile.exists()){
+				return new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.UTF_8).trim();
+			}
+		}catch (Exception e){
+			LogManager.getLogger(BNGNetworkCache.class).warn("cannot read BioNetGen version: "+e.getMessage());
+		}
+		return "unknown";
+	}
+}
@@ -0,0 +1,120 @@
+package cbit.vcell.server.bionetgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.vcell.util.BeanUtils;
+
+/**
+ * {@link BNGNetworkCache} storing one compressed serialized entry per file, which can be shared by several processes.
+ * <p>
+ * Files are written under a temporary name and renamed into place, so readers never see partial entries. A hit touches
+ * the file, and when the directory grows beyond the size limit the least recently used files are deleted.
+ */
+public class DiskBNGNetworkCache implements BNGNetworkCache {
+
+	private final static Logger lg = LogManager.getLogger(DiskBNGNetworkCache.class);
+
+	private static final String FILE_SUFFIX = ".bngnet";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long STALE_TEMP_FILE_MS = 60 * 60 * 1000L;
+
+	private final File cacheDir;
+	private final long maxBytes;
+
+	public DiskBNGNetworkCache(File cacheDir, long maxBytes) throws IOException {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()){
+			throw new IOException("cannot create BioNetGen network cache directory "+cacheDir.getAbsolutePath());
+		}
+		this.cacheDir = cacheDir;
+		this.maxBytes = maxBytes;
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	private File getFile(String key) {
+		if (!key.matches("[0-9a-zA-Z_-]+")){
+			throw new IllegalArgumentException("invalid network cache key '"+key+"'");
+		}
+		return new File(cacheDir, key + FILE_SUFFIX);
+	}
+
+	@Override
+	public Entry get(String key) {
+		File file = getFile(key);
+		if (!file.exists()){
+			return null;
+		}
+		try {
+			Entry entry = (Entry)BeanUtils.fromCompressedSerialized(Files.readAllBytes(file.toPath()));
+			file.setLastModified(System.currentTimeMillis());
+			return entry;
+		}catch (Exception e){
+			// removed by another process or written by an incompatible version
+			lg.warn("failed to read cached network "+file.getAbsolutePath()+": "+e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void put(String key, Entry entry) {
+		File file = getFile(key);
+		File tempFile = new File(cacheDir, key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			Files.write(tempFile.toPath(), BeanUtils.toCompressedSerialized(entry));
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch (IOException e){
+			lg.error("failed to store network in cache "+file.getAbsolutePath()+": "+e.getMessage(), e);
+			tempFile.delete();
+			return;
+		}
+		evict();
+	}
+
+	/**
+	 * deletes least recently used entries until the store fits in maxBytes.
+	 */
+	synchronized void evict() {
+		File[] tempFiles = cacheDir.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+		if (tempFiles != null){
+			// left by a process which died while writing
+			for (File tempFile : tempFiles){
+				if (tempFile.lastModified() < System.currentTimeMillis() - STALE_TEMP_FILE_MS){
+					tempFile.delete();
+				}
+			}
+		}
+		File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+		if (files == null){
+			return;
+		}
+		long totalBytes = 0;
+		final long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++){
+			totalBytes += files[i].length();
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		if (totalBytes <= maxBytes){
+			return;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+		for (int i = 0; i < order.length && totalBytes > maxBytes; i++){
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete()){
+				totalBytes -= length;
+			}
+		}
+	}
+}
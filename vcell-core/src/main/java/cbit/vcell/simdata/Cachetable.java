@@ -10,60 +10,190 @@
 
 package cbit.vcell.simdata;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 import org.vcell.util.CacheException;
 import org.vcell.util.CacheStatus;
 import org.vcell.util.Ping;
 import org.vcell.util.Pingable;
-import org.vcell.util.TimeWrapper;
 import org.vcell.util.document.VCDataIdentifier;
 
-import cbit.vcell.resource.PropertyLoader;
 /**
- * This type was created in VisualAge.
+ * Size bounded cache of simulation data (VCData, ODE/PDE/particle data blocks), weighted by their size in bytes.
+ * <p>
+ * Lookups go to a concurrent map and don't block each other.  Eviction follows W-TinyLFU: new entries enter a small
+ * LRU window, entries leaving the window compete with the least recently used entry of the main space and the one
+ * accessed less often (according to a count-min frequency sketch) is evicted.  The main space is a segmented LRU
+ * (probation and protected).  Recency updates on reads are skipped when another thread holds the eviction lock.
+ * <p>
+ * Entries not accessed for longer than the expire time are dropped on access and by the reaper thread.  Adding entries
+ * also drops them, scanning the cache at most once per quarter of the expire time.
  */
 public class Cachetable implements Pingable {
 	public static final long minute = 60000;
 
-	private double costRatio_MegaBytes_per_Minute = 1.0;
-	private double costRatio_Bytes_per_MilliSecond = costRatio_MegaBytes_per_Minute * 1e6 / minute;
+	// fraction of the capacity used for the admission window, and of the main space for protected entries.
+	private final static double WINDOW_FRACTION = 0.01;
+	private final static double PROTECTED_FRACTION = 0.8;
 
-	private double costPerMilliSecond = 1.0;
-	private double costPerByte = costRatio_Bytes_per_MilliSecond*costPerMilliSecond;
+	private final static int WINDOW = 0;
+	private final static int PROBATION = 1;
+	private final static int PROTECTED = 2;
+	private final static int REMOVED = -1;
+	// expired entries are searched for by put() at most once per this fraction of the expire time.
+	private final static double EXPIRE_SCAN_FRACTION = 0.25;
 
-	private long expireTime;
+	private static class Node {
+		private final Object key;
+		private final Object value;
+		private final long weight;
+		private volatile long lastAccessTime;
+		// guarded by evictionLock
+		private int queue;
+		private Node prev = this;
+		private Node next = this;
+
+		private Node(Object key, Object value, long weight, long lastAccessTime){
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.lastAccessTime = lastAccessTime;
+		}
+	}
+
+	/**
+	 * count-min sketch of 4 bit counters (16 per long) estimating how often a key was requested,
+	 * all counters are halved periodically so that the estimate follows recent history.
+	 */
+	private static class FrequencySketch {
+		private final static long[] SEEDS = new long[] { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		private final static long RESET_MASK = 0x7777777777777777L;
+		private final AtomicLongArray table;
+		private final int tableMask;
+		private final int sampleSize;
+		private final AtomicInteger size = new AtomicInteger();
+
+		private FrequencySketch(int expectedEntries){
+			int length = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+			table = new AtomicLongArray(length);
+			tableMask = length - 1;
+			sampleSize = 10 * length;
+		}
+
+		private static int indexOf(int hash, int i){
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += (h >>> 32);
+			return (int)h;
+		}
+
+		private int frequency(Object key){
+			int hash = spread(key.hashCode());
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < 4; i++){
+				int index = indexOf(hash, i);
+				int shift = (index >>> 28) << 2;
+				frequency = Math.min(frequency, (int)((table.get(index & tableMask) >>> shift) & 0xfL));
+			}
+			return frequency;
+		}
+
+		private void increment(Object key){
+			int hash = spread(key.hashCode());
+			boolean bAdded = false;
+			for (int i = 0; i < 4; i++){
+				int index = indexOf(hash, i);
+				bAdded |= incrementAt(index & tableMask, (index >>> 28) << 2);
+			}
+			if (bAdded && size.incrementAndGet() >= sampleSize){
+				reset();
+			}
+		}
+
+		private boolean incrementAt(int i, int shift){
+			long mask = 0xfL << shift;
+			while (true){
+				long value = table.get(i);
+				if ((value & mask) == mask){
+					return false;
+				}
+				if (table.compareAndSet(i, value, value + (1L << shift))){
+					return true;
+				}
+			}
+		}
+
+		private synchronized void reset(){
+			if (size.get() < sampleSize){
+				return;
+			}
+			for (int i = 0; i < table.length(); i++){
+				while (true){
+					long value = table.get(i);
+					if (table.compareAndSet(i, value, (value >>> 1) & RESET_MASK)){
+						break;
+					}
+				}
+			}
+			size.set(size.get() / 2);
+		}
+
+		private static int spread(int hash){
+			hash ^= (hash >>> 17);
+			hash *= 0xed5ad4bb;
+			hash ^= (hash >>> 11);
+			return hash;
+		}
+	}
+
+	private final long expireTime;
+	private final LongSupplier clock;
 	private Ping cleaner;
-	private Hashtable hashTable = null;
-	private long currMemSize = 0;
-	private long maxMemSize = 0;
-	private double cleanupFraction = 0.8;
+	private final ConcurrentHashMap<Object,Node> map = new ConcurrentHashMap<Object,Node>();
+	private final FrequencySketch sketch;
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	// guarded by evictionLock (sentinels of circular access ordered lists, next is the least recently used).
+	private final Node windowQueue = new Node(null, null, 0, 0);
+	private final Node probationQueue = new Node(null, null, 0, 0);
+	private final Node protectedQueue = new Node(null, null, 0, 0);
+	private final long maxMemSize;
+	private final long maxWindowSize;
+	private final long maxProtectedSize;
+	private volatile long currMemSize = 0;
+	private long windowSize = 0;
+	private long protectedSize = 0;
+	private long lastExpireScanTime = 0;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
 
 	private boolean bQuiet = true;
 /**
  * This method was created in VisualAge.
  * @param expireTime long
  */
-public Cachetable(long expireTime, long maxMemSize) {	
-	this.expireTime = expireTime;
-	cleaner = new Ping(this, ((long) (expireTime * 0.75)),"SimResultsCacheReaper");
-	cleaner.start();
-	this.hashTable = new Hashtable();
-	this.maxMemSize = maxMemSize;
+public Cachetable(long expireTime, long maxMemSize) {
+	this(expireTime, maxMemSize, System::currentTimeMillis);
 }
 /**
- * This method was created in VisualAge.
- * @return long
+ * @param clock current time in milliseconds, used for expiration (tests advance it by hand).
  */
-private synchronized long calcSize() {
-	long count = 0;
-	Enumeration enum1 = hashTable.elements();
-	while (enum1.hasMoreElements()){
-		TimeWrapper timeWrapper = (TimeWrapper)enum1.nextElement();
-		count += timeWrapper.getSize();
-	}
-	return count;
+Cachetable(long expireTime, long maxMemSize, LongSupplier clock) {
+	this.expireTime = expireTime;
+	this.clock = clock;
+	this.maxMemSize = maxMemSize;
+	this.maxWindowSize = Math.max(1, (long)(maxMemSize * WINDOW_FRACTION));
+	this.maxProtectedSize = (long)((maxMemSize - maxWindowSize) * PROTECTED_FRACTION);
+	// size the sketch for entries of about 64KB (sim data blocks are usually larger).
+	this.sketch = new FrequencySketch((int)Math.min(1 << 20, Math.max(64, maxMemSize >> 16)));
+	cleaner = new Ping(this, ((long) (expireTime * 0.75)),"SimResultsCacheReaper");
+	cleaner.start();
 }
 /**
  * Insert the method's description here.
@@ -75,267 +205,310 @@ protected void finalize() {
 	}
 }
 public VCData get(VCDataIdentifier vcDataId) {
-	TimeWrapper timeWrapper = get0(vcDataId);
-	if (timeWrapper!=null){
-		return (VCData)timeWrapper.getObject();
-	}else{
-		return null;
-	}
+	return (VCData)get0(vcDataId);
 }
 public ODEDataBlock get(ODEDataInfo odeDataInfo) {
-	TimeWrapper timeWrapper = get0(odeDataInfo);
-	if (timeWrapper!=null){
-		return (ODEDataBlock)timeWrapper.getObject();
-	}else{
-		return null;
-	}
+	return (ODEDataBlock)get0(odeDataInfo);
 }
 public ParticleDataBlock get(ParticleDataInfo particleDataInfo) {
-	TimeWrapper timeWrapper = get0(particleDataInfo);
-	if (timeWrapper!=null){
-		return (ParticleDataBlock)timeWrapper.getObject();
-	}else{
-		return null;
-	}
+	return (ParticleDataBlock)get0(particleDataInfo);
 }
 public SimDataBlock get(PDEDataInfo pdeDataInfo) {
-	TimeWrapper timeWrapper = get0(pdeDataInfo);
-	if (timeWrapper!=null){
-		return (SimDataBlock)timeWrapper.getObject();
-	}else{
+	return (SimDataBlock)get0(pdeDataInfo);
+}
+private Object get0(Object key) {
+	sketch.increment(key);
+	Node node = map.get(key);
+	if (node == null){
+		missCount.increment();
 		return null;
 	}
-}
-private synchronized TimeWrapper get0(Object key) {
-	TimeWrapper timeWrapper = (TimeWrapper)hashTable.get(key);
-	if (timeWrapper!=null){
-//System.out.println("........Cachetable.get(key="+key+") <<<returning object>>>");
-		return timeWrapper;
-	}else{
-//System.out.println("........Cachetable.get(key="+key+") <<<missed>>>");
+	long now = clock.getAsLong();
+	if (now - node.lastAccessTime > expireTime){
+		missCount.increment();
+		evictionLock.lock();
+		try {
+			removeNode(node);
+		}finally{
+			evictionLock.unlock();
+		}
 		return null;
 	}
+	node.lastAccessTime = now;
+	hitCount.increment();
+	if (evictionLock.tryLock()){
+		try {
+			onAccess(node);
+		}finally{
+			evictionLock.unlock();
+		}
+	}
+	return node.value;
 }
 /**
  * This method was created in VisualAge.
  * @return cbit.vcell.simdata.CacheStatus
  */
 public CacheStatus getCacheStatus() {
-	return new CacheStatus(hashTable.size(),currMemSize,maxMemSize);
+	return new CacheStatus(map.size(),currMemSize,maxMemSize,hitCount.sum(),missCount.sum(),evictionCount.sum());
 }
-public synchronized void ping() {
+public void ping() {
 	boolean bRemovedAny = false;
-	Enumeration e = hashTable.keys();
-	while (e.hasMoreElements()) {
-		Object key = e.nextElement();
-		TimeWrapper tw = (TimeWrapper) hashTable.get(key);
-		if ((tw != null) && (tw.getAge() > expireTime)) {
-			remove0(key);
-			bRemovedAny = true;
-//			System.out.println("Cachetable.ping(), expiring key="+key.toString());
-		}
+	long now = clock.getAsLong();
+	evictionLock.lock();
+	try {
+		bRemovedAny = removeExpired(now);
+	}finally{
+		evictionLock.unlock();
 	}
 	if (bRemovedAny){
 		show();
 	}
-//	System.gc();
 }
-public VCData put(VCDataIdentifier vcdID, VCData data) throws CacheException {
-
-	VCData oldData = null;
-			
-	TimeWrapper oldTimeWrapper = put(vcdID, new TimeWrapper(data,data.getSizeInBytes(),vcdID));
-
-	if (oldTimeWrapper!=null){
-		oldData = (VCData)oldTimeWrapper.getObject();
+/**
+ * removes all entries not accessed within the expire time.  Every entry is checked, the queue order doesn't follow
+ * lastAccessTime (reads skip reordering under contention, demoted entries join probation behind newer ones).
+ * @return true if any entry was removed.
+ */
+private boolean removeExpired(long now) {
+	lastExpireScanTime = now;
+	boolean bRemovedAny = false;
+	for (Node queue : new Node[] { windowQueue, probationQueue, protectedQueue }){
+		Node node = queue.next;
+		while (node != queue){
+			Node next = node.next;
+			if (now - node.lastAccessTime > expireTime){
+				removeNode(node);
+				bRemovedAny = true;
+			}
+			node = next;
+		}
 	}
-
-	show();	
-	
+	return bRemovedAny;
+}
+public VCData put(VCDataIdentifier vcdID, VCData data) throws CacheException {
+	VCData oldData = (VCData)put0(vcdID, data, data.getSizeInBytes());
+	show();
 	return oldData;
 }
 public ODEDataBlock put(ODEDataInfo odeDataInfo, ODEDataBlock odeDataBlock) throws CacheException {
-
-	ODEDataBlock oldODEDataBlock = null;
-	
-	TimeWrapper oldTimeWrapper = put(odeDataInfo, new TimeWrapper(odeDataBlock,odeDataBlock.getEstimatedSizeInBytes(), odeDataInfo));
-
-	if (oldTimeWrapper!=null){
-		oldODEDataBlock = (ODEDataBlock)oldTimeWrapper.getObject();
-	}
-
-	show();	
-	
+	ODEDataBlock oldODEDataBlock = (ODEDataBlock)put0(odeDataInfo, odeDataBlock, odeDataBlock.getEstimatedSizeInBytes());
+	show();
 	return oldODEDataBlock;
 }
 public ParticleDataBlock put(ParticleDataInfo particleDataInfo, ParticleDataBlock particleDataBlock) throws CacheException {
-
-	ParticleDataBlock oldParticleDataBlock = null;
-			
-	TimeWrapper oldTimeWrapper = put(particleDataInfo, new TimeWrapper(particleDataBlock, particleDataBlock.getSizeInBytes(), particleDataInfo));
-
-	if (oldTimeWrapper!=null){
-		oldParticleDataBlock = (ParticleDataBlock)oldTimeWrapper.getObject();
-	}
-
-	show();	
-	
+	ParticleDataBlock oldParticleDataBlock = (ParticleDataBlock)put0(particleDataInfo, particleDataBlock, particleDataBlock.getSizeInBytes());
+	show();
 	return oldParticleDataBlock;
 }
 public SimDataBlock put(PDEDataInfo pdeDataInfo, SimDataBlock simData) throws CacheException {
-
-	SimDataBlock oldSimDataBlock = null;
-			
-	TimeWrapper oldTimeWrapper = put(pdeDataInfo, new TimeWrapper(simData,simData.getSizeInBytes(),pdeDataInfo));
-
-	if (oldTimeWrapper!=null){
-		oldSimDataBlock = (SimDataBlock)oldTimeWrapper.getObject();
-	}
-
-	show();	
-	
+	SimDataBlock oldSimDataBlock = (SimDataBlock)put0(pdeDataInfo, simData, simData.getSizeInBytes());
+	show();
 	return oldSimDataBlock;
 }
-private synchronized TimeWrapper put(Object key, TimeWrapper timeWrapper) throws CacheException {
-
-	long dataMemSize = timeWrapper.getSize();
-	
+/**
+ * adds the entry to the admission window and evicts as needed (the new entry itself may not be admitted).
+ * Expired entries are removed first so that they don't push out live ones, unless the cache was scanned for them
+ * recently (the scan visits every entry).
+ * @return previous value for this key.
+ */
+private Object put0(Object key, Object value, long dataMemSize) throws CacheException {
 	if (dataMemSize>=maxMemSize){
 		throw new CacheException("data item "+key+" with memSize="+dataMemSize+" too large, maxCacheSize="+maxMemSize);
 	}
-	
-	//
-	// request to free cleanupFraction of the total size
-	//
-	if (dataMemSize+currMemSize >= maxMemSize){
-		resize(Math.min((long)(maxMemSize*cleanupFraction),maxMemSize-dataMemSize));
+	sketch.increment(key);
+	Node node = new Node(key, value, dataMemSize, clock.getAsLong());
+	evictionLock.lock();
+	try {
+		Node oldNode = map.put(key, node);
+		Object oldValue = null;
+		if (oldNode != null){
+			oldValue = oldNode.value;
+			unlink(oldNode);
+		}
+		if (node.lastAccessTime - lastExpireScanTime >= expireTime * EXPIRE_SCAN_FRACTION){
+			removeExpired(node.lastAccessTime);
+		}
+		link(windowQueue, node, WINDOW);
+		evict();
+		if (currMemSize<0 || currMemSize>maxMemSize){
+			throw new CacheException("Error: adding data item "+key+". currMemSize="+currMemSize+" maxMemSize="+maxMemSize);
+		}
+		return oldValue;
+	}finally{
+		evictionLock.unlock();
 	}
-		
-	TimeWrapper oldTimeWrapper = (TimeWrapper)hashTable.put(key, timeWrapper);
-
-	currMemSize += dataMemSize;
-	if (oldTimeWrapper!=null){
-		currMemSize -= oldTimeWrapper.getSize();
+}
+/**
+ * moves entries overflowing the window into probation, then evicts until the cache fits: each candidate from
+ * the window is compared with the least recently used entry of the main space and the less frequent one goes.
+ */
+private void evict() {
+	Node candidate = null;
+	while (windowSize > maxWindowSize && windowQueue.next != windowQueue){
+		Node node = windowQueue.next;
+		unlink(node);
+		link(probationQueue, node, PROBATION);
+		if (candidate == null){
+			candidate = node;
+		}
 	}
-
-	if (currMemSize<0 || currMemSize>=maxMemSize){
-		throw new CacheException("Error: adding data item "+key+". currMemSize="+currMemSize+" maxMemSize="+maxMemSize);
+	while (currMemSize > maxMemSize){
+		//
+		// candidates are at the most recently used end of probation, the victim is the oldest entry which isn't one.
+		//
+		Node victim = null;
+		if (probationQueue.next != probationQueue && probationQueue.next != candidate){
+			victim = probationQueue.next;
+		}else{
+			victim = firstOf(protectedQueue, windowQueue);
+		}
+		if (victim == null && candidate == null){
+			break;
+		}
+		if (victim == null || (candidate != null && sketch.frequency(candidate.key) <= sketch.frequency(victim.key))){
+			Node nextCandidate = (candidate.next != probationQueue) ? candidate.next : null;
+			evictNode(candidate);
+			candidate = nextCandidate;
+		}else{
+			evictNode(victim);
+		}
+	}
+}
+private void onAccess(Node node) {
+	switch (node.queue){
+		case WINDOW: {
+			unlink(node);
+			link(windowQueue, node, WINDOW);
+			break;
+		}
+		case PROBATION: {
+			unlink(node);
+			link(protectedQueue, node, PROTECTED);
+			while (protectedSize > maxProtectedSize && protectedQueue.next != protectedQueue){
+				Node demoted = protectedQueue.next;
+				unlink(demoted);
+				link(probationQueue, demoted, PROBATION);
+			}
+			break;
+		}
+		case PROTECTED: {
+			unlink(node);
+			link(protectedQueue, node, PROTECTED);
+			break;
+		}
+		default: {
+			// removed concurrently
+		}
+	}
+}
+private static Node firstOf(Node... queues) {
+	for (Node queue : queues){
+		if (queue.next != queue){
+			return queue.next;
+		}
 	}
-	//System.out.println("........Cachetable.put(key="+key+")");
-	return oldTimeWrapper;
+	return null;
 }
 /**
- * This method was created in VisualAge.
- * @param key java.lang.Double
+ * appends the node (most recently used end) and accounts for its weight.
  */
-private synchronized Object remove0(Object key) {
-
-	TimeWrapper oldTimeWrapper = (TimeWrapper)hashTable.remove(key);
-	
-	if (oldTimeWrapper!=null){
-		currMemSize -= oldTimeWrapper.getSize();
+private void link(Node queue, Node node, int queueId) {
+	node.prev = queue.prev;
+	node.next = queue;
+	queue.prev.next = node;
+	queue.prev = node;
+	node.queue = queueId;
+	if (queueId == WINDOW){
+		windowSize += node.weight;
+	}else if (queueId == PROTECTED){
+		protectedSize += node.weight;
 	}
-
-	return oldTimeWrapper;
+	currMemSize += node.weight;
+}
+private void unlink(Node node) {
+	if (node.queue == REMOVED){
+		return;
+	}
+	node.prev.next = node.next;
+	node.next.prev = node.prev;
+	node.prev = node;
+	node.next = node;
+	if (node.queue == WINDOW){
+		windowSize -= node.weight;
+	}else if (node.queue == PROTECTED){
+		protectedSize -= node.weight;
+	}
+	currMemSize -= node.weight;
+	node.queue = REMOVED;
+}
+private void evictNode(Node node) {
+	if (removeNode(node)){
+		evictionCount.increment();
+	}
+}
+private boolean removeNode(Node node) {
+	if (node.queue == REMOVED){
+		return false;
+	}
+	map.remove(node.key, node);
+	unlink(node);
+	return true;
 }
 /**
  * This method was created in VisualAge.
  * @param key java.lang.Double
  */
-public synchronized void removeAll(VCDataIdentifier vcDataID) {
-	
+public void removeAll(VCDataIdentifier vcDataID) {
+
 	System.out.println("removeAll(vcDataID="+vcDataID+")");
 
-	
-	remove0(vcDataID);
-	
-	Enumeration enum1 = hashTable.elements();
-	while (enum1.hasMoreElements()){
-		TimeWrapper tw = (TimeWrapper)enum1.nextElement();
-		if (tw.getKey() instanceof PDEDataInfo){
-			PDEDataInfo pdeDataInfo = (PDEDataInfo)tw.getKey();
-			if (pdeDataInfo.belongsTo(vcDataID)){
-				remove0(pdeDataInfo);
+	evictionLock.lock();
+	try {
+		Node node = map.get(vcDataID);
+		if (node != null){
+			removeNode(node);
+		}
+		for (Node n : map.values()){
+			if (n.key instanceof PDEDataInfo && ((PDEDataInfo)n.key).belongsTo(vcDataID)){
+				removeNode(n);
 			}
 		}
+	}finally{
+		evictionLock.unlock();
 	}
-	
+
 	show();
 }
 /**
  * This method was created in VisualAge.
  * @param key java.lang.Double
  */
-public synchronized void removeVariable(VCDataIdentifier vcDataID, String varName) {
-	
+public void removeVariable(VCDataIdentifier vcDataID, String varName) {
+
 	System.out.println("Cachetable.removeVariable(vcDataID="+vcDataID+",varName="+varName+")");
 
-	Enumeration enum1 = hashTable.elements();
-	while (enum1.hasMoreElements()){
-		TimeWrapper tw = (TimeWrapper)enum1.nextElement();
-		if (tw.getKey() instanceof PDEDataInfo){
-			PDEDataInfo pdeDataInfo = (PDEDataInfo)tw.getKey();
-			if (pdeDataInfo.belongsTo(vcDataID) && pdeDataInfo.getVarName().equals(varName)){
-				remove0(pdeDataInfo);
+	evictionLock.lock();
+	try {
+		for (Node n : map.values()){
+			if (n.key instanceof PDEDataInfo){
+				PDEDataInfo pdeDataInfo = (PDEDataInfo)n.key;
+				if (pdeDataInfo.belongsTo(vcDataID) && pdeDataInfo.getVarName().equals(varName)){
+					removeNode(n);
+				}
 			}
 		}
+	}finally{
+		evictionLock.unlock();
 	}
 	show();
 }
-/**
- * This method was created in VisualAge.
- * @param desiredMemSize long
- */
-private synchronized void resize(long desiredMemSize) {
-
-	//
-	// repeat until the cache is less than the desired memory size
-	//
-	while (currMemSize>desiredMemSize){
-		//
-		// calculate the maximum, avg cost
-		// decide on a cost threshold for deletion
-		//
-		double maxCost = -1e10;
-		double minCost = 1e10;
-		double totalCost = 0;
-		long count = 0;
-		Enumeration enum1 = hashTable.elements();
-		while (enum1.hasMoreElements()){
-			TimeWrapper timeWrapper = (TimeWrapper)enum1.nextElement();
-			double cost = timeWrapper.getCost(costPerMilliSecond,costPerByte);
-			maxCost = Math.max(cost,maxCost);
-			minCost = Math.min(cost,minCost);
-			totalCost += cost;
-			count ++;
-		}
-		double avgCost = totalCost/count;
-		double thresholdCost = avgCost + (maxCost-avgCost)*0.5;
-		//
-		// delete all records with a cost greater than the threshold
-		//
-		enum1 = hashTable.elements();
-		while (enum1.hasMoreElements()){
-			TimeWrapper timeWrapper = (TimeWrapper)enum1.nextElement();
-			double cost = timeWrapper.getCost(costPerMilliSecond,costPerByte);
-			if (cost>thresholdCost){
-				remove0(timeWrapper.getKey());
-			}
-		}
-
-		//
-		// evaluate how we did (may need to increase 'costPerByte' if poor convergence)
-		//
-		System.out.println("resize(): desiredMemSize="+desiredMemSize+"  cost min="+minCost+", max="+maxCost+", avg="+avgCost+" thresholdCost="+thresholdCost);
-		show();
-	}
-}
 /**
  * This method was created in VisualAge.
  */
 public void show() {
 	if (!bQuiet){
-		System.out.println("...simdata.Cachetable ("+hashTable.size()+" entries): currMemSize="+currMemSize+" maxMemSize="+maxMemSize);
+		System.out.println("...simdata.Cachetable ("+map.size()+" entries): currMemSize="+currMemSize+" maxMemSize="+maxMemSize);
 	}
 }
 }
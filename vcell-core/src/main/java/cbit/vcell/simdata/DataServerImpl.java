@@ -329,6 +329,16 @@ public DataSetTimeSeries getDataSetTimeSeries(User user, VCDataIdentifier vcdata
 	}
 }
 
+public DataSetTimeSeries getDataSetTimeSeries(User user, VCDataIdentifier vcdataID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws DataAccessException {
+	checkReadAccess(user, vcdataID);
+	try {
+		return dataSetControllerImpl.getDataSetTimeSeries(vcdataID, variableNames, startTime, endTime, startIndex, maxCount);
+	}catch (Throwable e){
+		lg.error(e.getMessage(), e);
+		throw new DataAccessException(e.getMessage());
+	}
+}
+
 
 public boolean isChombo(User user, VCDataIdentifier vcdataID) throws DataAccessException {
 	checkReadAccess(user, vcdataID);
@@ -20,6 +20,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Vector;
 //import java.util.zip.ZipEntry;
@@ -109,6 +110,16 @@ double[] getData(String varName, File zipFile, Double time, SolverDataType solve
 					if (zipFile == null && !pdeFile.exists()) {
 						throw new FileNotFoundException("file "+fileName+" does not exist");
 					}
+					// stored zip entries and plain .sim files are mapped and read in bulk
+					ByteBuffer mappedSimData = (zipFile != null) ? SimDataFileMapper.map(zipFile, pdeFile.getName()) : SimDataFileMapper.map(pdeFile);
+					if (mappedSimData != null) {
+						try {
+							data = SimDataFileMapper.readDoubles(mappedSimData, dataBlock.getDataOffset(), dataBlock.getSize());
+						} finally {
+							SimDataFileMapper.unmap(mappedSimData);
+						}
+						break;
+					}
 					if (zipFile != null) {
 						zipZipFile = openZipFile(zipFile);
 						java.util.zip.ZipEntry dataEntry = zipZipFile.getEntry(pdeFile.getName());
@@ -279,6 +290,7 @@ void read(File file, File zipFile, SolverDataType solverDataType) throws IOExcep
 	
 	ZipFile zipZipFile = null;
 	DataInputStream dataInputStream = null;
+	ByteBuffer mappedSimData = null;
 	try{
 		this.fileName = file.getPath();	
 		
@@ -295,7 +307,10 @@ void read(File file, File zipFile, SolverDataType solverDataType) throws IOExcep
 			InputStream is = null;
 			long length  = 0;
 			
-			if (zipFile != null) {
+			if (zipFile != null && !isChombo(zipFile) && (mappedSimData = SimDataFileMapper.map(zipFile, file.getName())) != null) {
+				is = SimDataFileMapper.asInputStream(mappedSimData);
+				length = mappedSimData.limit();
+			} else if (zipFile != null) {
 //				System.out.println("DataSet.read() open " + zipFile + " for " + file.getName());
 				zipZipFile = openZipFile(zipFile);
 				java.util.zip.ZipEntry dataEntry = zipZipFile.getEntry(file.getName());
@@ -344,6 +359,7 @@ void read(File file, File zipFile, SolverDataType solverDataType) throws IOExcep
 		if (zipZipFile != null) {
 			try{zipZipFile.close();}catch(Exception e){e.printStackTrace();}
 		}
+		SimDataFileMapper.unmap(mappedSimData);
 	}
 }
 
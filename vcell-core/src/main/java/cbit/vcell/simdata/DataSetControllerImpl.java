@@ -24,11 +24,17 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -95,12 +101,14 @@ import cbit.vcell.math.VariableType;
 import cbit.vcell.math.VariableType.VariableDomain;
 import cbit.vcell.message.messages.MessageConstants;
 import cbit.vcell.mongodb.VCMongoMessage;
+import cbit.vcell.parser.CompiledExpression;
 import cbit.vcell.parser.DivideByZeroException;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionBindingException;
 import cbit.vcell.parser.ExpressionException;
 import cbit.vcell.parser.FunctionInvocation;
 import cbit.vcell.parser.SimpleSymbolTable;
+import cbit.vcell.parser.SymbolTable;
 import cbit.vcell.parser.SymbolTableEntry;
 import cbit.vcell.parser.VariableSymbolTable;
 import cbit.vcell.resource.NativeLib;
@@ -216,6 +224,75 @@ public class DataSetControllerImpl implements SimDataConstants,DataJobListenerHo
 	
 	private boolean dataCachingEnabled = true;
 	
+	//
+	// function expressions prepared for evaluation, per data set (see getPreparedFunction())
+	//
+	private static final int MAX_PREPARED_FUNCTION_DATASETS = 50;
+	private static final int FUNCTION_EVALUATION_CHUNK_SIZE = 4096;
+	private static int functionEvaluationThreadCount = 0;
+	private static ExecutorService functionEvaluationExecutor = null;
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<VCDataIdentifier, HashMap<String, PreparedFunction>> preparedFunctionCache =
+		new LinkedHashMap<VCDataIdentifier, HashMap<String, PreparedFunction>>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<VCDataIdentifier, HashMap<String, PreparedFunction>> eldest) {
+				return size() > MAX_PREPARED_FUNCTION_DATASETS;
+			}
+		};
+
+	//
+	// post processing info (time points and statistics) per data set, read once while a client pages through the time series,
+	// valid as long as the post processing file is not rewritten
+	//
+	private static final int MAX_POST_PROCESSING_INFO_DATASETS = 20;
+	private static class CachedDataProcessingOutputInfo {
+		final long lastModified;
+		final DataOperationResults.DataProcessingOutputInfo dataProcessingOutputInfo;
+		CachedDataProcessingOutputInfo(long lastModified, DataOperationResults.DataProcessingOutputInfo dataProcessingOutputInfo) {
+			this.lastModified = lastModified;
+			this.dataProcessingOutputInfo = dataProcessingOutputInfo;
+		}
+	}
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<VCDataIdentifier, CachedDataProcessingOutputInfo> dataProcessingOutputInfoCache =
+		new LinkedHashMap<VCDataIdentifier, CachedDataProcessingOutputInfo>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<VCDataIdentifier, CachedDataProcessingOutputInfo> eldest) {
+				return size() > MAX_POST_PROCESSING_INFO_DATASETS;
+			}
+		};
+
+	/**
+	 * a data set function after substitution of size/normal and field functions, bound to the data set and compiled, with its
+	 * dependencies in the order of the argument vector (t, x, y, z, dependencies).  Valid as long as the functions file, the
+	 * expression and the mesh are the same.
+	 */
+	private static class PreparedFunction {
+		final String infix;
+		final long functionsFileTimeStamp;
+		final CartesianMesh mesh;
+		final Expression exp;
+		final CompiledExpression compiledExp;		// null for gradient functions
+		final DataSetIdentifier[] dependencies;
+		final SimDataHolder[] fieldData;			// resampled field data, null for data set variables
+
+		PreparedFunction(String infix, long functionsFileTimeStamp, CartesianMesh mesh, Expression exp, CompiledExpression compiledExp,
+				DataSetIdentifier[] dependencies, SimDataHolder[] fieldData){
+			this.infix = infix;
+			this.functionsFileTimeStamp = functionsFileTimeStamp;
+			this.mesh = mesh;
+			this.exp = exp;
+			this.compiledExp = compiledExp;
+			this.dependencies = dependencies;
+			this.fieldData = fieldData;
+		}
+
+		boolean isValid(String infix, long functionsFileTimeStamp, CartesianMesh mesh){
+			return this.functionsFileTimeStamp == functionsFileTimeStamp && this.mesh == mesh && this.infix.equals(infix);
+		}
+	};
+	
+	
 	private HashMap<User, Vector<ExternalDataIdentifier>>
 	userExtDataIDH =
 		new HashMap<User, Vector<ExternalDataIdentifier>>();
@@ -1023,29 +1100,37 @@ private static DataProcessingOutputDataValues evaluatePostProcessFunction(
 	}
 		
 	
-	double args[] = new double[TXYZ_OFFSET+postProcessSymbols.length];
+	//
+	// evaluate all data indexes of a time point in one batch, args[k][i] is the value of bound symbol k at data index i
+	// (coordinates don't change with time, post processing data is used in place).
+	//
+	double args[][] = new double[TXYZ_OFFSET+postProcessSymbols.length][];
+	args[0] = new double[dataIndexCount];
+	args[1] = new double[dataIndexCount];
+	args[2] = new double[dataIndexCount];
+	args[3] = new double[dataIndexCount];
+	for (int i = 0; i < dataIndexCount; i++) {
+		Coordinate coord;
+		if(dataIndexHelper.isAllDataIndexes()){
+			coord = cartesianMesh.getCoordinateFromVolumeIndex(i);
+		}else if(dataIndexHelper.isSingleSlice()){
+			coord = cartesianMesh.getCoordinateFromVolumeIndex(dataIndexHelper.getSliceIndex()*DATA_SIZE_XY+i);
+		}else{
+			coord = cartesianMesh.getCoordinateFromVolumeIndex(dataIndexHelper.getDataIndexes()[i]);
+		}
+		args[1][i] = coord.getX();
+		args[2][i] = coord.getY();
+		args[3][i] = coord.getZ();
+	}
 
+	// compiled once for all time points
+	CompiledExpression compiledExp = (dataIndexCount >= Expression.COMPILE_BATCH_THRESHOLD) ? flattenedBoundExpression.compile() : null;
 	for (int t = 0; t < timePoints.length; t++) {
-		evaluatedValues[t] = new double[dataIndexCount];
-		args[0] = timePoints[t];
-		for (int i = 0; i < dataIndexCount; i++) {
-			Coordinate coord;
-			if(dataIndexHelper.isAllDataIndexes()){
-				coord = cartesianMesh.getCoordinateFromVolumeIndex(i);
-			}else if(dataIndexHelper.isSingleSlice()){
-				coord = cartesianMesh.getCoordinateFromVolumeIndex(dataIndexHelper.getSliceIndex()*DATA_SIZE_XY+i);
-			}else{
-				coord = cartesianMesh.getCoordinateFromVolumeIndex(dataIndexHelper.getDataIndexes()[i]);
-			}
-			args[1] = coord.getX();
-			args[2] = coord.getY();
-			args[3] = coord.getZ();
-			for (int j = 0; j < postProcessSymbols.length; j++) {
-				args[TXYZ_OFFSET+j] = postProcessData[j][t][i];
-			}
-			evaluatedValues[t][i] = flattenedBoundExpression.evaluateVector(args);
-//			System.out.println("in="+args[4]+" out="+evaluatedValues[t][i]+" sin(in)="+Math.sin(args[4]));
-		}		
+		Arrays.fill(args[0], timePoints[t]);
+		for (int j = 0; j < postProcessSymbols.length; j++) {
+			args[TXYZ_OFFSET+j] = postProcessData[j][t];
+		}
+		evaluatedValues[t] = flattenedBoundExpression.evaluateVectorBatch(args, dataIndexCount, compiledExp);
 	}
 	return new DataOperationResults.DataProcessingOutputDataValues(dataProcessingOutputInfo.getVCDataIdentifier(),varName,timePointHelper,dataIndexHelper , evaluatedValues);
 }
@@ -1583,17 +1668,6 @@ private SimDataBlock evaluateFunction(
 	double time)
 	throws ExpressionException, DataAccessException, IOException, MathException {
 
-	Expression exp = new Expression(function.getExpression());
-	exp = SolverUtilities.substituteSizeAndNormalFunctions(exp, function.getFunctionType().getVariableDomain());
-	exp.bindExpression(simData);
-	exp = fieldFunctionSubstitution(outputContext, vcdID, exp);
-	
-	//
-	// get Dependent datasets
-	//
-	// variables are indexed by a number, t=0, x=1, y=2, z=3, a(i) = 4+i where a's are other variables
-	// these variables
-	//
 	CartesianMesh mesh = null;
 	if(function.getFunctionType().equals(VariableType.POSTPROCESSING)){
 		mesh = ((SimulationData)simData).getPostProcessingMesh(function.getName(),outputContext);
@@ -1601,12 +1675,17 @@ private SimDataBlock evaluateFunction(
 	if(mesh == null){
 		mesh = getMesh(vcdID);
 	}
-	
-	
-	String[] dependentIDs = exp.getSymbols();
+	PreparedFunction preparedFunction = getPreparedFunction(outputContext, vcdID, simData, function, mesh);
+
+	//
+	// get Dependent datasets
+	//
+	// variables are indexed by a number, t=0, x=1, y=2, z=3, a(i) = 4+i where a's are other variables
+	// these variables
+	//
+	final DataSetIdentifier[] dependencies = preparedFunction.dependencies;
 	Vector<SimDataHolder> dataSetList = new Vector<SimDataHolder>();
-	Vector<DataSetIdentifier> dependencyList = new Vector<DataSetIdentifier>();
-	int varIndex = TXYZ_OFFSET;
+	int varIndex = TXYZ_OFFSET + dependencies.length;
 	int dataLength = 0;
 	long lastModified = 0;
 	VariableType variableType = function.getFunctionType();
@@ -1621,82 +1700,42 @@ private SimDataBlock evaluateFunction(
 	}
 	VariableType computedVariableType = null;
 	int computedDataLength = 0;
-	for (int i = 0; dependentIDs!=null && i < dependentIDs.length; i++) {
-		SymbolTableEntry ste = exp.getSymbolBinding(dependentIDs[i]);
-		if (ste instanceof DataSetIdentifier) {
-			DataSetIdentifier dsi = (DataSetIdentifier) ste;
-			dependencyList.addElement(dsi);
-			dsi.setIndex(varIndex++);
-			if (dsi.getName().endsWith(OutsideVariable.OUTSIDE_VARIABLE_SUFFIX) || dsi.getName().endsWith(InsideVariable.INSIDE_VARIABLE_SUFFIX)){
-				String volVarName = dsi.getName().substring(0,dsi.getName().lastIndexOf("_"));
-				SimDataBlock simDataBlock = getSimDataBlock(outputContext,vcdID, volVarName, time);
-				lastModified = simDataBlock.getPDEDataInfo().getTimeStamp();
-				//
-				// if inside/outside volume element dependent, then can only be a membrane type 
-				//
-				if (simDataBlock.getVariableType().equals(VariableType.VOLUME)){
-					computedVariableType = VariableType.MEMBRANE;
-					computedDataLength = mesh.getMembraneElements().length;
-				//
-				// if inside/outside volume element dependent, then can only be a membrane type 
-				//
-				}else if (simDataBlock.getVariableType().equals(VariableType.VOLUME_REGION) && variableType==null){
-					computedVariableType = VariableType.MEMBRANE_REGION;
-					computedDataLength = mesh.getNumMembraneRegions();
-				}
-				dataSetList.addElement(simDataBlock);
-			}else{	
-				SimDataBlock simDataBlock = getSimDataBlock(outputContext,vcdID, dsi.getName(), time);
-				if (variableType==null || simDataBlock.getVariableType().isExpansionOf(variableType)) {
-					lastModified = simDataBlock.getPDEDataInfo().getTimeStamp();
-					computedDataLength = simDataBlock.getData().length;
-					computedVariableType = simDataBlock.getVariableType();
-				}
-				dataSetList.addElement(simDataBlock);
-			}
-		} else if (ste instanceof ReservedVariable) {
-			ReservedVariable rv = (ReservedVariable) ste;
-			if (rv.isTIME()) {
-				rv.setIndex(0);
-			} else if (rv.isX()) {
-				rv.setIndex(1);
-			} else if (rv.isY()) {
-				rv.setIndex(2);
-			} else if (rv.isZ()) {
-				rv.setIndex(3);
-			}
-		}else if (ste instanceof FieldDataParameterVariable){
+	for (int i = 0; i < dependencies.length; i++) {
+		DataSetIdentifier dsi = dependencies[i];
+		if (preparedFunction.fieldData[i] != null) {
 			//Field Data
-			((FieldDataParameterVariable)ste).setIndex(varIndex++);
-			final double[] steResampledFieldData =
-				((FieldDataParameterVariable)ste).getResampledFieldData();
-			final VariableType newVariableType =
-				(steResampledFieldData.length == mesh.getNumVolumeElements()?
-							VariableType.VOLUME:
-								(steResampledFieldData.length == mesh.getNumMembraneElements()?
-										VariableType.MEMBRANE:null)
-				);
-			if(newVariableType == null){
-				throw new DataAccessException("Couldn't determine VariableType for FieldData");
+			SimDataHolder fieldDataHolder = preparedFunction.fieldData[i];
+			dataSetList.addElement(fieldDataHolder);
+			if(variableType == null){
+				computedVariableType = fieldDataHolder.getVariableType();
+				computedDataLength = fieldDataHolder.getData().length;
 			}
-			if(variableType != null && !variableType.equals(newVariableType)){
-				throw new DataAccessException("Incompatible VariableType for FieldData");
+		}else if (dsi.getName().endsWith(OutsideVariable.OUTSIDE_VARIABLE_SUFFIX) || dsi.getName().endsWith(InsideVariable.INSIDE_VARIABLE_SUFFIX)){
+			String volVarName = dsi.getName().substring(0,dsi.getName().lastIndexOf("_"));
+			SimDataBlock simDataBlock = getSimDataBlock(outputContext,vcdID, volVarName, time);
+			lastModified = simDataBlock.getPDEDataInfo().getTimeStamp();
+			//
+			// if inside/outside volume element dependent, then can only be a membrane type 
+			//
+			if (simDataBlock.getVariableType().equals(VariableType.VOLUME)){
+				computedVariableType = VariableType.MEMBRANE;
+				computedDataLength = mesh.getMembraneElements().length;
+			//
+			// if inside/outside volume element dependent, then can only be a membrane type 
+			//
+			}else if (simDataBlock.getVariableType().equals(VariableType.VOLUME_REGION) && variableType==null){
+				computedVariableType = VariableType.MEMBRANE_REGION;
+				computedDataLength = mesh.getNumMembraneRegions();
 			}
-			SimDataHolder newSimDataHolder =
-				new SimDataHolder(){
-					public double[] getData() {
-						return steResampledFieldData;
-					}
-					public VariableType getVariableType() {
-						return newVariableType;
-					}
-			};
-			dataSetList.addElement(newSimDataHolder);
-			dependencyList.add(new DataSetIdentifier(ste.getName(), newVariableType,((FieldDataParameterVariable) ste).getDomain()));
-			if(variableType == null){
-				computedVariableType = newVariableType;
-				computedDataLength = newSimDataHolder.getData().length;
+			dataSetList.addElement(simDataBlock);
+		}else{	
+			SimDataBlock simDataBlock = getSimDataBlock(outputContext,vcdID, dsi.getName(), time);
+			if (variableType==null || simDataBlock.getVariableType().isExpansionOf(variableType)) {
+				lastModified = simDataBlock.getPDEDataInfo().getTimeStamp();
+				computedDataLength = simDataBlock.getData().length;
+				computedVariableType = simDataBlock.getVariableType();
 			}
+			dataSetList.addElement(simDataBlock);
 		}
 	}	       
 	       
@@ -1704,16 +1743,6 @@ private SimDataBlock evaluateFunction(
 		if (lg.isDebugEnabled()) lg.debug("dependencies for function '"+function+"' not found, assuming datalength of volume");
 		computedDataLength = mesh.getDataLength(VariableType.VOLUME);
 		computedVariableType = VariableType.VOLUME;
-//		try {
-//			computedDataLength = mesh.getDataLength(VariableType.VOLUME);
-//			computedVariableType = VariableType.VOLUME;
-//		}catch (MathException e){
-//			lg.error(e.getMessage(), e);
-//			throw new RuntimeException("MathException, cannot determine domain for function '"+function+"'");
-//		}catch (FileNotFoundException e){
-//			lg.error(e.getMessage(), e);
-//			throw new RuntimeException("Mesh not found, cannot determine domain for function '"+function+"'");
-//		}
 	}
 
 	if (!variableType.equals(computedVariableType)) {
@@ -1727,19 +1756,78 @@ private SimDataBlock evaluateFunction(
 	//
 	//Gradient Info for special processing
 	//
-	boolean isGrad = hasGradient(exp);
+	boolean isGrad = preparedFunction.compiledExp == null;
 	
 	if(isGrad && !variableType.equals(VariableType.VOLUME)){
 		throw new DataAccessException("Gradient function is not implemented for datatype "+variableType.getTypeName());
 	}
-	double args[] = new double[varIndex+(isGrad?12*varIndex:0)];
 	double data[] = new double[dataLength];
+	String dividedByZeroMsg;
+	if (isGrad || mesh.isChomboMesh() || dataLength < 2 * FUNCTION_EVALUATION_CHUNK_SIZE || getFunctionEvaluationThreadCount() == 1) {
+		dividedByZeroMsg = evaluateFunction(preparedFunction, vcdID, mesh, variableType, time, dataSetList, 0, dataLength, data);
+	} else {
+		//
+		// the first element is evaluated on this thread (initializes the lazily created parts of the mesh), the others in
+		// chunks on the shared pool, each chunk with its own argument vector.
+		//
+		dividedByZeroMsg = evaluateFunction(preparedFunction, vcdID, mesh, variableType, time, dataSetList, 0, 1, data);
+		final CartesianMesh finalMesh = mesh;
+		final VariableType finalVariableType = variableType;
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		try {
+			for (int start = 1; start < dataLength; start += FUNCTION_EVALUATION_CHUNK_SIZE) {
+				final int chunkStart = start;
+				final int chunkEnd = Math.min(dataLength, start + FUNCTION_EVALUATION_CHUNK_SIZE);
+				futures.add(getFunctionEvaluationExecutor().submit(() ->
+					evaluateFunction(preparedFunction, vcdID, finalMesh, finalVariableType, time, dataSetList, chunkStart, chunkEnd, data)));
+			}
+			for (Future<String> future : futures) {
+				String msg = future.get();
+				if (msg.length() != 0) {
+					dividedByZeroMsg = msg;
+				}
+			}
+		}catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof ExpressionException){
+				throw (ExpressionException)cause;
+			}
+			throw new DataAccessException("function '"+function.getName()+"' evaluation failed: "+cause.getMessage(),cause);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new DataAccessException("function '"+function.getName()+"' evaluation interrupted",e);
+		}finally{
+			for(Future<String> future : futures){
+				future.cancel(true);
+			}
+		}
+	}
+	if (dividedByZeroMsg.length() != 0) {
+		System.out.println("DataSetControllerImpl.evaluateFunction(): DivideByZero " + dividedByZeroMsg);
+	}
+
+	PDEDataInfo pdeDataInfo = new PDEDataInfo(vcdID.getOwner(), vcdID.getID(), function.getName(), time, lastModified);
+	return new SimDataBlock(pdeDataInfo, data, variableType);
+}
+
+
+/**
+ * evaluates a prepared function for the elements 'start' to 'end'-1.
+ * @return the message of the last division by zero (the value is set to infinity), or an empty string.
+ */
+private String evaluateFunction(PreparedFunction preparedFunction, VCDataIdentifier vcdID, CartesianMesh mesh, VariableType variableType, double time,
+		Vector<SimDataHolder> dataSetList, int start, int end, double[] data) throws ExpressionException, DataAccessException {
+
+	DataSetIdentifier[] dependencies = preparedFunction.dependencies;
+	int varIndex = TXYZ_OFFSET + dependencies.length;
+	boolean isGrad = preparedFunction.compiledExp == null;
+	double args[] = new double[varIndex+(isGrad?12*varIndex:0)];
 	args[0] = time; // time
 	args[1] = 0.0; // x
 	args[2] = 0.0; // y
 	args[3] = 0.0; // z	
 	String dividedByZeroMsg = "";
-	for (int i = 0; i < dataLength; i++) {
+	for (int i = start; i < end; i++) {
 		//
 		// initialize argments to expression
 		//
@@ -1777,7 +1865,7 @@ private SimDataBlock evaluateFunction(
 			args[2] = coord.getY();
 			args[3] = coord.getZ();
 			for (int j = 0; j < varIndex - TXYZ_OFFSET; j++) {
-				DataSetIdentifier dsi = (DataSetIdentifier)dependencyList.elementAt(j);
+				DataSetIdentifier dsi = dependencies[j];
 				SimDataHolder simDataHolder = dataSetList.elementAt(j);
 				if (simDataHolder.getVariableType().equals(VariableType.VOLUME)) {
 					if (mesh.isChomboMesh())
@@ -1823,7 +1911,7 @@ private SimDataBlock evaluateFunction(
 			}
 		}else if (variableType.equals(VariableType.MEMBRANE_REGION)){
 			for (int j = 0; j < varIndex - TXYZ_OFFSET; j++) {
-				DataSetIdentifier dsi = (DataSetIdentifier)dependencyList.elementAt(j);
+				DataSetIdentifier dsi = dependencies[j];
 				SimDataHolder simDataHolder = dataSetList.elementAt(j);
 				if (simDataHolder.getVariableType().equals(VariableType.VOLUME_REGION) && dsi.getName().endsWith(InsideVariable.INSIDE_VARIABLE_SUFFIX)){
 					//
@@ -1857,25 +1945,140 @@ private SimDataBlock evaluateFunction(
 			}
 		}
 		try {
-			data[i] = exp.evaluateVector(args);
-//			if(time ==0){
-//				System.out.print("non-multi evalFunction ");
-//				for (int m = 0; m < args.length; m++) {
-//					System.out.print(args[m]);
-//				}
-//				System.out.println(" "+(args[args.length-2]/args[args.length-1]));
-//			}
+			data[i] = isGrad ? preparedFunction.exp.evaluateVector(args) : preparedFunction.compiledExp.eval(args);
 		}catch (DivideByZeroException e){
 			dividedByZeroMsg = e.getMessage();
 			data[i] = Double.POSITIVE_INFINITY;
 		}
 	}
-	if (dividedByZeroMsg.length() != 0) {
-		System.out.println("DataSetControllerImpl.evaluateFunction(): DivideByZero " + dividedByZeroMsg);
+	return dividedByZeroMsg;
+}
+
+
+/**
+ * @return the function prepared for evaluation: from the cache of the simulation if the functions file and the expression did not
+ * change, otherwise prepared again (and cached, except gradient functions which bind neighbour data at evaluation).
+ */
+private PreparedFunction getPreparedFunction(OutputContext outputContext, VCDataIdentifier vcdID, VCData simData, AnnotatedFunction function, CartesianMesh mesh)
+		throws ExpressionException, DataAccessException, IOException, MathException {
+
+	String infix = function.getExpression().infix();
+	long functionsFileTimeStamp = (simData instanceof SimulationData) ? ((SimulationData)simData).getFunctionsFile(false).lastModified() : 0;
+	synchronized (preparedFunctionCache) {
+		HashMap<String, PreparedFunction> simPreparedFunctions = preparedFunctionCache.get(vcdID);
+		PreparedFunction preparedFunction = (simPreparedFunctions != null) ? simPreparedFunctions.get(function.getName()) : null;
+		if (preparedFunction != null && preparedFunction.isValid(infix, functionsFileTimeStamp, mesh)) {
+			return preparedFunction;
+		}
+	}
+	PreparedFunction preparedFunction = prepareFunction(outputContext, vcdID, simData, function, mesh, infix, functionsFileTimeStamp);
+	if (preparedFunction.compiledExp != null && dataCachingEnabled) {
+		synchronized (preparedFunctionCache) {
+			HashMap<String, PreparedFunction> simPreparedFunctions = preparedFunctionCache.get(vcdID);
+			if (simPreparedFunctions == null) {
+				simPreparedFunctions = new HashMap<String, PreparedFunction>();
+				preparedFunctionCache.put(vcdID, simPreparedFunctions);
+			}
+			simPreparedFunctions.put(function.getName(), preparedFunction);
+		}
 	}
+	return preparedFunction;
+}
 
-	PDEDataInfo pdeDataInfo = new PDEDataInfo(vcdID.getOwner(), vcdID.getID(), function.getName(), time, lastModified);
-	return new SimDataBlock(pdeDataInfo, data, variableType);
+
+private PreparedFunction prepareFunction(OutputContext outputContext, VCDataIdentifier vcdID, VCData simData, AnnotatedFunction function, CartesianMesh mesh,
+		String infix, long functionsFileTimeStamp) throws ExpressionException, DataAccessException, IOException, MathException {
+
+	Expression exp = new Expression(function.getExpression());
+	exp = SolverUtilities.substituteSizeAndNormalFunctions(exp, function.getFunctionType().getVariableDomain());
+	exp.bindExpression(simData);
+	exp = fieldFunctionSubstitution(outputContext, vcdID, exp);
+
+	String[] dependentIDs = exp.getSymbols();
+	Vector<DataSetIdentifier> dependencyList = new Vector<DataSetIdentifier>();
+	Vector<SimDataHolder> fieldDataList = new Vector<SimDataHolder>();
+	//
+	// the DataSetIdentifiers of simData are shared by all functions of the data set (and concurrent requests), the function
+	// is bound to private copies indexed for its own argument vector.
+	//
+	final HashMap<String, SymbolTableEntry> bindings = new HashMap<String, SymbolTableEntry>();
+	int varIndex = TXYZ_OFFSET;
+	VariableType variableType = function.getFunctionType();
+	for (int i = 0; dependentIDs!=null && i < dependentIDs.length; i++) {
+		SymbolTableEntry ste = exp.getSymbolBinding(dependentIDs[i]);
+		if (ste instanceof DataSetIdentifier) {
+			DataSetIdentifier dsi = (DataSetIdentifier) ste;
+			DataSetIdentifier dsiCopy = new DataSetIdentifier(dsi.getName(), dsi.getVariableType(), dsi.getDomain(), dsi.isFunction());
+			dsiCopy.setIndex(varIndex++);
+			dependencyList.addElement(dsiCopy);
+			fieldDataList.addElement(null);
+			ste = dsiCopy;
+		} else if (ste instanceof ReservedVariable) {
+			ReservedVariable rv = (ReservedVariable) ste;
+			if (rv.isTIME()) {
+				rv.setIndex(0);
+			} else if (rv.isX()) {
+				rv.setIndex(1);
+			} else if (rv.isY()) {
+				rv.setIndex(2);
+			} else if (rv.isZ()) {
+				rv.setIndex(3);
+			}
+		}else if (ste instanceof FieldDataParameterVariable){
+			//Field Data
+			((FieldDataParameterVariable)ste).setIndex(varIndex++);
+			final double[] steResampledFieldData =
+				((FieldDataParameterVariable)ste).getResampledFieldData();
+			final VariableType newVariableType =
+				(steResampledFieldData.length == mesh.getNumVolumeElements()?
+							VariableType.VOLUME:
+								(steResampledFieldData.length == mesh.getNumMembraneElements()?
+										VariableType.MEMBRANE:null)
+				);
+			if(newVariableType == null){
+				throw new DataAccessException("Couldn't determine VariableType for FieldData");
+			}
+			if(variableType != null && !variableType.equals(newVariableType)){
+				throw new DataAccessException("Incompatible VariableType for FieldData");
+			}
+			SimDataHolder newSimDataHolder =
+				new SimDataHolder(){
+					public double[] getData() {
+						return steResampledFieldData;
+					}
+					public VariableType getVariableType() {
+						return newVariableType;
+					}
+			};
+			fieldDataList.addElement(newSimDataHolder);
+			dependencyList.add(new DataSetIdentifier(ste.getName(), newVariableType,((FieldDataParameterVariable) ste).getDomain()));
+		}
+		bindings.put(dependentIDs[i], ste);
+	}
+	if (dependentIDs != null) {
+		exp.bindExpression(new SymbolTable() {
+			@Override
+			public SymbolTableEntry getEntry(String identifierString) {
+				return bindings.get(identifierString);
+			}
+			@Override
+			public void getEntries(Map<String, SymbolTableEntry> entryMap) {
+				entryMap.putAll(bindings);
+			}
+		});
+	}
+	CompiledExpression compiledExp = null;
+	if (!hasGradient(exp)) {
+		try {
+			compiledExp = exp.flatten().compile();
+		}catch (ExpressionException e){
+			// e.g. a constant division by zero, reported for each element as before
+			compiledExp = exp.compile();
+		}
+	}
+	return new PreparedFunction(infix, functionsFileTimeStamp, mesh, exp, compiledExp,
+			dependencyList.toArray(new DataSetIdentifier[dependencyList.size()]),
+			fieldDataList.toArray(new SimDataHolder[fieldDataList.size()]));
 }
 
 
@@ -2352,6 +2555,10 @@ public FieldDataFileOperationResults fieldDataFileOperation(FieldDataFileOperati
 			cacheTable0.removeAll(simDataID);
 			cacheTable0.removeAll(fieldDataFileOperationSpec.specEDI);
 		}
+		// functions of any data set may have the deleted field data substituted
+		synchronized (preparedFunctionCache) {
+			preparedFunctionCache.clear();
+		}
 		if(userExtDataIDH != null){
 			userExtDataIDH.remove(fieldDataFileOperationSpec.specEDI.getOwner());
 		}
@@ -2385,6 +2592,7 @@ public FieldDataFileOperationResults fieldDataFileOperation(FieldDataFileOperati
 			if(index != 0 && !fdZipFile.exists()){
 				break;
 			}
+			SimDataFileMapper.close(fdZipFile);
 			if(!fdZipFile.delete()){
 				System.out.println("Couldn't delete zip file "+fdZipFile.getAbsolutePath());
 			}
@@ -3440,6 +3648,46 @@ private boolean hasGradient(Expression exp){
 	return hasGradient;
 }
 
+
+/**
+ * number of threads used to evaluate a function over the mesh, from {@link PropertyLoader#simdataFunctionThreadsProperty}
+ * (defaults to the number of processors, 1 evaluates on the calling thread).
+ */
+private static synchronized int getFunctionEvaluationThreadCount() {
+	if (functionEvaluationThreadCount == 0) {
+		functionEvaluationThreadCount = Math.max(1, PropertyLoader.getIntProperty(PropertyLoader.simdataFunctionThreadsProperty, Runtime.getRuntime().availableProcessors()));
+	}
+	return functionEvaluationThreadCount;
+}
+
+
+/**
+ * sets the number of function evaluation threads (0 reads {@link PropertyLoader#simdataFunctionThreadsProperty} again), for tests.
+ */
+static synchronized void setFunctionEvaluationThreadCount(int threadCount) {
+	if (functionEvaluationExecutor != null) {
+		functionEvaluationExecutor.shutdown();
+		functionEvaluationExecutor = null;
+	}
+	functionEvaluationThreadCount = threadCount;
+}
+
+
+/**
+ * bounded pool shared by all function evaluations of this process.
+ */
+private static synchronized ExecutorService getFunctionEvaluationExecutor() {
+	if (functionEvaluationExecutor == null) {
+		final AtomicInteger threadCounter = new AtomicInteger(0);
+		functionEvaluationExecutor = Executors.newFixedThreadPool(getFunctionEvaluationThreadCount(), (r) -> {
+			Thread t = new Thread(r, "SimDataFunction-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	return functionEvaluationExecutor;
+}
+
 private TimeSeriesJobResults getSpecialTimeSeriesValues(OutputContext outputContext,VCDataIdentifier vcdID,
 		TimeSeriesJobSpec timeSeriesJobSpec,TimeInfo timeInfo) throws Exception{
 	
@@ -4311,13 +4559,26 @@ public DataSetMetadata getDataSetMetadata(VCDataIdentifier vcdataID) throws File
 
 
 
+/**
+ * all time points of the selected variables (all if null).
+ */
 public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdataID, String[] variableNames) throws FileNotFoundException, DataAccessException, IOException {
+	return getDataSetTimeSeries(vcdataID, variableNames, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1);
+}
+
+
+/**
+ * selected variables (all if null) and time points (see {@link DataSetTimeSeries#select(String[], double, double, int, int)}),
+ * so that callers can page through large results.  Only the selected rows and columns are copied: the ODE data block
+ * is cached in the cache table and the post processing info in dataProcessingOutputInfoCache.
+ */
+public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdataID, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) throws FileNotFoundException, DataAccessException, IOException {
 	try {
 		ODEDataBlock odeDatablock = getODEDataBlock(vcdataID);
-		return new DataSetTimeSeries(vcdataID, odeDatablock);
+		return new DataSetTimeSeries(vcdataID, odeDatablock, variableNames, startTime, endTime, startIndex, maxCount);
 	}catch (Exception e){
 		System.err.println(e.getMessage());
-		final DataOperationResults.DataProcessingOutputInfo dataProcessingOutputInfo = (DataOperationResults.DataProcessingOutputInfo)doDataOperation(new DataOperation.DataProcessingOutputInfoOP(vcdataID,true,null));
+		final DataOperationResults.DataProcessingOutputInfo dataProcessingOutputInfo = getDataProcessingOutputInfo(vcdataID);
 		DataSetTimeSeries.DataSetPostProcessData dataSetPostProcessData = new DataSetTimeSeries.DataSetPostProcessData(){
 			@Override
 			public double[] getTimes() {
@@ -4338,8 +4599,33 @@ public DataSetTimeSeries getDataSetTimeSeries(VCDataIdentifier vcdataID, String[
 				return dataProcessingOutputInfo.getVariableStatValues().get(varName);
 			}
 		};
-		return new DataSetTimeSeries(vcdataID, dataSetPostProcessData);
+		return new DataSetTimeSeries(vcdataID, dataSetPostProcessData, variableNames, startTime, endTime, startIndex, maxCount);
+	}
+}
+
+
+private DataOperationResults.DataProcessingOutputInfo getDataProcessingOutputInfo(VCDataIdentifier vcdataID) throws DataAccessException, IOException {
+	VCData vcData = getVCData(vcdataID);
+	if (!(vcData instanceof SimulationData)){
+		throw new DataAccessException("no post processing data for "+vcdataID.getID());
+	}
+	long lastModified = ((SimulationData)vcData).getDataProcessingOutputSourceFileHDF5().lastModified();
+	synchronized (dataProcessingOutputInfoCache) {
+		CachedDataProcessingOutputInfo cached = dataProcessingOutputInfoCache.get(vcdataID);
+		if (cached != null && cached.lastModified == lastModified){
+			return cached.dataProcessingOutputInfo;
+		}
+	}
+	DataOperationResults.DataProcessingOutputInfo dataProcessingOutputInfo = (DataOperationResults.DataProcessingOutputInfo)doDataOperation(new DataOperation.DataProcessingOutputInfoOP(vcdataID,true,null));
+	if (dataProcessingOutputInfo == null){
+		throw new DataAccessException("no post processing data for "+vcdataID.getID());
+	}
+	if (lastModified != 0){
+		synchronized (dataProcessingOutputInfoCache) {
+			dataProcessingOutputInfoCache.put(vcdataID, new CachedDataProcessingOutputInfo(lastModified, dataProcessingOutputInfo));
+		}
 	}
+	return dataProcessingOutputInfo;
 }
 
 
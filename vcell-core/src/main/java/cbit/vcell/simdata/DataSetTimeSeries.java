@@ -1,15 +1,20 @@
 package cbit.vcell.simdata;
 
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.vcell.util.document.VCDataIdentifier;
 
+import cbit.vcell.parser.ExpressionException;
 import cbit.vcell.solver.ode.ODESimData;
 import cbit.vcell.util.ColumnDescription;
 
 public class DataSetTimeSeries implements Serializable {
 
+	public static final String TIME_VARIABLE_NAME = "t";
+
 	public interface DataSetPostProcessData{
 		public double[] getTimes();
 		public String[] getVariableStatNames();
@@ -31,45 +36,142 @@ public class DataSetTimeSeries implements Serializable {
 	}
 	
 	public DataSetTimeSeries(VCDataIdentifier vcdataID, ODEDataBlock odeDataBlock) {
+		this(vcdataID, odeDataBlock, null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1);
+	}
+
+	/**
+	 * the time variable and the named variables (all if null) of the ODE data at the time points selected as in
+	 * {@link #select(String[], double, double, int, int)}, reading only the selected rows of the selected columns.
+	 */
+	public DataSetTimeSeries(VCDataIdentifier vcdataID, ODEDataBlock odeDataBlock, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) {
 		this.vcDataIdentifier = vcdataID;
-		this.varDatas = getVarDatas(odeDataBlock);
+		this.varDatas = getVarDatas(odeDataBlock, variableNames, startTime, endTime, startIndex, maxCount);
 	}
 
 	public DataSetTimeSeries(VCDataIdentifier vcdataID, DataSetPostProcessData dataProcessingOutput) {
+		this(vcdataID, dataProcessingOutput, null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1);
+	}
+
+	/**
+	 * the time variable and the named variables (all if null) of the post processing data at the time points selected as in
+	 * {@link #select(String[], double, double, int, int)}, fetching only the values of the selected variables.
+	 */
+	public DataSetTimeSeries(VCDataIdentifier vcdataID, DataSetPostProcessData dataProcessingOutput, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) {
 		this.vcDataIdentifier = vcdataID;
-		this.varDatas = getVarDatas(dataProcessingOutput);
+		this.varDatas = getVarDatas(dataProcessingOutput, variableNames, startTime, endTime, startIndex, maxCount);
+	}
+
+	private DataSetTimeSeries(VCDataIdentifier vcdataID, VarData[] varDatas) {
+		this.vcDataIdentifier = vcdataID;
+		this.varDatas = varDatas;
+	}
+
+	/**
+	 * subset of this time series: the time variable and the named variables (all if null) at the time points
+	 * within [startTime,endTime], skipping the first 'startIndex' of them and keeping at most 'maxCount' (all if negative).
+	 */
+	public DataSetTimeSeries select(String[] variableNames, double startTime, double endTime, int startIndex, int maxCount) {
+		VarData timeData = null;
+		for (VarData varData : varDatas){
+			if (varData.name.equals(TIME_VARIABLE_NAME)){
+				timeData = varData;
+			}
+		}
+		int numRows = (varDatas.length > 0) ? varDatas[0].values.length : 0;
+		int[] rows = selectRows(numRows, (timeData != null) ? DoubleBuffer.wrap(timeData.values) : null, startTime, endTime, startIndex, maxCount);
+		ArrayList<VarData> selectedVarDatas = new ArrayList<VarData>();
+		for (VarData varData : varDatas){
+			if (varData != timeData && !isSelected(varData.name, variableNames)){
+				continue;
+			}
+			selectedVarDatas.add(new VarData(varData.name, selectValues(DoubleBuffer.wrap(varData.values), rows)));
+		}
+		return new DataSetTimeSeries(vcDataIdentifier, selectedVarDatas.toArray(new VarData[0]));
+	}
+
+	/**
+	 * indices of the rows with times (if any) within [startTime,endTime], skipping the first 'startIndex' of them and keeping
+	 * at most 'maxCount' (all if negative).
+	 */
+	private static int[] selectRows(int numRows, DoubleBuffer times, double startTime, double endTime, int startIndex, int maxCount) {
+		int[] rows = new int[numRows];
+		int numSelected = 0;
+		int numInRange = 0;
+		for (int i = 0; i < numRows; i++){
+			if (times != null && (times.get(i) < startTime || times.get(i) > endTime)){
+				continue;
+			}
+			if (numInRange++ < startIndex){
+				continue;
+			}
+			if (maxCount >= 0 && numSelected >= maxCount){
+				break;
+			}
+			rows[numSelected++] = i;
+		}
+		return Arrays.copyOf(rows, numSelected);
+	}
+
+	private static double[] selectValues(DoubleBuffer column, int[] rows) {
+		double[] values = new double[rows.length];
+		for (int i = 0; i < rows.length; i++){
+			values[i] = column.get(rows[i]);
+		}
+		return values;
+	}
+
+	private static boolean isSelected(String name, String[] variableNames) {
+		return variableNames == null || Arrays.asList(variableNames).contains(name);
 	}
 	
-	private VarData[] getVarDatas(ODEDataBlock odeDataBlock){
-		ArrayList<VarData> valValuesArray = new ArrayList<VarData>();
+	private VarData[] getVarDatas(ODEDataBlock odeDataBlock, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount){
 		ODESimData odeSimData = odeDataBlock.getODESimData();
-		int rowCount = odeSimData.getRowCount();
-		for (ColumnDescription column : odeSimData.getColumnDescriptions()){
-			VarData values = new VarData(column.getName(),new double[rowCount]);
-			valValuesArray.add(values);
-		}
-		for (int i=0; i<rowCount; i++){
-			double[] rowData = odeSimData.getRow(i);
-			for (int j=0; j<rowData.length; j++){
-				valValuesArray.get(j).values[i] = rowData[j];
+		int timeColumn = odeSimData.findColumn(TIME_VARIABLE_NAME);
+		DoubleBuffer times = (timeColumn >= 0) ? getColumn(odeSimData, timeColumn) : null;
+		int[] rows = selectRows(odeSimData.getRowCount(), times, startTime, endTime, startIndex, maxCount);
+		ArrayList<VarData> valValuesArray = new ArrayList<VarData>();
+		ColumnDescription[] columns = odeSimData.getColumnDescriptions();
+		for (int c = 0; c < columns.length; c++){
+			if (c != timeColumn && !isSelected(columns[c].getName(), variableNames)){
+				continue;
 			}
+			valValuesArray.add(new VarData(columns[c].getName(), selectValues(getColumn(odeSimData, c), rows)));
 		}
 		return valValuesArray.toArray(new VarData[0]);
 	}
 
-	private VarData[] getVarDatas(DataSetPostProcessData dataProcessingOutput){
+	/**
+	 * data columns are read in place, function columns are evaluated.
+	 */
+	private static DoubleBuffer getColumn(ODESimData odeSimData, int c){
+		if (c < odeSimData.getDataColumnCount()){
+			return odeSimData.getColumnView(c);
+		}
+		try {
+			return DoubleBuffer.wrap(odeSimData.extractColumn(c));
+		} catch (ExpressionException e) {
+			throw new RuntimeException("failed to evaluate function "+odeSimData.getColumnDescriptions(c).getName()+": "+e.getMessage(), e);
+		}
+	}
+
+	private VarData[] getVarDatas(DataSetPostProcessData dataProcessingOutput, String[] variableNames, double startTime, double endTime, int startIndex, int maxCount){
 		ArrayList<VarData> varValuesArray = new ArrayList<VarData>();
+		double[] times = dataProcessingOutput.getTimes();
+		int[] rows = selectRows(times.length, DoubleBuffer.wrap(times), startTime, endTime, startIndex, maxCount);
 		//
 		// add time as a variable
 		//
-		VarData timeValues = new VarData("t",dataProcessingOutput.getTimes());
+		VarData timeValues = new VarData(TIME_VARIABLE_NAME,selectValues(DoubleBuffer.wrap(times), rows));
 		varValuesArray.add(timeValues);
 		//
 		// add the variable data
 		//
 		String[] varNames = dataProcessingOutput.getVariableStatNames();
 		for (String varName : varNames) {
-			VarData values = new VarData(varName,dataProcessingOutput.getVariableStatValues(varName));
+			if (!isSelected(varName, variableNames)){
+				continue;
+			}
+			VarData values = new VarData(varName,selectValues(DoubleBuffer.wrap(dataProcessingOutput.getVariableStatValues(varName)), rows));
 			varValuesArray.add(values);
 		}
 		return varValuesArray.toArray(new VarData[0]);
@@ -573,12 +573,16 @@ public ODEDataBlock getODEDataBlock() throws DataAccessException {
 	}
 
 	// Populating new dataset
+	double[][] tempRows = new double[resultSetList.length][];
+	for (int j = 0; j < resultSetList.length; j++) {
+		tempRows[j] = new double[resultSetList[j].getDataColumnCount()];
+	}
+	double[] newRow = new double[combinedODESolverRSet.getDataColumnCount()];
 	for (int i = 0; i < times.length; i++) {
-		double[] newRow = new double[combinedODESolverRSet.getDataColumnCount()];
 		int indx = 0;
 		for (int j = 0; j < resultSetList.length; j++) {
 			ODESolverResultSet resultSet = resultSetList[j];
-			double[] tempRow = resultSet.getRow(i);
+			double[] tempRow = resultSet.getRow(i, tempRows[j]);
 			int startIndx = 0;
 			int arrayLen = tempRow.length;
 			if (j > 0) {
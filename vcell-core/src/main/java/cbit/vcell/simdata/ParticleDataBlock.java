@@ -11,20 +11,17 @@
 package cbit.vcell.simdata;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.vcell.util.CommentStringTokenizer;
 import org.vcell.util.Coordinate;
 import org.vcell.util.DataAccessException;
 import org.vcell.util.VCAssert;
@@ -37,15 +34,14 @@ public class ParticleDataBlock implements java.io.Serializable {
 
 	private ParticleDataInfo particleDataInfo = null;
 	/**
-	 * species -> coordinates map
+	 * species -> packed coordinates (x,y,z of each particle)
 	 */
-	private Map<String, List<Coordinate> > cMap;
+	private Map<String, double[]> xyzMap;
 
 /**
  * SimDataBlock constructor comment.
  */
 public ParticleDataBlock(User user, String simIdentifier, double time, File file, File zipFile) throws DataAccessException, IOException {
-	cMap =  new HashMap<>();
 	long timeStamp = read(file, zipFile);
 	this.particleDataInfo = new ParticleDataInfo(user,simIdentifier,time,timeStamp);
 }
@@ -55,22 +51,55 @@ public ParticleDataBlock(User user, String simIdentifier, double time, File file
  * @return unmodifiable Set
  */
 public Set<String> getSpecies( ) {
-	return Collections.unmodifiableSet( cMap.keySet() );
+	return Collections.unmodifiableSet( xyzMap.keySet() );
 }
 
 /**
  * coordinates of particles of specified species
  * @param speciesName
- * @return unmodifiable List
+ * @return unmodifiable List (a view of {@link #getXYZ(String)}, the Coordinates are created on access)
  * @throws IllegalArgumentException if speciesName not in {@link #getSpecies()}
  */
 public List<Coordinate> getCoordinates(String speciesName) {
-	List<Coordinate> lst = cMap.get(speciesName);
-	if (lst != null) {
-		return Collections.unmodifiableList( lst );
+	final double[] xyz = getXYZ(speciesName);
+	return new AbstractList<Coordinate>() {
+		@Override
+		public Coordinate get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size());
+			}
+			return new Coordinate(xyz[3 * index], xyz[3 * index + 1], xyz[3 * index + 2]);
+		}
+		@Override
+		public int size() {
+			return xyz.length / 3;
+		}
+	};
+}
+
+/**
+ * packed coordinates of particles of specified species
+ * @param speciesName
+ * @return x,y,z of each particle, must not be changed
+ * @throws IllegalArgumentException if speciesName not in {@link #getSpecies()}
+ */
+public double[] getXYZ(String speciesName) {
+	double[] xyz = xyzMap.get(speciesName);
+	if (xyz != null) {
+		return xyz;
 	}
 	throw new IllegalArgumentException("Invalid speciesName " + speciesName);
 }
+
+/**
+ * @param speciesName
+ * @return number of particles of specified species
+ * @throws IllegalArgumentException if speciesName not in {@link #getSpecies()}
+ */
+public int getParticleCount(String speciesName) {
+	return getXYZ(speciesName).length / 3;
+}
+
 /**
  * This method was created in VisualAge.
  * @return cbit.vcell.server.SimDataInfo
@@ -79,11 +108,15 @@ public ParticleDataInfo getParticleDataInfo() {
 	return particleDataInfo;
 }
 /**
- * not really implemented
+ * size of the packed coordinates
  * @return long
  */
 public long getSizeInBytes() {
-	return 1;
+	long size = 0;
+	for (double[] xyz : xyzMap.values()) {
+		size += 8L * xyz.length;
+	}
+	return Math.max(1, size);
 }
 /**
  * This method was created in VisualAge.
@@ -93,22 +126,6 @@ public long getTimeStamp() {
 	return particleDataInfo.getTimeStamp();
 }
 
-/**
- * lazy get ( create) list for species name
- * @param speciesName not null
- * @return new or existing list
- */
-private List<Coordinate> fetch(String speciesName) {
-	VCAssert.assertValid(speciesName);
-	List<Coordinate> lst = cMap.get(speciesName);
-	if (lst != null) {
-		return lst;
-	}
-	lst = new ArrayList<>();
-	cMap.put(speciesName, lst);
-	return lst;
-}
-
 /**
  * read data from either existing file or zipped entry in zipfile
  * @param file
@@ -120,10 +137,11 @@ private List<Coordinate> fetch(String speciesName) {
 private long read(File file, File zipFile) throws DataAccessException, IOException {
 	VCAssert.assertValid(file);
 
-	List<String> lines;
 	long timeStamp;
 	if (file.exists( )) {
-		lines = FileUtils.readLines(file);
+		try (InputStream is = new FileInputStream(file)) {
+			xyzMap = ParticleDataReader.read(is);
+		}
 		timeStamp = file.lastModified();
 	}
 	else {
@@ -131,8 +149,9 @@ private long read(File file, File zipFile) throws DataAccessException, IOExcepti
 		try (ZipFile zf = new ZipFile(zipFile)) {
 			ZipEntry entry = zf.getEntry(file.getName( ));
 			if (entry != null) {
-				InputStream is = zf.getInputStream(entry);
-				lines = IOUtils.readLines(is);
+				try (InputStream is = zf.getInputStream(entry)) {
+					xyzMap = ParticleDataReader.read(is);
+				}
 				timeStamp= entry.getTime();
 			}
 			else {
@@ -141,30 +160,6 @@ private long read(File file, File zipFile) throws DataAccessException, IOExcepti
 
 		}
 	}
-	readParticleData(lines);
 	return timeStamp;
 }
-
-private void readParticleData(List<String> lines) throws DataAccessException {
-	String lastSpecies = null;
-	List<Coordinate> working = null;
-
-	for (String line: lines) {
-		try {
-			CommentStringTokenizer st = new CommentStringTokenizer(line);
-			String sp = st.nextToken();
-			if (!sp.equals(lastSpecies)) {
-				lastSpecies = sp;
-				working = fetch(sp);
-			}
-			double x = Double.parseDouble(st.nextToken());
-			double y = Double.parseDouble(st.nextToken());
-			double z = Double.parseDouble(st.nextToken());
-			Coordinate c = new Coordinate(x,y,z);
-			working.add(c);
-		} catch (Exception exc) {
-			throw new DataAccessException("Particle data file invalid. " + exc.getMessage());
-		}
-	}
-}
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.simdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.vcell.util.DataAccessException;
+
+/**
+ * Streaming parser of Smoldyn particle output ("species x y z [...]" per line, // comments), straight from the bytes of the
+ * stream into packed per-species xyz arrays: no line list, no tokenizer and no object per particle.
+ * <p>
+ * Numbers with at most 15 significant digits and a small decimal exponent (what Smoldyn writes) are converted exactly
+ * with a single multiplication or division by a power of ten, anything else by {@link Double#parseDouble(String)}.
+ */
+class ParticleDataReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final InputStream is;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private byte[] token = new byte[64];
+	private int tokenLength = 0;
+	private int lineNumber = 1;
+
+	/**
+	 * xyz of one species while reading.
+	 */
+	private static class PackedCoordinates {
+		double[] xyz = new double[3 * 16];
+		int size = 0;
+
+		void add(double x, double y, double z) {
+			if (size + 3 > xyz.length) {
+				xyz = Arrays.copyOf(xyz, 2 * xyz.length);
+			}
+			xyz[size++] = x;
+			xyz[size++] = y;
+			xyz[size++] = z;
+		}
+	}
+
+	private ParticleDataReader(InputStream is) {
+		this.is = is;
+	}
+
+	/**
+	 * @return species name -> x,y,z of each particle (in the order of the file).
+	 */
+	static Map<String, double[]> read(InputStream is) throws IOException, DataAccessException {
+		return new ParticleDataReader(is).read();
+	}
+
+	private Map<String, double[]> read() throws IOException, DataAccessException {
+		LinkedHashMap<String, PackedCoordinates> speciesMap = new LinkedHashMap<>();
+		byte[] lastSpecies = new byte[0];
+		PackedCoordinates working = null;
+		while (nextToken()) {
+			if (working == null || !isToken(lastSpecies)) {
+				lastSpecies = Arrays.copyOf(token, tokenLength);
+				String species = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+				working = speciesMap.get(species);
+				if (working == null) {
+					working = new PackedCoordinates();
+					speciesMap.put(species, working);
+				}
+			}
+			double x = nextNumber();
+			double y = nextNumber();
+			double z = nextNumber();
+			working.add(x, y, z);
+			skipLine();
+		}
+		LinkedHashMap<String, double[]> xyzMap = new LinkedHashMap<>();
+		for (Map.Entry<String, PackedCoordinates> entry : speciesMap.entrySet()) {
+			PackedCoordinates packed = entry.getValue();
+			xyzMap.put(entry.getKey(), Arrays.copyOf(packed.xyz, packed.size));
+		}
+		return xyzMap;
+	}
+
+	/**
+	 * @return next byte or -1 at the end of the stream.
+	 */
+	private int nextByte() throws IOException {
+		if (position == limit) {
+			limit = is.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		// unsigned, a 0xFF byte must not look like the end of the stream
+		return buffer[position++] & 0xFF;
+	}
+
+	private void pushBack() {
+		position--;
+	}
+
+	/**
+	 * reads the first token of the next line which has one (blank and comment lines are skipped).
+	 * @return false at the end of the stream.
+	 */
+	private boolean nextToken() throws IOException {
+		while (true) {
+			int b = nextByte();
+			if (b == -1) {
+				return false;
+			} else if (b == '\n') {
+				lineNumber++;
+			} else if (b == '/' && peekComment()) {
+				skipLine();
+			} else if (!isWhitespace(b)) {
+				readToken(b);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * reads the next token of the current line as a number.
+	 */
+	private double nextNumber() throws IOException, DataAccessException {
+		int b = nextByte();
+		while (b != -1 && b != '\n' && isWhitespace(b)) {
+			b = nextByte();
+		}
+		if (b == -1 || b == '\n' || (b == '/' && peekComment())) {
+			throw new DataAccessException("Particle data file invalid. line "+lineNumber+": missing coordinate");
+		}
+		readToken(b);
+		return parseNumber();
+	}
+
+	private boolean peekComment() throws IOException {
+		int b = nextByte();
+		if (b == '/') {
+			return true;
+		}
+		if (b != -1) {
+			pushBack();
+		}
+		return false;
+	}
+
+	private void readToken(int first) throws IOException {
+		tokenLength = 0;
+		int b = first;
+		while (b != -1 && !isWhitespace(b) && b != '\n') {
+			if (tokenLength == token.length) {
+				token = Arrays.copyOf(token, 2 * token.length);
+			}
+			token[tokenLength++] = (byte)b;
+			b = nextByte();
+		}
+		if (b == '\n') {
+			pushBack();
+		}
+	}
+
+	/**
+	 * skips to the start of the next line (other columns and comments).
+	 */
+	private void skipLine() throws IOException {
+		int b = nextByte();
+		while (b != -1 && b != '\n') {
+			b = nextByte();
+		}
+		if (b == '\n') {
+			lineNumber++;
+		}
+	}
+
+	private boolean isToken(byte[] bytes) {
+		if (bytes.length != tokenLength) {
+			return false;
+		}
+		for (int i = 0; i < tokenLength; i++) {
+			if (bytes[i] != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private double parseNumber() throws DataAccessException {
+		int i = 0;
+		boolean bNegative = false;
+		if (token[0] == '-' || token[0] == '+') {
+			bNegative = token[0] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean bAnyDigit = false;
+		boolean bFast = true;
+		for (; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+			bAnyDigit = true;
+			if (mantissa != 0 || token[i] != '0') {
+				if (++digits > MAX_FAST_DIGITS) {
+					bFast = false;
+				}
+				mantissa = 10 * mantissa + (token[i] - '0');
+			}
+		}
+		if (i < tokenLength && token[i] == '.') {
+			for (i++; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+				bAnyDigit = true;
+				if (mantissa != 0 || token[i] != '0') {
+					if (++digits > MAX_FAST_DIGITS) {
+						bFast = false;
+					}
+					mantissa = 10 * mantissa + (token[i] - '0');
+				}
+				exponent--;
+			}
+		}
+		if (bAnyDigit && i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+			i++;
+			boolean bNegativeExponent = false;
+			if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+				bNegativeExponent = token[i] == '-';
+				i++;
+			}
+			int start = i;
+			int explicitExponent = 0;
+			for (; i < tokenLength && token[i] >= '0' && token[i] <= '9' && explicitExponent < 10000; i++) {
+				explicitExponent = 10 * explicitExponent + (token[i] - '0');
+			}
+			if (i == start) {
+				bFast = false;
+			}
+			exponent += bNegativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (bFast && bAnyDigit && i == tokenLength && Math.abs(exponent) < POWERS_OF_TEN.length) {
+			double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+			return bNegative ? -value : value;
+		}
+		String number = new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw new DataAccessException("Particle data file invalid. line "+lineNumber+": "+e.getMessage(), e);
+		}
+	}
+}
@@ -24,12 +24,16 @@ public interface SimDataConstants {
 	public static final String ODE_DATA_IDENTIFIER = "ODEData logfile";
 	public static final String IDA_DATA_IDENTIFIER = "IDAData logfile";
 	public static final String NFSIM_DATA_IDENTIFIER = "NFSimData logfile";
+	public static final String ENSEMBLE_DATA_IDENTIFIER = "ODEEnsembleData logfile";
 	public static final String NETCDF_DATA_IDENTIFIER = "NetCDFData logfile";//stoch
 	public static final String SIMPLE_ODE_DATA_FORMAT_ID = "SimpleODEData binary format version 1";
 	public static final String GENERIC_ODE_DATA_FORMAT_ID = "GenericODEData binary format version 1";
 	public static final String COMPACT_ODE_DATA_FORMAT_ID = "CompactODEData binary format version 1";
+	// compact layout with the data stored column by column (not the ColumnarODEDataFile format of .ida and ensemble files)
+	public static final String COMPACT_ODE_DATA_FORMAT_V2_ID = "CompactODEData binary format version 2";
 	public static final String NETCDF_DATA_FORMAT_ID = "NetCDFData binary format version 2"; //netcdf for hybrid stoch
 	public static final String IDA_DATA_FORMAT_ID = "IDAData text format version 1";
+	public static final String ENSEMBLE_DATA_FORMAT_ID = "ODEEnsembleData columnar format version 1";
 	public static final int STATE_VARIABLE = 1;
 	public static final String NO_VARIABLE = "";	
 	public static final double NO_TIME = -1;	
@@ -42,6 +46,7 @@ public interface SimDataConstants {
 	public static final String PDE_DATA_EXTENSION = ".sim";
 	public static final String ODE_DATA_EXTENSION = ".ode";
 	public static final String IDA_DATA_EXTENSION = ".ida";
+	public static final String ENSEMBLE_DATA_EXTENSION = ".ensemble";
 	public static final String NETCDF_DATA_EXTENSION = ".nc";
 	public static final String IDAINPUT_DATA_EXTENSION = ".idaInput";
 	public static final String CVODEINPUT_DATA_EXTENSION = ".cvodeInput";
@@ -71,6 +76,13 @@ public interface SimDataConstants {
 	
 	public static final String JAVA_INPUT_EXTENSION = ".javaInput";
 	public static final String HISTOGRAM_INDEX_NAME = "TrialNo";
+	// statistics columns of averaged multiple trial results (appended to the variable name)
+	public static final String MULTI_TRIAL_STDEV_SUFFIX = "_SD";
+	public static final String MULTI_TRIAL_CI_LOWER_SUFFIX = "_CI95_lower";
+	public static final String MULTI_TRIAL_CI_UPPER_SUFFIX = "_CI95_upper";
+	public static final String MULTI_TRIAL_QUANTILE_SUFFIX = "_Q";
+	// job columns of parameter scan (ensemble) results, followed by the job index
+	public static final String ENSEMBLE_JOB_SUFFIX = "_job";
 
 	public static final int PDE_DATA = 0;
 	public static final int ODE_DATA = 1;
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.simdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.vcell.util.Ping;
+import org.vcell.util.Pingable;
+
+/**
+ * Random access to PDE .sim files through memory mapped, read-only buffers.
+ * <p>
+ * Plain .sim files are mapped directly. Inside a simulation zip only entries written with the STORED method
+ * can be mapped (the solvers store them uncompressed), for those the entry data offsets are indexed once per zip
+ * and the FileChannel is kept open in a small LRU cache keyed by zip file, so reading a variable at a time point
+ * does not parse the zip central directory again.  Callers fall back to the stream path when null is returned.
+ * Channels not used for IDLE_TIMEOUT_MS are closed by a reaper thread, and callers deleting simulation data
+ * close the channels of its zips first (see {@link #close(File)}).
+ * <p>
+ * A mapping holds address space and (on Windows) a lock on the file until the buffer is garbage collected, so callers
+ * release each buffer with {@link #unmap(ByteBuffer)} as soon as they are done with it and must not touch it afterwards.
+ * <p>
+ * .sim files are written big-endian (as read by DataInputStream), the returned buffers have that order.
+ */
+final class SimDataFileMapper {
+
+	private static final int MAX_OPEN_ZIP_FILES = 16;
+	static final long IDLE_TIMEOUT_MS = 60000;
+
+	private static final Map<File, ZipHandle> openZipHandles = new LinkedHashMap<File, ZipHandle>(MAX_OPEN_ZIP_FILES, 0.75f, true);
+	private static Ping idleReaper = null;
+	private static final Unmapper unmapper = createUnmapper();
+
+	private interface Unmapper {
+		void unmap(ByteBuffer buffer) throws Exception;
+	}
+
+	/**
+	 * open channel and STORED entry index of one zip file. The zip is re-indexed when its length or
+	 * modification time changes (running simulations keep adding entries).
+	 */
+	private static final class ZipHandle {
+		private final File zipFile;
+		private final long length;
+		private final long lastModified;
+		private final Map<String, long[]> storedEntries = new HashMap<String, long[]>();
+		private FileChannel channel;
+		private volatile long lastAccessTime = System.currentTimeMillis();
+
+		private ZipHandle(File zipFile) throws IOException {
+			this.zipFile = zipFile;
+			this.length = zipFile.length();
+			this.lastModified = zipFile.lastModified();
+			ZipFile zipZipFile = DataSet.openZipFile(zipFile);
+			try {
+				Enumeration<ZipArchiveEntry> entries = zipZipFile.getEntries();
+				while (entries.hasMoreElements()){
+					ZipArchiveEntry entry = entries.nextElement();
+					if (entry.getMethod() == ZipEntry.STORED && !entry.getGeneralPurposeBit().usesEncryption()
+							&& entry.getDataOffset() >= 0 && entry.getSize() >= 0 && entry.getSize() <= Integer.MAX_VALUE){
+						storedEntries.put(entry.getName(), new long[] { entry.getDataOffset(), entry.getSize() });
+					}
+				}
+			} finally {
+				zipZipFile.close();
+			}
+			this.channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+		}
+
+		private boolean isCurrent() {
+			return zipFile.length() == length && zipFile.lastModified() == lastModified;
+		}
+
+		private synchronized ByteBuffer map(String entryName) throws IOException {
+			long[] offsetAndSize = storedEntries.get(entryName);
+			if (offsetAndSize == null){
+				return null;
+			}
+			if (channel == null){
+				throw new ClosedChannelException();
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, offsetAndSize[0], offsetAndSize[1]).order(ByteOrder.BIG_ENDIAN);
+		}
+
+		private synchronized void close() {
+			if (channel != null){
+				try {
+					channel.close();
+				} catch (IOException e){
+					e.printStackTrace(System.out);
+				}
+				channel = null;
+			}
+		}
+	}
+
+	private SimDataFileMapper() {
+	}
+
+	/**
+	 * maps the zip entry 'entryName' of 'zipFile'.
+	 * @return the entry contents or null if the entry is missing, compressed or too large to map.
+	 */
+	static ByteBuffer map(File zipFile, String entryName) throws IOException {
+		File key = zipFile.getAbsoluteFile();
+		for (int attempt = 0; attempt < 2; attempt++){
+			ZipHandle zipHandle = getZipHandle(key);
+			try {
+				return zipHandle.map(entryName);
+			} catch (ClosedChannelException e){
+				// evicted by another thread between lookup and map, open again.
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * maps a plain .sim file.
+	 * @return the file contents or null if the file is too large to map.
+	 */
+	static ByteBuffer map(File simFile) throws IOException {
+		FileChannel channel = FileChannel.open(simFile.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE){
+				return null;
+			}
+			// the mapping stays valid after the channel is closed.
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * releases a buffer returned by one of the map methods right away instead of when it is garbage collected.
+	 * The buffer (and any view of it) must not be used afterwards. Does nothing for null or if the JVM does not allow it.
+	 */
+	static void unmap(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || unmapper == null){
+			return;
+		}
+		try {
+			unmapper.unmap(buffer);
+		} catch (Exception e){
+			// left to the garbage collector
+			e.printStackTrace(System.out);
+		}
+	}
+
+	static boolean canUnmap() {
+		return unmapper != null;
+	}
+
+	private static Unmapper createUnmapper() {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafeField.setAccessible(true);
+			final Object theUnsafe = theUnsafeField.get(null);
+			final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			return buffer -> invokeCleaner.invoke(theUnsafe, buffer);
+		} catch (Exception e){
+			// Java 8
+		}
+		try {
+			final Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null){
+					cleanMethod.invoke(cleaner);
+				}
+			};
+		} catch (Exception e){
+			System.out.println("SimDataFileMapper: mapped buffers are released by the garbage collector ("+e.getMessage()+")");
+			return null;
+		}
+	}
+
+	/**
+	 * bulk read of 'count' doubles starting at byte 'offset' of a mapped .sim buffer.
+	 */
+	static double[] readDoubles(ByteBuffer buffer, long offset, int count) throws IOException {
+		if (offset < 0 || offset + 8L * count > buffer.limit()){
+			throw new IOException("data block [" + offset + ", " + (offset + 8L * count) + ") outside of .sim data of length " + buffer.limit());
+		}
+		ByteBuffer dup = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		dup.position((int)offset);
+		double[] data = new double[count];
+		dup.asDoubleBuffer().get(data);
+		return data;
+	}
+
+	/**
+	 * stream view of a mapped .sim buffer, used to parse the file and block headers.
+	 */
+	static InputStream asInputStream(ByteBuffer buffer) {
+		final ByteBuffer dup = buffer.duplicate();
+		dup.position(0);
+		return new InputStream() {
+			@Override
+			public int read() {
+				return dup.hasRemaining() ? (dup.get() & 0xff) : -1;
+			}
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len == 0){
+					return 0;
+				}
+				if (!dup.hasRemaining()){
+					return -1;
+				}
+				int n = Math.min(len, dup.remaining());
+				dup.get(b, off, n);
+				return n;
+			}
+			@Override
+			public long skip(long n) {
+				int skipped = (int)Math.max(0, Math.min(n, dup.remaining()));
+				dup.position(dup.position() + skipped);
+				return skipped;
+			}
+			@Override
+			public int available() {
+				return dup.remaining();
+			}
+		};
+	}
+
+	/**
+	 * closes the cached channel of 'zipFile' (if any), e.g. before the zip is deleted or rewritten.
+	 */
+	static void close(File zipFile) {
+		ZipHandle zipHandle;
+		synchronized (openZipHandles){
+			zipHandle = openZipHandles.remove(zipFile.getAbsoluteFile());
+		}
+		if (zipHandle != null){
+			zipHandle.close();
+		}
+	}
+
+	/**
+	 * closes the cached channels not used for the last 'idleMillis' milliseconds.
+	 */
+	static void closeIdle(long idleMillis) {
+		List<ZipHandle> idleHandles = new ArrayList<ZipHandle>();
+		long now = System.currentTimeMillis();
+		synchronized (openZipHandles){
+			Iterator<ZipHandle> iter = openZipHandles.values().iterator();
+			while (iter.hasNext()){
+				ZipHandle zipHandle = iter.next();
+				if (now - zipHandle.lastAccessTime >= idleMillis){
+					iter.remove();
+					idleHandles.add(zipHandle);
+				}
+			}
+		}
+		for (ZipHandle zipHandle : idleHandles){
+			zipHandle.close();
+		}
+	}
+
+	static int getOpenZipFileCount() {
+		synchronized (openZipHandles){
+			return openZipHandles.size();
+		}
+	}
+
+	private static ZipHandle getZipHandle(File key) throws IOException {
+		ZipHandle stale = null;
+		synchronized (openZipHandles){
+			ZipHandle zipHandle = openZipHandles.get(key);
+			if (zipHandle != null && zipHandle.isCurrent()){
+				zipHandle.lastAccessTime = System.currentTimeMillis();
+				return zipHandle;
+			}
+			stale = zipHandle;
+		}
+		if (stale != null){
+			stale.close();
+		}
+		// index outside of the lock, concurrent openers of the same zip race harmlessly (last one is cached).
+		ZipHandle zipHandle = new ZipHandle(key);
+		ZipHandle replaced;
+		synchronized (openZipHandles){
+			if (idleReaper == null){
+				idleReaper = new Ping(new Pingable() {
+					public void ping() {
+						closeIdle(IDLE_TIMEOUT_MS);
+					}
+				}, IDLE_TIMEOUT_MS / 2, "SimDataFileMapperReaper");
+				idleReaper.start();
+			}
+			replaced = openZipHandles.put(key, zipHandle);
+			Iterator<ZipHandle> iter = openZipHandles.values().iterator();
+			while (openZipHandles.size() > MAX_OPEN_ZIP_FILES){
+				ZipHandle eldest = iter.next();
+				iter.remove();
+				eldest.close();
+			}
+		}
+		if (replaced != null && replaced != stale){
+			replaced.close();
+		}
+		return zipHandle;
+	}
+}
@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.zip.ZipEntry;
 
@@ -240,9 +241,24 @@ private void getNextDataAtCurrentTime0(double[][] returnValues) throws IOExcepti
 
 	try{
 
-		//Setup the proper DataInputStream
+		//Stored zip entries and plain .sim files are mapped, values are read directly at their offsets
 		String currentSimDataFileName = simDataFileNames[masterTimeIndex];
-		if(zipFilenNames != null && zipFilenNames[masterTimeIndex] != null){
+		ByteBuffer mappedSimData = null;
+		if(wantsThisTime[masterTimeIndex]){
+			if(zipFilenNames != null && zipFilenNames[masterTimeIndex] != null){
+				mappedSimData = SimDataFileMapper.map(new File(zipFilenNames[masterTimeIndex]), currentSimDataFileName);
+			}else{
+				mappedSimData = SimDataFileMapper.map(new File(currentSimDataFileName));
+			}
+		}
+		//Otherwise setup the proper DataInputStream
+		if(mappedSimData != null){
+			try{
+				readMappedDataAtCurrentTime(mappedSimData, returnValues);
+			}finally{
+				SimDataFileMapper.unmap(mappedSimData);
+			}
+		}else if(zipFilenNames != null && zipFilenNames[masterTimeIndex] != null){
 			if(currentZipFile == null || !currentZipFileName.equals(zipFilenNames[masterTimeIndex])){
 				if(currentZipFile != null){
 					currentZipFile.close();
@@ -267,7 +283,7 @@ private void getNextDataAtCurrentTime0(double[][] returnValues) throws IOExcepti
 //long entryTime = System.currentTimeMillis();
 //System.out.println("Time for Entry="+(entryTime-beginTime));
 
-		if(wantsThisTime[masterTimeIndex]){
+		if(mappedSimData == null && wantsThisTime[masterTimeIndex]){
 			masterStreamIndex = 0;
 			// Read the SimDataHeader and SimdataBlock Info
 			FileHeader fileHeader = readFileHeader(dis);//This will fail if mis-aligned in stream
@@ -344,6 +360,45 @@ private void getNextDataAtCurrentTime0(double[][] returnValues) throws IOExcepti
 }
 
 
+/**
+ * reads the wanted variable values of one time point from a mapped .sim file.
+ * @param mappedSimData the whole .sim file (see SimDataFileMapper)
+ */
+private void readMappedDataAtCurrentTime(ByteBuffer mappedSimData, double[][] returnValues) throws IOException, DataAccessException {
+	DataInputStream headerStream = new DataInputStream(SimDataFileMapper.asInputStream(mappedSimData));
+	FileHeader fileHeader = new FileHeader();
+	fileHeader.read(headerStream);
+	DataBlock[] dataBlockList = new DataBlock[fileHeader.numBlocks];
+	for (int j = 0; j < fileHeader.numBlocks; j++) {
+		dataBlockList[j] = new DataBlock();
+		dataBlockList[j].readBlockHeader(headerStream);
+	}
+	int variableFoundCount = 0;
+	long limit = mappedSimData.limit();
+	for(int j=0;j<dataBlockList.length;j+= 1){
+		for(int k=0;k<varNames.length;k+= 1){
+			if(varNames[k].equals(dataBlockList[j].getVarName())){
+				variableFoundCount+= 1;
+				long dataOffset = dataBlockList[j].getDataOffset();
+				for(int l=0;l<varIndexes[k].length;l+= 1){
+					long position = dataOffset + sortedVarIndexes[k][l][INDEX_VALUE]*8;
+					if(position < 0 || position + 8 > limit){
+						throw new IOException("index "+sortedVarIndexes[k][l][INDEX_VALUE]+" of variable '"+varNames[k]+"' is outside of the .sim data");
+					}
+					int unSortedVarIndex = (int)sortedVarIndexes[k][l][INDEX_ORIGINAL_POSITION];
+					int reMappedVarNameIndex =  reMapper[k][unSortedVarIndex][0];
+					int reMappedVarIndexIndex = reMapper[k][unSortedVarIndex][1];
+					returnValues[reMappedVarNameIndex][reMappedVarIndexIndex] = mappedSimData.getDouble((int)position);
+				}
+			}
+		}
+	}
+	if(variableFoundCount != varNames.length){
+		throw new DataAccessException(this.getClass().getName()+".getNextDataAtCurrentTime: At least 1 variable name was not found in Datablock list");
+	}
+}
+
+
 /**
  * Insert the method's description here.
  * Creation date: (10/27/2004 6:43:22 PM)
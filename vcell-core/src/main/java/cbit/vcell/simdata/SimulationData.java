@@ -26,6 +26,12 @@ import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -74,6 +80,7 @@ import cbit.vcell.math.VariableType;
 import cbit.vcell.math.VolVariable;
 import cbit.vcell.messaging.server.SimulationTask;
 import cbit.vcell.mongodb.VCMongoMessage;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionException;
 import cbit.vcell.parser.SymbolTableEntry;
@@ -375,6 +382,15 @@ public class SimulationData extends VCData {
 
 
 	private static Logger lg = LogManager.getLogger(SimulationData.class);
+
+	/**
+	 * time series requests with fewer wanted time points are read on the calling thread
+	 */
+	private final static int MIN_PARALLEL_TIME_POINTS = 32;
+	private final static int MIN_TIME_POINTS_PER_TASK = 8;
+	private static ExecutorService timeSeriesExecutor = null;
+	private static int timeSeriesThreadCount = 0;
+
 	public static class SimDataAmplistorInfo {
 		private String amplistorVCellUsersRootPath;
 		private AmplistorCredential amplistorCredential;
@@ -577,6 +593,10 @@ public synchronized double[] getDataTimes() throws DataAccessException {
 			{
 				odeSimData = ODESimData.readIDADataFile(vcDataId, getODEDataFile(), odeKeepMost, getJobFunctionsFile());
 			}
+			else if (odeIdentifier.equals(ENSEMBLE_DATA_IDENTIFIER))
+			{
+				odeSimData = ODESimData.readEnsembleDataFile(vcDataId, getODEDataFile(), amplistorHelper.getJobIndex(), getJobFunctionsFile());
+			}
 			else if (odeIdentifier.equals(NETCDF_DATA_IDENTIFIER))
 			{
 				odeSimData = ODESimData.readNCDataFile(vcDataId, getODEDataFile(), getJobFunctionsFile());
@@ -645,7 +665,7 @@ public SymbolTableEntry getEntry(String identifier) {
  * @return cbit.vcell.math.Function
  * @param name java.lang.String
  */
-public AnnotatedFunction getFunction(OutputContext outputContext,String identifier) {
+public synchronized AnnotatedFunction getFunction(OutputContext outputContext,String identifier) {
 	try {
 		getFunctionDataIdentifiers(outputContext);
 	} catch (Exception ex) {
@@ -695,7 +715,7 @@ private void getFunctionDataIdentifiers(OutputContext outputContext) throws Data
  * @return cbit.vcell.math.Function
  * @param name java.lang.String
  */
-public AnnotatedFunction[] getFunctions(OutputContext outputContext) {
+public synchronized AnnotatedFunction[] getFunctions(OutputContext outputContext) {
 	try {
 		getFunctionDataIdentifiers(outputContext);
 	} catch (Exception ex) {
@@ -911,6 +931,10 @@ public synchronized ODEDataBlock getODEDataBlock() throws DataAccessException, I
 		{
 			odeSimData = ODESimData.readIDADataFile(vcDataId, getODEDataFile(), odeKeepMost, getJobFunctionsFile());
 		}
+		else if (odeIdentifier.equals(ENSEMBLE_DATA_IDENTIFIER))
+		{
+			odeSimData = ODESimData.readEnsembleDataFile(vcDataId, getODEDataFile(), amplistorHelper.getJobIndex(), getJobFunctionsFile());
+		}
 		else if (odeIdentifier.equals(NETCDF_DATA_IDENTIFIER))
 		{
 			odeSimData = ODESimData.readNCDataFile(vcDataId, getODEDataFile(), getJobFunctionsFile());
@@ -1236,7 +1260,7 @@ public synchronized SimDataBlock getSimDataBlock(OutputContext outputContext, St
  * @param user cbit.vcell.server.User
  * @param simID java.lang.String
  */
-synchronized double[][][] getSimDataTimeSeries0(
+double[][][] getSimDataTimeSeries0(
 		OutputContext outputContext,
 		String varNames[],
 		int[][] indexes,
@@ -1244,92 +1268,95 @@ synchronized double[][][] getSimDataTimeSeries0(
 		DataSetControllerImpl.SpatialStatsInfo spatialStatsInfo,
 		DataSetControllerImpl.ProgressListener progressListener) throws DataAccessException,IOException{
 
-
-	refreshLogFile();
-	try {
-		getFunctionDataIdentifiers(outputContext);
-	} catch (Exception ex) {
-		ex.printStackTrace(System.out);
-	}
-
-	int resultsCounter = 0;
-	for(int i=0;i<wantsThisTime.length;i+= 1){
-		if(wantsThisTime[i]){
-			resultsCounter+= 1;
+	// file lists are resolved under the object lock, the data files themselves are immutable once listed
+	final int resultsCounter;
+	final double[][][] results;
+	final String varNamesInDataSet[];
+	double[] tempDataTimes;
+	String[] tempZipFileNames;
+	String[] tempSimDataFileNames;
+	final boolean bChombo;
+	synchronized (this) {
+		refreshLogFile();
+		try {
+			getFunctionDataIdentifiers(outputContext);
+		} catch (Exception ex) {
+			ex.printStackTrace(System.out);
 		}
-	}
-	final int NUM_STATS = 4;//min,max,mean,wmean
-	//Create results buffer
-	double[][][] results = new double[resultsCounter][][];//[timePoints][varNames][dataIndexes]
 
-	for(int i=0;i<results.length;i+= 1){
-		results[i] = new double[varNames.length][];
-		for(int j=0;j<results[i].length;j+= 1){
-			if(spatialStatsInfo != null){
-				results[i][j] = new double[NUM_STATS];//min,max.mean,wmean
-			}else{
-				results[i][j] = new double[indexes[j].length];
+		int wantedCount = 0;
+		for(int i=0;i<wantsThisTime.length;i+= 1){
+			if(wantsThisTime[i]){
+				wantedCount+= 1;
 			}
 		}
-	}
-	try{
-		if(varNames.length > 0 && isPostProcessing(outputContext, varNames[0])){
-			double[] specificTimePoints = new double[results.length];
-			int counter = 0;
-			for (int i = 0; i < dataProcessingOutputInfo.getVariableTimePoints().length; i++) {
-				if(wantsThisTime[i]){
-					specificTimePoints[counter] = dataProcessingOutputInfo.getVariableTimePoints()[i];
-					counter++;
+		resultsCounter = wantedCount;
+		final int NUM_STATS = 4;//min,max,mean,wmean
+		//Create results buffer
+		results = new double[resultsCounter][][];//[timePoints][varNames][dataIndexes]
+
+		for(int i=0;i<results.length;i+= 1){
+			results[i] = new double[varNames.length][];
+			for(int j=0;j<results[i].length;j+= 1){
+				if(spatialStatsInfo != null){
+					results[i][j] = new double[NUM_STATS];//min,max.mean,wmean
+				}else{
+					results[i][j] = new double[indexes[j].length];
 				}
 			}
+		}
+		try{
+			if(varNames.length > 0 && isPostProcessing(outputContext, varNames[0])){
+				double[] specificTimePoints = new double[results.length];
+				int counter = 0;
+				for (int i = 0; i < dataProcessingOutputInfo.getVariableTimePoints().length; i++) {
+					if(wantsThisTime[i]){
+						specificTimePoints[counter] = dataProcessingOutputInfo.getVariableTimePoints()[i];
+						counter++;
+					}
+				}
 //			PDEDataInfo pdeDataInfo = new PDEDataInfo(vcDataId.getOwner(),vcDataId.getID(),varName,time,lastDataProcessingOutputInfoTime);
-			for (int i = 0; i < varNames.length; i++) {
-				DataProcessingOutputDataValuesOP dataProcessingOutputDataValuesOP =
-					new DataProcessingOutputDataValuesOP(vcDataId, varNames[i],
-						TimePointHelper.createSpecificTimePointHelper(specificTimePoints), DataIndexHelper.createSpecificDataIndexHelper(indexes[i]), outputContext, null);
-				DataProcessingOutputDataValues dataProcessingOutputDataValues =
-					(DataProcessingOutputDataValues)DataSetControllerImpl.getDataProcessingOutput(dataProcessingOutputDataValuesOP, getDataProcessingOutputSourceFileHDF5());
-				for (int j = 0; j < specificTimePoints.length; j++) {
-					results[j][i] = dataProcessingOutputDataValues.getDataValues()[j];
+				for (int i = 0; i < varNames.length; i++) {
+					DataProcessingOutputDataValuesOP dataProcessingOutputDataValuesOP =
+						new DataProcessingOutputDataValuesOP(vcDataId, varNames[i],
+							TimePointHelper.createSpecificTimePointHelper(specificTimePoints), DataIndexHelper.createSpecificDataIndexHelper(indexes[i]), outputContext, null);
+					DataProcessingOutputDataValues dataProcessingOutputDataValues =
+						(DataProcessingOutputDataValues)DataSetControllerImpl.getDataProcessingOutput(dataProcessingOutputDataValuesOP, getDataProcessingOutputSourceFileHDF5());
+					for (int j = 0; j < specificTimePoints.length; j++) {
+						results[j][i] = dataProcessingOutputDataValues.getDataValues()[j];
+					}
 				}
+				return results;
 			}
-			return results;
+		}catch(Exception e){
+			//ignore
+			e.printStackTrace();
 		}
-	}catch(Exception e){
-		//ignore
-		e.printStackTrace();
-	}
 
-	String varNamesInDataSet[] = new String[varNames.length];
-	for (int i = 0; i < varNamesInDataSet.length; i++) {
-		varNamesInDataSet[i] = getDataSetIdentifier(varNames[i]).getQualifiedName();
-	}
-	// Setup parameters for SimDataReader
-	double[] tempDataTimes = dataTimes.clone();
-
-	String[] tempZipFileNames = null;
-	if (bZipFormat2) {
-		tempZipFileNames = new String[tempDataTimes.length];
-	}
-	String[] tempSimDataFileNames = new String[tempDataTimes.length];
-	for(int i=0;i<tempDataTimes.length;i+= 1){
-		if (bZipFormat2 || bZipFormat1) {
-			if(bZipFormat2){
-				tempZipFileNames[i] = getPDEDataZipFile(tempDataTimes[i]).getAbsolutePath();
-			}
-			tempSimDataFileNames[i] = dataFilenames[i];
-		} else {
-			tempSimDataFileNames[i] = amplistorHelper.getFile(dataFilenames[i]).getName();//userDirectory.getAbsolutePath()+"\\"+dataFilenames[i];//getPDEDataFile(dataTimes[i]).getAbsolutePath();
+		varNamesInDataSet = new String[varNames.length];
+		for (int i = 0; i < varNamesInDataSet.length; i++) {
+			varNamesInDataSet[i] = getDataSetIdentifier(varNames[i]).getQualifiedName();
 		}
+		// Setup parameters for SimDataReader
+		tempDataTimes = dataTimes.clone();
 
-	}
-	SimDataReader sdr = null;
-
-
+		tempZipFileNames = null;
+		if (bZipFormat2) {
+			tempZipFileNames = new String[tempDataTimes.length];
+		}
+		tempSimDataFileNames = new String[tempDataTimes.length];
+		for(int i=0;i<tempDataTimes.length;i+= 1){
+			if (bZipFormat2 || bZipFormat1) {
+				if(bZipFormat2){
+					tempZipFileNames[i] = getPDEDataZipFile(tempDataTimes[i]).getAbsolutePath();
+				}
+				tempSimDataFileNames[i] = dataFilenames[i];
+			} else {
+				tempSimDataFileNames[i] = amplistorHelper.getFile(dataFilenames[i]).getName();//userDirectory.getAbsolutePath()+"\\"+dataFilenames[i];//getPDEDataFile(dataTimes[i]).getAbsolutePath();
+			}
 
-	double[][] singleTimePointResultsBuffer = new double[varNamesInDataSet.length][];
-	for(int i=0;i<singleTimePointResultsBuffer.length;i+= 1){
-		singleTimePointResultsBuffer[i] = new double[indexes[i].length];
+		}
+		bChombo = isChombo();
 	}
 
 	//In case sim files have been updated since "wantsThisTime" was calculated
@@ -1337,13 +1364,31 @@ synchronized double[][][] getSimDataTimeSeries0(
 		double[] tempTempDataTimes = new double[wantsThisTime.length];
 		System.arraycopy(tempDataTimes, 0, tempTempDataTimes, 0, wantsThisTime.length);
 		tempDataTimes = tempTempDataTimes;
-		String[] tempTempZipFileNames = new String[wantsThisTime.length];
-		System.arraycopy(tempZipFileNames, 0, tempTempZipFileNames, 0, wantsThisTime.length);
-		tempZipFileNames = tempTempZipFileNames;
+		if(tempZipFileNames != null){
+			String[] tempTempZipFileNames = new String[wantsThisTime.length];
+			System.arraycopy(tempZipFileNames, 0, tempTempZipFileNames, 0, wantsThisTime.length);
+			tempZipFileNames = tempTempZipFileNames;
+		}
 		String[] tempTempSimDataFileNames = new String[wantsThisTime.length];
 		System.arraycopy(tempSimDataFileNames, 0, tempTempSimDataFileNames, 0, wantsThisTime.length);
 		tempSimDataFileNames = tempTempSimDataFileNames;
 	}
+
+	// HDF5 (Chombo) reads go through the non-reentrant hdf5 library, keep them on one thread
+	int numThreads = (bChombo ? 1 : getTimeSeriesThreadCount());
+	if(numThreads > 1 && resultsCounter >= MIN_PARALLEL_TIME_POINTS && wantsThisTime.length == tempDataTimes.length){
+		readTimeSeriesParallel(numThreads, results, wantsThisTime, tempDataTimes, tempZipFileNames, tempSimDataFileNames,
+				varNamesInDataSet, indexes, spatialStatsInfo, progressListener);
+		return results;
+	}
+
+	SimDataReader sdr = null;
+
+	double[][] singleTimePointResultsBuffer = new double[varNamesInDataSet.length][];
+	for(int i=0;i<singleTimePointResultsBuffer.length;i+= 1){
+		singleTimePointResultsBuffer[i] = new double[indexes[i].length];
+	}
+
 	try{
 		sdr =
 			new SimDataReader(
@@ -1353,7 +1398,7 @@ synchronized double[][][] getSimDataTimeSeries0(
 				tempSimDataFileNames,
 				varNamesInDataSet,
 				indexes,
-				isChombo()
+				bChombo
 			);
 		int counter = 0;
 		int progressCounter = 0;
@@ -1392,6 +1437,138 @@ synchronized double[][][] getSimDataTimeSeries0(
 }
 
 
+/**
+ * Reads the wanted time points of a time series in contiguous chunks on the shared time series executor,
+ * each task with its own SimDataReader, and stores them in results[wantedTimeIndex][var][index].
+ */
+private void readTimeSeriesParallel(
+		int numThreads,
+		final double[][][] results,
+		boolean[] wantsThisTime,
+		double[] dataTimes,
+		String[] zipFileNames,
+		String[] simDataFileNames,
+		final String[] varNamesInDataSet,
+		final int[][] indexes,
+		final DataSetControllerImpl.SpatialStatsInfo spatialStatsInfo,
+		final DataSetControllerImpl.ProgressListener progressListener) throws DataAccessException, IOException {
+
+	final int[] wantedTimeIndexes = new int[results.length];
+	int counter = 0;
+	for(int i=0;i<wantsThisTime.length;i+= 1){
+		if(wantsThisTime[i]){
+			wantedTimeIndexes[counter++] = i;
+		}
+	}
+	// a few tasks per thread to even out slow reads
+	int chunkSize = Math.max(MIN_TIME_POINTS_PER_TASK, (results.length + 4*numThreads - 1) / (4*numThreads));
+	final AtomicInteger progressCounter = new AtomicInteger(0);
+	ExecutorService executor = getTimeSeriesExecutor();
+	Vector<Future<?>> futures = new Vector<Future<?>>();
+	try{
+		for(int chunkStart=0;chunkStart<results.length;chunkStart+= chunkSize){
+			final int begin = chunkStart;
+			final int end = Math.min(results.length, chunkStart+chunkSize);
+			final boolean[] chunkWantsThisTime = new boolean[end-begin];
+			final double[] chunkTimes = new double[end-begin];
+			final String[] chunkZipFileNames = (zipFileNames != null ? new String[end-begin] : null);
+			final String[] chunkSimDataFileNames = new String[end-begin];
+			for(int i=begin;i<end;i+= 1){
+				int timeIndex = wantedTimeIndexes[i];
+				chunkWantsThisTime[i-begin] = true;
+				chunkTimes[i-begin] = dataTimes[timeIndex];
+				if(chunkZipFileNames != null){
+					chunkZipFileNames[i-begin] = zipFileNames[timeIndex];
+				}
+				chunkSimDataFileNames[i-begin] = simDataFileNames[timeIndex];
+			}
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					double[][] singleTimePointResultsBuffer = new double[varNamesInDataSet.length][];
+					for(int i=0;i<singleTimePointResultsBuffer.length;i+= 1){
+						singleTimePointResultsBuffer[i] = new double[indexes[i].length];
+					}
+					SimDataReader sdr = new SimDataReader(chunkWantsThisTime, chunkTimes, chunkZipFileNames, chunkSimDataFileNames, varNamesInDataSet, indexes, false);
+					try{
+						for(int resultIndex=begin;resultIndex<end;resultIndex+= 1){
+							if(Thread.currentThread().isInterrupted()){
+								throw new InterruptedException("time series read cancelled");
+							}
+							sdr.getNextDataAtCurrentTime(singleTimePointResultsBuffer);
+							for(int i=0;i<varNamesInDataSet.length;i+= 1){
+								if(spatialStatsInfo != null){
+									results[resultIndex][i] = calcSpaceStats(singleTimePointResultsBuffer[i],i,spatialStatsInfo);
+								}else{
+									System.arraycopy(singleTimePointResultsBuffer[i], 0, results[resultIndex][i], 0, indexes[i].length);
+								}
+							}
+							int progress = progressCounter.incrementAndGet();
+							if(progressListener != null){
+								synchronized (progressListener) {
+									progressListener.updateProgress(100.0 * (double)progress / (double)results.length);
+								}
+							}
+						}
+					}finally{
+						sdr.close();
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<?> future : futures){
+			future.get();
+		}
+	}catch(ExecutionException e){
+		Throwable cause = (e.getCause() != null ? e.getCause() : e);
+		if(cause instanceof DataAccessException){
+			throw (DataAccessException)cause;
+		}
+		if(cause instanceof IOException){
+			throw (IOException)cause;
+		}
+		throw new DataAccessException(cause.getMessage(),cause);
+	}catch(InterruptedException e){
+		Thread.currentThread().interrupt();
+		throw new DataAccessException("time series read interrupted",e);
+	}catch(RuntimeException e){
+		throw new DataAccessException(e.getMessage(),e);
+	}finally{
+		for(Future<?> future : futures){
+			future.cancel(true);
+		}
+	}
+}
+
+
+/**
+ * number of threads used to read one time series, from {@link PropertyLoader#simdataTimeSeriesThreadsProperty}
+ * (defaults to the number of processors, 1 reads on the calling thread).
+ */
+private static synchronized int getTimeSeriesThreadCount() {
+	if (timeSeriesThreadCount == 0) {
+		timeSeriesThreadCount = Math.max(1, PropertyLoader.getIntProperty(PropertyLoader.simdataTimeSeriesThreadsProperty, Runtime.getRuntime().availableProcessors()));
+	}
+	return timeSeriesThreadCount;
+}
+
+
+/**
+ * bounded pool shared by all time series reads of this process.
+ */
+private static synchronized ExecutorService getTimeSeriesExecutor() {
+	if (timeSeriesExecutor == null) {
+		final AtomicInteger threadCounter = new AtomicInteger(0);
+		timeSeriesExecutor = Executors.newFixedThreadPool(getTimeSeriesThreadCount(), (r) -> {
+			Thread t = new Thread(r, "SimDataTimeSeries-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	return timeSeriesExecutor;
+}
+
+
 /**
  * This method was created in VisualAge.
  * @return long
@@ -1692,7 +1869,7 @@ private synchronized void readLog(File logFile) throws FileNotFoundException, Da
 	if (logfileContent.length() != logFileLength){
 		System.out.println("<<<SYSOUT ALERT>>>SimResults.readLog(), read "+stringBuffer.length()+" of "+logFileLength+" bytes of log file");
 	}
-	if ((logfileContent.startsWith(IDA_DATA_IDENTIFIER)) || (logfileContent.startsWith(ODE_DATA_IDENTIFIER)) || (logfileContent.startsWith(NETCDF_DATA_IDENTIFIER)))
+	if ((logfileContent.startsWith(IDA_DATA_IDENTIFIER)) || (logfileContent.startsWith(ODE_DATA_IDENTIFIER)) || (logfileContent.startsWith(NETCDF_DATA_IDENTIFIER)) || (logfileContent.startsWith(ENSEMBLE_DATA_IDENTIFIER)))
 	{
 		String newLineDelimiters = "\n\r";
 		StringTokenizer lineTokenizer = new StringTokenizer(logfileContent,newLineDelimiters);
@@ -1994,6 +2171,7 @@ private synchronized void removeAllResults(File logFile, File meshFile) {
 					System.out.println("<<EXCEPTION>> SimResults:removeAllResults() removing .zip file " + exc.getMessage());
 				}
 				if (zipFile != null && zipFile.exists()) {
+					SimDataFileMapper.close(zipFile);
 					zipFile.delete();
 				}
 				File dataFile = null;
@@ -2089,6 +2267,14 @@ public static String createCanonicalSimLogFileName(KeyValue fieldDataKey,int job
 	createSimIDWithJobIndex(fieldDataKey,jobIndex,isOldStyle)+
 	SimDataConstants.LOGFILE_EXTENSION;
 }
+/**
+ * the results of all jobs of a scan solved as an ensemble, shared by the log files of the jobs
+ */
+public static String createCanonicalEnsembleFileName(KeyValue fieldDataKey){
+	return
+	Simulation.createSimulationID(fieldDataKey)+"_ensemble"+
+	SimDataConstants.ENSEMBLE_DATA_EXTENSION;
+}
 public static String createCanonicalSmoldynOutputFileName(KeyValue fieldDataKey,int jobIndex,int timeIndex){
 	if (timeIndex > 0) {
 		String rval = createSimIDWithJobIndex(fieldDataKey,jobIndex,false) + String.format("_%03d",timeIndex)
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.math.RowColumnResultSet;
+import cbit.vcell.util.ColumnDescription;
+
+/**
+ * Binary, column-major alternative to the tab separated .ida output (time and variable columns of an ODE or stochastic run).
+ * <p>
+ * Layout (little endian): magic "VCODECOL", int version, int column count, int row count, for each column an int length and
+ * the UTF-8 bytes of its name, zero padding to a multiple of 8 bytes, then the values of each column in turn (row count doubles
+ * per column).  The reader reads the header and each selected column with one positioned read, with no text parsing.
+ * Readers of .ida files call {@link #isColumnarFile(File)} first and fall back to the text format.
+ * <p>
+ * Not to be confused with {@link cbit.vcell.simdata.SimDataConstants#COMPACT_ODE_DATA_FORMAT_V2_ID}, the (column ordered)
+ * serialized form of {@link ODESimData} used for .ode files.
+ */
+public class ColumnarODEDataFile {
+
+	private static final byte[] MAGIC = "VCODECOL".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+
+	/**
+	 * @return true if 'file' starts with the columnar format's magic bytes (false for text .ida files).
+	 */
+	public static boolean isColumnarFile(File file) throws IOException {
+		if (file.length() < MAGIC.length) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] magic = new byte[MAGIC.length];
+			raf.readFully(magic);
+			return Arrays.equals(magic, MAGIC);
+		}
+	}
+
+	/**
+	 * adds the data columns of 'file' to 'resultSet' (which must not have any data columns yet) and fills them.
+	 */
+	public static <T extends RowColumnResultSet> T read(T resultSet, File file) throws IOException {
+		return read(resultSet, file, UnaryOperator.identity());
+	}
+
+	/**
+	 * adds the columns of 'file' selected by 'columnNames' to 'resultSet' (which must not have any data columns yet) and fills them;
+	 * 'columnNames' maps each column name of the file to the name of its result set column, or to null to skip the column.
+	 */
+	public static <T extends RowColumnResultSet> T read(T resultSet, File file, UnaryOperator<String> columnNames) throws IOException {
+		if (resultSet.getDataColumnCount() != 0) {
+			throw new IllegalArgumentException("result set already has data columns");
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			ByteBuffer counts = ByteBuffer.allocate(MAGIC.length + 12).order(ByteOrder.LITTLE_ENDIAN);
+			if (fileSize < counts.capacity()) {
+				throw new IOException("file "+file.getPath()+" is too short for columnar ODE data");
+			}
+			readFully(channel, counts, 0);
+			byte[] magic = new byte[MAGIC.length];
+			counts.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("file "+file.getPath()+" is not columnar ODE data");
+			}
+			int version = counts.getInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported columnar ODE data version "+version+" in "+file.getPath());
+			}
+			int columnCount = counts.getInt();
+			int rowCount = counts.getInt();
+			if (columnCount < 0 || rowCount < 0) {
+				throw new IOException("corrupt columnar ODE data header in "+file.getPath());
+			}
+			// the values fill the end of the file, the column names are read with one read of the rest of the header
+			long columnBytes = (long)rowCount * 8;
+			long dataStart = fileSize - columnCount * columnBytes;
+			if (columnBytes > Integer.MAX_VALUE || dataStart < counts.capacity() || dataStart > Integer.MAX_VALUE) {
+				throw new IOException("columnar ODE data in "+file.getPath()+" is truncated");
+			}
+			ByteBuffer header = ByteBuffer.allocate((int)dataStart - counts.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, counts.capacity());
+			String[] names = new String[columnCount];
+			try {
+				for (int c = 0; c < columnCount; c++) {
+					byte[] nameBytes = new byte[header.getInt()];
+					header.get(nameBytes);
+					names[c] = new String(nameBytes, StandardCharsets.UTF_8);
+				}
+			} catch (RuntimeException e) {
+				throw new IOException("corrupt columnar ODE data header in "+file.getPath(), e);
+			}
+			if (align(counts.capacity() + header.position()) != dataStart) {
+				throw new IOException("columnar ODE data in "+file.getPath()+" is truncated");
+			}
+			List<double[]> columnValues = new ArrayList<double[]>();
+			ByteBuffer columnBuffer = null;
+			for (int c = 0; c < columnCount; c++) {
+				String name = columnNames.apply(names[c]);
+				if (name == null) {
+					continue;
+				}
+				resultSet.addDataColumn(new ODESolverResultSetColumnDescription(name));
+				if (columnBuffer == null) {
+					columnBuffer = ByteBuffer.allocate((int)columnBytes).order(ByteOrder.LITTLE_ENDIAN);
+				}
+				columnBuffer.clear();
+				readFully(channel, columnBuffer, dataStart + c * columnBytes);
+				double[] column = new double[rowCount];
+				columnBuffer.asDoubleBuffer().get(column);
+				columnValues.add(column);
+			}
+			resultSet.setDataColumnValues(columnValues.toArray(new double[columnValues.size()][]), rowCount);
+			return resultSet;
+		}
+	}
+
+	/**
+	 * writes the data columns of 'resultSet' (function columns are not saved); the file is replaced atomically.
+	 */
+	public static void write(RowColumnResultSet resultSet, File file) throws IOException {
+		ColumnDescription[] columnDescriptions = resultSet.getDataColumnDescriptions();
+		DoubleBuffer[] columns = new DoubleBuffer[columnDescriptions.length];
+		int rowCount;
+		synchronized (resultSet) {
+			rowCount = resultSet.getRowCount();
+			for (int c = 0; c < columns.length; c++) {
+				columns[c] = resultSet.getColumnView(c);
+			}
+		}
+		byte[][] names = new byte[columnDescriptions.length][];
+		int headerSize = MAGIC.length + 12;
+		for (int c = 0; c < names.length; c++) {
+			names[c] = columnDescriptions[c].getName().getBytes(StandardCharsets.UTF_8);
+			headerSize += 4 + names[c].length;
+		}
+		ByteBuffer header = ByteBuffer.allocate(align(headerSize)).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(names.length);
+		header.putInt(rowCount);
+		for (byte[] name : names) {
+			header.putInt(name.length);
+			header.put(name);
+		}
+		header.position(0);
+
+		// unique name in the same directory, concurrent writers of the same file don't share it
+		File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		boolean bMoved = false;
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+			ByteBuffer block = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+			DoubleBuffer blockValues = block.asDoubleBuffer();
+			for (DoubleBuffer column : columns) {
+				column.rewind();
+				while (column.hasRemaining()) {
+					int count = Math.min(column.remaining(), blockValues.capacity());
+					DoubleBuffer chunk = column.duplicate();
+					chunk.limit(chunk.position() + count);
+					blockValues.clear();
+					blockValues.put(chunk);
+					column.position(column.position() + count);
+					block.position(0).limit(count * 8);
+					writeFully(channel, block);
+				}
+			}
+			channel.close();
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			bMoved = true;
+		} finally {
+			if (!bMoved) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * fills 'buffer' from 'position' of the file and flips it for reading.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("unexpected end of columnar ODE data");
+			}
+			position += count;
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static int align(int position) {
+		return (position + 7) & ~7;
+	}
+}
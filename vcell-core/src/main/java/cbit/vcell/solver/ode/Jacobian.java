@@ -76,6 +76,14 @@ private void create() throws ExpressionException {
 		}
 	}
 }
+/**
+ * partial derivative of a rate expression which is already flattened and bound (e.g. to the simulation's symbol table,
+ * so math overrides are included); the bindings are kept so the derivative can be compiled like the rate itself.
+ * @return the simplified derivative, {@link Expression#isZero()} if the rate does not depend on varName.
+ */
+public static Expression getPartialDerivative(Expression flattenedRateExp, String varName) throws ExpressionException {
+	return flattenedRateExp.differentiate(varName).flatten();
+}
 /**
  * This method was created by a SmartGuide.
  * @return cbit.vcell.parser.Expression
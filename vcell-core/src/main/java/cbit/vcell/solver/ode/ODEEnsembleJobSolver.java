@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Vector;
+
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.SimulationData;
+import cbit.vcell.solver.AnnotatedFunction;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationJob;
+import cbit.vcell.solver.SolverException;
+import cbit.vcell.solver.UserStopException;
+import cbit.vcell.solvers.FunctionFileGenerator;
+
+/**
+ * Runs one job of a parameter scan from the results of the whole scan, solved by {@link ODEEnsembleSolver} into one ensemble
+ * file per simulation ({@link SimulationData#createCanonicalEnsembleFileName(org.vcell.util.document.KeyValue)}).
+ * <p>
+ * Only job 0 of the scan is sent to the batch system, the dispatcher completes the other jobs along with it.  Job 0 solves the
+ * ensemble and writes the functions file and a log file pointing to the ensemble file for every job of the scan, the data server
+ * then reads the columns of each job ({@link ODESimData#readEnsembleDataFile}).  Jobs dispatched separately anyway share the
+ * ensemble file ({@link ODEEnsembleSolver#solveOnce(Simulation, File)}).  Enabled by {@link PropertyLoader#odeEnsembleProperty},
+ * which has to be set for the dispatcher and the workers alike.
+ */
+public class ODEEnsembleJobSolver extends AbstractJavaSolver implements ODESolver {
+	private ODESolverResultSet odeSolverResultSet = null;
+	private double currentTime = 0;
+
+public ODEEnsembleJobSolver(SimulationTask simTask, File directory) throws SolverException {
+	super(simTask, directory);
+}
+
+/**
+ * @return true if ensemble runs are enabled and the simulation of 'simTask' is a scan which can be solved as an ensemble.
+ */
+public static boolean isEnsembleJob(SimulationTask simTask) {
+	return isEnsembleSimulation(simTask.getSimulation());
+}
+
+/**
+ * @return true if ensemble runs are enabled and 'simulation' is a scan which can be solved as an ensemble.
+ */
+public static boolean isEnsembleSimulation(Simulation simulation) {
+	return PropertyLoader.getBooleanProperty(PropertyLoader.odeEnsembleProperty, false)
+			&& ODEEnsembleSolver.isEnsembleScan(simulation);
+}
+
+@Override
+protected void initialize() throws SolverException {
+	if (!ODEEnsembleSolver.isEnsembleScan(simTask.getSimulation())) {
+		throw new SolverException("simulation "+simTask.getSimulation().getName()+" cannot be solved as an ensemble");
+	}
+	currentTime = simTask.getSimulation().getSolverTaskDescription().getTimeBounds().getStartingTime();
+	odeSolverResultSet = null;
+}
+
+@Override
+protected void integrate() throws SolverException, UserStopException, IOException {
+	File ensembleFile = new File(getSaveDirectory(), SimulationData.createCanonicalEnsembleFileName(simTask.getSimKey()));
+	ODEEnsembleSolver.solveOnce(simTask.getSimulation(), ensembleFile);
+	checkForUserStop();
+
+	final int jobIndex = getJobIndex();
+	if (jobIndex == 0) {
+		for (int job = 0; job < simTask.getSimulation().getScanCount(); job++) {
+			writeJobFiles(new SimulationJob(simTask.getSimulation(), job, simTask.getSimulationJob().getFieldDataIdentifierSpecs()), ensembleFile);
+		}
+	} else {
+		writeJobFiles(simTask.getSimulationJob(), ensembleFile);
+	}
+
+	ODESolverResultSet resultSet = ColumnarODEDataFile.read(new ODESolverResultSet(), ensembleFile, columnName -> ODEEnsembleSolver.getVariableName(columnName, jobIndex));
+	if (resultSet.getRowCount() > 0) {
+		currentTime = resultSet.getColumnView(0).get(resultSet.getRowCount() - 1);
+	}
+	odeSolverResultSet = resultSet;
+	fireSolverPrinted(currentTime);
+}
+
+/**
+ * writes the functions file and the log file (pointing to 'ensembleFile') of 'simJob'.  Each file is written under a temporary
+ * name and moved into place, jobs dispatched separately may write the same files at the same time.
+ */
+private void writeJobFiles(SimulationJob simJob, File ensembleFile) throws SolverException, IOException {
+	File baseFile = new File(getSaveDirectory(), simJob.getSimulationJobID());
+	File functionFile = new File(baseFile.getPath() + FUNCTIONFILE_EXTENSION);
+	File tempFunctionFile = File.createTempFile(functionFile.getName(), ".tmp", getSaveDirectory());
+	try {
+		Vector<AnnotatedFunction> funcList = simJob.getSimulationSymbolTable().createAnnotatedFunctionsList(simJob.getSimulation().getMathDescription());
+		new FunctionFileGenerator(tempFunctionFile.getPath(), funcList).generateFunctionFile();
+		Files.move(tempFunctionFile.toPath(), functionFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (Exception e) {
+		throw new SolverException("failed to write functions file "+functionFile.getPath()+": "+e.getMessage(), e);
+	} finally {
+		tempFunctionFile.delete();
+	}
+
+	File logFile = new File(baseFile.getPath() + LOGFILE_EXTENSION);
+	File tempLogFile = File.createTempFile(logFile.getName(), ".tmp", getSaveDirectory());
+	try {
+		try (FileWriter fw = new FileWriter(tempLogFile)) {
+			fw.write(
+				ENSEMBLE_DATA_IDENTIFIER + "\n" +
+				ENSEMBLE_DATA_FORMAT_ID + "\n" +
+				ensembleFile.getName() + "\n"
+			);
+		}
+		Files.move(tempLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+		tempLogFile.delete();
+	}
+}
+
+@Override
+public double getCurrentTime() {
+	return currentTime;
+}
+
+@Override
+public double getProgress() {
+	return (odeSolverResultSet != null) ? 1.0 : 0.0;
+}
+
+@Override
+public ODESolverResultSet getODESolverResultSet() {
+	return odeSolverResultSet;
+}
+}
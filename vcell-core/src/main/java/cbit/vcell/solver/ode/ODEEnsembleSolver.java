@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cbit.vcell.math.Constant;
+import cbit.vcell.math.Equation;
+import cbit.vcell.math.MathDescription;
+import cbit.vcell.math.MathException;
+import cbit.vcell.math.MathUtilities;
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.math.OdeEquation;
+import cbit.vcell.math.ReservedVariable;
+import cbit.vcell.math.SubDomain;
+import cbit.vcell.math.Variable;
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.parser.SimpleSymbolTable;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationSymbolTable;
+import cbit.vcell.solver.SolverException;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.UserStopException;
+
+/**
+ * Solves all jobs of a non-spatial deterministic parameter scan in one process, instead of one {@link cbit.vcell.solver.SimulationJob}
+ * (input file, dispatch, solver run) per scan point.
+ * <p>
+ * The rate system is built once: functions and the constants which are not scanned are substituted, the scanned constants stay
+ * symbols and become part of the value vector, [t, state variables, scanned constants].  One {@link RosenbrockIntegrator} (compiled
+ * rates, analytic jacobian, LU ordering) is shared by all jobs, each thread integrates its jobs with its own copy of the work
+ * arrays and its own value vector.
+ * <p>
+ * The results of all jobs go to one result set with a common time column and a column per state variable and job
+ * ({@link #getJobColumnName(String, int)}), which can be saved with {@link ColumnarODEDataFile}.  Output times must be uniform
+ * or explicit, so that the jobs share the time column.  Dispatched jobs use it through {@link ODEEnsembleJobSolver}.
+ */
+public class ODEEnsembleSolver {
+	private static Logger lg = LogManager.getLogger(ODEEnsembleSolver.class);
+	// wait between attempts to lock the ensemble file of a scan solved by another process.
+	private final static long LOCK_RETRY_MS = 500;
+
+	private final Simulation simulation;
+	private final String[] stateVariableNames;
+	private final String[] scannedConstantNames;
+	private final CompiledExpression[] initialExpressions;
+	private final RosenbrockIntegrator integrator;
+	private final double[] outputTimes;
+
+	public ODEEnsembleSolver(Simulation simulation) throws SolverException {
+		if (!isSupported(simulation)) {
+			throw new SolverException("ensemble runs are only supported for non-spatial deterministic simulations without events, fast systems and sensitivity analysis");
+		}
+		this.simulation = simulation;
+		this.outputTimes = getOutputTimes(simulation);
+		if (outputTimes == null) {
+			throw new SolverException("ensemble runs need uniform or explicit output times");
+		}
+		try {
+			SimulationSymbolTable simSymbolTable = new SimulationSymbolTable(simulation, 0);
+			SubDomain subDomain = simulation.getMathDescription().getSubDomains().nextElement();
+			List<OdeEquation> odeEquations = new ArrayList<OdeEquation>();
+			Enumeration<Equation> equations = subDomain.getEquations();
+			while (equations.hasMoreElements()) {
+				Equation equation = equations.nextElement();
+				if (!(equation instanceof OdeEquation)) {
+					throw new SolverException("equation for "+equation.getVariable().getName()+" is not an ODE");
+				}
+				odeEquations.add((OdeEquation)equation);
+			}
+			int n = odeEquations.size();
+			this.stateVariableNames = new String[n];
+			for (int i = 0; i < n; i++) {
+				stateVariableNames[i] = odeEquations.get(i).getVariable().getName();
+			}
+			this.scannedConstantNames = simulation.getMathOverrides().getScannedConstantNames();
+			Arrays.sort(scannedConstantNames);
+			//
+			// value vector: time, state variables, scanned constants
+			//
+			String[] symbols = new String[1 + n + scannedConstantNames.length];
+			symbols[0] = ReservedVariable.TIME.getName();
+			System.arraycopy(stateVariableNames, 0, symbols, 1, n);
+			System.arraycopy(scannedConstantNames, 0, symbols, 1 + n, scannedConstantNames.length);
+			SimpleSymbolTable ensembleSymbolTable = new SimpleSymbolTable(symbols);
+			int[] stateIndexes = new int[n];
+			Expression[] rates = new Expression[n];
+			this.initialExpressions = new CompiledExpression[n];
+			for (int i = 0; i < n; i++) {
+				stateIndexes[i] = 1 + i;
+				rates[i] = getEnsembleExpression(odeEquations.get(i).getRateExpression(), simSymbolTable, ensembleSymbolTable);
+				initialExpressions[i] = getEnsembleExpression(odeEquations.get(i).getInitialExpression(), simSymbolTable, ensembleSymbolTable).compile();
+			}
+			this.integrator = new RosenbrockIntegrator(rates, stateVariableNames, stateIndexes, 0);
+		} catch (ExpressionException | MathException e) {
+			lg.error(e.getMessage(), e);
+			throw new SolverException("failed to build ensemble rate system: "+e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if 'simulation' is non-spatial and deterministic and has no events, fast system or sensitivity parameter.
+	 */
+	public static boolean isSupported(Simulation simulation) {
+		MathDescription mathDescription = simulation.getMathDescription();
+		return !mathDescription.isSpatial()
+				&& !mathDescription.isNonSpatialStoch()
+				&& !mathDescription.isRuleBased()
+				&& !mathDescription.hasEvents()
+				&& !mathDescription.hasFastSystems()
+				&& simulation.getSolverTaskDescription().getSensitivityParameter() == null;
+	}
+
+	/**
+	 * @return true if 'simulation' is a parameter scan which can be solved as an ensemble (see {@link #isSupported(Simulation)}).
+	 */
+	public static boolean isEnsembleScan(Simulation simulation) {
+		return simulation.getScanCount() > 1
+				&& isSupported(simulation)
+				&& RosenbrockIntegrator.getOutputTimes(simulation.getSolverTaskDescription()) != null;
+	}
+
+	/**
+	 * @return the output times shared by all jobs; explicit output times after the ending time are dropped (with a warning),
+	 * the integration stops at the ending time.
+	 */
+	private static double[] getOutputTimes(Simulation simulation) {
+		double[] times = RosenbrockIntegrator.getOutputTimes(simulation.getSolverTaskDescription());
+		if (times == null) {
+			return null;
+		}
+		double endingTime = simulation.getSolverTaskDescription().getTimeBounds().getEndingTime();
+		int count = times.length;
+		while (count > 0 && times[count - 1] > endingTime) {
+			count--;
+		}
+		if (count < times.length) {
+			lg.warn("simulation "+simulation.getName()+": "+(times.length - count)+" output times after the ending time "+endingTime+" are ignored");
+			times = Arrays.copyOf(times, count);
+		}
+		return times;
+	}
+
+	/**
+	 * @return name of the result column of 'variableName' in job 'jobIndex'.
+	 */
+	public static String getJobColumnName(String variableName, int jobIndex) {
+		return variableName + SimDataConstants.ENSEMBLE_JOB_SUFFIX + jobIndex;
+	}
+
+	/**
+	 * @return the variable of result column 'columnName' if the column belongs to job 'jobIndex' (time belongs to all jobs), otherwise null.
+	 */
+	public static String getVariableName(String columnName, int jobIndex) {
+		if (columnName.equals(ReservedVariable.TIME.getName())) {
+			return columnName;
+		}
+		String suffix = SimDataConstants.ENSEMBLE_JOB_SUFFIX + jobIndex;
+		if (columnName.endsWith(suffix)) {
+			return columnName.substring(0, columnName.length() - suffix.length());
+		}
+		return null;
+	}
+
+	/**
+	 * solves all jobs of 'simulation' into 'file' unless another job (in this or another process sharing the directory)
+	 * already did or is doing it, in which case this waits for the file.  Normally only job 0 of a scan is dispatched
+	 * (see {@link ODEEnsembleJobSolver}), this guards against jobs dispatched separately.
+	 * <p>
+	 * The lock file is left in place: deleting it would let a job starting at that moment lock a new file while another
+	 * job still holds the lock on the deleted one.
+	 */
+	public static void solveOnce(Simulation simulation, File file) throws SolverException, IOException {
+		File lockFile = new File(file.getPath() + ".lock");
+		synchronized (ODEEnsembleSolver.class) {
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				FileLock lock;
+				while ((lock = channel.tryLock()) == null) {
+					if (file.exists()) {
+						// written (atomically) by the job holding the lock
+						return;
+					}
+					try {
+						Thread.sleep(LOCK_RETRY_MS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SolverException("interrupted while waiting for ensemble file "+file.getName(), e);
+					}
+				}
+				try {
+					if (!file.exists()) {
+						new ODEEnsembleSolver(simulation).solve(file);
+					}
+				} finally {
+					lock.release();
+				}
+			}
+		}
+	}
+
+	public int getJobCount() {
+		return simulation.getScanCount();
+	}
+
+	/**
+	 * @return the state variables, in the order of the value vector.
+	 */
+	public String[] getStateVariableNames() {
+		return stateVariableNames.clone();
+	}
+
+	/**
+	 * substitutes the functions and the constants which are not scanned (with their job 0 values, the same in all jobs)
+	 * and binds the result to the ensemble value vector.
+	 */
+	private Expression getEnsembleExpression(Expression exp, SimulationSymbolTable simSymbolTable, SimpleSymbolTable ensembleSymbolTable) throws ExpressionException, MathException {
+		Expression ensembleExp = new Expression(exp);
+		ensembleExp.bindExpression(simSymbolTable);
+		ensembleExp = MathUtilities.substituteFunctions(ensembleExp, simSymbolTable);
+		boolean bSubstituted = true;
+		while (bSubstituted) {
+			bSubstituted = false;
+			String[] symbols = ensembleExp.getSymbols();
+			if (symbols == null) {
+				break;
+			}
+			for (String symbol : symbols) {
+				if (ensembleSymbolTable.getEntry(symbol) != null) {
+					continue;
+				}
+				Variable variable = simSymbolTable.getVariable(symbol);
+				if (!(variable instanceof Constant)) {
+					throw new MathException("'"+symbol+"' in "+exp.infix()+" is not supported in ensemble runs");
+				}
+				// a constant may be a function of (scanned) constants, they are substituted again in the next pass
+				ensembleExp.substituteInPlace(new Expression(symbol), new Expression(variable.getExpression()));
+				bSubstituted = true;
+			}
+		}
+		ensembleExp.bindExpression(ensembleSymbolTable);
+		return ensembleExp.flatten();
+	}
+
+	/**
+	 * @return the values of the scanned constants in job 'jobIndex' (ordered as the value vector); constants referenced by
+	 * the overrides are substituted with their values in that job first.
+	 */
+	private double[] getScannedConstantValues(int jobIndex) throws ExpressionException, MathException {
+		SimulationSymbolTable simSymbolTable = new SimulationSymbolTable(simulation, jobIndex);
+		double[] values = new double[scannedConstantNames.length];
+		for (int c = 0; c < values.length; c++) {
+			Expression exp = new Expression(simSymbolTable.getVariable(scannedConstantNames[c]).getExpression());
+			String[] symbols;
+			int passes = 0;
+			while ((symbols = exp.getSymbols()) != null) {
+				if (++passes > simSymbolTable.getVariables().length) {
+					throw new MathException("circular definition of scanned constant "+scannedConstantNames[c]+" in job "+jobIndex);
+				}
+				for (String symbol : symbols) {
+					Variable variable = simSymbolTable.getVariable(symbol);
+					if (!(variable instanceof Constant)) {
+						throw new MathException("'"+symbol+"' in the value of scanned constant "+scannedConstantNames[c]+" is not a constant");
+					}
+					exp.substituteInPlace(new Expression(symbol), new Expression(variable.getExpression()));
+				}
+			}
+			values[c] = exp.evaluateConstant();
+		}
+		return values;
+	}
+
+	/**
+	 * solves all jobs on {@link PropertyLoader#odeEnsembleThreadsProperty} threads (default: number of processors).
+	 */
+	public ODESolverResultSet solve() throws SolverException {
+		return solve(PropertyLoader.getIntProperty(PropertyLoader.odeEnsembleThreadsProperty, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * solves all jobs and saves the results to 'file' (see {@link ColumnarODEDataFile}).
+	 */
+	public ODESolverResultSet solve(File file) throws SolverException, IOException {
+		ODESolverResultSet resultSet = solve();
+		ColumnarODEDataFile.write(resultSet, file);
+		return resultSet;
+	}
+
+	/**
+	 * solves all jobs on 'threadCount' threads.
+	 * @return time and a column for each state variable of each job.
+	 */
+	public ODESolverResultSet solve(int threadCount) throws SolverException {
+		int jobCount = getJobCount();
+		int n = stateVariableNames.length;
+		double[][] columns = new double[1 + jobCount * n][];
+		columns[0] = outputTimes.clone();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, jobCount)), r -> {
+			Thread thread = new Thread(r, "ODE ensemble");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ThreadLocal<RosenbrockIntegrator> integrators = ThreadLocal.withInitial(() -> new RosenbrockIntegrator(integrator));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(jobCount);
+			for (int job = 0; job < jobCount; job++) {
+				final int jobIndex = job;
+				futures.add(executor.submit(() -> {
+					solveJob(integrators.get(), jobIndex, columns);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SolverException("ensemble run interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			lg.error(cause.getMessage(), cause);
+			if (cause instanceof SolverException) {
+				throw (SolverException)cause;
+			}
+			throw new SolverException(cause.getMessage(), e);
+		} finally {
+			executor.shutdownNow();
+		}
+		ODESolverResultSet resultSet = new ODESolverResultSet();
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription(ReservedVariable.TIME.getName()));
+		for (int job = 0; job < jobCount; job++) {
+			for (int i = 0; i < n; i++) {
+				resultSet.addDataColumn(new ODESolverResultSetColumnDescription(getJobColumnName(stateVariableNames[i], job)));
+			}
+		}
+		resultSet.setDataColumnValues(columns, outputTimes.length);
+		return resultSet;
+	}
+
+	/**
+	 * integrates job 'jobIndex', its state variables are written to columns[1 + jobIndex*n + i].
+	 */
+	private void solveJob(RosenbrockIntegrator jobIntegrator, int jobIndex, double[][] columns) throws SolverException, UserStopException, IOException, ExpressionException, MathException {
+		SolverTaskDescription taskDescription = simulation.getSolverTaskDescription();
+		double startingTime = taskDescription.getTimeBounds().getStartingTime();
+		double endingTime = taskDescription.getTimeBounds().getEndingTime();
+		int n = stateVariableNames.length;
+		double[] values = new double[1 + n + scannedConstantNames.length];
+		values[0] = startingTime;
+		System.arraycopy(getScannedConstantValues(jobIndex), 0, values, 1 + n, scannedConstantNames.length);
+		for (int i = 0; i < n; i++) {
+			values[1 + i] = initialExpressions[i].eval(values);
+		}
+		int firstColumn = 1 + jobIndex * n;
+		for (int i = 0; i < n; i++) {
+			columns[firstColumn + i] = new double[outputTimes.length];
+		}
+		int[] outputIndex = new int[1];
+		try {
+			jobIntegrator.integrate(values, startingTime, endingTime, outputTimes,
+					taskDescription.getTimeStep().getMinimumTimeStep(), taskDescription.getTimeStep().getMaximumTimeStep(),
+					taskDescription.getErrorTolerance().getRelativeErrorTolerance(), taskDescription.getErrorTolerance().getAbsoluteErrorTolerance(),
+					new RosenbrockIntegrator.Listener() {
+						@Override
+						public void stepAccepted(double time, double[] stepValues) throws SolverException {
+							if (Thread.currentThread().isInterrupted()) {
+								throw new SolverException("ensemble run stopped");
+							}
+						}
+						@Override
+						public void output(double time, double[] outputValues) {
+							for (int i = 0; i < n; i++) {
+								columns[firstColumn + i][outputIndex[0]] = outputValues[1 + i];
+							}
+							outputIndex[0]++;
+						}
+					});
+		} catch (SolverException e) {
+			throw new SolverException("job "+jobIndex+": "+e.getMessage(), e);
+		}
+		if (outputIndex[0] < outputTimes.length) {
+			lg.warn("job "+jobIndex+" stopped at time "+values[0]+" before "+(outputTimes.length - outputIndex[0])+" of its output times, they are saved as NaN");
+			for (int i = 0; i < n; i++) {
+				Arrays.fill(columns[firstColumn + i], outputIndex[0], outputTimes.length, Double.NaN);
+			}
+		}
+	}
+}
@@ -25,6 +25,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -36,6 +37,7 @@ import cbit.vcell.math.ODESolverResultSetColumnDescription;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionBindingException;
 import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.simdata.Cachetable;
 import cbit.vcell.simdata.SimDataConstants;
 import cbit.vcell.solver.AnnotatedFunction;
@@ -65,15 +67,16 @@ private ODESimData() {
 public ODESimData(VCDataIdentifier vcdId, ODESolverResultSet odeSolverResultSet) {
 	int rowCount = odeSolverResultSet.getRowCount();
 	//
-	this.formatID = COMPACT_ODE_DATA_FORMAT_ID;
+	this.formatID = getWriteFormatID();
 	this.mathName = vcdId.getID();
 	ColumnDescription dataColumns[] = odeSolverResultSet.getDataColumnDescriptions();
 	for (int c = 0; c < dataColumns.length; c++) {
 		if(dataColumns[c] instanceof ODESolverResultSetColumnDescription)
 		    addDataColumn(new ODESolverResultSetColumnDescription((ODESolverResultSetColumnDescription)dataColumns[c]));
 	}
+	double[] row = new double[odeSolverResultSet.getDataColumnCount()];
 	for (int r = 0; r < rowCount; r++) {
-		addRow(odeSolverResultSet.getRow(r));
+		addRow(odeSolverResultSet.getRow(r, row));
 	}
 	FunctionColumnDescription functionColumns[] = odeSolverResultSet.getFunctionColumnDescriptions();
 	for (int c = 0; c < functionColumns.length; c++) {
@@ -228,6 +231,38 @@ public void readIn(DataInputStream input) throws IOException {
 			}
 			addRow(values);
 		}
+		readFunctionColumns(input);
+	} else if (formatID.equals(COMPACT_ODE_DATA_FORMAT_V2_ID)){
+		//
+		// same as compact, with the data stored column by column (read in bulk)
+		//
+		this.mathName = input.readUTF();
+		int rowCount = input.readInt();
+		int columnCount = input.readInt();
+		for (int c = 0; c < columnCount; c++) {
+			String columnName = input.readUTF();
+			String columnDisplayName = input.readUTF();
+			String columnParameterName = input.readUTF();
+			if (columnParameterName.equals("null")){
+				columnParameterName = null;
+			}
+			addDataColumn(new ODESolverResultSetColumnDescription(columnName, columnParameterName, columnDisplayName));
+		}
+		double[][] columnValues = new double[columnCount][rowCount];
+		byte[] columnBytes = new byte[rowCount * 8];
+		for (int c = 0; c < columnCount; c++) {
+			input.readFully(columnBytes);
+			ByteBuffer.wrap(columnBytes).asDoubleBuffer().get(columnValues[c]);
+		}
+		setDataColumnValues(columnValues, rowCount);
+		readFunctionColumns(input);
+	} else {
+		throw new IOException("DataInputStream is wrong format '"+formatID+"'");
+	}
+}
+
+
+private void readFunctionColumns(DataInputStream input) throws IOException {
 		try
 		{
 			int functionCount = input.readInt();
@@ -251,9 +286,6 @@ public void readIn(DataInputStream input) throws IOException {
 				}
 			}
 		}catch (EOFException e){}
-	} else {
-		throw new IOException("DataInputStream is wrong format '"+formatID+"'");
-	}
 }
 
 
@@ -295,7 +327,8 @@ public static ODESimData readODEDataFile(File odeDataFile) throws DataAccessExce
 		dataIn.close();
 		if (formatID.equals(SIMPLE_ODE_DATA_FORMAT_ID) ||
 			formatID.equals(GENERIC_ODE_DATA_FORMAT_ID) ||
-			formatID.equals(COMPACT_ODE_DATA_FORMAT_ID)) {
+			formatID.equals(COMPACT_ODE_DATA_FORMAT_ID) ||
+			formatID.equals(COMPACT_ODE_DATA_FORMAT_V2_ID)) {
 				
 			bytesIn = new ByteArrayInputStream(bytes);
 			dataIn = new DataInputStream(bytesIn);
@@ -350,7 +383,7 @@ public void writeODELogFile(File odeLogFile, File odeDataFile) throws IOExceptio
 	FileWriter fw = new FileWriter(odeLogFile);
 	fw.write(
 		ODE_DATA_IDENTIFIER + "\n" +
-		COMPACT_ODE_DATA_FORMAT_ID + "\n" +
+		getWriteFormatID() + "\n" +
 		odeDataFile.getName() + "\n"
 	);
 	fw.close();
@@ -358,11 +391,28 @@ public void writeODELogFile(File odeLogFile, File odeDataFile) throws IOExceptio
 }
 
 
+/**
+ * format written by writeOut(): version 2 (column by column) only if enabled, data servers before it can only read version 1.
+ */
+private static String getWriteFormatID() {
+	return PropertyLoader.getBooleanProperty(PropertyLoader.odeCompactFormatV2Property, false) ? COMPACT_ODE_DATA_FORMAT_V2_ID : COMPACT_ODE_DATA_FORMAT_ID;
+}
+
+
 /**
  * JMW : This really should be synchronized...
  */
 public void writeOut(DataOutputStream output) throws IOException {
-	output.writeUTF(COMPACT_ODE_DATA_FORMAT_ID);
+	writeOut(output, getWriteFormatID());
+}
+
+
+void writeOut(DataOutputStream output, String writeFormatID) throws IOException {
+	boolean bColumnByColumn = writeFormatID.equals(COMPACT_ODE_DATA_FORMAT_V2_ID);
+	if (!bColumnByColumn && !writeFormatID.equals(COMPACT_ODE_DATA_FORMAT_ID)) {
+		throw new IllegalArgumentException("cannot write ODE data format '"+writeFormatID+"'");
+	}
+	output.writeUTF(writeFormatID);
 	output.writeUTF(mathName);
 	output.writeInt(getRowCount());
 	output.writeInt(getDataColumnCount());
@@ -380,10 +430,21 @@ public void writeOut(DataOutputStream output) throws IOException {
 			}
 		}
 	}                          
-	for (int r = 0; r < getRowCount(); r++) {
-		double row[] = getRow(r);
+	if (bColumnByColumn) {
+		// column by column, in bulk (big endian like DataOutputStream)
+		ByteBuffer columnBytes = ByteBuffer.allocate(getRowCount() * 8);
 		for (int c = 0; c < getDataColumnCount(); c++) {
-			output.writeDouble(row[c]);
+			columnBytes.clear();
+			columnBytes.asDoubleBuffer().put(getColumnView(c));
+			output.write(columnBytes.array(), 0, getRowCount() * 8);
+		}
+	} else {
+		double[] row = new double[getDataColumnCount()];
+		for (int r = 0; r < getRowCount(); r++) {
+			getRow(r, row);
+			for (int c = 0; c < row.length; c++) {
+				output.writeDouble(row[c]);
+			}
 		}
 	}
 	output.writeInt(getFunctionColumnCount());
@@ -415,29 +476,33 @@ public static ODESimData readIDADataFile(VCDataIdentifier vcdId, File dataFile,
 	
 	BufferedReader bufferedReader = null;
 	try {
-		bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile)));
-		//  Read header
-		String line = bufferedReader.readLine();
-		if (line == null) {
-			//  throw exception
-			return null;
-		}
-		StringTokenizer st = new StringTokenizer(line, ":");
-		while (st.hasMoreTokens()) {
-			odeSimData.addDataColumn(new ODESolverResultSetColumnDescription(st.nextToken()));
-		}
-		//  Read data
-		while ((line = bufferedReader.readLine()) != null) {
-			st = new StringTokenizer(line);
-			double[] values = new double[odeSimData.getDataColumnCount()];
-			int count = 0;
+		if (ColumnarODEDataFile.isColumnarFile(dataFile)) {
+			ColumnarODEDataFile.read(odeSimData, dataFile);
+		} else {
+			bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile)));
+			//  Read header
+			String line = bufferedReader.readLine();
+			if (line == null) {
+				//  throw exception
+				return null;
+			}
+			StringTokenizer st = new StringTokenizer(line, ":");
 			while (st.hasMoreTokens()) {
-				values[count ++] = Double.valueOf(st.nextToken()).doubleValue();
+				odeSimData.addDataColumn(new ODESolverResultSetColumnDescription(st.nextToken()));
 			}
-			if (count == odeSimData.getDataColumnCount()){
-				odeSimData.addRow(values);
-			} else {
-				break;
+			//  Read data
+			while ((line = bufferedReader.readLine()) != null) {
+				st = new StringTokenizer(line);
+				double[] values = new double[odeSimData.getDataColumnCount()];
+				int count = 0;
+				while (st.hasMoreTokens()) {
+					values[count ++] = Double.valueOf(st.nextToken()).doubleValue();
+				}
+				if (count == odeSimData.getDataColumnCount()){
+					odeSimData.addRow(values);
+				} else {
+					break;
+				}
 			}
 		}
 		//
@@ -457,24 +522,7 @@ public static ODESimData readIDADataFile(VCDataIdentifier vcdId, File dataFile,
 	// read functions file
 	
 	if (!odeSimData.getColumnDescriptions(0).getName().equals(SimDataConstants.HISTOGRAM_INDEX_NAME)) {
-		Vector<AnnotatedFunction> funcList;
-		try {
-			funcList = FunctionFileGenerator.readFunctionsFile(functionsFile, vcdId.getID());
-			for (AnnotatedFunction func : funcList){
-				try {
-					Expression expression = new Expression(func.getExpression());
-					odeSimData.addFunctionColumn(new FunctionColumnDescription(expression, func.getName(), null, func.getName(), false));
-				} catch (ExpressionException e) {
-					throw new RuntimeException("Could not add function " + func.getName() + " to annotatedFunctionList");
-				}
-			}	
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace(System.out);
-			throw new DataAccessException(e1.getMessage());
-		} catch (IOException e1) {
-			e1.printStackTrace(System.out);
-			throw new DataAccessException(e1.getMessage());
-		}
+		addFunctionColumns(odeSimData, vcdId, functionsFile);
 	}
 
 	if (keepMost > 0) {
@@ -483,6 +531,47 @@ public static ODESimData readIDADataFile(VCDataIdentifier vcdId, File dataFile,
 	return odeSimData;
 }
 
+/**
+ * reads the columns of job 'jobIndex' from an ensemble file written by {@link ODEEnsembleSolver} (all jobs of a scan in one file)
+ */
+public static ODESimData readEnsembleDataFile(VCDataIdentifier vcdId, File dataFile, int jobIndex, File functionsFile) throws DataAccessException {
+	ODESimData odeSimData = new ODESimData();
+	odeSimData.formatID = ENSEMBLE_DATA_FORMAT_ID;
+	odeSimData.mathName = vcdId.getID();
+	try {
+		ColumnarODEDataFile.read(odeSimData, dataFile, columnName -> ODEEnsembleSolver.getVariableName(columnName, jobIndex));
+	} catch (IOException e) {
+		e.printStackTrace(System.out);
+		throw new DataAccessException("failed to read ensemble data file "+dataFile.getName()+": "+e.getMessage());
+	}
+	if (odeSimData.getDataColumnCount() < 2) {
+		throw new DataAccessException("no results of job "+jobIndex+" in ensemble data file "+dataFile.getName());
+	}
+	addFunctionColumns(odeSimData, vcdId, functionsFile);
+	return odeSimData;
+}
+
+private static void addFunctionColumns(ODESimData odeSimData, VCDataIdentifier vcdId, File functionsFile) throws DataAccessException {
+	Vector<AnnotatedFunction> funcList;
+	try {
+		funcList = FunctionFileGenerator.readFunctionsFile(functionsFile, vcdId.getID());
+		for (AnnotatedFunction func : funcList){
+			try {
+				Expression expression = new Expression(func.getExpression());
+				odeSimData.addFunctionColumn(new FunctionColumnDescription(expression, func.getName(), null, func.getName(), false));
+			} catch (ExpressionException e) {
+				throw new RuntimeException("Could not add function " + func.getName() + " to annotatedFunctionList");
+			}
+		}	
+	} catch (FileNotFoundException e1) {
+		e1.printStackTrace(System.out);
+		throw new DataAccessException(e1.getMessage());
+	} catch (IOException e1) {
+		e1.printStackTrace(System.out);
+		throw new DataAccessException(e1.getMessage());
+	}
+}
+
 public static ODESimData readNFSIMDataFile(VCDataIdentifier vcdId, File dataFile, File functionsFile) throws DataAccessException, IOException {
 	System.out.println("reading NetCDF file : " + dataFile);
 	ODESimData odeSimData = new ODESimData();	
@@ -12,6 +12,7 @@ package cbit.vcell.solver.ode;
 
 import cbit.vcell.math.MathException;
 import cbit.vcell.math.OdeEquation;
+import cbit.vcell.parser.CompiledExpression;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionException;
 import cbit.vcell.solver.SimulationSymbolTable;
@@ -22,6 +23,7 @@ import cbit.vcell.solver.SimulationSymbolTable;
  */
 public class ODEStateVariable extends StateVariable {
 	private Expression optimizedRateExp = null;
+	private CompiledExpression compiledRateExp = null;
 	private Expression initialExp = null;
 /**
  * TimeSeriesData constructor comment.
@@ -30,6 +32,7 @@ public ODEStateVariable(OdeEquation ode, SimulationSymbolTable simSymbolTable) t
 	super(ode.getVariable());
 	ode.bind(simSymbolTable);
 	optimizedRateExp = ode.getFlattenedRateExpression(simSymbolTable);
+	compiledRateExp = optimizedRateExp.compile();
 	initialExp = ode.getInitialExpression();
 }
 /**
@@ -46,7 +49,7 @@ public double evaluateIC(double values[]) throws ExpressionException {
  * @param values double[]
  */
 public double evaluateRate(double values[]) throws ExpressionException {
-	return optimizedRateExp.evaluateVector(values);
+	return compiledRateExp.eval(values);
 }
 /**
  * This method was created in VisualAge.
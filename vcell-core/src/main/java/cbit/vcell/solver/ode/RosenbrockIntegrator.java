@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.io.IOException;
+import java.util.TreeSet;
+
+import cbit.vcell.math.MathException;
+import cbit.vcell.math.ReservedVariable;
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.Discontinuity;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.parser.SimpleSymbolTable;
+import cbit.vcell.solver.ExplicitOutputTimeSpec;
+import cbit.vcell.solver.OutputTimeSpec;
+import cbit.vcell.solver.SolverException;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.UserStopException;
+
+/**
+ * Adaptive time stepping with the L-stable 3 stage, 3rd order Rosenbrock method ROS3 (Sandu et al., Atmospheric Environment 31
+ * (1997) 3459) and its embedded 2nd order error estimate, for the rates of a value vector (state variables at given indices,
+ * time and any other symbols the rates are bound to).
+ * <p>
+ * Each step needs one jacobian ({@link SparseJacobian}) and one LU factorization of I/(h*gamma) - J ({@link SparseLU}).
+ * Steps stop exactly at output times and at discontinuities of the rates which only depend (linearly) on time, such as a stimulus
+ * switched on at t > t0, which the stages would otherwise step over unnoticed.
+ * <p>
+ * The rates and jacobian are shared, but an instance has work arrays: use {@link #RosenbrockIntegrator(RosenbrockIntegrator)} for
+ * each thread.
+ */
+class RosenbrockIntegrator {
+
+	/**
+	 * receives the state while integrating, the values may be changed (e.g. to project onto a fast system) or an exception thrown to stop.
+	 */
+	interface Listener {
+		/**
+		 * after each accepted step.
+		 */
+		void stepAccepted(double time, double[] values) throws SolverException, UserStopException, IOException, ExpressionException, MathException;
+		/**
+		 * at each output time (also those at the starting time), after stepAccepted().
+		 */
+		void output(double time, double[] values) throws SolverException, UserStopException, IOException, ExpressionException, MathException;
+	}
+
+	private static final int STAGES = 3;
+	private static final double ORDER = 3.0;
+	private static final double GAMMA = 0.43586652150845899941601945119356;
+	private static final double[] A = { 1.0, 1.0, 0.0 };	// a21, a31, a32
+	private static final double[] C = { -1.0156171083877702091975600115545, 4.0759956452537699824805835358067, 9.2076794298330791242156818474003 };	// c21, c31, c32
+	private static final boolean[] NEW_F = { true, true, false };	// stage 3 is evaluated at the point of stage 2
+	private static final double[] ALPHA = { 0.0, 0.43586652150845899941601945119356, 0.43586652150845899941601945119356 };
+	private static final double[] STAGE_GAMMA = { 0.43586652150845899941601945119356, 0.24291996454816804366592249683314, 2.1851380027664058511513169485832 };
+	private static final double[] M = { 1.0, 6.1697947043828245592553615689730, -0.42772256543218573326238373806514 };
+	private static final double[] E = { 0.5, -2.9079558716805469821718236208017, 0.22354069897811569627360909276199 };
+
+	private static final double SAFETY = 0.9;
+	private static final double MIN_STEP_FACTOR = 0.2;
+	private static final double MAX_STEP_FACTOR = 6.0;
+
+	private final CompiledExpression[] rates;
+	private final SparseJacobian jacobian;
+	private final int[] stateIndexes;
+	private final int timeIndex;
+	private final double[] discontinuityTimes;
+	private final SparseLU lu;
+	private final double[] jacobianValues;
+	private final double[] matrixValues;
+	private final double[] rates0;			// rates at the start of the step
+	private final double[] stageRates;
+	private final double[] timeDerivatives;
+	private final double[][] k;				// [stage][state variable]
+	private double[] stageValues = null;
+	private double[] newValues = null;
+
+	/**
+	 * @param rateExpressions rate of each state variable, flattened and bound to the value vector.
+	 * @param variableNames name of each state variable.
+	 * @param stateIndexes index of each state variable in the value vector.
+	 * @param timeIndex index of time in the value vector.
+	 */
+	RosenbrockIntegrator(Expression[] rateExpressions, String[] variableNames, int[] stateIndexes, int timeIndex) throws ExpressionException {
+		int n = rateExpressions.length;
+		this.rates = new CompiledExpression[n];
+		for (int i = 0; i < n; i++) {
+			rates[i] = rateExpressions[i].compile();
+		}
+		this.jacobian = new SparseJacobian(rateExpressions, variableNames, ReservedVariable.TIME.getName());
+		this.stateIndexes = stateIndexes.clone();
+		this.timeIndex = timeIndex;
+		this.discontinuityTimes = getTimeDiscontinuities(rateExpressions);
+		this.lu = new SparseLU(n, jacobian.getRowStarts(), jacobian.getColumns());
+		this.jacobianValues = new double[jacobian.getEntryCount()];
+		this.matrixValues = new double[jacobian.getEntryCount()];
+		this.rates0 = new double[n];
+		this.stageRates = new double[n];
+		this.timeDerivatives = new double[n];
+		this.k = new double[STAGES][n];
+	}
+
+	/**
+	 * integrator sharing the (immutable) rates, jacobian and LU ordering of 'other', with its own work arrays.
+	 */
+	RosenbrockIntegrator(RosenbrockIntegrator other) {
+		int n = other.rates.length;
+		this.rates = other.rates;
+		this.jacobian = other.jacobian;
+		this.stateIndexes = other.stateIndexes;
+		this.timeIndex = other.timeIndex;
+		this.discontinuityTimes = other.discontinuityTimes;
+		this.lu = new SparseLU(other.lu);
+		this.jacobianValues = new double[jacobian.getEntryCount()];
+		this.matrixValues = new double[jacobian.getEntryCount()];
+		this.rates0 = new double[n];
+		this.stageRates = new double[n];
+		this.timeDerivatives = new double[n];
+		this.k = new double[STAGES][n];
+	}
+
+	/**
+	 * @return sorted times where a relational subexpression of the rates, which is a linear function of time only, changes.
+	 */
+	static double[] getTimeDiscontinuities(Expression[] rates) throws ExpressionException {
+		String timeName = ReservedVariable.TIME.getName();
+		SimpleSymbolTable timeSymbolTable = new SimpleSymbolTable(new String[] { timeName });
+		TreeSet<Double> times = new TreeSet<Double>();
+		for (Expression rate : rates) {
+			for (Discontinuity discontinuity : rate.getDiscontinuities()) {
+				Expression root = new Expression(discontinuity.getRootFindingExp());
+				String[] symbols = root.getSymbols();
+				if (symbols == null || symbols.length != 1 || !symbols[0].equals(timeName)) {
+					continue;
+				}
+				root.bindExpression(timeSymbolTable);
+				double f0 = root.evaluateVector(new double[] { 0.0 });
+				double slope = root.evaluateVector(new double[] { 1.0 }) - f0;
+				double f2 = root.evaluateVector(new double[] { 2.0 });
+				if (slope != 0.0 && Math.abs(f2 - (f0 + 2 * slope)) <= 1e-12 * Math.max(1.0, Math.abs(f2))) {
+					times.add(-f0 / slope);
+				}
+			}
+		}
+		double[] sortedTimes = new double[times.size()];
+		int i = 0;
+		for (double time : times) {
+			sortedTimes[i++] = time;
+		}
+		return sortedTimes;
+	}
+
+	/**
+	 * @return the uniform or explicit output times, null for the default output (every 'keepEvery' steps).
+	 */
+	static double[] getOutputTimes(SolverTaskDescription taskDescription) {
+		OutputTimeSpec outputTimeSpec = taskDescription.getOutputTimeSpec();
+		double startingTime = taskDescription.getTimeBounds().getStartingTime();
+		double endingTime = taskDescription.getTimeBounds().getEndingTime();
+		if (outputTimeSpec.isExplicit()) {
+			return ((ExplicitOutputTimeSpec)outputTimeSpec).getOutputTimes();
+		} else if (outputTimeSpec.isUniform()) {
+			double outputTimeStep = ((UniformOutputTimeSpec)outputTimeSpec).getOutputTimeStep();
+			int count = (int)Math.round((endingTime - startingTime) / outputTimeStep);
+			double[] times = new double[count + 1];
+			for (int i = 0; i <= count; i++) {
+				times[i] = Math.min(endingTime, startingTime + i * outputTimeStep);
+			}
+			return times;
+		}
+		return null;
+	}
+
+	/**
+	 * integrates 'values' (in place) from startingTime to endingTime, or to the last output time if that is earlier.
+	 * @param outputTimes sorted output times, or null to only report accepted steps.
+	 * @param minimumTimeStep the integration fails if the error cannot be met with a larger step.
+	 */
+	void integrate(double[] values, double startingTime, double endingTime, double[] outputTimes,
+			double minimumTimeStep, double maximumTimeStep, double relativeErrorTolerance, double absoluteErrorTolerance, Listener listener)
+			throws SolverException, UserStopException, IOException, ExpressionException, MathException {
+		if (relativeErrorTolerance < 0.0 || absoluteErrorTolerance < 0.0 || (relativeErrorTolerance == 0.0 && absoluteErrorTolerance == 0.0) || startingTime >= endingTime) {
+			throw new SolverException("Invalid parameters");
+		}
+		int n = rates.length;
+		if (stageValues == null || stageValues.length != values.length) {
+			stageValues = new double[values.length];
+			newValues = new double[values.length];
+		}
+		double currentTime = startingTime;
+		values[timeIndex] = currentTime;
+		//
+		// initial step from the rates (the local error of the first step is about h^3 * |f|)
+		//
+		double h = Math.min(maximumTimeStep, endingTime - startingTime);
+		for (int i = 0; i < n; i++) {
+			double tolerance = relativeErrorTolerance * Math.abs(values[stateIndexes[i]]) + absoluteErrorTolerance;
+			double rate = Math.abs(rates[i].eval(values));
+			if (rate * Math.pow(h, ORDER) > tolerance) {
+				h = Math.pow(tolerance / rate, 1.0 / ORDER);
+			}
+		}
+		int nextOutput = 0;
+		int nextDiscontinuity = 0;
+		boolean previousStepFailed = false;
+		boolean bStepStartEvaluated = false;
+		boolean bAtDiscontinuity = false;
+		while (true) {
+			if (outputTimes != null) {
+				while (nextOutput < outputTimes.length && outputTimes[nextOutput] <= currentTime) {
+					listener.output(currentTime, values);
+					nextOutput++;
+				}
+			}
+			if (currentTime >= endingTime || (outputTimes != null && nextOutput == outputTimes.length)) {
+				return;
+			}
+			final double minimumStep = Math.max(26 * 1e-12 * Math.abs(currentTime), minimumTimeStep);
+			h = Math.max(Math.min(h, maximumTimeStep), minimumStep);
+			double stopTime = (outputTimes != null) ? Math.min(endingTime, outputTimes[nextOutput]) : endingTime;
+			while (nextDiscontinuity < discontinuityTimes.length && discontinuityTimes[nextDiscontinuity] <= currentTime) {
+				nextDiscontinuity++;
+			}
+			if (nextDiscontinuity < discontinuityTimes.length) {
+				stopTime = Math.min(stopTime, discontinuityTimes[nextDiscontinuity]);
+			}
+			double timeRemaining = stopTime - currentTime;
+			boolean bHitsStopTime = false;
+			if (timeRemaining <= h * (1 + 1e-10)) {
+				h = timeRemaining;
+				bHitsStopTime = true;
+			} else if (timeRemaining < 2 * h) {
+				// look ahead, two similar steps rather than a long and a tiny one
+				h = 0.5 * timeRemaining;
+			}
+			// a step starting at a discontinuity is evaluated on its right side
+			values[timeIndex] = bAtDiscontinuity ? Math.nextUp(currentTime) : currentTime;
+			if (!bStepStartEvaluated) {
+				evaluateStepStart(values);
+				bStepStartEvaluated = true;
+			}
+			double errorRatio = step(values, currentTime, h, relativeErrorTolerance, absoluteErrorTolerance);
+			if (errorRatio <= 1.0) {
+				currentTime = bHitsStopTime ? stopTime : currentTime + h;
+				System.arraycopy(newValues, 0, values, 0, values.length);
+				values[timeIndex] = currentTime;
+				bStepStartEvaluated = false;
+				bAtDiscontinuity = bHitsStopTime && nextDiscontinuity < discontinuityTimes.length && stopTime == discontinuityTimes[nextDiscontinuity];
+				listener.stepAccepted(currentTime, values);
+				double s = (errorRatio > 0) ? SAFETY / Math.pow(errorRatio, 1.0 / ORDER) : MAX_STEP_FACTOR;
+				s = Math.min(MAX_STEP_FACTOR, Math.max(MIN_STEP_FACTOR, s));
+				if (previousStepFailed) {
+					s = Math.min(1.0, s);
+				}
+				h = h * s;
+				previousStepFailed = false;
+			} else {
+				//  Unsuccessful step (or singular iteration matrix).  Reduce the stepsize and try again.
+				double s = Double.isInfinite(errorRatio) ? MIN_STEP_FACTOR : Math.max(MIN_STEP_FACTOR, SAFETY / Math.pow(errorRatio, 1.0 / ORDER));
+				h = h * s;
+				previousStepFailed = true;
+				if (h < minimumStep) {
+					throw new SolverException("Requested error unattainable at smallest allowable stepsize (time="+currentTime+")");
+				}
+			}
+		}
+	}
+
+	private void evaluateStepStart(double[] values) throws ExpressionException {
+		for (int i = 0; i < rates.length; i++) {
+			rates0[i] = rates[i].eval(values);
+		}
+		jacobian.evaluate(values, jacobianValues);
+		if (jacobian.isTimeDependent()) {
+			jacobian.evaluateTimeDerivatives(values, timeDerivatives);
+		}
+	}
+
+	/**
+	 * Rosenbrock step of length h from 'values' at time t into newValues.
+	 * @return the scaled error estimate (the step is accepted if <= 1), infinite if the iteration matrix is singular or the
+	 * stages are not finite.
+	 */
+	private double step(double[] values, double t, double h, double relativeErrorTolerance, double absoluteErrorTolerance) throws ExpressionException {
+		int n = rates.length;
+		//
+		// iteration matrix I/(h*gamma) - J
+		//
+		int[] rowStarts = jacobian.getRowStarts();
+		int[] columns = jacobian.getColumns();
+		double diagonal = 1.0 / (h * GAMMA);
+		for (int i = 0; i < n; i++) {
+			for (int m = rowStarts[i]; m < rowStarts[i + 1]; m++) {
+				matrixValues[m] = (columns[m] == i) ? diagonal - jacobianValues[m] : -jacobianValues[m];
+			}
+		}
+		if (!lu.factor(matrixValues)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		//
+		// stages
+		//
+		System.arraycopy(values, 0, stageValues, 0, values.length);
+		double[] f = rates0;
+		for (int s = 0; s < STAGES; s++) {
+			int offset = s * (s - 1) / 2;
+			double[] ks = k[s];
+			if (s > 0 && NEW_F[s]) {
+				for (int i = 0; i < n; i++) {
+					double value = values[stateIndexes[i]];
+					for (int j = 0; j < s; j++) {
+						value += A[offset + j] * k[j][i];
+					}
+					stageValues[stateIndexes[i]] = value;
+				}
+				stageValues[timeIndex] = t + ALPHA[s] * h;
+				f = stageRates;
+				for (int i = 0; i < n; i++) {
+					f[i] = rates[i].eval(stageValues);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				double value = f[i];
+				for (int j = 0; j < s; j++) {
+					value += (C[offset + j] / h) * k[j][i];
+				}
+				if (jacobian.isTimeDependent()) {
+					value += h * STAGE_GAMMA[s] * timeDerivatives[i];
+				}
+				ks[i] = value;
+			}
+			lu.solve(ks);
+		}
+		//
+		// solution and error estimate
+		//
+		System.arraycopy(values, 0, newValues, 0, values.length);
+		newValues[timeIndex] = t + h;
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			int I = stateIndexes[i];
+			double value = values[I];
+			double error = 0.0;
+			for (int s = 0; s < STAGES; s++) {
+				value += M[s] * k[s][i];
+				error += E[s] * k[s][i];
+			}
+			newValues[I] = value;
+			double scale = absoluteErrorTolerance + relativeErrorTolerance * Math.max(Math.abs(values[I]), Math.abs(value));
+			sum += (error / scale) * (error / scale);
+		}
+		double errorRatio = Math.sqrt(sum / n);
+		return Double.isNaN(errorRatio) ? Double.POSITIVE_INFINITY : errorRatio;
+	}
+}
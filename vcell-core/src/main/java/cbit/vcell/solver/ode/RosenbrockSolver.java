@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.io.IOException;
+
+import cbit.vcell.math.MathException;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.solver.DefaultOutputTimeSpec;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SolverException;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.UserStopException;
+
+/**
+ * In-process solver for stiff ODE systems, with the Rosenbrock method of {@link RosenbrockIntegrator}.
+ * <p>
+ * Each step needs one jacobian and one LU factorization of I/(h*gamma) - J.  The jacobian is analytic
+ * ({@link SparseJacobian}, from the flattened rates so math overrides are included) and sparse, and the iteration matrix is
+ * factored by {@link SparseLU} in the pattern of the jacobian.  There is no native solver to launch and no output file to parse,
+ * which matters for the many short runs of parameter estimation.
+ * <p>
+ * Output follows the output time spec: every 'keepEvery' steps (default), or exactly at uniform or explicit output times (the
+ * step is shortened to hit them).  Events and sensitivity analysis are not supported.
+ */
+public class RosenbrockSolver extends DefaultODESolver {
+	private RosenbrockIntegrator integrator = null;
+
+public RosenbrockSolver(SimulationTask simTask, File directory) throws SolverException {
+	super(simTask, directory, 2);
+}
+
+/**
+ * @return true if 'simulation' is non-spatial and has no events and no sensitivity parameter.
+ */
+public static boolean isSupported(Simulation simulation) {
+	return !simulation.isSpatial()
+			&& !simulation.getMathDescription().hasEvents()
+			&& simulation.getSolverTaskDescription().getSensitivityParameter() == null;
+}
+
+@Override
+protected void initialize() throws SolverException {
+	if (!isSupported(simTask.getSimulation())) {
+		throw new SolverException("events and sensitivity analysis are not supported by the in-process stiff solver");
+	}
+	super.initialize();
+	try {
+		int n = getStateVariableCount();
+		Expression[] rates = new Expression[n];
+		String[] names = new String[n];
+		int[] stateIndexes = new int[n];
+		for (int i = 0; i < n; i++) {
+			rates[i] = getStateVariable(i).getRateExpression();
+			names[i] = getStateVariable(i).getVariable().getName();
+			stateIndexes[i] = getVariableIndex(i);
+		}
+		integrator = new RosenbrockIntegrator(rates, names, stateIndexes, getTimeIndex());
+	} catch (ExpressionException e) {
+		throw new SolverException("failed to create jacobian: "+e.getMessage(), e);
+	}
+}
+
+@Override
+protected void integrate() throws SolverException, UserStopException, IOException {
+	try {
+		SolverTaskDescription taskDescription = simTask.getSimulation().getSolverTaskDescription();
+		double startingTime = taskDescription.getTimeBounds().getStartingTime();
+		double endingTime = taskDescription.getTimeBounds().getEndingTime();
+		fieldCurrentTime = startingTime;
+		// before computation begins, settle fast equilibrium
+		solveFastSystem();
+		// check for failure
+		check(getValueVector(0));
+		double[] outputTimes = RosenbrockIntegrator.getOutputTimes(taskDescription);
+		final int keepEvery = (outputTimes == null) ? ((DefaultOutputTimeSpec)taskDescription.getOutputTimeSpec()).getKeepEvery() : 0;
+		if (outputTimes == null) {
+			updateResultSet();
+		}
+		final int[] iteration = new int[1];
+		integrator.integrate(getValueVector(0), startingTime, endingTime, outputTimes,
+				taskDescription.getTimeStep().getMinimumTimeStep(), taskDescription.getTimeStep().getMaximumTimeStep(),
+				taskDescription.getErrorTolerance().getRelativeErrorTolerance(), taskDescription.getErrorTolerance().getAbsoluteErrorTolerance(),
+				new RosenbrockIntegrator.Listener() {
+					@Override
+					public void stepAccepted(double time, double[] values) throws SolverException, UserStopException, IOException, ExpressionException, MathException {
+						checkForUserStop();
+						fieldCurrentTime = time;
+						solveFastSystem();
+						// check for failure
+						check(values);
+						iteration[0]++;
+						if (keepEvery > 0 && (iteration[0] % keepEvery) == 0) {
+							updateResultSet();
+						}
+					}
+					@Override
+					public void output(double time, double[] values) throws IOException, ExpressionException {
+						fieldCurrentTime = time;
+						updateResultSet();
+					}
+				});
+		// store last time point
+		if (keepEvery > 0 && (iteration[0] % keepEvery) != 0) {
+			updateResultSet();
+		}
+	} catch (ExpressionException | MathException e) {
+		throw new SolverException("Solver failed: "+e.getMessage(), e);
+	}
+}
+
+/**
+ * projects value vector 0 onto the fast system (if any).
+ */
+private void solveFastSystem() throws SolverException, ExpressionException, MathException {
+	if (getFastAlgebraicSystem() != null) {
+		fieldValueVectors.copyValues(0, 1);
+		getFastAlgebraicSystem().initVars(getValueVector(0), getValueVector(1));
+		getFastAlgebraicSystem().solveSystem(getValueVector(0), getValueVector(1));
+		fieldValueVectors.copyValues(1, 0);
+	}
+}
+
+/**
+ * not used, steps are taken by the integrator.
+ */
+@Override
+protected void step(double t, double h) throws SolverException {
+	throw new SolverException("RosenbrockSolver integrates with adaptive steps");
+}
+}
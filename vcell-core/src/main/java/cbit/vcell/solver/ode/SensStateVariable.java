@@ -15,6 +15,7 @@ import java.util.Vector;
 import cbit.vcell.math.Constant;
 import cbit.vcell.math.MathException;
 import cbit.vcell.math.VolVariable;
+import cbit.vcell.parser.CompiledExpression;
 import cbit.vcell.parser.Expression;
 import cbit.vcell.parser.ExpressionException;
 import cbit.vcell.parser.SymbolTable;
@@ -27,6 +28,8 @@ import cbit.vcell.solver.SimulationSymbolTable;
 public class SensStateVariable extends StateVariable {
 	Expression optimizedRateSensExp = null;
 	Expression optimizedJacobianExps[] = null;
+	private CompiledExpression compiledRateSensExp = null;
+	private CompiledExpression compiledJacobianExps[] = null;
 	//SensVariable sensVars[] = null;
 	Vector<SensVariable> sensVars = null;
 /**
@@ -68,7 +71,7 @@ public double evaluateRate(double values[]) throws ExpressionException {
 	for (int i=0;i<sensVars.size();i++){
 		SensVariable sensVariable = (SensVariable) sensVars.elementAt(i);
 		double sensVarValue = values[sensVariable.getIndex()];
-		value += optimizedJacobianExps[i].evaluateVector(values) * sensVarValue;
+		value += compiledJacobianExps[i].eval(values) * sensVarValue;
 	}
 
 	
@@ -76,7 +79,7 @@ public double evaluateRate(double values[]) throws ExpressionException {
 	// add rate sensitivity   ------
 	//                         d Pj
 	//
-	value += optimizedRateSensExp.evaluateVector(values);
+	value += compiledRateSensExp.eval(values);
 
 /* 
     double t = values[ReservedVariable.TIME.getIndex()];
@@ -212,12 +215,14 @@ private void init(RateSensitivity rateSensitivity, Jacobian jacobian, SymbolTabl
 	//     d Cj
 	//
 	optimizedJacobianExps = new Expression[jacobian.getNumRates()];
+	compiledJacobianExps = new CompiledExpression[jacobian.getNumRates()];
 	int currIndex = jacobian.getRateIndex(var);
 	
 	for (int i=0;i<optimizedJacobianExps.length;i++){
 		Expression exp = jacobian.getJexp(currIndex,i);
 		exp.bindExpression(symbolTable);
 		optimizedJacobianExps[i] = exp.flatten();
+		compiledJacobianExps[i] = optimizedJacobianExps[i].compile();
 	}
 
 	//
@@ -231,5 +236,6 @@ private void init(RateSensitivity rateSensitivity, Jacobian jacobian, SymbolTabl
 	Expression exp = rateSensitivity.getCPexp(var,parameter.getName());
 	exp.bindExpression(symbolTable);
 	optimizedRateSensExp = exp.flatten();
+	compiledRateSensExp = optimizedRateSensExp.compile();
 }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+
+/**
+ * Analytic jacobian dF<sub>i</sub>/dC<sub>j</sub> of a system of ODE rates, stored by rows (compressed sparse row).
+ * <p>
+ * Each rate is only differentiated with respect to the state variables it refers to ({@link Jacobian#getPartialDerivative(Expression, String)}),
+ * derivatives which simplify to zero are dropped and the others are compiled with the bindings of the rates, so they are evaluated
+ * with the same value vector.  The diagonal is always part of the pattern.  The explicit time derivative of the rates is kept as well
+ * (for non-autonomous systems).
+ */
+class SparseJacobian {
+
+	private final int size;
+	private final int[] rowStarts;
+	private final int[] columns;
+	private final CompiledExpression[] entries;		// null for structural zeros (diagonal only)
+	private final CompiledExpression[] timeDerivatives;	// null if the rate does not depend explicitly on time
+	private final boolean bTimeDependent;
+
+	/**
+	 * @param flattenedRates rate of each state variable, flattened and bound.
+	 * @param variableNames name of each state variable (same order as the rates).
+	 * @param timeName name of the time variable.
+	 */
+	SparseJacobian(Expression[] flattenedRates, String[] variableNames, String timeName) throws ExpressionException {
+		this.size = flattenedRates.length;
+		HashMap<String,Integer> variableIndices = new HashMap<String,Integer>();
+		for (int i = 0; i < variableNames.length; i++) {
+			variableIndices.put(variableNames[i], i);
+		}
+		List<CompiledExpression> entryList = new ArrayList<CompiledExpression>();
+		List<Integer> columnList = new ArrayList<Integer>();
+		this.rowStarts = new int[size + 1];
+		this.timeDerivatives = new CompiledExpression[size];
+		boolean bAnyTime = false;
+		for (int i = 0; i < size; i++) {
+			TreeSet<Integer> dependencies = new TreeSet<Integer>();
+			dependencies.add(i);
+			boolean bTime = false;
+			String[] symbols = flattenedRates[i].getSymbols();
+			if (symbols != null) {
+				for (String symbol : symbols) {
+					Integer j = variableIndices.get(symbol);
+					if (j != null) {
+						dependencies.add(j);
+					} else if (symbol.equals(timeName)) {
+						bTime = true;
+					}
+				}
+			}
+			for (int j : dependencies) {
+				Expression derivative = Jacobian.getPartialDerivative(flattenedRates[i], variableNames[j]);
+				if (derivative.isZero() && j != i) {
+					continue;
+				}
+				columnList.add(j);
+				entryList.add(derivative.isZero() ? null : derivative.compile());
+			}
+			rowStarts[i + 1] = columnList.size();
+			if (bTime) {
+				Expression derivative = Jacobian.getPartialDerivative(flattenedRates[i], timeName);
+				if (!derivative.isZero()) {
+					timeDerivatives[i] = derivative.compile();
+					bAnyTime = true;
+				}
+			}
+		}
+		this.columns = new int[columnList.size()];
+		for (int k = 0; k < columns.length; k++) {
+			columns[k] = columnList.get(k);
+		}
+		this.entries = entryList.toArray(new CompiledExpression[entryList.size()]);
+		this.bTimeDependent = bAnyTime;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	int[] getRowStarts() {
+		return rowStarts;
+	}
+
+	int[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return number of stored entries (nonzero derivatives and the diagonal).
+	 */
+	int getEntryCount() {
+		return columns.length;
+	}
+
+	boolean isTimeDependent() {
+		return bTimeDependent;
+	}
+
+	/**
+	 * @param values value vector the rates are bound to.
+	 * @param jacobianValues receives the entries (ordered as {@link #getColumns()}).
+	 */
+	void evaluate(double[] values, double[] jacobianValues) throws ExpressionException {
+		for (int k = 0; k < entries.length; k++) {
+			jacobianValues[k] = (entries[k] != null) ? entries[k].eval(values) : 0.0;
+		}
+	}
+
+	/**
+	 * @param values value vector the rates are bound to.
+	 * @param derivatives receives dF<sub>i</sub>/dt for each rate.
+	 */
+	void evaluateTimeDerivatives(double[] values, double[] derivatives) throws ExpressionException {
+		for (int i = 0; i < size; i++) {
+			derivatives[i] = (timeDerivatives[i] != null) ? timeDerivatives[i].eval(values) : 0.0;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.ode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * LU factorization of a square sparse matrix with a fixed nonzero pattern, for the iteration matrices of implicit solvers
+ * which are factored again and again with new values.
+ * <p>
+ * The symbolic phase is done once: rows and columns are permuted symmetrically by a (greedy) minimum degree ordering of the
+ * pattern of A+A<sup>T</sup> and the fill-in of the elimination is added to the pattern.  Each {@link #factor(double[])}
+ * then only does the arithmetic, in place in the filled pattern.  There is no numerical pivoting (the diagonal must be part
+ * of the pattern), a factorization with a negligible pivot is reported as failed and the caller is expected to change the
+ * matrix (for an iteration matrix I/(h*gamma) - J, to reduce the step size).
+ */
+class SparseLU {
+
+	private static final double PIVOT_TOLERANCE = 1e-13;
+
+	private final int size;
+	private final int[] permutation;		// permuted index -> original index
+	private final int[] rowStarts;			// filled pattern in permuted indices, columns sorted
+	private final int[] columns;
+	private final int[] diagonalPositions;
+	private final int[] valuePositions;		// position of each entry of the original pattern in the filled pattern
+	private final double[] lu;
+	private final int[] columnPositions;	// work array, position of a column in the current row or -1
+	private final double[] work;
+
+	/**
+	 * @param rowStarts entries of row i are rowStarts[i] to rowStarts[i+1]-1.
+	 * @param columns column of each entry, must include the diagonal of every row.
+	 */
+	SparseLU(int size, int[] rowStarts, int[] columns) {
+		this.size = size;
+		List<TreeSet<Integer>> adjacency = new ArrayList<TreeSet<Integer>>(size);
+		for (int i = 0; i < size; i++) {
+			adjacency.add(new TreeSet<Integer>());
+		}
+		for (int i = 0; i < size; i++) {
+			boolean bDiagonal = false;
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				int j = columns[k];
+				if (j == i) {
+					bDiagonal = true;
+				} else {
+					adjacency.get(i).add(j);
+					adjacency.get(j).add(i);
+				}
+			}
+			if (!bDiagonal) {
+				throw new IllegalArgumentException("row "+i+" has no diagonal entry");
+			}
+		}
+		//
+		// minimum degree elimination, the remaining neighbours of an eliminated node become a clique (fill-in)
+		//
+		permutation = new int[size];
+		int[] inversePermutation = new int[size];
+		boolean[] eliminated = new boolean[size];
+		int[][] laterNeighbours = new int[size][];
+		for (int p = 0; p < size; p++) {
+			int best = -1;
+			for (int i = 0; i < size; i++) {
+				if (!eliminated[i] && (best < 0 || adjacency.get(i).size() < adjacency.get(best).size())) {
+					best = i;
+				}
+			}
+			permutation[p] = best;
+			inversePermutation[best] = p;
+			eliminated[best] = true;
+			TreeSet<Integer> neighbours = adjacency.get(best);
+			laterNeighbours[best] = new int[neighbours.size()];
+			int n = 0;
+			for (int j : neighbours) {
+				laterNeighbours[best][n++] = j;
+				adjacency.get(j).remove(best);
+			}
+			for (int j : laterNeighbours[best]) {
+				for (int k : laterNeighbours[best]) {
+					if (j != k) {
+						adjacency.get(j).add(k);
+					}
+				}
+			}
+			neighbours.clear();
+		}
+		//
+		// filled pattern: row p holds the diagonal, (p,q) and (q,p) for every node q adjacent to p when p was eliminated
+		//
+		List<TreeSet<Integer>> filledRows = new ArrayList<TreeSet<Integer>>(size);
+		for (int p = 0; p < size; p++) {
+			TreeSet<Integer> row = new TreeSet<Integer>();
+			row.add(p);
+			filledRows.add(row);
+		}
+		for (int p = 0; p < size; p++) {
+			for (int j : laterNeighbours[permutation[p]]) {
+				int q = inversePermutation[j];
+				filledRows.get(p).add(q);
+				filledRows.get(q).add(p);
+			}
+		}
+		this.rowStarts = new int[size + 1];
+		for (int p = 0; p < size; p++) {
+			this.rowStarts[p + 1] = this.rowStarts[p] + filledRows.get(p).size();
+		}
+		this.columns = new int[this.rowStarts[size]];
+		this.diagonalPositions = new int[size];
+		for (int p = 0; p < size; p++) {
+			int k = this.rowStarts[p];
+			for (int q : filledRows.get(p)) {
+				if (q == p) {
+					diagonalPositions[p] = k;
+				}
+				this.columns[k++] = q;
+			}
+		}
+		this.valuePositions = new int[rowStarts[size]];
+		for (int i = 0; i < size; i++) {
+			int p = inversePermutation[i];
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				valuePositions[k] = findPosition(p, inversePermutation[columns[k]]);
+			}
+		}
+		this.lu = new double[this.columns.length];
+		this.columnPositions = new int[size];
+		Arrays.fill(columnPositions, -1);
+		this.work = new double[size];
+	}
+
+	/**
+	 * factorization with the ordering and filled pattern of 'other' (which are shared), with its own values and work arrays.
+	 */
+	SparseLU(SparseLU other) {
+		this.size = other.size;
+		this.permutation = other.permutation;
+		this.rowStarts = other.rowStarts;
+		this.columns = other.columns;
+		this.diagonalPositions = other.diagonalPositions;
+		this.valuePositions = other.valuePositions;
+		this.lu = new double[columns.length];
+		this.columnPositions = new int[size];
+		Arrays.fill(columnPositions, -1);
+		this.work = new double[size];
+	}
+
+	private int findPosition(int row, int column) {
+		int position = Arrays.binarySearch(columns, rowStarts[row], rowStarts[row + 1], column);
+		if (position < 0) {
+			throw new IllegalStateException("entry ("+row+","+column+") missing from the filled pattern");
+		}
+		return position;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return number of stored entries of L and U (including fill-in).
+	 */
+	int getFilledEntryCount() {
+		return columns.length;
+	}
+
+	/**
+	 * factors the matrix with the given values (ordered as the pattern passed to the constructor).
+	 * @return false if a pivot is negligible (or not finite), in which case {@link #solve(double[])} must not be called.
+	 */
+	boolean factor(double[] values) {
+		Arrays.fill(lu, 0.0);
+		for (int k = 0; k < valuePositions.length; k++) {
+			lu[valuePositions[k]] += values[k];
+		}
+		for (int p = 0; p < size; p++) {
+			int rowStart = rowStarts[p];
+			int rowEnd = rowStarts[p + 1];
+			double rowMax = 0.0;
+			for (int k = rowStart; k < rowEnd; k++) {
+				columnPositions[columns[k]] = k;
+				rowMax = Math.max(rowMax, Math.abs(lu[k]));
+			}
+			// entries left of the diagonal, in increasing column order
+			for (int k = rowStart; k < diagonalPositions[p]; k++) {
+				int q = columns[k];
+				double factor = lu[k] / lu[diagonalPositions[q]];
+				lu[k] = factor;
+				for (int m = diagonalPositions[q] + 1; m < rowStarts[q + 1]; m++) {
+					lu[columnPositions[columns[m]]] -= factor * lu[m];
+				}
+			}
+			for (int k = rowStart; k < rowEnd; k++) {
+				columnPositions[columns[k]] = -1;
+			}
+			double pivot = lu[diagonalPositions[p]];
+			if (!(Math.abs(pivot) > PIVOT_TOLERANCE * rowMax) || Double.isInfinite(pivot)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * solves A x = b using the last successful factorization, x overwrites b.
+	 */
+	void solve(double[] b) {
+		for (int p = 0; p < size; p++) {
+			double sum = b[permutation[p]];
+			for (int k = rowStarts[p]; k < diagonalPositions[p]; k++) {
+				sum -= lu[k] * work[columns[k]];
+			}
+			work[p] = sum;
+		}
+		for (int p = size - 1; p >= 0; p--) {
+			double sum = work[p];
+			for (int k = diagonalPositions[p] + 1; k < rowStarts[p + 1]; k++) {
+				sum -= lu[k] * work[columns[k]];
+			}
+			work[p] = sum / lu[diagonalPositions[p]];
+		}
+		for (int p = 0; p < size; p++) {
+			b[permutation[p]] = work[p];
+		}
+	}
+}
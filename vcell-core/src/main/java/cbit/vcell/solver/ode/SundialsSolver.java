@@ -298,28 +298,31 @@ public Constant getSensitivityParameter() {
  */
 private ODESolverResultSet getStateVariableResultSet() {
 	ODESolverResultSet odeSolverResultSet = new ODESolverResultSet();
-	FileInputStream inputStream = null;
 	try {
-		inputStream = new FileInputStream(getBaseName() + IDA_DATA_EXTENSION);
-		if(readIDA(odeSolverResultSet, inputStream) == null) {
+		if(readIDA(odeSolverResultSet, new File(getBaseName() + IDA_DATA_EXTENSION)) == null) {
 			return null;
 		}
 		//
 	} catch (Exception e) {
 		e.printStackTrace(System.out);
 		return null;
-	} finally {
-		try {
-			if (inputStream != null) {
-				inputStream.close();
-			}
-		} catch (Exception ex) {
-			lg.error(ex.getMessage(),ex);
-		}
 	}
 	return (odeSolverResultSet);
 }
 
+/**
+ * reads an .ida file, either tab separated text or columnar binary ({@link ColumnarODEDataFile}).
+ * @return odeSolverResultSet, or null if the (text) file is empty.
+ */
+public static ODESolverResultSet readIDA(ODESolverResultSet odeSolverResultSet, File idaFile) throws IOException {
+	if (ColumnarODEDataFile.isColumnarFile(idaFile)) {
+		return ColumnarODEDataFile.read(odeSolverResultSet, idaFile);
+	}
+	try (FileInputStream inputStream = new FileInputStream(idaFile)) {
+		return readIDA(odeSolverResultSet, inputStream);
+	}
+}
+
 public static ODESolverResultSet readIDA(ODESolverResultSet odeSolverResultSet, FileInputStream inputStream) throws IOException {
 	InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
 	BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
@@ -335,18 +338,20 @@ public static ODESolverResultSet readIDA(ODESolverResultSet odeSolverResultSet,
 		line = line.substring(line.indexOf(':') + 1);
 	}
 	//  Read data
+	int columnCount = odeSolverResultSet.getDataColumnCount();
 	while ((line = bufferedReader.readLine()) != null) {
 		line = line + "\t";
-		double[] values = new double[odeSolverResultSet.getDataColumnCount()];
+		double[] values = new double[columnCount];
 		boolean bCompleteRow = true;
-		for (int i = 0; i < odeSolverResultSet.getDataColumnCount(); i++) {
-			if (line.indexOf('\t')==-1){
+		int start = 0;		// scan the tab separated values in place
+		for (int i = 0; i < columnCount; i++) {
+			int end = line.indexOf('\t', start);
+			if (end==-1){
 				bCompleteRow = false;
 				break;
 			}else{
-				String value = line.substring(0, line.indexOf('\t')).trim();
-				values[i] = Double.valueOf(value).doubleValue();
-				line = line.substring(line.indexOf('\t') + 1);
+				values[i] = Double.parseDouble(line.substring(start, end).trim());
+				start = end + 1;
 			}
 		}
 		if (bCompleteRow){
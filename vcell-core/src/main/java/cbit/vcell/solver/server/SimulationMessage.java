@@ -77,6 +77,7 @@ public class SimulationMessage implements Serializable {
 	public static final SimulationMessage MESSAGE_JOB_QUEUED						= new SimulationMessage(DetailedState.JOB_QUEUED,					"queued..."); 
 	public static final SimulationMessage MESSAGE_JOB_QUEUED_RETRY					= new SimulationMessage(DetailedState.JOB_QUEUED_RETRY,				"Retry automatically upon server failure."); 
 	public static final SimulationMessage MESSAGE_JOB_DISPATCHED					= new SimulationMessage(DetailedState.JOB_DISPATCHED,				"dispatched..."); 
+	public static final SimulationMessage MESSAGE_JOB_DISPATCHED_ENSEMBLE			= new SimulationMessage(DetailedState.JOB_DISPATCHED,				"dispatched with job 0 (ensemble run)..."); 
 	public static final SimulationMessage MESSAGE_JOB_ACCEPTED						= new SimulationMessage(DetailedState.JOB_ACCEPTED,					"job accepted...");
 	public static final SimulationMessage MESSAGE_JOB_RUNNING_UNKNOWN				= new SimulationMessage(DetailedState.JOB_RUNNING_UNKNOWN,			"running..."); 
 	public static final SimulationMessage MESSAGE_SOLVER_READY						= new SimulationMessage(DetailedState.SOLVER_READY,					"Ready"); 
@@ -20,17 +20,21 @@ import org.vcell.solver.smoldyn.SmoldynSolver;
 
 import cbit.util.xml.XmlUtil;
 import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.solver.SolverDescription;
 import cbit.vcell.solver.SolverException;
 import cbit.vcell.solver.ode.AdamsMoultonFiveSolver;
 import cbit.vcell.solver.ode.CVodeSolverStandalone;
 import cbit.vcell.solver.ode.ForwardEulerSolver;
 import cbit.vcell.solver.ode.IDASolverStandalone;
+import cbit.vcell.solver.ode.ODEEnsembleJobSolver;
+import cbit.vcell.solver.ode.RosenbrockSolver;
 import cbit.vcell.solver.ode.RungeKuttaFehlbergSolver;
 import cbit.vcell.solver.ode.RungeKuttaFourSolver;
 import cbit.vcell.solver.ode.RungeKuttaTwoSolver;
 import cbit.vcell.solver.stoch.GibsonSolver;
 import cbit.vcell.solver.stoch.HybridSolver;
+import cbit.vcell.solver.stoch.JavaGibsonSolver;
 import cbit.vcell.solvers.CombinedSundialsSolver;
 import cbit.vcell.solvers.FVSolverStandalone;
 import cbit.vcell.solvers.MovingBoundarySolver;
@@ -81,10 +85,23 @@ public class SolverFactory {
 		FACTORY.put(SolverDescription.RungeKutta4, (t,d,pwd,m) -> new RungeKuttaFourSolver(t, d) );
 		FACTORY.put(SolverDescription.AdamsMoulton, (t,d,pwd,m) -> new AdamsMoultonFiveSolver(t, d) );
 		FACTORY.put(SolverDescription.RungeKuttaFehlberg, (t,d,pwd,m) -> new RungeKuttaFehlbergSolver(t, d) );
-		FACTORY.put(SolverDescription.IDA, (t,d,pwd,m) -> new IDASolverStandalone(t, d,m) ); 
-		FACTORY.put(SolverDescription.CVODE, (t,d,pwd,m) -> new CVodeSolverStandalone (t, d,m) ); 
+		// in-process stiff solver (when enabled) for runs without events or sensitivity analysis,
+		// all jobs of a parameter scan at once (when enabled) for scans the ensemble solver supports
+		FACTORY.put(SolverDescription.IDA, (t,d,pwd,m) -> ODEEnsembleJobSolver.isEnsembleJob(t)
+				? new ODEEnsembleJobSolver(t, d)
+				: isInProcessStiff(t)
+				? new RosenbrockSolver(t, d)
+				: new IDASolverStandalone(t, d,m) ); 
+		FACTORY.put(SolverDescription.CVODE, (t,d,pwd,m) -> ODEEnsembleJobSolver.isEnsembleJob(t)
+				? new ODEEnsembleJobSolver(t, d)
+				: isInProcessStiff(t)
+				? new RosenbrockSolver(t, d)
+				: new CVodeSolverStandalone (t, d,m) ); 
 		FACTORY.put(SolverDescription.CombinedSundials, (t,d,pd,m) -> new CombinedSundialsSolver(t, d,m) ); 
-		FACTORY.put(SolverDescription.StochGibson, (t,d,pwd,m) -> new GibsonSolver(t, d,m) ); 
+		// in-process Gibson-Bruck engine, for local runs (server side multiple trials are split into native runs)
+		FACTORY.put(SolverDescription.StochGibson, (t,d,pwd,m) -> PropertyLoader.getBooleanProperty(PropertyLoader.stochGibsonInProcessProperty, false)
+				? new JavaGibsonSolver(t, d)
+				: new GibsonSolver(t, d,m) ); 
 		FACTORY.put(SolverDescription.HybridEuler, (t,d,pwd,m) -> new HybridSolver(t, d,HybridSolver.EMIntegrator,m) ); 
 		FACTORY.put(SolverDescription.HybridMilstein, (t,d,pwd,m) -> new HybridSolver(t, d,HybridSolver.MilsteinIntegrator,m) ); 
 		FACTORY.put(SolverDescription.HybridMilAdaptive , (t,d,pwd,m) -> new HybridSolver(t, d,HybridSolver.AdaptiveMilsteinIntegrator,m) ); 
@@ -94,6 +111,11 @@ public class SolverFactory {
 		FACTORY.put(SolverDescription.Comsol, (t,d,pwd,m) -> new ComsolSolver(t, d) ); 
 	}
 	
+private static boolean isInProcessStiff(SimulationTask simTask) {
+	return PropertyLoader.getBooleanProperty(PropertyLoader.odeStiffInProcessProperty, false)
+			&& RosenbrockSolver.isSupported(simTask.getSimulation());
+}
+
 public static Solver createSolver(File userDir, SimulationTask simTask, boolean bMessaging) throws SolverException {
 	{
 		return createSolver(userDir, null, simTask, bMessaging);
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.stoch;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import cbit.vcell.parser.CompiledExpression;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.parser.SimpleSymbolTable;
+
+/**
+ * Gibson-Bruck next reaction method (J. Phys. Chem. A 2000, 104, 1876) for a well mixed system of jump processes.
+ * <p>
+ * Each process has a putative firing time kept in an indexed binary heap; after a firing only the propensities of the
+ * processes which depend on the changed species (dependency graph) are evaluated again and their times rescaled, so a
+ * step costs O(dependents * log(processes)).  Propensities are compiled ({@link Expression#compile()}) against the species
+ * counts.
+ * <p>
+ * The engine is immutable and trials may run concurrently, each with its own random generator.
+ */
+class GibsonBruckEngine {
+
+	/**
+	 * receives the state at output times (the array is reused, copy it to keep it).
+	 */
+	interface SampleListener {
+		void sample(double time, double[] counts);
+	}
+
+	private static final int INTERRUPT_CHECK_EVENTS = 4096;
+
+	private final String[] speciesNames;
+	private final double[] initialCounts;
+	private final CompiledExpression[] propensities;
+	private final int[][] changedSpecies;		// [process] species changed by the process
+	private final double[][] increments;		// [process] change of each of changedSpecies
+	private final int[][] dependentProcesses;	// [process] processes whose propensity must be updated after it fires (including itself)
+
+	/**
+	 * @param propensities rate of each process, with only species names as symbols.
+	 * @param changedSpecies indices of the species changed by each process.
+	 * @param increments change of the species listed in changedSpecies.
+	 */
+	GibsonBruckEngine(String[] speciesNames, long[] initialCounts, Expression[] propensities, int[][] changedSpecies, long[][] increments) throws ExpressionException {
+		this.speciesNames = speciesNames.clone();
+		this.initialCounts = new double[initialCounts.length];
+		for (int s = 0; s < initialCounts.length; s++) {
+			this.initialCounts[s] = initialCounts[s];
+		}
+		this.changedSpecies = changedSpecies.clone();
+		this.increments = new double[increments.length][];
+		for (int p = 0; p < increments.length; p++) {
+			this.increments[p] = new double[increments[p].length];
+			for (int i = 0; i < increments[p].length; i++) {
+				this.increments[p][i] = increments[p][i];
+			}
+		}
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(this.speciesNames);
+		this.propensities = new CompiledExpression[propensities.length];
+		BitSet[] readersOfSpecies = new BitSet[speciesNames.length];
+		for (int s = 0; s < speciesNames.length; s++) {
+			readersOfSpecies[s] = new BitSet(propensities.length);
+		}
+		for (int p = 0; p < propensities.length; p++) {
+			Expression propensity = new Expression(propensities[p]);
+			propensity.bindExpression(symbolTable);
+			this.propensities[p] = propensity.compile();
+			String[] symbols = propensity.getSymbols();
+			if (symbols != null) {
+				for (String symbol : symbols) {
+					readersOfSpecies[symbolTable.getEntry(symbol).getIndex()].set(p);
+				}
+			}
+		}
+		this.dependentProcesses = new int[propensities.length][];
+		for (int p = 0; p < propensities.length; p++) {
+			BitSet dependents = new BitSet(propensities.length);
+			dependents.set(p);
+			for (int s : changedSpecies[p]) {
+				dependents.or(readersOfSpecies[s]);
+			}
+			this.dependentProcesses[p] = dependents.stream().toArray();
+		}
+	}
+
+	String[] getSpeciesNames() {
+		return speciesNames.clone();
+	}
+
+	int getProcessCount() {
+		return propensities.length;
+	}
+
+	int[] getDependentProcesses(int process) {
+		return dependentProcesses[process].clone();
+	}
+
+	/**
+	 * simulates one trajectory, sampled at the given times (the state before any event at or after a sample time).
+	 * @return the final state (at the last sample time).
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	double[] runSampled(SplittableRandom random, double startTime, double[] sampleTimes, SampleListener listener) throws ExpressionException, InterruptedException {
+		return run(random, startTime, sampleTimes[sampleTimes.length - 1], sampleTimes, 0, listener);
+	}
+
+	/**
+	 * simulates one trajectory, sampled at the start time, after every 'keepEvery' events and at the end time.
+	 * @return the final state.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	double[] runEvents(SplittableRandom random, double startTime, double endTime, int keepEvery, SampleListener listener) throws ExpressionException, InterruptedException {
+		return run(random, startTime, endTime, null, Math.max(1, keepEvery), listener);
+	}
+
+	private double[] run(SplittableRandom random, double startTime, double endTime, double[] sampleTimes, int keepEvery, SampleListener listener) throws ExpressionException, InterruptedException {
+		double[] counts = initialCounts.clone();
+		int processCount = propensities.length;
+		double[] rates = new double[processCount];
+		double[] firingTimes = new double[processCount];
+		for (int p = 0; p < processCount; p++) {
+			rates[p] = evaluatePropensity(p, counts);
+			firingTimes[p] = (rates[p] > 0) ? startTime + exponential(random) / rates[p] : Double.POSITIVE_INFINITY;
+		}
+		IndexedMinHeap heap = new IndexedMinHeap(firingTimes);
+		int nextSample = 0;
+		if (sampleTimes == null && listener != null) {
+			listener.sample(startTime, counts);
+		}
+		long eventCount = 0;
+		double time = startTime;
+		while (true) {
+			int process = (processCount > 0) ? heap.peek() : -1;
+			double nextTime = (process >= 0) ? firingTimes[process] : Double.POSITIVE_INFINITY;
+			if (sampleTimes != null) {
+				while (nextSample < sampleTimes.length && sampleTimes[nextSample] <= nextTime) {
+					if (listener != null) {
+						listener.sample(sampleTimes[nextSample], counts);
+					}
+					nextSample++;
+				}
+				if (nextSample == sampleTimes.length) {
+					return counts;
+				}
+			}
+			if (nextTime > endTime) {
+				if (sampleTimes == null && listener != null) {
+					listener.sample(endTime, counts);
+				}
+				return counts;
+			}
+			time = nextTime;
+			int[] species = changedSpecies[process];
+			double[] delta = increments[process];
+			for (int i = 0; i < species.length; i++) {
+				counts[species[i]] += delta[i];
+			}
+			for (int dependent : dependentProcesses[process]) {
+				double oldRate = rates[dependent];
+				double newRate = evaluatePropensity(dependent, counts);
+				rates[dependent] = newRate;
+				if (newRate <= 0) {
+					firingTimes[dependent] = Double.POSITIVE_INFINITY;
+				} else if (dependent != process && oldRate > 0) {
+					// reuse the random number of the unfired process
+					firingTimes[dependent] = time + (oldRate / newRate) * (firingTimes[dependent] - time);
+				} else {
+					firingTimes[dependent] = time + exponential(random) / newRate;
+				}
+				heap.update(dependent);
+			}
+			eventCount++;
+			if (sampleTimes == null && listener != null && eventCount % keepEvery == 0) {
+				listener.sample(time, counts);
+			}
+			if (eventCount % INTERRUPT_CHECK_EVENTS == 0 && Thread.interrupted()) {
+				throw new InterruptedException("stochastic simulation interrupted at time "+time);
+			}
+		}
+	}
+
+	private double evaluatePropensity(int process, double[] counts) throws ExpressionException {
+		double rate = propensities[process].eval(counts);
+		if (rate < 0 || Double.isNaN(rate)) {
+			throw new ExpressionException("propensity of process "+process+" is "+rate+" for "+Arrays.toString(counts));
+		}
+		return rate;
+	}
+
+	private static double exponential(SplittableRandom random) {
+		return -Math.log(1.0 - random.nextDouble());	// 1-u is in (0,1]
+	}
+
+	/**
+	 * binary min-heap of process indices ordered by their (externally stored) firing times, with the position of each
+	 * process so a changed time is restored in O(log n).
+	 */
+	static class IndexedMinHeap {
+		private final double[] keys;
+		private final int[] heap;
+		private final int[] positions;
+
+		IndexedMinHeap(double[] keys) {
+			this.keys = keys;
+			this.heap = new int[keys.length];
+			this.positions = new int[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				heap[i] = i;
+				positions[i] = i;
+			}
+			for (int i = keys.length / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+
+		int peek() {
+			return heap[0];
+		}
+
+		/**
+		 * restores the heap order after keys[index] changed.
+		 */
+		void update(int index) {
+			int position = positions[index];
+			if (position > 0 && keys[index] < keys[heap[(position - 1) / 2]]) {
+				siftUp(position);
+			} else {
+				siftDown(position);
+			}
+		}
+
+		private void siftUp(int position) {
+			int index = heap[position];
+			while (position > 0) {
+				int parent = (position - 1) / 2;
+				if (keys[heap[parent]] <= keys[index]) {
+					break;
+				}
+				move(heap[parent], position);
+				position = parent;
+			}
+			move(index, position);
+		}
+
+		private void siftDown(int position) {
+			int index = heap[position];
+			int size = heap.length;
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+					child++;
+				}
+				if (keys[heap[child]] >= keys[index]) {
+					break;
+				}
+				move(heap[child], position);
+				position = child;
+			}
+			move(index, position);
+		}
+
+		private void move(int index, int position) {
+			heap[position] = index;
+			positions[index] = position;
+		}
+	}
+}
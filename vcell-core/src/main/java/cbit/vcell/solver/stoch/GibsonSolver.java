@@ -9,12 +9,9 @@
  */
 
 package cbit.vcell.solver.stoch;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 
 import org.apache.logging.log4j.LogManager;
@@ -32,6 +29,7 @@ import cbit.vcell.solver.SolverDescription;
 import cbit.vcell.solver.SolverException;
 import cbit.vcell.solver.SolverUtilities;
 import cbit.vcell.solver.ode.ODESolverResultSet;
+import cbit.vcell.solver.ode.SundialsSolver;
 import cbit.vcell.solver.server.SimulationMessage;
 import cbit.vcell.solver.server.SolverStatus;
 import cbit.vcell.solvers.ApplicationMessage;
@@ -116,57 +114,15 @@ public ODESolverResultSet getStochSolverResultSet()
 	//read .stoch file, this funciton here equals to getODESolverRestultSet()+getStateVariableResultSet()  in ODE.
 	ODESolverResultSet stSolverResultSet = new ODESolverResultSet();
 
-	FileInputStream inputStream = null;
 	try {
-		inputStream = new FileInputStream(getBaseName() + IDA_DATA_EXTENSION);
-		InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-		BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-		//  Read header
-		String line = bufferedReader.readLine();
-		if (line == null) 
+		if (SundialsSolver.readIDA(stSolverResultSet, new File(getBaseName() + IDA_DATA_EXTENSION)) == null)
 		{
-			//  throw exception
 			System.out.println("There is no data in output file!");
 			return null;
 		}
-		while (line.indexOf(':') > 0) {
-			String name = line.substring(0, line.indexOf(':'));
-			stSolverResultSet.addDataColumn(new ODESolverResultSetColumnDescription(name));
-			line = line.substring(line.indexOf(':') + 1);
-		}
-		//  Read data
-		while ((line = bufferedReader.readLine()) != null) {
-			line = line + "\t";
-			double[] values = new double[stSolverResultSet.getDataColumnCount()];
-			boolean bCompleteRow = true;
-			for (int i = 0; i < stSolverResultSet.getDataColumnCount(); i++) {
-				if (line.indexOf('\t')==-1){
-					bCompleteRow = false;
-					break;
-				}else{
-					String value = line.substring(0, line.indexOf('\t')).trim();
-					values[i] = Double.valueOf(value).doubleValue();
-					line = line.substring(line.indexOf('\t') + 1);
-				}
-			}
-			if (bCompleteRow){
-				stSolverResultSet.addRow(values);
-			}else{
-				break;
-			}
-		}
-		//
 	} catch (Exception e) {
 		e.printStackTrace(System.out);
 		return null;
-	} finally {
-		try {
-			if (inputStream != null) {
-				inputStream.close();
-			}
-		} catch (Exception ex) {
-			lg.error(ex.getMessage(),ex);
-		}
 	}
 	
 	/*
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.stoch;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+
+import cbit.vcell.math.Action;
+import cbit.vcell.math.Function;
+import cbit.vcell.math.FunctionColumnDescription;
+import cbit.vcell.math.JumpProcess;
+import cbit.vcell.math.MathException;
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.math.ReservedVariable;
+import cbit.vcell.math.SubDomain;
+import cbit.vcell.math.VarIniCondition;
+import cbit.vcell.math.VarIniCount;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.DefaultOutputTimeSpec;
+import cbit.vcell.solver.ExplicitOutputTimeSpec;
+import cbit.vcell.solver.NonspatialStochSimOptions;
+import cbit.vcell.solver.OutputTimeSpec;
+import cbit.vcell.solver.SimulationSymbolTable;
+import cbit.vcell.solver.SolverException;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.UserStopException;
+import cbit.vcell.solver.ode.AbstractJavaSolver;
+import cbit.vcell.solver.ode.ODESolver;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+
+/**
+ * In-process alternative to {@link GibsonSolver}: the jump processes of the math description are simulated by
+ * {@link GibsonBruckEngine} instead of writing a .stochInput file and running the native executable.
+ * <p>
+ * Results follow the native solver: a single trial is a trajectory (with the saved functions), multiple trials are either a
+ * histogram of the final counts (one row per trial) or the statistics of the trajectories ({@link MultiTrialStatistics}).
+ * Trials run in parallel on {@link PropertyLoader#stochMultiTrialThreadsProperty} threads.
+ * <p>
+ * Selected by {@link cbit.vcell.solver.server.SolverFactory} when {@link PropertyLoader#stochGibsonInProcessProperty} is true.
+ */
+public class JavaGibsonSolver extends AbstractJavaSolver implements ODESolver {
+
+	private static final long POLL_MS = 200;
+	private static final int DEFAULT_MULTI_TRIAL_TIME_POINTS = 101;
+
+	private GibsonBruckEngine engine = null;
+	private ODESolverResultSet resultSet = null;
+	private volatile double currentTime = 0;
+	private final AtomicInteger finishedTrials = new AtomicInteger();
+
+	public JavaGibsonSolver(SimulationTask simTask, File directory) throws SolverException {
+		super(simTask, directory);
+		if (simTask.getSimulation().isSpatial()) {
+			throw new SolverException("Cannot use "+getClass().getSimpleName()+" on spatial simulation");
+		}
+	}
+
+	@Override
+	protected void initialize() throws SolverException {
+		try {
+			engine = createEngine(simTask);
+		} catch (MathException | ExpressionException e) {
+			lg.error(e.getMessage(), e);
+			throw new SolverException(e.getMessage(), e);
+		}
+		currentTime = getTimeBounds().getStartingTime();
+		finishedTrials.set(0);
+		resultSet = null;
+	}
+
+	private TimeBounds getTimeBounds() {
+		return simTask.getSimulation().getSolverTaskDescription().getTimeBounds();
+	}
+
+	private NonspatialStochSimOptions getStochOpt() {
+		return simTask.getSimulation().getSolverTaskDescription().getStochOpt();
+	}
+
+	/**
+	 * translates the jump processes of the (only) subdomain, initial counts are evaluated (and Poisson sampled for
+	 * concentrations) once for all trials like in {@link StochFileWriter}.
+	 */
+	static GibsonBruckEngine createEngine(SimulationTask simTask) throws MathException, ExpressionException {
+		SimulationSymbolTable simSymbolTable = simTask.getSimulationJob().getSimulationSymbolTable();
+		NonspatialStochSimOptions stochOpt = simTask.getSimulation().getSolverTaskDescription().getStochOpt();
+		if (!simTask.getSimulation().getMathDescription().getSubDomains().hasMoreElements()) {
+			throw new MathException("There is no sub domain.");
+		}
+		SubDomain subDomain = simTask.getSimulation().getMathDescription().getSubDomains().nextElement();
+		List<VarIniCondition> varIniConditions = subDomain.getVarIniConditions();
+		List<JumpProcess> jumpProcesses = subDomain.getJumpProcesses();
+		if (varIniConditions == null || varIniConditions.isEmpty()) {
+			throw new MathException("Stochastic model has no variable.");
+		}
+		if (jumpProcesses == null || jumpProcesses.isEmpty()) {
+			throw new MathException("Stochastic model has no jump process.");
+		}
+
+		RandomDataGenerator dist = new RandomDataGenerator();
+		if (stochOpt.isUseCustomSeed()) {
+			dist.reSeed(stochOpt.getCustomSeed());
+		}
+		String[] speciesNames = new String[varIniConditions.size()];
+		long[] initialCounts = new long[speciesNames.length];
+		for (int s = 0; s < speciesNames.length; s++) {
+			VarIniCondition varIniCondition = varIniConditions.get(s);
+			speciesNames[s] = varIniCondition.getVar().getName();
+			double expectedCount;
+			try {
+				Expression iniExp = new Expression(varIniCondition.getIniVal());
+				iniExp.bindExpression(simSymbolTable);
+				expectedCount = simSymbolTable.substituteFunctions(iniExp).flatten().evaluateConstant();
+			} catch (ExpressionException e) {
+				throw new MathException("variable "+speciesNames[s]+"'s initial condition is required to be a constant.");
+			}
+			final long limit = 1000000000;
+			if (limit < expectedCount) {
+				throw new MathException("The Initial count for Species '" + speciesNames[s] + "' is " + BigDecimal.valueOf(expectedCount).toBigInteger()
+						+ " which is higher than the internal vCell limit of " + limit + ".");
+			}
+			if (varIniCondition instanceof VarIniCount) {
+				initialCounts[s] = Math.round(expectedCount);
+			} else if (expectedCount > 0) {
+				initialCounts[s] = dist.nextPoisson(expectedCount);
+			}
+		}
+
+		Expression[] propensities = new Expression[jumpProcesses.size()];
+		int[][] changedSpecies = new int[propensities.length][];
+		long[][] increments = new long[propensities.length][];
+		List<String> speciesList = Arrays.asList(speciesNames);
+		for (int p = 0; p < propensities.length; p++) {
+			JumpProcess jumpProcess = jumpProcesses.get(p);
+			try {
+				Expression probExp = new Expression(jumpProcess.getProbabilityRate());
+				probExp.bindExpression(simSymbolTable);
+				propensities[p] = simSymbolTable.substituteFunctions(probExp).flatten();
+			} catch (ExpressionException e) {
+				throw new ExpressionException("Binding math description error in probability rate in jump process "+jumpProcess.getName()+". Some symbols can not be resolved.");
+			}
+			String[] symbols = propensities[p].getSymbols();
+			for (int i = 0; symbols != null && i < symbols.length; i++) {
+				if (!speciesList.contains(symbols[i])) {
+					throw new MathException("probability rate in jump process "+jumpProcess.getName()+" has illegal symbol '"+symbols[i]+"' (should only contain variable names).");
+				}
+			}
+			List<Action> actions = jumpProcess.getActions();
+			changedSpecies[p] = new int[actions.size()];
+			increments[p] = new long[actions.size()];
+			for (int a = 0; a < actions.size(); a++) {
+				Action action = actions.get(a);
+				if (!Action.ACTION_INC.equals(action.getOperation())) {
+					throw new MathException("action '"+action.getOperation()+"' in jump process "+jumpProcess.getName()+" is not supported");
+				}
+				int speciesIndex = speciesList.indexOf(action.getVar().getName());
+				if (speciesIndex < 0) {
+					throw new MathException("jump process "+jumpProcess.getName()+" changes "+action.getVar().getName()+" which has no initial condition");
+				}
+				changedSpecies[p][a] = speciesIndex;
+				increments[p][a] = Math.round(action.evaluateOperand());
+			}
+		}
+		return new GibsonBruckEngine(speciesNames, initialCounts, propensities, changedSpecies, increments);
+	}
+
+	/**
+	 * @return common output times of multiple trials (uniform or explicit output, otherwise evenly spaced points).
+	 */
+	private double[] getSampleTimes() {
+		TimeBounds timeBounds = getTimeBounds();
+		double startTime = timeBounds.getStartingTime();
+		double endTime = timeBounds.getEndingTime();
+		OutputTimeSpec outputTimeSpec = simTask.getSimulation().getSolverTaskDescription().getOutputTimeSpec();
+		if (outputTimeSpec instanceof ExplicitOutputTimeSpec) {
+			return ((ExplicitOutputTimeSpec)outputTimeSpec).getOutputTimes().clone();
+		}
+		double step;
+		if (outputTimeSpec instanceof UniformOutputTimeSpec) {
+			step = ((UniformOutputTimeSpec)outputTimeSpec).getOutputTimeStep();
+		} else {
+			step = (endTime - startTime) / (DEFAULT_MULTI_TRIAL_TIME_POINTS - 1);
+		}
+		int count = (int)Math.floor((endTime - startTime) / step * (1 + 1e-12)) + 1;
+		List<Double> times = new ArrayList<Double>();
+		for (int i = 0; i < count; i++) {
+			times.add(startTime + i * step);
+		}
+		if (times.get(times.size() - 1) < endTime) {
+			times.add(endTime);
+		}
+		double[] sampleTimes = new double[times.size()];
+		for (int i = 0; i < sampleTimes.length; i++) {
+			sampleTimes[i] = times.get(i);
+		}
+		return sampleTimes;
+	}
+
+	private ODESolverResultSet createResultSet(String firstColumnName) {
+		ODESolverResultSet newResultSet = new ODESolverResultSet();
+		newResultSet.addDataColumn(new ODESolverResultSetColumnDescription(firstColumnName));
+		for (String speciesName : engine.getSpeciesNames()) {
+			newResultSet.addDataColumn(new ODESolverResultSetColumnDescription(speciesName));
+		}
+		return newResultSet;
+	}
+
+	@Override
+	protected void integrate() throws SolverException, UserStopException, IOException {
+		NonspatialStochSimOptions stochOpt = getStochOpt();
+		long numTrials = (stochOpt != null) ? stochOpt.getNumOfTrials() : 1;
+		long seed = (stochOpt != null && stochOpt.isUseCustomSeed()) ? stochOpt.getCustomSeed() : new SplittableRandom().nextLong();
+		SplittableRandom seedRandom = new SplittableRandom(seed);
+		TimeBounds timeBounds = getTimeBounds();
+		double startTime = timeBounds.getStartingTime();
+		double endTime = timeBounds.getEndingTime();
+		OutputTimeSpec outputTimeSpec = simTask.getSimulation().getSolverTaskDescription().getOutputTimeSpec();
+		String[] speciesNames = engine.getSpeciesNames();
+
+		int threadCount = (int)Math.max(1, Math.min(numTrials, PropertyLoader.getIntProperty(PropertyLoader.stochMultiTrialThreadsProperty, Runtime.getRuntime().availableProcessors())));
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread thread = new Thread(r, "Java Gibson trial");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			printToFile(0);
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			if (numTrials == 1) {
+				// single trajectory, saved while running
+				resultSet = createResultSet(ReservedVariable.TIME.getName());
+				final double[] row = new double[speciesNames.length + 1];
+				GibsonBruckEngine.SampleListener listener = (time, counts) -> {
+					row[0] = time;
+					System.arraycopy(counts, 0, row, 1, counts.length);
+					resultSet.addRow(row);
+					currentTime = time;
+				};
+				SplittableRandom random = seedRandom.split();
+				if (outputTimeSpec instanceof DefaultOutputTimeSpec) {
+					int keepEvery = ((DefaultOutputTimeSpec)outputTimeSpec).getKeepEvery();
+					futures.add(executor.submit(() -> engine.runEvents(random, startTime, endTime, keepEvery, listener)));
+				} else {
+					double[] sampleTimes = getSampleTimes();
+					futures.add(executor.submit(() -> engine.runSampled(random, startTime, sampleTimes, listener)));
+				}
+			} else if (stochOpt.isHistogram()) {
+				// final counts of each trial
+				resultSet = createResultSet(SimDataConstants.HISTOGRAM_INDEX_NAME);
+				double[] sampleTimes = new double[] { endTime };
+				for (long trial = 0; trial < numTrials; trial++) {
+					SplittableRandom random = seedRandom.split();
+					final long trialNo = trial + 1;
+					futures.add(executor.submit(() -> {
+						double[] counts = engine.runSampled(random, startTime, sampleTimes, null);
+						double[] row = new double[counts.length + 1];
+						row[0] = trialNo;
+						System.arraycopy(counts, 0, row, 1, counts.length);
+						finishedTrials.incrementAndGet();
+						return row;
+					}));
+				}
+			} else {
+				// statistics of the trajectories
+				MultiTrialStatistics statistics = new MultiTrialStatistics(MultiTrialStatistics.getConfiguredQuantiles());
+				double[] sampleTimes = getSampleTimes();
+				for (long trial = 0; trial < numTrials; trial++) {
+					SplittableRandom random = seedRandom.split();
+					futures.add(executor.submit(() -> {
+						double[][] columns = new double[speciesNames.length + 1][sampleTimes.length];
+						int[] sampleIndex = new int[1];
+						engine.runSampled(random, startTime, sampleTimes, (time, counts) -> {
+							columns[0][sampleIndex[0]] = time;
+							for (int s = 0; s < counts.length; s++) {
+								columns[s + 1][sampleIndex[0]] = counts[s];
+							}
+							sampleIndex[0]++;
+						});
+						ODESolverResultSet trialResultSet = createResultSet(ReservedVariable.TIME.getName());
+						trialResultSet.setDataColumnValues(columns, sampleTimes.length);
+						statistics.addTrial(trialResultSet);
+						finishedTrials.incrementAndGet();
+						return null;
+					}));
+				}
+				waitFor(futures);
+				resultSet = statistics.createResultSet();
+				futures.clear();
+			}
+			List<Object> values = waitFor(futures);
+			if (numTrials > 1 && stochOpt.isHistogram()) {
+				for (Object row : values) {
+					resultSet.addRow((double[])row);
+				}
+			}
+			currentTime = endTime;
+			printToFile(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * waits for the trials while reporting progress and checking for a stop request.
+	 */
+	private List<Object> waitFor(List<Future<?>> futures) throws SolverException, UserStopException, IOException {
+		List<Object> values = new ArrayList<Object>();
+		for (Future<?> future : futures) {
+			while (true) {
+				checkForUserStop();
+				try {
+					values.add(future.get(POLL_MS, TimeUnit.MILLISECONDS));
+					break;
+				} catch (TimeoutException e) {
+					printToFile(getProgress());
+				} catch (InterruptedException e) {
+					throw new UserStopException("interrupted");
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					lg.error(cause.getMessage(), cause);
+					throw new SolverException("stochastic simulation failed: "+cause.getMessage(), (cause instanceof Exception) ? (Exception)cause : e);
+				}
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currentTime;
+	}
+
+	@Override
+	public double getProgress() {
+		NonspatialStochSimOptions stochOpt = getStochOpt();
+		long numTrials = (stochOpt != null) ? stochOpt.getNumOfTrials() : 1;
+		if (numTrials > 1) {
+			return Math.min(1.0, (double)finishedTrials.get() / numTrials);
+		}
+		TimeBounds timeBounds = getTimeBounds();
+		double duration = timeBounds.getEndingTime() - timeBounds.getStartingTime();
+		return (duration > 0) ? Math.min(1.0, (currentTime - timeBounds.getStartingTime()) / duration) : 1.0;
+	}
+
+	/**
+	 * @return a copy of the results so far, with the saved functions for a single trajectory (like {@link GibsonSolver#getStochSolverResultSet()}).
+	 */
+	@Override
+	public ODESolverResultSet getODESolverResultSet() {
+		ODESolverResultSet currentResultSet = resultSet;
+		if (currentResultSet == null) {
+			return new ODESolverResultSet();
+		}
+		ODESolverResultSet copy = new ODESolverResultSet(currentResultSet);
+		NonspatialStochSimOptions stochOpt = getStochOpt();
+		if (stochOpt == null || stochOpt.getNumOfTrials() == 1) {
+			SimulationSymbolTable simSymbolTable = simTask.getSimulationJob().getSimulationSymbolTable();
+			for (Function function : simSymbolTable.getFunctions()) {
+				if (SimulationSymbolTable.isFunctionSaved(function)) {
+					try {
+						Expression exp = simSymbolTable.substituteFunctions(new Expression(function.getExpression())).flatten();
+						copy.addFunctionColumn(new FunctionColumnDescription(exp, function.getName(), null, function.getName(), false));
+					} catch (MathException | ExpressionException e) {
+						lg.error("failed to add function "+function.getName()+": "+e.getMessage(), e);
+					}
+				}
+			}
+		}
+		return copy;
+	}
+}
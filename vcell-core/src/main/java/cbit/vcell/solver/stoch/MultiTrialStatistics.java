@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.solver.stoch;
+
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.parser.ExpressionException;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.ExplicitOutputTimeSpec;
+import cbit.vcell.solver.OutputTimeSpec;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+import cbit.vcell.util.ColumnDescription;
+
+/**
+ * Streaming statistics over the trials of a multiple trial stochastic simulation.
+ * <p>
+ * Trials are added one at a time ({@link #addTrial(ODESolverResultSet)}, thread safe) and only the running statistics of each
+ * variable at each time point are kept: mean and variance (Welford's online algorithm) and optionally quantile estimates
+ * (P<sup>2</sup> algorithm of Jain and Chlamtac, 5 markers per quantile).  Memory is proportional to the number of time points,
+ * not to the number of trials.
+ * <p>
+ * The first column of every trial is time, which is taken from the first trial added.  Trials still being written must not be added,
+ * see {@link #isComplete(ODESolverResultSet, double)}.
+ */
+public class MultiTrialStatistics {
+
+	private static final double CONFIDENCE_Z = 1.959963984540054;	// two sided 95% (normal approximation)
+	private static final int MARKERS = 5;
+
+	private final double[] quantiles;
+	private String timeName = null;
+	private String[] columnNames = null;
+	private double[] times = null;
+	private long trialCount = 0;
+	private double[][] means = null;		// [variable][time point]
+	private double[][] m2s = null;			// sum of squared deviations from the mean
+	private double[][][] markerHeights = null;	// [quantile][variable][time point * MARKERS + marker]
+	private int[][][] markerPositions = null;
+
+	/**
+	 * @param quantiles probabilities (between 0 and 1) of the quantiles to estimate, may be empty.
+	 */
+	public MultiTrialStatistics(double[] quantiles) {
+		for (double p : quantiles) {
+			if (!(p > 0 && p < 1)) {
+				throw new IllegalArgumentException("quantile "+p+" must be between 0 and 1");
+			}
+		}
+		this.quantiles = quantiles.clone();
+	}
+
+	/**
+	 * quantiles listed in {@link PropertyLoader#stochMultiTrialQuantilesProperty} (comma separated, e.g. "0.05,0.5,0.95"), none by default.
+	 */
+	public static double[] getConfiguredQuantiles() {
+		String value = PropertyLoader.getProperty(PropertyLoader.stochMultiTrialQuantilesProperty, null);
+		if (value == null || value.trim().length() == 0) {
+			return new double[0];
+		}
+		String[] tokens = value.trim().split("\\s*,\\s*");
+		double[] quantiles = new double[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			quantiles[i] = Double.parseDouble(tokens[i]);
+		}
+		return quantiles;
+	}
+
+	/**
+	 * @return time of the last output of a trial run to the end: the ending time for default output, the last multiple of the
+	 * output step for uniform output or the last explicit output time not after the ending time.
+	 */
+	public static double getLastOutputTime(OutputTimeSpec outputTimeSpec, TimeBounds timeBounds) {
+		double startTime = timeBounds.getStartingTime();
+		double endTime = timeBounds.getEndingTime();
+		if (outputTimeSpec instanceof UniformOutputTimeSpec) {
+			double step = ((UniformOutputTimeSpec)outputTimeSpec).getOutputTimeStep();
+			return startTime + Math.floor((endTime - startTime) / step * (1 + 1e-12)) * step;
+		}
+		if (outputTimeSpec instanceof ExplicitOutputTimeSpec) {
+			double lastOutputTime = startTime;
+			for (double t : ((ExplicitOutputTimeSpec)outputTimeSpec).getOutputTimes()) {
+				if (t <= endTime && t > lastOutputTime) {
+					lastOutputTime = t;
+				}
+			}
+			return lastOutputTime;
+		}
+		return endTime;
+	}
+
+	/**
+	 * @return true if the time column of 'trial' reaches 'lastOutputTime' (see {@link #getLastOutputTime(OutputTimeSpec, TimeBounds)}),
+	 * false for a trial output which is still being written.
+	 */
+	public static boolean isComplete(ODESolverResultSet trial, double lastOutputTime) {
+		int rowCount = trial.getRowCount();
+		if (rowCount == 0) {
+			return false;
+		}
+		double lastTime = trial.getRow(rowCount - 1)[0];
+		return lastTime >= lastOutputTime - 1e-9 * Math.max(1, Math.abs(lastOutputTime));
+	}
+
+	public synchronized long getTrialCount() {
+		return trialCount;
+	}
+
+	public synchronized void addTrial(ODESolverResultSet trial) throws ExpressionException {
+		ColumnDescription[] columnDescriptions = trial.getDataColumnDescriptions();
+		int rowCount = trial.getRowCount();
+		if (columnNames == null) {
+			init(columnDescriptions, trial.extractColumn(0));
+		} else if (columnDescriptions.length != columnNames.length + 1 || rowCount != times.length) {
+			throw new IllegalArgumentException("trial has "+(columnDescriptions.length-1)+" variables and "+rowCount+" time points, expected "
+					+columnNames.length+" variables and "+times.length+" time points");
+		}
+		trialCount++;
+		for (int v = 0; v < columnNames.length; v++) {
+			double[] values = trial.extractColumn(v + 1);
+			double[] mean = means[v];
+			double[] m2 = m2s[v];
+			for (int r = 0; r < rowCount; r++) {
+				double delta = values[r] - mean[r];
+				mean[r] += delta / trialCount;
+				m2[r] += delta * (values[r] - mean[r]);
+			}
+			for (int q = 0; q < quantiles.length; q++) {
+				for (int r = 0; r < rowCount; r++) {
+					addToSketch(q, markerHeights[q][v], markerPositions[q][v], r * MARKERS, values[r]);
+				}
+			}
+		}
+	}
+
+	private void init(ColumnDescription[] columnDescriptions, double[] firstTimes) {
+		int variableCount = columnDescriptions.length - 1;
+		int rowCount = firstTimes.length;
+		timeName = columnDescriptions[0].getName();
+		columnNames = new String[variableCount];
+		for (int v = 0; v < variableCount; v++) {
+			columnNames[v] = columnDescriptions[v + 1].getName();
+		}
+		times = firstTimes;
+		means = new double[variableCount][rowCount];
+		m2s = new double[variableCount][rowCount];
+		markerHeights = new double[quantiles.length][variableCount][rowCount * MARKERS];
+		markerPositions = new int[quantiles.length][variableCount][rowCount * MARKERS];
+	}
+
+	/**
+	 * P2 update of one sketch (markers at 'offset') with 'x', trialCount already includes 'x'.
+	 */
+	private void addToSketch(int q, double[] heights, int[] positions, int offset, double x) {
+		if (trialCount <= MARKERS) {
+			// the first observations are kept (sorted) as they are
+			int n = (int)trialCount - 1;
+			int i = n;
+			while (i > 0 && heights[offset + i - 1] > x) {
+				heights[offset + i] = heights[offset + i - 1];
+				i--;
+			}
+			heights[offset + i] = x;
+			positions[offset + n] = n + 1;
+			return;
+		}
+		int k;
+		if (x < heights[offset]) {
+			heights[offset] = x;
+			k = 0;
+		} else if (x >= heights[offset + MARKERS - 1]) {
+			heights[offset + MARKERS - 1] = x;
+			k = MARKERS - 2;
+		} else {
+			k = 0;
+			while (x >= heights[offset + k + 1]) {
+				k++;
+			}
+		}
+		for (int i = k + 1; i < MARKERS; i++) {
+			positions[offset + i]++;
+		}
+		double p = quantiles[q];
+		for (int i = 1; i < MARKERS - 1; i++) {
+			double d = getDesiredPosition(p, i) - positions[offset + i];
+			int n = positions[offset + i];
+			int nNext = positions[offset + i + 1];
+			int nPrev = positions[offset + i - 1];
+			if ((d >= 1 && nNext - n > 1) || (d <= -1 && nPrev - n < -1)) {
+				int sign = (d > 0) ? 1 : -1;
+				double h = heights[offset + i];
+				double hNext = heights[offset + i + 1];
+				double hPrev = heights[offset + i - 1];
+				double parabolic = h + (double)sign / (nNext - nPrev)
+						* ((n - nPrev + sign) * (hNext - h) / (nNext - n) + (nNext - n - sign) * (h - hPrev) / (n - nPrev));
+				if (hPrev < parabolic && parabolic < hNext) {
+					heights[offset + i] = parabolic;
+				} else {
+					heights[offset + i] = h + sign * (heights[offset + i + sign] - h) / (positions[offset + i + sign] - n);
+				}
+				positions[offset + i] = n + sign;
+			}
+		}
+	}
+
+	/**
+	 * desired (1 based) position of marker 'i' after trialCount observations.
+	 */
+	private double getDesiredPosition(double p, int i) {
+		double increments = trialCount - 1;
+		switch (i) {
+			case 0: return 1;
+			case 1: return 1 + increments * p / 2;
+			case 2: return 1 + increments * p;
+			case 3: return 1 + increments * (1 + p) / 2;
+			default: return trialCount;
+		}
+	}
+
+	private double getQuantile(int q, int v, int r) {
+		double[] heights = markerHeights[q][v];
+		int offset = r * MARKERS;
+		if (trialCount > MARKERS) {
+			return heights[offset + 2];
+		}
+		// exact (nearest rank) from the stored observations
+		int index = (int)Math.min(trialCount - 1, Math.max(0, Math.ceil(quantiles[q] * trialCount) - 1));
+		return heights[offset + index];
+	}
+
+	/**
+	 * column name of quantile 'p' of 'variableName', e.g. S1_Q95 or S1_Q2_5
+	 */
+	public static String getQuantileColumnName(String variableName, double p) {
+		String percent = Double.toString(Math.round(p * 100 * 1000) / 1000.0);
+		if (percent.endsWith(".0")) {
+			percent = percent.substring(0, percent.length() - 2);
+		}
+		return variableName + SimDataConstants.MULTI_TRIAL_QUANTILE_SUFFIX + percent.replace('.', '_');
+	}
+
+	/**
+	 * @return time, the mean of each variable (under the variable's name) followed by the standard deviation, 95% confidence interval
+	 * of the mean and quantile columns of all variables (see {@link SimDataConstants#MULTI_TRIAL_STDEV_SUFFIX} etc.).
+	 */
+	public synchronized ODESolverResultSet createResultSet() {
+		if (trialCount == 0) {
+			throw new IllegalStateException("no trials added");
+		}
+		int variableCount = columnNames.length;
+		int rowCount = times.length;
+		ODESolverResultSet resultSet = new ODESolverResultSet();
+		double[][] columnValues = new double[1 + variableCount * (4 + quantiles.length)][];
+		int column = 0;
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription(timeName));
+		columnValues[column++] = times.clone();
+		for (int v = 0; v < variableCount; v++) {
+			resultSet.addDataColumn(new ODESolverResultSetColumnDescription(columnNames[v]));
+			columnValues[column++] = means[v].clone();
+		}
+		double[][] standardDeviations = new double[variableCount][rowCount];
+		for (int v = 0; v < variableCount; v++) {
+			for (int r = 0; r < rowCount; r++) {
+				standardDeviations[v][r] = (trialCount > 1) ? Math.sqrt(Math.max(0, m2s[v][r] / (trialCount - 1))) : 0;
+			}
+			resultSet.addDataColumn(new ODESolverResultSetColumnDescription(columnNames[v] + SimDataConstants.MULTI_TRIAL_STDEV_SUFFIX));
+			columnValues[column++] = standardDeviations[v];
+		}
+		for (int v = 0; v < variableCount; v++) {
+			double[] lower = new double[rowCount];
+			double[] upper = new double[rowCount];
+			for (int r = 0; r < rowCount; r++) {
+				double halfWidth = CONFIDENCE_Z * standardDeviations[v][r] / Math.sqrt(trialCount);
+				lower[r] = means[v][r] - halfWidth;
+				upper[r] = means[v][r] + halfWidth;
+			}
+			resultSet.addDataColumn(new ODESolverResultSetColumnDescription(columnNames[v] + SimDataConstants.MULTI_TRIAL_CI_LOWER_SUFFIX));
+			columnValues[column++] = lower;
+			resultSet.addDataColumn(new ODESolverResultSetColumnDescription(columnNames[v] + SimDataConstants.MULTI_TRIAL_CI_UPPER_SUFFIX));
+			columnValues[column++] = upper;
+		}
+		for (int q = 0; q < quantiles.length; q++) {
+			for (int v = 0; v < variableCount; v++) {
+				double[] values = new double[rowCount];
+				for (int r = 0; r < rowCount; r++) {
+					values[r] = getQuantile(q, v, r);
+				}
+				resultSet.addDataColumn(new ODESolverResultSetColumnDescription(getQuantileColumnName(columnNames[v], quantiles[q])));
+				columnValues[column++] = values;
+			}
+		}
+		resultSet.setDataColumnValues(columnValues, rowCount);
+		return resultSet;
+	}
+}
@@ -339,8 +339,9 @@ public class CopasiOptimizationSolver {
 		for (int i = 0; i < rcResultSet.getDataColumnCount(); i++){
 			odeSolverResultSet.addDataColumn(new ODESolverResultSetColumnDescription(rcResultSet.getColumnDescriptions(i).getName()));
 		}
+		double[] row = new double[rcResultSet.getDataColumnCount()];
 		for (int i = 0; i < rcResultSet.getRowCount(); i++){
-			odeSolverResultSet.addRow(rcResultSet.getRow(i));
+			odeSolverResultSet.addRow(rcResultSet.getRow(i, row));
 		}
 		//
 		// add appropriate Function columns to result set
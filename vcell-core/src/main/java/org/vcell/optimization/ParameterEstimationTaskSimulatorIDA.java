@@ -19,9 +19,12 @@ import cbit.vcell.opt.OptimizationResultSet;
 import cbit.vcell.opt.OptimizationSpec;
 import cbit.vcell.opt.ReferenceData;
 import cbit.vcell.parser.Expression;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.resource.ResourceUtil;
 import cbit.vcell.solver.ode.IDASolverStandalone;
 import cbit.vcell.solver.ode.ODESolverResultSet;
+import cbit.vcell.solver.ode.RosenbrockSolver;
+import cbit.vcell.solver.server.SolverStatus;
 
 public class ParameterEstimationTaskSimulatorIDA {
 	
@@ -45,6 +48,15 @@ public class ParameterEstimationTaskSimulatorIDA {
 			mathOverrides.putConstant(new Constant(paramNames[i],new Expression(paramValues[i])));
 		}
 		SimulationTask simTask = new SimulationTask(new SimulationJob(simulation, 0, null),0);
+		if (PropertyLoader.getBooleanProperty(PropertyLoader.odeStiffInProcessProperty, false) && RosenbrockSolver.isSupported(simulation)){
+			// runs in this thread, no native process to wait for
+			RosenbrockSolver solver = new RosenbrockSolver(simTask, ResourceUtil.getLocalSimDir("temp"));
+			solver.runSolver();
+			if (solver.getSolverStatus().getStatus() != SolverStatus.SOLVER_FINISHED){
+				throw new Exception(solver.getSolverStatus().getSimulationMessage().getDisplayMessage());
+			}
+			return solver.getODESolverResultSet();
+		}
 		IDASolverStandalone idaSolver = new IDASolverStandalone(simTask, ResourceUtil.getLocalSimDir("temp"), false);
 		idaSolver.runSolver();	//startSolver();
 		Thread.sleep(1000);
@@ -2,9 +2,19 @@ package org.vcell.vis.mapping.vcell;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.vcell.util.DataAccessException;
 import org.vcell.util.FileUtils;
@@ -19,11 +29,13 @@ import org.vcell.vis.vismesh.thrift.FiniteVolumeIndexData;
 import org.vcell.vis.vismesh.thrift.VisMesh;
 import org.vcell.vis.vtk.VisMeshUtils;
 import org.vcell.vis.vtk.VtkService;
+import org.vcell.vis.vtk.VtuFileWriter;
 
 import cbit.vcell.mapping.DiffEquMathMapping;
 import cbit.vcell.math.MathException;
 import cbit.vcell.math.MathFunctionDefinitions;
 import cbit.vcell.math.VariableType.VariableDomain;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.simdata.DataIdentifier;
 import cbit.vcell.simdata.OutputContext;
 import cbit.vcell.simdata.SimDataBlock;
@@ -39,6 +51,16 @@ public class CartesianMeshVtkFileWriter {
 	public interface ProgressListener {
 		public void progress(double percentDone);
 	}
+
+	/**
+	 * supplies the cartesian mesh data (volume or membrane elements, or regions) of a variable, called from the export threads.
+	 */
+	public interface DataProvider {
+		public double[] getData(DataIdentifier dataIdentifier, double time) throws Exception;
+	}
+
+	private static int vtuExportThreadCount = 0;
+	private static ExecutorService vtuExportExecutor = null;
 	
 	private boolean isMeshVar(DataIdentifier dataID){
 		boolean bMeshVar = false;
@@ -98,8 +120,138 @@ public class CartesianMeshVtkFileWriter {
 		return varInfos.toArray(new VtuVarInfo[0]); 
 	}
 	
-	public File[] writeVtuExportFiles(VCellSimFiles vcellFiles, File destinationDirectory, ProgressListener progressListener) throws Exception{
-		throw new RuntimeException("not yet implemented");
+	/**
+	 * writes one vtu file per domain and time (named by {@link VCellSimFiles#getCannonicalFilePrefix(String, int)} with the index
+	 * into 'times') with the cell data of the variables defined in that domain, plus the global index and region id of each cell.
+	 * <p>
+	 * The mesh is built once per domain (the empty mesh files next to the simulation data), each file copies its compressed
+	 * geometry and appends the compressed data, and the time points are written in parallel on a shared pool.
+	 */
+	public File[] writeVtuExportFiles(VCellSimFiles vcellFiles, DataIdentifier[] dataIdentifiers, double[] times, final DataProvider dataProvider,
+			final File destinationDirectory, ProgressListener progressListener) throws Exception{
+		if (destinationDirectory==null || !destinationDirectory.isDirectory()){
+			throw new RuntimeException("destinationDirectory '"+destinationDirectory+" not valid");
+		}
+		CartesianMeshFileReader reader = new CartesianMeshFileReader();
+		CartesianMesh mesh = reader.readFromFiles(vcellFiles);
+		List<String> volumeDomainNames = mesh.getVolumeDomainNames();
+		List<String> membraneDomainNames = mesh.getMembraneDomainNames();
+		final ArrayList<String> allDomainNames = new ArrayList<String>();
+		allDomainNames.addAll(volumeDomainNames);
+		allDomainNames.addAll(membraneDomainNames);
+
+		boolean bMeshFileMissing = false;
+		for (String domainName : allDomainNames){
+			if (!getVtuMeshFileName(vcellFiles, domainName).exists() || !getFiniteVolumeIndexDataFileName(vcellFiles, domainName).exists()){
+				bMeshFileMissing = true;
+			}
+		}
+		if (bMeshFileMissing){
+			writeEmptyMeshFiles(vcellFiles, vcellFiles.cartesianMeshFile.getParentFile(), null);
+		}
+
+		//
+		// per domain: the empty mesh, the cell indices and the variables defined there
+		//
+		final HashMap<String, File> meshFiles = new HashMap<String, File>();
+		final HashMap<String, FiniteVolumeIndexData> indexDatas = new HashMap<String, FiniteVolumeIndexData>();
+		final HashMap<String, List<DataIdentifier>> domainDataIdentifiers = new HashMap<String, List<DataIdentifier>>();
+		final HashMap<String, List<VtuFileWriter.DataArray>> indexArrays = new HashMap<String, List<VtuFileWriter.DataArray>>();
+		for (String domainName : allDomainNames){
+			meshFiles.put(domainName, getVtuMeshFileName(vcellFiles, domainName));
+			FiniteVolumeIndexData finiteVolumeIndexData = VisMeshUtils.readFiniteVolumeIndexData(getFiniteVolumeIndexDataFileName(vcellFiles, domainName));
+			indexDatas.put(domainName, finiteVolumeIndexData);
+			VariableDomain varDomain = volumeDomainNames.contains(domainName) ? VariableDomain.VARIABLEDOMAIN_VOLUME : VariableDomain.VARIABLEDOMAIN_MEMBRANE;
+			ArrayList<DataIdentifier> dataIDs = new ArrayList<DataIdentifier>();
+			for (DataIdentifier dataID : dataIdentifiers){
+				if (dataID.getVariableType().getVariableDomain() == varDomain
+						&& (dataID.getDomain()==null || dataID.getDomain().getName().equals(domainName))){
+					dataIDs.add(dataID);
+				}
+			}
+			domainDataIdentifiers.put(domainName, dataIDs);
+			int numCells = finiteVolumeIndexData.getFiniteVolumeIndicesSize();
+			double[] globalIndices = new double[numCells];
+			double[] regionIds = new double[numCells];
+			for (int vtkCellIndex=0; vtkCellIndex < numCells; vtkCellIndex++){
+				FiniteVolumeIndex fvIndex = finiteVolumeIndexData.getFiniteVolumeIndices().get(vtkCellIndex);
+				globalIndices[vtkCellIndex] = fvIndex.getGlobalIndex();
+				regionIds[vtkCellIndex] = fvIndex.getRegionIndex();
+			}
+			indexArrays.put(domainName, Arrays.asList(new VtuFileWriter.DataArray(GLOBAL_INDEX_VAR, globalIndices), new VtuFileWriter.DataArray(REGION_ID_VAR, regionIds)));
+		}
+
+		//
+		// one task per time point, each reads its data and writes the files of all domains
+		//
+		final VCellSimFiles simFiles = vcellFiles;
+		ArrayList<Future<List<File>>> futures = new ArrayList<Future<List<File>>>();
+		for (int timeIndex = 0; timeIndex < times.length; timeIndex++){
+			final int finalTimeIndex = timeIndex;
+			final double time = times[timeIndex];
+			futures.add(getVtuExportExecutor().submit(new Callable<List<File>>() {
+				@Override
+				public List<File> call() throws Exception {
+					ArrayList<File> timeFiles = new ArrayList<File>();
+					for (String domainName : allDomainNames){
+						FiniteVolumeIndexData finiteVolumeIndexData = indexDatas.get(domainName);
+						ArrayList<VtuFileWriter.DataArray> cellData = new ArrayList<VtuFileWriter.DataArray>();
+						for (DataIdentifier dataID : domainDataIdentifiers.get(domainName)){
+							cellData.add(new VtuFileWriter.DataArray(dataID.getName(), reorderData(finiteVolumeIndexData, dataProvider.getData(dataID, time))));
+						}
+						cellData.addAll(indexArrays.get(domainName));
+						File vtuFile = new File(destinationDirectory, simFiles.getCannonicalFilePrefix(domainName, finalTimeIndex)+".vtu");
+						VtuFileWriter.writeMeshWithData(meshFiles.get(domainName), null, cellData, vtuFile);
+						timeFiles.add(vtuFile);
+					}
+					return timeFiles;
+				}
+			}));
+		}
+		ArrayList<File> files = new ArrayList<File>();
+		try {
+			for (int i = 0; i < futures.size(); i++){
+				files.addAll(futures.get(i).get());
+				if (progressListener!=null){
+					progressListener.progress(((double)(i+1))/futures.size());
+				}
+			}
+		}catch (ExecutionException e){
+			for (Future<List<File>> future : futures){
+				future.cancel(true);
+			}
+			if (e.getCause() instanceof Exception){
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+		return files.toArray(new File[0]);
+	}
+
+	/**
+	 * number of time points written concurrently by {@link #writeVtuExportFiles}, from
+	 * {@link PropertyLoader#vtkExportThreadsProperty} (defaults to the number of processors).
+	 */
+	private static synchronized int getVtuExportThreadCount() {
+		if (vtuExportThreadCount == 0) {
+			vtuExportThreadCount = Math.max(1, PropertyLoader.getIntProperty(PropertyLoader.vtkExportThreadsProperty, Runtime.getRuntime().availableProcessors()));
+		}
+		return vtuExportThreadCount;
+	}
+
+	/**
+	 * bounded pool shared by all vtu exports of this process.
+	 */
+	private static synchronized ExecutorService getVtuExportExecutor() {
+		if (vtuExportExecutor == null) {
+			final AtomicInteger threadCounter = new AtomicInteger(0);
+			vtuExportExecutor = Executors.newFixedThreadPool(getVtuExportThreadCount(), (r) -> {
+				Thread t = new Thread(r, "VtuExport-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return vtuExportExecutor;
 	}
 	
 
@@ -129,23 +281,19 @@ public class CartesianMeshVtkFileWriter {
 		}
 		
 		FiniteVolumeIndexData finiteVolumeIndexData = VisMeshUtils.readFiniteVolumeIndexData(finiteVolumeIndexDataFile);
-		int maxGlobalIndex = 0;
-		int maxRegionIndex = 0;
-		for (FiniteVolumeIndex fvIndex : finiteVolumeIndexData.finiteVolumeIndices){
-			maxGlobalIndex = Math.max((int)fvIndex.globalIndex,maxGlobalIndex);
-			maxRegionIndex = Math.max((int)fvIndex.regionIndex,maxRegionIndex);
-		}
-		
-		int numCells = finiteVolumeIndexData.finiteVolumeIndices.size();
 		
 		String vcellName = var.name;
 		System.out.println("CartesianMeshVtkFileWriter.getVtuMeshData(): reading data for variable "+vcellName+" at time "+time);
 		double[] cartesianMeshData = simDataBlock.getData();
 		
-		
-		//
-		// have to reorder the cartesian mesh data according to the vtk mesh cell indices (may not even be the same length)
-		//
+		return reorderData(finiteVolumeIndexData, cartesianMeshData);
+	}
+
+	/**
+	 * have to reorder the cartesian mesh data according to the vtk mesh cell indices (may not even be the same length)
+	 */
+	private static double[] reorderData(FiniteVolumeIndexData finiteVolumeIndexData, double[] cartesianMeshData) {
+		int numCells = finiteVolumeIndexData.finiteVolumeIndices.size();
 		double[] vtkData = new double[numCells];
 		if (cartesianMeshData.length >= numCells){
 			// data is not from region variable, uses global indices
@@ -246,7 +394,20 @@ public class CartesianMeshVtkFileWriter {
 			VisMesh visMesh = domainMeshMap.get(domainName);
 			File vtuFile = getVtuMeshFileName(vcellFiles, domainName);
 			File fvIndexDataFileName = getFiniteVolumeIndexDataFileName(vcellFiles, domainName);
-			VtkService.getInstance().writeFiniteVolumeSmoothedVtkGridAndIndexData(visMesh, domainName, vtuFile, fvIndexDataFileName);
+			//
+			// the files are shared by all exports of this simulation, write them under temporary names and move them into
+			// place so that a concurrent export never reads a partially written mesh or index file.
+			//
+			File tmpVtuFile = File.createTempFile(vtuFile.getName(), ".tmp", vtuFile.getParentFile());
+			File tmpFvIndexDataFile = File.createTempFile(fvIndexDataFileName.getName(), ".tmp", fvIndexDataFileName.getParentFile());
+			try {
+				VtkService.getInstance().writeFiniteVolumeSmoothedVtkGridAndIndexData(visMesh, domainName, tmpVtuFile, tmpFvIndexDataFile);
+				moveAtomically(tmpFvIndexDataFile, fvIndexDataFileName);
+				moveAtomically(tmpVtuFile, vtuFile);
+			}finally{
+				tmpVtuFile.delete();
+				tmpFvIndexDataFile.delete();
+			}
 			files.add(vtuFile);
 			filesProcessed++;
 			if (progressListener!=null){
@@ -257,5 +418,13 @@ public class CartesianMeshVtkFileWriter {
 
 	}
 
+	private static void moveAtomically(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}catch (AtomicMoveNotSupportedException e){
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
 
 }
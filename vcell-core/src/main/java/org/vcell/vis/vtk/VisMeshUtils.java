@@ -4,6 +4,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.xml.bind.DatatypeConverter;
@@ -110,7 +111,22 @@ public class VisMeshUtils {
 		}
 	}
 	
+	static void writeMovingBoundaryIndexData(File movingBoundaryIndexFile, MovingBoundaryIndexData movingBoundaryIndexData) throws IOException {
+		TSerializer serializer = new TSerializer(new TBinaryProtocol.Factory());
+		try {
+			byte[] blob = serializer.serialize(movingBoundaryIndexData);
+			FileUtils.writeByteArrayToFile(movingBoundaryIndexFile, blob);
+		} catch (TException e) {
+			e.printStackTrace();
+			throw new IOException("error writing MovingBoundaryIndexData to file "+movingBoundaryIndexFile.getPath()+": "+e.getMessage(),e);
+		}
+	}
+	
 	public static void writeCellDataToVtu(File inputMeshFile, String dataName, double[] data, File outputMeshFile) throws IOException{
+		if (VtuFileWriter.isCompressedAppended(inputMeshFile)){
+			VtuFileWriter.writeMeshWithData(inputMeshFile, null, Arrays.asList(new VtuFileWriter.DataArray(dataName, data)), outputMeshFile);
+			return;
+		}
 		Document meshDocument = XmlUtil.readXML(inputMeshFile);
 		addCellDataToVtuXml(meshDocument, dataName, data);
 		FileWriter fw = null;
@@ -131,6 +147,10 @@ public class VisMeshUtils {
 	}
 
 	public static void writePointDataToVtu(File inputMeshFile, String dataName, double[] data, File outputMeshFile) throws IOException{
+		if (VtuFileWriter.isCompressedAppended(inputMeshFile)){
+			VtuFileWriter.writeMeshWithData(inputMeshFile, Arrays.asList(new VtuFileWriter.DataArray(dataName, data)), null, outputMeshFile);
+			return;
+		}
 		Document meshDocument = XmlUtil.readXML(inputMeshFile);
 		addPointDataToVtuXml(meshDocument, dataName, data);
 		FileWriter fw = null;
@@ -151,6 +171,9 @@ public class VisMeshUtils {
 	}
 
 	public static double[] readPointDataFromVtu(File inputMeshFile, String dataName) throws IOException{
+		if (VtuFileWriter.isCompressedAppended(inputMeshFile)){
+			return VtuFileWriter.readFloat64Array(inputMeshFile, dataName);
+		}
 		Document meshDocument = XmlUtil.readXML(inputMeshFile);
 		double[] data = readPointDataFromVtuXml(meshDocument, dataName);
 		return data;
@@ -7,13 +7,18 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.vcell.vis.vismesh.thrift.VisMesh;
 
+import cbit.vcell.resource.PropertyLoader;
+
 public abstract class VtkService {
 	public static VtkService vtkService = null;
 	protected static final Logger lg = LogManager.getLogger(VtkService.class);
 
 	public static VtkService getInstance(){
 		//return new VtkGridUtils();
-		return new VtkServicePython();
+		if (PropertyLoader.getBooleanProperty(PropertyLoader.vtkServicePythonProperty, false)){
+			return new VtkServicePython();
+		}
+		return new VtkServiceJava();
 	}
 
 	public abstract void writeChomboMembraneVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException;
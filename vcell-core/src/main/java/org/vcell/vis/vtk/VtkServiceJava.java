@@ -0,0 +1,428 @@
+package org.vcell.vis.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.vcell.vis.vismesh.thrift.ChomboIndexData;
+import org.vcell.vis.vismesh.thrift.FiniteVolumeIndexData;
+import org.vcell.vis.vismesh.thrift.MovingBoundaryIndexData;
+import org.vcell.vis.vismesh.thrift.PolyhedronFace;
+import org.vcell.vis.vismesh.thrift.VisIrregularPolyhedron;
+import org.vcell.vis.vismesh.thrift.VisLine;
+import org.vcell.vis.vismesh.thrift.VisMesh;
+import org.vcell.vis.vismesh.thrift.VisPoint;
+import org.vcell.vis.vismesh.thrift.VisPolygon;
+import org.vcell.vis.vismesh.thrift.VisSurfaceTriangle;
+import org.vcell.vis.vismesh.thrift.VisTetrahedron;
+import org.vcell.vis.vismesh.thrift.VisVoxel;
+
+/**
+ * Writes the vtu meshes and index files in process with {@link VtuFileWriter}, same meshes and indices as vtkService.py
+ * without starting python and serializing the VisMesh for it.
+ * <p>
+ * The index files list the index of each vtk cell in cell order.  Two steps differ from vtkService.py: the (convex) irregular
+ * polyhedra of chombo meshes are split into tetrahedra by a fan from one vertex instead of a Delaunay triangulation, and the
+ * surface of 3D finite volume meshes is smoothed with Taubin's lambda/mu method instead of VTK's windowed sinc filter (both
+ * are low pass filters which do not shrink the surface).
+ */
+public class VtkServiceJava extends VtkService {
+
+	private static final int SMOOTHING_ITERATIONS = 15;
+	private static final double SMOOTHING_LAMBDA = 0.5;
+	private static final double SMOOTHING_MU = -0.53;
+
+	//
+	// faces of a VTK_VOXEL (points ordered x fastest, then y, then z) as point cycles
+	//
+	private static final int[][] VOXEL_FACES = {
+			{ 0, 1, 3, 2 }, { 4, 5, 7, 6 }, { 0, 1, 5, 4 }, { 2, 3, 7, 6 }, { 0, 2, 6, 4 }, { 1, 3, 7, 5 } };
+	private static final int[][] TETRA_FACES = {
+			{ 0, 1, 2 }, { 0, 1, 3 }, { 0, 2, 3 }, { 1, 2, 3 } };
+
+	@Override
+	public void writeChomboMembraneVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException {
+		if (!domainName.toUpperCase().endsWith("MEMBRANE")){
+			throw new RuntimeException("expecting domain name ending with membrane");
+		}
+		VtuFileWriter.UnstructuredGrid grid = new VtuFileWriter.UnstructuredGrid();
+		addPoints(grid, visMesh.getSurfacePoints(), null);
+		ChomboIndexData chomboIndexData = new ChomboIndexData(domainName);
+		chomboIndexData.setChomboSurfaceIndices(new ArrayList<>());
+		if (visMesh.getDimension() == 2){
+			if (visMesh.getVisLines() != null){
+				for (VisLine visLine : visMesh.getVisLines()){
+					grid.addCell(VtuFileWriter.VTK_LINE, Arrays.asList(visLine.getP1(), visLine.getP2()));
+					chomboIndexData.addToChomboSurfaceIndices(visLine.getChomboSurfaceIndex());
+				}
+			}
+		}else{
+			if (visMesh.getSurfaceTriangles() != null){
+				for (VisSurfaceTriangle surfaceTriangle : visMesh.getSurfaceTriangles()){
+					grid.addCell(VtuFileWriter.VTK_TRIANGLE, surfaceTriangle.getPointIndices());
+					chomboIndexData.addToChomboSurfaceIndices(surfaceTriangle.getChomboSurfaceIndex());
+				}
+			}
+		}
+		if (chomboIndexData.getChomboSurfaceIndicesSize() == 0){
+			lg.warn("no chombo surface indices found for domain "+domainName);
+		}
+		VtuFileWriter.write(vtkFile, grid, null, null);
+		VisMeshUtils.writeChomboIndexData(indexFile, chomboIndexData);
+	}
+
+	@Override
+	public void writeChomboVolumeVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException {
+		List<Object> cells = getVolumeCells(visMesh);
+		VtuFileWriter.UnstructuredGrid grid = getVolumeGrid(visMesh, cells, null);
+		ChomboIndexData chomboIndexData = new ChomboIndexData(domainName);
+		chomboIndexData.setChomboVolumeIndices(new ArrayList<>());
+		for (Object cell : cells){
+			if (cell instanceof VisPolygon){
+				chomboIndexData.addToChomboVolumeIndices(((VisPolygon)cell).getChomboVolumeIndex());
+			}else if (cell instanceof VisVoxel){
+				chomboIndexData.addToChomboVolumeIndices(((VisVoxel)cell).getChomboVolumeIndex());
+			}else if (cell instanceof VisTetrahedron){
+				chomboIndexData.addToChomboVolumeIndices(((VisTetrahedron)cell).getChomboVolumeIndex());
+			}else{
+				throw new RuntimeException("unexpected cell "+cell.getClass().getSimpleName()+" in chombo volume mesh of domain "+domainName);
+			}
+		}
+		if (chomboIndexData.getChomboVolumeIndicesSize() == 0){
+			lg.warn("no chombo volume indices found for domain "+domainName);
+		}
+		VtuFileWriter.write(vtkFile, grid, null, null);
+		VisMeshUtils.writeChomboIndexData(indexFile, chomboIndexData);
+	}
+
+	@Override
+	public void writeFiniteVolumeSmoothedVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException {
+		List<Object> cells = getVolumeCells(visMesh);
+		double[] coordinates = null;
+		if (visMesh.getDimension() == 3){
+			coordinates = getSmoothedSurfaceCoordinates(visMesh, cells);
+		}
+		VtuFileWriter.UnstructuredGrid grid = getVolumeGrid(visMesh, cells, coordinates);
+		FiniteVolumeIndexData finiteVolumeIndexData = new FiniteVolumeIndexData(domainName, new ArrayList<>());
+		for (Object cell : cells){
+			if (cell instanceof VisPolygon){
+				finiteVolumeIndexData.addToFiniteVolumeIndices(((VisPolygon)cell).getFiniteVolumeIndex());
+			}else if (cell instanceof VisVoxel){
+				finiteVolumeIndexData.addToFiniteVolumeIndices(((VisVoxel)cell).getFiniteVolumeIndex());
+			}else if (cell instanceof VisTetrahedron){
+				finiteVolumeIndexData.addToFiniteVolumeIndices(((VisTetrahedron)cell).getFiniteVolumeIndex());
+			}
+		}
+		if (visMesh.getDimension() == 2 && visMesh.getVisLines() != null){
+			for (VisLine visLine : visMesh.getVisLines()){
+				finiteVolumeIndexData.addToFiniteVolumeIndices(visLine.getFiniteVolumeIndex());
+			}
+		}
+		if (finiteVolumeIndexData.getFiniteVolumeIndicesSize() == 0){
+			lg.warn("no finite volume indices found for domain "+domainName);
+		}
+		VtuFileWriter.write(vtkFile, grid, null, null);
+		VisMeshUtils.writeFiniteVolumeIndexData(indexFile, finiteVolumeIndexData);
+	}
+
+	@Override
+	public void writeMovingBoundaryVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException {
+		List<Object> cells = getVolumeCells(visMesh);
+		VtuFileWriter.UnstructuredGrid grid = getVolumeGrid(visMesh, cells, null);
+		MovingBoundaryIndexData movingBoundaryIndexData = new MovingBoundaryIndexData(domainName, 0);
+		for (Object cell : cells){
+			if (cell instanceof VisPolygon){
+				movingBoundaryIndexData.addToMovingBoundaryVolumeIndices(((VisPolygon)cell).getMovingBoundaryVolumeIndex());
+			}
+		}
+		if (visMesh.getVisLines() != null){
+			for (VisLine visLine : visMesh.getVisLines()){
+				movingBoundaryIndexData.addToMovingBoundarySurfaceIndices(visLine.getMovingBoundarySurfaceIndex());
+			}
+		}
+		if (movingBoundaryIndexData.getMovingBoundaryVolumeIndicesSize() == 0 && movingBoundaryIndexData.getMovingBoundarySurfaceIndicesSize() == 0){
+			lg.warn("no moving boundary indices found for domain "+domainName);
+		}
+		VtuFileWriter.write(vtkFile, grid, null, null);
+		VisMeshUtils.writeMovingBoundaryIndexData(indexFile, movingBoundaryIndexData);
+	}
+
+	@Override
+	public void writeComsolVtkGridAndIndexData(VisMesh visMesh, String domainName, File vtkFile, File indexFile) throws IOException {
+		// comsol data is point data in the order of the mesh points, there is no index file
+		List<Object> cells = getVolumeCells(visMesh);
+		VtuFileWriter.UnstructuredGrid grid = getVolumeGrid(visMesh, cells, null);
+		VtuFileWriter.write(vtkFile, grid, null, null);
+	}
+
+	/**
+	 * @return the cells of the volume grid in vtk cell order: polygons, voxels, tetrahedra (including the tetrahedra of the
+	 * irregular polyhedra).  Lines (2D membranes) have indices but no cells in the volume grid, as in vtkService.py.
+	 */
+	private static List<Object> getVolumeCells(VisMesh visMesh){
+		ArrayList<Object> cells = new ArrayList<Object>();
+		if (visMesh.getPolygons() != null){
+			cells.addAll(visMesh.getPolygons());
+		}
+		if (visMesh.getVisVoxels() != null){
+			cells.addAll(visMesh.getVisVoxels());
+		}
+		if (visMesh.getTetrahedra() != null){
+			cells.addAll(visMesh.getTetrahedra());
+		}
+		if (visMesh.getIrregularPolyhedra() != null){
+			for (VisIrregularPolyhedron irregularPolyhedron : visMesh.getIrregularPolyhedra()){
+				cells.addAll(createTetrahedra(irregularPolyhedron, visMesh.getPoints()));
+			}
+		}
+		return cells;
+	}
+
+	private static VtuFileWriter.UnstructuredGrid getVolumeGrid(VisMesh visMesh, List<Object> cells, double[] coordinates){
+		VtuFileWriter.UnstructuredGrid grid = new VtuFileWriter.UnstructuredGrid();
+		addPoints(grid, visMesh.getPoints(), coordinates);
+		for (Object cell : cells){
+			if (cell instanceof VisPolygon){
+				List<Integer> pointIndices = ((VisPolygon)cell).getPointIndices();
+				byte type = VtuFileWriter.VTK_POLYGON;
+				if (pointIndices.size() == 4){
+					type = VtuFileWriter.VTK_QUAD;
+				}else if (pointIndices.size() == 3){
+					type = VtuFileWriter.VTK_TRIANGLE;
+				}
+				grid.addCell(type, pointIndices);
+			}else if (cell instanceof VisVoxel){
+				grid.addCell(VtuFileWriter.VTK_VOXEL, ((VisVoxel)cell).getPointIndices());
+			}else if (cell instanceof VisTetrahedron){
+				grid.addCell(VtuFileWriter.VTK_TETRA, ((VisTetrahedron)cell).getPointIndices());
+			}
+		}
+		return grid;
+	}
+
+	private static void addPoints(VtuFileWriter.UnstructuredGrid grid, List<VisPoint> points, double[] coordinates){
+		if (points == null){
+			return;
+		}
+		for (int p = 0; p < points.size(); p++){
+			if (coordinates != null){
+				grid.addPoint(coordinates[3*p], coordinates[3*p+1], coordinates[3*p+2]);
+			}else{
+				VisPoint visPoint = points.get(p);
+				grid.addPoint(visPoint.getX(), visPoint.getY(), visPoint.getZ());
+			}
+		}
+	}
+
+	/**
+	 * splits a convex polyhedron (a clipped chombo cell) into tetrahedra: each face which does not contain the first vertex is
+	 * triangulated as a fan and every triangle is joined with the first vertex.  The tetrahedra get the indices of the polyhedron.
+	 */
+	static List<VisTetrahedron> createTetrahedra(VisIrregularPolyhedron irregularPolyhedron, List<VisPoint> points){
+		LinkedHashSet<Integer> uniquePointIndices = new LinkedHashSet<Integer>();
+		for (PolyhedronFace face : irregularPolyhedron.getPolyhedronFaces()){
+			uniquePointIndices.addAll(face.getVertices());
+		}
+		ArrayList<VisTetrahedron> visTets = new ArrayList<VisTetrahedron>();
+		if (uniquePointIndices.isEmpty()){
+			return visTets;
+		}
+		int apex = uniquePointIndices.iterator().next();
+		for (PolyhedronFace face : irregularPolyhedron.getPolyhedronFaces()){
+			List<Integer> vertices = face.getVertices();
+			if (vertices.contains(apex)){
+				continue;
+			}
+			for (int v = 1; v < vertices.size() - 1; v++){
+				int p0 = vertices.get(0);
+				int p1 = vertices.get(v);
+				int p2 = vertices.get(v + 1);
+				double volume = getSignedVolume(points.get(apex), points.get(p0), points.get(p1), points.get(p2));
+				if (volume == 0){
+					continue;
+				}
+				// positive orientation for vtk
+				VisTetrahedron visTet = (volume > 0) ? new VisTetrahedron(Arrays.asList(apex, p0, p1, p2)) : new VisTetrahedron(Arrays.asList(apex, p0, p2, p1));
+				setIndices(visTet, irregularPolyhedron);
+				visTets.add(visTet);
+			}
+		}
+		if (visTets.isEmpty()){
+			if (uniquePointIndices.size() == 4){
+				VisTetrahedron visTet = new VisTetrahedron(new ArrayList<Integer>(uniquePointIndices));
+				setIndices(visTet, irregularPolyhedron);
+				visTets.add(visTet);
+				lg.warn("made trivial tet ... maybe inside out");
+			}else{
+				lg.warn("found no tets, there are "+uniquePointIndices.size()+" unique point indices");
+			}
+		}
+		return visTets;
+	}
+
+	private static void setIndices(VisTetrahedron visTet, VisIrregularPolyhedron irregularPolyhedron){
+		if (irregularPolyhedron.getChomboVolumeIndex() != null){
+			visTet.setChomboVolumeIndex(irregularPolyhedron.getChomboVolumeIndex());
+		}
+		if (irregularPolyhedron.getFiniteVolumeIndex() != null){
+			visTet.setFiniteVolumeIndex(irregularPolyhedron.getFiniteVolumeIndex());
+		}
+	}
+
+	private static double getSignedVolume(VisPoint a, VisPoint b, VisPoint c, VisPoint d){
+		double bx = b.getX() - a.getX(), by = b.getY() - a.getY(), bz = b.getZ() - a.getZ();
+		double cx = c.getX() - a.getX(), cy = c.getY() - a.getY(), cz = c.getZ() - a.getZ();
+		double dx = d.getX() - a.getX(), dy = d.getY() - a.getY(), dz = d.getZ() - a.getZ();
+		return (bx * (cy * dz - cz * dy) - by * (cx * dz - cz * dx) + bz * (cx * dy - cy * dx)) / 6.0;
+	}
+
+	private static class FaceKey {
+		private final int[] sortedPoints;
+		private final int hashCode;
+
+		FaceKey(int[] points){
+			this.sortedPoints = points.clone();
+			Arrays.sort(this.sortedPoints);
+			this.hashCode = Arrays.hashCode(this.sortedPoints);
+		}
+
+		@Override
+		public int hashCode(){
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			return (obj instanceof FaceKey) && Arrays.equals(sortedPoints, ((FaceKey)obj).sortedPoints);
+		}
+	}
+
+	/**
+	 * @return the point coordinates with the surface points smoothed: the surface are the faces of voxels and tetrahedra which
+	 * are not shared by another cell, and the polygons (membranes).  Points on boundary or non-manifold edges of the surface
+	 * are not moved.
+	 */
+	private static double[] getSmoothedSurfaceCoordinates(VisMesh visMesh, List<Object> cells){
+		List<VisPoint> points = visMesh.getPoints();
+		int numPoints = (points == null) ? 0 : points.size();
+		double[] coordinates = new double[3 * numPoints];
+		for (int p = 0; p < numPoints; p++){
+			coordinates[3*p] = points.get(p).getX();
+			coordinates[3*p+1] = points.get(p).getY();
+			coordinates[3*p+2] = points.get(p).getZ();
+		}
+		//
+		// surface faces (as point cycles)
+		//
+		HashMap<FaceKey, int[]> cellFaces = new HashMap<FaceKey, int[]>();
+		HashMap<FaceKey, Integer> cellFaceCounts = new HashMap<FaceKey, Integer>();
+		ArrayList<int[]> surfaceFaces = new ArrayList<int[]>();
+		for (Object cell : cells){
+			if (cell instanceof VisPolygon){
+				surfaceFaces.add(toArray(((VisPolygon)cell).getPointIndices()));
+				continue;
+			}
+			List<Integer> cellPoints;
+			int[][] faces;
+			if (cell instanceof VisVoxel){
+				cellPoints = ((VisVoxel)cell).getPointIndices();
+				faces = VOXEL_FACES;
+			}else if (cell instanceof VisTetrahedron){
+				cellPoints = ((VisTetrahedron)cell).getPointIndices();
+				faces = TETRA_FACES;
+			}else{
+				continue;
+			}
+			for (int[] face : faces){
+				int[] facePoints = new int[face.length];
+				for (int v = 0; v < face.length; v++){
+					facePoints[v] = cellPoints.get(face[v]);
+				}
+				FaceKey key = new FaceKey(facePoints);
+				Integer count = cellFaceCounts.get(key);
+				cellFaceCounts.put(key, (count == null) ? 1 : count + 1);
+				cellFaces.put(key, facePoints);
+			}
+		}
+		for (FaceKey key : cellFaces.keySet()){
+			if (cellFaceCounts.get(key) == 1){
+				surfaceFaces.add(cellFaces.get(key));
+			}
+		}
+		cellFaces = null;
+		cellFaceCounts = null;
+		//
+		// edges of the surface, with the number of faces using them
+		//
+		HashMap<Long, Integer> edgeCounts = new HashMap<Long, Integer>();
+		for (int[] face : surfaceFaces){
+			for (int v = 0; v < face.length; v++){
+				int a = face[v];
+				int b = face[(v + 1) % face.length];
+				long key = ((long)Math.min(a, b) << 32) | Math.max(a, b);
+				Integer count = edgeCounts.get(key);
+				edgeCounts.put(key, (count == null) ? 1 : count + 1);
+			}
+		}
+		if (edgeCounts.isEmpty()){
+			return coordinates;
+		}
+		boolean[] bFixed = new boolean[numPoints];
+		int[] neighbourStarts = new int[numPoints + 1];
+		for (long key : edgeCounts.keySet()){
+			int a = (int)(key >>> 32);
+			int b = (int)key;
+			neighbourStarts[a + 1]++;
+			neighbourStarts[b + 1]++;
+			if (edgeCounts.get(key) != 2){
+				bFixed[a] = true;
+				bFixed[b] = true;
+			}
+		}
+		for (int p = 0; p < numPoints; p++){
+			neighbourStarts[p + 1] += neighbourStarts[p];
+		}
+		int[] neighbours = new int[neighbourStarts[numPoints]];
+		int[] next = Arrays.copyOf(neighbourStarts, numPoints);
+		for (long key : edgeCounts.keySet()){
+			int a = (int)(key >>> 32);
+			int b = (int)key;
+			neighbours[next[a]++] = b;
+			neighbours[next[b]++] = a;
+		}
+		//
+		// Taubin smoothing, a shrinking (lambda) and an expanding (mu) Laplacian step per iteration
+		//
+		double[] previous = new double[coordinates.length];
+		for (int iteration = 0; iteration < 2 * SMOOTHING_ITERATIONS; iteration++){
+			double factor = (iteration % 2 == 0) ? SMOOTHING_LAMBDA : SMOOTHING_MU;
+			System.arraycopy(coordinates, 0, previous, 0, coordinates.length);
+			for (int p = 0; p < numPoints; p++){
+				int degree = neighbourStarts[p + 1] - neighbourStarts[p];
+				if (degree == 0 || bFixed[p]){
+					continue;
+				}
+				for (int c = 0; c < 3; c++){
+					double sum = 0;
+					for (int n = neighbourStarts[p]; n < neighbourStarts[p + 1]; n++){
+						sum += previous[3 * neighbours[n] + c];
+					}
+					coordinates[3*p+c] = previous[3*p+c] + factor * (sum / degree - previous[3*p+c]);
+				}
+			}
+		}
+		return coordinates;
+	}
+
+	private static int[] toArray(List<Integer> list){
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++){
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,565 @@
+package org.vcell.vis.vtk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes VTK XML unstructured grids (.vtu) in Java, no VTK installation needed.
+ * <p>
+ * All arrays are stored in the raw appended section, zlib compressed in blocks of {@link #BLOCK_SIZE} bytes with UInt64
+ * block headers (the layout of vtkZLibDataCompressor), which VTK, ParaView and VisIt read directly.  The arrays are encoded
+ * and compressed one block at a time into a temporary file; the XML header needs the array offsets and is written when all
+ * compressed sizes are known, followed by the compressed data.
+ * <p>
+ * {@link #writeMeshWithData(File, List, List, File)} writes data for a mesh written before: the compressed points and cells
+ * of the mesh file are copied as they are and only the new arrays are compressed.
+ */
+public class VtuFileWriter {
+
+	public static final byte VTK_LINE = 3;
+	public static final byte VTK_TRIANGLE = 5;
+	public static final byte VTK_POLYGON = 7;
+	public static final byte VTK_QUAD = 9;
+	public static final byte VTK_TETRA = 10;
+	public static final byte VTK_VOXEL = 11;
+
+	static final int BLOCK_SIZE = 32768;
+	private static final int COMPRESSION_LEVEL = 5;		// default of vtkZLibDataCompressor
+	private static final String APPENDED_DATA_START = "<AppendedData encoding=\"raw\">";
+	private static final String APPENDED_DATA_END = "\n  </AppendedData>\n</VTKFile>\n";
+	private static final String COMPRESSOR_ATTRIBUTE = "compressor=\"vtkZLibDataCompressor\"";
+	private static final String HEADER_TYPE_ATTRIBUTE = "header_type=\"UInt64\"";
+
+	/**
+	 * points and cells of an unstructured grid, cells are given by the VTK cell type and their point indices.
+	 */
+	public static class UnstructuredGrid {
+		private double[] points = new double[3 * 1024];
+		private int pointCount = 0;
+		private long[] connectivity = new long[4096];
+		private int connectivityLength = 0;
+		private long[] offsets = new long[1024];
+		private byte[] types = new byte[1024];
+		private int cellCount = 0;
+
+		public int addPoint(double x, double y, double z) {
+			if (3 * pointCount + 3 > points.length) {
+				points = Arrays.copyOf(points, 2 * points.length);
+			}
+			points[3 * pointCount] = x;
+			points[3 * pointCount + 1] = y;
+			points[3 * pointCount + 2] = z;
+			return pointCount++;
+		}
+
+		public void addCell(byte type, List<Integer> pointIndices) {
+			if (connectivityLength + pointIndices.size() > connectivity.length) {
+				connectivity = Arrays.copyOf(connectivity, Math.max(2 * connectivity.length, connectivityLength + pointIndices.size()));
+			}
+			for (int p : pointIndices) {
+				if (p < 0 || p >= pointCount) {
+					throw new IllegalArgumentException("cell point index "+p+" out of range, there are "+pointCount+" points");
+				}
+				connectivity[connectivityLength++] = p;
+			}
+			if (cellCount == types.length) {
+				offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				types = Arrays.copyOf(types, 2 * types.length);
+			}
+			offsets[cellCount] = connectivityLength;
+			types[cellCount] = type;
+			cellCount++;
+		}
+
+		public int getPointCount() {
+			return pointCount;
+		}
+
+		public int getCellCount() {
+			return cellCount;
+		}
+	}
+
+	/**
+	 * a named scalar (Float64) point or cell data array.
+	 */
+	public static class DataArray {
+		public final String name;
+		public final double[] values;
+
+		public DataArray(String name, double[] values) {
+			this.name = name;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * values of one array, encoded little endian into the blocks.  BLOCK_SIZE is a multiple of every value size.
+	 */
+	private static abstract class ArraySource {
+		final String type;
+		final String name;
+		final int components;
+		final int count;
+		final int valueSize;
+
+		ArraySource(String type, String name, int components, int count, int valueSize) {
+			this.type = type;
+			this.name = name;
+			this.components = components;
+			this.count = count;
+			this.valueSize = valueSize;
+		}
+
+		abstract void put(ByteBuffer buffer, int from, int to);
+
+		String getRangeAttributes() {
+			return "";
+		}
+	}
+
+	private static class Float64Source extends ArraySource {
+		private final double[] values;
+
+		Float64Source(String name, int components, double[] values, int count) {
+			super("Float64", name, components, count, 8);
+			this.values = values;
+		}
+
+		@Override
+		void put(ByteBuffer buffer, int from, int to) {
+			for (int i = from; i < to; i++) {
+				buffer.putDouble(values[i]);
+			}
+		}
+
+		@Override
+		String getRangeAttributes() {
+			if (components != 1 || count == 0) {
+				return "";
+			}
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				// NaN values are left out
+				if (values[i] < min) {
+					min = values[i];
+				}
+				if (values[i] > max) {
+					max = values[i];
+				}
+			}
+			if (Double.isInfinite(min) || Double.isInfinite(max)) {
+				// only NaN or infinite values, no valid range
+				return "";
+			}
+			return " RangeMin=\""+min+"\" RangeMax=\""+max+"\"";
+		}
+	}
+
+	private static class Int64Source extends ArraySource {
+		private final long[] values;
+
+		Int64Source(String name, long[] values, int count) {
+			super("Int64", name, 1, count, 8);
+			this.values = values;
+		}
+
+		@Override
+		void put(ByteBuffer buffer, int from, int to) {
+			for (int i = from; i < to; i++) {
+				buffer.putLong(values[i]);
+			}
+		}
+	}
+
+	private static class UInt8Source extends ArraySource {
+		private final byte[] values;
+
+		UInt8Source(String name, byte[] values, int count) {
+			super("UInt8", name, 1, count, 1);
+			this.values = values;
+		}
+
+		@Override
+		void put(ByteBuffer buffer, int from, int to) {
+			buffer.put(values, from, to - from);
+		}
+	}
+
+	/**
+	 * writes compressed arrays one after the other into a (temporary) file, the offset of an array is its position in the file.
+	 */
+	private static class AppendedDataWriter implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private long position = 0;
+		private final Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+		private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+
+		AppendedDataWriter(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "rw");
+			this.channel = this.file.getChannel();
+		}
+
+		/**
+		 * @return the offset of the array.
+		 */
+		long write(ArraySource source) throws IOException {
+			long offset = position;
+			long totalSize = (long)source.count * source.valueSize;
+			int blockCount = (int)((totalSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			int valuesPerBlock = BLOCK_SIZE / source.valueSize;
+			ByteBuffer header = ByteBuffer.allocate(8 * (3 + blockCount)).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(blockCount);
+			header.putLong(BLOCK_SIZE);
+			header.putLong(totalSize % BLOCK_SIZE);
+			position += header.capacity();
+			for (int b = 0; b < blockCount; b++) {
+				int from = b * valuesPerBlock;
+				int to = Math.min(source.count, from + valuesPerBlock);
+				block.clear();
+				source.put(block, from, to);
+				deflater.reset();
+				deflater.setInput(block.array(), 0, block.position());
+				deflater.finish();
+				int compressedSize = 0;
+				while (!deflater.finished()) {
+					if (compressedSize == compressed.length) {
+						compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+					}
+					compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+				}
+				header.putLong(compressedSize);
+				writeFully(ByteBuffer.wrap(compressed, 0, compressedSize), position);
+				position += compressedSize;
+			}
+			header.flip();
+			writeFully(header, offset);
+			return offset;
+		}
+
+		private void writeFully(ByteBuffer buffer, long filePosition) throws IOException {
+			while (buffer.hasRemaining()) {
+				filePosition += channel.write(buffer, filePosition);
+			}
+		}
+
+		long getLength() {
+			return position;
+		}
+
+		void transferTo(FileChannel target) throws IOException {
+			transfer(channel, 0, position, target);
+		}
+
+		@Override
+		public void close() throws IOException {
+			deflater.end();
+			file.close();
+		}
+	}
+
+	/**
+	 * writes the grid and its point and cell data to 'vtuFile'.
+	 */
+	public static void write(File vtuFile, UnstructuredGrid grid, List<DataArray> pointData, List<DataArray> cellData) throws IOException {
+		List<ArraySource> pointSources = getDataSources(pointData, grid.pointCount, "point");
+		List<ArraySource> cellSources = getDataSources(cellData, grid.cellCount, "cell");
+		ArraySource pointsSource = new Float64Source("Points", 3, grid.points, 3 * grid.pointCount);
+		ArraySource[] cellsSources = new ArraySource[] {
+				new Int64Source("connectivity", grid.connectivity, grid.connectivityLength),
+				new Int64Source("offsets", grid.offsets, grid.cellCount),
+				new UInt8Source("types", grid.types, grid.cellCount)
+		};
+		File appendedFile = createAppendedFile(vtuFile);
+		try (AppendedDataWriter appendedDataWriter = new AppendedDataWriter(appendedFile)) {
+			StringBuilder pointDataElements = new StringBuilder();
+			for (ArraySource source : pointSources) {
+				appendDataArrayElement(pointDataElements, source, appendedDataWriter.write(source));
+			}
+			StringBuilder cellDataElements = new StringBuilder();
+			for (ArraySource source : cellSources) {
+				appendDataArrayElement(cellDataElements, source, appendedDataWriter.write(source));
+			}
+			StringBuilder pointsElements = new StringBuilder();
+			appendDataArrayElement(pointsElements, pointsSource, appendedDataWriter.write(pointsSource));
+			StringBuilder cellsElements = new StringBuilder();
+			for (ArraySource source : cellsSources) {
+				appendDataArrayElement(cellsElements, source, appendedDataWriter.write(source));
+			}
+			StringBuilder header = new StringBuilder();
+			header.append("<?xml version=\"1.0\"?>\n");
+			header.append("<VTKFile type=\"UnstructuredGrid\" version=\"1.0\" byte_order=\"LittleEndian\" "+HEADER_TYPE_ATTRIBUTE+" "+COMPRESSOR_ATTRIBUTE+">\n");
+			header.append("  <UnstructuredGrid>\n");
+			header.append("    <Piece NumberOfPoints=\""+grid.pointCount+"\" NumberOfCells=\""+grid.cellCount+"\">\n");
+			header.append("      <PointData>\n").append(pointDataElements).append("      </PointData>\n");
+			header.append("      <CellData>\n").append(cellDataElements).append("      </CellData>\n");
+			header.append("      <Points>\n").append(pointsElements).append("      </Points>\n");
+			header.append("      <Cells>\n").append(cellsElements).append("      </Cells>\n");
+			header.append("    </Piece>\n");
+			header.append("  </UnstructuredGrid>\n");
+			header.append("  "+APPENDED_DATA_START+"\n");
+			header.append("   _");
+			try (FileOutputStream out = new FileOutputStream(vtuFile)) {
+				FileChannel outChannel = out.getChannel();
+				writeString(outChannel, header.toString());
+				appendedDataWriter.transferTo(outChannel);
+				writeString(outChannel, APPENDED_DATA_END);
+			}
+		} finally {
+			appendedFile.delete();
+		}
+	}
+
+	/**
+	 * writes 'vtuFile' with the points, cells and arrays of 'meshFile' (written by this class) and the given point and cell data.
+	 */
+	public static void writeMeshWithData(File meshFile, List<DataArray> pointData, List<DataArray> cellData, File vtuFile) throws IOException {
+		String meshHeader = readHeader(meshFile);
+		if (meshHeader == null) {
+			throw new IOException("mesh file "+meshFile.getPath()+" is not a vtu file with compressed appended data");
+		}
+		long meshAppendedStart = meshHeader.getBytes(StandardCharsets.UTF_8).length + 1;
+		long meshAppendedLength = meshFile.length() - meshAppendedStart - APPENDED_DATA_END.length();
+		if (meshAppendedLength < 0) {
+			throw new IOException("mesh file "+meshFile.getPath()+" is truncated");
+		}
+		List<ArraySource> pointSources = getDataSources(pointData, getIntAttribute(meshHeader, "NumberOfPoints"), "point");
+		List<ArraySource> cellSources = getDataSources(cellData, getIntAttribute(meshHeader, "NumberOfCells"), "cell");
+		File appendedFile = createAppendedFile(vtuFile);
+		try (AppendedDataWriter appendedDataWriter = new AppendedDataWriter(appendedFile)) {
+			StringBuilder pointDataElements = new StringBuilder();
+			for (ArraySource source : pointSources) {
+				appendDataArrayElement(pointDataElements, source, meshAppendedLength + appendedDataWriter.write(source));
+			}
+			StringBuilder cellDataElements = new StringBuilder();
+			for (ArraySource source : cellSources) {
+				appendDataArrayElement(cellDataElements, source, meshAppendedLength + appendedDataWriter.write(source));
+			}
+			String header = insertBefore(meshHeader, "      </PointData>", pointDataElements.toString());
+			header = insertBefore(header, "      </CellData>", cellDataElements.toString());
+			try (FileOutputStream out = new FileOutputStream(vtuFile);
+					RandomAccessFile mesh = new RandomAccessFile(meshFile, "r")) {
+				FileChannel outChannel = out.getChannel();
+				writeString(outChannel, header+"_");
+				transfer(mesh.getChannel(), meshAppendedStart, meshAppendedLength, outChannel);
+				appendedDataWriter.transferTo(outChannel);
+				writeString(outChannel, APPENDED_DATA_END);
+			}
+		} finally {
+			appendedFile.delete();
+		}
+	}
+
+	/**
+	 * @return true if 'vtuFile' has compressed appended data (as written by this class), otherwise it may be a vtu file with
+	 * inline (base64) arrays as written by VTK.
+	 */
+	public static boolean isCompressedAppended(File vtuFile) throws IOException {
+		return readHeader(vtuFile) != null;
+	}
+
+	/**
+	 * reads a Float64 point or cell data array from a vtu file written by this class.
+	 */
+	public static double[] readFloat64Array(File vtuFile, String name) throws IOException {
+		ByteBuffer values = readArray(vtuFile, name, "Float64");
+		double[] data = new double[values.remaining() / 8];
+		values.asDoubleBuffer().get(data);
+		return data;
+	}
+
+	/**
+	 * reads an Int64 array (e.g. the cell connectivity and offsets) from a vtu file written by this class.
+	 */
+	static long[] readInt64Array(File vtuFile, String name) throws IOException {
+		ByteBuffer values = readArray(vtuFile, name, "Int64");
+		long[] data = new long[values.remaining() / 8];
+		values.asLongBuffer().get(data);
+		return data;
+	}
+
+	/**
+	 * reads a UInt8 array (e.g. the cell types) from a vtu file written by this class.
+	 */
+	static byte[] readUInt8Array(File vtuFile, String name) throws IOException {
+		ByteBuffer values = readArray(vtuFile, name, "UInt8");
+		byte[] data = new byte[values.remaining()];
+		values.get(data);
+		return data;
+	}
+
+	private static ByteBuffer readArray(File vtuFile, String name, String type) throws IOException {
+		String header = readHeader(vtuFile);
+		if (header == null) {
+			throw new IOException("file "+vtuFile.getPath()+" is not a vtu file with compressed appended data");
+		}
+		Matcher matcher = Pattern.compile("<DataArray type=\"([^\"]*)\" Name=\""+Pattern.quote(escape(name))+"\"[^>]* offset=\"(\\d+)\"").matcher(header);
+		if (!matcher.find()) {
+			throw new IOException("data array "+name+" not found in "+vtuFile.getPath());
+		}
+		if (!matcher.group(1).equals(type)) {
+			throw new IOException("data array "+name+" in "+vtuFile.getPath()+" has type "+matcher.group(1)+", expecting "+type);
+		}
+		long arrayStart = header.getBytes(StandardCharsets.UTF_8).length + 1 + Long.parseLong(matcher.group(2));
+		try (RandomAccessFile file = new RandomAccessFile(vtuFile, "r")) {
+			file.seek(arrayStart);
+			ByteBuffer blockHeader = readBuffer(file, 24);
+			int blockCount = (int)blockHeader.getLong();
+			int blockSize = (int)blockHeader.getLong();
+			int lastBlockSize = (int)blockHeader.getLong();
+			if (blockCount == 0) {
+				return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			ByteBuffer compressedSizes = readBuffer(file, 8 * blockCount);
+			long totalSize = (long)(blockCount - 1) * blockSize + ((lastBlockSize == 0) ? blockSize : lastBlockSize);
+			ByteBuffer values = ByteBuffer.allocate((int)totalSize).order(ByteOrder.LITTLE_ENDIAN);
+			Inflater inflater = new Inflater();
+			try {
+				for (int b = 0; b < blockCount; b++) {
+					byte[] compressed = new byte[(int)compressedSizes.getLong()];
+					file.readFully(compressed);
+					inflater.reset();
+					inflater.setInput(compressed);
+					int expectedSize = (b == blockCount - 1) ? (int)(totalSize - (long)b * blockSize) : blockSize;
+					int size = inflater.inflate(values.array(), values.position(), expectedSize);
+					if (size != expectedSize) {
+						throw new IOException("data array "+name+" in "+vtuFile.getPath()+": block "+b+" has "+size+" bytes, expecting "+expectedSize);
+					}
+					values.position(values.position() + size);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("data array "+name+" in "+vtuFile.getPath()+" is corrupt: "+e.getMessage(), e);
+			} finally {
+				inflater.end();
+			}
+			values.flip();
+			return values;
+		}
+	}
+
+	private static ByteBuffer readBuffer(RandomAccessFile file, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		file.readFully(bytes);
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return the XML text up to the start of the appended data (excluding the '_' marker), or null if the file does not have
+	 * compressed appended data.
+	 */
+	private static String readHeader(File vtuFile) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(vtuFile, "r")) {
+			byte[] buffer = new byte[8192];
+			int length = 0;
+			while (true) {
+				int count = file.read(buffer, length, buffer.length - length);
+				if (count < 0) {
+					return null;
+				}
+				length += count;
+				String text = new String(buffer, 0, length, StandardCharsets.UTF_8);
+				int fileElementStart = text.indexOf("<VTKFile");
+				int fileElementEnd = (fileElementStart < 0) ? -1 : text.indexOf('>', fileElementStart);
+				if (fileElementEnd >= 0) {
+					String fileElement = text.substring(fileElementStart, fileElementEnd);
+					if (!fileElement.contains(COMPRESSOR_ATTRIBUTE) || !fileElement.contains(HEADER_TYPE_ATTRIBUTE)) {
+						// not compressed or not with 64 bit headers, don't read on (the file may be large)
+						return null;
+					}
+				}
+				int appendedStart = text.indexOf(APPENDED_DATA_START);
+				if (appendedStart >= 0) {
+					int marker = text.indexOf('_', appendedStart + APPENDED_DATA_START.length());
+					if (marker >= 0) {
+						return text.substring(0, marker);
+					}
+				}
+				if (length == buffer.length) {
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				}
+			}
+		}
+	}
+
+	private static int getIntAttribute(String header, String attribute) throws IOException {
+		Matcher matcher = Pattern.compile(attribute+"=\"(\\d+)\"").matcher(header);
+		if (!matcher.find()) {
+			throw new IOException("attribute "+attribute+" not found in vtu header");
+		}
+		return Integer.parseInt(matcher.group(1));
+	}
+
+	private static String insertBefore(String text, String tag, String insertion) throws IOException {
+		int index = text.indexOf(tag);
+		if (index < 0) {
+			throw new IOException("'"+tag.trim()+"' not found in vtu header");
+		}
+		return text.substring(0, index) + insertion + text.substring(index);
+	}
+
+	private static List<ArraySource> getDataSources(List<DataArray> dataArrays, int expectedSize, String kind) {
+		ArrayList<ArraySource> sources = new ArrayList<ArraySource>();
+		if (dataArrays != null) {
+			for (DataArray dataArray : dataArrays) {
+				if (dataArray.values.length != expectedSize) {
+					throw new IllegalArgumentException("the size "+dataArray.values.length+" of "+kind+" data "+dataArray.name+" doesn't match the number of "+kind+"s "+expectedSize);
+				}
+				sources.add(new Float64Source(dataArray.name, 1, dataArray.values, dataArray.values.length));
+			}
+		}
+		return sources;
+	}
+
+	private static void appendDataArrayElement(StringBuilder sb, ArraySource source, long offset) {
+		sb.append("        <DataArray type=\""+source.type+"\" Name=\""+escape(source.name)+"\"");
+		if (source.components != 1) {
+			sb.append(" NumberOfComponents=\""+source.components+"\"");
+		}
+		sb.append(" format=\"appended\""+source.getRangeAttributes()+" offset=\""+offset+"\"/>\n");
+	}
+
+	private static String escape(String name) {
+		return name.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	private static File createAppendedFile(File vtuFile) throws IOException {
+		File directory = vtuFile.getAbsoluteFile().getParentFile();
+		return File.createTempFile(vtuFile.getName(), ".appended", directory);
+	}
+
+	private static void writeString(FileChannel channel, String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void transfer(FileChannel source, long position, long length, FileChannel target) throws IOException {
+		long end = position + length;
+		while (position < end) {
+			long count = source.transferTo(position, end - position, target);
+			if (count <= 0) {
+				throw new IOException("failed to copy appended vtu data");
+			}
+			position += count;
+		}
+	}
+}
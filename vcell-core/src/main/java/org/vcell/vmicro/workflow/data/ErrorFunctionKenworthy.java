@@ -17,8 +17,9 @@ public class ErrorFunctionKenworthy extends ErrorFunctionInverseTimeL1 {
 		}
 		double timeOffset = 0;
 		double lastTime = reducedData.getRow(0)[0];
+		double[] row = new double[2];
 		for (int r=0; r<reducedData.getRowCount(); r++){
-			double[] row = reducedData.getRow(r);
+			reducedData.getRow(r, row);
 			// 0th index is time
 			double deltaT = row[0]-lastTime;
 			lastTime = row[0];
@@ -0,0 +1,82 @@
+package cbit.vcell.bionetgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cbit.vcell.parser.Expression;
+
+public class SpeciesCanonicalLabelingTest {
+
+	private static String signature(String speciesName) {
+		return SpeciesCanonicalLabeling.getCanonicalSignature(new BNGComplexSpecies(speciesName, new Expression(0.0), 1));
+	}
+
+	private static boolean isIsomorphism(String a, String b) {
+		return new SpeciesGraphIsomorphismInspector().isIsomorphism(
+				new BNGComplexSpecies(a, new Expression(0.0), 1), new BNGComplexSpecies(b, new Expression(0.0), 2));
+	}
+
+	@Test
+	public void testBondNumbering() {
+		String a = "EGF(rb!1).EGF(rb!2).EGFR(ecd!1,tmd!3,y1068~p,y1173~u).EGFR(ecd!2,tmd!3,y1068~u,y1173~p)";
+		String b = "EGF(rb!1).EGF(rb!2).EGFR(ecd!1,tmd!3,y1068~u,y1173~p).EGFR(ecd!2,tmd!3,y1068~p,y1173~u)";
+		String c = "EGF(rb!1).EGF(rb!2).EGFR(ecd!1,tmd!3,y1068~u,y1173~p).EGFR(ecd!2,tmd!3,y1068~p,y1173~v)";
+		String d = "EGFR(tmd!7,ecd!5,y1173~u,y1068~p).EGF(rb!5).EGFR(y1068~u,y1173~p,ecd!2,tmd!7).EGF(rb!2)";
+		Assert.assertEquals(signature(a), signature(b));
+		Assert.assertEquals(signature(a), signature(d));
+		Assert.assertNotEquals(signature(a), signature(c));
+	}
+
+	@Test
+	public void testSymmetricRings() {
+		// a ring of 4 and 2 rings of 2 have the same molecules and neighborhoods but are not isomorphic
+		String ring4 = "A(l!1,r!2).A(l!2,r!3).A(l!3,r!4).A(l!4,r!1)";
+		String ring4Renumbered = "A(r!9,l!3).A(r!3,l!5).A(l!1,r!5).A(l!9,r!1)";
+		String rings2 = "A(l!1,r!2).A(l!2,r!1).A(l!3,r!4).A(l!4,r!3)";
+		Assert.assertEquals(signature(ring4), signature(ring4Renumbered));
+		Assert.assertNotEquals(signature(ring4), signature(rings2));
+	}
+
+	// B(a!1,...,a!k) with k molecules A bound to it, the ones from firstPhosphorylated on in state P
+	private static String star(int k, int firstPhosphorylated, boolean bReversed) {
+		StringBuilder center = new StringBuilder("B(");
+		StringBuilder leaves = new StringBuilder();
+		for(int n=1; n<=k; n++) {
+			int i = bReversed ? k + 1 - n : n;
+			int bond = bReversed ? 2 * i + 5 : i;
+			center.append(n > 1 ? "," : "").append("a!").append(bond);
+			leaves.append(".A(b!").append(bond).append(",s~").append(i >= firstPhosphorylated ? "P" : "U").append(")");
+		}
+		return center.append(")").append(leaves).toString();
+	}
+
+	@Test(timeout = 10000)
+	public void testSymmetricStar() {
+		// the leaves of a star are all in one orbit, without automorphism pruning all k! orders would be tried
+		int k = 12;
+		Assert.assertEquals(signature(star(k, 1, false)), signature(star(k, 1, true)));
+		Assert.assertEquals(signature(star(k, 7, false)), signature(star(k, 7, true)));
+		Assert.assertNotEquals(signature(star(k, 7, false)), signature(star(k, 6, true)));
+		Assert.assertTrue(isIsomorphism(star(4, 3, false), star(4, 3, true)));
+		Assert.assertFalse(isIsomorphism(star(4, 3, false), star(4, 2, true)));
+	}
+
+	@Test
+	public void testAgreesWithGraphIsomorphism() {
+		String[] species = {
+			"A(b!1,c~P).B(a!1,a!2).A(b!2,c~U)",
+			"A(b!1,c~U).B(a!2,a!1).A(b!2,c~P)",
+			"A(b!1,c~P!3).B(a!1,a!2).A(b!2,c~U!3)",
+			"A(b!1,c~U!3).B(a!2,a!1).A(b!2,c~P!3)",
+			"A(b!1,c~P).B(a!1,a!2).A(b!2,c~P)",
+			"A(b!1,b!2).B(a!1,a!2)",
+			"A(b!1,b!2).B(a!2,a!1)",
+			"A(b,c~P).B(a,a)",
+		};
+		for(String a : species) {
+			for(String b : species) {
+				Assert.assertEquals(a + " vs " + b, isIsomorphism(a, b), signature(a).equals(signature(b)));
+			}
+		}
+	}
+}
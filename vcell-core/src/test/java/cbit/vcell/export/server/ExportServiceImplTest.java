@@ -0,0 +1,188 @@
+package cbit.vcell.export.server;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vcell.util.Extent;
+import org.vcell.util.ISize;
+import org.vcell.util.Origin;
+import org.vcell.util.document.ExternalDataIdentifier;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+
+import cbit.image.VCImageUncompressed;
+import cbit.rmi.event.ExportEvent;
+import cbit.vcell.field.io.FieldDataFileOperationSpec;
+import cbit.vcell.geometry.RegionImage;
+import cbit.vcell.math.VariableType;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.DataServerImpl;
+import cbit.vcell.simdata.DataSetControllerImpl;
+import cbit.vcell.simdata.OutputContext;
+import cbit.vcell.simdata.SimulationData;
+import cbit.vcell.solver.AnnotatedFunction;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
+import cbit.vcell.solver.VCSimulationIdentifier;
+import cbit.vcell.solvers.CartesianMesh;
+
+public class ExportServiceImplTest {
+
+	private static final String[] EXPORT_PROPERTIES = { PropertyLoader.exportBaseDirInternalProperty, PropertyLoader.exportBaseURLProperty };
+
+	private File tempDir = null;
+	private File exportDir = null;
+	private String[] savedProperties = new String[EXPORT_PROPERTIES.length];
+	private ExportServiceImpl exportServiceImpl = null;
+	private OutputContext outputContext = new OutputContext(new AnnotatedFunction[] {});
+
+	@Before
+	public void setUp() throws Exception {
+		System.setProperty(PropertyLoader.installationRoot, new File("../").getAbsolutePath());
+		tempDir = Files.createTempDirectory("exportServiceImplTest").toFile();
+		exportDir = new File(tempDir, "export");
+		exportDir.mkdir();
+		for (int i = 0; i < EXPORT_PROPERTIES.length; i++) {
+			savedProperties[i] = System.getProperty(EXPORT_PROPERTIES[i]);
+		}
+		System.setProperty(PropertyLoader.exportBaseDirInternalProperty, exportDir.getAbsolutePath() + File.separator);
+		System.setProperty(PropertyLoader.exportBaseURLProperty, "http://localhost/export/");
+		exportServiceImpl = new ExportServiceImpl();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (int i = 0; i < EXPORT_PROPERTIES.length; i++) {
+			if (savedProperties[i] == null) {
+				System.clearProperty(EXPORT_PROPERTIES[i]);
+			} else {
+				System.setProperty(EXPORT_PROPERTIES[i], savedProperties[i]);
+			}
+		}
+		deleteRecursively(tempDir);
+	}
+
+	@Test
+	public void testOutputExtensions2D() throws Exception {
+		File simDataDir = new File("src/test/resources/simdata");
+		VCSimulationIdentifier vcSimId = new VCSimulationIdentifier(new KeyValue("1771409053"), User.tempUser);
+		VCSimulationDataIdentifier vcdID = new VCSimulationDataIdentifier(vcSimId, 0);
+		DataServerImpl dataServerImpl = new DataServerImpl(new DataSetControllerImpl(null, simDataDir, null), exportServiceImpl);
+		String[] variableNames = { "RanC_cyt" };
+		double[] times = { 0.0, 0.5 };
+
+		Assert.assertEquals(".ucd", getOutputExtension(export(dataServerImpl, vcdID, ExportFormat.UCD, variableNames, times)));
+		// 2D data keeps the ascii legacy vtk files
+		Assert.assertEquals(".vtk", getOutputExtension(export(dataServerImpl, vcdID, ExportFormat.VTK_UNSTRUCT, variableNames, times)));
+		Assert.assertEquals(".vtk", getOutputExtension(export(dataServerImpl, vcdID, ExportFormat.VTK_IMAGE, variableNames, times)));
+	}
+
+	@Test
+	public void testOutputExtensions3D() throws Exception {
+		User user = new User("exportTest", new KeyValue("11"));
+		KeyValue simKey = new KeyValue("22");
+		File simDataDir = new File(tempDir, "simdata");
+		simDataDir.mkdir();
+		DataSetControllerImpl dataSetControllerImpl = new DataSetControllerImpl(null, simDataDir, null);
+		String[] variableNames = { "u" };
+		double[] times = { 0.0, 1.0 };
+		write3DSimData(simDataDir, dataSetControllerImpl, user, simKey, variableNames, times);
+
+		VCSimulationDataIdentifier vcdID = new VCSimulationDataIdentifier(new VCSimulationIdentifier(simKey, user), 0);
+		DataServerImpl dataServerImpl = new DataServerImpl(dataSetControllerImpl, exportServiceImpl);
+
+		Assert.assertEquals(".ucd", getOutputExtension(export(dataServerImpl, vcdID, ExportFormat.UCD, variableNames, times)));
+		// 3D finite volume data is written as binary vtu files
+		Assert.assertEquals(".vtu", getOutputExtension(export(dataServerImpl, vcdID, ExportFormat.VTK_UNSTRUCT, variableNames, times)));
+	}
+
+	private File export(DataServerImpl dataServerImpl, VCSimulationDataIdentifier vcdID, ExportFormat format, String[] variableNames, double[] times) throws Exception {
+		VariableSpecs variableSpecs = new VariableSpecs(variableNames, ExportConstants.VARIABLE_MULTI);
+		TimeSpecs timeSpecs = new TimeSpecs(0, times.length - 1, times, ExportConstants.TIME_RANGE);
+		GeometrySpecs geometrySpecs = new GeometrySpecs(null, 2, 0, ExportConstants.GEOMETRY_FULL);
+		ExportSpecs exportSpecs = new ExportSpecs(vcdID, format, variableSpecs, timeSpecs, geometrySpecs, null, "sim", "context");
+		ExportEvent exportEvent = exportServiceImpl.makeRemoteFile(outputContext, vcdID.getOwner(), dataServerImpl, exportSpecs);
+		File zipFile = new File(exportDir, exportEvent.getJobID() + ".zip");
+		Assert.assertTrue(zipFile.getPath(), zipFile.exists());
+		return zipFile;
+	}
+
+	/**
+	 * @return the extension shared by all entries of the export zip file
+	 */
+	private static String getOutputExtension(File zipFile) throws IOException {
+		List<String> extensions = new ArrayList<String>();
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				String extension = name.substring(name.lastIndexOf('.'));
+				if (!extensions.contains(extension)) {
+					extensions.add(extension);
+				}
+			}
+		}
+		Assert.assertEquals(extensions.toString(), 1, extensions.size());
+		return extensions.get(0);
+	}
+
+	/**
+	 * writes a 3x3x3 single compartment finite volume data set as field data and adds the subdomain file written by the solver.
+	 */
+	private static void write3DSimData(File simDataDir, DataSetControllerImpl dataSetControllerImpl, User user, KeyValue simKey, String[] variableNames, double[] times) throws Exception {
+		ISize size = new ISize(3, 3, 3);
+		Extent extent = new Extent(3, 3, 3);
+		Origin origin = new Origin(0, 0, 0);
+		VCImageUncompressed image = new VCImageUncompressed(null, new byte[size.getXYZ()], extent, size.getX(), size.getY(), size.getZ());
+		RegionImage regionImage = new RegionImage(image, 3, extent, origin, RegionImage.NO_SMOOTHING);
+		CartesianMesh mesh = CartesianMesh.createSimpleCartesianMesh(origin, extent, size, regionImage, true);
+
+		FieldDataFileOperationSpec spec = new FieldDataFileOperationSpec();
+		spec.opType = FieldDataFileOperationSpec.FDOS_ADD;
+		spec.owner = user;
+		spec.specEDI = new ExternalDataIdentifier(simKey, user, "sim");
+		spec.cartesianMesh = mesh;
+		spec.isize = size;
+		spec.extent = extent;
+		spec.origin = origin;
+		spec.times = times;
+		spec.varNames = variableNames;
+		spec.variableTypes = new VariableType[variableNames.length];
+		spec.doubleSpecData = new double[times.length][variableNames.length][size.getXYZ()];
+		for (int t = 0; t < times.length; t++) {
+			for (int v = 0; v < variableNames.length; v++) {
+				spec.variableTypes[v] = VariableType.VOLUME;
+				for (int i = 0; i < size.getXYZ(); i++) {
+					spec.doubleSpecData[t][v][i] = t + i;
+				}
+			}
+		}
+		dataSetControllerImpl.fieldDataFileOperation(spec);
+
+		File userDir = new File(simDataDir, user.getName());
+		try (FileWriter writer = new FileWriter(new File(userDir, SimulationData.createCanonicalSubdomainFileName(simKey, 0, false)))) {
+			writer.write("# CompartmentSubDomain name, handle\n");
+			writer.write("CompartmentSubDomain, region0, 0\n");
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,64 @@
+package cbit.vcell.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.Extent;
+import org.vcell.util.ISize;
+import org.vcell.util.Origin;
+
+import cbit.image.VCImage;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.render.Vect3d;
+
+public class AnalyticGeometrySamplerTest {
+
+	private static Geometry createGeometry() throws Exception {
+		Geometry geo = new Geometry("sampler", 3);
+		geo.getGeometrySpec().setOrigin(new Origin(-1, -1, -1));
+		geo.getGeometrySpec().setExtent(new Extent(2.0, 2.0, 2.0));
+		geo.getGeometrySpec().addSubVolume(new AnalyticSubVolume("nucleus", new Expression("x^2+y^2+(z-0.5)^2<0.1;")));
+		CSGObject csgObject = new CSGObject(null, "box", 0);
+		CSGScale scale = new CSGScale("scale", new Vect3d(0.5, 0.5, 0.5));
+		scale.setChild(new CSGPrimitive("cube", CSGPrimitive.PrimitiveType.CUBE));
+		csgObject.setRoot(scale);
+		geo.getGeometrySpec().addSubVolume(csgObject, false);
+		geo.getGeometrySpec().addSubVolume(new AnalyticSubVolume("cytosol", new Expression("x^2+y^2+z^2<0.8;")));
+		return geo;
+	}
+
+	@Test
+	public void testMatchesPointwiseClassification() throws Exception {
+		Geometry geo = createGeometry();
+		GeometrySpec geometrySpec = geo.getGeometrySpec();
+		ISize sampleSize = new ISize(61, 57, 53);
+		VCImage image = geometrySpec.createSampledImage(sampleSize);
+
+		// points outside of all subvolumes went to a single new background subvolume, added last
+		Assert.assertEquals(4, geometrySpec.getNumSubVolumes());
+		SubVolume background = geometrySpec.getSubVolumes()[3];
+		Assert.assertTrue(background.getName().startsWith("background"));
+
+		byte[] pixels = image.getPixels();
+		Extent extent = geometrySpec.getExtent();
+		int index = 0;
+		for (int k = 0; k < sampleSize.getZ(); k++){
+			double z = -1 + extent.getZ() * ((double)k / (sampleSize.getZ() - 1));
+			for (int j = 0; j < sampleSize.getY(); j++){
+				double y = -1 + extent.getY() * ((double)j / (sampleSize.getY() - 1));
+				for (int i = 0; i < sampleSize.getX(); i++){
+					double x = -1 + extent.getX() * ((double)i / (sampleSize.getX() - 1));
+					Assert.assertEquals(geometrySpec.getSubVolume(x, y, z).getHandle(), pixels[index++]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBackgroundCreatedOnce() throws Exception {
+		Geometry geo = createGeometry();
+		GeometrySpec geometrySpec = geo.getGeometrySpec();
+		geometrySpec.createSampledImage(new ISize(40, 40, 40));
+		geometrySpec.createSampledImage(new ISize(40, 40, 40));
+		Assert.assertEquals(4, geometrySpec.getNumSubVolumes());
+	}
+}
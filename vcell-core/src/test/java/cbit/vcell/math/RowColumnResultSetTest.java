@@ -10,8 +10,12 @@
 
 package cbit.vcell.math;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.vcell.util.BeanUtils;
 
 import cbit.vcell.parser.Expression;
 /**
@@ -79,4 +83,76 @@ public void test() {
 		Assert.fail(e.getMessage());
 	}
 }
+
+	@Test
+public void testColumnStorage() throws Exception {
+	RowColumnResultSet r = new RowColumnResultSet(new String[] { "t", "x" });
+	int N = 1000;
+	for (int i = 0; i < N; i++) {
+		r.addRow(new double[] { i, 2.0*i });
+	}
+	r.addFunctionColumn(new FunctionColumnDescription(new Expression("t + x"),"f", null, "f", false));
+	r.setValue(10, 1, -1.0);
+	Assert.assertEquals(N, r.getRowCount());
+	Assert.assertArrayEquals(new double[] { 10, -1.0 }, r.getRow(10), 0.0);
+	double[] row = new double[2];
+	Assert.assertSame(row, r.getRow(11, row));
+	Assert.assertArrayEquals(new double[] { 11, 22.0 }, row, 0.0);
+	Assert.assertEquals(N, r.getRows().size());
+
+	java.nio.DoubleBuffer xView = r.getColumnView(1);
+	Assert.assertEquals(N, xView.remaining());
+	Assert.assertEquals(-1.0, xView.get(10), 0.0);
+	Assert.assertEquals(2.0*(N-1), xView.get(N-1), 0.0);
+
+	double[] f = r.extractColumn(2);
+	Assert.assertEquals(N, f.length);
+	Assert.assertEquals(9.0, f[10], 0.0);
+	Assert.assertEquals(3.0*(N-1), f[N-1], 0.0);
+
+	RowColumnResultSet deserialized = (RowColumnResultSet)BeanUtils.fromSerialized(BeanUtils.toSerialized(r));
+	Assert.assertEquals(N, deserialized.getRowCount());
+	Assert.assertArrayEquals(r.getRow(N-1), deserialized.getRow(N-1), 0.0);
+	Assert.assertArrayEquals(f, deserialized.extractColumn(2), 0.0);
+
+	RowColumnResultSet copy = new RowColumnResultSet(r);
+	copy.setValue(0, 0, 5.0);
+	Assert.assertEquals(0.0, r.getRow(0)[0], 0.0);
+	Assert.assertEquals(5.0, copy.getRow(0)[0], 0.0);
+
+	r.removeAllRows();
+	Assert.assertEquals(0, r.getRowCount());
+}
+
+@Test
+public void testReadRowMajorForm() throws Exception {
+	// serialized by the row-major RowColumnResultSet (columns "t" and "x", three rows)
+	byte[] bytes = Files.readAllBytes(Paths.get(getClass().getResource("RowColumnResultSet_rowMajor.ser").toURI()));
+	RowColumnResultSet r = (RowColumnResultSet)BeanUtils.fromSerialized(bytes);
+	Assert.assertEquals(2, r.getDataColumnCount());
+	Assert.assertEquals("x", r.getColumnDescriptions(1).getName());
+	Assert.assertEquals(3, r.getRowCount());
+	Assert.assertArrayEquals(new double[] { 0.5, 2.5 }, r.getRow(1), 0.0);
+	Assert.assertArrayEquals(new double[] { 1.5, 2.5, -3.0 }, r.extractColumn(1), 0.0);
+	r.addRow(new double[] { 1.5, 4.0 });
+	Assert.assertEquals(4, r.getRowCount());
+	r.addFunctionColumn(new FunctionColumnDescription(new Expression("t + x"),"f", null, "f", false));
+	Assert.assertEquals(5.5, r.extractColumn(2)[3], 0.0);
+}
+
+	@Test
+public void testFunctionColumnFailingRows() throws Exception {
+	// enough rows to evaluate the function compiled
+	RowColumnResultSet r = new RowColumnResultSet(new String[] { "t", "x" });
+	int N = 1000;
+	for (int i = 0; i < N; i++) {
+		r.addRow(new double[] { i, i - 500 });
+	}
+	r.addFunctionColumn(new FunctionColumnDescription(new Expression("1 / x"),"f", null, "f", false));
+	double[] f = r.extractColumn(2);
+	Assert.assertEquals(N, f.length);
+	Assert.assertTrue(Double.isNaN(f[500]));
+	Assert.assertEquals(-1.0, f[499], 0.0);
+	Assert.assertEquals(0.5, f[502], 0.0);
+}
 }
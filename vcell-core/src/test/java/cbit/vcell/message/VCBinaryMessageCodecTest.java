@@ -0,0 +1,102 @@
+package cbit.vcell.message;
+
+import java.io.Serializable;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.BeanUtils;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.TSJobResultsNoStats;
+import org.vcell.util.document.User;
+
+import cbit.vcell.math.RowColumnResultSet;
+import cbit.vcell.math.VariableType;
+import cbit.vcell.simdata.PDEDataInfo;
+import cbit.vcell.simdata.SimDataBlock;
+
+public class VCBinaryMessageCodecTest {
+
+	private final VCBinaryMessageCodec codec = new VCBinaryMessageCodec();
+
+	private static double[] smoothData(int length){
+		double[] data = new double[length];
+		for (int i = 0; i < length; i++){
+			data[i] = 1.5 + Math.sin(i * 0.001);
+		}
+		return data;
+	}
+
+	@Test
+	public void testSimDataBlock() throws Exception {
+		double[] data = smoothData(100000);
+		PDEDataInfo info = new PDEDataInfo(new User("tester", new KeyValue("17")), "SimID_1_0_", "C", 2.5, 1000L);
+		SimDataBlock simDataBlock = new SimDataBlock(info, data, VariableType.VOLUME);
+		Assert.assertTrue(codec.supports(simDataBlock));
+
+		byte[] encoded = codec.encode(simDataBlock);
+		SimDataBlock decoded = (SimDataBlock)codec.decode(encoded);
+		Assert.assertArrayEquals(data, decoded.getData(), 0);
+		Assert.assertEquals(VariableType.VOLUME, decoded.getVariableType());
+		Assert.assertEquals("C", decoded.getPDEDataInfo().getVarName());
+		// smaller than the (compressed) Java serialization
+		Assert.assertTrue(encoded.length < BeanUtils.toSerialized(simDataBlock).length);
+	}
+
+	@Test
+	public void testTimeSeriesAndSharedArrays() throws Exception {
+		double[] times = smoothData(200);
+		double[][][] values = new double[][][] { { times, smoothData(200) }, { smoothData(10) } };
+		TSJobResultsNoStats results = new TSJobResultsNoStats(new String[] { "A", "B" }, new int[][] { { 1 }, { 2 } }, times, values);
+		Assert.assertTrue(codec.supports(results));
+
+		TSJobResultsNoStats decoded = (TSJobResultsNoStats)codec.decode(codec.encode(results));
+		Assert.assertArrayEquals(times, decoded.getTimes(), 0);
+		Assert.assertArrayEquals(values[0][1], decoded.getTimesAndValuesForVariable("A")[1], 0);
+		Assert.assertArrayEquals(values[1][0], decoded.getTimesAndValuesForVariable("B")[0], 0);
+		// an array referenced twice is still one array
+		Assert.assertSame(decoded.getTimes(), decoded.getTimesAndValuesForVariable("A")[0]);
+	}
+
+	@Test
+	public void testPrimitiveArrays() throws Exception {
+		int n = 1000;
+		int[] ints = new int[n];
+		long[] longs = new long[n];
+		float[] floats = new float[n];
+		for (int i = 0; i < n; i++){
+			ints[i] = i * 31 - 500;
+			longs[i] = Long.MAX_VALUE - i;
+			floats[i] = i * 0.5f;
+		}
+		Serializable object = new Object[] { ints, longs, floats, new double[] { Double.NaN, -0.0, 1e-300 }, "text" };
+		Object[] decoded = (Object[])codec.decode(codec.encode(object));
+		Assert.assertArrayEquals(ints, (int[])decoded[0]);
+		Assert.assertArrayEquals(longs, (long[])decoded[1]);
+		Assert.assertArrayEquals(floats, (float[])decoded[2], 0);
+		Assert.assertArrayEquals(new double[] { Double.NaN, -0.0, 1e-300 }, (double[])decoded[3], 0);
+		Assert.assertEquals("text", decoded[4]);
+
+		// small payloads are not deflated
+		double[] small = new double[] { 1, 2, 3 };
+		Assert.assertArrayEquals(small, (double[])codec.decode(codec.encode(small)), 0);
+	}
+
+	@Test
+	public void testResultSet() throws Exception {
+		RowColumnResultSet resultSet = new RowColumnResultSet(new String[] { "t", "x" });
+		for (int i = 0; i < 500; i++){
+			resultSet.addRow(new double[] { i * 0.1, Math.exp(-i * 0.01) });
+		}
+		RowColumnResultSet decoded = (RowColumnResultSet)codec.decode(codec.encode(resultSet));
+		Assert.assertEquals(500, decoded.getRowCount());
+		Assert.assertArrayEquals(resultSet.getRow(499), decoded.getRow(499), 0);
+	}
+
+	@Test
+	public void testSelectCodec() {
+		double[] data = new double[10];
+		Assert.assertSame(VCBinaryMessageCodec.class, VCMessageCodec.selectCodec("other, " + VCBinaryMessageCodec.NAME, data).getClass());
+		Assert.assertNull(VCMessageCodec.selectCodec(VCBinaryMessageCodec.NAME, "not an array"));
+		Assert.assertNull(VCMessageCodec.selectCodec(null, data));
+	}
+}
@@ -0,0 +1,121 @@
+package cbit.vcell.server.bionetgen;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vcell.util.BeanUtils;
+
+import cbit.vcell.bionetgen.BNGMolecule;
+import cbit.vcell.bionetgen.BNGOutputSpec;
+import cbit.vcell.bionetgen.BNGParameter;
+import cbit.vcell.bionetgen.BNGReaction;
+import cbit.vcell.bionetgen.BNGReactionRule;
+import cbit.vcell.bionetgen.BNGSpecies;
+import cbit.vcell.bionetgen.ObservableGroup;
+import cbit.vcell.resource.PropertyLoader;
+
+public class DiskBNGNetworkCacheTest {
+
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = Files.createTempDirectory("bngNetworkCache").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = cacheDir.listFiles();
+		if (files != null){
+			for (File file : files){
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	private static BNGNetworkCache.Entry entry(boolean bInsufficientIterations) {
+		BNGOutputSpec outputSpec = new BNGOutputSpec(new BNGParameter[0], new BNGMolecule[0], new BNGSpecies[0],
+				new BNGReactionRule[0], new BNGReaction[0], new ObservableGroup[0]);
+		return new BNGNetworkCache.Entry(outputSpec, bInsufficientIterations, false);
+	}
+
+	@Test
+	public void testPutGet() throws Exception {
+		DiskBNGNetworkCache cache = new DiskBNGNetworkCache(cacheDir, Long.MAX_VALUE);
+		Assert.assertNull(cache.get("abc"));
+		cache.put("abc", entry(true));
+		BNGNetworkCache.Entry cached = cache.get("abc");
+		Assert.assertNotNull(cached);
+		Assert.assertTrue(cached.bInsufficientIterations);
+		Assert.assertFalse(cached.bInsufficientMaxMolecules);
+		Assert.assertNotNull(cached.outputSpec);
+
+		// another process sharing the directory sees the entry
+		Assert.assertNotNull(new DiskBNGNetworkCache(cacheDir, Long.MAX_VALUE).get("abc"));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		long entrySize = BeanUtils.toCompressedSerialized(entry(false)).length;
+		DiskBNGNetworkCache cache = new DiskBNGNetworkCache(cacheDir, 2 * entrySize);
+		long now = System.currentTimeMillis();
+		cache.put("a", entry(false));
+		new File(cacheDir, "a.bngnet").setLastModified(now - 30000);
+		cache.put("b", entry(false));
+		new File(cacheDir, "b.bngnet").setLastModified(now - 20000);
+		cache.put("c", entry(false));
+		new File(cacheDir, "c.bngnet").setLastModified(now - 10000);
+		cache.evict();
+		Assert.assertNull(cache.get("a"));
+		Assert.assertNotNull(cache.get("b"));
+		Assert.assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	public void testKeyDependsOnExecutor() {
+		String multipassKey = BNGNetworkCache.getKey("2.3", BNGExecutorServiceMultipass.class.getName(), "begin model");
+		Assert.assertEquals(multipassKey, BNGNetworkCache.getKey("2.3", BNGExecutorServiceMultipass.class.getName(), "begin model"));
+		Assert.assertNotEquals(multipassKey, BNGNetworkCache.getKey("2.3", BNGExecutorServiceNative.class.getName(), "begin model"));
+		Assert.assertNotEquals(multipassKey, BNGNetworkCache.getKey("2.4", BNGExecutorServiceMultipass.class.getName(), "begin model"));
+	}
+
+	@Test
+	public void testCreateDefault() throws Exception {
+		String[] properties = { PropertyLoader.bngNetworkCache, PropertyLoader.bngNetworkCacheDir };
+		String[] savedProperties = new String[properties.length];
+		for (int i = 0; i < properties.length; i++){
+			savedProperties[i] = System.getProperty(properties[i]);
+		}
+		try {
+			// not enabled by default
+			System.clearProperty(PropertyLoader.bngNetworkCache);
+			Assert.assertNull(BNGNetworkCache.createDefault());
+
+			File defaultCacheDir = new File(cacheDir, "default");
+			System.setProperty(PropertyLoader.bngNetworkCache, "true");
+			System.setProperty(PropertyLoader.bngNetworkCacheDir, defaultCacheDir.getAbsolutePath());
+			BNGNetworkCache cache = BNGNetworkCache.createDefault();
+			Assert.assertTrue(cache instanceof DiskBNGNetworkCache);
+			Assert.assertEquals(defaultCacheDir, ((DiskBNGNetworkCache)cache).getCacheDir());
+			defaultCacheDir.delete();
+		} finally {
+			for (int i = 0; i < properties.length; i++){
+				if (savedProperties[i] == null){
+					System.clearProperty(properties[i]);
+				} else {
+					System.setProperty(properties[i], savedProperties[i]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidKey() throws Exception {
+		new DiskBNGNetworkCache(cacheDir, Long.MAX_VALUE).get("../abc");
+	}
+}
@@ -0,0 +1,162 @@
+package cbit.vcell.simdata;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.CacheStatus;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+
+import cbit.vcell.math.VariableType;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
+import cbit.vcell.solver.VCSimulationIdentifier;
+
+public class CachetableTest {
+
+	private static PDEDataInfo pdeDataInfo(String varName, double time) {
+		return new PDEDataInfo(User.tempUser, "SimID_1_0_", varName, time, 0L);
+	}
+
+	private static SimDataBlock simDataBlock(PDEDataInfo pdeDataInfo, int numValues) {
+		return new SimDataBlock(pdeDataInfo, new double[numValues], VariableType.VOLUME);
+	}
+
+	@Test
+	public void testSizeBoundAndCounters() throws Exception {
+		long maxMemSize = 100000L;
+		Cachetable cachetable = new Cachetable(Cachetable.minute, maxMemSize);
+		for (int i = 0; i < 100; i++){
+			PDEDataInfo info = pdeDataInfo("C", i);
+			Assert.assertNull(cachetable.get(info));
+			cachetable.put(info, simDataBlock(info, 1000));
+			CacheStatus cacheStatus = cachetable.getCacheStatus();
+			Assert.assertTrue(cacheStatus.toString(), cacheStatus.getCurrSize() <= maxMemSize);
+		}
+		CacheStatus cacheStatus = cachetable.getCacheStatus();
+		Assert.assertEquals(100, cacheStatus.getMissCount());
+		Assert.assertTrue(cacheStatus.toString(), cacheStatus.getEvictionCount() > 0);
+		Assert.assertEquals(cacheStatus.getNumObjects() * 8000L, cacheStatus.getCurrSize());
+	}
+
+	@Test
+	public void testFrequentEntriesStay() throws Exception {
+		Cachetable cachetable = new Cachetable(Cachetable.minute, 100000L);
+		PDEDataInfo hotInfo = pdeDataInfo("hot", 0);
+		cachetable.put(hotInfo, simDataBlock(hotInfo, 1000));
+		for (int i = 0; i < 20; i++){
+			Assert.assertNotNull(cachetable.get(hotInfo));
+		}
+		// scan through many entries which are used once.
+		for (int i = 0; i < 200; i++){
+			PDEDataInfo info = pdeDataInfo("cold", i);
+			cachetable.get(info);
+			cachetable.put(info, simDataBlock(info, 1000));
+			cachetable.get(hotInfo);
+		}
+		Assert.assertNotNull(cachetable.get(hotInfo));
+		Assert.assertTrue(cachetable.getCacheStatus().getHitCount() >= 221);
+	}
+
+	@Test
+	public void testRemoveVariable() throws Exception {
+		Cachetable cachetable = new Cachetable(Cachetable.minute, 1000000L);
+		PDEDataInfo info1 = pdeDataInfo("A", 0);
+		PDEDataInfo info2 = pdeDataInfo("B", 0);
+		cachetable.put(info1, simDataBlock(info1, 10));
+		cachetable.put(info2, simDataBlock(info2, 10));
+		cachetable.removeVariable(new VCSimulationDataIdentifier(new VCSimulationIdentifier(new KeyValue("1"), User.tempUser), 0), "A");
+		Assert.assertEquals(1, cachetable.getCacheStatus().getNumObjects());
+		Assert.assertNull(cachetable.get(info1));
+		Assert.assertNotNull(cachetable.get(info2));
+	}
+
+	@Test
+	public void testExpiredEntriesRemoved() throws Exception {
+		long expireTime = Cachetable.minute;
+		AtomicLong clock = new AtomicLong(1000);
+		// room for 12 entries of 8000 bytes, 9 of them protected
+		Cachetable cachetable = new Cachetable(expireTime, 100000L, clock::get);
+		PDEDataInfo oldInfo = pdeDataInfo("old", 0);
+		cachetable.put(oldInfo, simDataBlock(oldInfo, 1000));
+		Assert.assertNotNull(cachetable.get(oldInfo));
+		clock.addAndGet(expireTime * 7 / 10);
+
+		PDEDataInfo probationInfo = pdeDataInfo("probation", 0);
+		cachetable.put(probationInfo, simDataBlock(probationInfo, 1000));
+		for (int i = 0; i < 10; i++){
+			PDEDataInfo info = pdeDataInfo("protected", i);
+			cachetable.put(info, simDataBlock(info, 1000));
+			Assert.assertNotNull(cachetable.get(info));
+		}
+		// the old entry was demoted behind the newer probation entry, it expires first
+		clock.addAndGet(expireTime / 2);
+		Assert.assertEquals(12, cachetable.getCacheStatus().getNumObjects());
+		PDEDataInfo newInfo = pdeDataInfo("new", 0);
+		cachetable.put(newInfo, simDataBlock(newInfo, 1000));
+		CacheStatus cacheStatus = cachetable.getCacheStatus();
+		Assert.assertEquals(cacheStatus.toString(), 12, cacheStatus.getNumObjects());
+		Assert.assertEquals(cacheStatus.toString(), 0, cacheStatus.getEvictionCount());
+		Assert.assertNotNull(cachetable.get(probationInfo));
+
+		clock.addAndGet(expireTime + 1);
+		cachetable.ping();
+		Assert.assertEquals(0, cachetable.getCacheStatus().getNumObjects());
+		Assert.assertEquals(0, cachetable.getCacheStatus().getCurrSize());
+
+		// put() doesn't scan for expired entries again within a quarter of the expire time
+		PDEDataInfo info1 = pdeDataInfo("A", 0);
+		cachetable.put(info1, simDataBlock(info1, 1000));
+		clock.addAndGet(expireTime * 9 / 10);
+		cachetable.ping();
+		Assert.assertEquals(1, cachetable.getCacheStatus().getNumObjects());
+		clock.addAndGet(expireTime * 2 / 10);
+		PDEDataInfo info2 = pdeDataInfo("B", 0);
+		cachetable.put(info2, simDataBlock(info2, 1000));
+		Assert.assertEquals(2, cachetable.getCacheStatus().getNumObjects());
+		clock.addAndGet(expireTime / 10);
+		PDEDataInfo info3 = pdeDataInfo("C", 0);
+		cachetable.put(info3, simDataBlock(info3, 1000));
+		Assert.assertEquals(2, cachetable.getCacheStatus().getNumObjects());
+		Assert.assertNull(cachetable.get(info1));
+		Assert.assertNotNull(cachetable.get(info2));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final long maxMemSize = 200000L;
+		final Cachetable cachetable = new Cachetable(Cachetable.minute, maxMemSize);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] futures = new Future<?>[8];
+			for (int t = 0; t < futures.length; t++){
+				final int seed = t;
+				futures[t] = executor.submit(() -> {
+					java.util.Random random = new java.util.Random(seed);
+					for (int i = 0; i < 20000; i++){
+						PDEDataInfo info = pdeDataInfo("C", random.nextInt(100));
+						SimDataBlock simDataBlock = cachetable.get(info);
+						if (simDataBlock == null){
+							cachetable.put(info, simDataBlock(info, 100 + random.nextInt(1000)));
+						}else{
+							Assert.assertEquals(info, simDataBlock.getPDEDataInfo());
+						}
+					}
+					return null;
+				});
+			}
+			for (Future<?> future : futures){
+				future.get(60, TimeUnit.SECONDS);
+			}
+		}finally{
+			executor.shutdown();
+		}
+		CacheStatus cacheStatus = cachetable.getCacheStatus();
+		Assert.assertTrue(cacheStatus.toString(), cacheStatus.getCurrSize() <= maxMemSize);
+		Assert.assertEquals(8 * 20000L, cacheStatus.getHitCount() + cacheStatus.getMissCount());
+	}
+}
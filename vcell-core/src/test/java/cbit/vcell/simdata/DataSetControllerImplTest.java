@@ -3,7 +3,13 @@ package cbit.vcell.simdata;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.junit.After;
@@ -92,6 +98,55 @@ public class DataSetControllerImplTest extends TestCase {
 		Assert.assertArrayEquals(expectedVarNames, varNames);
 	}
 
+	@Test
+	public void testEvaluateFunction() throws DataAccessException {
+		// J_r0 = RanC_cyt - 1000*C_cyt*Ran_cyt, evaluated again at the first time from the prepared (cached) function
+		for (double time : new double[] { 0.5, 1.0, 0.5 }) {
+			double[] j_r0 = dsc.getSimDataBlock(outputContext, vcDataIdentifier, "J_r0", time).getData();
+			double[] ranC_cyt = dsc.getSimDataBlock(outputContext, vcDataIdentifier, "RanC_cyt", time).getData();
+			double[] c_cyt = dsc.getSimDataBlock(outputContext, vcDataIdentifier, "C_cyt", time).getData();
+			double[] ran_cyt = dsc.getSimDataBlock(outputContext, vcDataIdentifier, "Ran_cyt", time).getData();
+			Assert.assertEquals(ranC_cyt.length, j_r0.length);
+			for (int i = 0; i < j_r0.length; i++) {
+				Assert.assertEquals(ranC_cyt[i] - 1000.0 * c_cyt[i] * ran_cyt[i], j_r0[i], 1e-10 * Math.max(1.0, Math.abs(j_r0[i])));
+			}
+		}
+	}
+
+	@Test
+	public void testEvaluateFunctionParallel() throws Exception {
+		// the mesh has 101x101 volume elements, evaluated in chunks of 4096 on several threads; functions of the same data set are
+		// prepared concurrently (each binds its own copies of the data set identifiers)
+		DataSetControllerImpl.setFunctionEvaluationThreadCount(4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Assert.assertTrue(dsc.getMesh(vcDataIdentifier).getNumVolumeElements() >= 2 * 4096);
+			List<Future<double[][]>> futures = new ArrayList<Future<double[][]>>();
+			for (double time : new double[] { 0.5, 1.0 }) {
+				for (String functionName : new String[] { "J_r0", "J_flux0" }) {
+					futures.add(executor.submit(() -> new double[][] {
+						dsc.getSimDataBlock(outputContext, vcDataIdentifier, functionName, time).getData(),
+						dsc.getSimDataBlock(outputContext, vcDataIdentifier, "RanC_cyt", time).getData(),
+						dsc.getSimDataBlock(outputContext, vcDataIdentifier, "C_cyt", time).getData(),
+						dsc.getSimDataBlock(outputContext, vcDataIdentifier, "Ran_cyt", time).getData(),
+						dsc.getSimDataBlock(outputContext, vcDataIdentifier, "RanC_nuc", time).getData()
+					}));
+				}
+			}
+			for (int f = 0; f < futures.size(); f++) {
+				double[][] data = futures.get(f).get(60, TimeUnit.SECONDS);
+				boolean bJ_r0 = (f % 2 == 0);
+				for (int i = 0; i < data[0].length; i++) {
+					double expected = bJ_r0 ? data[1][i] - 1000.0 * data[2][i] * data[3][i] : 2.0 * (data[1][i] - data[4][i]);
+					Assert.assertEquals(expected, data[0][i], 1e-10 * Math.max(1.0, Math.abs(expected)));
+				}
+			}
+		} finally {
+			executor.shutdown();
+			DataSetControllerImpl.setFunctionEvaluationThreadCount(0);
+		}
+	}
+
 	//
 //	@Ignore
 //	@Test
@@ -0,0 +1,108 @@
+package cbit.vcell.simdata;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+
+import cbit.vcell.math.FunctionColumnDescription;
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.parser.Expression;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
+import cbit.vcell.solver.VCSimulationIdentifier;
+import cbit.vcell.solver.ode.ODESimData;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+
+public class DataSetTimeSeriesTest {
+
+	private static DataSetTimeSeries timeSeries(final int numTimes) {
+		return new DataSetTimeSeries(null, new DataSetTimeSeries.DataSetPostProcessData() {
+			@Override
+			public double[] getTimes() {
+				double[] times = new double[numTimes];
+				for (int i = 0; i < numTimes; i++){
+					times[i] = i * 0.5;
+				}
+				return times;
+			}
+			@Override
+			public String[] getVariableStatNames() {
+				return new String[] { "A", "B" };
+			}
+			@Override
+			public double[] getVariableStatValues(String varName) {
+				double[] values = new double[numTimes];
+				for (int i = 0; i < numTimes; i++){
+					values[i] = varName.equals("A") ? i : -i;
+				}
+				return values;
+			}
+		});
+	}
+
+	@Test
+	public void testSelectVariablesAndRows() {
+		DataSetTimeSeries dataSetTimeSeries = timeSeries(100);
+
+		DataSetTimeSeries selected = dataSetTimeSeries.select(new String[] { "B" }, 10, 20, 5, 3);
+		Assert.assertArrayEquals(new String[] { DataSetTimeSeries.TIME_VARIABLE_NAME, "B" }, selected.getVarNames());
+		// times 10..20 are rows 20..40, skip 5 and keep 3
+		Assert.assertArrayEquals(new double[] { 12.5, 13, 13.5 }, selected.varDatas[0].values, 0);
+		Assert.assertArrayEquals(new double[] { -25, -26, -27 }, selected.varDatas[1].values, 0);
+
+		DataSetTimeSeries all = dataSetTimeSeries.select(null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1);
+		Assert.assertEquals(3, all.varDatas.length);
+		Assert.assertEquals(100, all.varDatas[2].values.length);
+
+		// past the end
+		DataSetTimeSeries empty = dataSetTimeSeries.select(new String[] { "A" }, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 100, 10);
+		Assert.assertEquals(2, empty.varDatas.length);
+		Assert.assertEquals(0, empty.varDatas[1].values.length);
+
+		// selected by the reader
+		selected = new DataSetTimeSeries(null, new DataSetTimeSeries.DataSetPostProcessData() {
+			@Override
+			public double[] getTimes() {
+				return timeSeries(100).varDatas[0].values;
+			}
+			@Override
+			public String[] getVariableStatNames() {
+				return new String[] { "A", "B" };
+			}
+			@Override
+			public double[] getVariableStatValues(String varName) {
+				Assert.assertEquals("only the selected variable is read", "B", varName);
+				return timeSeries(100).varDatas[2].values;
+			}
+		}, new String[] { "B" }, 10, 20, 5, 3);
+		Assert.assertArrayEquals(new double[] { 12.5, 13, 13.5 }, selected.varDatas[0].values, 0);
+		Assert.assertArrayEquals(new double[] { -25, -26, -27 }, selected.varDatas[1].values, 0);
+	}
+
+	@Test
+	public void testSelectODEData() throws Exception {
+		ODESolverResultSet resultSet = new ODESolverResultSet();
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription("A"));
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription(DataSetTimeSeries.TIME_VARIABLE_NAME));
+		for (int i = 0; i < 50; i++){
+			resultSet.addRow(new double[] { i, i * 0.1 });
+		}
+		resultSet.addFunctionColumn(new FunctionColumnDescription(new Expression("2*A"), "f", null, "f", false));
+		ODEDataBlock odeDataBlock = new ODEDataBlock(null, new ODESimData(new VCSimulationDataIdentifier(new VCSimulationIdentifier(new KeyValue("1"), User.tempUser), 0), resultSet));
+
+		DataSetTimeSeries all = new DataSetTimeSeries(null, odeDataBlock);
+		Assert.assertArrayEquals(new String[] { "A", DataSetTimeSeries.TIME_VARIABLE_NAME, "f" }, all.getVarNames());
+		Assert.assertEquals(50, all.varDatas[0].values.length);
+		Assert.assertEquals(98, all.varDatas[2].values[49], 0);
+
+		DataSetTimeSeries selected = new DataSetTimeSeries(null, odeDataBlock, new String[] { "f" }, 1, 2, 2, 4);
+		Assert.assertArrayEquals(new String[] { DataSetTimeSeries.TIME_VARIABLE_NAME, "f" }, selected.getVarNames());
+		Assert.assertArrayEquals(new double[] { 1.2, 1.3, 1.4, 1.5 }, selected.varDatas[0].values, 1e-12);
+		Assert.assertArrayEquals(new double[] { 24, 26, 28, 30 }, selected.varDatas[1].values, 1e-12);
+		// same as selecting from the whole time series
+		DataSetTimeSeries selectedFromAll = all.select(new String[] { "f" }, 1, 2, 2, 4);
+		Assert.assertArrayEquals(selectedFromAll.varDatas[1].values, selected.varDatas[1].values, 0);
+
+		Assert.assertEquals(0, new DataSetTimeSeries(null, odeDataBlock, null, 0, 10, 0, 0).varDatas[0].values.length);
+	}
+}
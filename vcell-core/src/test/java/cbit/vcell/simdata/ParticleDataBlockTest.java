@@ -0,0 +1,79 @@
+package cbit.vcell.simdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.DataAccessException;
+import org.vcell.util.document.User;
+
+public class ParticleDataBlockTest {
+
+	@Test
+	public void testReadFileAndZipEntry() throws Exception {
+		String content = "// listmols output\n"
+				+ "A 1.5 -2.25 0\n"
+				+ "A 0.1 1e-3 -3.5E+2 7\n"
+				+ "\n"
+				+ "B\t12345678901234567890 0.30000000000000004 -0\r\n"
+				+ "A 1 2 3 // comment\n"
+				+ "B 4 5 6";
+		File dir = Files.createTempDirectory("particleDataBlockTest").toFile();
+		File file = new File(dir, "SimID_1_0_0001.smoldynOutput");
+		File zipFile = new File(dir, "SimID_1_0_00.zip");
+		try {
+			Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+			try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+				zos.putNextEntry(new ZipEntry("SimID_1_0_0002.smoldynOutput"));
+				zos.write(content.getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+			ParticleDataBlock fromFile = new ParticleDataBlock(User.tempUser, "1", 1.0, file, zipFile);
+			ParticleDataBlock fromZip = new ParticleDataBlock(User.tempUser, "1", 2.0, new File(dir, "SimID_1_0_0002.smoldynOutput"), zipFile);
+			for (ParticleDataBlock block : new ParticleDataBlock[] { fromFile, fromZip }) {
+				Assert.assertEquals(2, block.getSpecies().size());
+				Assert.assertArrayEquals(new double[] { 1.5, -2.25, 0, 0.1, 1e-3, -3.5e2, 1, 2, 3 }, block.getXYZ("A"), 0);
+				Assert.assertArrayEquals(new double[] { 12345678901234567890.0, 0.30000000000000004, -0.0, 4, 5, 6 }, block.getXYZ("B"), 0);
+				Assert.assertEquals(3, block.getCoordinates("A").size());
+				Assert.assertEquals(-350.0, block.getCoordinates("A").get(1).getZ(), 0);
+				Assert.assertEquals(2, block.getParticleCount("B"));
+			}
+
+			Files.write(file.toPath(), "A 1 2\nA 1 2 3\n".getBytes(StandardCharsets.UTF_8));
+			try {
+				new ParticleDataBlock(User.tempUser, "1", 1.0, file, zipFile);
+				Assert.fail("missing coordinate not reported");
+			} catch (DataAccessException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 1"));
+			}
+		} finally {
+			file.delete();
+			zipFile.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testNonAsciiBytes() throws Exception {
+		// UTF-8 species name and a (non UTF-8) 0xFF byte, which must not end the stream
+		byte[] utf8Line = "\u00e9 1 2 3\n".getBytes(StandardCharsets.UTF_8);
+		byte[] ffLine = new byte[] { 'X', (byte)0xFF, ' ', '4', ' ', '5', ' ', '6', '\n' };
+		byte[] lastLine = "A 7 8 9\n".getBytes(StandardCharsets.UTF_8);
+		byte[] content = new byte[utf8Line.length + ffLine.length + lastLine.length];
+		System.arraycopy(utf8Line, 0, content, 0, utf8Line.length);
+		System.arraycopy(ffLine, 0, content, utf8Line.length, ffLine.length);
+		System.arraycopy(lastLine, 0, content, utf8Line.length + ffLine.length, lastLine.length);
+		Map<String, double[]> xyzMap = ParticleDataReader.read(new ByteArrayInputStream(content));
+		Assert.assertEquals(3, xyzMap.size());
+		Assert.assertArrayEquals(new double[] { 1, 2, 3 }, xyzMap.get("\u00e9"), 0);
+		Assert.assertArrayEquals(new double[] { 4, 5, 6 }, xyzMap.get(new String(ffLine, 0, 2, StandardCharsets.UTF_8)), 0);
+		Assert.assertArrayEquals(new double[] { 7, 8, 9 }, xyzMap.get("A"), 0);
+	}
+}
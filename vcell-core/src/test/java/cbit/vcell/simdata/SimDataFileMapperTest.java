@@ -0,0 +1,184 @@
+package cbit.vcell.simdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.ISize;
+
+import cbit.vcell.math.VariableType;
+
+public class SimDataFileMapperTest {
+
+	private static final String[] VAR_NAMES = new String[] { "A", "B" };
+
+	private static double[][] createData(int numValues, double scale) {
+		double[][] data = new double[VAR_NAMES.length][numValues];
+		for (int i = 0; i < data.length; i++){
+			for (int j = 0; j < numValues; j++){
+				data[i][j] = scale * (i + 1) + j * 0.5;
+			}
+		}
+		return data;
+	}
+
+	private static void addEntry(ZipArchiveOutputStream zos, File simFile, int method) throws IOException {
+		byte[] bytes = Files.readAllBytes(simFile.toPath());
+		ZipArchiveEntry entry = new ZipArchiveEntry(simFile.getName());
+		entry.setMethod(method);
+		if (method == ZipArchiveEntry.STORED){
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		zos.putArchiveEntry(entry);
+		zos.write(bytes);
+		zos.closeArchiveEntry();
+	}
+
+	@Test
+	public void testReadPlainAndZipped() throws IOException {
+		File dir = Files.createTempDirectory("simDataMapper").toFile();
+		try {
+			int numValues = 1000;
+			File[] simFiles = new File[3];
+			for (int t = 0; t < simFiles.length; t++){
+				simFiles[t] = new File(dir, "SimID_1_0_" + String.format("%04d", t) + ".sim");
+				DataSet.writeNew(simFiles[t], VAR_NAMES, new VariableType[] { VariableType.VOLUME, VariableType.VOLUME },
+						new ISize(numValues, 1, 1), createData(numValues, t));
+			}
+			File zipFile = new File(dir, "SimID_1_0_00.zip");
+			ZipArchiveOutputStream zos = new ZipArchiveOutputStream(zipFile);
+			try {
+				addEntry(zos, simFiles[0], ZipArchiveEntry.STORED);
+				addEntry(zos, simFiles[1], ZipArchiveEntry.DEFLATED);
+				addEntry(zos, simFiles[2], ZipArchiveEntry.STORED);
+			} finally {
+				zos.close();
+			}
+
+			Assert.assertNotNull(SimDataFileMapper.map(zipFile, simFiles[0].getName()));
+			Assert.assertNull("deflated entries are not mapped", SimDataFileMapper.map(zipFile, simFiles[1].getName()));
+
+			for (int t = 0; t < simFiles.length; t++){
+				double[][] expected = createData(numValues, t);
+				DataSet plainDataSet = new DataSet();
+				plainDataSet.read(simFiles[t], null);
+				DataSet zipDataSet = new DataSet();
+				zipDataSet.read(simFiles[t], zipFile);
+				for (int i = 0; i < VAR_NAMES.length; i++){
+					Assert.assertArrayEquals(expected[i], plainDataSet.getData(VAR_NAMES[i], null), 0);
+					Assert.assertArrayEquals(expected[i], zipDataSet.getData(VAR_NAMES[i], zipFile), 0);
+				}
+			}
+
+			// time series: var "B" at indexes 7 and 3, var "A" at index 999
+			String[] zipFileNames = new String[simFiles.length];
+			String[] entryNames = new String[simFiles.length];
+			for (int t = 0; t < simFiles.length; t++){
+				zipFileNames[t] = zipFile.getPath();
+				entryNames[t] = simFiles[t].getName();
+			}
+			SimDataReader reader = new SimDataReader(new boolean[] { true, true, true }, new double[] { 0, 1, 2 }, zipFileNames, entryNames,
+					new String[] { "B", "A" }, new int[][] { { 7, 3 }, { 999 } }, false);
+			double[][] values = new double[][] { new double[2], new double[1] };
+			for (int t = 0; t < simFiles.length; t++){
+				Assert.assertTrue(reader.hasMoreData());
+				reader.getNextDataAtCurrentTime(values);
+				double[][] expected = createData(numValues, t);
+				Assert.assertEquals(expected[1][7], values[0][0], 0);
+				Assert.assertEquals(expected[1][3], values[0][1], 0);
+				Assert.assertEquals(expected[0][999], values[1][0], 0);
+			}
+			Assert.assertFalse(reader.hasMoreData());
+		} catch (Exception e){
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			for (File f : dir.listFiles()){
+				SimDataFileMapper.close(f);
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testUnmap() throws IOException {
+		File dir = Files.createTempDirectory("simDataMapper").toFile();
+		try {
+			File simFile = new File(dir, "SimID_4_0_0000.sim");
+			DataSet.writeNew(simFile, VAR_NAMES, new VariableType[] { VariableType.VOLUME, VariableType.VOLUME }, new ISize(10, 1, 1), createData(10, 1));
+			Assert.assertTrue(SimDataFileMapper.canUnmap());
+			for (int i = 0; i < 3; i++){
+				ByteBuffer buffer = SimDataFileMapper.map(simFile);
+				// "B" is the last data block
+				double[] lastBlock = SimDataFileMapper.readDoubles(buffer, buffer.limit() - 8L * 10, 10);
+				Assert.assertArrayEquals(createData(10, 1)[1], lastBlock, 0);
+				SimDataFileMapper.unmap(buffer);
+			}
+			// null (not mapped) is ignored
+			SimDataFileMapper.unmap(null);
+			// the file is released, it can be replaced and read again
+			Assert.assertTrue(simFile.delete());
+			DataSet.writeNew(simFile, VAR_NAMES, new VariableType[] { VariableType.VOLUME, VariableType.VOLUME }, new ISize(10, 1, 1), createData(10, 2));
+			DataSet dataSet = new DataSet();
+			dataSet.read(simFile, null);
+			Assert.assertArrayEquals(createData(10, 2)[0], dataSet.getData(VAR_NAMES[0], null), 0);
+		} finally {
+			for (File f : dir.listFiles()){
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testCloseAndIdleEviction() throws IOException {
+		File dir = Files.createTempDirectory("simDataMapper").toFile();
+		try {
+			File simFile = new File(dir, "SimID_2_0_0000.sim");
+			DataSet.writeNew(simFile, VAR_NAMES, new VariableType[] { VariableType.VOLUME, VariableType.VOLUME }, new ISize(10, 1, 1), createData(10, 1));
+			File[] zipFiles = new File[] { new File(dir, "SimID_2_0_00.zip"), new File(dir, "SimID_3_0_00.zip") };
+			for (File zipFile : zipFiles){
+				ZipArchiveOutputStream zos = new ZipArchiveOutputStream(zipFile);
+				try {
+					addEntry(zos, simFile, ZipArchiveEntry.STORED);
+				} finally {
+					zos.close();
+				}
+			}
+			int openCount = SimDataFileMapper.getOpenZipFileCount();
+			for (File zipFile : zipFiles){
+				Assert.assertNotNull(SimDataFileMapper.map(zipFile, simFile.getName()));
+			}
+			Assert.assertEquals(openCount + 2, SimDataFileMapper.getOpenZipFileCount());
+
+			// deleting simulation data closes the channel of its zip
+			SimDataFileMapper.close(zipFiles[0]);
+			Assert.assertEquals(openCount + 1, SimDataFileMapper.getOpenZipFileCount());
+
+			// recently used channels stay open, idle ones are closed
+			SimDataFileMapper.closeIdle(SimDataFileMapper.IDLE_TIMEOUT_MS);
+			Assert.assertEquals(openCount + 1, SimDataFileMapper.getOpenZipFileCount());
+			SimDataFileMapper.closeIdle(0);
+			Assert.assertEquals(0, SimDataFileMapper.getOpenZipFileCount());
+
+			// a closed zip is opened again on the next access
+			Assert.assertNotNull(SimDataFileMapper.map(zipFiles[1], simFile.getName()));
+			Assert.assertEquals(1, SimDataFileMapper.getOpenZipFileCount());
+		} finally {
+			for (File f : dir.listFiles()){
+				SimDataFileMapper.close(f);
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+}
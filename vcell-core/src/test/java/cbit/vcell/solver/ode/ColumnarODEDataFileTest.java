@@ -0,0 +1,132 @@
+package cbit.vcell.solver.ode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+import org.vcell.util.document.VCDataIdentifier;
+
+import cbit.vcell.math.FunctionColumnDescription;
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.parser.Expression;
+
+public class ColumnarODEDataFileTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private static ODESolverResultSet createResultSet(int rowCount) {
+		ODESolverResultSet resultSet = new ODESolverResultSet();
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription("t"));
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription("S1_Count"));
+		resultSet.addDataColumn(new ODESolverResultSetColumnDescription("xé"));
+		for (int r = 0; r < rowCount; r++){
+			resultSet.addRow(new double[] { r * 0.1, r * r, Math.sin(r) });
+		}
+		return resultSet;
+	}
+
+	private static void assertSameData(ODESolverResultSet expected, ODESolverResultSet actual) {
+		Assert.assertEquals(expected.getDataColumnCount(), actual.getDataColumnCount());
+		Assert.assertEquals(expected.getRowCount(), actual.getRowCount());
+		for (int c = 0; c < expected.getDataColumnCount(); c++){
+			Assert.assertEquals(expected.getColumnDescriptions(c).getName(), actual.getColumnDescriptions(c).getName());
+		}
+		for (int r = 0; r < expected.getRowCount(); r++){
+			Assert.assertArrayEquals(expected.getRow(r), actual.getRow(r), 0.0);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		// more rows than the writer's block size
+		ODESolverResultSet resultSet = createResultSet(20000);
+		File file = tempFolder.newFile("sim.ida");
+		ColumnarODEDataFile.write(resultSet, file);
+		Assert.assertTrue(ColumnarODEDataFile.isColumnarFile(file));
+		assertSameData(resultSet, SundialsSolver.readIDA(new ODESolverResultSet(), file));
+	}
+
+	@Test
+	public void testTextIDA() throws Exception {
+		File file = tempFolder.newFile("text.ida");
+		Files.write(file.toPath(), "t:S1_Count:\n0.0\t1.0\n0.5\t2.0\n1.0\t3.0\n".getBytes(StandardCharsets.UTF_8));
+		Assert.assertFalse(ColumnarODEDataFile.isColumnarFile(file));
+		ODESolverResultSet resultSet = SundialsSolver.readIDA(new ODESolverResultSet(), file);
+		Assert.assertEquals(2, resultSet.getDataColumnCount());
+		Assert.assertEquals(3, resultSet.getRowCount());
+		Assert.assertArrayEquals(new double[] { 0.5, 2.0 }, resultSet.getRow(1), 0.0);
+	}
+
+	@Test
+	public void testColumnSelection() throws Exception {
+		ODESolverResultSet resultSet = createResultSet(50);
+		File file = writeTemp(resultSet);
+		ODESolverResultSet selected = ColumnarODEDataFile.read(new ODESolverResultSet(), file, name -> name.equals("S1_Count") ? null : name + "_r");
+		Assert.assertEquals(2, selected.getDataColumnCount());
+		Assert.assertEquals("t_r", selected.getColumnDescriptions(0).getName());
+		Assert.assertEquals("xé_r", selected.getColumnDescriptions(1).getName());
+		Assert.assertArrayEquals(resultSet.extractColumn(2), selected.extractColumn(1), 0.0);
+	}
+
+	@Test
+	public void testTruncatedFile() throws Exception {
+		File file = writeTemp(createResultSet(50));
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		File truncatedFile = tempFolder.newFile("truncated.ida");
+		Files.write(truncatedFile.toPath(), Arrays.copyOf(bytes, bytes.length - 8));
+		Assert.assertTrue(ColumnarODEDataFile.isColumnarFile(truncatedFile));
+		try {
+			ColumnarODEDataFile.read(new ODESolverResultSet(), truncatedFile);
+			Assert.fail("expected truncated data to be rejected");
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testODESimDataCompactFormats() throws Exception {
+		ODESolverResultSet resultSet = ColumnarODEDataFile.read(new ODESolverResultSet(), writeTemp(createResultSet(37)));
+		resultSet.addFunctionColumn(new FunctionColumnDescription(new Expression("2*S1_Count"), "f", null, "f", false));
+		VCDataIdentifier vcdId = new VCDataIdentifier() {
+			public String getID() { return "SimID_1_0_"; }
+			public KeyValue getDataKey() { return new KeyValue("1"); }
+			public User getOwner() { return null; }
+		};
+		ODESimData odeSimData = new ODESimData(vcdId, resultSet);
+		// version 1 (row by row) unless version 2 is enabled
+		for (String formatID : new String[] { ODESimData.COMPACT_ODE_DATA_FORMAT_ID, ODESimData.COMPACT_ODE_DATA_FORMAT_V2_ID }){
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream output = new DataOutputStream(bytes)){
+				if (formatID.equals(ODESimData.COMPACT_ODE_DATA_FORMAT_ID)){
+					odeSimData.writeOut(output);
+				}else{
+					odeSimData.writeOut(output, formatID);
+				}
+			}
+			Assert.assertEquals(formatID, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())).readUTF());
+			ODESimData readBack = new ODESimData(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			assertSameData(odeSimData, readBack);
+			Assert.assertEquals(1, readBack.getFunctionColumnCount());
+			Assert.assertEquals(2.0 * 36 * 36, readBack.extractColumn(readBack.findColumn("f"))[36], 0.0);
+		}
+	}
+
+	private File writeTemp(ODESolverResultSet resultSet) throws Exception {
+		File file = tempFolder.newFile();
+		ColumnarODEDataFile.write(resultSet, file);
+		return file;
+	}
+}
@@ -0,0 +1,203 @@
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.document.GroupAccessNone;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.SimulationVersion;
+import org.vcell.util.document.User;
+import org.vcell.util.document.VersionFlag;
+
+import cbit.vcell.biomodel.BioModel;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.resource.PropertyLoader;
+import cbit.vcell.simdata.DataSetControllerImpl;
+import cbit.vcell.simdata.SimulationData;
+import cbit.vcell.solver.ConstantArraySpec;
+import cbit.vcell.solver.ErrorTolerance;
+import cbit.vcell.solver.ExplicitOutputTimeSpec;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationJob;
+import cbit.vcell.solver.SimulationOwner;
+import cbit.vcell.solver.SolverDescription;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.VCSimulationDataIdentifier;
+import cbit.vcell.solver.VCSimulationIdentifier;
+import cbit.vcell.solver.server.Solver;
+import cbit.vcell.solver.server.SolverFactory;
+import cbit.vcell.solver.server.SolverStatus;
+import cbit.vcell.xml.XMLSource;
+import cbit.vcell.xml.XmlHelper;
+
+public class ODEEnsembleSolverTest {
+
+	@Test
+	public void testAgainstSingleJobs() throws Exception {
+		Simulation simulation = createScan(new String[] { "0.16", "0.5", "1.0" });
+		simulation.getSolverTaskDescription().setOutputTimeSpec(new UniformOutputTimeSpec(0.5));
+
+		ODEEnsembleSolver ensembleSolver = new ODEEnsembleSolver(simulation);
+		Assert.assertEquals(6, ensembleSolver.getJobCount());
+		File workingDir = Files.createTempDirectory("odeEnsembleSolverTest").toFile();
+		try {
+			File resultFile = new File(workingDir, "ensemble.ida");
+			ODESolverResultSet ensemble = ensembleSolver.solve(resultFile);
+			Assert.assertEquals(11, ensemble.getRowCount());
+			ODESolverResultSet saved = ColumnarODEDataFile.read(new ODESolverResultSet(), resultFile);
+			Assert.assertEquals(ensemble.getDataColumnCount(), saved.getDataColumnCount());
+
+			double[] lastValues = null;
+			for (int job = 0; job < ensembleSolver.getJobCount(); job++) {
+				RosenbrockSolver solver = new RosenbrockSolver(new SimulationTask(new SimulationJob(simulation, job, null), 0), workingDir);
+				solver.runSolver();
+				Assert.assertEquals(solver.getSolverStatus().toString(), SolverStatus.SOLVER_FINISHED, solver.getSolverStatus().getStatus());
+				ODESolverResultSet reference = solver.getODESolverResultSet();
+				Assert.assertEquals(reference.getRowCount(), ensemble.getRowCount());
+				double[] values = new double[ensembleSolver.getStateVariableNames().length];
+				int v = 0;
+				for (String name : ensembleSolver.getStateVariableNames()) {
+					double[] expected = reference.extractColumn(reference.findColumn(name));
+					double[] actual = ensemble.extractColumn(ensemble.findColumn(ODEEnsembleSolver.getJobColumnName(name, job)));
+					for (int row = 0; row < expected.length; row++) {
+						Assert.assertEquals(name+" job "+job, expected[row], actual[row], 1e-6 * Math.max(1.0, Math.abs(expected[row])));
+					}
+					values[v++] = actual[actual.length - 1];
+				}
+				// the scan changes the results
+				Assert.assertFalse(Arrays.equals(lastValues, values));
+				lastValues = values;
+			}
+		} finally {
+			deleteRecursively(workingDir);
+		}
+	}
+
+	@Test
+	public void testOverrideOfNonScannedConstant() throws Exception {
+		// the override of a scanned constant refers to a constant which is not scanned (IP3_basal = 0.16)
+		Simulation simulation = createScan(new String[] { "0.5", "2*IP3_basal" });
+		simulation.getSolverTaskDescription().setOutputTimeSpec(new UniformOutputTimeSpec(1.0));
+		ODEEnsembleSolver ensembleSolver = new ODEEnsembleSolver(simulation);
+		ODESolverResultSet ensemble = ensembleSolver.solve(1);
+		File workingDir = Files.createTempDirectory("odeEnsembleSolverTest").toFile();
+		try {
+			for (int job = 0; job < ensembleSolver.getJobCount(); job++) {
+				RosenbrockSolver solver = new RosenbrockSolver(new SimulationTask(new SimulationJob(simulation, job, null), 0), workingDir);
+				solver.runSolver();
+				Assert.assertEquals(solver.getSolverStatus().toString(), SolverStatus.SOLVER_FINISHED, solver.getSolverStatus().getStatus());
+				ODESolverResultSet reference = solver.getODESolverResultSet();
+				for (String name : ensembleSolver.getStateVariableNames()) {
+					double[] expected = reference.extractColumn(reference.findColumn(name));
+					double[] actual = ensemble.extractColumn(ensemble.findColumn(ODEEnsembleSolver.getJobColumnName(name, job)));
+					Assert.assertArrayEquals(name+" job "+job, expected, actual, 1e-6 * Math.max(1.0, Math.abs(expected[expected.length - 1])));
+				}
+			}
+		} finally {
+			deleteRecursively(workingDir);
+		}
+	}
+
+	@Test
+	public void testExplicitOutputTimesAfterEndingTime() throws Exception {
+		Simulation simulation = createScan(new String[] { "0.16", "0.5" });
+		simulation.getSolverTaskDescription().setOutputTimeSpec(new ExplicitOutputTimeSpec(new double[] { 0, 1.0, 2.5, 5.0, 7.5, 10.0 }));
+		ODESolverResultSet ensemble = new ODEEnsembleSolver(simulation).solve(1);
+		// the output times after the ending time (5.0) are dropped instead of being left unset
+		Assert.assertArrayEquals(new double[] { 0, 1.0, 2.5, 5.0 }, ensemble.extractColumn(ensemble.findColumn("t")), 0);
+		for (int c = 0; c < ensemble.getDataColumnCount(); c++) {
+			for (double value : ensemble.extractColumn(c)) {
+				Assert.assertFalse(Double.isNaN(value));
+			}
+		}
+	}
+
+	@Test
+	public void testEnsembleJobs() throws Exception {
+		Simulation simulation = createScan(new String[] { "0.16", "0.5", "1.0" });
+		simulation.getSolverTaskDescription().setOutputTimeSpec(new UniformOutputTimeSpec(0.5));
+		ODEEnsembleSolver ensembleSolver = new ODEEnsembleSolver(simulation);
+		ODESolverResultSet ensemble = ensembleSolver.solve(1);
+
+		String savedProperty = System.getProperty(PropertyLoader.odeEnsembleProperty);
+		File rootDir = Files.createTempDirectory("odeEnsembleSolverTest").toFile();
+		try {
+			User owner = simulation.getVersion().getOwner();
+			File userDir = new File(rootDir, owner.getName());
+			userDir.mkdir();
+			System.setProperty(PropertyLoader.installationRoot, new File("../").getAbsolutePath());
+			System.setProperty(PropertyLoader.odeEnsembleProperty, "true");
+			DataSetControllerImpl dataSetControllerImpl = new DataSetControllerImpl(null, rootDir, null);
+			// only job 0 is dispatched, it writes the output of every job; the last job is dispatched separately as well
+			for (int job : new int[] { 0, ensembleSolver.getJobCount() - 1 }) {
+				Solver solver = SolverFactory.createSolver(userDir, new SimulationTask(new SimulationJob(simulation, job, null), 0), false);
+				Assert.assertTrue(solver instanceof ODEEnsembleJobSolver);
+				((ODEEnsembleJobSolver)solver).runSolver();
+				Assert.assertEquals(solver.getSolverStatus().toString(), SolverStatus.SOLVER_FINISHED, solver.getSolverStatus().getStatus());
+			}
+			for (int job = 0; job < ensembleSolver.getJobCount(); job++) {
+				// the data server reads the columns of the job from the ensemble file, with the functions of the job
+				VCSimulationDataIdentifier vcdID = new VCSimulationDataIdentifier(new VCSimulationIdentifier(simulation.getKey(), owner), job);
+				ODESimData odeSimData = dataSetControllerImpl.getODEDataBlock(vcdID).getODESimData();
+				Assert.assertEquals(ensemble.getRowCount(), odeSimData.getRowCount());
+				Assert.assertTrue(odeSimData.getFunctionColumnCount() > 0);
+				for (String name : ensembleSolver.getStateVariableNames()) {
+					Assert.assertArrayEquals(name+" job "+job, ensemble.extractColumn(ensemble.findColumn(ODEEnsembleSolver.getJobColumnName(name, job))),
+							odeSimData.extractColumn(odeSimData.findColumn(name)), 0);
+				}
+			}
+			// all jobs share one ensemble file, the lock file stays and no temporary file is left
+			File ensembleFile = new File(userDir, SimulationData.createCanonicalEnsembleFileName(simulation.getKey()));
+			Assert.assertTrue(ensembleFile.exists());
+			Assert.assertTrue(new File(ensembleFile.getPath() + ".lock").exists());
+			for (File file : userDir.listFiles()) {
+				Assert.assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+			}
+		} finally {
+			if (savedProperty == null) {
+				System.clearProperty(PropertyLoader.odeEnsembleProperty);
+			} else {
+				System.setProperty(PropertyLoader.odeEnsembleProperty, savedProperty);
+			}
+			deleteRecursively(rootDir);
+		}
+	}
+
+	/**
+	 * @return a CVODE simulation of the published model scanning a rate constant (2 values) and an initial condition.
+	 */
+	private static Simulation createScan(String[] initialValues) throws Exception {
+		File vcmlFile = new File("src/test/resources/org/vcell/sbml/vcml_published/biomodel_89712092_nonspatial.vcml");
+		BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(new String(Files.readAllBytes(vcmlFile.toPath()), "UTF-8")));
+		Simulation referenceSimulation = bioModel.getSimulation(0);
+		SimulationVersion simVersion = new SimulationVersion(new KeyValue("1"), referenceSimulation.getName(), new User("test", new KeyValue("1")),
+				new GroupAccessNone(), null, new BigDecimal(1), new Date(), VersionFlag.Current, "", null);
+		Simulation simulation = new Simulation(simVersion, referenceSimulation.getMathDescription(), new SimulationOwner.StandaloneSimulationOwner());
+		SolverTaskDescription taskDescription = new SolverTaskDescription(simulation, referenceSimulation.getSolverTaskDescription());
+		taskDescription.setSolverDescription(SolverDescription.CVODE);
+		taskDescription.setTimeBounds(new TimeBounds(0, 5.0));
+		taskDescription.setErrorTolerance(new ErrorTolerance(1e-8, 1e-8));
+		simulation.setSolverTaskDescription(taskDescription);
+		// a rate constant and an initial condition
+		simulation.getMathOverrides().putConstantArraySpec(ConstantArraySpec.createListSpec("k_PIP2PHhyd", new String[] { "25.0", "100.0" }));
+		simulation.getMathOverrides().putConstantArraySpec(ConstantArraySpec.createListSpec("IP3_Cyt_init_uM", initialValues));
+		return simulation;
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,134 @@
+package cbit.vcell.solver.ode;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.SimulationVersion;
+import org.vcell.util.document.User;
+
+import cbit.vcell.biomodel.BioModel;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.solver.DefaultOutputTimeSpec;
+import cbit.vcell.solver.ErrorTolerance;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationJob;
+import cbit.vcell.solver.SimulationOwner;
+import cbit.vcell.solver.SolverDescription;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.server.SolverStatus;
+import cbit.vcell.xml.XMLSource;
+import cbit.vcell.xml.XmlHelper;
+
+public class RosenbrockSolverTest {
+
+	@Test
+	public void testSparseLU() {
+		Random random = new Random(7);
+		int n = 60;
+		double[][] dense = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			dense[i][i] = 10 + random.nextDouble();
+			for (int m = 0; m < 3; m++) {
+				dense[i][random.nextInt(n)] += random.nextDouble() - 0.5;
+			}
+		}
+		int[] rowStarts = new int[n + 1];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (dense[i][j] != 0) count++;
+			}
+			rowStarts[i + 1] = count;
+		}
+		int[] columns = new int[count];
+		double[] values = new double[count];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (dense[i][j] != 0) {
+					columns[k] = j;
+					values[k++] = dense[i][j];
+				}
+			}
+		}
+		SparseLU lu = new SparseLU(n, rowStarts, columns);
+		Assert.assertTrue(lu.factor(values));
+		double[] b = new double[n];
+		for (int i = 0; i < n; i++) {
+			b[i] = random.nextDouble();
+		}
+		double[] x = b.clone();
+		lu.solve(x);
+		for (int i = 0; i < n; i++) {
+			double sum = 0;
+			for (int j = 0; j < n; j++) {
+				sum += dense[i][j] * x[j];
+			}
+			Assert.assertEquals(b[i], sum, 1e-12);
+		}
+		// singular matrix is reported
+		double[] singular = new double[count];
+		Assert.assertFalse(lu.factor(singular));
+	}
+
+	@Test
+	public void testAgainstRungeKuttaFehlberg() throws Exception {
+		File vcmlFile = new File("src/test/resources/org/vcell/sbml/vcml_published/biomodel_89712092_nonspatial.vcml");
+		BioModel bioModel = XmlHelper.XMLToBioModel(new XMLSource(new String(Files.readAllBytes(vcmlFile.toPath()), "UTF-8")));
+		File workingDir = Files.createTempDirectory("rosenbrockSolverTest").toFile();
+		try {
+			ODESolverResultSet reference = solve(bioModel.getSimulation(0), SolverDescription.RungeKuttaFehlberg, 1e-10, workingDir);
+			ODESolverResultSet results = solve(bioModel.getSimulation(0), SolverDescription.CVODE, 1e-8, workingDir);
+			// uniform output is hit exactly, the reference (every step) is compared at the end time
+			Assert.assertEquals(21, results.getRowCount());
+			Assert.assertEquals(2.5, results.extractColumn(0)[5], 1e-12);
+			int lastReferenceRow = reference.getRowCount() - 1;
+			int lastRow = results.getRowCount() - 1;
+			Assert.assertEquals(10.0, reference.extractColumn(0)[lastReferenceRow], 1e-12);
+			Assert.assertEquals(10.0, results.extractColumn(0)[lastRow], 1e-12);
+			for (int c = 1; c < reference.getDataColumnCount(); c++) {
+				String name = reference.getColumnDescriptions(c).getName();
+				double expected = reference.extractColumn(c)[lastReferenceRow];
+				double actual = results.extractColumn(results.findColumn(name))[lastRow];
+				Assert.assertEquals(name, expected, actual, 1e-5 * Math.max(1.0, Math.abs(expected)));
+			}
+		} finally {
+			File[] files = workingDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			workingDir.delete();
+		}
+	}
+
+	private static ODESolverResultSet solve(Simulation referenceSimulation, SolverDescription solverDescription, double tolerance, File workingDir) throws Exception {
+		SimulationVersion simVersion = new SimulationVersion(new KeyValue("1"), referenceSimulation.getName(), new User("test", new KeyValue("1")),
+				null, null, null, null, null, null, null);
+		Simulation simulation = new Simulation(simVersion, referenceSimulation.getMathDescription(), new SimulationOwner.StandaloneSimulationOwner());
+		SolverTaskDescription taskDescription = new SolverTaskDescription(simulation, referenceSimulation.getSolverTaskDescription());
+		taskDescription.setSolverDescription(solverDescription);
+		taskDescription.setTimeBounds(new TimeBounds(0, 10.0));
+		if (solverDescription == SolverDescription.RungeKuttaFehlberg) {
+			taskDescription.setOutputTimeSpec(new DefaultOutputTimeSpec(1));
+		} else {
+			taskDescription.setOutputTimeSpec(new UniformOutputTimeSpec(0.5));
+		}
+		taskDescription.setErrorTolerance(new ErrorTolerance(tolerance, tolerance));
+		simulation.setSolverTaskDescription(taskDescription);
+		SimulationTask simTask = new SimulationTask(new SimulationJob(simulation, 0, null), 0);
+		DefaultODESolver solver = (solverDescription == SolverDescription.RungeKuttaFehlberg)
+				? new RungeKuttaFehlbergSolver(simTask, workingDir)
+				: new RosenbrockSolver(simTask, workingDir);
+		solver.runSolver();
+		Assert.assertEquals(solver.getSolverStatus().toString(), SolverStatus.SOLVER_FINISHED, solver.getSolverStatus().getStatus());
+		return solver.getODESolverResultSet();
+	}
+}
@@ -0,0 +1,80 @@
+package cbit.vcell.solver.stoch;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cbit.vcell.parser.Expression;
+
+public class GibsonBruckEngineTest {
+
+	/**
+	 * 0 -> X (k1), X -> 0 (k2*X): stationary distribution is Poisson with mean k1/k2.
+	 */
+	@Test
+	public void testBirthDeath() throws Exception {
+		GibsonBruckEngine engine = new GibsonBruckEngine(new String[] { "X" }, new long[] { 0 },
+				new Expression[] { new Expression("10.0"), new Expression("0.5*X") },
+				new int[][] { { 0 }, { 0 } }, new long[][] { { 1 }, { -1 } });
+		SplittableRandom random = new SplittableRandom(1234);
+		double sum = 0;
+		double sumSq = 0;
+		int trials = 2000;
+		for (int i = 0; i < trials; i++){
+			double x = engine.runSampled(random.split(), 0, new double[] { 20 }, null)[0];
+			sum += x;
+			sumSq += x * x;
+		}
+		double mean = sum / trials;
+		double variance = sumSq / trials - mean * mean;
+		Assert.assertEquals(20.0, mean, 0.5);
+		Assert.assertEquals(20.0, variance, 3.0);
+	}
+
+	@Test
+	public void testSamplingAndConservation() throws Exception {
+		// A + B <-> C, A+C and B+C are conserved
+		GibsonBruckEngine engine = new GibsonBruckEngine(new String[] { "A", "B", "C" }, new long[] { 100, 80, 0 },
+				new Expression[] { new Expression("0.01*A*B"), new Expression("0.1*C") },
+				new int[][] { { 0, 1, 2 }, { 0, 1, 2 } }, new long[][] { { -1, -1, 1 }, { 1, 1, -1 } });
+		Assert.assertArrayEquals(new int[] { 0, 1 }, engine.getDependentProcesses(0));
+		double[] sampleTimes = { 0, 0.5, 1.0, 1.5, 2.0 };
+		int[] count = new int[1];
+		engine.runSampled(new SplittableRandom(7), 0, sampleTimes, (time, counts) -> {
+			Assert.assertEquals(sampleTimes[count[0]], time, 0);
+			Assert.assertEquals(100, counts[0] + counts[2], 0);
+			Assert.assertEquals(80, counts[1] + counts[2], 0);
+			count[0]++;
+		});
+		Assert.assertEquals(sampleTimes.length, count[0]);
+
+		// same seed, same trajectory
+		double[] first = engine.runEvents(new SplittableRandom(99), 0, 2, 10, null);
+		double[] second = engine.runEvents(new SplittableRandom(99), 0, 2, 10, null);
+		Assert.assertArrayEquals(first, second, 0);
+	}
+
+	@Test
+	public void testIndexedMinHeap() {
+		Random random = new Random(3);
+		double[] keys = new double[50];
+		for (int i = 0; i < keys.length; i++){
+			keys[i] = random.nextDouble();
+		}
+		GibsonBruckEngine.IndexedMinHeap heap = new GibsonBruckEngine.IndexedMinHeap(keys);
+		for (int step = 0; step < 1000; step++){
+			int min = 0;
+			for (int i = 1; i < keys.length; i++){
+				if (keys[i] < keys[min]){
+					min = i;
+				}
+			}
+			Assert.assertEquals(keys[min], keys[heap.peek()], 0);
+			int changed = random.nextInt(keys.length);
+			keys[changed] = (random.nextInt(10) == 0) ? Double.POSITIVE_INFINITY : random.nextDouble();
+			heap.update(changed);
+		}
+	}
+}
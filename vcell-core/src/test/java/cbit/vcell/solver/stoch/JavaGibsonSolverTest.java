@@ -0,0 +1,210 @@
+package cbit.vcell.solver.stoch;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.SimulationVersion;
+import org.vcell.util.document.User;
+
+import cbit.vcell.geometry.Geometry;
+import cbit.vcell.math.Action;
+import cbit.vcell.math.MathDescription;
+import cbit.vcell.math.MathException;
+import cbit.vcell.math.SubDomain;
+import cbit.vcell.messaging.server.SimulationTask;
+import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.NonspatialStochSimOptions;
+import cbit.vcell.solver.Simulation;
+import cbit.vcell.solver.SimulationJob;
+import cbit.vcell.solver.SimulationOwner;
+import cbit.vcell.solver.SolverDescription;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+import cbit.vcell.solver.server.SolverStatus;
+
+public class JavaGibsonSolverTest {
+
+	/**
+	 * 0 -> X (k1), X -> 2 Y (k2*X); X starts from a count, Y from a (Poisson sampled) expected count.
+	 */
+	private static final String MATH_VCML =
+			"MathDescription {\n" +
+			"	Constant k1 10.0;\n" +
+			"	Constant k2 0.5;\n" +
+			"	StochasticVolumeVariable X\n" +
+			"	StochasticVolumeVariable Y\n" +
+			"	Function total (X + Y);\n" +
+			"	CompartmentSubDomain Compartment {\n" +
+			"		VariableInitialCount X 5.0;\n" +
+			"		VariableInitialPoissonExpectedCount Y 50.0;\n" +
+			"		JumpProcess birth {\n" +
+			"			ProbabilityRate k1;\n" +
+			"			Effect X inc 1.0;\n" +
+			"		}\n" +
+			"		JumpProcess conversion {\n" +
+			"			ProbabilityRate (k2 * X);\n" +
+			"			Effect X inc -1.0;\n" +
+			"			Effect Y inc 2.0;\n" +
+			"		}\n" +
+			"	}\n" +
+			"}\n";
+
+	private File workingDir = null;
+
+	@Before
+	public void setUp() throws Exception {
+		workingDir = Files.createTempDirectory("javaGibsonSolverTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = workingDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		workingDir.delete();
+	}
+
+	private static SimulationTask createSimTask(long numTrials, boolean bHistogram, int seed) throws Exception {
+		MathDescription emptyMath = new MathDescription("gibsonTest");
+		emptyMath.setGeometry(new Geometry("compartmental", 0));
+		MathDescription mathDescription = MathDescription.fromEditor(emptyMath, MATH_VCML);
+		SimulationVersion simVersion = new SimulationVersion(new KeyValue("1"), "gibsonTest", new User("test", new KeyValue("1")),
+				null, null, null, null, null, null, null);
+		Simulation simulation = new Simulation(simVersion, mathDescription, new SimulationOwner.StandaloneSimulationOwner());
+		SolverTaskDescription taskDescription = simulation.getSolverTaskDescription();
+		taskDescription.setSolverDescription(SolverDescription.StochGibson);
+		taskDescription.setTimeBounds(new TimeBounds(0, 10.0));
+		taskDescription.setOutputTimeSpec(new UniformOutputTimeSpec(1.0));
+		taskDescription.setStochOpt(new NonspatialStochSimOptions(true, seed, numTrials, bHistogram));
+		return new SimulationTask(new SimulationJob(simulation, 0, null), 0);
+	}
+
+	private ODESolverResultSet solve(SimulationTask simTask) throws Exception {
+		JavaGibsonSolver solver = new JavaGibsonSolver(simTask, workingDir);
+		solver.runSolver();
+		Assert.assertEquals(solver.getSolverStatus().toString(), SolverStatus.SOLVER_FINISHED, solver.getSolverStatus().getStatus());
+		return solver.getODESolverResultSet();
+	}
+
+	@Test
+	public void testCreateEngine() throws Exception {
+		GibsonBruckEngine engine = JavaGibsonSolver.createEngine(createSimTask(1, false, 5));
+		Assert.assertArrayEquals(new String[] { "X", "Y" }, engine.getSpeciesNames());
+		Assert.assertEquals(2, engine.getProcessCount());
+		// birth changes X, read by the conversion; the conversion changes Y which no rate reads
+		Assert.assertArrayEquals(new int[] { 0, 1 }, engine.getDependentProcesses(0));
+		Assert.assertArrayEquals(new int[] { 1 }, engine.getDependentProcesses(1));
+
+		// the state at the start time is the initial state: counts are taken as is, expected counts are Poisson sampled
+		double sum = 0;
+		boolean bDifferent = false;
+		double firstY = -1;
+		int engineCount = 200;
+		for (int seed = 0; seed < engineCount; seed++) {
+			double[] initialCounts = JavaGibsonSolver.createEngine(createSimTask(1, false, seed)).runSampled(new SplittableRandom(1), 0, new double[] { 0 }, null);
+			Assert.assertEquals(5, initialCounts[0], 0);
+			Assert.assertEquals(Math.rint(initialCounts[1]), initialCounts[1], 0);
+			sum += initialCounts[1];
+			if (firstY < 0) {
+				firstY = initialCounts[1];
+			} else if (initialCounts[1] != firstY) {
+				bDifferent = true;
+			}
+		}
+		Assert.assertTrue("expected counts must be sampled", bDifferent);
+		Assert.assertEquals(50.0, sum / engineCount, 2.0);
+
+		// the custom seed makes the sample reproducible
+		double[] first = JavaGibsonSolver.createEngine(createSimTask(1, false, 11)).runSampled(new SplittableRandom(1), 0, new double[] { 0 }, null);
+		double[] second = JavaGibsonSolver.createEngine(createSimTask(1, false, 11)).runSampled(new SplittableRandom(1), 0, new double[] { 0 }, null);
+		Assert.assertArrayEquals(first, second, 0);
+	}
+
+	@Test
+	public void testUnsupportedAction() throws Exception {
+		SimulationTask simTask = createSimTask(1, false, 5);
+		SubDomain subDomain = simTask.getSimulation().getMathDescription().getSubDomains().nextElement();
+		subDomain.getJumpProcesses().get(1).addAction(Action.createCreateAction(simTask.getSimulation().getMathDescription().getVariable("Y")));
+		try {
+			JavaGibsonSolver.createEngine(simTask);
+			Assert.fail("expected the create action to be rejected");
+		} catch (MathException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(Action.ACTION_CREATE));
+		}
+	}
+
+	@Test
+	public void testSingleTrajectory() throws Exception {
+		ODESolverResultSet resultSet = solve(createSimTask(1, false, 5));
+		Assert.assertEquals(3, resultSet.getDataColumnCount());
+		Assert.assertEquals(11, resultSet.getRowCount());
+		double[] times = resultSet.extractColumn(resultSet.findColumn("t"));
+		double[] x = resultSet.extractColumn(resultSet.findColumn("X"));
+		double[] y = resultSet.extractColumn(resultSet.findColumn("Y"));
+		Assert.assertEquals(0, times[0], 0);
+		Assert.assertEquals(10.0, times[10], 1e-12);
+		Assert.assertEquals(5, x[0], 0);
+		// the saved function is evaluated on the trajectory
+		int totalColumn = resultSet.findColumn("total");
+		Assert.assertTrue(totalColumn >= 0);
+		double[] total = resultSet.extractColumn(totalColumn);
+		for (int r = 0; r < resultSet.getRowCount(); r++) {
+			Assert.assertEquals(x[r] + y[r], total[r], 0);
+			if (r > 0) {
+				// conversions only increase Y
+				Assert.assertTrue(y[r] >= y[r - 1]);
+			}
+		}
+	}
+
+	@Test
+	public void testHistogram() throws Exception {
+		int numTrials = 20;
+		ODESolverResultSet resultSet = solve(createSimTask(numTrials, true, 5));
+		Assert.assertEquals(3, resultSet.getDataColumnCount());
+		Assert.assertEquals(SimDataConstants.HISTOGRAM_INDEX_NAME, resultSet.getColumnDescriptions(0).getName());
+		Assert.assertEquals(numTrials, resultSet.getRowCount());
+		Assert.assertEquals(-1, resultSet.findColumn("total"));
+		double[] trialNos = resultSet.extractColumn(0);
+		double[] x = resultSet.extractColumn(resultSet.findColumn("X"));
+		boolean bDifferent = false;
+		for (int r = 0; r < numTrials; r++) {
+			Assert.assertEquals(r + 1, trialNos[r], 0);
+			bDifferent |= x[r] != x[0];
+		}
+		Assert.assertTrue("trials must differ", bDifferent);
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		int numTrials = 20;
+		ODESolverResultSet resultSet = solve(createSimTask(numTrials, false, 5));
+		Assert.assertEquals(11, resultSet.getRowCount());
+		Assert.assertEquals(-1, resultSet.findColumn("total"));
+		double[] times = resultSet.extractColumn(resultSet.findColumn("t"));
+		Assert.assertEquals(10.0, times[10], 1e-12);
+		for (String species : new String[] { "X", "Y" }) {
+			double[] mean = resultSet.extractColumn(resultSet.findColumn(species));
+			double[] sd = resultSet.extractColumn(resultSet.findColumn(species + SimDataConstants.MULTI_TRIAL_STDEV_SUFFIX));
+			Assert.assertTrue(resultSet.findColumn(species + SimDataConstants.MULTI_TRIAL_CI_LOWER_SUFFIX) >= 0);
+			Assert.assertTrue(resultSet.findColumn(species + SimDataConstants.MULTI_TRIAL_CI_UPPER_SUFFIX) >= 0);
+			// all trials start from the same initial counts
+			Assert.assertEquals(0, sd[0], 0);
+			Assert.assertTrue(sd[10] > 0);
+			if (species.equals("X")) {
+				Assert.assertEquals(5, mean[0], 0);
+			}
+		}
+	}
+}
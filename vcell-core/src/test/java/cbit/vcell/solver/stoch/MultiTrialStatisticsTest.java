@@ -0,0 +1,89 @@
+package cbit.vcell.solver.stoch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cbit.vcell.math.ODESolverResultSetColumnDescription;
+import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.DefaultOutputTimeSpec;
+import cbit.vcell.solver.ExplicitOutputTimeSpec;
+import cbit.vcell.solver.TimeBounds;
+import cbit.vcell.solver.UniformOutputTimeSpec;
+import cbit.vcell.solver.ode.ODESolverResultSet;
+
+public class MultiTrialStatisticsTest {
+
+	private static ODESolverResultSet createTrial(double[] s1Values) {
+		ODESolverResultSet trial = new ODESolverResultSet();
+		trial.addDataColumn(new ODESolverResultSetColumnDescription("t"));
+		trial.addDataColumn(new ODESolverResultSetColumnDescription("S1"));
+		for (int r = 0; r < s1Values.length; r++){
+			trial.addRow(new double[] { r, s1Values[r] });
+		}
+		return trial;
+	}
+
+	@Test
+	public void testMeanAndStandardDeviation() throws Exception {
+		MultiTrialStatistics statistics = new MultiTrialStatistics(new double[0]);
+		double[][] trials = { { 1, 10 }, { 2, 20 }, { 3, 30 }, { 6, 40 } };
+		for (double[] trial : trials){
+			statistics.addTrial(createTrial(trial));
+		}
+		ODESolverResultSet resultSet = statistics.createResultSet();
+		Assert.assertEquals(4, statistics.getTrialCount());
+		Assert.assertArrayEquals(new double[] { 0, 1 }, resultSet.extractColumn(resultSet.findColumn("t")), 0);
+		Assert.assertArrayEquals(new double[] { 3, 25 }, resultSet.extractColumn(resultSet.findColumn("S1")), 1e-12);
+		double[] sd = resultSet.extractColumn(resultSet.findColumn("S1"+SimDataConstants.MULTI_TRIAL_STDEV_SUFFIX));
+		Assert.assertEquals(Math.sqrt(14.0 / 3), sd[0], 1e-12);
+		Assert.assertEquals(Math.sqrt(500.0 / 3), sd[1], 1e-12);
+		double[] lower = resultSet.extractColumn(resultSet.findColumn("S1"+SimDataConstants.MULTI_TRIAL_CI_LOWER_SUFFIX));
+		double[] upper = resultSet.extractColumn(resultSet.findColumn("S1"+SimDataConstants.MULTI_TRIAL_CI_UPPER_SUFFIX));
+		Assert.assertEquals(3 - 1.96 * sd[0] / 2, lower[0], 1e-3);
+		Assert.assertEquals(3 + 1.96 * sd[0] / 2, upper[0], 1e-3);
+
+		try {
+			statistics.addTrial(createTrial(new double[] { 1, 2, 3 }));
+			Assert.fail("expected mismatched trial to be rejected");
+		}catch (IllegalArgumentException e){
+		}
+	}
+
+	@Test
+	public void testIsComplete() {
+		TimeBounds timeBounds = new TimeBounds(0, 2.5);
+		Assert.assertEquals(2.5, MultiTrialStatistics.getLastOutputTime(new DefaultOutputTimeSpec(), timeBounds), 0);
+		Assert.assertEquals(2.0, MultiTrialStatistics.getLastOutputTime(new UniformOutputTimeSpec(0.5), new TimeBounds(0, 2.2)), 1e-12);
+		Assert.assertEquals(0.3, MultiTrialStatistics.getLastOutputTime(new UniformOutputTimeSpec(0.1), new TimeBounds(0, 0.3)), 1e-12);
+		Assert.assertEquals(2.0, MultiTrialStatistics.getLastOutputTime(new ExplicitOutputTimeSpec(new double[] { 0, 1, 2, 3 }), timeBounds), 0);
+
+		// times 0, 1, 2: a trial written up to t=1 is not ready
+		double lastOutputTime = 2.0;
+		Assert.assertTrue(MultiTrialStatistics.isComplete(createTrial(new double[] { 5, 6, 7 }), lastOutputTime));
+		Assert.assertFalse(MultiTrialStatistics.isComplete(createTrial(new double[] { 5, 6 }), lastOutputTime));
+		Assert.assertFalse(MultiTrialStatistics.isComplete(createTrial(new double[0]), lastOutputTime));
+	}
+
+	@Test
+	public void testQuantiles() throws Exception {
+		double[] quantiles = { 0.05, 0.5, 0.95 };
+		MultiTrialStatistics statistics = new MultiTrialStatistics(quantiles);
+		Random random = new Random(42);
+		double[] samples = new double[5000];
+		for (int i = 0; i < samples.length; i++){
+			samples[i] = random.nextGaussian() * 10 + 100;
+			statistics.addTrial(createTrial(new double[] { samples[i] }));
+		}
+		Arrays.sort(samples);
+		ODESolverResultSet resultSet = statistics.createResultSet();
+		for (double p : quantiles){
+			double estimate = resultSet.extractColumn(resultSet.findColumn(MultiTrialStatistics.getQuantileColumnName("S1", p)))[0];
+			Assert.assertEquals("quantile "+p, samples[(int)(p * samples.length)], estimate, 0.5);
+		}
+		Assert.assertEquals("S1_Q2_5", MultiTrialStatistics.getQuantileColumnName("S1", 0.025));
+		Assert.assertEquals("S1_Q95", MultiTrialStatistics.getQuantileColumnName("S1", 0.95));
+	}
+}
@@ -9,6 +9,8 @@ import org.vcell.vis.io.VCellSimFiles;
 import org.vcell.vis.mapping.vcell.CartesianMeshVtkFileWriter;
 import org.vcell.vis.vcell.CartesianMesh;
 
+import cbit.vcell.simdata.DataIdentifier;
+
 public class VCellDataTest {
 
 	/**
@@ -53,7 +55,12 @@ public class VCellDataTest {
 			// process each domain separately (only have to process the mesh once for each one)
 			CartesianMeshVtkFileWriter cartesianMeshVtkFileWriter = new CartesianMeshVtkFileWriter();
 			File destinationDirectory = new File("C:\\Developer\\eclipse\\workspace\\VCell_5.3_visfull\\VtkData\\");
-			File[] generatedFiles = cartesianMeshVtkFileWriter.writeVtuExportFiles(vcellFiles, destinationDirectory, null);
+			double[] times = new double[vcellFiles.getTimes().size()];
+			for (int i=0;i<times.length;i++){
+				times[i] = vcellFiles.getTimes().get(i);
+			}
+			// only the mesh variables (global index and region id)
+			File[] generatedFiles = cartesianMeshVtkFileWriter.writeVtuExportFiles(vcellFiles, new DataIdentifier[0], times, null, destinationDirectory, null);
 
 			boolean bDisplay = true;
 			
@@ -0,0 +1,188 @@
+package org.vcell.vis.vtk;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vcell.vis.vismesh.thrift.ChomboIndexData;
+import org.vcell.vis.vismesh.thrift.ChomboSurfaceIndex;
+import org.vcell.vis.vismesh.thrift.ChomboVolumeIndex;
+import org.vcell.vis.vismesh.thrift.Face;
+import org.vcell.vis.vismesh.thrift.FiniteVolumeIndex;
+import org.vcell.vis.vismesh.thrift.FiniteVolumeIndexData;
+import org.vcell.vis.vismesh.thrift.PolyhedronFace;
+import org.vcell.vis.vismesh.thrift.VisIrregularPolyhedron;
+import org.vcell.vis.vismesh.thrift.VisMesh;
+import org.vcell.vis.vismesh.thrift.VisPoint;
+import org.vcell.vis.vismesh.thrift.VisPolygon;
+import org.vcell.vis.vismesh.thrift.VisSurfaceTriangle;
+import org.vcell.vis.vismesh.thrift.VisTetrahedron;
+import org.vcell.vis.vismesh.thrift.VisVoxel;
+
+/**
+ * The expected grids and indices are those written by vtkService.py (getVolumeVtkGrid, getMembraneVtkGrid and the index
+ * data of each service) for the same VisMesh: points in mesh order, cells as polygons (quad, triangle or polygon by the
+ * number of points), voxels, tetrahedra and the tetrahedra of the irregular polyhedra, one index per cell in cell order.
+ */
+public class VtkServiceJavaTest {
+
+	private File dir = null;
+	private File vtuFile = null;
+	private File indexFile = null;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("vtkServiceJavaTest").toFile();
+		vtuFile = new File(dir, "mesh.vtu");
+		indexFile = new File(dir, "mesh.index");
+	}
+
+	@After
+	public void tearDown() {
+		vtuFile.delete();
+		indexFile.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testFiniteVolume2D() throws Exception {
+		//
+		//  8---9--10--11
+		//  |   |   |  /
+		//  4---5---6-7
+		//  |   |   |
+		//  0---1---2---3
+		//
+		VisMesh visMesh = new VisMesh();
+		visMesh.setDimension(2);
+		double[][] coordinates = { { 0, 0 }, { 1, 0 }, { 2, 0 }, { 3, 0 }, { 0, 1 }, { 1, 1 }, { 2, 1 }, { 2.5, 1 }, { 0, 2 }, { 1, 2 }, { 2, 2 }, { 3, 2 } };
+		for (double[] c : coordinates) {
+			visMesh.addToPoints(new VisPoint(c[0], c[1], 0));
+		}
+		int[][] polygons = { { 0, 1, 5, 4 }, { 1, 2, 6, 5 }, { 2, 3, 7, 6 }, { 4, 5, 9, 8 }, { 5, 6, 10, 9 }, { 6, 7, 11, 10 }, { 2, 3, 6 } };
+		// the third polygon has 5 points (an unclipped quad cut by the membrane)
+		polygons[2] = new int[] { 2, 3, 11, 7, 6 };
+		for (int i = 0; i < polygons.length; i++) {
+			VisPolygon visPolygon = new VisPolygon();
+			for (int p : polygons[i]) {
+				visPolygon.addToPointIndices(p);
+			}
+			visPolygon.setFiniteVolumeIndex(new FiniteVolumeIndex(100 + i, i % 2));
+			visMesh.addToPolygons(visPolygon);
+		}
+
+		new VtkServiceJava().writeFiniteVolumeSmoothedVtkGridAndIndexData(visMesh, "cyt", vtuFile, indexFile);
+
+		// 2D grids are not moved by the smoothing (the boundary is fixed and this mesh is flat)
+		double[] expectedPoints = new double[3 * coordinates.length];
+		for (int i = 0; i < coordinates.length; i++) {
+			expectedPoints[3 * i] = coordinates[i][0];
+			expectedPoints[3 * i + 1] = coordinates[i][1];
+		}
+		Assert.assertArrayEquals(expectedPoints, VtuFileWriter.readFloat64Array(vtuFile, "Points"), 0);
+		Assert.assertArrayEquals(new long[] { 0, 1, 5, 4, 1, 2, 6, 5, 2, 3, 11, 7, 6, 4, 5, 9, 8, 5, 6, 10, 9, 6, 7, 11, 10, 2, 3, 6 },
+				VtuFileWriter.readInt64Array(vtuFile, "connectivity"));
+		Assert.assertArrayEquals(new long[] { 4, 8, 13, 17, 21, 25, 28 }, VtuFileWriter.readInt64Array(vtuFile, "offsets"));
+		Assert.assertArrayEquals(new byte[] { VtuFileWriter.VTK_QUAD, VtuFileWriter.VTK_QUAD, VtuFileWriter.VTK_POLYGON, VtuFileWriter.VTK_QUAD,
+				VtuFileWriter.VTK_QUAD, VtuFileWriter.VTK_QUAD, VtuFileWriter.VTK_TRIANGLE }, VtuFileWriter.readUInt8Array(vtuFile, "types"));
+
+		FiniteVolumeIndexData indexData = VisMeshUtils.readFiniteVolumeIndexData(indexFile);
+		Assert.assertEquals("cyt", indexData.getDomainName());
+		Assert.assertEquals(polygons.length, indexData.getFiniteVolumeIndicesSize());
+		for (int i = 0; i < polygons.length; i++) {
+			Assert.assertEquals(100 + i, indexData.getFiniteVolumeIndices().get(i).getGlobalIndex());
+			Assert.assertEquals(i % 2, indexData.getFiniteVolumeIndices().get(i).getRegionIndex());
+		}
+	}
+
+	@Test
+	public void testChomboVolume3D() throws Exception {
+		// a unit voxel, a tetrahedron on top and a clipped cell (a unit cube given as an irregular polyhedron) beside it
+		VisMesh visMesh = new VisMesh();
+		visMesh.setDimension(3);
+		for (int z = 0; z < 2; z++) {
+			for (int y = 0; y < 2; y++) {
+				for (int x = 0; x < 3; x++) {
+					visMesh.addToPoints(new VisPoint(x, y, z));
+				}
+			}
+		}
+		visMesh.addToPoints(new VisPoint(0.5, 0.5, 2));	// 12
+		VisVoxel visVoxel = new VisVoxel(Arrays.asList(0, 1, 3, 4, 6, 7, 9, 10));
+		visVoxel.setChomboVolumeIndex(new ChomboVolumeIndex(0, 0, 7, 1.0));
+		visMesh.addToVisVoxels(visVoxel);
+		VisTetrahedron visTet = new VisTetrahedron(Arrays.asList(6, 7, 9, 12));
+		visTet.setChomboVolumeIndex(new ChomboVolumeIndex(0, 0, 8, 0.1));
+		visMesh.addToTetrahedra(visTet);
+		int[] cube = { 1, 2, 4, 5, 7, 8, 10, 11 };
+		int[][] faces = { { 0, 1, 3, 2 }, { 4, 5, 7, 6 }, { 0, 1, 5, 4 }, { 2, 3, 7, 6 }, { 0, 2, 6, 4 }, { 1, 3, 7, 5 } };
+		VisIrregularPolyhedron polyhedron = new VisIrregularPolyhedron();
+		for (int[] face : faces) {
+			PolyhedronFace polyhedronFace = new PolyhedronFace();
+			for (int v : face) {
+				polyhedronFace.addToVertices(cube[v]);
+			}
+			polyhedron.addToPolyhedronFaces(polyhedronFace);
+		}
+		polyhedron.setChomboVolumeIndex(new ChomboVolumeIndex(0, 0, 9, 0.5));
+		visMesh.addToIrregularPolyhedra(polyhedron);
+
+		new VtkServiceJava().writeChomboVolumeVtkGridAndIndexData(visMesh, "cyt", vtuFile, indexFile);
+
+		byte[] types = VtuFileWriter.readUInt8Array(vtuFile, "types");
+		Assert.assertEquals(2 + 6, types.length);
+		Assert.assertEquals(VtuFileWriter.VTK_VOXEL, types[0]);
+		for (int i = 1; i < types.length; i++) {
+			Assert.assertEquals(VtuFileWriter.VTK_TETRA, types[i]);
+		}
+		long[] connectivity = VtuFileWriter.readInt64Array(vtuFile, "connectivity");
+		Assert.assertArrayEquals(new long[] { 0, 1, 3, 4, 6, 7, 9, 10, 6, 7, 9, 12 }, Arrays.copyOf(connectivity, 12));
+		Assert.assertEquals(12 + 4 * 6, connectivity.length);
+		// points are written unsmoothed
+		Assert.assertEquals(2.0, VtuFileWriter.readFloat64Array(vtuFile, "Points")[3 * 12 + 2], 0);
+
+		ChomboIndexData indexData = VisMeshUtils.readChomboIndexData(indexFile);
+		Assert.assertEquals(types.length, indexData.getChomboVolumeIndicesSize());
+		Assert.assertEquals(7, indexData.getChomboVolumeIndices().get(0).getBoxIndex());
+		Assert.assertEquals(8, indexData.getChomboVolumeIndices().get(1).getBoxIndex());
+		for (int i = 2; i < types.length; i++) {
+			Assert.assertEquals(9, indexData.getChomboVolumeIndices().get(i).getBoxIndex());
+		}
+	}
+
+	@Test
+	public void testChomboMembrane3D() throws Exception {
+		VisMesh visMesh = new VisMesh();
+		visMesh.setDimension(3);
+		visMesh.addToSurfacePoints(new VisPoint(0, 0, 0));
+		visMesh.addToSurfacePoints(new VisPoint(1, 0, 0));
+		visMesh.addToSurfacePoints(new VisPoint(0, 1, 0));
+		visMesh.addToSurfacePoints(new VisPoint(1, 1, 0));
+		int[][] triangles = { { 0, 1, 2 }, { 1, 3, 2 } };
+		for (int i = 0; i < triangles.length; i++) {
+			VisSurfaceTriangle triangle = new VisSurfaceTriangle(Arrays.asList(triangles[i][0], triangles[i][1], triangles[i][2]), Face.Zp);
+			triangle.setChomboSurfaceIndex(new ChomboSurfaceIndex(20 + i));
+			visMesh.addToSurfaceTriangles(triangle);
+		}
+
+		try {
+			new VtkServiceJava().writeChomboMembraneVtkGridAndIndexData(visMesh, "cyt", vtuFile, indexFile);
+			Assert.fail("expecting domain name ending with membrane");
+		} catch (RuntimeException e) {
+		}
+		new VtkServiceJava().writeChomboMembraneVtkGridAndIndexData(visMesh, "cyt_nuc_membrane", vtuFile, indexFile);
+
+		Assert.assertArrayEquals(new double[] { 0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 1, 0 }, VtuFileWriter.readFloat64Array(vtuFile, "Points"), 0);
+		Assert.assertArrayEquals(new long[] { 0, 1, 2, 1, 3, 2 }, VtuFileWriter.readInt64Array(vtuFile, "connectivity"));
+		Assert.assertArrayEquals(new long[] { 3, 6 }, VtuFileWriter.readInt64Array(vtuFile, "offsets"));
+		Assert.assertArrayEquals(new byte[] { VtuFileWriter.VTK_TRIANGLE, VtuFileWriter.VTK_TRIANGLE }, VtuFileWriter.readUInt8Array(vtuFile, "types"));
+		ChomboIndexData indexData = VisMeshUtils.readChomboIndexData(indexFile);
+		Assert.assertEquals("cyt_nuc_membrane", indexData.getDomainName());
+		Assert.assertEquals(20, indexData.getChomboSurfaceIndices().get(0).getIndex());
+		Assert.assertEquals(21, indexData.getChomboSurfaceIndices().get(1).getIndex());
+	}
+}
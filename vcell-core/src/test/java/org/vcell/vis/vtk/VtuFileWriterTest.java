@@ -0,0 +1,137 @@
+package org.vcell.vis.vtk;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.vis.vismesh.thrift.FiniteVolumeIndex;
+import org.vcell.vis.vismesh.thrift.FiniteVolumeIndexData;
+import org.vcell.vis.vismesh.thrift.PolyhedronFace;
+import org.vcell.vis.vismesh.thrift.VisIrregularPolyhedron;
+import org.vcell.vis.vismesh.thrift.VisMesh;
+import org.vcell.vis.vismesh.thrift.VisPoint;
+import org.vcell.vis.vismesh.thrift.VisTetrahedron;
+import org.vcell.vis.vismesh.thrift.VisVoxel;
+
+public class VtuFileWriterTest {
+
+	@Test
+	public void testWriteAndReadData() throws Exception {
+		// more values than one compression block
+		int numPoints = VtuFileWriter.BLOCK_SIZE / 8 + 100;
+		VtuFileWriter.UnstructuredGrid grid = new VtuFileWriter.UnstructuredGrid();
+		double[] pointValues = new double[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			grid.addPoint(i, 0, 0);
+			pointValues[i] = Math.sin(i);
+		}
+		for (int i = 0; i < numPoints - 1; i++) {
+			grid.addCell(VtuFileWriter.VTK_LINE, Arrays.asList(i, i + 1));
+		}
+		double[] cellValues = new double[numPoints - 1];
+		Arrays.fill(cellValues, 3.0);
+		cellValues[7] = Double.NaN;
+
+		File dir = Files.createTempDirectory("vtuFileWriterTest").toFile();
+		File meshFile = new File(dir, "mesh.vtu");
+		File dataFile = new File(dir, "data.vtu");
+		try {
+			VtuFileWriter.write(meshFile, grid, Arrays.asList(new VtuFileWriter.DataArray("p", pointValues)), null);
+			Assert.assertTrue(VtuFileWriter.isCompressedAppended(meshFile));
+			Assert.assertArrayEquals(pointValues, VtuFileWriter.readFloat64Array(meshFile, "p"), 0);
+
+			// new arrays are appended after the data of the mesh
+			VtuFileWriter.writeMeshWithData(meshFile, null, Arrays.asList(new VtuFileWriter.DataArray("c", cellValues)), dataFile);
+			Assert.assertArrayEquals(pointValues, VtuFileWriter.readFloat64Array(dataFile, "p"), 0);
+			Assert.assertArrayEquals(cellValues, VtuFileWriter.readFloat64Array(dataFile, "c"), 0);
+			Assert.assertArrayEquals(pointValues, VisMeshUtils.readPointDataFromVtu(dataFile, "p"), 0);
+
+			try {
+				VtuFileWriter.writeMeshWithData(meshFile, null, Arrays.asList(new VtuFileWriter.DataArray("c", pointValues)), dataFile);
+				Assert.fail("expected the wrong data size to be rejected");
+			} catch (IllegalArgumentException e) {
+			}
+		} finally {
+			meshFile.delete();
+			dataFile.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testFiniteVolumeMeshAndIndexData() throws Exception {
+		// two voxels side by side
+		VisMesh visMesh = new VisMesh();
+		visMesh.setDimension(3);
+		for (int z = 0; z < 2; z++) {
+			for (int y = 0; y < 2; y++) {
+				for (int x = 0; x < 3; x++) {
+					visMesh.addToPoints(new VisPoint(x, y, z));
+				}
+			}
+		}
+		for (int x = 0; x < 2; x++) {
+			VisVoxel visVoxel = new VisVoxel(Arrays.asList(x, x + 1, x + 3, x + 4, x + 6, x + 7, x + 9, x + 10));
+			visVoxel.setFiniteVolumeIndex(new FiniteVolumeIndex(10 + x, x));
+			visMesh.addToVisVoxels(visVoxel);
+		}
+
+		File dir = Files.createTempDirectory("vtuFileWriterTest").toFile();
+		File meshFile = new File(dir, "mesh.vtu");
+		File indexFile = new File(dir, "mesh.fvindex");
+		File dataFile = new File(dir, "data.vtu");
+		try {
+			new VtkServiceJava().writeFiniteVolumeSmoothedVtkGridAndIndexData(visMesh, "cyt", meshFile, indexFile);
+			Assert.assertTrue(VtuFileWriter.isCompressedAppended(meshFile));
+			FiniteVolumeIndexData indexData = VisMeshUtils.readFiniteVolumeIndexData(indexFile);
+			Assert.assertEquals("cyt", indexData.getDomainName());
+			Assert.assertEquals(2, indexData.getFiniteVolumeIndicesSize());
+			Assert.assertEquals(11, indexData.getFiniteVolumeIndices().get(1).getGlobalIndex());
+
+			VisMeshUtils.writeCellDataToVtu(meshFile, "u", new double[] { 1.5, 2.5 }, dataFile);
+			Assert.assertArrayEquals(new double[] { 1.5, 2.5 }, VtuFileWriter.readFloat64Array(dataFile, "u"), 0);
+		} finally {
+			meshFile.delete();
+			indexFile.delete();
+			dataFile.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testCreateTetrahedra() {
+		// unit cube as an irregular polyhedron
+		List<VisPoint> points = Arrays.asList(
+				new VisPoint(0, 0, 0), new VisPoint(1, 0, 0), new VisPoint(0, 1, 0), new VisPoint(1, 1, 0),
+				new VisPoint(0, 0, 1), new VisPoint(1, 0, 1), new VisPoint(0, 1, 1), new VisPoint(1, 1, 1));
+		int[][] faces = { { 0, 1, 3, 2 }, { 4, 5, 7, 6 }, { 0, 1, 5, 4 }, { 2, 3, 7, 6 }, { 0, 2, 6, 4 }, { 1, 3, 7, 5 } };
+		VisIrregularPolyhedron polyhedron = new VisIrregularPolyhedron();
+		for (int[] face : faces) {
+			PolyhedronFace polyhedronFace = new PolyhedronFace();
+			for (int p : face) {
+				polyhedronFace.addToVertices(p);
+			}
+			polyhedron.addToPolyhedronFaces(polyhedronFace);
+		}
+		polyhedron.setFiniteVolumeIndex(new FiniteVolumeIndex(4, 1));
+
+		List<VisTetrahedron> tets = VtkServiceJava.createTetrahedra(polyhedron, points);
+		Assert.assertEquals(6, tets.size());
+		double volume = 0;
+		for (VisTetrahedron tet : tets) {
+			Assert.assertEquals(4, tet.getFiniteVolumeIndex().getGlobalIndex());
+			List<Integer> p = tet.getPointIndices();
+			VisPoint a = points.get(p.get(0)), b = points.get(p.get(1)), c = points.get(p.get(2)), d = points.get(p.get(3));
+			double bx = b.getX() - a.getX(), by = b.getY() - a.getY(), bz = b.getZ() - a.getZ();
+			double cx = c.getX() - a.getX(), cy = c.getY() - a.getY(), cz = c.getZ() - a.getZ();
+			double dx = d.getX() - a.getX(), dy = d.getY() - a.getY(), dz = d.getZ() - a.getZ();
+			double tetVolume = (bx * (cy * dz - cz * dy) - by * (cx * dz - cz * dx) + bz * (cx * dy - cy * dx)) / 6.0;
+			Assert.assertTrue("tetrahedra are positively oriented", tetVolume > 0);
+			volume += tetVolume;
+		}
+		Assert.assertEquals(1.0, volume, 1e-12);
+	}
+}
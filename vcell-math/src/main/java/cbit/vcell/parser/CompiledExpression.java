@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.parser;
+
+/**
+ * A bound {@link Expression} prepared for repeated evaluation against a value vector.
+ * <p>
+ * Instances are produced by {@link Expression#compile()}; the symbol bindings (indices and
+ * function expressions) in effect at compile time are captured, so an expression must be
+ * recompiled after it is rebound.  Evaluation returns exactly what {@link Expression#evaluateVector(double[])}
+ * returns and throws the same exceptions.
+ */
+public interface CompiledExpression {
+
+	double eval(double[] values) throws ExpressionException;
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.parser;
+
+/**
+ * static helpers invoked from classes generated by {@link ExpressionCompiler}.
+ * <p>
+ * The domain checks mirror the interpreter (ASTFuncNode, ASTPowerNode, ASTInvertTermNode, ASTRelationalNode).
+ * Messages are terse on purpose, the compiled evaluator re-runs the interpreter when an exception is thrown
+ * so that callers see the interpreter's detailed message.
+ * <p>
+ * must be public - generated classes live in their own class loader.
+ */
+public final class CompiledMath {
+
+	private CompiledMath() {
+	}
+
+	public static double invert(double u) throws DivideByZeroException {
+		if (u == 0.0){
+			throw new DivideByZeroException("divide by zero");
+		}
+		return 1.0 / u;
+	}
+
+	public static double power(double u, double v) throws ExpressionException {
+		if (u==0.0 && v<0.0){
+			throw new DivideByZeroException("u^v and u=0 and v<0 divides by zero");
+		}else if (u<0.0 && v!=Math.round(v)){
+			throw new FunctionDomainException("u^v and u<0 and v not an integer: undefined");
+		}
+		if (u>=0.0 && v==1.0){
+			return u;
+		}
+		double result = Math.pow(u,v);
+		if (Double.isInfinite(result) || Double.isNaN(result)){
+			throw new FunctionDomainException("u^v evaluated to "+result);
+		}
+		return result;
+	}
+
+	public static double pow(double u, double v) throws FunctionDomainException {
+		if (u<0 && Math.round(v)!=v){
+			throw new FunctionDomainException("pow(u,v) and u<0 and v not an integer: undefined");
+		}
+		if (u==0.0 && v<0){
+			throw new FunctionDomainException("pow(u,v) and u=0 and v<0 divide by zero");
+		}
+		if (u>=0.0 && v==1.0){
+			return u;
+		}
+		return Math.pow(u,v);
+	}
+
+	public static double gt(double u, double v) {
+		return (u > v) ? 1.0 : 0.0;
+	}
+
+	public static double lt(double u, double v) {
+		return (u < v) ? 1.0 : 0.0;
+	}
+
+	public static double ge(double u, double v) {
+		return (u >= v) ? 1.0 : 0.0;
+	}
+
+	public static double le(double u, double v) {
+		return (u <= v) ? 1.0 : 0.0;
+	}
+
+	public static double eq(double u, double v) {
+		return (u == v) ? 1.0 : 0.0;
+	}
+
+	public static double ne(double u, double v) {
+		return (u != v) ? 1.0 : 0.0;
+	}
+
+	public static double not(double u) {
+		return (u == 0.0) ? 1.0 : 0.0;
+	}
+
+	public static double sqrt(double u) throws FunctionDomainException {
+		if (u<0){
+			throw new FunctionDomainException("sqrt(u) where u<0 is undefined");
+		}
+		return Math.sqrt(u);
+	}
+
+	public static double log(double u) throws FunctionDomainException {
+		if (u == 0.0){
+			throw new FunctionDomainException("log() of 0.0 is undefined");
+		}
+		if (u < 0.0){
+			throw new FunctionDomainException("log() of a negative number is undefined");
+		}
+		return Math.log(u);
+	}
+
+	public static double asin(double u) throws FunctionDomainException {
+		if (Math.abs(u)>1.0){
+			throw new FunctionDomainException("asin(u) and |u|>1.0 undefined");
+		}
+		return Math.asin(u);
+	}
+
+	public static double acos(double u) throws FunctionDomainException {
+		if (Math.abs(u)>1.0){
+			throw new FunctionDomainException("acos(u) and |u|>1.0 undefined");
+		}
+		return Math.acos(u);
+	}
+
+	public static double atan2(double u, double v) throws FunctionDomainException {
+		if (u == 0 && v == 0) {
+			throw new FunctionDomainException("atan2(u, v) where u=0 and v=0 is undefined");
+		}
+		// normalize signed zeros like the interpreter does.
+		if (u == -0.0){
+			u = 0.0;
+		}
+		if (v == -0.0){
+			v = 0.0;
+		}
+		return Math.atan2(u, v);
+	}
+
+	public static double csc(double u) throws FunctionDomainException {
+		if (Math.abs(u) == 0.0){
+			throw new FunctionDomainException("csc(u) & u = 0.0 undefined");
+		}
+		return MathUtil.csc(u);
+	}
+
+	public static double cot(double u) {
+		return MathUtil.cot(u);
+	}
+
+	public static double sec(double u) {
+		return MathUtil.sec(u);
+	}
+
+	public static double acsc(double u) throws FunctionDomainException {
+		if (Math.abs(u) < 1.0){
+			throw new FunctionDomainException("acsc(u) is undefined in -1<u<1");
+		}
+		return MathUtil.acsc(u);
+	}
+
+	public static double acot(double u) {
+		return MathUtil.acot(u);
+	}
+
+	public static double asec(double u) throws FunctionDomainException {
+		if (Math.abs(u) < 1.0){
+			throw new FunctionDomainException("asec(u) is undefined in -1<u<1");
+		}
+		return MathUtil.asec(u);
+	}
+
+	public static double csch(double u) throws FunctionDomainException {
+		if (u == 0.0){
+			throw new FunctionDomainException("csch(u) is not defined for |u| = 0");
+		}
+		return MathUtil.csch(u);
+	}
+
+	public static double coth(double u) throws FunctionDomainException {
+		if (u == 0.0){
+			throw new FunctionDomainException("coth(u) is not defined for |u| = 0");
+		}
+		return MathUtil.coth(u);
+	}
+
+	public static double sech(double u) {
+		return MathUtil.sech(u);
+	}
+
+	public static double asinh(double u) {
+		return MathUtil.asinh(u);
+	}
+
+	public static double acosh(double u) throws FunctionDomainException {
+		if (u < 1.0){
+			throw new FunctionDomainException("acosh(u) is not defined for u < 1.0");
+		}
+		return MathUtil.acosh(u);
+	}
+
+	public static double atanh(double u) throws FunctionDomainException {
+		if (Math.abs(u) >= 1.0){
+			throw new FunctionDomainException("atanh(u) is not defined in |u| >= 1.0");
+		}
+		return MathUtil.atanh(u);
+	}
+
+	public static double acsch(double u) throws ExpressionException {
+		if (u == 0.0){
+			throw new FunctionDomainException("acsch(u) is not defined for |u| = 0");
+		}
+		return MathUtil.acsch(u);
+	}
+
+	public static double acoth(double u) throws FunctionDomainException {
+		if (Math.abs(u) <= 1.0){
+			throw new FunctionDomainException("acoth(u) is not defined in |u| <= 1.0");
+		}
+		return MathUtil.acoth(u);
+	}
+
+	public static double asech(double u) throws FunctionDomainException {
+		if (u <= 0.0 || u > 1.0){
+			throw new FunctionDomainException("asech(u) is not defined in 0.0 <= u  and u > 1.0");
+		}
+		return MathUtil.asech(u);
+	}
+
+	public static double factorial(double u) {
+		return MathUtil.factorial(u);
+	}
+}
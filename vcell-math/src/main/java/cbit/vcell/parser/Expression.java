@@ -41,6 +41,11 @@ public class Expression implements java.io.Serializable, org.vcell.util.Matchabl
    private static long bindCount = 0;
    private static final Expression ZERO = new Expression(0);
    private static final Expression ONE = new Expression(1);
+   /**
+    * from this many points on, batch evaluation is faster through the compiled expression (see evaluateVectorBatch()),
+    * below it compiling costs more than it saves.
+    */
+   public static final int COMPILE_BATCH_THRESHOLD = 1000;
 
 
 private Expression() {
@@ -237,6 +242,32 @@ public RealInterval evaluateInterval(RealInterval intervals[]) throws Expression
 public double evaluateVector(double values[]) throws ExpressionException, DivideByZeroException {
 	return rootNode.evaluateVector(values);
 }         
+/**
+ * compiles this (bound) expression for repeated calls with different value vectors.
+ * The current bindings are captured, recompile after calling bindExpression().
+ * @return evaluator equivalent to evaluateVector(), the interpreter is used for anything that cannot be compiled.
+ */
+public CompiledExpression compile() {
+	return ExpressionCompiler.compile(rootNode);
+}
+/**
+ * evaluates this (bound) expression at many points at once, walking the expression tree once rather than once per point.
+ * @param valueColumns valueColumns[i][p] is the value of the symbol bound to index i at point p (unused indices may be null).
+ * @param numPoints number of points to evaluate.
+ * @return values at each point, identical to calling evaluateVector() with each point's values.
+ * @throws ExpressionException the exception evaluateVector() throws for the first point that fails.
+ */
+public double[] evaluateVectorBatch(double[][] valueColumns, int numPoints) throws ExpressionException {
+	return ExpressionBatchEvaluator.evaluate(rootNode, valueColumns, numPoints, null);
+}
+/**
+ * same as evaluateVectorBatch(double[][],int), running the points through compiledExp when given.
+ * Compile once (see compile() and COMPILE_BATCH_THRESHOLD) and pass the result to every batch of the same bound expression.
+ * @param compiledExp result of compile() on this expression with its current bindings, or null.
+ */
+public double[] evaluateVectorBatch(double[][] valueColumns, int numPoints, CompiledExpression compiledExp) throws ExpressionException {
+	return ExpressionBatchEvaluator.evaluate(rootNode, valueColumns, numPoints, compiledExp);
+}
 /**
  * Insert the method's description here.
  * Creation date: (1/23/2003 7:05:26 PM)
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.parser;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import cbit.vcell.parser.ASTFuncNode.FunctionType;
+
+/**
+ * Evaluates a bound expression tree over many points at once (see {@link Expression#evaluateVectorBatch(double[][], int)}).
+ * <p>
+ * Input is column oriented: columns[i][p] is the value of the symbol bound to index i at point p.  The tree is walked
+ * once and every node is computed for all points in a tight loop, instead of walking the whole tree once per point.
+ * <p>
+ * Short circuiting is preserved (boolean factors of a product, && and ||): a node is only computed for the points at
+ * which the interpreter would evaluate it.  Points where any node fails are not reported from here, they are re-evaluated
+ * by the interpreter after the batch so that the first failing point throws exactly the interpreter's exception.
+ * <p>
+ * When the caller supplies the compiled expression ({@link Expression#compile()}) the points are run through it one at a
+ * time instead, which needs no temporary column per node; the compiled code throws the interpreter's exception itself.
+ * Compiling is left to the caller so that an expression evaluated batch after batch is compiled only once.
+ */
+final class ExpressionBatchEvaluator {
+
+	// symbol table entries referring to functions are inlined, up to this depth.
+	private final static int MAX_INLINE_DEPTH = 64;
+
+	private final double[][] columns;
+	private final int numPoints;
+	// points for which some node failed, these are redone by the interpreter.
+	private final boolean[] failedPoints;
+	private boolean bFailed = false;
+	// function subtrees referenced more than once are evaluated once (only when computed for all points).
+	private final IdentityHashMap<Node,double[]> sharedResults = new IdentityHashMap<Node,double[]>();
+
+	private ExpressionBatchEvaluator(double[][] columns, int numPoints){
+		this.columns = columns;
+		this.numPoints = numPoints;
+		this.failedPoints = new boolean[numPoints];
+	}
+
+	/**
+	 * @param compiledExp compiled form of rootNode (with the same bindings), or null to walk the tree.
+	 */
+	static double[] evaluate(Node rootNode, double[][] columns, int numPoints, CompiledExpression compiledExp) throws ExpressionException {
+		checkColumns(rootNode, columns, numPoints, 0);
+		if (compiledExp != null){
+			return evaluateCompiled(compiledExp, columns, numPoints);
+		}
+		ExpressionBatchEvaluator evaluator = new ExpressionBatchEvaluator(columns, numPoints);
+		double[] results = evaluator.evaluateNode(rootNode, null, 0);
+		if (evaluator.bFailed){
+			double[] values = new double[columns.length];
+			for (int p = 0; p < numPoints; p++){
+				if (evaluator.failedPoints[p]){
+					evaluator.getValues(p, values);
+					results[p] = rootNode.evaluateVector(values);
+				}
+			}
+		}
+		return results;
+	}
+
+	private static double[] evaluateCompiled(CompiledExpression compiledExp, double[][] columns, int numPoints) throws ExpressionException {
+		int[] usedIndices = new int[columns.length];
+		int numUsed = 0;
+		for (int i = 0; i < columns.length; i++){
+			if (columns[i] != null){
+				usedIndices[numUsed++] = i;
+			}
+		}
+		double[] results = new double[numPoints];
+		double[] values = new double[columns.length];
+		for (int p = 0; p < numPoints; p++){
+			for (int k = 0; k < numUsed; k++){
+				values[usedIndices[k]] = columns[usedIndices[k]][p];
+			}
+			results[p] = compiledExp.eval(values);
+		}
+		return results;
+	}
+
+	/**
+	 * every identifier bound to an index must have a column with a value for each point.
+	 */
+	private static void checkColumns(Node node, double[][] columns, int numPoints, int inlineDepth) throws ExpressionBindingException {
+		if (node instanceof ASTIdNode){
+			SymbolTableEntry ste = ((ASTIdNode)node).getSymbolTableEntry();
+			if (ste != null && ste.getExpression() != null){
+				if (inlineDepth < MAX_INLINE_DEPTH){
+					checkColumns(ste.getExpression().getRootNode(), columns, numPoints, inlineDepth + 1);
+				}
+			}else if (ste != null && ste.getIndex() >= 0){
+				int index = ste.getIndex();
+				if (index >= columns.length || columns[index] == null || columns[index].length < numPoints){
+					throw new ExpressionBindingException("no values supplied for symbol '"+((ASTIdNode)node).name+"' (index "+index+")");
+				}
+			}
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			checkColumns(node.jjtGetChild(i), columns, numPoints, inlineDepth);
+		}
+	}
+
+	private void getValues(int point, double[] values){
+		for (int i = 0; i < columns.length; i++){
+			values[i] = (columns[i] != null) ? columns[i][point] : 0.0;
+		}
+	}
+
+	private void fail(int point){
+		failedPoints[point] = true;
+		bFailed = true;
+	}
+
+	private static boolean isActive(boolean[] active, int point){
+		return active == null || active[point];
+	}
+
+	/**
+	 * @param active points at which the interpreter would evaluate this node (null means all points).
+	 * @return values of the node, only meaningful at active points.
+	 */
+	private double[] evaluateNode(Node node, boolean[] active, int inlineDepth) throws ExpressionException {
+		if (node instanceof ASTFloatNode && ((ASTFloatNode)node).value != null){
+			double[] results = new double[numPoints];
+			Arrays.fill(results, ((ASTFloatNode)node).value);
+			return results;
+		}else if (node instanceof ASTIdNode){
+			return evaluateId((ASTIdNode)node, active, inlineDepth);
+		}else if (node instanceof ASTExpression && node.jjtGetNumChildren() == 1){
+			return evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+		}else if (node instanceof ASTAddNode){
+			double[] results = new double[numPoints];
+			for (int i = 0; i < node.jjtGetNumChildren(); i++){
+				double[] term = evaluateNode(node.jjtGetChild(i), active, inlineDepth);
+				for (int p = 0; p < numPoints; p++){
+					results[p] += term[p];
+				}
+			}
+			return results;
+		}else if (node instanceof ASTMultNode && node.jjtGetNumChildren() > 0){
+			return evaluateMult(node, active, inlineDepth);
+		}else if (node instanceof ASTMinusTermNode && node.jjtGetNumChildren() == 1){
+			double[] results = evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+			for (int p = 0; p < numPoints; p++){
+				results[p] = -results[p];
+			}
+			return results;
+		}else if (node instanceof ASTInvertTermNode && node.jjtGetNumChildren() == 1){
+			double[] results = evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+			for (int p = 0; p < numPoints; p++){
+				if (results[p] == 0.0 && isActive(active, p)){
+					fail(p);
+				}
+				results[p] = 1.0 / results[p];
+			}
+			return results;
+		}else if (node instanceof ASTPowerNode && node.jjtGetNumChildren() == 2){
+			double[] u = evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+			double[] v = evaluateNode(node.jjtGetChild(1), active, inlineDepth);
+			for (int p = 0; p < numPoints; p++){
+				if (isActive(active, p)){
+					try {
+						u[p] = CompiledMath.power(u[p], v[p]);
+					}catch (ExpressionException e){
+						fail(p);
+					}
+				}
+			}
+			return u;
+		}else if (node instanceof ASTRelationalNode && node.jjtGetNumChildren() == 2 && ((ASTRelationalNode)node).getOperationType() != ASTRelationalNode.UNKNOWN){
+			return evaluateRelational((ASTRelationalNode)node, active, inlineDepth);
+		}else if (node instanceof ASTNotNode && node.jjtGetNumChildren() == 1){
+			double[] results = evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+			for (int p = 0; p < numPoints; p++){
+				results[p] = (results[p] == 0.0) ? 1.0 : 0.0;
+			}
+			return results;
+		}else if (node instanceof ASTAndNode || node instanceof ASTOrNode){
+			return evaluateLogical(node, node instanceof ASTAndNode, active, inlineDepth);
+		}else if (node instanceof ASTFuncNode && ExpressionCompiler.canEmitFunction((ASTFuncNode)node)){
+			return evaluateFunction((ASTFuncNode)node, active, inlineDepth);
+		}else{
+			return evaluateByInterpreter(node, active);
+		}
+	}
+
+	private double[] evaluateId(ASTIdNode idNode, boolean[] active, int inlineDepth) throws ExpressionException {
+		SymbolTableEntry ste = idNode.getSymbolTableEntry();
+		Expression exp = (ste != null) ? ste.getExpression() : null;
+		if (ste == null || (exp == null && ste.getIndex() < 0) || (exp != null && inlineDepth >= MAX_INLINE_DEPTH)){
+			return evaluateByInterpreter(idNode, active);
+		}else if (exp != null){
+			Node functionNode = exp.getRootNode();
+			if (active != null){
+				return evaluateNode(functionNode, active, inlineDepth + 1);
+			}
+			double[] results = sharedResults.get(functionNode);
+			if (results == null){
+				results = evaluateNode(functionNode, null, inlineDepth + 1);
+				sharedResults.put(functionNode, results);
+			}
+			return results.clone();
+		}else{
+			double[] results = new double[numPoints];
+			System.arraycopy(columns[ste.getIndex()], 0, results, 0, numPoints);
+			return results;
+		}
+	}
+
+	/**
+	 * same as ASTMultNode.evaluateVector(): boolean factors are evaluated first and short circuit to zero,
+	 * the remaining factors are only evaluated where all boolean factors are nonzero.  -0.0 is reported as 0.0.
+	 */
+	private double[] evaluateMult(Node node, boolean[] active, int inlineDepth) throws ExpressionException {
+		boolean[] productActive = active;
+		double[][] factors = new double[node.jjtGetNumChildren()][];
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			if (node.jjtGetChild(i).isBoolean()){
+				factors[i] = evaluateNode(node.jjtGetChild(i), productActive, inlineDepth);
+				productActive = narrow(productActive, factors[i], false);
+			}
+		}
+		double[] results = new double[numPoints];
+		Arrays.fill(results, 1.0);
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			double[] factor = (factors[i] != null) ? factors[i] : evaluateNode(node.jjtGetChild(i), productActive, inlineDepth);
+			for (int p = 0; p < numPoints; p++){
+				results[p] *= factor[p];
+			}
+		}
+		for (int p = 0; p < numPoints; p++){
+			results[p] = isActive(productActive, p) ? results[p] + 0.0 : 0.0;
+		}
+		return results;
+	}
+
+	/**
+	 * same as ASTAndNode/ASTOrNode.evaluateVector(): operands are evaluated left to right until the result is known.
+	 */
+	private double[] evaluateLogical(Node node, boolean bAnd, boolean[] active, int inlineDepth) throws ExpressionException {
+		boolean[] undecided = active;
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			double[] operand = evaluateNode(node.jjtGetChild(i), undecided, inlineDepth);
+			undecided = narrow(undecided, operand, !bAnd);
+		}
+		double[] results = new double[numPoints];
+		for (int p = 0; p < numPoints; p++){
+			// points still undecided after the last operand got the identity value (1 for &&, 0 for ||).
+			results[p] = (isActive(undecided, p) == bAnd) ? 1.0 : 0.0;
+		}
+		return results;
+	}
+
+	/**
+	 * points of 'active' at which 'values' is nonzero (bNonzero = false: at which 'values' is zero) are dropped.
+	 */
+	private boolean[] narrow(boolean[] active, double[] values, boolean bNonzero){
+		boolean[] narrowed = new boolean[numPoints];
+		for (int p = 0; p < numPoints; p++){
+			narrowed[p] = isActive(active, p) && ((values[p] == 0.0) == bNonzero);
+		}
+		return narrowed;
+	}
+
+	private double[] evaluateRelational(ASTRelationalNode node, boolean[] active, int inlineDepth) throws ExpressionException {
+		double[] u = evaluateNode(node.jjtGetChild(0), active, inlineDepth);
+		double[] v = evaluateNode(node.jjtGetChild(1), active, inlineDepth);
+		switch (node.getOperationType()){
+			case ASTRelationalNode.GT: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] > v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			case ASTRelationalNode.LT: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] < v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			case ASTRelationalNode.GE: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] >= v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			case ASTRelationalNode.LE: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] <= v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			case ASTRelationalNode.EQ: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] == v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			case ASTRelationalNode.NE: {
+				for (int p = 0; p < numPoints; p++){
+					u[p] = (u[p] != v[p]) ? 1.0 : 0.0;
+				}
+				break;
+			}
+			default: {
+				throw new ExpressionException("unknown relational operator in '"+node.infixString(SimpleNode.LANGUAGE_DEFAULT)+"'");
+			}
+		}
+		return u;
+	}
+
+	private double[] evaluateFunction(ASTFuncNode funcNode, boolean[] active, int inlineDepth) throws ExpressionException {
+		FunctionType functionType = funcNode.getFunction();
+		double[] u = evaluateNode(funcNode.jjtGetChild(0), active, inlineDepth);
+		double[] v = (funcNode.jjtGetNumChildren() > 1) ? evaluateNode(funcNode.jjtGetChild(1), active, inlineDepth) : null;
+		for (int p = 0; p < numPoints; p++){
+			if (isActive(active, p)){
+				try {
+					u[p] = (v == null) ? apply(functionType, u[p]) : apply(functionType, u[p], v[p]);
+				}catch (ExpressionException e){
+					fail(p);
+				}
+			}
+		}
+		return u;
+	}
+
+	/**
+	 * nodes without a batch implementation are interpreted point by point.
+	 */
+	private double[] evaluateByInterpreter(Node node, boolean[] active) {
+		double[] results = new double[numPoints];
+		double[] values = new double[columns.length];
+		for (int p = 0; p < numPoints; p++){
+			if (isActive(active, p)){
+				getValues(p, values);
+				try {
+					results[p] = node.evaluateVector(values);
+				}catch (ExpressionException e){
+					fail(p);
+				}
+			}
+		}
+		return results;
+	}
+
+	private static double apply(FunctionType functionType, double u) throws ExpressionException {
+		switch (functionType){
+			case EXP: return Math.exp(u);
+			case ABS: return Math.abs(u);
+			case SIN: return Math.sin(u);
+			case COS: return Math.cos(u);
+			case TAN: return Math.tan(u);
+			case ATAN: return Math.atan(u);
+			case CEIL: return Math.ceil(u);
+			case FLOOR: return Math.floor(u);
+			case SINH: return Math.sinh(u);
+			case COSH: return Math.cosh(u);
+			case TANH: return Math.tanh(u);
+			case SQRT: return CompiledMath.sqrt(u);
+			case LOG: return CompiledMath.log(u);
+			case ASIN: return CompiledMath.asin(u);
+			case ACOS: return CompiledMath.acos(u);
+			case CSC: return CompiledMath.csc(u);
+			case COT: return CompiledMath.cot(u);
+			case SEC: return CompiledMath.sec(u);
+			case ACSC: return CompiledMath.acsc(u);
+			case ACOT: return CompiledMath.acot(u);
+			case ASEC: return CompiledMath.asec(u);
+			case CSCH: return CompiledMath.csch(u);
+			case COTH: return CompiledMath.coth(u);
+			case SECH: return CompiledMath.sech(u);
+			case ASINH: return CompiledMath.asinh(u);
+			case ACOSH: return CompiledMath.acosh(u);
+			case ATANH: return CompiledMath.atanh(u);
+			case ACSCH: return CompiledMath.acsch(u);
+			case ACOTH: return CompiledMath.acoth(u);
+			case ASECH: return CompiledMath.asech(u);
+			case FACTORIAL: return CompiledMath.factorial(u);
+			default: throw new ExpressionException("function "+functionType.getName()+"() not supported in batch evaluation");
+		}
+	}
+
+	private static double apply(FunctionType functionType, double u, double v) throws ExpressionException {
+		switch (functionType){
+			case MAX: return Math.max(u, v);
+			case MIN: return Math.min(u, v);
+			case POW: return CompiledMath.pow(u, v);
+			case ATAN2: return CompiledMath.atan2(u, v);
+			default: throw new ExpressionException("function "+functionType.getName()+"(u,v) not supported in batch evaluation");
+		}
+	}
+}
@@ -0,0 +1,643 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cbit.vcell.parser.ASTFuncNode.FunctionType;
+
+/**
+ * Translates a bound expression tree into a generated class implementing {@link CompiledExpression}.
+ * <p>
+ * Every node is emitted as straight-line JVM bytecode (identifiers become array loads of the bound index,
+ * functions become static calls into {@link Math} or {@link CompiledMath}), so evaluation no longer walks the
+ * tree or resolves symbol table entries.  Nodes which cannot be translated (user defined functions, unbound
+ * identifiers, derivatives, ...) are called back through the interpreter.  Large subtrees are split into
+ * separate methods to stay below the JIT's huge-method limit.
+ * <p>
+ * The generated code reports errors without detail; when it throws, the interpreter is run on the same values
+ * so that callers see exactly the interpreter's result or exception.
+ */
+final class ExpressionCompiler {
+	private final static Logger logger = LogManager.getLogger(ExpressionCompiler.class);
+
+	private final static AtomicLong classCounter = new AtomicLong();
+
+	// subtrees whose code grows beyond this size get their own method.
+	private final static int METHOD_SPLIT_SIZE = 1024;
+	// symbol table entries referring to functions are inlined, up to this depth.
+	private final static int MAX_INLINE_DEPTH = 64;
+	private final static int MAX_METHODS = 4096;
+
+	private final static String GENERATED_PACKAGE = "cbit/vcell/parser/generated/";
+	private final static String COMPILED_EXPRESSION = "cbit/vcell/parser/CompiledExpression";
+	private final static String COMPILED_MATH = "cbit/vcell/parser/CompiledMath";
+	private final static String DELEGATES_DESC = "[L"+COMPILED_EXPRESSION+";";
+	private final static String METHOD_DESC = "("+DELEGATES_DESC+"[D)D";
+
+	/**
+	 * interprets a single node (used for unsupported nodes and as the exact fallback).
+	 */
+	private static class InterpretedNode implements CompiledExpression {
+		private final Node node;
+		InterpretedNode(Node node){
+			this.node = node;
+		}
+		public double eval(double[] values) throws ExpressionException {
+			return node.evaluateVector(values);
+		}
+	}
+
+	/**
+	 * runs the generated code, and defers to the interpreter when anything goes wrong.
+	 */
+	private static class GuardedEvaluator implements CompiledExpression {
+		private final CompiledExpression generated;
+		private final Node rootNode;
+		GuardedEvaluator(CompiledExpression generated, Node rootNode){
+			this.generated = generated;
+			this.rootNode = rootNode;
+		}
+		public double eval(double[] values) throws ExpressionException {
+			try {
+				return generated.eval(values);
+			}catch (ExpressionException e){
+				return rootNode.evaluateVector(values);
+			}
+		}
+	}
+
+	private static class GeneratedClassLoader extends ClassLoader {
+		GeneratedClassLoader(){
+			super(ExpressionCompiler.class.getClassLoader());
+		}
+		Class<?> define(String className, byte[] classBytes){
+			return defineClass(className, classBytes, 0, classBytes.length);
+		}
+	}
+
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final HashMap<String,Integer> entries = new HashMap<String,Integer>();
+		private int count = 1;
+
+		private int add(String key, int size, byte[] entry){
+			Integer index = entries.get(key);
+			if (index == null){
+				index = count;
+				count += size;
+				entries.put(key, index);
+				bytes.write(entry, 0, entry.length);
+				if (count > 0xffff){
+					throw new IllegalStateException("constant pool overflow");
+				}
+			}
+			return index;
+		}
+		private static byte[] entry(int tag, int... u2s){
+			byte[] b = new byte[1 + 2*u2s.length];
+			b[0] = (byte)tag;
+			for (int i = 0; i < u2s.length; i++){
+				b[1+2*i] = (byte)(u2s[i] >> 8);
+				b[2+2*i] = (byte)u2s[i];
+			}
+			return b;
+		}
+		int utf8(String s){
+			try {
+				ByteArrayOutputStream b = new ByteArrayOutputStream();
+				DataOutputStream d = new DataOutputStream(b);
+				d.writeByte(1);
+				d.writeUTF(s);
+				return add("U"+s, 1, b.toByteArray());
+			}catch (IOException e){
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+		int classRef(String internalName){
+			return add("C"+internalName, 1, entry(7, utf8(internalName)));
+		}
+		int nameAndType(String name, String desc){
+			return add("N"+name+":"+desc, 1, entry(12, utf8(name), utf8(desc)));
+		}
+		int fieldRef(String owner, String name, String desc){
+			return add("F"+owner+"."+name+":"+desc, 1, entry(9, classRef(owner), nameAndType(name, desc)));
+		}
+		int methodRef(String owner, String name, String desc){
+			return add("M"+owner+"."+name+":"+desc, 1, entry(10, classRef(owner), nameAndType(name, desc)));
+		}
+		int interfaceMethodRef(String owner, String name, String desc){
+			return add("J"+owner+"."+name+":"+desc, 1, entry(11, classRef(owner), nameAndType(name, desc)));
+		}
+		int intConstant(int value){
+			return add("I"+value, 1, new byte[] { 3, (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value });
+		}
+		int doubleConstant(double value){
+			long bits = Double.doubleToRawLongBits(value);
+			byte[] b = new byte[9];
+			b[0] = 6;
+			for (int i = 0; i < 8; i++){
+				b[1+i] = (byte)(bits >> (56 - 8*i));
+			}
+			return add("D"+bits, 2, b);
+		}
+		void write(DataOutputStream classOut) throws IOException {
+			classOut.writeShort(count);
+			out.flush();
+			bytes.writeTo(classOut);
+		}
+	}
+
+	/**
+	 * bytecode of one node, with operand stack bookkeeping (in slots, a double takes two).
+	 */
+	private static class CodeBuffer {
+		private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC_W = 0x13, LDC2_W = 0x14, SIPUSH = 0x11;
+		private static final int DALOAD = 0x31, AALOAD = 0x32, DADD = 0x63, DMUL = 0x6b, DNEG = 0x77, DCMPL = 0x97;
+		private static final int IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7, DRETURN = 0xaf, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9;
+
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		private int stack = 0;
+		private int maxStack = 0;
+
+		private void op(int opcode, int stackDelta){
+			code.write(opcode);
+			stack(stackDelta);
+		}
+		private void stack(int stackDelta){
+			stack += stackDelta;
+			maxStack = Math.max(maxStack, stack);
+		}
+		private void u2(int value){
+			code.write(value >> 8);
+			code.write(value);
+		}
+		int size(){
+			return code.size();
+		}
+		void append(CodeBuffer other){
+			maxStack = Math.max(maxStack, stack + other.maxStack);
+			byte[] b = other.code.toByteArray();
+			code.write(b, 0, b.length);
+			stack(other.stack);
+		}
+		void pushDouble(ConstantPool cp, double value){
+			if (Double.doubleToRawLongBits(value) == 0L){
+				op(DCONST_0, 2);
+			}else if (value == 1.0){
+				op(DCONST_1, 2);
+			}else{
+				op(LDC2_W, 2);
+				u2(cp.doubleConstant(value));
+			}
+		}
+		void pushZero(){
+			op(DCONST_0, 2);
+		}
+		void pushOne(){
+			op(DCONST_1, 2);
+		}
+		void pushIndex(ConstantPool cp, int index){
+			if (index <= Short.MAX_VALUE){
+				op(SIPUSH, 1);
+				u2(index);
+			}else{
+				op(LDC_W, 1);
+				u2(cp.intConstant(index));
+			}
+		}
+		void loadValue(ConstantPool cp, int index){
+			op(ALOAD_1, 1);
+			pushIndex(cp, index);
+			op(DALOAD, -2 + 2);
+		}
+		void callDelegate(ConstantPool cp, int delegateIndex){
+			op(ALOAD_0, 1);
+			pushIndex(cp, delegateIndex);
+			op(AALOAD, -1);
+			op(ALOAD_1, 1);
+			op(INVOKEINTERFACE, -2 + 2);
+			u2(cp.interfaceMethodRef(COMPILED_EXPRESSION, "eval", "([D)D"));
+			code.write(2);
+			code.write(0);
+		}
+		void callMethod(ConstantPool cp, String owner, String methodName){
+			op(ALOAD_0, 1);
+			op(ALOAD_1, 1);
+			op(INVOKESTATIC, -2 + 2);
+			u2(cp.methodRef(owner, methodName, METHOD_DESC));
+		}
+		void invokeStatic(ConstantPool cp, String owner, String methodName, int numArgs){
+			String desc = (numArgs == 1) ? "(D)D" : "(DD)D";
+			op(INVOKESTATIC, -2*numArgs + 2);
+			u2(cp.methodRef(owner, methodName, desc));
+		}
+		void dadd(){
+			op(DADD, -2);
+		}
+		void dmul(){
+			op(DMUL, -2);
+		}
+		void dneg(){
+			op(DNEG, 0);
+		}
+		/**
+		 * compares the double on top of the stack with zero and jumps if (value==0) == jumpIfZero.
+		 * @return position of the branch offset, to be patched with {@link #patchBranch(int)}
+		 */
+		int branchOnZero(boolean jumpIfZero){
+			op(DCONST_0, 2);
+			op(DCMPL, -3);
+			op(jumpIfZero ? IFEQ : IFNE, -1);
+			int offsetPosition = code.size();
+			u2(0);
+			return offsetPosition;
+		}
+		int jump(){
+			op(GOTO, 0);
+			int offsetPosition = code.size();
+			u2(0);
+			return offsetPosition;
+		}
+		void setStack(int stack){
+			this.stack = stack;
+			maxStack = Math.max(maxStack, stack);
+		}
+		int getStack(){
+			return stack;
+		}
+		/**
+		 * sets the target of the branch to the current position
+		 */
+		void patchBranch(int offsetPosition){
+			// branch offsets are relative to the branch instruction (one byte before the offset).
+			int offset = code.size() - (offsetPosition - 1);
+			if (offset > Short.MAX_VALUE){
+				throw new IllegalStateException("branch offset too large");
+			}
+			patch(offsetPosition, offset);
+		}
+		private void patch(int position, int value){
+			byte[] b = code.toByteArray();
+			b[position] = (byte)(value >> 8);
+			b[position+1] = (byte)value;
+			code.reset();
+			code.write(b, 0, b.length);
+		}
+		void dreturn(){
+			op(DRETURN, -2);
+		}
+		byte[] toByteArray(){
+			return code.toByteArray();
+		}
+		int getMaxStack(){
+			return maxStack;
+		}
+	}
+
+	private static class GeneratedMethod {
+		final String name;
+		final CodeBuffer code;
+		GeneratedMethod(String name, CodeBuffer code){
+			this.name = name;
+			this.code = code;
+		}
+	}
+
+	private final String className;
+	private final ConstantPool cp = new ConstantPool();
+	private final List<CompiledExpression> delegates = new ArrayList<CompiledExpression>();
+	private final List<GeneratedMethod> methods = new ArrayList<GeneratedMethod>();
+	// shared subtrees (e.g. functions referenced many times) are emitted as a single method.
+	private final IdentityHashMap<Node,String> methodNames = new IdentityHashMap<Node,String>();
+
+	private ExpressionCompiler(String className){
+		this.className = className;
+	}
+
+	/**
+	 * compiles a bound expression tree, never fails (falls back to the interpreter if the tree cannot be compiled).
+	 */
+	static CompiledExpression compile(Node rootNode) {
+		ExpressionCompiler compiler = new ExpressionCompiler(GENERATED_PACKAGE + "CompiledExpression" + classCounter.incrementAndGet());
+		try {
+			return compiler.generate(rootNode);
+		}catch (Exception | LinkageError e){
+			logger.warn("failed to compile expression '"+rootNode.infixString(SimpleNode.LANGUAGE_DEFAULT)+"', using interpreter: "+e.getMessage(), e);
+			return new InterpretedNode(rootNode);
+		}
+	}
+
+	private CompiledExpression generate(Node rootNode) throws Exception {
+		CodeBuffer rootCode = emit(rootNode, 0);
+		rootCode.dreturn();
+		methods.add(0, new GeneratedMethod("m0", rootCode));
+		byte[] classBytes = toClassBytes();
+		Class<?> generatedClass = new GeneratedClassLoader().define(className.replace('/', '.'), classBytes);
+		CompiledExpression generated = (CompiledExpression)generatedClass
+				.getConstructor(CompiledExpression[].class)
+				.newInstance((Object)delegates.toArray(new CompiledExpression[0]));
+		return new GuardedEvaluator(generated, rootNode);
+	}
+
+	private CodeBuffer emit(Node node, int inlineDepth) {
+		String methodName = methodNames.get(node);
+		if (methodName == null){
+			CodeBuffer code = new CodeBuffer();
+			emitNode(code, node, inlineDepth);
+			if (code.size() <= METHOD_SPLIT_SIZE){
+				return code;
+			}
+			if (methods.size() >= MAX_METHODS){
+				throw new IllegalStateException("expression too large to compile");
+			}
+			code.dreturn();
+			methodName = "m" + (methods.size() + 1);
+			methods.add(new GeneratedMethod(methodName, code));
+			methodNames.put(node, methodName);
+		}
+		CodeBuffer callCode = new CodeBuffer();
+		callCode.callMethod(cp, className, methodName);
+		return callCode;
+	}
+
+	private void emitDelegate(CodeBuffer code, Node node) {
+		delegates.add(new InterpretedNode(node));
+		code.callDelegate(cp, delegates.size() - 1);
+	}
+
+	private void emitNode(CodeBuffer code, Node node, int inlineDepth) {
+		if (node instanceof ASTFloatNode){
+			Double value = ((ASTFloatNode)node).value;
+			if (value == null){
+				emitDelegate(code, node);
+			}else{
+				code.pushDouble(cp, value);
+			}
+		}else if (node instanceof ASTIdNode){
+			SymbolTableEntry ste = ((ASTIdNode)node).getSymbolTableEntry();
+			Expression exp = (ste != null) ? ste.getExpression() : null;
+			if (ste == null || (exp == null && ste.getIndex() < 0) || (exp != null && inlineDepth >= MAX_INLINE_DEPTH)){
+				emitDelegate(code, node);
+			}else if (exp != null){
+				code.append(emit(exp.getRootNode(), inlineDepth + 1));
+			}else{
+				code.loadValue(cp, ste.getIndex());
+			}
+		}else if (node instanceof ASTExpression && node.jjtGetNumChildren() == 1){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+		}else if (node instanceof ASTAddNode){
+			code.pushZero();
+			for (int i = 0; i < node.jjtGetNumChildren(); i++){
+				code.append(emit(node.jjtGetChild(i), inlineDepth));
+				code.dadd();
+			}
+		}else if (node instanceof ASTMultNode && node.jjtGetNumChildren() > 0){
+			emitMult(code, node, inlineDepth);
+		}else if (node instanceof ASTMinusTermNode && node.jjtGetNumChildren() == 1){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+			code.dneg();
+		}else if (node instanceof ASTInvertTermNode && node.jjtGetNumChildren() == 1){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+			code.invokeStatic(cp, COMPILED_MATH, "invert", 1);
+		}else if (node instanceof ASTPowerNode && node.jjtGetNumChildren() == 2){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+			code.append(emit(node.jjtGetChild(1), inlineDepth));
+			code.invokeStatic(cp, COMPILED_MATH, "power", 2);
+		}else if (node instanceof ASTRelationalNode && node.jjtGetNumChildren() == 2 && relationalHelper((ASTRelationalNode)node) != null){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+			code.append(emit(node.jjtGetChild(1), inlineDepth));
+			code.invokeStatic(cp, COMPILED_MATH, relationalHelper((ASTRelationalNode)node), 2);
+		}else if (node instanceof ASTNotNode && node.jjtGetNumChildren() == 1){
+			code.append(emit(node.jjtGetChild(0), inlineDepth));
+			code.invokeStatic(cp, COMPILED_MATH, "not", 1);
+		}else if (node instanceof ASTAndNode || node instanceof ASTOrNode){
+			emitLogical(code, node, node instanceof ASTAndNode, inlineDepth);
+		}else if (node instanceof ASTFuncNode && canEmitFunction((ASTFuncNode)node)){
+			ASTFuncNode funcNode = (ASTFuncNode)node;
+			for (int i = 0; i < node.jjtGetNumChildren(); i++){
+				code.append(emit(node.jjtGetChild(i), inlineDepth));
+			}
+			String mathFunction = javaMathFunction(funcNode.getFunction());
+			if (mathFunction != null){
+				code.invokeStatic(cp, "java/lang/Math", mathFunction, node.jjtGetNumChildren());
+			}else{
+				code.invokeStatic(cp, COMPILED_MATH, funcNode.getFunction().getName(), node.jjtGetNumChildren());
+			}
+		}else{
+			emitDelegate(code, node);
+		}
+	}
+
+	/**
+	 * same as ASTMultNode.evaluateVector(): boolean factors are tested first and short circuit to zero,
+	 * and a product of -0.0 is reported as 0.0 (adding +0.0 does exactly that).
+	 */
+	private void emitMult(CodeBuffer code, Node node, int inlineDepth) {
+		int startStack = code.getStack();
+		List<Integer> zeroBranches = new ArrayList<Integer>();
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			if (node.jjtGetChild(i).isBoolean()){
+				code.append(emit(node.jjtGetChild(i), inlineDepth));
+				zeroBranches.add(code.branchOnZero(true));
+			}
+		}
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			code.append(emit(node.jjtGetChild(i), inlineDepth));
+			if (i > 0){
+				code.dmul();
+			}
+		}
+		code.pushZero();
+		code.dadd();
+		if (!zeroBranches.isEmpty()){
+			int endBranch = code.jump();
+			for (int branch : zeroBranches){
+				code.patchBranch(branch);
+			}
+			code.setStack(startStack);
+			code.pushZero();
+			code.patchBranch(endBranch);
+		}
+	}
+
+	private void emitLogical(CodeBuffer code, Node node, boolean bAnd, int inlineDepth) {
+		int startStack = code.getStack();
+		List<Integer> shortCircuitBranches = new ArrayList<Integer>();
+		for (int i = 0; i < node.jjtGetNumChildren(); i++){
+			code.append(emit(node.jjtGetChild(i), inlineDepth));
+			shortCircuitBranches.add(code.branchOnZero(bAnd));
+		}
+		if (bAnd){
+			code.pushOne();
+		}else{
+			code.pushZero();
+		}
+		int endBranch = code.jump();
+		for (int branch : shortCircuitBranches){
+			code.patchBranch(branch);
+		}
+		code.setStack(startStack);
+		if (bAnd){
+			code.pushZero();
+		}else{
+			code.pushOne();
+		}
+		code.patchBranch(endBranch);
+	}
+
+	private static String relationalHelper(ASTRelationalNode node) {
+		switch (node.getOperationType()){
+			case ASTRelationalNode.GT: return "gt";
+			case ASTRelationalNode.LT: return "lt";
+			case ASTRelationalNode.GE: return "ge";
+			case ASTRelationalNode.LE: return "le";
+			case ASTRelationalNode.EQ: return "eq";
+			case ASTRelationalNode.NE: return "ne";
+			default: return null;
+		}
+	}
+
+	/**
+	 * functions without domain restrictions, evaluated exactly as java.lang.Math does.
+	 */
+	private static String javaMathFunction(FunctionType functionType) {
+		switch (functionType){
+			case EXP: return "exp";
+			case ABS: return "abs";
+			case SIN: return "sin";
+			case COS: return "cos";
+			case TAN: return "tan";
+			case ATAN: return "atan";
+			case MAX: return "max";
+			case MIN: return "min";
+			case CEIL: return "ceil";
+			case FLOOR: return "floor";
+			case SINH: return "sinh";
+			case COSH: return "cosh";
+			case TANH: return "tanh";
+			default: return null;
+		}
+	}
+
+	static boolean canEmitFunction(ASTFuncNode funcNode) {
+		FunctionType functionType = funcNode.getFunction();
+		switch (functionType){
+			case USERDEFINED:
+			case LOG_10:
+			case LOGBASE: {
+				// user defined functions are resolved at runtime, log10 and logbase are not evaluated by the interpreter.
+				return false;
+			}
+			default: {
+				int numArgs = (functionType.getArgTypes() != null) ? functionType.getArgTypes().length : -1;
+				return (numArgs == 1 || numArgs == 2) && funcNode.jjtGetNumChildren() == numArgs;
+			}
+		}
+	}
+
+	private byte[] toClassBytes() throws IOException {
+		final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+		int thisClass = cp.classRef(className);
+		int superClass = cp.classRef("java/lang/Object");
+		int interfaceClass = cp.classRef(COMPILED_EXPRESSION);
+		int delegatesField = cp.fieldRef(className, "delegates", DELEGATES_DESC);
+		int objectInit = cp.methodRef("java/lang/Object", "<init>", "()V");
+		int codeAttribute = cp.utf8("Code");
+
+		// constructor: super(); this.delegates = delegates;
+		byte[] initCode = new byte[] {
+			0x2a, (byte)0xb7, (byte)(objectInit >> 8), (byte)objectInit,
+			0x2a, 0x2b, (byte)0xb5, (byte)(delegatesField >> 8), (byte)delegatesField,
+			(byte)0xb1
+		};
+		// eval(values): return m0(this.delegates, values);
+		int m0 = cp.methodRef(className, "m0", METHOD_DESC);
+		byte[] evalCode = new byte[] {
+			0x2a, (byte)0xb4, (byte)(delegatesField >> 8), (byte)delegatesField,
+			0x2b, (byte)0xb8, (byte)(m0 >> 8), (byte)m0,
+			(byte)0xaf
+		};
+
+		// resolve all names before the constant pool is written.
+		int initName = cp.utf8("<init>");
+		int initDesc = cp.utf8("("+DELEGATES_DESC+")V");
+		int evalName = cp.utf8("eval");
+		int evalDesc = cp.utf8("([D)D");
+		int delegatesName = cp.utf8("delegates");
+		int delegatesDesc = cp.utf8(DELEGATES_DESC);
+		int methodDesc = cp.utf8(METHOD_DESC);
+		int[] methodNameIndices = new int[methods.size()];
+		for (int i = 0; i < methods.size(); i++){
+			methodNameIndices[i] = cp.utf8(methods.get(i).name);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		// class file version 49 (Java 5) does not require stack map frames.
+		out.writeShort(0);
+		out.writeShort(49);
+		cp.write(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(interfaceClass);
+
+		out.writeShort(1);
+		out.writeShort(ACC_PRIVATE | ACC_FINAL);
+		out.writeShort(delegatesName);
+		out.writeShort(delegatesDesc);
+		out.writeShort(0);
+
+		out.writeShort(2 + methods.size());
+		writeMethod(out, ACC_PUBLIC, initName, initDesc, codeAttribute, initCode, 2, 2);
+		writeMethod(out, ACC_PUBLIC, evalName, evalDesc, codeAttribute, evalCode, 2, 2);
+		for (int i = 0; i < methods.size(); i++){
+			CodeBuffer code = methods.get(i).code;
+			writeMethod(out, ACC_PRIVATE | ACC_STATIC, methodNameIndices[i], methodDesc, codeAttribute, code.toByteArray(), code.getMaxStack(), 2);
+		}
+		out.writeShort(0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int access, int name, int desc, int codeAttribute, byte[] code, int maxStack, int maxLocals) throws IOException {
+		if (code.length > 0xffff){
+			throw new IllegalStateException("generated method too large ("+code.length+" bytes)");
+		}
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1);
+		out.writeShort(codeAttribute);
+		out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+}
@@ -69,6 +69,10 @@ class MathUtil {
 	}
 
 	static double factorial(double arg){
+	    if (arg >= 171){
+	    	// 171! overflows, don't count up to (int)arg to find out.
+	    	return Double.POSITIVE_INFINITY;
+	    }
 	    double f = 1.0;
 	    int n = (int)arg;
 	    for(int i = 1; i <= n; i ++) {
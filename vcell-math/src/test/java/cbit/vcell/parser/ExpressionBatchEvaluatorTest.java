@@ -0,0 +1,119 @@
+package cbit.vcell.parser;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExpressionBatchEvaluatorTest {
+
+	private final static String[] SYMBOLS = new String[] { "id_0", "id_1", "id_2", "id_3", "id_4", "id_5", "id_6", "id_7", "id_8", "id_9" };
+
+	private static void assertSameResults(Expression exp, double[][] columns, int numPoints) {
+		assertSameResults(exp, columns, numPoints, null);
+	}
+
+	private static void assertSameResults(Expression exp, double[][] columns, int numPoints, CompiledExpression compiledExp) {
+		double[] expected = new double[numPoints];
+		Class<?> expectedException = null;
+		double[] values = new double[columns.length];
+		try {
+			for (int p = 0; p < numPoints; p++){
+				for (int i = 0; i < columns.length; i++){
+					values[i] = columns[i][p];
+				}
+				expected[p] = exp.evaluateVector(values);
+			}
+		}catch (ExpressionException e){
+			expectedException = e.getClass();
+		}
+		try {
+			double[] actual = exp.evaluateVectorBatch(columns, numPoints, compiledExp);
+			Assert.assertNull("interpreter threw "+expectedException+" for '"+exp.infix()+"'", expectedException);
+			for (int p = 0; p < numPoints; p++){
+				Assert.assertEquals("'"+exp.infix()+"' at point "+p, Double.doubleToLongBits(expected[p]), Double.doubleToLongBits(actual[p]));
+			}
+		}catch (ExpressionException e){
+			Assert.assertEquals("'"+exp.infix()+"' threw "+e.getMessage(), expectedException, e.getClass());
+		}
+	}
+
+	@Test
+	public void testRandomExpressions() throws ExpressionException {
+		Random random = new Random(0);
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(SYMBOLS);
+		int numPoints = 20;
+		for (int i = 0; i < 2000; i++){
+			Expression exp = ExpressionUtils.generateExpression(random, 5, false);
+			exp.bindExpression(symbolTable);
+			double[][] columns = new double[SYMBOLS.length][numPoints];
+			for (int k = 0; k < columns.length; k++){
+				for (int p = 0; p < numPoints; p++){
+					columns[k][p] = (random.nextDouble() - 0.25) * 4;
+				}
+			}
+			assertSameResults(exp, columns, numPoints);
+		}
+	}
+
+	@Test
+	public void testCompiledBatch() throws ExpressionException {
+		Random random = new Random(1);
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(SYMBOLS);
+		int numPoints = Expression.COMPILE_BATCH_THRESHOLD;
+		for (int i = 0; i < 200; i++){
+			Expression exp = ExpressionUtils.generateExpression(random, 5, false);
+			exp.bindExpression(symbolTable);
+			double[][] columns = new double[SYMBOLS.length][numPoints];
+			for (int k = 0; k < columns.length; k++){
+				for (int p = 0; p < numPoints; p++){
+					columns[k][p] = (random.nextDouble() - 0.25) * 4;
+				}
+			}
+			assertSameResults(exp, columns, numPoints, exp.compile());
+		}
+
+		// a single failing point throws what the interpreter throws
+		Expression exp = new Expression("1/x");
+		exp.bindExpression(new SimpleSymbolTable(new String[] { "x" }));
+		double[][] columns = new double[1][numPoints];
+		Arrays.fill(columns[0], 2.0);
+		columns[0][numPoints - 1] = 0.0;
+		CompiledExpression compiledExp = exp.compile();
+		assertSameResults(exp, columns, numPoints, compiledExp);
+
+		// the compiled expression is reused across batches
+		Arrays.fill(columns[0], 4.0);
+		assertSameResults(exp, columns, numPoints, compiledExp);
+	}
+
+	@Test
+	public void testShortCircuit() throws ExpressionException {
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(new String[] { "x", "y" });
+		double[][] columns = new double[][] { { -2, -1, 0, 0.5, 1, 2 }, { 0, 1, -1, 2, 0, 0.5 } };
+		String[] infixes = new String[] {
+				"(x > 0) * log(x)",
+				"(x > 0) * (y > 0) * log(x*y)",
+				"(x > 0) && (log(x) > 0) || (y <= -1)",
+				"(x <= 0) || sqrt(x) > 0.5",
+				"1/x",
+		};
+		for (String infix : infixes){
+			Expression exp = new Expression(infix);
+			exp.bindExpression(symbolTable);
+			assertSameResults(exp, columns, columns[0].length);
+		}
+	}
+
+	@Test
+	public void testMissingColumn() throws ExpressionException {
+		Expression exp = new Expression("x + y");
+		exp.bindExpression(new SimpleSymbolTable(new String[] { "x", "y" }));
+		try {
+			exp.evaluateVectorBatch(new double[][] { { 1, 2 }, null }, 2);
+			Assert.fail("expected ExpressionBindingException");
+		}catch (ExpressionBindingException e){
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package cbit.vcell.parser;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExpressionCompilerTest {
+
+	private final static String[] SYMBOLS = new String[] { "id_0", "id_1", "id_2", "id_3", "id_4", "id_5", "id_6", "id_7", "id_8", "id_9" };
+
+	private static void assertSameResult(Expression exp, CompiledExpression compiledExp, double[] values) {
+		Double expected = null;
+		Class<?> expectedException = null;
+		try {
+			expected = exp.evaluateVector(values);
+		}catch (ExpressionException e){
+			expectedException = e.getClass();
+		}
+		try {
+			double actual = compiledExp.eval(values);
+			Assert.assertNotNull("interpreter threw "+expectedException+" for '"+exp.infix()+"', compiled returned "+actual, expected);
+			Assert.assertEquals("'"+exp.infix()+"'", Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+		}catch (ExpressionException e){
+			Assert.assertEquals("'"+exp.infix()+"' threw "+e.getMessage(), expectedException, e.getClass());
+		}
+	}
+
+	@Test
+	public void testRandomExpressions() throws ExpressionException {
+		Random random = new Random(0);
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(SYMBOLS);
+		for (int i = 0; i < 2000; i++){
+			Expression exp = ExpressionUtils.generateExpression(random, 5, false);
+			exp.bindExpression(symbolTable);
+			CompiledExpression compiledExp = exp.compile();
+			for (int j = 0; j < 5; j++){
+				double[] values = new double[SYMBOLS.length];
+				for (int k = 0; k < values.length; k++){
+					values[k] = (random.nextDouble() - 0.25) * 4;
+				}
+				assertSameResult(exp, compiledExp, values);
+			}
+		}
+	}
+
+	@Test
+	public void testGuardsAndDomainErrors() throws ExpressionException {
+		SimpleSymbolTable symbolTable = new SimpleSymbolTable(new String[] { "x", "y" });
+		String[] infixes = new String[] {
+				"(x > 0) * log(x)",
+				"(x > 0) && (1/x > 2) || (y <= -1)",
+				"!(x == y) + (x != y) + (x >= y) + (x < y)",
+				"x^y + pow(x,y) + sqrt(x) + atan2(x,y)",
+				"-0.0 * x",
+				"1/(x-y)",
+				"max(x,y) - min(x,y) + abs(x) + exp(y) + floor(x) + ceil(y) + acosh(y) + factorial(3)",
+		};
+		double[][] valueSets = new double[][] { {0,0}, {1,1}, {-1,2}, {0.5,-1}, {2,0.25}, {-0.0,-0.0} };
+		for (String infix : infixes){
+			Expression exp = new Expression(infix);
+			exp.bindExpression(symbolTable);
+			CompiledExpression compiledExp = exp.compile();
+			for (double[] values : valueSets){
+				assertSameResult(exp, compiledExp, values);
+			}
+		}
+	}
+
+	@Test
+	public void testDomainErrorMessage() throws ExpressionException {
+		Expression exp = new Expression("log(x)");
+		exp.bindExpression(new SimpleSymbolTable(new String[] { "x" }));
+		try {
+			exp.compile().eval(new double[] { -1.0 });
+			Assert.fail("expected FunctionDomainException");
+		}catch (FunctionDomainException e){
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("'log(x)'"));
+		}
+	}
+
+	@Test
+	public void testLargeExpression() throws ExpressionException {
+		StringBuilder sb = new StringBuilder("x");
+		for (int i = 0; i < 2000; i++){
+			sb.append(" + ").append(i).append("*sin(x*y+").append(i).append(")");
+		}
+		Expression exp = new Expression(sb.toString());
+		exp.bindExpression(new SimpleSymbolTable(new String[] { "x", "y" }));
+		assertSameResult(exp, exp.compile(), new double[] { 0.3, 0.7 });
+	}
+}
@@ -6,18 +6,19 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
-import javax.jms.TemporaryQueue;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,6 +27,7 @@ import org.vcell.util.BeanUtils;
 import org.vcell.util.document.UserLoginInfo;
 
 import cbit.vcell.message.VCMessage;
+import cbit.vcell.message.VCMessageCodec;
 import cbit.vcell.message.VCMessageSession;
 import cbit.vcell.message.VCMessagingConstants;
 import cbit.vcell.message.VCMessagingDelegate;
@@ -40,7 +42,6 @@ import cbit.vcell.resource.PropertyLoader;
 public class MessageProducerSessionJms implements VCMessageSession {
 //		private static int tmpQCnt = 0;
 		private VCMessagingServiceJms vcMessagingServiceJms = null;
-		private TemporaryQueue commonTemporaryQueue = null;
 		private Connection connection = null;
 		private Session session = null;
 		protected boolean bIndependent;
@@ -59,7 +60,6 @@ public class MessageProducerSessionJms implements VCMessageSession {
 			this.connection.start();
 			boolean bTransacted = true;
 			this.session = connection.createSession(bTransacted, Session.AUTO_ACKNOWLEDGE);
-			this.commonTemporaryQueue = session.createTemporaryQueue();
 			this.bIndependent = true;
 		}
 
@@ -72,93 +72,34 @@ public class MessageProducerSessionJms implements VCMessageSession {
 //		}
 
 		public /*synchronized*/ Object sendRpcMessage(VCellQueue queue, VCRpcRequest vcRpcRequest, boolean returnRequired, long timeoutMS, String[] specialProperties, Object[] specialValues, UserLoginInfo userLoginInfo) throws VCMessagingException, VCMessagingInvocationTargetException {
-			MessageProducer messageProducer = null;
-			MessageProducerSessionJms tempMessageProducerSessionJms = null;
 			try {
-				if (!bIndependent){
-					throw new VCMessagingException("cannot invoke RpcMessage from within another transaction, create an independent message producer");
+				return sendRpcMessageAsync(queue, vcRpcRequest, returnRequired, timeoutMS, specialProperties, specialValues, userLoginInfo).get();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new VCMessagingException("interrupted waiting for RPC reply", e);
+			} catch (ExecutionException e){
+				Throwable cause = e.getCause();
+				if (cause instanceof VCMessagingInvocationTargetException){
+					throw (VCMessagingInvocationTargetException)cause;
 				}
-				Destination destination = session.createQueue(queue.getName());
-				messageProducer = session.createProducer(destination);
-
-				//
-				// use MessageProducerSessionJms to create the rpcRequest message (allows "Blob" messages to be formed as needed).
-				//
-				tempMessageProducerSessionJms = new MessageProducerSessionJms(vcMessagingServiceJms);
-//				tempMessageProducerSessionJms = new MessageProducerSessionJms(session,vcMessagingServiceJms);
-				VCMessageJms vcRpcRequestMessage = (VCMessageJms)tempMessageProducerSessionJms.createObjectMessage(vcRpcRequest);
-				Message rpcMessage = vcRpcRequestMessage.getJmsMessage();
-
-				rpcMessage.setStringProperty(VCMessagingConstants.MESSAGE_TYPE_PROPERTY,VCMessagingConstants.MESSAGE_TYPE_RPC_SERVICE_VALUE);
-				rpcMessage.setStringProperty(VCMessagingConstants.SERVICE_TYPE_PROPERTY,vcRpcRequest.getRequestedServiceType().getName());
-//				rpcMessage.setJMSExpiration(5000);
-				if (specialValues != null) {
-					for (int i = 0; i < specialValues.length; i ++) {
-						rpcMessage.setObjectProperty(specialProperties[i], specialValues[i]);
-					}
+				if (cause instanceof VCMessagingException){
+					throw (VCMessagingException)cause;
 				}
+				throw new VCMessagingException(cause.getMessage(), cause);
+			}
+		}
 
-				if (returnRequired) {
-					rpcMessage.setJMSReplyTo(commonTemporaryQueue);
-					messageProducer.setTimeToLive(timeoutMS);
-					messageProducer.send(rpcMessage);
-					session.commit();
-					vcMessagingServiceJms.getDelegate().onRpcRequestSent(vcRpcRequest, userLoginInfo, vcRpcRequestMessage);
-					if (lg.isTraceEnabled()) lg.trace("MessageProducerSessionJms.sendRpcMessage(): looking for reply message with correlationID = "+rpcMessage.getJMSMessageID());
-					String filter = VCMessagingConstants.JMSCORRELATIONID_PROPERTY + "='" + rpcMessage.getJMSMessageID() + "'";
-					MessageConsumer replyConsumer = null;
-					Message replyMessage = null;
-					try {
-					    replyConsumer = session.createConsumer(commonTemporaryQueue,filter);
-						replyMessage = replyConsumer.receive(timeoutMS);
-					}
-					finally {
-						replyConsumer.close();
-					}
-					if (replyMessage == null) {
-						System.out.println("Request timed out");
-					}
-
-					if (replyMessage == null || !(replyMessage instanceof ObjectMessage)) {
-						throw new JMSException("Server is temporarily not responding, please try again. If problem persists, contact VCell_Support@uchc.edu." +
-								" (server " + vcRpcRequest.getRequestedServiceType().getName() + ", method " + vcRpcRequest.getMethodName() +")");
-					} else {
-						VCMessageJms vcReplyMessage = new VCMessageJms(replyMessage, vcMessagingServiceJms.getDelegate());
-						vcReplyMessage.loadBlobFile();
-						Object returnValue = vcReplyMessage.getObjectContent();
-						vcReplyMessage.removeBlobFile();
-						if (returnValue instanceof Exception){
-							throw new VCMessagingInvocationTargetException((Exception)returnValue);
-						} else {
-							return returnValue;
-						}
-					}
-				} else {
-					rpcMessage.setJMSReplyTo(commonTemporaryQueue);
-					messageProducer.setTimeToLive(timeoutMS);
-					messageProducer.send(rpcMessage);
-					commit();
-					vcMessagingServiceJms.getDelegate().onRpcRequestSent(vcRpcRequest, userLoginInfo, vcRpcRequestMessage);
-					return null;
-				}
-			} catch (JMSException e){
-				onException(e);
-				throw new VCMessagingException(e.getMessage(),e);
-			} finally {
-				try {
-
-					if(tempMessageProducerSessionJms != null){
-						tempMessageProducerSessionJms.commit();
-						tempMessageProducerSessionJms.close();
-					}
-
-					if (messageProducer!=null){
-						messageProducer.close();
-					}
-				} catch (JMSException e) {
-					onException(e);
-				}
+		/**
+		 * sends the request through the shared {@link RpcClientJms} of the messaging service (one reply consumer for all requests).
+		 */
+		@Override
+		public CompletableFuture<Object> sendRpcMessageAsync(VCellQueue queue, VCRpcRequest vcRpcRequest, boolean returnRequired, long timeoutMS, String[] specialProperties, Object[] specialValues, UserLoginInfo userLoginInfo) {
+			if (!bIndependent){
+				CompletableFuture<Object> future = new CompletableFuture<Object>();
+				future.completeExceptionally(new VCMessagingException("cannot invoke RpcMessage from within another transaction, create an independent message producer"));
+				return future;
 			}
+			return vcMessagingServiceJms.getRpcClient().sendRpcMessageAsync(queue, vcRpcRequest, returnRequired, timeoutMS, specialProperties, specialValues, userLoginInfo);
 		}
 
 		@Override
@@ -246,62 +187,30 @@ public class MessageProducerSessionJms implements VCMessageSession {
 		}
 		public VCMessage createObjectMessage(Serializable object) {
 			try {
-				// if the serialized object is very large, send it as a BlobMessage (ActiveMQ specific).
-				long t1 = System.currentTimeMillis();
-				byte[] serializedBytes = null;
-
-				if (object!=null){
-					serializedBytes = BeanUtils.toSerialized(object);
-				}
+				return createObjectMessage(session, vcMessagingServiceJms.getDelegate(), object);
+			} catch (JMSException e) {
+				onException(e);
+				throw new RuntimeException("unable to create object message",e);
+			} catch (Exception e){
+				lg.error(e.getMessage(), e);
+				throw new RuntimeException(e.getMessage(),e);
+			}
+		}
 
-				long blobMessageSizeThreshold = Long.parseLong(PropertyLoader.getProperty(PropertyLoader.jmsBlobMessageMinSize, "100000"));
-				boolean USE_MONGO = Boolean.parseBoolean(PropertyLoader.getRequiredProperty(PropertyLoader.jmsBlobMessageUseMongo));
-				if (serializedBytes!=null && serializedBytes.length > blobMessageSizeThreshold){
-					if (!USE_MONGO) {
-						//
-						// get (or create) directory to store Message BLOBs
-						//
-						File tempdir = new File(PropertyLoader.getRequiredProperty(PropertyLoader.jmsBlobMessageTempDir));
-						if (!tempdir.exists()){
-							tempdir.mkdirs();
-						}
-	
-						//
-						// write serialized message to "temp" file.
-						//
-						File blobFile = File.createTempFile("BlobMessage",".data",tempdir);
-						FileOutputStream fileOutputStream = new FileOutputStream(blobFile);
-						FileChannel channel = fileOutputStream.getChannel();
-						channel.write(ByteBuffer.wrap(serializedBytes));
-						channel.close();
-						fileOutputStream.close();
-	
-						ObjectMessage objectMessage = session.createObjectMessage("emptyObject");
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE, VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE_FILE);
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PRODUCER_TEMPDIR, tempdir.getAbsolutePath());
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_FILE_NAME, blobFile.getName());
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_TYPE, object.getClass().getName());
-						objectMessage.setIntProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_SIZE, serializedBytes.length);
-						vcMessagingServiceJms.getDelegate().onTraceEvent("MessageProducerSessionJms.createObjectMessage: (BLOB) size="+serializedBytes.length+", type="+object.getClass().getName()+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
-						return new VCMessageJms(objectMessage,object, vcMessagingServiceJms.getDelegate());
-					} else {
-						String hexString = Long.toHexString(Math.abs(new Random().nextLong()));
-						ObjectId objectId = VCMongoDbDriver.getInstance().storeBLOB("jmsblob_name_"+hexString, "jmsblob", serializedBytes);
-						ObjectMessage objectMessage = session.createObjectMessage("emptyObject");
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE, VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE_MONGODB);
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_MONGODB_OBJECTID, objectId.toHexString());
-						objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_TYPE, object.getClass().getName());
-						objectMessage.setIntProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_SIZE, serializedBytes.length);
-						vcMessagingServiceJms.getDelegate().onTraceEvent("MessageProducerSessionJms.createObjectMessage: (BLOB) size="+serializedBytes.length+", type="+object.getClass().getName()+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
-						return new VCMessageJms(objectMessage,object, vcMessagingServiceJms.getDelegate());
-					}
-				}else{
-					ObjectMessage objectMessage = (ObjectMessage)session.createObjectMessage(object);
-					int size = (serializedBytes!=null)?(serializedBytes.length):(0);
-					String objectType = (serializedBytes!=null)?(object.getClass().getName()):("NULL");
-					vcMessagingServiceJms.getDelegate().onTraceEvent("MessageProducerSessionJms.createObjectMessage: (NOBLOB) size="+size+", type="+objectType+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
-					return new VCMessageJms(objectMessage, vcMessagingServiceJms.getDelegate());
-				}
+		/**
+		 * encodes the reply with a codec accepted by the requester if one supports the type of the return value.
+		 */
+		@Override
+		public VCMessage createRpcReplyMessage(Serializable returnValue, VCMessage rpcRequestMessage) {
+			VCMessageCodec codec = null;
+			if (rpcRequestMessage.propertyExists(VCMessagingConstants.ACCEPT_CODECS_PROPERTY)){
+				codec = VCMessageCodec.selectCodec(rpcRequestMessage.getStringProperty(VCMessagingConstants.ACCEPT_CODECS_PROPERTY), returnValue);
+			}
+			if (codec == null){
+				return createObjectMessage(returnValue);
+			}
+			try {
+				return createObjectMessage(session, vcMessagingServiceJms.getDelegate(), returnValue, codec);
 			} catch (JMSException e) {
 				onException(e);
 				throw new RuntimeException("unable to create object message",e);
@@ -311,6 +220,85 @@ public class MessageProducerSessionJms implements VCMessageSession {
 			}
 		}
 
+		static VCMessageJms createObjectMessage(Session session, VCMessagingDelegate delegate, Serializable object) throws Exception {
+			return createObjectMessage(session, delegate, object, null);
+		}
+
+		/**
+		 * @param codec encodes the object instead of Java serialization (null for an ObjectMessage), the payload is sent as a BytesMessage
+		 * (or a blob) with the codec named in {@link VCMessagingConstants#CODEC_PROPERTY}.
+		 */
+		static VCMessageJms createObjectMessage(Session session, VCMessagingDelegate delegate, Serializable object, VCMessageCodec codec) throws Exception {
+			// if the serialized object is very large, send it as a BlobMessage (ActiveMQ specific).
+			long t1 = System.currentTimeMillis();
+			byte[] serializedBytes = null;
+
+			if (object!=null){
+				serializedBytes = (codec != null) ? codec.encode(object) : BeanUtils.toSerialized(object);
+			}
+
+			long blobMessageSizeThreshold = Long.parseLong(PropertyLoader.getProperty(PropertyLoader.jmsBlobMessageMinSize, "100000"));
+			boolean USE_MONGO = Boolean.parseBoolean(PropertyLoader.getRequiredProperty(PropertyLoader.jmsBlobMessageUseMongo));
+			if (serializedBytes!=null && serializedBytes.length > blobMessageSizeThreshold){
+				if (!USE_MONGO) {
+					//
+					// get (or create) directory to store Message BLOBs
+					//
+					File tempdir = new File(PropertyLoader.getRequiredProperty(PropertyLoader.jmsBlobMessageTempDir));
+					if (!tempdir.exists()){
+						tempdir.mkdirs();
+					}
+	
+					//
+					// write serialized message to "temp" file.
+					//
+					File blobFile = File.createTempFile("BlobMessage",".data",tempdir);
+					FileOutputStream fileOutputStream = new FileOutputStream(blobFile);
+					FileChannel channel = fileOutputStream.getChannel();
+					channel.write(ByteBuffer.wrap(serializedBytes));
+					channel.close();
+					fileOutputStream.close();
+	
+					ObjectMessage objectMessage = session.createObjectMessage("emptyObject");
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE, VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE_FILE);
+					if (codec != null){
+						objectMessage.setStringProperty(VCMessagingConstants.CODEC_PROPERTY, codec.getName());
+					}
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PRODUCER_TEMPDIR, tempdir.getAbsolutePath());
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_FILE_NAME, blobFile.getName());
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_TYPE, object.getClass().getName());
+					objectMessage.setIntProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_SIZE, serializedBytes.length);
+					delegate.onTraceEvent("MessageProducerSessionJms.createObjectMessage: (BLOB) size="+serializedBytes.length+", type="+object.getClass().getName()+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
+					return new VCMessageJms(objectMessage,object, delegate);
+				} else {
+					String hexString = Long.toHexString(Math.abs(new Random().nextLong()));
+					ObjectId objectId = VCMongoDbDriver.getInstance().storeBLOB("jmsblob_name_"+hexString, "jmsblob", serializedBytes);
+					ObjectMessage objectMessage = session.createObjectMessage("emptyObject");
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE, VCMessageJms.BLOB_MESSAGE_PERSISTENCE_TYPE_MONGODB);
+					if (codec != null){
+						objectMessage.setStringProperty(VCMessagingConstants.CODEC_PROPERTY, codec.getName());
+					}
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_MONGODB_OBJECTID, objectId.toHexString());
+					objectMessage.setStringProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_TYPE, object.getClass().getName());
+					objectMessage.setIntProperty(VCMessageJms.BLOB_MESSAGE_OBJECT_SIZE, serializedBytes.length);
+					delegate.onTraceEvent("MessageProducerSessionJms.createObjectMessage: (BLOB) size="+serializedBytes.length+", type="+object.getClass().getName()+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
+					return new VCMessageJms(objectMessage,object, delegate);
+				}
+			}else if (codec != null){
+				BytesMessage bytesMessage = session.createBytesMessage();
+				bytesMessage.writeBytes(serializedBytes);
+				bytesMessage.setStringProperty(VCMessagingConstants.CODEC_PROPERTY, codec.getName());
+				delegate.onTraceEvent("MessageProducerSessionJms.createObjectMessage: ("+codec.getName()+") size="+serializedBytes.length+", type="+object.getClass().getName()+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
+				return new VCMessageJms(bytesMessage, object, delegate);
+			}else{
+				ObjectMessage objectMessage = (ObjectMessage)session.createObjectMessage(object);
+				int size = (serializedBytes!=null)?(serializedBytes.length):(0);
+				String objectType = (serializedBytes!=null)?(object.getClass().getName()):("NULL");
+				delegate.onTraceEvent("MessageProducerSessionJms.createObjectMessage: (NOBLOB) size="+size+", type="+objectType+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
+				return new VCMessageJms(objectMessage, delegate);
+			}
+		}
+
 		public VCMessage createMessage() {
 			try {
 				Message jmsMessage = session.createMessage();
@@ -339,9 +327,6 @@ public class MessageProducerSessionJms implements VCMessageSession {
 				if (session!=null){
 					session.close();
 				}
-				if (commonTemporaryQueue!=null){
-					commonTemporaryQueue.delete();
-				}
 				if (connection!=null){
 					connection.stop();
 					connection.close();
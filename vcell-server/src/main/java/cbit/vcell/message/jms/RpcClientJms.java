@@ -0,0 +1,493 @@
+package cbit.vcell.message.jms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.vcell.util.document.UserLoginInfo;
+
+import cbit.vcell.message.VCMessageCodec;
+import cbit.vcell.message.VCMessagingConstants;
+import cbit.vcell.message.VCMessagingDelegate;
+import cbit.vcell.message.VCMessagingException;
+import cbit.vcell.message.VCMessagingInvocationTargetException;
+import cbit.vcell.message.VCRpcRequest;
+import cbit.vcell.message.VCellQueue;
+import cbit.vcell.resource.PropertyLoader;
+
+/**
+ * Request/reply over JMS with many requests in flight on one connection (one per {@link VCMessagingServiceJms}).
+ * <p>
+ * All requests name the same temporary queue as JMSReplyTo, which is read by a single long lived consumer.
+ * The server answers with JMSCorrelationID set to the JMSMessageID of the request (see VCRpcMessageHandler),
+ * which routes the reply to the waiting {@link CompletableFuture}. Requests are sent from a small pool of
+ * non-transacted producer sessions, so a call no longer opens a connection, a session and a selector consumer.
+ * <p>
+ * The message id is only known once the request is sent, so a reply that arrives before the request is
+ * registered is kept until it is. Replies which are never claimed (their request timed out or was cancelled)
+ * are dropped after a while, together with their blob. If the connection fails, the requests in flight fail and
+ * the next request opens a new connection.
+ */
+public class RpcClientJms {
+
+	private final static Logger lg = LogManager.getLogger(RpcClientJms.class);
+
+	public final static int DEFAULT_MAX_PRODUCER_SESSIONS = 4;
+	private final static int MAX_UNMATCHED_REPLIES = 1000;
+	final static long DEFAULT_UNMATCHED_REPLY_EXPIRE_MS = 60000;
+
+	private final VCMessagingServiceJms vcMessagingServiceJms;
+	private final int maxProducerSessions;
+	private final long unmatchedReplyExpireMS;
+	private final String acceptedCodecNames = VCMessageCodec.getAcceptedCodecNames();
+	private final ScheduledThreadPoolExecutor timeoutExecutor;
+	private final ExecutorService replyExecutor;
+	private ReplyConnection replyConnection = null;
+	private boolean bClosed = false;
+
+	private static class PendingRpc {
+		final VCRpcRequest vcRpcRequest;
+		final CompletableFuture<Object> future;
+		ScheduledFuture<?> timeoutTask = null;
+
+		PendingRpc(VCRpcRequest vcRpcRequest, CompletableFuture<Object> future){
+			this.vcRpcRequest = vcRpcRequest;
+			this.future = future;
+		}
+	}
+
+	private static class UnmatchedReply {
+		final Message replyMessage;
+		final long receivedTime;
+
+		UnmatchedReply(Message replyMessage, long receivedTime){
+			this.replyMessage = replyMessage;
+			this.receivedTime = receivedTime;
+		}
+	}
+
+	private static class ProducerSession {
+		final Session session;
+		final MessageProducer producer;
+
+		ProducerSession(Session session, MessageProducer producer){
+			this.session = session;
+			this.producer = producer;
+		}
+	}
+
+	/**
+	 * one connection with its reply queue, reply consumer, producer sessions and the requests waiting on it.
+	 */
+	private class ReplyConnection {
+		final Connection connection;
+		final Session replySession;
+		final TemporaryQueue replyQueue;
+		final MessageConsumer replyConsumer;
+		final BlockingQueue<ProducerSession> idleProducers = new ArrayBlockingQueue<ProducerSession>(maxProducerSessions);
+		final AtomicInteger numProducers = new AtomicInteger(0);
+		final HashMap<String, PendingRpc> pendingRequests = new HashMap<String, PendingRpc>();
+		final LinkedHashMap<String, UnmatchedReply> unmatchedReplies = new LinkedHashMap<String, UnmatchedReply>();
+		volatile boolean bBroken = false;
+
+		ReplyConnection() throws JMSException, VCMessagingException {
+			this.connection = vcMessagingServiceJms.createConnectionFactory().createConnection();
+			try {
+				this.connection.setExceptionListener(e -> onConnectionException(this, e));
+				this.replySession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+				this.replyQueue = replySession.createTemporaryQueue();
+				this.replyConsumer = replySession.createConsumer(replyQueue);
+				this.replyConsumer.setMessageListener(message -> onReply(this, message));
+				this.connection.start();
+			} catch (JMSException e){
+				connection.close();
+				throw e;
+			}
+		}
+
+		ProducerSession acquireProducer(long timeoutMS) throws JMSException, VCMessagingException, InterruptedException {
+			ProducerSession producerSession = idleProducers.poll();
+			if (producerSession != null){
+				return producerSession;
+			}
+			if (numProducers.incrementAndGet() <= maxProducerSessions){
+				try {
+					Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+					return new ProducerSession(session, session.createProducer(null));
+				} catch (JMSException e){
+					numProducers.decrementAndGet();
+					throw e;
+				}
+			}
+			numProducers.decrementAndGet();
+			producerSession = idleProducers.poll(timeoutMS, TimeUnit.MILLISECONDS);
+			if (producerSession == null){
+				throw new VCMessagingException("timed out waiting for an RPC producer session");
+			}
+			return producerSession;
+		}
+
+		/**
+		 * removes the unmatched replies received before 'expireTime' and the oldest beyond the limit (call with lock held).
+		 */
+		List<Message> removeExpiredReplies(long expireTime){
+			List<Message> expiredReplies = new ArrayList<Message>();
+			Iterator<UnmatchedReply> iter = unmatchedReplies.values().iterator();
+			while (iter.hasNext()){
+				UnmatchedReply unmatchedReply = iter.next();
+				if (unmatchedReply.receivedTime >= expireTime && unmatchedReplies.size() <= MAX_UNMATCHED_REPLIES){
+					break;
+				}
+				expiredReplies.add(unmatchedReply.replyMessage);
+				iter.remove();
+			}
+			return expiredReplies;
+		}
+
+		List<Message> removeAllReplies(){
+			List<Message> replies = new ArrayList<Message>();
+			for (UnmatchedReply unmatchedReply : unmatchedReplies.values()){
+				replies.add(unmatchedReply.replyMessage);
+			}
+			unmatchedReplies.clear();
+			return replies;
+		}
+
+		void releaseProducer(ProducerSession producerSession){
+			if (bBroken || !idleProducers.offer(producerSession)){
+				try {
+					producerSession.session.close();
+				} catch (JMSException e){
+					lg.debug("error closing RPC producer session: "+e.getMessage(), e);
+				}
+			}
+		}
+
+		void close(){
+			try {
+				connection.close();
+			} catch (JMSException e){
+				lg.debug("error closing RPC connection: "+e.getMessage(), e);
+			}
+		}
+	}
+
+	public RpcClientJms(VCMessagingServiceJms vcMessagingServiceJms) {
+		this(vcMessagingServiceJms, PropertyLoader.getIntProperty(PropertyLoader.jmsRpcMaxProducerSessions, DEFAULT_MAX_PRODUCER_SESSIONS));
+	}
+
+	public RpcClientJms(VCMessagingServiceJms vcMessagingServiceJms, int maxProducerSessions) {
+		this(vcMessagingServiceJms, maxProducerSessions, DEFAULT_UNMATCHED_REPLY_EXPIRE_MS);
+	}
+
+	RpcClientJms(VCMessagingServiceJms vcMessagingServiceJms, int maxProducerSessions, long unmatchedReplyExpireMS) {
+		this.vcMessagingServiceJms = vcMessagingServiceJms;
+		this.maxProducerSessions = Math.max(1, maxProducerSessions);
+		this.unmatchedReplyExpireMS = unmatchedReplyExpireMS;
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		ThreadFactory threadFactory = r -> {
+			Thread t = new Thread(r, "RpcClientJms-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		this.timeoutExecutor = new ScheduledThreadPoolExecutor(1, threadFactory);
+		this.timeoutExecutor.setRemoveOnCancelPolicy(true);
+		// replies are deserialized (and blobs loaded) off the consumer thread, also keeps callbacks of the futures off it
+		this.replyExecutor = new ThreadPoolExecutor(this.maxProducerSessions, this.maxProducerSessions, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		((ThreadPoolExecutor)this.replyExecutor).allowCoreThreadTimeOut(true);
+		// early replies are claimed within milliseconds, the others would keep their blob files forever
+		this.timeoutExecutor.scheduleWithFixedDelay(this::expireUnmatchedReplies, unmatchedReplyExpireMS, unmatchedReplyExpireMS, TimeUnit.MILLISECONDS);
+	}
+
+	private VCMessagingDelegate getDelegate(){
+		return vcMessagingServiceJms.getDelegate();
+	}
+
+	private synchronized ReplyConnection getReplyConnection() throws JMSException, VCMessagingException {
+		if (bClosed){
+			throw new VCMessagingException("RPC client is closed");
+		}
+		if (replyConnection == null || replyConnection.bBroken){
+			replyConnection = new ReplyConnection();
+		}
+		return replyConnection;
+	}
+
+	/**
+	 * sends the request and returns without waiting for the reply.
+	 * @return completes with the return value of the remote method, with a {@link VCMessagingInvocationTargetException} if it threw,
+	 * or with a {@link VCMessagingException} if the request could not be sent or timed out. Completes with null right after sending
+	 * if no return is required.
+	 */
+	public CompletableFuture<Object> sendRpcMessageAsync(VCellQueue queue, VCRpcRequest vcRpcRequest, boolean returnRequired, long timeoutMS,
+			String[] specialProperties, Object[] specialValues, UserLoginInfo userLoginInfo) {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		ReplyConnection rc = null;
+		ProducerSession producerSession = null;
+		try {
+			rc = getReplyConnection();
+			producerSession = rc.acquireProducer(timeoutMS);
+			//
+			// create the rpcRequest message with the producer's session (allows "Blob" messages to be formed as needed).
+			//
+			VCMessageJms vcRpcRequestMessage = MessageProducerSessionJms.createObjectMessage(producerSession.session, getDelegate(), vcRpcRequest);
+			Message rpcMessage = vcRpcRequestMessage.getJmsMessage();
+			rpcMessage.setStringProperty(VCMessagingConstants.MESSAGE_TYPE_PROPERTY,VCMessagingConstants.MESSAGE_TYPE_RPC_SERVICE_VALUE);
+			rpcMessage.setStringProperty(VCMessagingConstants.SERVICE_TYPE_PROPERTY,vcRpcRequest.getRequestedServiceType().getName());
+			if (acceptedCodecNames != null){
+				rpcMessage.setStringProperty(VCMessagingConstants.ACCEPT_CODECS_PROPERTY, acceptedCodecNames);
+			}
+			if (specialValues != null) {
+				for (int i = 0; i < specialValues.length; i ++) {
+					rpcMessage.setObjectProperty(specialProperties[i], specialValues[i]);
+				}
+			}
+			// the server always replies, without a caller the reply is only drained from the reply queue
+			rpcMessage.setJMSReplyTo(rc.replyQueue);
+			producerSession.producer.send(producerSession.session.createQueue(queue.getName()), rpcMessage,
+					DeliveryMode.PERSISTENT, Message.DEFAULT_PRIORITY, timeoutMS);
+			getDelegate().onRpcRequestSent(vcRpcRequest, userLoginInfo, vcRpcRequestMessage);
+			if (lg.isTraceEnabled()) lg.trace("RpcClientJms.sendRpcMessageAsync(): waiting for reply message with correlationID = "+rpcMessage.getJMSMessageID());
+
+			if (returnRequired){
+				register(rc, rpcMessage.getJMSMessageID(), new PendingRpc(vcRpcRequest, future), timeoutMS);
+			}else{
+				register(rc, rpcMessage.getJMSMessageID(), new PendingRpc(vcRpcRequest, new CompletableFuture<Object>()), timeoutMS);
+				future.complete(null);
+			}
+		} catch (JMSException e){
+			if (rc != null){
+				onConnectionException(rc, e);
+			}
+			future.completeExceptionally(new VCMessagingException(e.getMessage(),e));
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(new VCMessagingException("interrupted sending RPC request", e));
+		} catch (Exception e){
+			lg.error(e.getMessage(), e);
+			future.completeExceptionally((e instanceof VCMessagingException) ? e : new VCMessagingException(e.getMessage(), e));
+		} finally {
+			if (producerSession != null){
+				rc.releaseProducer(producerSession);
+			}
+		}
+		return future;
+	}
+
+	private void register(ReplyConnection rc, String correlationID, PendingRpc pendingRpc, long timeoutMS){
+		pendingRpc.timeoutTask = timeoutExecutor.schedule(() -> {
+			synchronized (rc){
+				rc.pendingRequests.remove(correlationID);
+			}
+			pendingRpc.future.completeExceptionally(new VCMessagingException(getNotRespondingMessage(pendingRpc.vcRpcRequest)));
+		}, timeoutMS, TimeUnit.MILLISECONDS);
+		pendingRpc.future.whenComplete((returnValue, exception) -> {
+			// completed by the reply, the timeout, a broken connection or cancelled by the caller
+			pendingRpc.timeoutTask.cancel(false);
+			synchronized (rc){
+				rc.pendingRequests.remove(correlationID);
+			}
+		});
+		Message earlyReply;
+		synchronized (rc){
+			UnmatchedReply unmatchedReply = rc.unmatchedReplies.remove(correlationID);
+			earlyReply = (unmatchedReply != null) ? unmatchedReply.replyMessage : null;
+			if (earlyReply == null && !pendingRpc.future.isDone()){
+				if (rc.bBroken){
+					pendingRpc.future.completeExceptionally(new VCMessagingException("connection failed while waiting for RPC reply"));
+				}else{
+					rc.pendingRequests.put(correlationID, pendingRpc);
+				}
+			}
+		}
+		if (earlyReply != null){
+			replyExecutor.execute(() -> completeFromReply(pendingRpc, earlyReply));
+		}
+	}
+
+	private void onReply(ReplyConnection rc, Message replyMessage){
+		try {
+			String correlationID = replyMessage.getJMSCorrelationID();
+			PendingRpc pendingRpc;
+			List<Message> expiredReplies = null;
+			synchronized (rc){
+				pendingRpc = rc.pendingRequests.remove(correlationID);
+				if (pendingRpc == null){
+					long now = System.currentTimeMillis();
+					rc.unmatchedReplies.put(correlationID, new UnmatchedReply(replyMessage, now));
+					expiredReplies = rc.removeExpiredReplies(now - unmatchedReplyExpireMS);
+				}
+			}
+			if (pendingRpc != null){
+				replyExecutor.execute(() -> completeFromReply(pendingRpc, replyMessage));
+			}else if (!expiredReplies.isEmpty()){
+				List<Message> discardedReplies = expiredReplies;
+				replyExecutor.execute(() -> discardReplies(discardedReplies));
+			}
+		} catch (JMSException e){
+			lg.error("unable to route RPC reply: "+e.getMessage(), e);
+		}
+	}
+
+	private void completeFromReply(PendingRpc pendingRpc, Message replyMessage){
+		if (!(replyMessage instanceof ObjectMessage) && !(replyMessage instanceof BytesMessage)) {
+			pendingRpc.future.completeExceptionally(new VCMessagingException(getNotRespondingMessage(pendingRpc.vcRpcRequest)));
+			return;
+		}
+		try {
+			VCMessageJms vcReplyMessage = new VCMessageJms(replyMessage, getDelegate());
+			vcReplyMessage.loadBlobFile();
+			Object returnValue = vcReplyMessage.getObjectContent();
+			vcReplyMessage.removeBlobFile();
+			if (returnValue instanceof Exception){
+				pendingRpc.future.completeExceptionally(new VCMessagingInvocationTargetException((Exception)returnValue));
+			}else{
+				pendingRpc.future.complete(returnValue);
+			}
+		} catch (Exception e){
+			lg.error(e.getMessage(), e);
+			pendingRpc.future.completeExceptionally(new VCMessagingException(e.getMessage(), e));
+		}
+	}
+
+	private void expireUnmatchedReplies(){
+		ReplyConnection rc;
+		synchronized (this){
+			rc = replyConnection;
+		}
+		if (rc == null){
+			return;
+		}
+		List<Message> expiredReplies;
+		synchronized (rc){
+			expiredReplies = rc.removeExpiredReplies(System.currentTimeMillis() - unmatchedReplyExpireMS);
+		}
+		if (!expiredReplies.isEmpty()){
+			replyExecutor.execute(() -> discardReplies(expiredReplies));
+		}
+	}
+
+	private void discardReplies(List<Message> replyMessages){
+		for (Message replyMessage : replyMessages){
+			try {
+				if (lg.isDebugEnabled()) lg.debug("dropping unclaimed RPC reply with correlationID = "+replyMessage.getJMSCorrelationID());
+				new VCMessageJms(replyMessage, getDelegate()).discardBlob();
+			} catch (Exception e){
+				lg.error("failed to remove blob of unclaimed RPC reply: "+e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * number of replies waiting for their request to be registered (for tests).
+	 */
+	int getNumUnmatchedReplies(){
+		ReplyConnection rc;
+		synchronized (this){
+			rc = replyConnection;
+		}
+		if (rc == null){
+			return 0;
+		}
+		synchronized (rc){
+			return rc.unmatchedReplies.size();
+		}
+	}
+
+	private void onConnectionException(ReplyConnection rc, JMSException e){
+		if (getDelegate()!=null){
+			getDelegate().onException(e);
+		}
+		lg.error(e.getMessage(), e);
+		List<PendingRpc> failedRequests;
+		List<Message> droppedReplies;
+		synchronized (rc){
+			if (rc.bBroken){
+				return;
+			}
+			rc.bBroken = true;
+			failedRequests = new ArrayList<PendingRpc>(rc.pendingRequests.values());
+			rc.pendingRequests.clear();
+			droppedReplies = rc.removeAllReplies();
+		}
+		for (PendingRpc pendingRpc : failedRequests){
+			pendingRpc.future.completeExceptionally(new VCMessagingException(e.getMessage(), e));
+		}
+		rc.close();
+		discardReplies(droppedReplies);
+	}
+
+	private static String getNotRespondingMessage(VCRpcRequest vcRpcRequest){
+		return "Server is temporarily not responding, please try again. If problem persists, contact VCell_Support@uchc.edu." +
+				" (server " + vcRpcRequest.getRequestedServiceType().getName() + ", method " + vcRpcRequest.getMethodName() +")";
+	}
+
+	/**
+	 * number of requests waiting for their reply (for monitoring and tests).
+	 */
+	public int getNumPendingRequests(){
+		ReplyConnection rc;
+		synchronized (this){
+			rc = replyConnection;
+		}
+		if (rc == null){
+			return 0;
+		}
+		synchronized (rc){
+			return rc.pendingRequests.size();
+		}
+	}
+
+	public void close() {
+		ReplyConnection rc;
+		synchronized (this){
+			bClosed = true;
+			rc = replyConnection;
+			replyConnection = null;
+		}
+		if (rc != null){
+			List<PendingRpc> abandonedRequests;
+			List<Message> droppedReplies;
+			synchronized (rc){
+				rc.bBroken = true;
+				abandonedRequests = new ArrayList<PendingRpc>(rc.pendingRequests.values());
+				rc.pendingRequests.clear();
+				droppedReplies = rc.removeAllReplies();
+			}
+			for (PendingRpc pendingRpc : abandonedRequests){
+				pendingRpc.future.completeExceptionally(new VCMessagingException("RPC client closed"));
+			}
+			rc.close();
+			discardReplies(droppedReplies);
+		}
+		timeoutExecutor.shutdownNow();
+		replyExecutor.shutdownNow();
+	}
+}
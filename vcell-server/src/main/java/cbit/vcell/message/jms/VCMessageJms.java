@@ -5,8 +5,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.util.Enumeration;
 
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -21,6 +23,8 @@ import org.fusesource.hawtbuf.ByteArrayInputStream;
 import cbit.vcell.message.MessagePropertyNotFoundException;
 import cbit.vcell.message.VCDestination;
 import cbit.vcell.message.VCMessage;
+import cbit.vcell.message.VCMessageCodec;
+import cbit.vcell.message.VCMessagingConstants;
 import cbit.vcell.message.VCMessagingDelegate;
 import cbit.vcell.message.VCellQueue;
 import cbit.vcell.message.VCellTopic;
@@ -74,6 +78,7 @@ public class VCMessageJms implements VCMessage {
 	 * 6) consumer's message listener calls getObjectContent() not knowing if it was sent as a Blob or not.
 	 * 7) message consumer calls VCMessageJms.removeBlobFile() to clean up disk.
 	 * 
+	 * If the message names a codec (VCMessagingConstants.CODEC_PROPERTY), the blob holds the encoded bytes instead of the serialized object.
 	 */
 	public void loadBlobFile(){
 		if (blobObject!=null){
@@ -102,13 +107,18 @@ public class VCMessageJms implements VCMessage {
 						throw new RuntimeException("Message BLOB file \""+blobFileName+"\" not found local=\""+localBlobDir+"\" or producer=\""+producerBlobDir+"\"");
 					}
 				}
-				FileInputStream fis = new FileInputStream(blobFile);
-				BufferedInputStream bis = new BufferedInputStream(fis);
-				ObjectInputStream ois = new ObjectInputStream(bis);
-				blobObject = (Serializable) ois.readObject();
-				ois.close();
-				bis.close();
-				fis.close();
+				VCMessageCodec codec = getCodec();
+				if (codec != null){
+					blobObject = codec.decode(Files.readAllBytes(blobFile.toPath()));
+				}else{
+					FileInputStream fis = new FileInputStream(blobFile);
+					BufferedInputStream bis = new BufferedInputStream(fis);
+					ObjectInputStream ois = new ObjectInputStream(bis);
+					blobObject = (Serializable) ois.readObject();
+					ois.close();
+					bis.close();
+					fis.close();
+				}
 				delegate.onTraceEvent("VCMessageJms.loadBlobFile(): size="+jmsMessage.getIntProperty(BLOB_MESSAGE_OBJECT_SIZE)+", type="+jmsMessage.getStringProperty(BLOB_MESSAGE_OBJECT_TYPE)+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -128,11 +138,16 @@ public class VCMessageJms implements VCMessage {
 				
 				byte[] blob = VCMongoDbDriver.getInstance().getBLOB(blobObjectId);
 
-				ByteArrayInputStream bis = new ByteArrayInputStream(blob);
-				ObjectInputStream ois = new ObjectInputStream(bis);
-				blobObject = (Serializable) ois.readObject();
-				ois.close();
-				bis.close();
+				VCMessageCodec codec = getCodec();
+				if (codec != null){
+					blobObject = codec.decode(blob);
+				}else{
+					ByteArrayInputStream bis = new ByteArrayInputStream(blob);
+					ObjectInputStream ois = new ObjectInputStream(bis);
+					blobObject = (Serializable) ois.readObject();
+					ois.close();
+					bis.close();
+				}
 				delegate.onTraceEvent("VCMessageJms.loadBlobFile(): size="+jmsMessage.getIntProperty(BLOB_MESSAGE_OBJECT_SIZE)+", type="+jmsMessage.getStringProperty(BLOB_MESSAGE_OBJECT_TYPE)+", elapsedTime = "+(System.currentTimeMillis()-t1)+" ms");
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -141,6 +156,30 @@ public class VCMessageJms implements VCMessage {
 		}
 	}
 	
+	/**
+	 * removes the blob (file or MongoDB object) of a message which is dropped without being read.
+	 */
+	public void discardBlob(){
+		if (blobFile!=null || blobObjectId!=null){
+			removeBlobFile();
+			return;
+		}
+		if (!(jmsMessage instanceof ObjectMessage) || !propertyExists(BLOB_MESSAGE_PERSISTENCE_TYPE)){
+			return;
+		}
+		String persistenceType = getStringProperty(BLOB_MESSAGE_PERSISTENCE_TYPE);
+		if (persistenceType.equals(BLOB_MESSAGE_PERSISTENCE_TYPE_FILE)){
+			String blobFileName = getStringProperty(BLOB_MESSAGE_FILE_NAME);
+			blobFile = new File(PropertyLoader.getRequiredProperty(PropertyLoader.jmsBlobMessageTempDir),blobFileName);
+			if (!blobFile.exists()){
+				blobFile = new File(getStringProperty(BLOB_MESSAGE_PRODUCER_TEMPDIR),blobFileName);
+			}
+		}else if (persistenceType.equals(BLOB_MESSAGE_PERSISTENCE_TYPE_MONGODB)){
+			blobObjectId = new ObjectId(getStringProperty(BLOB_MESSAGE_MONGODB_OBJECTID));
+		}
+		removeBlobFile();
+	}
+
 	public void removeBlobFile(){
 		if (blobFile!=null){
 			//
@@ -165,7 +204,36 @@ public class VCMessageJms implements VCMessage {
 	
 
 
+	private VCMessageCodec getCodec(){
+		if (!propertyExists(VCMessagingConstants.CODEC_PROPERTY)){
+			return null;
+		}
+		String codecName = getStringProperty(VCMessagingConstants.CODEC_PROPERTY);
+		VCMessageCodec codec = VCMessageCodec.getCodec(codecName);
+		if (codec == null){
+			throw new RuntimeException("unknown message codec '"+codecName+"'");
+		}
+		return codec;
+	}
+
 	public Object getObjectContent(){
+		if (jmsMessage instanceof BytesMessage && propertyExists(VCMessagingConstants.CODEC_PROPERTY)){
+			// the body can only be read once, keep the decoded object (also set by the producer)
+			if (blobObject == null){
+				try {
+					BytesMessage bytesMessage = (BytesMessage)jmsMessage;
+					byte[] encodedBytes = new byte[(int)bytesMessage.getBodyLength()];
+					bytesMessage.readBytes(encodedBytes);
+					blobObject = getCodec().decode(encodedBytes);
+				} catch (JMSException e) {
+					handleJMSException(e);
+					throw new RuntimeException(e.getMessage(),e);
+				} catch (Exception e) {
+					throw new RuntimeException(e.getMessage(),e);
+				}
+			}
+			return blobObject;
+		}
 		if (jmsMessage instanceof ObjectMessage){
 			if (propertyExists(BLOB_MESSAGE_FILE_NAME) || propertyExists(BLOB_MESSAGE_MONGODB_OBJECTID)){
 				return blobObject;
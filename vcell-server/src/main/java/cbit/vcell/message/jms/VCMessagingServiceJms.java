@@ -33,6 +33,7 @@ public abstract class VCMessagingServiceJms extends AbstractService implements V
     private ArrayList<MessageProducerSessionJms> messagingProducerSessions = new ArrayList<MessageProducerSessionJms>();
 	protected HashMap<String,Destination> destinationMap = new HashMap<String,Destination>();
 	private VCMessagingDelegate delegate = new SimpleMessagingDelegate();
+	private RpcClientJms rpcClient = null;
 	protected String jmshost = null;
 	protected Integer jmsport = null;
 
@@ -114,6 +115,16 @@ public abstract class VCMessagingServiceJms extends AbstractService implements V
 		}
 	}
 
+	/**
+	 * shared by the producer sessions of this service for request/reply (one reply consumer for all requests).
+	 */
+	public synchronized RpcClientJms getRpcClient(){
+		if (rpcClient == null){
+			rpcClient = new RpcClientJms(this);
+		}
+		return rpcClient;
+	}
+
 	public abstract ConnectionFactory createConnectionFactory() throws JMSException, VCMessagingException;
 		
 	@Override
@@ -145,6 +156,12 @@ public abstract class VCMessagingServiceJms extends AbstractService implements V
 			iter.remove();
 			mp.close();
 		}
+		synchronized (this){
+			if (rpcClient != null){
+				rpcClient.close();
+				rpcClient = null;
+			}
+		}
 //		System.out.println(toString()+" closeAll() complete");
 	}
 
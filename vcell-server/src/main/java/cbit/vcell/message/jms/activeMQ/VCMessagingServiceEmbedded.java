@@ -34,7 +34,9 @@ public class VCMessagingServiceEmbedded extends VCMessagingServiceJms {
 			initialized = true;
 			init();
 		}
-		return new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false&broker.useJmx=false&create=false");
+		ActiveMQConnectionFactory activeMQConnectionFactory = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false&broker.useJmx=false&create=false");
+		activeMQConnectionFactory.setTrustAllPackages(true);
+		return activeMQConnectionFactory;
 	}
 	
 	private void init() throws VCMessagingException {
@@ -2,24 +2,33 @@ package cbit.vcell.message.server.batch.sim;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import cbit.vcell.messaging.server.SimulationTask;
-import cbit.vcell.resource.ResourceUtil;
+import cbit.vcell.resource.PropertyLoader;
 import cbit.vcell.simdata.PortableCommand;
 import cbit.vcell.simdata.SimDataConstants;
+import cbit.vcell.solver.SolverTaskDescription;
+import cbit.vcell.solver.ode.ColumnarODEDataFile;
 import cbit.vcell.solver.ode.ODESolverResultSet;
 import cbit.vcell.solver.ode.SundialsSolver;
-import cbit.vcell.util.ColumnDescription;
+import cbit.vcell.solver.stoch.MultiTrialStatistics;
 import cbit.vcell.xml.XmlHelper;
 
 public class AvgStochMultiTrial  implements PortableCommand{
 
+	private static final Logger lg = LogManager.getLogger(AvgStochMultiTrial.class);
+
 	private final String primaryUserDirInternal;
 	private final String xmlSimTask;
 	private transient Exception exc = null; 
@@ -33,9 +42,9 @@ public class AvgStochMultiTrial  implements PortableCommand{
 	public int execute() {
 		try {
 			SimulationTask simTask = XmlHelper.XMLToSimTask(xmlSimTask);
-			String s = avgAll(simTask, new File(primaryUserDirInternal));
-			String allAvgIDA = ResourceUtil.forceUnixPath(new File(primaryUserDirInternal ,simTask.getSimulationJobID()+SimDataConstants.IDA_DATA_EXTENSION).toString());
-			FileUtils.write(new File(allAvgIDA), s, Charset.forName(StandardCharsets.UTF_8.name()));
+			ODESolverResultSet avg = avgAll(simTask, new File(primaryUserDirInternal));
+			File allAvgIDA = new File(primaryUserDirInternal ,simTask.getSimulationJobID()+SimDataConstants.IDA_DATA_EXTENSION);
+			ColumnarODEDataFile.write(avg, allAvgIDA);
 			return 0;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -48,66 +57,81 @@ public class AvgStochMultiTrial  implements PortableCommand{
 		return exc;
 	}
 
-	public static String avgAll(SimulationTask simTask, File primaryUserDirInternal) throws Exception{
+	/**
+	 * reads the trial outputs (in parallel) into a {@link MultiTrialStatistics} as they become available; files already aggregated
+	 * are not read again when waiting for the remaining trials.  A trial whose time column does not reach the last output time yet
+	 * is still being written, it is not aggregated and read again with the next scan.
+	 * @return mean (under the variable names), standard deviation and confidence interval columns of all trials.
+	 */
+	public static ODESolverResultSet avgAll(SimulationTask simTask, File primaryUserDirInternal) throws Exception{
 		String idaSlurmRoot = simTask.getSimulationJobID()+SimDataConstants.IDA_DATA_EXTENSION;
-		Exception lastError = null;
-		int doCnt = 0;
-		while(doCnt < 20) {
-			try {
+		SolverTaskDescription solverTaskDescription = simTask.getSimulation().getSolverTaskDescription();
+		long numTrials = solverTaskDescription.getStochOpt().getNumOfTrials();
+		double lastOutputTime = MultiTrialStatistics.getLastOutputTime(solverTaskDescription.getOutputTimeSpec(), solverTaskDescription.getTimeBounds());
+		MultiTrialStatistics statistics = new MultiTrialStatistics(MultiTrialStatistics.getConfiguredQuantiles());
+		Set<String> aggregatedFileNames = new HashSet<String>();
+		int threadCount = Math.max(1, PropertyLoader.getIntProperty(PropertyLoader.stochMultiTrialThreadsProperty, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			Exception lastError = null;
+			for (int doCnt = 0; doCnt < 20; doCnt++) {
+				if (doCnt > 0) {
+					Thread.sleep(10000);
+				}
 				File[] slurm_Task_Run_Files = primaryUserDirInternal.listFiles(new FileFilter() {
 					@Override
 					public boolean accept(File pathname) {
 						return pathname.getName().startsWith(idaSlurmRoot+"_");
 					}
 				});
-				if(simTask.getSimulation().getSolverTaskDescription().getStochOpt().getNumOfTrials() != slurm_Task_Run_Files.length) {
-					throw new Exception("Expecting trialCount to match output files "+simTask.getSimulation().getSolverTaskDescription().getStochOpt().getNumOfTrials()+" != "+slurm_Task_Run_Files.length);
+				if (slurm_Task_Run_Files == null) {
+					lastError = new Exception("cannot list directory "+primaryUserDirInternal);
+					continue;
 				}
-				ODESolverResultSet odeMaster = null;
-				for (int i = 0; i < slurm_Task_Run_Files.length; i++) {
-					ODESolverResultSet odeSolverResultSet2 = new ODESolverResultSet();
-					try (FileInputStream inputStream = new FileInputStream(slurm_Task_Run_Files[i])){
-						SundialsSolver.readIDA(odeSolverResultSet2, inputStream);
-						if(i==0) {
-							odeMaster = odeSolverResultSet2;
-							continue;
-						}
-						for (int r = 0; r < odeSolverResultSet2.getRowCount(); r++) {
-							double[] row2 = odeSolverResultSet2.getRow(r);
-							double[] rowMaster = odeMaster.getRow(r);
-							for (int c = 1; c < odeSolverResultSet2.getDataColumnCount(); c++) {
-								odeMaster.setValue(r, c, rowMaster[c]+row2[c]);
+				if (slurm_Task_Run_Files.length > numTrials) {
+					throw new Exception("Expecting trialCount to match output files "+numTrials+" != "+slurm_Task_Run_Files.length);
+				}
+				Exception readError = null;
+				Map<String, Future<Boolean>> futures = new LinkedHashMap<String, Future<Boolean>>();
+				for (File trialFile : slurm_Task_Run_Files) {
+					if (!aggregatedFileNames.contains(trialFile.getName())) {
+						futures.put(trialFile.getName(), executor.submit(() -> {
+							// trial output is either text or columnar binary, only one trial per thread is in memory
+							ODESolverResultSet trial = SundialsSolver.readIDA(new ODESolverResultSet(), trialFile);
+							if (trial == null || !MultiTrialStatistics.isComplete(trial, lastOutputTime)) {
+								return false;
 							}
+							statistics.addTrial(trial);
+							return true;
+						}));
+					}
+				}
+				int notReadyCount = 0;
+				for (Map.Entry<String, Future<Boolean>> entry : futures.entrySet()) {
+					try {
+						if (entry.getValue().get()) {
+							aggregatedFileNames.add(entry.getKey());
+						} else {
+							notReadyCount++;
 						}
-					} catch (IOException e) {
-						throw e;
+					} catch (ExecutionException e) {
+						// probably still being written, read again with the next scan
+						lg.warn("failed to read trial output "+entry.getKey()+": "+e.getCause().getMessage(), e.getCause());
+						readError = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
 					}
 				}
-				StringBuffer sb = new StringBuffer();
-				ColumnDescription[] columnDescriptions = odeMaster.getDataColumnDescriptions();
-				for (int i = 0; i < columnDescriptions.length; i++) {
-					sb.append((i>0?":":"")+columnDescriptions[i].getName());
+				if (notReadyCount > 0) {
+					lg.info(notReadyCount+" trial outputs of "+simTask.getSimulationJobID()+" do not reach time "+lastOutputTime+" yet");
 				}
-				sb.append("\n");
-				for (int r = 0; r < odeMaster.getRowCount(); r++) {
-					double[] rowMaster = odeMaster.getRow(r);
-					for (int c = 0; c < odeMaster.getDataColumnCount(); c++) {
-						sb.append((c>0?"\t":"")+(rowMaster[c]/(c>0?simTask.getSimulation().getSolverTaskDescription().getStochOpt().getNumOfTrials():1)));
-					}
-					sb.append("\n");
+				if (aggregatedFileNames.size() == numTrials) {
+					return statistics.createResultSet();
 				}
-		//		System.out.println(sb.toString());
-		//		String allAvgIDA = ResourceUtil.forceUnixPath(new File(primaryUserDirInternal ,simTask.getSimulationJobID()+SimDataConstants.IDA_DATA_EXTENSION).toString());
-		//		FileUtils.write(new File(allAvgIDA), sb.toString(), Charset.forName(StandardCharsets.UTF_8.name()));
-				return sb.toString();
-			}catch(Exception e) {
-				doCnt++;
-				e.printStackTrace();
-				lastError = e;
+				lastError = (readError != null) ? readError : new Exception("Expecting trialCount to match output files "+numTrials+" != "+aggregatedFileNames.size());
 			}
-			Thread.sleep(10000);
+			throw new Exception("Exceed trys to AvgStochMultiTrial, last error = ",lastError);
+		} finally {
+			executor.shutdownNow();
 		}
-		throw new Exception("Exceed trys to AvgStochMultiTrial, last error = ",lastError);
 	}
 
 }
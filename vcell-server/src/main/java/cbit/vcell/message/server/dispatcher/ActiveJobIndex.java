@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 1999-2011 University of Connecticut Health Center
+ *
+ * Licensed under the MIT License (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *  http://www.opensource.org/licenses/mit-license.php
+ */
+
+package cbit.vcell.message.server.dispatcher;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.vcell.util.document.KeyValue;
+
+import cbit.vcell.messaging.db.SimulationRequirements;
+import cbit.vcell.server.SimulationJobStatus;
+
+/**
+ * In-memory copy of the active simulation jobs (all sites) used by the incremental dispatcher.
+ * <p>
+ * The index is replaced by a full database query in {@link #reconcile(SimulationJobStatus[], long)} and is kept
+ * current in between from the job status written by this dispatcher (start/stop requests, dispatch, worker events
+ * and system aborts, see {@link SimulationDispatcherEngine}).  Changes made by the dispatchers of other sites are
+ * only seen at the next reconciliation.
+ */
+public class ActiveJobIndex {
+	public static final Logger lg = LogManager.getLogger(ActiveJobIndex.class);
+
+	private static class JobKey {
+		private final KeyValue simKey;
+		private final int jobIndex;
+
+		private JobKey(KeyValue simKey, int jobIndex) {
+			this.simKey = simKey;
+			this.jobIndex = jobIndex;
+		}
+
+		@Override
+		public int hashCode() {
+			return simKey.hashCode() * 31 + jobIndex;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof JobKey){
+				JobKey other = (JobKey)obj;
+				return jobIndex == other.jobIndex && simKey.equals(other.simKey);
+			}
+			return false;
+		}
+	}
+
+	private final long reconcileIntervalMS;
+	private final Runnable schedulingChangeListener;
+
+	// insertion ordered like the database query (simulation order is kept for the scheduler)
+	private final Map<JobKey, SimulationJobStatus> activeJobs = new LinkedHashMap<JobKey, SimulationJobStatus>();
+	private final Map<KeyValue, SimulationRequirements> simRequirementsMap = new HashMap<KeyValue, SimulationRequirements>();
+	private long lastReconcileTimeMS = 0;
+	private boolean bReconcileRequested = true;
+
+	/**
+	 * @param reconcileIntervalMS maximum age of the index before the next full database reconciliation
+	 * @param schedulingChangeListener called (outside of the index lock) when a job enters the waiting state
+	 * or leaves the active set, i.e. when the next scheduling decision may differ; may be null
+	 */
+	public ActiveJobIndex(long reconcileIntervalMS, Runnable schedulingChangeListener) {
+		this.reconcileIntervalMS = reconcileIntervalMS;
+		this.schedulingChangeListener = schedulingChangeListener;
+	}
+
+	public long getReconcileIntervalMS() {
+		return reconcileIntervalMS;
+	}
+
+	/**
+	 * @param retryIntervalMS wait of the dispatcher while jobs are waiting (held back by limits)
+	 * @return how long the idle dispatcher may sleep before the next scheduling pass.  Without waiting jobs it sleeps
+	 * until the next reconciliation is due (new waiting jobs and finished jobs wake it up, see {@link #update(SimulationJobStatus)});
+	 * waiting jobs are retried at 'retryIntervalMS' since capacity is also freed outside of this dispatcher (batch system, other sites).
+	 */
+	public synchronized long getIdleWaitMS(long retryIntervalMS, long currentTimeMS) {
+		long untilReconcileMS = bReconcileRequested ? 0 : lastReconcileTimeMS + reconcileIntervalMS - currentTimeMS;
+		long waitMS = hasWaitingJobs() ? Math.min(retryIntervalMS, untilReconcileMS) : untilReconcileMS;
+		// Object.wait(0) would not return
+		return Math.max(1, waitMS);
+	}
+
+	public synchronized boolean needsReconciliation(long currentTimeMS) {
+		return bReconcileRequested || (currentTimeMS - lastReconcileTimeMS) >= reconcileIntervalMS;
+	}
+
+	/**
+	 * forces a full database reconciliation before the next scheduling pass (e.g. after a failed update).
+	 */
+	public synchronized void requestReconciliation() {
+		bReconcileRequested = true;
+	}
+
+	/**
+	 * replaces the index with the active jobs of all sites as read from the database.
+	 */
+	public synchronized void reconcile(SimulationJobStatus[] allActiveJobsAllSites, long currentTimeMS) {
+		activeJobs.clear();
+		Set<KeyValue> simKeys = new HashSet<KeyValue>();
+		for (SimulationJobStatus jobStatus : allActiveJobsAllSites){
+			KeyValue simKey = jobStatus.getVCSimulationIdentifier().getSimulationKey();
+			activeJobs.put(new JobKey(simKey, jobStatus.getJobIndex()), jobStatus);
+			simKeys.add(simKey);
+		}
+		simRequirementsMap.keySet().retainAll(simKeys);
+		lastReconcileTimeMS = currentTimeMS;
+		bReconcileRequested = false;
+		if (lg.isDebugEnabled()){
+			lg.debug("reconciled active job index with database, "+activeJobs.size()+" active jobs for "+simKeys.size()+" simulations");
+		}
+	}
+
+	/**
+	 * records the latest status of one job, stale updates (older task) are ignored.
+	 */
+	public void update(SimulationJobStatus jobStatus) {
+		if (jobStatus == null){
+			return;
+		}
+		boolean bSchedulingChange = false;
+		synchronized (this) {
+			JobKey jobKey = new JobKey(jobStatus.getVCSimulationIdentifier().getSimulationKey(), jobStatus.getJobIndex());
+			SimulationJobStatus oldJobStatus = activeJobs.get(jobKey);
+			if (oldJobStatus != null && oldJobStatus.getTaskID() > jobStatus.getTaskID()){
+				return;
+			}
+			if (jobStatus.getSchedulerStatus().isActive()){
+				activeJobs.put(jobKey, jobStatus);
+				bSchedulingChange = jobStatus.getSchedulerStatus().isWaiting()
+						&& (oldJobStatus == null || !oldJobStatus.getSchedulerStatus().isWaiting());
+			}else if (oldJobStatus != null){
+				activeJobs.remove(jobKey);
+				bSchedulingChange = true;
+			}
+		}
+		if (bSchedulingChange && schedulingChangeListener != null){
+			schedulingChangeListener.run();
+		}
+	}
+
+	public synchronized SimulationJobStatus[] getActiveJobs() {
+		return activeJobs.values().toArray(new SimulationJobStatus[activeJobs.size()]);
+	}
+
+	public synchronized boolean hasWaitingJobs() {
+		for (SimulationJobStatus jobStatus : activeJobs.values()){
+			if (jobStatus.getSchedulerStatus().isWaiting()){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the cached requirements of 'simKeys', simulations missing from the result have to be queried.
+	 */
+	public synchronized Map<KeyValue, SimulationRequirements> getSimulationRequirements(Collection<KeyValue> simKeys) {
+		Map<KeyValue, SimulationRequirements> map = new HashMap<KeyValue, SimulationRequirements>();
+		for (KeyValue simKey : simKeys){
+			SimulationRequirements simRequirements = simRequirementsMap.get(simKey);
+			if (simRequirements != null){
+				map.put(simKey, simRequirements);
+			}
+		}
+		return map;
+	}
+
+	public synchronized void putSimulationRequirements(Map<KeyValue, SimulationRequirements> map) {
+		simRequirementsMap.putAll(map);
+	}
+}
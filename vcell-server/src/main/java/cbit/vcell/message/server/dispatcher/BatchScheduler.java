@@ -16,8 +16,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -105,13 +103,17 @@ public class BatchScheduler {
 	}
 	
 	public static class SchedulerDecisions {
-		private Map<ActiveJob,SchedulerDecisionType> decisionTypeMap = new HashMap<ActiveJob,SchedulerDecisionType>();
-		private Map<ActiveJob,Integer> ordinalMap = new HashMap<ActiveJob,Integer>();
+		private static final Integer UNASSIGNED_ORDINAL = Integer.valueOf(-1);
+		private final Map<ActiveJob,SchedulerDecisionType> decisionTypeMap;
+		private final Map<ActiveJob,Integer> ordinalMap;
 		
 		public SchedulerDecisions(List<ActiveJob> activeJobsAllSites) {
+			int capacity = Math.max(16, (int)(activeJobsAllSites.size() / 0.75f) + 1);
+			this.decisionTypeMap = new HashMap<ActiveJob,SchedulerDecisionType>(capacity);
+			this.ordinalMap = new HashMap<ActiveJob,Integer>(capacity);
 			for (ActiveJob activeJob : activeJobsAllSites) {
 				this.decisionTypeMap.put(activeJob,SchedulerDecisionType.UNKNOWN);
-				this.ordinalMap.put(activeJob, new Integer(-1));
+				this.ordinalMap.put(activeJob, UNASSIGNED_ORDINAL);
 			}
 		}
 		
@@ -195,6 +197,46 @@ public class BatchScheduler {
 	}
 	
 
+	/**
+	 * waiting job with its owner's quota info and the running job count used for sorting
+	 */
+	private static class WaitingJob {
+		final ActiveJob activeJob;
+		final UserQuotaInfo userQuotaInfo;
+		int numRunningJobs;
+
+		WaitingJob(ActiveJob activeJob, UserQuotaInfo userQuotaInfo) {
+			this.activeJob = activeJob;
+			this.userQuotaInfo = userQuotaInfo;
+		}
+	}
+
+	private static final Comparator<WaitingJob> WAITING_JOB_PRIORITY = new Comparator<WaitingJob>() {
+		@Override
+		public int compare(WaitingJob o1, WaitingJob o2) {
+			//
+			// user with fewer jobs running should take precedence
+			//
+			if (o1.numRunningJobs != o2.numRunningJobs){
+				return Integer.compare(o1.numRunningJobs, o2.numRunningJobs);
+			}
+			//
+			// ODEs take precedence over PDEs (they should be faster)
+			//
+			if (o1.activeJob.isPDE != o2.activeJob.isPDE){
+				if (o1.activeJob.isPDE){
+					return 1;
+				}else{
+					return -1;
+				}
+			}
+			//
+			// both are odes or both are pdes ... sort by waiting time
+			//
+			return Long.compare(o1.activeJob.submitTimestamp, o2.activeJob.submitTimestamp);
+		}
+	};
+
 /**
  * BatchScheduler constructor comment.
  */
@@ -221,11 +263,15 @@ public static final int getMaxPdeJobsPerUser() {
  * Creation date: (5/11/2006 9:32:58 AM)
  */
 public static SchedulerDecisions schedule(List<ActiveJob> activeJobsAllSites, PartitionStatistics partitionStatistics, int userQuotaOde, int userQuotaPde, VCellServerID systemID,User[] quotaExemptUsers) {
-	Hashtable<User, UserQuotaInfo> userQuotaInfoMap = new Hashtable<User, UserQuotaInfo>();
+	HashMap<User, UserQuotaInfo> userQuotaInfoMap = new HashMap<User, UserQuotaInfo>();
+	SchedulerDecisions schedulerDecisions = new SchedulerDecisions(activeJobsAllSites);
 	//
-	// gather statistics about all currently active jobs across all sites (per user and aggregate).
+	// single pass over all active jobs across all sites:
+	//   gather statistics about running jobs (per user and aggregate) and
+	//   partition into inactive, already running/queued and waiting jobs.
 	//
 	int numPendingJobsAllSites = 0;
+	ArrayList<WaitingJob> waitingJobList = new ArrayList<WaitingJob>();
 	for (ActiveJob activeJob : activeJobsAllSites) {
 
 		UserQuotaInfo userQuotaInfo = userQuotaInfoMap.get(activeJob.simulationOwner);
@@ -235,12 +281,16 @@ public static SchedulerDecisions schedule(List<ActiveJob> activeJobsAllSites, Pa
 		}
 
 		if (!activeJob.schedulerStatus.isActive()) {
+			schedulerDecisions.setInactive(activeJob);
 			continue;
 		}
 		
 		if (activeJob.schedulerStatus.isWaiting()) {
+			waitingJobList.add(new WaitingJob(activeJob, userQuotaInfo));
 			continue;  // we only do statistics on running jobs;
 		}
+
+		schedulerDecisions.setAlreadyRunningOrQueued(activeJob);
 		
 		if (activeJob.schedulerStatus.isDispatched() || activeJob.schedulerStatus.isQueued()) {
 			numPendingJobsAllSites++;
@@ -254,105 +304,13 @@ public static SchedulerDecisions schedule(List<ActiveJob> activeJobsAllSites, Pa
 	}
 	
 	//
-	// gather all waiting jobs (all sites)
-	//
-	SchedulerDecisions schedulerDecisions = new SchedulerDecisions(activeJobsAllSites);
-	ArrayList<ActiveJob> prioritizedJobList = new ArrayList<ActiveJob>(activeJobsAllSites);
-	
-	for (ActiveJob activeJob : activeJobsAllSites) {
-
-		if (!activeJob.schedulerStatus.isActive()) {
-			schedulerDecisions.setInactive(activeJob);
-			prioritizedJobList.remove(activeJob);
-			continue;
-		}
-
-		if (!activeJob.schedulerStatus.isWaiting()) {
-			schedulerDecisions.setAlreadyRunningOrQueued(activeJob);
-			prioritizedJobList.remove(activeJob);
-			continue;
-		}
-	}
-
-	//
-	// sort requested jobs according to priority
-	//
-	Collections.sort(prioritizedJobList,new Comparator<ActiveJob>(){
-
-		@Override
-		public int compare(ActiveJob o1, ActiveJob o2) {
-			//
-			// user with fewer jobs running should take precedence
-			//
-			UserQuotaInfo userQuotaInfo1 = userQuotaInfoMap.get(o1.simulationOwner);
-			UserQuotaInfo userQuotaInfo2 = userQuotaInfoMap.get(o2.simulationOwner);
-			if (userQuotaInfo1.getNumRunningJobs() != userQuotaInfo2.getNumRunningJobs()){
-				return Integer.compare(userQuotaInfo1.getNumRunningJobs(), userQuotaInfo2.getNumRunningJobs());
-			}
-			//
-			// ODEs take precedence over PDEs (they should be faster)
-			//
-			if (o1.isPDE != o2.isPDE){
-				if (o1.isPDE){
-					return 1;
-				}else{
-					return -1;
-				}
-			}
-			//
-			// both are odes or both are pdes ... sort by waiting time
-			//
-			return Long.compare(o1.submitTimestamp, o2.submitTimestamp);
-		}
-		
-	});
-	
-	//
-	// set the job priority (ineligible jobs keep an ordinal of -1)
+	// sort requested jobs according to priority (running job counts are frozen before the quotas are applied)
 	//
-	int index=0;
-	for (ActiveJob activeJob : prioritizedJobList) {
-		schedulerDecisions.setOrdinal(activeJob, index);
-		index++;
+	for (WaitingJob waitingJob : waitingJobList) {
+		waitingJob.numRunningJobs = waitingJob.userQuotaInfo.getNumRunningJobs();
 	}
+	Collections.sort(waitingJobList, WAITING_JOB_PRIORITY);
 	
-	
-	//
-	// enforce quota for each user (remove jobs which exceed user quotas)
-	//
-	HashSet<User> users = new HashSet<User>();
-	users.addAll(userQuotaInfoMap.keySet());
-	for (User user : users){
-		UserQuotaInfo userQuotaInfo = userQuotaInfoMap.get(user);
-		int numDesiredRunningPDEsAllSites = userQuotaInfo.numPdeRunningJobsAllSites;
-		int numDesiredRunningODEsAllSites = userQuotaInfo.numOdeRunningJobsAllSites;
-		
-		//
-		// go full list and remove any jobs that would exceed this users quota
-		//
-		Iterator<ActiveJob> prioritizedJobIter = prioritizedJobList.iterator();
-		while (prioritizedJobIter.hasNext()){
-			ActiveJob waitingJob = prioritizedJobIter.next();
-			if (waitingJob.simulationOwner.equals(user)){
-				if (waitingJob.isPDE){
-					//(quotaExemptUsers==null?(userQuotaPde:Arrays.asList(quotaExemptUsers).contains(user)?Integer.MAX_VALUE:userQuotaPde)
-					if (numDesiredRunningPDEsAllSites < (quotaExemptUsers==null?userQuotaPde:(Arrays.asList(quotaExemptUsers).contains(user)?Integer.MAX_VALUE:userQuotaPde))){
-						numDesiredRunningPDEsAllSites++;
-					}else{
-						schedulerDecisions.setHeldUserQuotaPDE(waitingJob);
-						prioritizedJobIter.remove();
-					}
-				}else{
-					if (numDesiredRunningODEsAllSites < (quotaExemptUsers==null?userQuotaOde:(Arrays.asList(quotaExemptUsers).contains(user)?Integer.MAX_VALUE:userQuotaOde))){
-						numDesiredRunningODEsAllSites++;
-					}else{
-						schedulerDecisions.setHeldUserQuotaODE(waitingJob);
-						prioritizedJobIter.remove();
-					}
-				}
-			}
-		}
-	}
 	//
 	// each time allocate 50% of available estimated job slots.
 	// assume that each job takes 2 cpus (don't want to wait on Slurm queue)
@@ -361,10 +319,42 @@ public static SchedulerDecisions schedule(List<ActiveJob> activeJobsAllSites, Pa
 	int inUseCPUs = partitionStatistics.numCpusAllocated;
 	int cpusAvailable = Math.max(0, partitionStatistics.numCpusTotal - inUseCPUs);
 	int numJobsSlotsAvailable = Math.max(0, cpusAvailable - numPendingJobsAllSites);
-	
-	for (int i=0;i<prioritizedJobList.size();i++) {
-		ActiveJob nextWaitingJob = prioritizedJobList.get(i);
-		if (i<numJobsSlotsAvailable) {
+
+	HashSet<User> quotaExemptUserSet = new HashSet<User>();
+	if (quotaExemptUsers != null) {
+		quotaExemptUserSet.addAll(Arrays.asList(quotaExemptUsers));
+	}
+
+	//
+	// in priority order: set the job priority (ineligible jobs keep an ordinal of -1),
+	// enforce quota for each user (hold jobs which exceed user quotas, the user's counts
+	// grow with every accepted job) and hand the first available slots to the remaining jobs.
+	//
+	int ordinal = 0;
+	int numAcceptedJobs = 0;
+	for (WaitingJob waitingJob : waitingJobList) {
+		ActiveJob nextWaitingJob = waitingJob.activeJob;
+		UserQuotaInfo userQuotaInfo = waitingJob.userQuotaInfo;
+		schedulerDecisions.setOrdinal(nextWaitingJob, ordinal++);
+
+		boolean bQuotaExempt = quotaExemptUserSet.contains(nextWaitingJob.simulationOwner);
+		if (nextWaitingJob.isPDE){
+			if (bQuotaExempt || userQuotaInfo.numPdeRunningJobsAllSites < userQuotaPde){
+				userQuotaInfo.numPdeRunningJobsAllSites++;
+			}else{
+				schedulerDecisions.setHeldUserQuotaPDE(nextWaitingJob);
+				continue;
+			}
+		}else{
+			if (bQuotaExempt || userQuotaInfo.numOdeRunningJobsAllSites < userQuotaOde){
+				userQuotaInfo.numOdeRunningJobsAllSites++;
+			}else{
+				schedulerDecisions.setHeldUserQuotaODE(nextWaitingJob);
+				continue;
+			}
+		}
+
+		if (numAcceptedJobs<numJobsSlotsAvailable) {
 			//
 			// trim global prioritized list of jobs to be submitted across all sites.
 			// only submit the jobs (of the N global jobs) which are from this site.
@@ -378,6 +368,7 @@ public static SchedulerDecisions schedule(List<ActiveJob> activeJobsAllSites, Pa
 		}else {
 			schedulerDecisions.setHeldClusterResources(nextWaitingJob);
 		}
+		numAcceptedJobs++;
 	}
 
 	schedulerDecisions.verify(partitionStatistics);
@@ -128,6 +128,10 @@ public class SimulationDispatcher extends ServiceProvider {
 	private SimulationDispatcherEngine simDispatcherEngine = new SimulationDispatcherEngine();
 
 	private DispatchThread dispatchThread = null;
+	/**
+	 * in-memory active job index, only used in incremental dispatch mode ({@link PropertyLoader#dispatcherIncremental})
+	 */
+	private ActiveJobIndex activeJobIndex = null;
 	private SimulationMonitor simMonitor = null;
 	private VCMessageSession dispatcherQueueSession_int = null;
 	private VCMessageSession clientStatusTopicSession_int = null;
@@ -183,13 +187,7 @@ public class SimulationDispatcher extends ServiceProvider {
 
 			// wake up dispatcher thread
 			if (dispatchThread!=null){
-				try {
-					synchronized (dispatchThread.notifyObject){
-						dispatchThread.notifyObject.notify();
-					}
-				}catch (IllegalMonitorStateException e){
-					lg.error("failed to notify dispatchThread",e);
-				}
+				dispatchThread.wakeUp();
 			}
 			SimulationStatus simulationStatus = simulationDatabase.getSimulationStatus(vcSimulationIdentifier.getSimulationKey());
 			if (lg.isDebugEnabled()) {
@@ -279,6 +277,10 @@ public class SimulationDispatcher extends ServiceProvider {
 	public class DispatchThread extends Thread {
 
 		Object notifyObject = new Object();
+		/**
+		 * set by {@link #wakeUp()} so that a request arriving during a scheduling pass is not lost
+		 */
+		private boolean bWakeUpRequested = false;
 
 		public DispatchThread() {
 			super();
@@ -286,6 +288,50 @@ public class SimulationDispatcher extends ServiceProvider {
 			setName("Simulation Dispatch Thread");
 		}
 
+		void wakeUp() {
+			synchronized (notifyObject) {
+				bWakeUpRequested = true;
+				notifyObject.notify();
+			}
+		}
+
+		/**
+		 * active jobs of all sites, from the database or (incremental mode) from the active job index.
+		 * In incremental mode an empty array is returned when no job is waiting, so an idle dispatcher
+		 * neither queries the database nor the batch system.
+		 */
+		private SimulationJobStatus[] getActiveJobsAllSites() throws DataAccessException, SQLException {
+			if (activeJobIndex == null) {
+				return simulationDatabase.getActiveJobs(null);
+			}
+			long currentTimeMS = System.currentTimeMillis();
+			if (activeJobIndex.needsReconciliation(currentTimeMS)) {
+				activeJobIndex.reconcile(simulationDatabase.getActiveJobs(null), currentTimeMS);
+			}
+			if (!activeJobIndex.hasWaitingJobs()) {
+				return new SimulationJobStatus[0];
+			}
+			return activeJobIndex.getActiveJobs();
+		}
+
+		/**
+		 * simulation requirements, in incremental mode only simulations new to the index are queried.
+		 */
+		private Map<KeyValue,SimulationRequirements> getSimulationRequirements(Set<KeyValue> simKeys) throws SQLException {
+			if (activeJobIndex == null) {
+				return simulationDatabase.getSimulationRequirements(simKeys);
+			}
+			Map<KeyValue,SimulationRequirements> simulationRequirementsMap = activeJobIndex.getSimulationRequirements(simKeys);
+			if (simulationRequirementsMap.size() < simKeys.size()) {
+				Set<KeyValue> missingSimKeys = new LinkedHashSet<KeyValue>(simKeys);
+				missingSimKeys.removeAll(simulationRequirementsMap.keySet());
+				Map<KeyValue,SimulationRequirements> queriedRequirementsMap = simulationDatabase.getSimulationRequirements(missingSimKeys);
+				activeJobIndex.putSimulationRequirements(queriedRequirementsMap);
+				simulationRequirementsMap.putAll(queriedRequirementsMap);
+			}
+			return simulationRequirementsMap;
+		}
+
 		public void run() {
 			reloadSpecialUsers();
 			while (true) {
@@ -295,7 +341,7 @@ public class SimulationDispatcher extends ServiceProvider {
 				boolean bDispatchedAnyJobs = false;
 
 				try {
-					final SimulationJobStatus[] allActiveJobsAllSites = simulationDatabase.getActiveJobs(null);
+					final SimulationJobStatus[] allActiveJobsAllSites = getActiveJobsAllSites();
 					Set<KeyValue> simKeys = new LinkedHashSet<KeyValue>(); //Linked hash set maintains insertion order
 					for (SimulationJobStatus simJobStatus : allActiveJobsAllSites){
 						KeyValue simKey = simJobStatus.getVCSimulationIdentifier().getSimulationKey();
@@ -326,7 +372,7 @@ public class SimulationDispatcher extends ServiceProvider {
 						int maxPdePerUser = BatchScheduler.getMaxPdeJobsPerUser();
 						VCellServerID serverID = VCellServerID.getSystemServerID();
 
-						final Map<KeyValue,SimulationRequirements> simulationRequirementsMap = simulationDatabase.getSimulationRequirements(simKeys);
+						final Map<KeyValue,SimulationRequirements> simulationRequirementsMap = getSimulationRequirements(simKeys);
 						ArrayList<BatchScheduler.ActiveJob> activeJobs = new ArrayList<BatchScheduler.ActiveJob>();
 						for (SimulationJobStatus simJobStatus : allActiveJobsAllSites) {
 							SimulationRequirements simulationRequirements = simulationRequirementsMap.get(simJobStatus.getVCSimulationIdentifier().getSimulationKey());
@@ -370,18 +416,27 @@ public class SimulationDispatcher extends ServiceProvider {
 					}
 				} catch (Exception ex) {
 					lg.error(ex.getMessage(), ex);
+					if (activeJobIndex != null) {
+						activeJobIndex.requestReconciliation();
+					}
 				}
 
 				// if there are no messages or no qualified jobs or exceptions, sleep for a few seconds while
-				// this will be interrupted if there is a start request.
+				// this will be interrupted if there is a start request (or, in incremental mode, a job state change).
 				if (!bDispatchedAnyJobs){
 					synchronized (notifyObject) {
 						try {
 							long waitTime = 5 * MessageConstants.SECOND_IN_MS;
-							notifyObject.wait(waitTime);
+							if (activeJobIndex != null) {
+								waitTime = activeJobIndex.getIdleWaitMS(waitTime, System.currentTimeMillis());
+							}
+							if (!bWakeUpRequested) {
+								notifyObject.wait(waitTime);
+							}
 						} catch (InterruptedException ex) {
 							lg.debug("Dispatch thread wait interrupted", ex);
 						}
+						bWakeUpRequested = false;
 					}
 				}else {
 					try { 
@@ -534,6 +589,10 @@ public class SimulationDispatcher extends ServiceProvider {
 					KeyValue simId = activeJobStatus.getVCSimulationIdentifier().getSimulationKey();
 					int jobIndex = activeJobStatus.getJobIndex();
 					SimulationStateMachine ssm = simDispatcherEngine.getSimulationStateMachine(simId, jobIndex);
+					if (SimulationStateMachine.isEnsembleDependent(activeJobStatus)){
+						// nothing runs for this job, it ends with job 0 of its scan (a stalled job 0 times it out as well)
+						ssm = simDispatcherEngine.getSimulationStateMachine(simId, 0);
+					}
 					long timeSinceLastUpdateMS = currentTimeMS - ssm.getSolverProcessTimestamp(); 
 
 					//
@@ -628,6 +687,20 @@ public class SimulationDispatcher extends ServiceProvider {
 		this.dispatcherQueueSession_int = vcMessagingService_int.createProducerSession();
 		this.clientStatusTopicSession_int = vcMessagingService_int.createProducerSession();
 
+		//
+		// incremental mode: schedule from an in-memory job index fed by the state machines, reconcile with the database periodically
+		//
+		if (PropertyLoader.getBooleanProperty(PropertyLoader.dispatcherIncremental, false)) {
+			long reconcileIntervalMS = PropertyLoader.getIntProperty(PropertyLoader.dispatcherReconcileSeconds, 60) * (long)MessageConstants.SECOND_IN_MS;
+			this.activeJobIndex = new ActiveJobIndex(reconcileIntervalMS, () -> {
+				if (dispatchThread != null) {
+					dispatchThread.wakeUp();
+				}
+			});
+			simDispatcherEngine.setActiveJobIndex(activeJobIndex);
+			lg.info("incremental dispatch enabled, reconciling active jobs with database every "+(reconcileIntervalMS/1000)+" s");
+		}
+
 		this.dispatchThread = new DispatchThread();
 		this.dispatchThread.start();
 
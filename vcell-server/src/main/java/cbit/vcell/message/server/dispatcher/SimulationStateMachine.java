@@ -39,6 +39,7 @@ import cbit.vcell.solver.SimulationJob;
 import cbit.vcell.solver.SolverDescription;
 import cbit.vcell.solver.VCSimulationDataIdentifier;
 import cbit.vcell.solver.VCSimulationIdentifier;
+import cbit.vcell.solver.ode.ODEEnsembleJobSolver;
 import cbit.vcell.solver.server.SimulationMessage;
 
 public class SimulationStateMachine {
@@ -64,6 +65,11 @@ public class SimulationStateMachine {
 	 * to transient failure or system restart
 	 */
 	private long solverProcessTimestamp;
+
+	/**
+	 * job status last written to the database by an event handler, until taken by {@link #takeWrittenJobStatus()}
+	 */
+	private SimulationJobStatus writtenJobStatus = null;
 	
 	public SimulationStateMachine(KeyValue simKey, int jobIndex){
 		this.simKey = simKey;
@@ -71,6 +77,24 @@ public class SimulationStateMachine {
 		updateSolverProcessTimestamp();
 	}
 
+	/**
+	 * @return the job status written by the event handlers since the last call (null if none), lets callers track the
+	 * job without reading it back from the database.
+	 */
+	public synchronized SimulationJobStatus takeWrittenJobStatus() {
+		SimulationJobStatus jobStatus = writtenJobStatus;
+		writtenJobStatus = null;
+		return jobStatus;
+	}
+
+	/**
+	 * @return true if the job was dispatched along with job 0 of its ensemble scan (see onDispatch()) and waits for it to end.
+	 */
+	public static boolean isEnsembleDependent(SimulationJobStatus jobStatus) {
+		return jobStatus.getJobIndex() > 0 && jobStatus.getSchedulerStatus().isDispatched()
+				&& SimulationMessage.MESSAGE_JOB_DISPATCHED_ENSEMBLE.equals(jobStatus.getSimulationMessage());
+	}
+
 	/*
 	public SimulationStateMachine(SimulationJobStatus[] simJobStatus) {
 		this(simJobStatus[0].getVCSimulationIdentifier().getSimulationKey(),simJobStatus[0].getJobIndex());
@@ -365,11 +389,13 @@ public class SimulationStateMachine {
 					runningStateInfo = new RunningStateInfo(progress,timepoint);
 				}
 				simulationDatabase.updateSimulationJobStatus(newJobStatus,runningStateInfo);
+				writtenJobStatus = newJobStatus;
 				StatusMessage msgForClient = new StatusMessage(newJobStatus, userName, progress, timepoint);
 				msgForClient.sendToClient(session);
 				if (lg.isTraceEnabled()) lg.trace("Send status to client: " + msgForClient);
 			} else {
 				simulationDatabase.updateSimulationJobStatus(newJobStatus);
+				writtenJobStatus = newJobStatus;
 				StatusMessage msgForClient = new StatusMessage(newJobStatus, userName, null, null);
 				msgForClient.sendToClient(session);
 				if (lg.isTraceEnabled()) lg.trace("Send status to client: " + msgForClient);
@@ -382,6 +408,7 @@ public class SimulationStateMachine {
 				runningStateInfo = new RunningStateInfo(progress,timepoint);
 			}
 			simulationDatabase.updateSimulationJobStatus(oldSimulationJobStatus,runningStateInfo);
+			writtenJobStatus = oldSimulationJobStatus;
 			StatusMessage msgForClient = new StatusMessage(oldSimulationJobStatus, userName, progress, timepoint);
 			msgForClient.sendToClient(session);
 			if (lg.isTraceEnabled()) lg.trace("Send status to client: " + msgForClient);
@@ -448,6 +475,7 @@ public class SimulationStateMachine {
 				newTaskID, SimulationMessage.MESSAGE_JOB_WAITING, newQueueStatus, newExeStatus);
 		
 		simulationDatabase.insertSimulationJobStatus(newJobStatus);
+		writtenJobStatus = newJobStatus;
 //		addStateMachineTransition(new StateMachineTransition(new StartStateMachineEvent(newTaskID), oldSimulationJobStatus, newJobStatus));
 			
 		StatusMessage message = new StatusMessage(newJobStatus, user.getName(), null, null);
@@ -465,6 +493,33 @@ public class SimulationStateMachine {
 			throw new RuntimeException("Can't start, simulation[" + vcSimID + "] job [" + jobIndex + "] task [" + taskID + "] is already dispatched ("+oldSimulationJobStatus.getSchedulerStatus().getDescription()+")");
 		}
 
+		if (jobIndex > 0 && ODEEnsembleJobSolver.isEnsembleSimulation(simulation)) {
+			//
+			// job 0 solves the whole scan (ODEEnsembleJobSolver), nothing is sent to the batch system for this job,
+			// it ends when job 0 ends (see onEnsembleLeaderDone()).
+			//
+			Date currentDate = new Date();
+			SimulationQueueEntryStatus newQueueStatus = new SimulationQueueEntryStatus(currentDate, PRIORITY_DEFAULT, SimulationJobStatus.SimulationQueueID.QUEUE_ID_SIMULATIONJOB);
+			SimulationExecutionStatus newSimExeStatus = new SimulationExecutionStatus(null,  null, new Date(), null, false, null);
+			SimulationJobStatus newSimJobStatus = new SimulationJobStatus(VCellServerID.getSystemServerID(),vcSimID,jobIndex,
+					oldSimulationJobStatus.getSubmitDate(),SchedulerStatus.DISPATCHED,taskID,
+					SimulationMessage.MESSAGE_JOB_DISPATCHED_ENSEMBLE,
+					newQueueStatus,newSimExeStatus);
+
+			simulationDatabase.updateSimulationJobStatus(newSimJobStatus);
+			writtenJobStatus = newSimJobStatus;
+
+			StatusMessage message = new StatusMessage(newSimJobStatus, simulation.getVersion().getOwner().getName(), null, null);
+			message.sendToClient(session);
+
+			// job 0 may have ended already (this job was held back by the dispatch limits)
+			SimulationJobStatus leaderJobStatus = simulationDatabase.getLatestSimulationJobStatus(simKey, 0);
+			if (leaderJobStatus != null && leaderJobStatus.getSchedulerStatus().isDone()) {
+				onEnsembleLeaderDone(leaderJobStatus, simulationDatabase, session);
+			}
+			return;
+		}
+
 		FieldDataIdentifierSpec[] fieldDataIdentifierSpecs = simulationDatabase.getFieldDataIdentifierSpecs(simulation);
 		//Check if user wants long running sims activated in SlurmProxy.generateScript(...)
 		//only happens if user is allowed to be power user (entry in vc_specialusers table) and
@@ -504,6 +559,7 @@ public class SimulationStateMachine {
 					newQueueStatus,newSimExeStatus);
 			
 			simulationDatabase.updateSimulationJobStatus(newSimJobStatus);
+			writtenJobStatus = newSimJobStatus;
 			
 			StatusMessage message = new StatusMessage(newSimJobStatus, simulation.getVersion().getOwner().getName(), null, null);
 			message.sendToClient(session);
@@ -524,6 +580,7 @@ public class SimulationStateMachine {
 			simTaskMessage.sendSimulationTask(session);
 			
 			simulationDatabase.updateSimulationJobStatus(newSimJobStatus);
+			writtenJobStatus = newSimJobStatus;
 			
 			StatusMessage message = new StatusMessage(newSimJobStatus, simulation.getVersion().getOwner().getName(), null, null);
 			message.sendToClient(session);
@@ -533,6 +590,39 @@ public class SimulationStateMachine {
 
 	}
 
+	/**
+	 * ends a job dispatched along with job 0 of its ensemble scan (see onDispatch()) the way job 0 ended, job 0 wrote the
+	 * results of all jobs.  Nothing is done if this job isn't waiting for job 0 (anymore).
+	 */
+	public synchronized void onEnsembleLeaderDone(SimulationJobStatus leaderJobStatus, SimulationDatabase simulationDatabase, VCMessageSession session) throws VCMessagingException, DataAccessException, SQLException {
+		updateSolverProcessTimestamp();
+		SimulationJobStatus oldSimulationJobStatus = simulationDatabase.getLatestSimulationJobStatus(simKey, jobIndex);
+		if (oldSimulationJobStatus == null || !isEnsembleDependent(oldSimulationJobStatus)) {
+			return;
+		}
+		SimulationExecutionStatus leaderExeStatus = leaderJobStatus.getSimulationExecutionStatus();
+		Date startDate = (leaderExeStatus != null) ? leaderExeStatus.getStartDate() : null;
+		String computeHost = (leaderExeStatus != null) ? leaderExeStatus.getComputeHost() : null;
+		boolean hasData = leaderExeStatus != null && leaderExeStatus.hasData();
+		Date endDate = new Date();
+		SimulationExecutionStatus newExeStatus = new SimulationExecutionStatus(startDate, computeHost, endDate, endDate, hasData, null);
+
+		SimulationQueueEntryStatus oldQueueStatus = oldSimulationJobStatus.getSimulationQueueEntryStatus();
+		Date queueDate = (oldQueueStatus != null) ? oldQueueStatus.getQueueDate() : null;
+		int queuePriority = (oldQueueStatus != null) ? oldQueueStatus.getQueuePriority() : PRIORITY_DEFAULT;
+		SimulationQueueEntryStatus newQueueStatus = new SimulationQueueEntryStatus(queueDate, queuePriority, SimulationJobStatus.SimulationQueueID.QUEUE_ID_NULL);
+
+		SimulationJobStatus newJobStatus = new SimulationJobStatus(oldSimulationJobStatus.getServerID(), oldSimulationJobStatus.getVCSimulationIdentifier(), jobIndex,
+				oldSimulationJobStatus.getSubmitDate(), leaderJobStatus.getSchedulerStatus(), oldSimulationJobStatus.getTaskID(),
+				leaderJobStatus.getSimulationMessage(), newQueueStatus, newExeStatus);
+
+		simulationDatabase.updateSimulationJobStatus(newJobStatus);
+		writtenJobStatus = newJobStatus;
+
+		StatusMessage message = new StatusMessage(newJobStatus, oldSimulationJobStatus.getVCSimulationIdentifier().getOwner().getName(), null, null);
+		message.sendToClient(session);
+	}
+
 	public synchronized void onStopRequest(User user, SimulationJobStatus simJobStatus, SimulationDatabase simulationDatabase, VCMessageSession session) throws VCMessagingException, DataAccessException, SQLException {
 		updateSolverProcessTimestamp();
 		
@@ -571,6 +661,7 @@ public class SimulationStateMachine {
 			session.sendTopicMessage(VCellTopic.ServiceControlTopic, msg);	
 			
 			simulationDatabase.updateSimulationJobStatus(newJobStatus);
+			writtenJobStatus = newJobStatus;
 //			addStateMachineTransition(new StateMachineTransition(new StopStateMachineEvent(taskID), simJobStatus, newJobStatus));
 
 			// update client
@@ -634,6 +725,7 @@ public class SimulationStateMachine {
 				taskID, SimulationMessage.jobFailed(failureMessage), newQueueStatus, newExeStatus);
 		
 		simulationDatabase.updateSimulationJobStatus(newJobStatus);
+		writtenJobStatus = newJobStatus;
 //		addStateMachineTransition(new StateMachineTransition(new AbortStateMachineEvent(taskID, failureMessage), oldJobStatus, newJobStatus));
 
 		String userName = VCMessagingConstants.USERNAME_PROPERTY_VALUE_ALL;
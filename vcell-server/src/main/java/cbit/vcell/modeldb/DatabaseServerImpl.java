@@ -318,13 +318,17 @@ public VersionableFamily getAllReferences(User user, VersionableType vType, KeyV
 
 /**
  * This method was created in VisualAge.
- * @return GeometryInfo
+ * @return GeometryInfo (never null)
  * @param key KeyValue
  * @exception org.vcell.util.DataAccessException The exception description.
- * @exception java.rmi.RemoteException The exception description.
+ * @exception org.vcell.util.ObjectNotFoundException if there is no BioModel 'key' or 'user' may not read it.
  */
 public BioModelInfo getBioModelInfo(User user, KeyValue key) throws DataAccessException, ObjectNotFoundException {
-	return ((BioModelInfo[])getVersionInfos(user, key, VersionableType.BioModelMetaData, true, true))[0];
+	BioModelInfo[] bioModelInfos = (BioModelInfo[])getVersionInfos(user, key, VersionableType.BioModelMetaData, true, true);
+	if (bioModelInfos.length == 0){
+		throw new ObjectNotFoundException("BioModel("+key+") not found for user="+user);
+	}
+	return bioModelInfos[0];
 }
 
 
@@ -0,0 +1,199 @@
+package cbit.vcell.message.jms;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+
+import cbit.vcell.message.SimpleMessagingDelegate;
+import cbit.vcell.message.VCMessageSession;
+import cbit.vcell.message.VCMessagingException;
+import cbit.vcell.message.VCMessagingInvocationTargetException;
+import cbit.vcell.message.VCPooledQueueConsumer;
+import cbit.vcell.message.VCQueueConsumer;
+import cbit.vcell.message.VCRpcMessageHandler;
+import cbit.vcell.message.VCRpcRequest;
+import cbit.vcell.message.VCRpcRequest.RpcServiceType;
+import cbit.vcell.message.VCellQueue;
+import cbit.vcell.message.jms.activeMQ.VCMessagingServiceEmbedded;
+import cbit.vcell.resource.PropertyLoader;
+
+public class RpcClientJmsTest {
+
+	private final static VCellQueue rpcQueue = new VCellQueue("RpcClientJmsTestQueue");
+	private final static VCellQueue unservedQueue = new VCellQueue("RpcClientJmsTestUnservedQueue");
+	private final static User user = new User("tester", new KeyValue("17"));
+
+	private static File blobDir;
+	private static VCMessagingServiceEmbedded messagingService;
+	private static VCPooledQueueConsumer pooledQueueConsumer;
+
+	public static class TestRpcServer {
+		public int add(int a, int b){
+			return a + b;
+		}
+		public double[] fill(int length, double value){
+			double[] values = new double[length];
+			java.util.Arrays.fill(values, value);
+			return values;
+		}
+		public double[] noise(int length, long seed){
+			java.util.Random random = new java.util.Random(seed);
+			double[] values = new double[length];
+			for (int i = 0; i < length; i++){
+				values[i] = random.nextDouble();
+			}
+			return values;
+		}
+		public double[] slowNoise(int length, long seed, long sleepMS) throws InterruptedException {
+			Thread.sleep(sleepMS);
+			return noise(length, seed);
+		}
+		public int fail(int a){
+			throw new IllegalArgumentException("failed on " + a);
+		}
+	}
+
+	@BeforeClass
+	public static void startBroker() throws Exception {
+		blobDir = Files.createTempDirectory("RpcClientJmsTest").toFile();
+		System.setProperty(PropertyLoader.jmsBlobMessageUseMongo, "false");
+		System.setProperty(PropertyLoader.jmsBlobMessageTempDir, blobDir.getAbsolutePath());
+		System.setProperty(PropertyLoader.jmsBlobMessageMinSize, "100000");
+		messagingService = new VCMessagingServiceEmbedded();
+		messagingService.setConfiguration(new SimpleMessagingDelegate(), null, -1);
+		VCRpcMessageHandler rpcMessageHandler = new VCRpcMessageHandler(new TestRpcServer(), rpcQueue);
+		pooledQueueConsumer = new VCPooledQueueConsumer(rpcMessageHandler, 4, messagingService.createProducerSession());
+		pooledQueueConsumer.initThreadPool();
+		messagingService.addMessageConsumer(new VCQueueConsumer(rpcQueue, pooledQueueConsumer, null, "RpcClientJmsTest consumer", 100));
+	}
+
+	@AfterClass
+	public static void stopBroker() throws Exception {
+		pooledQueueConsumer.shutdownAndAwaitTermination();
+		messagingService.close();
+	}
+
+	@Test
+	public void testManyRequestsInFlight() throws Exception {
+		VCMessageSession session = messagingService.createProducerSession();
+		try {
+			List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+			for (int i = 0; i < 100; i++){
+				VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "add", new Object[] { i, 1000 });
+				futures.add(session.sendRpcMessageAsync(rpcQueue, request, true, 20000, null, null, null));
+			}
+			for (int i = 0; i < futures.size(); i++){
+				Assert.assertEquals(i + 1000, futures.get(i).get());
+			}
+			// the blocking call goes through the same client
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "add", new Object[] { 2, 3 });
+			Assert.assertEquals(5, session.sendRpcMessage(rpcQueue, request, true, 20000, null, null, null));
+			Assert.assertEquals(0, messagingService.getRpcClient().getNumPendingRequests());
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testEncodedReply() throws Exception {
+		VCMessageSession session = messagingService.createProducerSession();
+		try {
+			// compresses well below the blob threshold
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "fill", new Object[] { 50000, 2.5 });
+			double[] values = (double[])session.sendRpcMessageAsync(rpcQueue, request, true, 20000, null, null, null).get();
+			Assert.assertEquals(50000, values.length);
+			Assert.assertEquals(2.5, values[values.length - 1], 0);
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testBlobReply() throws Exception {
+		VCMessageSession session = messagingService.createProducerSession();
+		try {
+			// still too large after encoding, sent as an (encoded) blob file
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "noise", new Object[] { 50000, 5L });
+			double[] values = (double[])session.sendRpcMessageAsync(rpcQueue, request, true, 20000, null, null, null).get();
+			Assert.assertArrayEquals(new TestRpcServer().noise(50000, 5L), values, 0);
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testUnclaimedBlobReplyRemoved() throws Exception {
+		RpcClientJms rpcClient = new RpcClientJms(messagingService, 2, 1000);
+		try {
+			// the reply (a blob) arrives after the caller gave up
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "slowNoise", new Object[] { 50000, 5L, 500L });
+			CompletableFuture<Object> future = rpcClient.sendRpcMessageAsync(rpcQueue, request, true, 20000, null, null, null);
+			future.cancel(false);
+			long endTime = System.currentTimeMillis() + 10000;
+			while (rpcClient.getNumUnmatchedReplies() == 0 && System.currentTimeMillis() < endTime){
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(1, rpcClient.getNumUnmatchedReplies());
+			Assert.assertEquals(1, blobDir.listFiles().length);
+
+			while ((rpcClient.getNumUnmatchedReplies() > 0 || blobDir.listFiles().length > 0) && System.currentTimeMillis() < endTime){
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, rpcClient.getNumUnmatchedReplies());
+			Assert.assertEquals(0, blobDir.listFiles().length);
+		} finally {
+			rpcClient.close();
+		}
+	}
+
+	@Test
+	public void testRemoteException() throws Exception {
+		VCMessageSession session = messagingService.createProducerSession();
+		try {
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "fail", new Object[] { 7 });
+			try {
+				session.sendRpcMessageAsync(rpcQueue, request, true, 20000, null, null, null).get();
+				Assert.fail("expected exception from server");
+			} catch (ExecutionException e){
+				Assert.assertTrue(e.getCause() instanceof VCMessagingInvocationTargetException);
+			}
+			try {
+				session.sendRpcMessage(rpcQueue, request, true, 20000, null, null, null);
+				Assert.fail("expected exception from server");
+			} catch (VCMessagingInvocationTargetException e){
+				// expected
+			}
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		VCMessageSession session = messagingService.createProducerSession();
+		try {
+			VCRpcRequest request = new VCRpcRequest(user, RpcServiceType.TESTING_SERVICE, "add", new Object[] { 1, 2 });
+			long start = System.currentTimeMillis();
+			try {
+				session.sendRpcMessage(unservedQueue, request, true, 500, null, null, null);
+				Assert.fail("expected timeout");
+			} catch (VCMessagingException e){
+				Assert.assertTrue(e.getMessage().contains("not responding"));
+			}
+			Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+			Assert.assertEquals(0, messagingService.getRpcClient().getNumPendingRequests());
+		} finally {
+			session.close();
+		}
+	}
+}
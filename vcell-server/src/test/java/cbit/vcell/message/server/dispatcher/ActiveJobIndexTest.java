@@ -0,0 +1,86 @@
+package cbit.vcell.message.server.dispatcher;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vcell.util.document.KeyValue;
+import org.vcell.util.document.User;
+import org.vcell.util.document.VCellServerID;
+
+import cbit.vcell.server.SimulationJobStatus;
+import cbit.vcell.server.SimulationJobStatus.SchedulerStatus;
+import cbit.vcell.solver.VCSimulationIdentifier;
+import cbit.vcell.solver.server.SimulationMessage;
+
+public class ActiveJobIndexTest {
+
+	VCellServerID relSite = VCellServerID.getServerID("REL");
+	User owner = new User("user1", new KeyValue("1"));
+	VCSimulationIdentifier sim1 = new VCSimulationIdentifier(new KeyValue("101"), owner);
+	VCSimulationIdentifier sim2 = new VCSimulationIdentifier(new KeyValue("102"), owner);
+
+	private SimulationJobStatus jobStatus(VCSimulationIdentifier vcSimID, int jobIndex, int taskId, SchedulerStatus schedulerStatus) {
+		return new SimulationJobStatus(relSite, vcSimID, jobIndex, new Date(), schedulerStatus, taskId, SimulationMessage.MESSAGE_JOB_WAITING, null, null);
+	}
+
+	@Test
+	public void testUpdatesAndReconcile() {
+		final AtomicInteger wakeUpCount = new AtomicInteger(0);
+		ActiveJobIndex index = new ActiveJobIndex(60000, () -> wakeUpCount.incrementAndGet());
+		Assert.assertTrue("new index must be reconciled first", index.needsReconciliation(0));
+
+		index.reconcile(new SimulationJobStatus[] { jobStatus(sim1, 0, 0, SchedulerStatus.RUNNING) }, 1000);
+		Assert.assertFalse(index.needsReconciliation(2000));
+		Assert.assertTrue(index.needsReconciliation(61000));
+		Assert.assertFalse(index.hasWaitingJobs());
+
+		// start request: new waiting job wakes up the dispatcher
+		index.update(jobStatus(sim2, 0, 0, SchedulerStatus.WAITING));
+		Assert.assertTrue(index.hasWaitingJobs());
+		Assert.assertEquals(2, index.getActiveJobs().length);
+		Assert.assertEquals(1, wakeUpCount.get());
+
+		// dispatched: still active, no scheduling change
+		index.update(jobStatus(sim2, 0, 0, SchedulerStatus.DISPATCHED));
+		Assert.assertFalse(index.hasWaitingJobs());
+		Assert.assertEquals(1, wakeUpCount.get());
+
+		// stale update from an older task is ignored
+		index.update(jobStatus(sim1, 0, 1, SchedulerStatus.RUNNING));
+		index.update(jobStatus(sim1, 0, 0, SchedulerStatus.COMPLETED));
+		Assert.assertEquals(2, index.getActiveJobs().length);
+
+		// completion frees resources
+		index.update(jobStatus(sim1, 0, 1, SchedulerStatus.COMPLETED));
+		Assert.assertEquals(1, index.getActiveJobs().length);
+		Assert.assertEquals(2, wakeUpCount.get());
+
+		index.requestReconciliation();
+		Assert.assertTrue(index.needsReconciliation(2000));
+		index.reconcile(new SimulationJobStatus[0], 3000);
+		Assert.assertEquals(0, index.getActiveJobs().length);
+	}
+
+	@Test
+	public void testIdleWait() {
+		ActiveJobIndex index = new ActiveJobIndex(60000, null);
+		// reconcile first
+		Assert.assertEquals(1, index.getIdleWaitMS(5000, 0));
+
+		// nothing waiting: sleep until the next reconciliation (new and finished jobs wake the dispatcher up)
+		index.reconcile(new SimulationJobStatus[] { jobStatus(sim1, 0, 0, SchedulerStatus.RUNNING) }, 1000);
+		Assert.assertEquals(60000, index.getIdleWaitMS(5000, 1000));
+		Assert.assertEquals(20000, index.getIdleWaitMS(5000, 41000));
+		Assert.assertEquals(1, index.getIdleWaitMS(5000, 70000));
+
+		// jobs held back by limits are retried at the normal interval, capacity may be freed elsewhere
+		index.update(jobStatus(sim2, 0, 0, SchedulerStatus.WAITING));
+		Assert.assertEquals(5000, index.getIdleWaitMS(5000, 1000));
+		Assert.assertEquals(2000, index.getIdleWaitMS(5000, 59000));
+
+		index.requestReconciliation();
+		Assert.assertEquals(1, index.getIdleWaitMS(5000, 2000));
+	}
+}
@@ -17,6 +17,9 @@ public class CacheStatus implements java.io.Serializable {
 	private long currSize = -1;
 	private long maxSize = -1;
 	private int numObjects = -1;
+	private long hitCount = -1;
+	private long missCount = -1;
+	private long evictionCount = -1;
 /**
  * CacheStatus constructor comment.
  */
@@ -25,6 +28,15 @@ public CacheStatus(int numObjects, long currSize, long maxSize) {
 	this.currSize = currSize;
 	this.maxSize = maxSize;
 }
+/**
+ * CacheStatus constructor for caches which count hits, misses and evictions.
+ */
+public CacheStatus(int numObjects, long currSize, long maxSize, long hitCount, long missCount, long evictionCount) {
+	this(numObjects, currSize, maxSize);
+	this.hitCount = hitCount;
+	this.missCount = missCount;
+	this.evictionCount = evictionCount;
+}
 /**
  * This method was created in VisualAge.
  * @return int
@@ -46,11 +58,30 @@ public long getMaxSize() {
 public int getNumObjects() {
 	return numObjects;
 }
+/**
+ * @return number of lookups which found an entry (-1 if not counted).
+ */
+public long getHitCount() {
+	return hitCount;
+}
+/**
+ * @return number of lookups which didn't find an entry (-1 if not counted).
+ */
+public long getMissCount() {
+	return missCount;
+}
+/**
+ * @return number of entries removed to make room for others (-1 if not counted).
+ */
+public long getEvictionCount() {
+	return evictionCount;
+}
 /**
  * This method was created in VisualAge.
  * @return java.lang.String
  */
 public String toString() {
-	return "Cache ("+getNumObjects()+" entries): currMemSize="+getCurrSize()+" maxMemSize="+getMaxSize();
+	String counts = (hitCount < 0) ? "" : " hits="+hitCount+" misses="+missCount+" evictions="+evictionCount;
+	return "Cache ("+getNumObjects()+" entries): currMemSize="+getCurrSize()+" maxMemSize="+getMaxSize()+counts;
 }
 }